@@ -68,6 +68,7 @@ CREATE TABLE `approval_history` (
   `branchId` int DEFAULT NULL,
   `requestedBy` int NOT NULL,
   PRIMARY KEY (`historyId`),
+  KEY `idx_approval_history_related` (`approvalType`,`relatedEntityId`,`status`),
   KEY `FK16wtf9gshfmvoylj7vgfrttwk` (`approvedBy`),
   KEY `FKly3gq7psb2v5ia1abopveqv65` (`branchId`),
   KEY `FKetd5rr5a5ragndtrnc6vgovlr` (`requestedBy`),
@@ -87,6 +88,24 @@ INSERT INTO `approval_history` VALUES (1,'Đồng ý','DRIVER_DAY_OFF','2025-12-
 /*!40000 ALTER TABLE `approval_history` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `booking_ledger`
+--
+
+DROP TABLE IF EXISTS `booking_ledger`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `booking_ledger` (
+  `bookingId` int NOT NULL,
+  `confirmedPaid` decimal(18,2) NOT NULL DEFAULT '0.00',
+  `pendingAmount` decimal(18,2) NOT NULL DEFAULT '0.00',
+  `lastPaymentAt` datetime(6) DEFAULT NULL,
+  `updatedAt` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`bookingId`),
+  CONSTRAINT `fk_booking_ledger_booking` FOREIGN KEY (`bookingId`) REFERENCES `bookings` (`bookingId`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `booking_vehicle_details`
 --
@@ -378,6 +397,33 @@ INSERT INTO `drivers` VALUES (1,7,1,'HN-D001','D','2028-12-31','2025-06-01',4.80
 /*!40000 ALTER TABLE `drivers` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `email_outbox`
+--
+
+DROP TABLE IF EXISTS `email_outbox`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `email_outbox` (
+  `emailId` int NOT NULL AUTO_INCREMENT,
+  `toEmail` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `fromName` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `subject` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `htmlBody` text COLLATE utf8mb4_unicode_ci,
+  `status` varchar(20) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `attempts` int NOT NULL DEFAULT '0',
+  `nextAttemptAt` datetime(6) NOT NULL,
+  `claimToken` varchar(36) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `claimedAt` datetime(6) DEFAULT NULL,
+  `lastError` varchar(500) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `createdAt` datetime(6) NOT NULL,
+  `sentAt` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`emailId`),
+  KEY `IX_EmailOutbox_Status_NextAttempt` (`status`,`nextAttemptAt`),
+  KEY `IX_EmailOutbox_ClaimToken` (`claimToken`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `employees`
 --
@@ -454,6 +500,25 @@ INSERT INTO `expense_requests` VALUES (1,750000.00,'2025-12-02 16:02:30.000000',
 /*!40000 ALTER TABLE `expense_requests` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `geocode_cache`
+--
+
+DROP TABLE IF EXISTS `geocode_cache`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `geocode_cache` (
+  `geocodeId` int NOT NULL AUTO_INCREMENT,
+  `addressKey` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `fullAddress` varchar(500) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `latitude` double NOT NULL,
+  `longitude` double NOT NULL,
+  `updatedAt` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`geocodeId`),
+  UNIQUE KEY `UK_geocode_cache_addressKey` (`addressKey`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `hire_types`
 --
@@ -482,6 +547,27 @@ INSERT INTO `hire_types` VALUES (1,'ONE_WAY','Thuê 1 chiều','Thuê xe đi 1 c
 /*!40000 ALTER TABLE `hire_types` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `invoice_ledger`
+--
+
+DROP TABLE IF EXISTS `invoice_ledger`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `invoice_ledger` (
+  `invoiceId` int NOT NULL,
+  `bookingId` int DEFAULT NULL,
+  `confirmedPaid` decimal(18,2) NOT NULL DEFAULT '0.00',
+  `pendingAmount` decimal(18,2) NOT NULL DEFAULT '0.00',
+  `balance` decimal(18,2) NOT NULL DEFAULT '0.00',
+  `lastPaymentAt` datetime(6) DEFAULT NULL,
+  `updatedAt` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`invoiceId`),
+  KEY `idx_invoice_ledger_booking` (`bookingId`),
+  CONSTRAINT `fk_invoice_ledger_invoice` FOREIGN KEY (`invoiceId`) REFERENCES `invoices` (`invoiceId`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `invoices`
 --
@@ -564,6 +650,8 @@ CREATE TABLE `notifications` (
   `isRead` tinyint(1) DEFAULT '0',
   PRIMARY KEY (`notificationId`),
   KEY `fk_notif_user` (`userId`),
+  KEY `IX_Notifications_User_CreatedAt` (`userId`,`createdAt`,`notificationId`),
+  KEY `IX_Notifications_CreatedAt` (`createdAt`),
   CONSTRAINT `fk_notif_user` FOREIGN KEY (`userId`) REFERENCES `users` (`userId`)
 ) ENGINE=InnoDB AUTO_INCREMENT=9 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
@@ -578,6 +666,26 @@ INSERT INTO `notifications` VALUES (1,2,'Yêu cầu nghỉ phép','Tài xế HN
 /*!40000 ALTER TABLE `notifications` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `notifications_archive`
+--
+
+DROP TABLE IF EXISTS `notifications_archive`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `notifications_archive` (
+  `notificationId` int NOT NULL,
+  `userId` int NOT NULL,
+  `title` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `message` varchar(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `createdAt` datetime DEFAULT NULL,
+  `isRead` tinyint(1) DEFAULT NULL,
+  `archivedAt` datetime(6) NOT NULL,
+  PRIMARY KEY (`notificationId`),
+  KEY `IX_NotificationsArchive_User_CreatedAt` (`userId`,`createdAt`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `payment_history`
 --
@@ -644,6 +752,24 @@ INSERT INTO `roles` VALUES (1,'Admin','Quản trị viên hệ thống','ACTIVE'
 /*!40000 ALTER TABLE `roles` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `route_cache`
+--
+
+DROP TABLE IF EXISTS `route_cache`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `route_cache` (
+  `routeId` int NOT NULL AUTO_INCREMENT,
+  `routeKey` varchar(100) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `distanceKm` double NOT NULL,
+  `durationMinutes` double DEFAULT NULL,
+  `updatedAt` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`routeId`),
+  UNIQUE KEY `UK_route_cache_routeKey` (`routeKey`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `system_alerts`
 --
@@ -0,0 +1,14 @@
+package org.example.ptcmssbackend.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Username và mã định danh (jti) của 1 token, lấy ra trong cùng 1 lần parse JWT
+ */
+@Getter
+@AllArgsConstructor
+public class TokenIdentity {
+    private final String username;
+    private final String tokenId;
+}
@@ -0,0 +1,22 @@
+package org.example.ptcmssbackend.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.security.Principal;
+
+/**
+ * User của 1 phiên STOMP; tên là userId để gửi tới /user/{userId}/queue/... mà không cần tra username
+ */
+@Getter
+@AllArgsConstructor
+public class WebSocketPrincipal implements Principal {
+    private final Integer userId;
+    private final Integer branchId;
+    private final boolean admin;
+
+    @Override
+    public String getName() {
+        return String.valueOf(userId);
+    }
+}
@@ -81,6 +81,8 @@ public class AppConfig implements WebMvcConfigurer {
                         // QUAN TRỌNG: Cho phép OPTIONS request (CORS preflight) không cần authentication
                         .requestMatchers(org.springframework.http.HttpMethod.OPTIONS, "/**").permitAll()
                         .requestMatchers(WHITELIST).permitAll()
+                        // Thống kê cache/metrics chỉ dành cho admin
+                        .requestMatchers("/actuator/metrics/**", "/actuator/caches/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(manager -> manager.sessionCreationPolicy(STATELESS))
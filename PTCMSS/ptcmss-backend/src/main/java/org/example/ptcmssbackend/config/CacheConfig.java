@@ -1,24 +1,59 @@
 package org.example.ptcmssbackend.config;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
 import java.util.Arrays;
 
+/**
+ * Các vùng cache dữ liệu tham chiếu (Caffeine): mỗi vùng có giới hạn số phần tử và TTL riêng,
+ * bật recordStats để actuator xuất số hit/miss/eviction (cache.gets, cache.evictions, cache.size).
+ *
+ * Cache được bọc TransactionAwareCacheDecorator: put/evict trong giao dịch chỉ áp dụng sau khi commit,
+ * nên dữ liệu chưa commit (hoặc bị rollback) không lọt vào cache.
+ */
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
+    public static final String APP_SETTINGS = "appSettings";
+    public static final String SYSTEM_SETTINGS = "systemSettings";
+    public static final String VEHICLE_CATEGORIES = "vehicleCategories";
+    public static final String HIRE_TYPES = "hireTypes";
+    public static final String BRANCHES = "branches";
+    public static final String ROLES = "roles";
+    public static final String USER_DETAILS = "userDetails";
+    public static final String ROLE_RECIPIENTS = "roleRecipients";
+
     @Bean
     public CacheManager cacheManager() {
         SimpleCacheManager cacheManager = new SimpleCacheManager();
         cacheManager.setCaches(Arrays.asList(
-                new ConcurrentMapCache("appSettings")
+                region(APP_SETTINGS, 100, Duration.ofSeconds(60)),
+                region(SYSTEM_SETTINGS, 500, Duration.ofMinutes(10)),
+                region(VEHICLE_CATEGORIES, 200, Duration.ofMinutes(10)),
+                region(HIRE_TYPES, 50, Duration.ofHours(1)),
+                region(BRANCHES, 200, Duration.ofMinutes(10)),
+                region(ROLES, 100, Duration.ofMinutes(30)),
+                region(USER_DETAILS, 5_000, Duration.ofMinutes(2)),
+                region(ROLE_RECIPIENTS, 500, Duration.ofMinutes(5))
         ));
         return cacheManager;
     }
+
+    private Cache region(String name, long maximumSize, Duration ttl) {
+        return new TransactionAwareCacheDecorator(new CaffeineCache(name, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build()));
+    }
 }
@@ -6,9 +6,10 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.common.TokenIdentity;
 import org.example.ptcmssbackend.common.TokenType;
 import org.example.ptcmssbackend.service.JwtService;
-import org.example.ptcmssbackend.service.UserServiceDetail;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -25,7 +26,7 @@ import java.io.IOException;
 public class CustomizeRequestFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserServiceDetail userServiceDetail;
+    private final PrincipalCacheService principalCacheService;
 
     private static final String[] PUBLIC_ENDPOINTS = {
             "/swagger-ui",
@@ -45,7 +46,7 @@ public class CustomizeRequestFilter extends OncePerRequestFilter {
 
         String uri = request.getRequestURI();
         String method = request.getMethod();
-        log.info("{} {}", method, uri);
+        log.debug("{} {}", method, uri);
 
         // QUAN TRỌNG: Bỏ qua OPTIONS request (CORS preflight) - để CORS filter xử lý
         if ("OPTIONS".equalsIgnoreCase(method)) {
@@ -77,12 +78,11 @@ public class CustomizeRequestFilter extends OncePerRequestFilter {
             return;
         }
         try {
-            String username = jwtService.extractUsername(token, TokenType.ACCESS_TOKEN);
+            // 1 lần parse JWT; principal lấy từ cache ngắn hạn theo username + token id
+            TokenIdentity identity = jwtService.extractIdentity(token, TokenType.ACCESS_TOKEN);
+            String username = identity.getUsername();
             if (username != null) {
-                UserDetails userDetails = userServiceDetail.loadUserByUsername(username);
-                
-                log.info("[Filter] Setting authentication for user: {} with authorities: {}", 
-                        username, userDetails.getAuthorities());
+                UserDetails userDetails = principalCacheService.getPrincipal(username, identity.getTokenId());
 
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
@@ -92,9 +92,11 @@ public class CustomizeRequestFilter extends OncePerRequestFilter {
                 SecurityContext context = SecurityContextHolder.createEmptyContext();
                 context.setAuthentication(authentication);
                 SecurityContextHolder.setContext(context);
-                
-                log.info("[Filter] Authentication set successfully for user: {} with roles: {}", 
-                        username, userDetails.getAuthorities());
+
+                if (log.isDebugEnabled()) {
+                    log.debug("[Filter] Authentication set for user: {} with authorities: {}",
+                            username, userDetails.getAuthorities());
+                }
             }
         } catch (Exception e) {
             log.error("JWT validation error: {}", e.getMessage(), e);
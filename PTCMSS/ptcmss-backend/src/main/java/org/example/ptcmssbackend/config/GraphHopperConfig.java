@@ -0,0 +1,54 @@
+package org.example.ptcmssbackend.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * HTTP client gọi GraphHopper: dùng chung connection pool (keep-alive) và có timeout kết nối/đọc,
+ * để 1 request chậm từ API không giữ thread của request người dùng vô thời hạn.
+ */
+@Configuration
+public class GraphHopperConfig {
+
+    @Value("${graphhopper.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${graphhopper.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+
+    @Value("${graphhopper.max-connections:20}")
+    private int maxConnections;
+
+    @Bean
+    public RestTemplate graphHopperRestTemplate() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections) // chỉ có 1 host graphhopper.com
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        // Chờ lấy connection từ pool không quá thời gian kết nối
+        requestFactory.setConnectionRequestTimeout((int) connectTimeoutMs);
+        return new RestTemplate(requestFactory);
+    }
+}
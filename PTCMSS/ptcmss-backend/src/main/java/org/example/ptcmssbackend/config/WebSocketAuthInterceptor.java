@@ -0,0 +1,139 @@
+package org.example.ptcmssbackend.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.common.TokenIdentity;
+import org.example.ptcmssbackend.common.TokenType;
+import org.example.ptcmssbackend.common.WebSocketPrincipal;
+import org.example.ptcmssbackend.entity.Users;
+import org.example.ptcmssbackend.repository.EmployeeRepository;
+import org.example.ptcmssbackend.service.JwtService;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Xác thực phiên STOMP khi CONNECT (user của handshake hoặc header Authorization: Bearer ...) và
+ * chỉ cho SUBSCRIBE topic chi nhánh /topic/branch.{branchId}.* khi user thuộc chi nhánh đó hoặc là Admin,
+ * topic cũ /topic/notifications/{userId} khi đúng user đó hoặc là Admin.
+ *
+ * Phiên không đăng nhập vẫn kết nối được để nghe các topic chung, nhưng không có /user/queue riêng.
+ */
+@Slf4j(topic = "WEBSOCKET_AUTH")
+@Component
+@RequiredArgsConstructor
+public class WebSocketAuthInterceptor implements ChannelInterceptor {
+
+    private static final Pattern BRANCH_DESTINATION = Pattern.compile("^/topic/branch\\.(\\d{1,9})\\.[A-Za-z0-9_-]+$");
+    private static final String TOPIC_PREFIX = "/topic/";
+    private static final String BRANCH_PREFIX = "/topic/branch";
+    private static final Pattern USER_TOPIC_DESTINATION = Pattern.compile("^/topic/notifications/(\\d{1,9})$");
+    private static final String USER_TOPIC_PREFIX = "/topic/notifications/";
+    // Ký tự pattern của broker (* ** ? {var} của AntPathMatcher, # của broker relay)
+    private static final Pattern WILDCARD = Pattern.compile("[*?{#]");
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtService jwtService;
+    private final PrincipalCacheService principalCacheService;
+    private final EmployeeRepository employeeRepository;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+        if (StompCommand.CONNECT.equals(accessor.getCommand())) {
+            authenticate(message, accessor);
+        } else if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            authorizeSubscribe(message, accessor);
+        }
+        return message;
+    }
+
+    private void authenticate(Message<?> message, StompHeaderAccessor accessor) {
+        Users account = resolveAccount(message, accessor);
+        if (account == null) {
+            return;
+        }
+        Integer branchId = employeeRepository.findBranchIdByUserId(account.getId()).orElse(null);
+        boolean admin = account.getRole() != null && "ADMIN".equalsIgnoreCase(account.getRole().getRoleName());
+        accessor.setUser(new WebSocketPrincipal(account.getId(), branchId, admin));
+        log.debug("STOMP session {} authenticated as user {} (branch {})", accessor.getSessionId(), account.getId(), branchId);
+    }
+
+    private Users resolveAccount(Message<?> message, StompHeaderAccessor accessor) {
+        Principal user = accessor.getUser();
+        if (user instanceof Authentication authentication && authentication.getPrincipal() instanceof Users account) {
+            return account;
+        }
+        String authHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        try {
+            TokenIdentity identity = jwtService.extractIdentity(authHeader.substring(BEARER_PREFIX.length()), TokenType.ACCESS_TOKEN);
+            UserDetails details = principalCacheService.getPrincipal(identity.getUsername(), identity.getTokenId());
+            return details instanceof Users account ? account : null;
+        } catch (Exception e) {
+            log.warn("STOMP CONNECT rejected: {}", e.getMessage());
+            throw new MessagingException(message, "Token không hợp lệ hoặc đã hết hạn", e);
+        }
+    }
+
+    private void authorizeSubscribe(Message<?> message, StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null) {
+            return;
+        }
+        // Đăng ký bằng pattern sẽ nhận cả topic của chi nhánh khác nên không cho phép
+        if (destination.startsWith(TOPIC_PREFIX) && WILDCARD.matcher(destination).find()) {
+            throw new MessagingException(message, "Không hỗ trợ đăng ký topic theo pattern: " + destination);
+        }
+        if (destination.startsWith(USER_TOPIC_PREFIX)) {
+            authorizeUserTopic(message, accessor, destination);
+            return;
+        }
+        if (!destination.startsWith(BRANCH_PREFIX)) {
+            return;
+        }
+        Matcher matcher = BRANCH_DESTINATION.matcher(destination);
+        if (!matcher.matches()) {
+            throw new MessagingException(message, "Topic chi nhánh không hợp lệ: " + destination);
+        }
+        Integer branchId = Integer.valueOf(matcher.group(1));
+        if (accessor.getUser() instanceof WebSocketPrincipal principal
+                && (principal.isAdmin() || branchId.equals(principal.getBranchId()))) {
+            return;
+        }
+        throw new MessagingException(message, "Không có quyền nhận thông báo của chi nhánh " + branchId);
+    }
+
+    /**
+     * Topic cũ /topic/notifications/{userId} (khi còn bật websocket.legacy-destinations): chỉ chính user đó hoặc Admin
+     */
+    private void authorizeUserTopic(Message<?> message, StompHeaderAccessor accessor, String destination) {
+        Matcher matcher = USER_TOPIC_DESTINATION.matcher(destination);
+        if (!matcher.matches()) {
+            throw new MessagingException(message, "Topic thông báo không hợp lệ: " + destination);
+        }
+        Integer userId = Integer.valueOf(matcher.group(1));
+        if (accessor.getUser() instanceof WebSocketPrincipal principal
+                && (principal.isAdmin() || userId.equals(principal.getUserId()))) {
+            return;
+        }
+        throw new MessagingException(message, "Không có quyền nhận thông báo của người dùng " + userId);
+    }
+}
@@ -1,21 +1,130 @@
 package org.example.ptcmssbackend.config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
 
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * STOMP over WebSocket.
+ *
+ * Mặc định dùng simple broker trong bộ nhớ (1 node). Khi chạy nhiều node, bật websocket.broker.relay.enabled
+ * để chuyển tiếp /topic và /queue qua broker STOMP ngoài (RabbitMQ + rabbitmq_stomp, xem profile "relay"
+ * trong docker-compose); tin gửi /user/... được broadcast giữa các node qua broker.
+ *
+ * Kênh inbound/outbound chạy trên pool giới hạn; client chậm bị cắt khi vượt giới hạn buffer/thời gian gửi
+ * thay vì giữ luồng outbound.
+ */
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    public static final String USER_DESTINATION_PREFIX = "/user";
+
+    private final WebSocketAuthInterceptor webSocketAuthInterceptor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${websocket.inbound.core-pool-size:4}")
+    private int inboundCorePoolSize;
+
+    @Value("${websocket.inbound.max-pool-size:8}")
+    private int inboundMaxPoolSize;
+
+    @Value("${websocket.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+
+    @Value("${websocket.outbound.core-pool-size:4}")
+    private int outboundCorePoolSize;
+
+    @Value("${websocket.outbound.max-pool-size:8}")
+    private int outboundMaxPoolSize;
+
+    @Value("${websocket.outbound.queue-capacity:2000}")
+    private int outboundQueueCapacity;
+
+    @Value("${websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${websocket.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    @Value("${websocket.broker.relay.enabled:false}")
+    private boolean relayEnabled;
+
+    @Value("${websocket.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${websocket.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${websocket.broker.relay.virtual-host:/}")
+    private String relayVirtualHost;
+
+    @Value("${websocket.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${websocket.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private ThreadPoolTaskScheduler heartbeatScheduler;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enable simple in-memory message broker for pub/sub
-        config.enableSimpleBroker("/topic", "/queue");
+        if (relayEnabled) {
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setVirtualHost(relayVirtualHost)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(heartbeatMs)
+                    .setSystemHeartbeatReceiveInterval(heartbeatMs)
+                    // Tin /user/... của user đang kết nối ở node khác được chuyển qua broker
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            log.info("WebSocket broker relay enabled: {}:{}", relayHost, relayPort);
+        } else {
+            var simpleBroker = config.enableSimpleBroker("/topic", "/queue");
+            if (heartbeatMs > 0) {
+                simpleBroker.setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                        .setTaskScheduler(heartbeatScheduler());
+            }
+        }
         // Prefix for messages from client to server
         config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix(USER_DESTINATION_PREFIX);
+        // Giữ thứ tự tin gửi tới cùng 1 phiên khi outbound chạy nhiều luồng
+        config.setPreservePublishOrder(true);
     }
 
     @Override
@@ -31,4 +140,111 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 )
                 .withSockJS();
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(webSocketAuthInterceptor);
+        registration.taskExecutor(channelExecutor("ws-inbound-", "inbound",
+                inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity, true));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor("ws-outbound-", "outbound",
+                outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity, false));
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        Counter slowConsumerDrops = droppedCounter("slow_consumer");
+        Gauge.builder("websocket.sessions", activeSessions, AtomicInteger::get)
+                .description("Số phiên WebSocket đang mở")
+                .register(meterRegistry);
+
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(handler -> new SessionMetricsHandler(handler, activeSessions, slowConsumerDrops));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (heartbeatScheduler != null) {
+            heartbeatScheduler.shutdown();
+        }
+    }
+
+    private ThreadPoolTaskScheduler heartbeatScheduler() {
+        if (heartbeatScheduler == null) {
+            heartbeatScheduler = new ThreadPoolTaskScheduler();
+            heartbeatScheduler.setPoolSize(1);
+            heartbeatScheduler.setThreadNamePrefix("ws-heartbeat-");
+            heartbeatScheduler.setDaemon(true);
+            heartbeatScheduler.initialize();
+        }
+        return heartbeatScheduler;
+    }
+
+    /**
+     * Pool của kênh inbound/outbound; hàng đợi đầy thì đếm tin bị bỏ.
+     * Inbound báo lỗi cho client, outbound bỏ tin (client sẽ nhận bản cập nhật sau hoặc tải lại qua API).
+     */
+    private ThreadPoolTaskExecutor channelExecutor(String threadNamePrefix, String channel,
+                                                   int corePoolSize, int maxPoolSize, int queueCapacity,
+                                                   boolean rejectWithError) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        Counter dropped = droppedCounter(channel + "_queue_full");
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            dropped.increment();
+            if (rejectWithError) {
+                throw new RejectedExecutionException("WebSocket " + channel + " queue is full");
+            }
+        });
+        Gauge.builder("websocket.channel.queue", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .tag("channel", channel)
+                .description("Số tin đang chờ trong hàng đợi kênh WebSocket")
+                .register(meterRegistry);
+        return executor;
+    }
+
+    private Counter droppedCounter(String reason) {
+        return Counter.builder("websocket.messages.dropped")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Đếm phiên đang mở và phiên bị đóng vì client nhận quá chậm (vượt buffer/thời gian gửi)
+     */
+    private static class SessionMetricsHandler extends WebSocketHandlerDecorator {
+
+        private final AtomicInteger activeSessions;
+        private final Counter slowConsumerDrops;
+
+        SessionMetricsHandler(WebSocketHandler delegate, AtomicInteger activeSessions, Counter slowConsumerDrops) {
+            super(delegate);
+            this.activeSessions = activeSessions;
+            this.slowConsumerDrops = slowConsumerDrops;
+        }
+
+        @Override
+        public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+            activeSessions.incrementAndGet();
+            super.afterConnectionEstablished(session);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+            activeSessions.decrementAndGet();
+            if (CloseStatus.SESSION_NOT_RELIABLE.equals(closeStatus)) {
+                slowConsumerDrops.increment();
+            }
+            super.afterConnectionClosed(session, closeStatus);
+        }
+    }
 }
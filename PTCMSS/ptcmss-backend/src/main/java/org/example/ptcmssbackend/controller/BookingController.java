@@ -10,11 +10,13 @@ import org.example.ptcmssbackend.dto.request.Booking.CreateBookingRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CreatePaymentRequest;
 import org.example.ptcmssbackend.dto.request.Booking.AssignRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityRequest;
+import org.example.ptcmssbackend.dto.request.Booking.PriceBatchRequest;
 import org.example.ptcmssbackend.dto.request.Booking.UpdateBookingRequest;
 import org.example.ptcmssbackend.dto.response.Booking.BookingListResponse;
 import org.example.ptcmssbackend.dto.response.Booking.BookingResponse;
 import org.example.ptcmssbackend.dto.response.Booking.ConsultantDashboardResponse;
 import org.example.ptcmssbackend.dto.response.Booking.PaymentResponse;
+import org.example.ptcmssbackend.dto.response.Booking.PriceQuoteResponse;
 import org.example.ptcmssbackend.dto.response.common.ApiResponse;
 import org.example.ptcmssbackend.dto.response.common.PageResponse;
 import org.example.ptcmssbackend.entity.Employees;
@@ -23,6 +25,7 @@ import org.example.ptcmssbackend.repository.EmployeeRepository;
 import org.example.ptcmssbackend.service.BookingService;
 import org.example.ptcmssbackend.service.CustomerService;
 import org.example.ptcmssbackend.service.PaymentService;
+import org.example.ptcmssbackend.service.PricingService;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -45,6 +48,7 @@ public class BookingController {
     private final PaymentService paymentService;
     private final CustomerService customerService;
     private final EmployeeRepository employeeRepository;
+    private final PricingService pricingService;
 
     /**
      * Lấy dashboard cho consultant
@@ -53,11 +57,13 @@ public class BookingController {
     @GetMapping("/dashboard")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','CONSULTANT')")
     public ResponseEntity<ApiResponse<ConsultantDashboardResponse>> getDashboard(
-            @Parameter(description = "ID chi nhánh (optional, Admin có thể chọn)") @RequestParam(required = false) Integer branchId
+            @Parameter(description = "ID chi nhánh (optional, Admin có thể chọn)") @RequestParam(required = false) Integer branchId,
+            @Parameter(description = "Trang của các danh sách đơn (bắt đầu từ 1)") @RequestParam(defaultValue = "1") int page,
+            @Parameter(description = "Số đơn mỗi danh sách (tối đa 50)") @RequestParam(defaultValue = "10") int size
     ) {
         try {
             Integer consultantEmployeeId = getCurrentConsultantEmployeeId();
-            ConsultantDashboardResponse dashboard = bookingService.getConsultantDashboard(consultantEmployeeId, branchId);
+            ConsultantDashboardResponse dashboard = bookingService.getConsultantDashboard(consultantEmployeeId, branchId, page, size);
             return ResponseEntity.ok(ApiResponse.<ConsultantDashboardResponse>builder()
                     .success(true)
                     .message("Lấy dashboard thành công")
@@ -338,6 +344,31 @@ public class BookingController {
         }
     }
 
+    /**
+     * Check availability nhiều loại xe (các dòng của 1 báo giá) trong 1 lần gọi
+     */
+    @Operation(summary = "Kiểm tra khả dụng nhiều loại xe", description = "Kiểm tra cùng lúc nhiều dòng (loại xe, số lượng) của 1 báo giá theo chi nhánh và khoảng thời gian")
+    @PostMapping("/check-availability/batch")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','CONSULTANT')")
+    public ResponseEntity<ApiResponse<org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityBatchResponse>> checkAvailabilityBatch(
+            @Valid @RequestBody org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityBatchRequest request
+    ) {
+        try {
+            var result = bookingService.checkAvailabilityBatch(request);
+            return ResponseEntity.ok(ApiResponse.<org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityBatchResponse>builder()
+                    .success(true)
+                    .message("OK")
+                    .data(result)
+                    .build());
+        } catch (Exception e) {
+            log.error("Check availability batch failed", e);
+            return ResponseEntity.badRequest().body(ApiResponse.<org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityBatchResponse>builder()
+                    .success(false)
+                    .message("Lỗi khi kiểm tra khả dụng: " + e.getMessage())
+                    .build());
+        }
+    }
+
     /**
      * Gán tài xế / xe cho các chuyến của booking
      */
@@ -382,17 +413,8 @@ public class BookingController {
             @Parameter(description = "Thời gian kết thúc (ISO format) - để check chuyến trong ngày") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endTime
     ) {
         try {
-            // 🔍 LOG BACKEND: Request nhận được
-            log.info("🔴 [BACKEND] Calculate Price Request received: vehicleCategoryIds={}, quantities={}, distance={}, useHighway={}, hireTypeId={}, isHoliday={}, isWeekend={}, startTime={}, endTime={}",
-                    vehicleCategoryIds, quantities, distance, useHighway, hireTypeId, isHoliday, isWeekend, startTime, endTime);
-            
-            // Sử dụng overloaded method với các tham số mới
-            java.math.BigDecimal price = ((org.example.ptcmssbackend.service.impl.BookingServiceImpl) bookingService)
-                    .calculatePrice(vehicleCategoryIds, quantities, distance, useHighway,
-                            hireTypeId, isHoliday, isWeekend, startTime, endTime);
-            
-            // 🔍 LOG BACKEND: Kết quả trả về
-            log.info("🟢 [BACKEND] Calculate Price Response: price={} VNĐ", price);
+            java.math.BigDecimal price = pricingService.calculatePrice(vehicleCategoryIds, quantities, distance, useHighway,
+                    hireTypeId, isHoliday, isWeekend, startTime, endTime);
             
             return ResponseEntity.ok(ApiResponse.<java.math.BigDecimal>builder()
                     .success(true)
@@ -408,6 +430,31 @@ public class BookingController {
         }
     }
     
+    /**
+     * Tính giá nhiều báo giá trong 1 request
+     */
+    @Operation(summary = "Tính giá hàng loạt", description = "Tính giá cho nhiều báo giá cùng lúc trên cùng 1 bảng giá. Báo giá lỗi trả về success=false, không làm hỏng cả lô")
+    @PostMapping("/price/batch")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','CONSULTANT')")
+    public ResponseEntity<ApiResponse<List<PriceQuoteResponse>>> calculatePriceBatch(
+            @Valid @RequestBody PriceBatchRequest request
+    ) {
+        try {
+            List<PriceQuoteResponse> result = pricingService.calculatePrices(request.getQuotes());
+            return ResponseEntity.ok(ApiResponse.<List<PriceQuoteResponse>>builder()
+                    .success(true)
+                    .message("Tính giá thành công")
+                    .data(result)
+                    .build());
+        } catch (Exception e) {
+            log.error("Calculate price batch failed", e);
+            return ResponseEntity.badRequest().body(ApiResponse.<List<PriceQuoteResponse>>builder()
+                    .success(false)
+                    .message("Lỗi khi tính giá: " + e.getMessage())
+                    .build());
+        }
+    }
+    
     /**
      * Tìm customer theo số điện thoại
      */
@@ -18,10 +18,13 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -94,6 +97,23 @@ public class DebtController {
         }
     }
 
+    @Operation(summary = "Xuất sổ công nợ CSV", description = "Xuất toàn bộ công nợ (hoặc chỉ nợ quá hạn) ra CSV, dữ liệu được ghi dần theo từng lô")
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    public ResponseEntity<StreamingResponseBody> exportDebts(
+            @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
+            @Parameter(description = "Chỉ lấy nợ quá hạn") @RequestParam(required = false) Boolean overdueOnly) {
+
+        log.info("[DebtController] Exporting debts - branch: {}, overdueOnly: {}", branchId, overdueOnly);
+
+        StreamingResponseBody body = out -> debtService.exportDebtsCsv(branchId, overdueOnly, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=debts_" + LocalDate.now() + ".csv")
+                .contentType(MediaType.parseMediaType("text/csv; charset=UTF-8"))
+                .body(body);
+    }
+
     @Operation(summary = "Gửi nhắc nợ", description = "Gửi nhắc nợ qua Email/SMS/Phone cho khách hàng")
     @PostMapping("/{invoiceId}/reminder")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
@@ -4,11 +4,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ptcmssbackend.dto.request.Trip.TripSearchRequest;
 import org.example.ptcmssbackend.dto.request.dispatch.AssignRequest;
+import org.example.ptcmssbackend.dto.request.dispatch.AutoDispatchRequest;
 import org.example.ptcmssbackend.dto.request.dispatch.UnassignRequest;
 import org.example.ptcmssbackend.dto.response.common.ResponseData;
 import org.example.ptcmssbackend.dto.response.common.ResponseError;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignRespone;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignmentSuggestionResponse;
+import org.example.ptcmssbackend.dto.response.dispatch.AutoDispatchResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.DispatchDashboardResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.PendingTripResponse;
 import org.example.ptcmssbackend.service.DispatchService;
@@ -88,20 +90,24 @@ public class DispatchController {
 
     @Operation(
             summary = "Tổng quan điều phối trong ngày",
-            description = "Trả về Queue pending + timeline tài xế / phương tiện trong ngày theo chi nhánh. Nếu không truyền date, lấy tất cả chuyến từ hiện tại đến tương lai. Admin/Manager/Coordinator được phép truy cập."
+            description = "Trả về Queue pending + timeline tài xế / phương tiện trong ngày theo chi nhánh. Nếu không truyền date, trả về một trang dispatch.dashboard.horizon-days ngày bắt đầu từ cursor (mặc định hôm nay); dùng nextCursor để tải trang kế tiếp. Admin/Manager/Coordinator được phép truy cập."
     )
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','CONSULTANT','COORDINATOR')")
     @GetMapping("/dashboard")
     public ResponseData<DispatchDashboardResponse> getDashboard(
             @RequestParam Integer branchId,
-            @RequestParam(required = false) String date
+            @RequestParam(required = false) String date,
+            @RequestParam(required = false) String cursor
     ) {
         try {
             LocalDate targetDate = (date != null && !date.isBlank())
                     ? LocalDate.parse(date)
-                    : null; // null = load all future trips
-            log.info("[Dispatch] Load dashboard for branch {} on {}", branchId, targetDate != null ? targetDate : "all future");
-            DispatchDashboardResponse data = dispatchService.getDashboard(branchId, targetDate);
+                    : null; // null = tải theo trang từ cursor
+            LocalDate cursorDate = (cursor != null && !cursor.isBlank())
+                    ? LocalDate.parse(cursor)
+                    : null;
+            log.info("[Dispatch] Load dashboard for branch {} on {} (cursor {})", branchId, targetDate, cursorDate);
+            DispatchDashboardResponse data = dispatchService.getDashboard(branchId, targetDate, cursorDate);
             return new ResponseData<>(HttpStatus.OK.value(), "Success", data);
         } catch (Exception e) {
             log.error("[Dispatch] Failed to load dashboard", e);
@@ -162,6 +168,24 @@ public class DispatchController {
         }
     }
 
+    @Operation(
+            summary = "Điều phối tự động cả ngày",
+            description = "Xếp tài xế + xe cho mọi chuyến chờ điều phối của chi nhánh trong ngày (mặc định hôm nay) bằng 1 kế hoạch chung theo điểm công bằng, ghi toàn bộ trong 1 giao dịch. dryRun = true chỉ trả kế hoạch."
+    )
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','COORDINATOR')")
+    @PostMapping("/auto-dispatch")
+    public ResponseData<AutoDispatchResponse> autoDispatch(@RequestBody AutoDispatchRequest request) {
+        try {
+            log.info("[Dispatch] Auto-dispatch: {}", request);
+            return new ResponseData<>(HttpStatus.OK.value(),
+                    "Auto-dispatch successfully",
+                    dispatchService.autoDispatch(request));
+        } catch (Exception e) {
+            log.error("[Dispatch] Auto-dispatch failed", e);
+            return new ResponseError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        }
+    }
+
     @Operation(summary = "Chi tiết chuyến")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','CONSULTANT','COORDINATOR','DRIVER')")
     @GetMapping("/detail/{tripId}")
@@ -183,9 +207,10 @@ public class DispatchController {
     public ResponseData<?> search(@RequestBody TripSearchRequest req) {
         try {
             log.info("[Dispatch] Search trips: {}", req);
+            // Giữ dạng danh sách như trước (frontend đọc mảng); chỉ phân trang khi request có page/size
             return new ResponseData<>(HttpStatus.OK.value(),
                     "Search successfully",
-                    dispatchService.searchTrips(req));
+                    dispatchService.searchTrips(req).getContent());
         } catch (Exception e) {
             log.error("[Dispatch] Search failed", e);
             return new ResponseError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
@@ -7,6 +7,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ptcmssbackend.dto.request.Accounting.ExpenseReportRequest;
 import org.example.ptcmssbackend.dto.request.Accounting.RevenueReportRequest;
+import org.example.ptcmssbackend.dto.response.Export.ExportJobResponse;
+import org.example.ptcmssbackend.dto.response.common.ApiResponse;
+import org.example.ptcmssbackend.enums.ExportFormat;
+import org.example.ptcmssbackend.service.ExportJobService;
 import org.example.ptcmssbackend.service.ExportService;
 import org.springframework.core.io.Resource;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -16,7 +20,9 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.security.Principal;
 import java.time.LocalDate;
 
 @Slf4j
@@ -26,96 +32,73 @@ import java.time.LocalDate;
 @Tag(name = "Export Services", description = "APIs for exporting reports and invoices to Excel, CSV, and PDF formats")
 public class ExportController {
 
+    private static final MediaType XLSX_MEDIA_TYPE =
+            MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+    private static final MediaType CSV_MEDIA_TYPE = MediaType.parseMediaType("text/csv; charset=UTF-8");
+
     private final ExportService exportService;
+    private final ExportJobService exportJobService;
 
-    @Operation(summary = "Export báo cáo doanh thu Excel", description = "Xuất báo cáo doanh thu ra file Excel (CSV format)")
+    @Operation(summary = "Export báo cáo doanh thu Excel", description = "Xuất báo cáo doanh thu ra file Excel (.xlsx), dữ liệu được ghi dần theo từng lô")
     @GetMapping("/revenue/excel")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
-    public ResponseEntity<Resource> exportRevenueReportToExcel(
+    public ResponseEntity<StreamingResponseBody> exportRevenueReportToExcel(
             @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
             @Parameter(description = "ID khách hàng") @RequestParam(required = false) Integer customerId,
             @Parameter(description = "Ngày bắt đầu") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @Parameter(description = "Ngày kết thúc") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
             @Parameter(description = "Kỳ báo cáo") @RequestParam(required = false) String period) {
-        
+
         log.info("[ExportController] Exporting revenue report to Excel");
-        
-        try {
-            RevenueReportRequest request = new RevenueReportRequest();
-            request.setBranchId(branchId);
-            request.setCustomerId(customerId);
-            request.setStartDate(startDate);
-            request.setEndDate(endDate);
-            request.setPeriod(period);
-            
-            Resource resource = exportService.exportRevenueReportToExcel(request);
-            
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                            "attachment; filename=revenue_report_" + LocalDate.now() + ".csv")
-                    .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
-                    .body(resource);
-        } catch (Exception e) {
-            log.error("[ExportController] Error exporting revenue report", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+
+        RevenueReportRequest request = revenueRequest(branchId, customerId, startDate, endDate, period);
+        StreamingResponseBody body = out -> exportService.writeRevenueReport(request, ExportFormat.XLSX, out);
+        return streaming("revenue_report_" + LocalDate.now() + ".xlsx", XLSX_MEDIA_TYPE, body);
     }
 
-    @Operation(summary = "Export báo cáo chi phí Excel", description = "Xuất báo cáo chi phí ra file Excel (CSV format)")
+    @Operation(summary = "Export báo cáo chi phí Excel", description = "Xuất báo cáo chi phí ra file Excel (.xlsx), dữ liệu được ghi dần theo từng lô")
     @GetMapping("/expense/excel")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
-    public ResponseEntity<Resource> exportExpenseReportToExcel(
+    public ResponseEntity<StreamingResponseBody> exportExpenseReportToExcel(
             @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
             @Parameter(description = "ID xe") @RequestParam(required = false) Integer vehicleId,
             @Parameter(description = "Loại chi phí") @RequestParam(required = false) String expenseType,
             @Parameter(description = "Ngày bắt đầu") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @Parameter(description = "Ngày kết thúc") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
-        
+
         log.info("[ExportController] Exporting expense report to Excel");
-        
-        try {
-            ExpenseReportRequest request = new ExpenseReportRequest();
-            request.setBranchId(branchId);
-            request.setVehicleId(vehicleId);
-            request.setExpenseType(expenseType);
-            request.setStartDate(startDate);
-            request.setEndDate(endDate);
-            
-            Resource resource = exportService.exportExpenseReportToExcel(request);
-            
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                            "attachment; filename=expense_report_" + LocalDate.now() + ".csv")
-                    .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
-                    .body(resource);
-        } catch (Exception e) {
-            log.error("[ExportController] Error exporting expense report", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+
+        ExpenseReportRequest request = expenseRequest(branchId, vehicleId, expenseType, startDate, endDate);
+        StreamingResponseBody body = out -> exportService.writeExpenseReport(request, ExportFormat.XLSX, out);
+        return streaming("expense_report_" + LocalDate.now() + ".xlsx", XLSX_MEDIA_TYPE, body);
     }
 
-    @Operation(summary = "Export danh sách invoices Excel", description = "Xuất danh sách invoices ra file Excel (CSV format)")
+    @Operation(summary = "Export danh sách invoices Excel", description = "Xuất danh sách invoices ra file Excel (.xlsx), dữ liệu được ghi dần theo từng lô")
     @GetMapping("/invoices/excel")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
-    public ResponseEntity<Resource> exportInvoiceListToExcel(
+    public ResponseEntity<StreamingResponseBody> exportInvoiceListToExcel(
             @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
             @Parameter(description = "Loại: INCOME, EXPENSE") @RequestParam(required = false) String type,
             @Parameter(description = "Trạng thái: ACTIVE, CANCELLED") @RequestParam(required = false) String status) {
-        
+
         log.info("[ExportController] Exporting invoice list to Excel");
-        
-        try {
-            Resource resource = exportService.exportInvoiceListToExcel(branchId, type, status);
-            
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                            "attachment; filename=invoices_" + LocalDate.now() + ".csv")
-                    .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
-                    .body(resource);
-        } catch (Exception e) {
-            log.error("[ExportController] Error exporting invoice list", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+
+        StreamingResponseBody body = out -> exportService.writeInvoiceList(branchId, type, status, ExportFormat.XLSX, out);
+        return streaming("invoices_" + LocalDate.now() + ".xlsx", XLSX_MEDIA_TYPE, body);
+    }
+
+    @Operation(summary = "Export danh sách invoices CSV", description = "Xuất danh sách invoices ra file CSV, dữ liệu được ghi dần theo từng lô")
+    @GetMapping("/invoices/csv")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    public ResponseEntity<StreamingResponseBody> exportInvoiceListToCSV(
+            @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
+            @Parameter(description = "Loại: INCOME, EXPENSE") @RequestParam(required = false) String type,
+            @Parameter(description = "Trạng thái: ACTIVE, CANCELLED") @RequestParam(required = false) String status) {
+
+        log.info("[ExportController] Exporting invoice list to CSV");
+
+        StreamingResponseBody body = out -> exportService.writeInvoiceList(branchId, type, status, ExportFormat.CSV, out);
+        return streaming("invoices_" + LocalDate.now() + ".csv", CSV_MEDIA_TYPE, body);
     }
 
     @Operation(summary = "Export invoice PDF", description = "Xuất một hóa đơn ra file PDF")
@@ -139,70 +122,174 @@ public class ExportController {
         }
     }
 
-    @Operation(summary = "Export báo cáo doanh thu CSV", description = "Xuất báo cáo doanh thu ra file CSV")
+    @Operation(summary = "Export báo cáo doanh thu CSV", description = "Xuất báo cáo doanh thu ra file CSV, dữ liệu được ghi dần theo từng lô")
     @GetMapping("/revenue/csv")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
-    public ResponseEntity<Resource> exportRevenueReportToCSV(
+    public ResponseEntity<StreamingResponseBody> exportRevenueReportToCSV(
             @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
             @Parameter(description = "ID khách hàng") @RequestParam(required = false) Integer customerId,
             @Parameter(description = "Ngày bắt đầu") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @Parameter(description = "Ngày kết thúc") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
             @Parameter(description = "Kỳ báo cáo") @RequestParam(required = false) String period) {
-        
+
         log.info("[ExportController] Exporting revenue report to CSV");
-        
-        try {
-            RevenueReportRequest request = new RevenueReportRequest();
-            request.setBranchId(branchId);
-            request.setCustomerId(customerId);
-            request.setStartDate(startDate);
-            request.setEndDate(endDate);
-            request.setPeriod(period);
-            
-            Resource resource = exportService.exportRevenueReportToCSV(request);
-            
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                            "attachment; filename=revenue_report_" + LocalDate.now() + ".csv")
-                    .contentType(MediaType.parseMediaType("text/csv"))
-                    .body(resource);
-        } catch (Exception e) {
-            log.error("[ExportController] Error exporting revenue report to CSV", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+
+        RevenueReportRequest request = revenueRequest(branchId, customerId, startDate, endDate, period);
+        StreamingResponseBody body = out -> exportService.writeRevenueReport(request, ExportFormat.CSV, out);
+        return streaming("revenue_report_" + LocalDate.now() + ".csv", CSV_MEDIA_TYPE, body);
     }
 
-    @Operation(summary = "Export báo cáo chi phí CSV", description = "Xuất báo cáo chi phí ra file CSV")
+    @Operation(summary = "Export báo cáo chi phí CSV", description = "Xuất báo cáo chi phí ra file CSV, dữ liệu được ghi dần theo từng lô")
     @GetMapping("/expense/csv")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
-    public ResponseEntity<Resource> exportExpenseReportToCSV(
+    public ResponseEntity<StreamingResponseBody> exportExpenseReportToCSV(
             @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
             @Parameter(description = "ID xe") @RequestParam(required = false) Integer vehicleId,
             @Parameter(description = "Loại chi phí") @RequestParam(required = false) String expenseType,
             @Parameter(description = "Ngày bắt đầu") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @Parameter(description = "Ngày kết thúc") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
-        
+
         log.info("[ExportController] Exporting expense report to CSV");
-        
+
+        ExpenseReportRequest request = expenseRequest(branchId, vehicleId, expenseType, startDate, endDate);
+        StreamingResponseBody body = out -> exportService.writeExpenseReport(request, ExportFormat.CSV, out);
+        return streaming("expense_report_" + LocalDate.now() + ".csv", CSV_MEDIA_TYPE, body);
+    }
+
+    @Operation(summary = "Tạo job xuất báo cáo doanh thu", description = "Xuất file ở chế độ nền cho kỳ dài, tải về sau qua /api/export/jobs/{jobId}/file")
+    @PostMapping("/jobs/revenue")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    public ResponseEntity<ApiResponse<ExportJobResponse>> submitRevenueReportJob(
+            @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
+            @Parameter(description = "ID khách hàng") @RequestParam(required = false) Integer customerId,
+            @Parameter(description = "Ngày bắt đầu") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @Parameter(description = "Ngày kết thúc") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @Parameter(description = "Kỳ báo cáo") @RequestParam(required = false) String period,
+            @Parameter(description = "Định dạng: XLSX, CSV") @RequestParam(defaultValue = "XLSX") ExportFormat format,
+            Principal principal) {
         try {
-            ExpenseReportRequest request = new ExpenseReportRequest();
-            request.setBranchId(branchId);
-            request.setVehicleId(vehicleId);
-            request.setExpenseType(expenseType);
-            request.setStartDate(startDate);
-            request.setEndDate(endDate);
-            
-            Resource resource = exportService.exportExpenseReportToCSV(request);
-            
+            RevenueReportRequest request = revenueRequest(branchId, customerId, startDate, endDate, period);
+            return accepted(exportJobService.submitRevenueReport(request, format, principal.getName()));
+        } catch (Exception e) {
+            log.error("[ExportController] Error submitting revenue export job", e);
+            return jobError(e);
+        }
+    }
+
+    @Operation(summary = "Tạo job xuất báo cáo chi phí", description = "Xuất file ở chế độ nền cho kỳ dài, tải về sau qua /api/export/jobs/{jobId}/file")
+    @PostMapping("/jobs/expense")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    public ResponseEntity<ApiResponse<ExportJobResponse>> submitExpenseReportJob(
+            @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
+            @Parameter(description = "ID xe") @RequestParam(required = false) Integer vehicleId,
+            @Parameter(description = "Loại chi phí") @RequestParam(required = false) String expenseType,
+            @Parameter(description = "Ngày bắt đầu") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @Parameter(description = "Ngày kết thúc") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @Parameter(description = "Định dạng: XLSX, CSV") @RequestParam(defaultValue = "XLSX") ExportFormat format,
+            Principal principal) {
+        try {
+            ExpenseReportRequest request = expenseRequest(branchId, vehicleId, expenseType, startDate, endDate);
+            return accepted(exportJobService.submitExpenseReport(request, format, principal.getName()));
+        } catch (Exception e) {
+            log.error("[ExportController] Error submitting expense export job", e);
+            return jobError(e);
+        }
+    }
+
+    @Operation(summary = "Tạo job xuất danh sách invoices", description = "Xuất file ở chế độ nền, tải về sau qua /api/export/jobs/{jobId}/file")
+    @PostMapping("/jobs/invoices")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    public ResponseEntity<ApiResponse<ExportJobResponse>> submitInvoiceListJob(
+            @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
+            @Parameter(description = "Loại: INCOME, EXPENSE") @RequestParam(required = false) String type,
+            @Parameter(description = "Trạng thái: ACTIVE, CANCELLED") @RequestParam(required = false) String status,
+            @Parameter(description = "Định dạng: XLSX, CSV") @RequestParam(defaultValue = "XLSX") ExportFormat format,
+            Principal principal) {
+        try {
+            return accepted(exportJobService.submitInvoiceList(branchId, type, status, format, principal.getName()));
+        } catch (Exception e) {
+            log.error("[ExportController] Error submitting invoice export job", e);
+            return jobError(e);
+        }
+    }
+
+    @Operation(summary = "Trạng thái job xuất file", description = "Xem trạng thái job xuất file đã tạo")
+    @GetMapping("/jobs/{jobId}")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    public ResponseEntity<ApiResponse<ExportJobResponse>> getExportJob(
+            @Parameter(description = "ID job", required = true) @PathVariable String jobId,
+            Principal principal) {
+        try {
+            return ResponseEntity.ok(ApiResponse.<ExportJobResponse>builder()
+                    .success(true)
+                    .data(exportJobService.getJob(jobId, principal.getName()))
+                    .build());
+        } catch (Exception e) {
+            return jobError(e);
+        }
+    }
+
+    @Operation(summary = "Tải file của job xuất", description = "Tải file khi job đã hoàn thành")
+    @GetMapping("/jobs/{jobId}/file")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    public ResponseEntity<Resource> downloadExportJobFile(
+            @Parameter(description = "ID job", required = true) @PathVariable String jobId,
+            Principal principal) {
+        try {
+            ExportJobResponse job = exportJobService.getJob(jobId, principal.getName());
+            Resource resource = exportJobService.getJobFile(jobId, principal.getName());
             return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, 
-                            "attachment; filename=expense_report_" + LocalDate.now() + ".csv")
-                    .contentType(MediaType.parseMediaType("text/csv"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + job.getFileName())
+                    .contentType(job.getFormat() == ExportFormat.XLSX ? XLSX_MEDIA_TYPE : CSV_MEDIA_TYPE)
                     .body(resource);
         } catch (Exception e) {
-            log.error("[ExportController] Error exporting expense report to CSV", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            log.warn("[ExportController] Cannot download export job {}: {}", jobId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
-}
 
+    private ResponseEntity<StreamingResponseBody> streaming(String fileName, MediaType mediaType, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(mediaType)
+                .body(body);
+    }
+
+    private ResponseEntity<ApiResponse<ExportJobResponse>> accepted(ExportJobResponse job) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.<ExportJobResponse>builder()
+                        .success(true)
+                        .data(job)
+                        .build());
+    }
+
+    private ResponseEntity<ApiResponse<ExportJobResponse>> jobError(Exception e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.<ExportJobResponse>builder()
+                        .success(false)
+                        .message(e.getMessage())
+                        .build());
+    }
+
+    private RevenueReportRequest revenueRequest(Integer branchId, Integer customerId,
+                                                LocalDate startDate, LocalDate endDate, String period) {
+        RevenueReportRequest request = new RevenueReportRequest();
+        request.setBranchId(branchId);
+        request.setCustomerId(customerId);
+        request.setStartDate(startDate);
+        request.setEndDate(endDate);
+        request.setPeriod(period);
+        return request;
+    }
+
+    private ExpenseReportRequest expenseRequest(Integer branchId, Integer vehicleId, String expenseType,
+                                                LocalDate startDate, LocalDate endDate) {
+        ExpenseReportRequest request = new ExpenseReportRequest();
+        request.setBranchId(branchId);
+        request.setVehicleId(vehicleId);
+        request.setExpenseType(expenseType);
+        request.setStartDate(startDate);
+        request.setEndDate(endDate);
+        return request;
+    }
+}
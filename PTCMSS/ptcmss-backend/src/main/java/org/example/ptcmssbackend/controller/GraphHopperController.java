@@ -2,12 +2,16 @@ package org.example.ptcmssbackend.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.dto.request.GraphHopper.DistanceMatrixRequest;
 import org.example.ptcmssbackend.dto.response.common.ApiResponse;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceMatrixResult;
 import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
 import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
 import org.example.ptcmssbackend.dto.response.GraphHopper.RouteOption;
+import org.example.ptcmssbackend.service.DistanceService;
 import org.example.ptcmssbackend.service.GraphHopperService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +26,7 @@ import java.util.List;
 public class GraphHopperController {
 
     private final GraphHopperService graphHopperService;
+    private final DistanceService distanceService;
 
     @GetMapping("/autocomplete")
     @Operation(summary = "Autocomplete địa chỉ", description = "Tìm kiếm địa chỉ theo từ khóa sử dụng GraphHopper Geocoding API")
@@ -53,7 +58,10 @@ public class GraphHopperController {
             @RequestParam String to
     ) {
         try {
-            DistanceResult result = graphHopperService.calculateDistance(from, to);
+            DistanceResult result = distanceService.resolve(from, to);
+            if (result == null) {
+                throw new RuntimeException("Không tính được khoảng cách giữa hai địa chỉ");
+            }
             return ResponseEntity.ok(ApiResponse.<DistanceResult>builder()
                     .success(true)
                     .message("Distance calculated successfully")
@@ -70,6 +78,32 @@ public class GraphHopperController {
         }
     }
 
+    @PostMapping("/distance-matrix")
+    @Operation(summary = "Ma trận khoảng cách", description = "Tính khoảng cách giữa nhiều điểm đi và điểm đến trong 1 lần gọi (bỏ trống destinations = N x N)")
+    public ResponseEntity<ApiResponse<DistanceMatrixResult>> distanceMatrix(
+            @Valid @RequestBody DistanceMatrixRequest request
+    ) {
+        try {
+            List<String> destinations = request.getDestinations() == null || request.getDestinations().isEmpty()
+                    ? request.getOrigins()
+                    : request.getDestinations();
+            DistanceMatrixResult result = graphHopperService.distanceMatrix(request.getOrigins(), destinations);
+            return ResponseEntity.ok(ApiResponse.<DistanceMatrixResult>builder()
+                    .success(true)
+                    .message("Distance matrix calculated successfully")
+                    .data(result)
+                    .build());
+        } catch (Exception e) {
+            log.error("Distance matrix error", e);
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.<DistanceMatrixResult>builder()
+                            .success(false)
+                            .message("Error: " + e.getMessage())
+                            .data(null)
+                            .build());
+        }
+    }
+
     @GetMapping("/routes")
     @Operation(summary = "Lấy các tuyến đường thay thế", description = "Lấy nhiều tuyến đường khác nhau giữa 2 địa chỉ để khách chọn")
     public ResponseEntity<ApiResponse<List<RouteOption>>> getAlternativeRoutes(
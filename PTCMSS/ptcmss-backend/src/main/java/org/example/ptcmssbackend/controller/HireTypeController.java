@@ -1,8 +1,11 @@
 package org.example.ptcmssbackend.controller;
 
-import org.example.ptcmssbackend.entity.HireTypes;
-import org.example.ptcmssbackend.repository.HireTypesRepository;
+import jakarta.validation.Valid;
+import org.example.ptcmssbackend.dto.request.HireType.HireTypeRequest;
+import org.example.ptcmssbackend.dto.response.HireType.HireTypeResponse;
+import org.example.ptcmssbackend.service.HireTypeService;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -11,21 +14,41 @@ import java.util.List;
 @RequestMapping("/api/hire-types")
 public class HireTypeController {
 
-    private final HireTypesRepository hireTypesRepository;
+    private final HireTypeService hireTypeService;
 
-    public HireTypeController(HireTypesRepository hireTypesRepository) {
-        this.hireTypesRepository = hireTypesRepository;
+    public HireTypeController(HireTypeService hireTypeService) {
+        this.hireTypeService = hireTypeService;
     }
 
     @GetMapping
-    public ResponseEntity<List<HireTypes>> getAllHireTypes() {
-        List<HireTypes> hireTypes = hireTypesRepository.findAll();
+    public ResponseEntity<List<HireTypeResponse>> getAllHireTypes() {
+        List<HireTypeResponse> hireTypes = hireTypeService.listAll();
         return ResponseEntity.ok(hireTypes);
     }
 
     @GetMapping("/active")
-    public ResponseEntity<List<HireTypes>> getActiveHireTypes() {
-        List<HireTypes> hireTypes = hireTypesRepository.findByIsActiveTrue();
+    public ResponseEntity<List<HireTypeResponse>> getActiveHireTypes() {
+        List<HireTypeResponse> hireTypes = hireTypeService.listActive();
         return ResponseEntity.ok(hireTypes);
     }
+
+    @PostMapping
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    public ResponseEntity<HireTypeResponse> createHireType(@Valid @RequestBody HireTypeRequest request) {
+        return ResponseEntity.ok(hireTypeService.create(request));
+    }
+
+    @PutMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    public ResponseEntity<HireTypeResponse> updateHireType(@PathVariable Integer id,
+                                                           @Valid @RequestBody HireTypeRequest request) {
+        return ResponseEntity.ok(hireTypeService.update(id, request));
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    public ResponseEntity<Void> deleteHireType(@PathVariable Integer id) {
+        hireTypeService.delete(id);
+        return ResponseEntity.noContent().build();
+    }
 }
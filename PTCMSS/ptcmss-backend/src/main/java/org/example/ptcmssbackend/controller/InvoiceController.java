@@ -12,6 +12,7 @@ import org.example.ptcmssbackend.dto.request.Invoice.SendInvoiceRequest;
 import org.example.ptcmssbackend.dto.request.Invoice.VoidInvoiceRequest;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceResponse;
+import org.example.ptcmssbackend.dto.response.Invoice.InvoiceScrollResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.PaymentHistoryResponse;
 import org.example.ptcmssbackend.dto.response.common.ApiResponse;
 import org.example.ptcmssbackend.service.InvoiceService;
@@ -127,6 +128,40 @@ public class InvoiceController {
         }
     }
 
+    @Operation(summary = "Danh sách hóa đơn (keyset)", description = "Cuộn danh sách hóa đơn theo keyset cho trang sâu: truyền nextAfterId của trang trước vào afterId")
+    @GetMapping("/scroll")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT','CONSULTANT')")
+    public ResponseEntity<ApiResponse<InvoiceScrollResponse>> scrollInvoices(
+            @Parameter(description = "ID chi nhánh") @RequestParam(required = false) Integer branchId,
+            @Parameter(description = "Loại hóa đơn: INCOME, EXPENSE") @RequestParam(required = false) String type,
+            @Parameter(description = "Trạng thái: ACTIVE, CANCELLED") @RequestParam(required = false) String status,
+            @Parameter(description = "Trạng thái thanh toán: UNPAID, PAID, OVERDUE, REFUNDED") @RequestParam(required = false) String paymentStatus,
+            @Parameter(description = "Ngày bắt đầu (YYYY-MM-DD)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @Parameter(description = "Ngày kết thúc (YYYY-MM-DD)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @Parameter(description = "ID khách hàng") @RequestParam(required = false) Integer customerId,
+            @Parameter(description = "Tìm kiếm theo số HĐ, tên KH, mã đơn") @RequestParam(required = false) String keyword,
+            @Parameter(description = "ID hóa đơn cuối của trang trước (bỏ trống ở trang đầu)") @RequestParam(required = false) Integer afterId,
+            @Parameter(description = "Số lượng mỗi trang") @RequestParam(defaultValue = "20") int size) {
+
+        try {
+            InvoiceScrollResponse response = invoiceService.scrollInvoices(
+                    branchId, type, status, paymentStatus,
+                    startDate, endDate, customerId, keyword, afterId, size);
+
+            return ResponseEntity.ok(ApiResponse.<InvoiceScrollResponse>builder()
+                    .success(true)
+                    .data(response)
+                    .build());
+        } catch (Exception e) {
+            log.error("[InvoiceController] Error scrolling invoices", e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.<InvoiceScrollResponse>builder()
+                            .success(false)
+                            .message(e.getMessage())
+                            .build());
+        }
+    }
+
     @Operation(summary = "Cập nhật hóa đơn", description = "Cập nhật thông tin hóa đơn (không thể cập nhật hóa đơn đã thanh toán)")
     @PutMapping("/{invoiceId}")
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
@@ -9,9 +9,13 @@ import org.example.ptcmssbackend.dto.response.common.ResponseError;
 import org.example.ptcmssbackend.dto.response.notification.AlertResponse;
 import org.example.ptcmssbackend.dto.response.notification.ApprovalItemResponse;
 import org.example.ptcmssbackend.dto.response.notification.NotificationDashboardResponse;
+import org.example.ptcmssbackend.entity.Users;
 import org.example.ptcmssbackend.service.NotificationService;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -223,6 +227,7 @@ public class NotificationController {
             @PathVariable Integer userId,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int limit) {
+        checkOwnerOrAdmin(userId);
         try {
             log.info("[Notification] Get notifications for user {} (page={}, limit={})", userId, page, limit);
             Map<String, Object> result = notificationService.getUserNotifications(userId, page, limit);
@@ -235,6 +240,73 @@ public class NotificationController {
         }
     }
 
+    @Operation(
+            summary = "Lấy notifications của user theo cursor",
+            description = "Phân trang keyset theo (createdAt, id): truyền nextCursor của trang trước để lấy trang sau, không có cursor = trang đầu"
+    )
+    @GetMapping("/user/{userId}/feed")
+    public ResponseData<?> getUserNotificationFeed(
+            @PathVariable Integer userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        checkOwnerOrAdmin(userId);
+        try {
+            Map<String, Object> result = notificationService.getUserNotificationsByCursor(userId, cursor, limit);
+            return new ResponseData<>(HttpStatus.OK.value(), "Success", result);
+        } catch (Exception e) {
+            log.error("[Notification] Failed to load notification feed for user {}", userId, e);
+            return new ResponseError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        }
+    }
+
+    @Operation(
+            summary = "Số notification chưa đọc của user",
+            description = "Dùng cho badge: đọc từ bộ đếm trong bộ nhớ, không đếm lại trên bảng notifications"
+    )
+    @GetMapping("/user/{userId}/unread-count")
+    public ResponseData<?> getUnreadCount(@PathVariable Integer userId) {
+        checkOwnerOrAdmin(userId);
+        try {
+            long unreadCount = notificationService.getUnreadCount(userId);
+            return new ResponseData<>(HttpStatus.OK.value(), "Success", Map.of("unreadCount", unreadCount));
+        } catch (Exception e) {
+            log.error("[Notification] Failed to load unread count for user {}", userId, e);
+            return new ResponseError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        }
+    }
+
+    @Operation(
+            summary = "Đánh dấu notifications đã đọc",
+            description = "Body là danh sách notificationId; bỏ trống để đánh dấu tất cả notifications của user"
+    )
+    @PostMapping("/user/{userId}/read")
+    public ResponseData<?> markNotificationsRead(
+            @PathVariable Integer userId,
+            @RequestBody(required = false) List<Integer> notificationIds) {
+        checkOwnerOrAdmin(userId);
+        try {
+            int updated = notificationService.markNotificationsRead(userId, notificationIds);
+            return new ResponseData<>(HttpStatus.OK.value(), "Notifications marked as read", Map.of("updated", updated));
+        } catch (Exception e) {
+            log.error("[Notification] Failed to mark notifications as read for user {}", userId, e);
+            return new ResponseError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        }
+    }
+
+    /**
+     * Thông báo của user chỉ được xem/đánh dấu bởi chính user đó hoặc Admin.
+     * Gọi ngoài khối try để AccessDeniedException tới GlobalExceptionHandler (403).
+     */
+    private void checkOwnerOrAdmin(Integer userId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Users user
+                && (user.getId().equals(userId) || authentication.getAuthorities().stream()
+                        .anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority())))) {
+            return;
+        }
+        throw new AccessDeniedException("Bạn chỉ xem được thông báo của chính mình.");
+    }
+
     private final org.example.ptcmssbackend.service.impl.ApprovalSyncServiceImpl approvalSyncService;
     
     @Operation(
@@ -6,7 +6,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.example.ptcmssbackend.dto.request.Role.CreateRoleRequest;
 import org.example.ptcmssbackend.dto.request.Role.UpdateRoleRequest;
-import org.example.ptcmssbackend.entity.Roles;
+import org.example.ptcmssbackend.dto.response.Role.RoleResponse;
 import org.example.ptcmssbackend.enums.UserStatus;
 import org.example.ptcmssbackend.service.RoleService;
 import org.springframework.http.ResponseEntity;
@@ -26,14 +26,14 @@ public class RoleController {
     @Operation(summary = "Tạo vai trò mới", description = "Thêm vai trò mới cho hệ thống.")
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Roles> createRole(@RequestBody CreateRoleRequest request) {
+    public ResponseEntity<RoleResponse> createRole(@RequestBody CreateRoleRequest request) {
         return ResponseEntity.ok(roleService.createRole(request));
     }
 
     @Operation(summary = "Cập nhật vai trò", description = "Sửa tên hoặc mô tả vai trò.")
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Roles> updateRole(
+    public ResponseEntity<RoleResponse> updateRole(
             @Parameter(description = "ID vai trò") @PathVariable Integer id,
             @RequestBody UpdateRoleRequest request) {
         return ResponseEntity.ok(roleService.updateRole(id, request));
@@ -42,7 +42,7 @@ public class RoleController {
     @Operation(summary = "Danh sách vai trò", description = "Lấy danh sách tất cả các vai trò trong hệ thống.")
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'ACCOUNTANT')")
-    public ResponseEntity<List<Roles>> getAllRoles(
+    public ResponseEntity<List<RoleResponse>> getAllRoles(
             @Parameter(description = "Từ khóa tìm kiếm") @RequestParam(required = false) String keyword,
             @Parameter(description = "Trạng thái vai trò") @RequestParam(required = false) UserStatus status) {
         return ResponseEntity.ok(roleService.getAllRoles(keyword, status));
@@ -51,7 +51,7 @@ public class RoleController {
     @Operation(summary = "Chi tiết vai trò", description = "Xem thông tin chi tiết của một vai trò.")
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
-    public ResponseEntity<Roles> getRoleById(@Parameter(description = "ID vai trò") @PathVariable Integer id) {
+    public ResponseEntity<RoleResponse> getRoleById(@Parameter(description = "ID vai trò") @PathVariable Integer id) {
         return ResponseEntity.ok(roleService.getRoleById(id));
     }
 
@@ -0,0 +1,29 @@
+package org.example.ptcmssbackend.dto.request.Booking;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Kiểm tra khả dụng nhiều dòng (loại xe, số lượng) của 1 báo giá trong cùng chi nhánh/khoảng thời gian
+ */
+@Data
+public class CheckAvailabilityBatchRequest {
+
+    @NotNull(message = "Branch ID is required")
+    private Integer branchId;
+
+    @NotNull(message = "Start time is required")
+    private Instant startTime;
+
+    @NotNull(message = "End time is required")
+    private Instant endTime;
+
+    @NotEmpty(message = "Danh sách loại xe không được để trống")
+    @Valid
+    private List<VehicleDetailRequest> vehicles;
+}
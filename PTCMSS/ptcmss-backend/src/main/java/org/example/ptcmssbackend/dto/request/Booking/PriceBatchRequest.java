@@ -0,0 +1,20 @@
+package org.example.ptcmssbackend.dto.request.Booking;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Tính giá nhiều báo giá trong 1 request
+ */
+@Data
+public class PriceBatchRequest {
+
+    @NotEmpty(message = "Danh sách báo giá không được để trống")
+    @Size(max = 200, message = "Tối đa 200 báo giá mỗi lần")
+    @Valid
+    private List<PriceQuoteRequest> quotes;
+}
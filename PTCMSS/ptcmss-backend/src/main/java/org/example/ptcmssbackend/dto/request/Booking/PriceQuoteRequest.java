@@ -0,0 +1,37 @@
+package org.example.ptcmssbackend.dto.request.Booking;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 1 báo giá cần tính giá (cùng tham số với /api/bookings/calculate-price)
+ */
+@Data
+public class PriceQuoteRequest {
+
+    // Mã tham chiếu phía client, trả lại nguyên vẹn trong kết quả
+    private String ref;
+
+    @NotEmpty(message = "Danh sách loại xe không được để trống")
+    private List<Integer> vehicleCategoryIds;
+
+    // Số lượng tương ứng từng loại xe (thiếu = 1)
+    private List<Integer> quantities;
+
+    private Double distance;
+
+    private Boolean useHighway = false;
+
+    private Integer hireTypeId;
+
+    private Boolean isHoliday = false;
+
+    private Boolean isWeekend = false;
+
+    private Instant startTime;
+
+    private Instant endTime;
+}
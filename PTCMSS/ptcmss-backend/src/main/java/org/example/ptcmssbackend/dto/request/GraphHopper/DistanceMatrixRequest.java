@@ -0,0 +1,21 @@
+package org.example.ptcmssbackend.dto.request.GraphHopper;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Ma trận khoảng cách: điểm đi x điểm đến. Bỏ trống destinations thì dùng chính origins (N x N).
+ */
+@Data
+public class DistanceMatrixRequest {
+
+    @NotEmpty(message = "Danh sách điểm đi không được để trống")
+    @Size(max = 100, message = "Tối đa 100 điểm đi mỗi lần")
+    private List<String> origins;
+
+    @Size(max = 100, message = "Tối đa 100 điểm đến mỗi lần")
+    private List<String> destinations;
+}
@@ -0,0 +1,20 @@
+package org.example.ptcmssbackend.dto.request.HireType;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class HireTypeRequest {
+    @NotBlank
+    @Size(max = 30)
+    private String code;
+    @NotBlank
+    @Size(max = 100)
+    private String name;
+    @Size(max = 255)
+    private String description;
+    private Boolean isActive;
+}
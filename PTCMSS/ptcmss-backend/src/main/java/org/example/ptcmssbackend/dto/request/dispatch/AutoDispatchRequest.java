@@ -0,0 +1,12 @@
+package org.example.ptcmssbackend.dto.request.dispatch;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class AutoDispatchRequest {
+    private Integer branchId;
+    private LocalDate date;   // null = hôm nay
+    private Boolean dryRun;   // true = chỉ trả kế hoạch, không ghi phân công
+}
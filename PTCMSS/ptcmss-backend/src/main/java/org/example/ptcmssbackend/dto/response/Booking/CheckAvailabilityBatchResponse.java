@@ -0,0 +1,16 @@
+package org.example.ptcmssbackend.dto.response.Booking;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class CheckAvailabilityBatchResponse {
+    // true nếu mọi loại xe trong báo giá đều đủ xe
+    private boolean ok;
+
+    // Kết quả theo từng loại xe (các dòng cùng loại xe được cộng dồn số lượng)
+    private List<CheckAvailabilityResponse> items;
+}
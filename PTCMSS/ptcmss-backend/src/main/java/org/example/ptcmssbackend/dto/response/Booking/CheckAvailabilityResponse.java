@@ -11,6 +11,7 @@ import java.util.List;
 @Data
 @Builder
 public class CheckAvailabilityResponse {
+    private Integer categoryId;
     private boolean ok;
     private int availableCount;
     private int needed;
@@ -13,6 +13,8 @@ public class ConsultantDashboardResponse {
     private List<BookingListResponse> pendingBookings; // Chờ báo giá
     private List<BookingListResponse> sentQuotations; // Đã gửi báo giá (chờ khách xác nhận)
     private List<BookingListResponse> confirmedBookings; // Đã xác nhận (chờ điều phối)
+    private Integer page; // Trang của 3 danh sách trên (tổng số đơn: total*Count)
+    private Integer pageSize;
     
     // Thống kê
     private Long totalPendingCount;
@@ -0,0 +1,21 @@
+package org.example.ptcmssbackend.dto.response.Booking;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+public class PriceQuoteResponse {
+    // Mã tham chiếu client gửi lên
+    private String ref;
+
+    private boolean success;
+
+    // Giá ước tính (null nếu lỗi)
+    private BigDecimal price;
+
+    // Lý do lỗi (null nếu thành công)
+    private String message;
+}
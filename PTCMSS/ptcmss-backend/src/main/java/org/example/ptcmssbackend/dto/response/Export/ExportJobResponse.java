@@ -0,0 +1,29 @@
+package org.example.ptcmssbackend.dto.response.Export;
+
+import lombok.Builder;
+import lombok.Data;
+import org.example.ptcmssbackend.enums.ExportFormat;
+import org.example.ptcmssbackend.enums.ExportJobStatus;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class ExportJobResponse {
+
+    private String jobId;
+    private ExportJobStatus status;
+    private ExportFormat format;
+    private String fileName;
+
+    // Số dòng dữ liệu đã ghi (khi COMPLETED)
+    private Long rowCount;
+    private Long fileSize;
+    private String errorMessage;
+
+    private Instant createdAt;
+    private Instant completedAt;
+
+    // Đường dẫn tải file (khi COMPLETED)
+    private String downloadUrl;
+}
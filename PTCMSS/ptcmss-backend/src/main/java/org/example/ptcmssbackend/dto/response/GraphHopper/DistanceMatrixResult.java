@@ -0,0 +1,19 @@
+package org.example.ptcmssbackend.dto.response.GraphHopper;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DistanceMatrixResult {
+    private List<String> origins;                  // Điểm đi (theo thứ tự request)
+    private List<String> destinations;             // Điểm đến (theo thứ tự request)
+    private List<List<Double>> distancesKm;        // [điểm đi][điểm đến], null nếu không tính được
+    private List<List<Double>> durationsMinutes;   // [điểm đi][điểm đến], null nếu không tính được
+}
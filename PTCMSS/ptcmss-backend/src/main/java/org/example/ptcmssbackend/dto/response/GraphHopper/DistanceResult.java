@@ -14,4 +14,5 @@ public class DistanceResult {
     private Double durationMinutes;  // Thời gian (phút)
     private String from;             // Địa chỉ điểm đi
     private String to;               // Địa chỉ điểm đến
+    private String source;           // CACHE / GRAPHHOPPER / ESTIMATE (null nếu gọi trực tiếp GraphHopperService)
 }
@@ -0,0 +1,30 @@
+package org.example.ptcmssbackend.dto.response.HireType;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import org.example.ptcmssbackend.entity.HireTypes;
+
+/**
+ * Loại thuê trả về cho client; bất biến vì được giữ trong cache dùng chung
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class HireTypeResponse {
+    private final Integer id;
+    private final String code;
+    private final String name;
+    private final String description;
+    private final Boolean isActive;
+
+    public static HireTypeResponse from(HireTypes hireType) {
+        return HireTypeResponse.builder()
+                .id(hireType.getId())
+                .code(hireType.getCode())
+                .name(hireType.getName())
+                .description(hireType.getDescription())
+                .isActive(hireType.getIsActive())
+                .build();
+    }
+}
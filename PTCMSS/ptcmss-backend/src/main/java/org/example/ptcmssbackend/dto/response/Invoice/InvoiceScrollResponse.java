@@ -0,0 +1,15 @@
+package org.example.ptcmssbackend.dto.response.Invoice;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Trang hóa đơn theo keyset (không đếm tổng): dùng nextAfterId để lấy trang tiếp theo
+ */
+@Data
+public class InvoiceScrollResponse {
+    private List<InvoiceListResponse> items;
+    private Integer nextAfterId; // null nếu hết dữ liệu
+    private boolean hasNext;
+}
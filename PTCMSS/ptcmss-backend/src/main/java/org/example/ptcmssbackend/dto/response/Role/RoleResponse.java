@@ -0,0 +1,29 @@
+package org.example.ptcmssbackend.dto.response.Role;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import org.example.ptcmssbackend.entity.Roles;
+import org.example.ptcmssbackend.enums.UserStatus;
+
+/**
+ * Vai trò trả về cho client; bất biến vì được giữ trong cache dùng chung
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class RoleResponse {
+    private final Integer id;
+    private final String roleName;
+    private final String description;
+    private final UserStatus status;
+
+    public static RoleResponse from(Roles role) {
+        return RoleResponse.builder()
+                .id(role.getId())
+                .roleName(role.getRoleName())
+                .description(role.getDescription())
+                .status(role.getStatus())
+                .build();
+    }
+}
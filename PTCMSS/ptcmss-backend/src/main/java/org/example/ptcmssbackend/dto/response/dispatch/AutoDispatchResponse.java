@@ -0,0 +1,55 @@
+package org.example.ptcmssbackend.dto.response.dispatch;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+public class AutoDispatchResponse {
+
+    private Integer branchId;
+    private LocalDate date;
+    private boolean dryRun;
+
+    private int totalTrips;
+    private int assignedTrips;
+
+    // Tổng chi phí kế hoạch (điểm công bằng tài xế + số ghế dư của xe), thấp = tốt
+    private long totalScore;
+    // Tìm kiếm cục bộ dừng vì hết thời gian cho phép
+    private boolean timedOut;
+    private long planningMillis;
+
+    private List<PlannedTrip> assignments;
+    private List<UnassignedTrip> unassigned;
+
+    @Data
+    @Builder
+    public static class PlannedTrip {
+        private Integer tripId;
+        private Integer bookingId;
+        private Instant startTime;
+        private Instant endTime;
+
+        private Integer driverId;
+        private String driverName;
+        private Integer driverScore;
+
+        private Integer vehicleId;
+        private String vehicleLicensePlate;
+        private Integer vehicleScore;
+    }
+
+    @Data
+    @Builder
+    public static class UnassignedTrip {
+        private Integer tripId;
+        private Integer bookingId;
+        private Instant startTime;
+        private String reason;
+    }
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 
 @Data
@@ -21,6 +22,12 @@ public class DispatchDashboardResponse {
     private Integer completedCount;    // Số chuyến đã hoàn thành
     private Integer inProgressCount;   // Số chuyến đang thực hiện
 
+    // Cửa sổ thời gian của trang hiện tại [windowStart, windowEnd)
+    private Instant windowStart;
+    private Instant windowEnd;
+    private LocalDate nextCursor;      // Truyền lại làm cursor để tải cửa sổ kế tiếp
+    private Boolean hasMore;           // Còn chuyến sau windowEnd
+
     private List<PendingTripResponse> pendingTrips;
     private List<DriverScheduleItem> driverSchedules;
     private List<VehicleScheduleItem> vehicleSchedules;
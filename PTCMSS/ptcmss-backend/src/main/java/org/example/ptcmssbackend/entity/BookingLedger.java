@@ -0,0 +1,37 @@
+package org.example.ptcmssbackend.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Sổ cái tóm tắt của 1 đơn hàng: cộng dồn payment của tất cả hóa đơn thuộc đơn hàng.
+ * Số còn lại = totalCost - confirmedPaid, tính khi đọc vì totalCost có thể đổi khi sửa đơn.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "booking_ledger")
+public class BookingLedger {
+    @Id
+    @Column(name = "bookingId", nullable = false)
+    private Integer bookingId;
+
+    @NotNull
+    @Column(name = "confirmedPaid", nullable = false, precision = 18, scale = 2)
+    private BigDecimal confirmedPaid = BigDecimal.ZERO;
+
+    @NotNull
+    @Column(name = "pendingAmount", nullable = false, precision = 18, scale = 2)
+    private BigDecimal pendingAmount = BigDecimal.ZERO;
+
+    @Column(name = "lastPaymentAt")
+    private Instant lastPaymentAt;
+
+    @Column(name = "updatedAt")
+    private Instant updatedAt;
+}
@@ -0,0 +1,78 @@
+package org.example.ptcmssbackend.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+import org.example.ptcmssbackend.enums.EmailOutboxStatus;
+
+import java.time.Instant;
+
+/**
+ * Hàng đợi email gửi đi: nội dung đã render sẵn, worker nền gửi và thử lại khi lỗi.
+ * Được ghi trong giao dịch của nghiệp vụ nên email chỉ đi khi giao dịch commit.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "IX_EmailOutbox_Status_NextAttempt", columnList = "status, nextAttemptAt"),
+        @Index(name = "IX_EmailOutbox_ClaimToken", columnList = "claimToken")
+})
+public class EmailOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "emailId", nullable = false)
+    private Integer id;
+
+    @Size(max = 255)
+    @NotNull
+    @Column(name = "toEmail", nullable = false)
+    private String toEmail;
+
+    @Size(max = 255)
+    @Column(name = "fromName")
+    private String fromName;
+
+    @Size(max = 255)
+    @NotNull
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    // Xóa sau khi gửi thành công (email thông tin đăng nhập chứa mật khẩu)
+    @Lob
+    @Column(name = "htmlBody", columnDefinition = "TEXT")
+    private String htmlBody;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private EmailOutboxStatus status = EmailOutboxStatus.PENDING;
+
+    @NotNull
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @NotNull
+    @Column(name = "nextAttemptAt", nullable = false)
+    private Instant nextAttemptAt;
+
+    // Worker đang giữ email (UUID của lượt nhận), null khi không ai giữ
+    @Size(max = 36)
+    @Column(name = "claimToken", length = 36)
+    private String claimToken;
+
+    @Column(name = "claimedAt")
+    private Instant claimedAt;
+
+    @Size(max = 500)
+    @Column(name = "lastError", length = 500)
+    private String lastError;
+
+    @Column(name = "createdAt", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "sentAt")
+    private Instant sentAt;
+}
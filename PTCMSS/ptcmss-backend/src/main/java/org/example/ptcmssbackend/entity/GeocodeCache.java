@@ -0,0 +1,43 @@
+package org.example.ptcmssbackend.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Tọa độ đã geocode của 1 địa chỉ (key là địa chỉ đã chuẩn hóa)
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "geocode_cache")
+public class GeocodeCache {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "geocodeId", nullable = false)
+    private Integer id;
+
+    @Size(max = 255)
+    @NotNull
+    @Column(name = "addressKey", nullable = false, unique = true)
+    private String addressKey;
+
+    @Size(max = 500)
+    @Column(name = "fullAddress", length = 500)
+    private String fullAddress;
+
+    @NotNull
+    @Column(name = "latitude", nullable = false)
+    private Double latitude;
+
+    @NotNull
+    @Column(name = "longitude", nullable = false)
+    private Double longitude;
+
+    @Column(name = "updatedAt")
+    private Instant updatedAt;
+}
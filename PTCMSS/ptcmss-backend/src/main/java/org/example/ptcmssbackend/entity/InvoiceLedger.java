@@ -0,0 +1,46 @@
+package org.example.ptcmssbackend.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Sổ cái tóm tắt của 1 hóa đơn: tổng đã thu (CONFIRMED), tổng đang chờ duyệt (PENDING), số dư.
+ * Được cập nhật trong cùng giao dịch với payment_history, nên đọc số dư không cần SUM lại.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "invoice_ledger")
+public class InvoiceLedger {
+    @Id
+    @Column(name = "invoiceId", nullable = false)
+    private Integer invoiceId;
+
+    @Column(name = "bookingId")
+    private Integer bookingId;
+
+    @NotNull
+    @Column(name = "confirmedPaid", nullable = false, precision = 18, scale = 2)
+    private BigDecimal confirmedPaid = BigDecimal.ZERO;
+
+    @NotNull
+    @Column(name = "pendingAmount", nullable = false, precision = 18, scale = 2)
+    private BigDecimal pendingAmount = BigDecimal.ZERO;
+
+    // amount - confirmedPaid
+    @NotNull
+    @Column(name = "balance", nullable = false, precision = 18, scale = 2)
+    private BigDecimal balance = BigDecimal.ZERO;
+
+    // Ngày thanh toán CONFIRMED gần nhất
+    @Column(name = "lastPaymentAt")
+    private Instant lastPaymentAt;
+
+    @Column(name = "updatedAt")
+    private Instant updatedAt;
+}
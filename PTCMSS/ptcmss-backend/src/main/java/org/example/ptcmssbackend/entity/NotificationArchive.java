@@ -0,0 +1,47 @@
+package org.example.ptcmssbackend.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Thông báo cũ được chuyển khỏi bảng notifications bởi job lưu trữ, giữ nguyên id gốc.
+ * Không khóa ngoại tới users để việc lưu trữ không phụ thuộc vòng đời tài khoản.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "notifications_archive", indexes = {
+        @Index(name = "IX_NotificationsArchive_User_CreatedAt", columnList = "userId, createdAt")
+})
+public class NotificationArchive {
+    @Id
+    @Column(name = "notificationId", nullable = false)
+    private Integer id;
+
+    @NotNull
+    @Column(name = "userId", nullable = false)
+    private Integer userId;
+
+    @Size(max = 100)
+    @Column(name = "title", length = 100)
+    private String title;
+
+    @Size(max = 500)
+    @Column(name = "message", length = 500)
+    private String message;
+
+    @Column(name = "createdAt")
+    private Instant createdAt;
+
+    @Column(name = "isRead")
+    private Boolean isRead;
+
+    @NotNull
+    @Column(name = "archivedAt", nullable = false)
+    private Instant archivedAt;
+}
@@ -13,7 +13,10 @@ import java.time.Instant;
 @Getter
 @Setter
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+        @Index(name = "IX_Notifications_User_CreatedAt", columnList = "userId, createdAt, notificationId"),
+        @Index(name = "IX_Notifications_CreatedAt", columnList = "createdAt")
+})
 public class Notifications {
     @Id
     @Column(name = "notificationId", nullable = false)
@@ -0,0 +1,38 @@
+package org.example.ptcmssbackend.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Khoảng cách / thời gian di chuyển giữa 2 tọa độ (key: "lat,lng;lat,lng" làm tròn 5 chữ số)
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "route_cache")
+public class RouteCache {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "routeId", nullable = false)
+    private Integer id;
+
+    @Size(max = 100)
+    @NotNull
+    @Column(name = "routeKey", nullable = false, unique = true, length = 100)
+    private String routeKey;
+
+    @NotNull
+    @Column(name = "distanceKm", nullable = false)
+    private Double distanceKm;
+
+    @Column(name = "durationMinutes")
+    private Double durationMinutes;
+
+    @Column(name = "updatedAt")
+    private Instant updatedAt;
+}
@@ -0,0 +1,8 @@
+package org.example.ptcmssbackend.enums;
+
+public enum EmailOutboxStatus {
+    PENDING,   // Chờ gửi (kể cả chờ gửi lại sau lỗi)
+    SENDING,   // Đã được worker nhận, đang gửi
+    SENT,      // Gửi thành công
+    FAILED     // Hết số lần thử
+}
@@ -0,0 +1,6 @@
+package org.example.ptcmssbackend.enums;
+
+public enum ExportFormat {
+    CSV,    // text/csv, UTF-8 có BOM để Excel đọc đúng tiếng Việt
+    XLSX    // Office Open XML, 1 sheet, ghi dần từng dòng
+}
@@ -0,0 +1,8 @@
+package org.example.ptcmssbackend.enums;
+
+public enum ExportJobStatus {
+    PENDING,    // Đang chờ trong hàng đợi
+    RUNNING,    // Đang ghi file
+    COMPLETED,  // File đã sẵn sàng để tải
+    FAILED      // Lỗi khi xuất
+}
@@ -0,0 +1,22 @@
+package org.example.ptcmssbackend.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.example.ptcmssbackend.entity.Branches;
+import org.example.ptcmssbackend.entity.Users;
+import org.example.ptcmssbackend.enums.ApprovalType;
+
+/**
+ * Phát ra khi tạo một yêu cầu cần phê duyệt (nghỉ phép tài xế, yêu cầu chi phí...).
+ * ApprovalServiceImpl ghi ApprovalHistory PENDING ngay trước khi giao dịch tạo yêu cầu commit,
+ * nên yêu cầu và lịch sử phê duyệt luôn được lưu (hoặc rollback) cùng nhau.
+ */
+@Getter
+@AllArgsConstructor
+public class ApprovalRequestedEvent {
+    private final ApprovalType approvalType;
+    private final Integer relatedEntityId;
+    private final Users requestedBy;
+    private final String requestReason;
+    private final Branches branch;
+}
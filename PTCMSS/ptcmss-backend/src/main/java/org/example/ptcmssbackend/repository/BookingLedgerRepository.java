@@ -0,0 +1,26 @@
+package org.example.ptcmssbackend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.example.ptcmssbackend.entity.BookingLedger;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface BookingLedgerRepository extends JpaRepository<BookingLedger, Integer> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l FROM BookingLedger l WHERE l.bookingId = :bookingId")
+    Optional<BookingLedger> findForUpdate(@Param("bookingId") Integer bookingId);
+
+    // Như InvoiceLedgerRepository.insertIfAbsent
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO booking_ledger (bookingId, confirmedPaid, pendingAmount) VALUES (:bookingId, 0, 0) " +
+            "ON DUPLICATE KEY UPDATE bookingId = bookingId", nativeQuery = true)
+    int insertIfAbsent(@Param("bookingId") Integer bookingId);
+}
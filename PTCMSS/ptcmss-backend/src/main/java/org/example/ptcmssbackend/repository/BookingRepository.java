@@ -88,23 +88,47 @@ public interface BookingRepository extends JpaRepository<Bookings, Integer> {
             @Param("consultantId") Integer consultantId
     );
 
-    // Lấy bookings chờ báo giá (PENDING)
-    @Query("SELECT b FROM Bookings b WHERE b.status = 'PENDING' " +
-            "AND (:branchId IS NULL OR b.branch.id = :branchId) " +
+    // Số booking theo từng status (1 truy vấn cho mọi thẻ đếm của dashboard). Cột: status, count
+    @Query("SELECT b.status, COUNT(b) FROM Bookings b " +
+            "WHERE (:branchId IS NULL OR b.branch.id = :branchId) " +
             "AND (:consultantId IS NULL OR b.consultant.employeeId = :consultantId) " +
-            "ORDER BY b.createdAt DESC")
-    List<Bookings> findPendingBookings(
+            "GROUP BY b.status")
+    List<Object[]> countGroupByStatus(
             @Param("branchId") Integer branchId,
             @Param("consultantId") Integer consultantId
     );
 
-    // Lấy bookings đã gửi báo giá (CONFIRMED - khách đã đồng ý)
-    @Query("SELECT b FROM Bookings b WHERE b.status = 'CONFIRMED' " +
+    /**
+     * Giờ khởi hành các chuyến trong [startDate, endDate] kèm booking và status, để nhóm theo tháng ở tầng service
+     * (YEAR()/MONTH() trong DB tính theo múi giờ của DB, không phải của ứng dụng). Cột: bookingId, status, startTime
+     */
+    @Query("SELECT DISTINCT b.id, b.status, t.startTime FROM Trips t " +
+            "JOIN t.booking b " +
+            "WHERE t.startTime >= :startDate AND t.startTime <= :endDate " +
             "AND (:branchId IS NULL OR b.branch.id = :branchId) " +
-            "AND (:consultantId IS NULL OR b.consultant.employeeId = :consultantId) " +
-            "ORDER BY b.createdAt DESC")
-    List<Bookings> findConfirmedBookings(
+            "AND (:consultantId IS NULL OR b.consultant.employeeId = :consultantId)")
+    List<Object[]> findTripStartsInRange(
             @Param("branchId") Integer branchId,
-            @Param("consultantId") Integer consultantId
+            @Param("consultantId") Integer consultantId,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate
+    );
+
+    // Danh sách booking theo status cho dashboard (mới nhất trước, có phân trang),
+    // kèm customer/consultant/branch để không nạp lười từng dòng
+    @Query("SELECT b FROM Bookings b " +
+            "LEFT JOIN FETCH b.customer " +
+            "LEFT JOIN FETCH b.consultant c " +
+            "LEFT JOIN FETCH c.user " +
+            "LEFT JOIN FETCH b.branch br " +
+            "WHERE b.status = :status " +
+            "AND (:branchId IS NULL OR br.id = :branchId) " +
+            "AND (:consultantId IS NULL OR c.employeeId = :consultantId) " +
+            "ORDER BY b.createdAt DESC, b.id DESC")
+    List<Bookings> findDashboardBookings(
+            @Param("status") BookingStatus status,
+            @Param("branchId") Integer branchId,
+            @Param("consultantId") Integer consultantId,
+            Pageable pageable
     );
 }
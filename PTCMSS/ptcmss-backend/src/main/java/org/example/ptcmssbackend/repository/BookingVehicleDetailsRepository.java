@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -16,6 +17,21 @@ public interface BookingVehicleDetailsRepository extends JpaRepository<BookingVe
     // Lấy tất cả vehicle details của một booking
     @Query("SELECT bvd FROM BookingVehicleDetails bvd WHERE bvd.booking.id = :bookingId")
     List<BookingVehicleDetails> findByBookingId(@Param("bookingId") Integer bookingId);
+
+    // Chi tiết loại xe của nhiều booking (kèm loại xe), cùng thứ tự dòng với findByBookingId
+    @Query("SELECT bvd FROM BookingVehicleDetails bvd JOIN FETCH bvd.vehicleCategory vc " +
+           "WHERE bvd.booking.id IN :bookingIds ORDER BY bvd.booking.id, vc.id")
+    List<BookingVehicleDetails> findByBookingIdIn(@Param("bookingIds") Collection<Integer> bookingIds);
+
+    // Số ghế lớn nhất theo booking. Cột: bookingId, maxSeats
+    @Query("SELECT bvd.booking.id, MAX(vc.seats) FROM BookingVehicleDetails bvd JOIN bvd.vehicleCategory vc " +
+           "WHERE bvd.booking.id IN :bookingIds GROUP BY bvd.booking.id")
+    List<Object[]> findMaxSeatsByBookingIds(@Param("bookingIds") Collection<Integer> bookingIds);
+
+    // Tổng số xe (quantity) theo booking. Cột: bookingId, totalQuantity
+    @Query("SELECT bvd.booking.id, SUM(bvd.quantity) FROM BookingVehicleDetails bvd " +
+           "WHERE bvd.booking.id IN :bookingIds GROUP BY bvd.booking.id")
+    List<Object[]> sumQuantityByBookingIds(@Param("bookingIds") Collection<Integer> bookingIds);
     
     // Xóa tất cả vehicle details của một booking
     void deleteByBooking_Id(Integer bookingId);
@@ -93,5 +109,36 @@ public interface BookingVehicleDetailsRepository extends JpaRepository<BookingVe
             @Param("startTime") Instant startTime,
             @Param("endTime") Instant endTime
     );
-}
 
+    /**
+     * Như countReservedQuantityByDepositWithoutAssignedVehicles nhưng gộp theo loại xe:
+     * trả về (categoryId, reservedQuantity) cho mọi loại xe của chi nhánh trong 1 truy vấn
+     */
+    @Query("""
+        SELECT bvd.vehicleCategory.id, COALESCE(SUM(bvd.quantity), 0)
+        FROM BookingVehicleDetails bvd
+        JOIN bvd.booking b
+        JOIN Trips t ON t.booking.id = b.id
+        WHERE b.branch.id = :branchId
+          AND b.status != 'CANCELLED'
+          AND t.startTime < :endTime
+          AND t.endTime > :startTime
+          AND NOT EXISTS (
+            SELECT tv.id FROM TripVehicles tv
+            WHERE tv.trip.booking.id = b.id
+          )
+          AND (
+            SELECT COALESCE(SUM(ph.amount), 0)
+            FROM PaymentHistory ph
+            JOIN Invoices inv ON ph.invoice.id = inv.id
+            WHERE inv.booking.id = b.id
+              AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED
+          ) > 0
+        GROUP BY bvd.vehicleCategory.id
+    """)
+    List<Object[]> sumReservedQuantityByDepositGroupByCategory(
+            @Param("branchId") Integer branchId,
+            @Param("startTime") Instant startTime,
+            @Param("endTime") Instant endTime
+    );
+}
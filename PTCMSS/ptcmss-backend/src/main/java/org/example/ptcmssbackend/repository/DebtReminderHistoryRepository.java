@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,5 +20,12 @@ public interface DebtReminderHistoryRepository extends JpaRepository<DebtReminde
     
     @Query("SELECT drh FROM DebtReminderHistory drh WHERE drh.invoice.id = :invoiceId ORDER BY drh.reminderDate DESC LIMIT 1")
     Optional<DebtReminderHistory> findLatestByInvoiceId(@Param("invoiceId") Integer invoiceId);
+
+    /**
+     * Lần nhắc nợ gần nhất của nhiều hóa đơn trong 1 truy vấn. Cột: invoiceId, MAX(reminderDate)
+     */
+    @Query("SELECT drh.invoice.id, MAX(drh.reminderDate) FROM DebtReminderHistory drh " +
+            "WHERE drh.invoice.id IN :invoiceIds GROUP BY drh.invoice.id")
+    List<Object[]> findLatestReminderDates(@Param("invoiceIds") Collection<Integer> invoiceIds);
 }
 
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -21,4 +22,21 @@ public interface DriverDayOffRepository extends JpaRepository<DriverDayOff, Inte
     
     // Tìm tất cả đơn nghỉ theo status
     List<DriverDayOff> findByStatus(DriverDayOffStatus status);
+
+    // Đối soát: đơn nghỉ PENDING chưa có ApprovalHistory PENDING (anti-join, chỉ lấy đơn có user yêu cầu)
+    @Query("SELECT d FROM DriverDayOff d " +
+            "JOIN FETCH d.driver dr " +
+            "JOIN FETCH dr.employee e " +
+            "JOIN FETCH e.user " +
+            "LEFT JOIN FETCH dr.branch " +
+            "WHERE d.status = org.example.ptcmssbackend.enums.DriverDayOffStatus.PENDING " +
+            "AND NOT EXISTS (SELECT 1 FROM ApprovalHistory ah " +
+            "WHERE ah.approvalType = org.example.ptcmssbackend.enums.ApprovalType.DRIVER_DAY_OFF " +
+            "AND ah.relatedEntityId = d.id " +
+            "AND ah.status = org.example.ptcmssbackend.enums.ApprovalStatus.PENDING)")
+    List<DriverDayOff> findPendingWithoutApprovalHistory();
+
+    // Trong danh sách tài xế, lấy những tài xế có đơn nghỉ (theo status) trùng ngày
+    @Query("SELECT DISTINCT d.driver.id FROM DriverDayOff d WHERE d.driver.id IN :driverIds AND d.status = :status AND d.startDate <= :date AND d.endDate >= :date")
+    List<Integer> findDriverIdsWithDayOffOnDate(Collection<Integer> driverIds, DriverDayOffStatus status, LocalDate date);
 }
@@ -1,11 +1,15 @@
 package org.example.ptcmssbackend.repository;
 
+import jakarta.persistence.LockModeType;
 import org.example.ptcmssbackend.dto.response.Driver.DriverResponse;
 import org.example.ptcmssbackend.entity.Drivers;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -15,6 +19,20 @@ public interface DriverRepository extends JpaRepository<Drivers, Integer> {
     Optional<Drivers> findByEmployee_EmployeeId(Integer employeeId);
     boolean existsByLicenseNumber(String licenseNumber);
 
+    /**
+     * Khóa dòng tài xế (SELECT ... FOR UPDATE) khi giữ chỗ tài xế cho chuyến
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Drivers d WHERE d.id = :driverId")
+    Optional<Drivers> findForUpdate(@Param("driverId") Integer driverId);
+
+    /**
+     * Khóa nhiều tài xế trong 1 câu lệnh, theo id tăng dần (cùng thứ tự khóa với findForUpdate từng dòng)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Drivers d WHERE d.id IN :driverIds ORDER BY d.id")
+    List<Drivers> findAllForUpdate(@Param("driverIds") Collection<Integer> driverIds);
+
 
     @Query("SELECT d FROM Drivers d WHERE d.employee.branch.id = :branchId AND d.status = 'ACTIVE'")
     List<Drivers> findAvailableDrivers(Integer branchId);
@@ -24,9 +42,29 @@ public interface DriverRepository extends JpaRepository<Drivers, Integer> {
     @Query("SELECT d FROM Drivers d WHERE d.branch.id = :branchId")
     List<Drivers> findByBranchId(Integer branchId);
 
+    // Tài xế của chi nhánh kèm employee/user (tên, số điện thoại trên bảng điều phối)
+    @Query("SELECT d FROM Drivers d LEFT JOIN FETCH d.employee e LEFT JOIN FETCH e.user WHERE d.branch.id = :branchId")
+    List<Drivers> findByBranchIdWithUser(@Param("branchId") Integer branchId);
+
     @Query("SELECT new org.example.ptcmssbackend.dto.response.Driver.DriverResponse(d) FROM Drivers d WHERE d.branch.id = :branchId")
     List<DriverResponse> findAllByBranchId(Integer branchId);
 
     // Lấy tất cả driver của 1 chi nhánh
 
+    /**
+     * Tài xế có bằng lái hết hạn trước ngày cho trước (kèm employee/user để lấy tên khi tạo cảnh báo)
+     */
+    @Query("SELECT d FROM Drivers d LEFT JOIN FETCH d.employee e LEFT JOIN FETCH e.user " +
+           "WHERE d.licenseExpiry < :before")
+    List<Drivers> findWithLicenseExpiringBefore(@Param("before") LocalDate before);
+
+    /**
+     * Tài xế có ngày khám sức khỏe gần nhất trước ngày cho trước
+     */
+    @Query("SELECT d FROM Drivers d LEFT JOIN FETCH d.employee e LEFT JOIN FETCH e.user " +
+           "WHERE d.healthCheckDate < :before")
+    List<Drivers> findWithHealthCheckBefore(@Param("before") LocalDate before);
+
+    @Query("SELECT d FROM Drivers d LEFT JOIN FETCH d.employee e LEFT JOIN FETCH e.user WHERE d.id IN :ids")
+    List<Drivers> findAllWithUserByIdIn(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,54 @@
+package org.example.ptcmssbackend.repository;
+
+import org.example.ptcmssbackend.entity.EmailOutbox;
+import org.example.ptcmssbackend.enums.EmailOutboxStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Integer> {
+
+    // Email đến hạn gửi, cũ nhất trước. Pageable chỉ dùng để giới hạn số dòng (page 0)
+    @Query("SELECT e.id FROM EmailOutbox e " +
+            "WHERE e.status = org.example.ptcmssbackend.enums.EmailOutboxStatus.PENDING " +
+            "AND e.nextAttemptAt <= :now " +
+            "ORDER BY e.nextAttemptAt ASC, e.id ASC")
+    List<Integer> findDueIds(@Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Nhận email để gửi: UPDATE có điều kiện status = PENDING nên 2 worker (kể cả khác instance)
+     * không bao giờ nhận trùng 1 email. Trả về số email đã nhận.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE EmailOutbox e SET e.status = org.example.ptcmssbackend.enums.EmailOutboxStatus.SENDING, " +
+            "e.claimToken = :token, e.claimedAt = :now " +
+            "WHERE e.id IN :ids AND e.status = org.example.ptcmssbackend.enums.EmailOutboxStatus.PENDING")
+    int claim(@Param("ids") Collection<Integer> ids, @Param("token") String token, @Param("now") Instant now);
+
+    List<EmailOutbox> findByClaimTokenOrderByIdAsc(String claimToken);
+
+    // Trả lại email bị giữ quá lâu (worker/instance chết giữa chừng)
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE EmailOutbox e SET e.status = org.example.ptcmssbackend.enums.EmailOutboxStatus.PENDING, " +
+            "e.claimToken = NULL, e.claimedAt = NULL " +
+            "WHERE e.status = org.example.ptcmssbackend.enums.EmailOutboxStatus.SENDING AND e.claimedAt < :cutoff")
+    int releaseStaleClaims(@Param("cutoff") Instant cutoff);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM EmailOutbox e WHERE e.status IN :statuses AND e.createdAt < :cutoff")
+    int deleteFinishedBefore(@Param("statuses") Collection<EmailOutboxStatus> statuses, @Param("cutoff") Instant cutoff);
+
+    long countByStatus(EmailOutboxStatus status);
+}
@@ -24,6 +24,10 @@ public interface EmployeeRepository extends JpaRepository<Employees, Integer> {
     @Query("SELECT e FROM Employees e WHERE e.user.id = :userId")
     Optional<Employees> findByUserId(Integer userId);
 
+    //  Chỉ lấy branchId của nhân viên theo user_id
+    @Query("SELECT e.branch.id FROM Employees e WHERE e.user.id = :userId")
+    Optional<Integer> findBranchIdByUserId(@Param("userId") Integer userId);
+
     //  Tìm nhân viên theo user_id với JOIN FETCH
     @Query("SELECT e FROM Employees e " +
            "LEFT JOIN FETCH e.user " +
@@ -89,4 +93,11 @@ public interface EmployeeRepository extends JpaRepository<Employees, Integer> {
            "AND e.branch.id = :branchId " +
            "AND (e.status IS NULL OR e.status <> 'INACTIVE')")
     List<Employees> findByRoleNameAndBranchId(@Param("roleName") String roleName, @Param("branchId") Integer branchId);
+
+    // Chỉ lấy userId của người nhận thông báo theo vai trò trong chi nhánh (cùng điều kiện với findByRoleNameAndBranchId)
+    @Query("SELECT DISTINCT e.user.id FROM Employees e " +
+           "WHERE e.role.roleName = :roleName " +
+           "AND e.branch.id = :branchId " +
+           "AND (e.status IS NULL OR e.status <> 'INACTIVE')")
+    List<Integer> findUserIdsByRoleNameAndBranchId(@Param("roleName") String roleName, @Param("branchId") Integer branchId);
 }
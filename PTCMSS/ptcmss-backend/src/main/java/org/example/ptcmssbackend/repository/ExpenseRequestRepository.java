@@ -2,9 +2,13 @@ package org.example.ptcmssbackend.repository;
 
 import org.example.ptcmssbackend.entity.ExpenseRequests;
 import org.example.ptcmssbackend.enums.ExpenseRequestStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 
 @Repository
@@ -24,4 +28,52 @@ public interface ExpenseRequestRepository extends JpaRepository<ExpenseRequests,
     
     // Tìm expense requests theo status và vehicle (dùng cho màn hình chi phí xe)
     List<ExpenseRequests> findByStatusAndVehicle_Id(ExpenseRequestStatus status, Integer vehicleId);
+
+    // Đối soát: yêu cầu PENDING có người yêu cầu nhưng chưa có ApprovalHistory PENDING (anti-join)
+    @Query("SELECT e FROM ExpenseRequests e " +
+            "JOIN FETCH e.requester " +
+            "LEFT JOIN FETCH e.branch " +
+            "WHERE e.status = org.example.ptcmssbackend.enums.ExpenseRequestStatus.PENDING " +
+            "AND NOT EXISTS (SELECT 1 FROM ApprovalHistory ah " +
+            "WHERE ah.approvalType = org.example.ptcmssbackend.enums.ApprovalType.EXPENSE_REQUEST " +
+            "AND ah.relatedEntityId = e.id " +
+            "AND ah.status = org.example.ptcmssbackend.enums.ApprovalStatus.PENDING)")
+    List<ExpenseRequests> findPendingWithoutApprovalHistory();
+
+    // Chi phí đã duyệt trong khoảng thời gian (dashboard kế toán). Cột: createdAt, amount
+    @Query("SELECT e.createdAt, e.amount FROM ExpenseRequests e " +
+            "WHERE e.status = org.example.ptcmssbackend.enums.ExpenseRequestStatus.APPROVED " +
+            "AND (:branchId IS NULL OR e.branch.id = :branchId) " +
+            "AND e.createdAt >= :startDate " +
+            "AND e.createdAt <= :endDate")
+    List<Object[]> findApprovedAmounts(
+            @Param("branchId") Integer branchId,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate);
+
+    /**
+     * Dòng xuất báo cáo chi phí theo keyset (id > afterId, tăng dần): yêu cầu chi phí đã duyệt trong khoảng thời gian.
+     * Pageable chỉ dùng để giới hạn số dòng (page 0).
+     * Cột: id, createdAt, tên chi nhánh, biển số xe, loại chi phí, amount, note
+     */
+    @Query("SELECT e.id, e.createdAt, br.branchName, v.licensePlate, e.type, e.amount, e.note " +
+            "FROM ExpenseRequests e " +
+            "JOIN e.branch br " +
+            "LEFT JOIN e.vehicle v " +
+            "WHERE e.status = org.example.ptcmssbackend.enums.ExpenseRequestStatus.APPROVED " +
+            "AND (:branchId IS NULL OR br.id = :branchId) " +
+            "AND (:vehicleId IS NULL OR v.id = :vehicleId) " +
+            "AND (:expenseType IS NULL OR e.type = :expenseType) " +
+            "AND e.createdAt >= :startDate " +
+            "AND e.createdAt <= :endDate " +
+            "AND e.id > :afterId " +
+            "ORDER BY e.id ASC")
+    List<Object[]> findApprovedExportRowsAfter(
+            @Param("branchId") Integer branchId,
+            @Param("vehicleId") Integer vehicleId,
+            @Param("expenseType") String expenseType,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate,
+            @Param("afterId") Integer afterId,
+            Pageable pageable);
 }
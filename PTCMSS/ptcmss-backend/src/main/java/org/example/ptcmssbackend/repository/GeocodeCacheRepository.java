@@ -0,0 +1,17 @@
+package org.example.ptcmssbackend.repository;
+
+import org.example.ptcmssbackend.entity.GeocodeCache;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface GeocodeCacheRepository extends JpaRepository<GeocodeCache, Integer> {
+
+    Optional<GeocodeCache> findByAddressKey(String addressKey);
+
+    List<GeocodeCache> findByAddressKeyIn(Collection<String> addressKeys);
+}
@@ -8,11 +8,10 @@ import java.util.List;
 
 @Repository
 public interface HireTypesRepository extends JpaRepository<HireTypes, Integer> {
-    
+
     // Lấy danh sách loại thuê đang active
     List<HireTypes> findByIsActiveTrue();
     
     // Tìm theo code
     HireTypes findByCode(String code);
 }
-
@@ -0,0 +1,32 @@
+package org.example.ptcmssbackend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.example.ptcmssbackend.entity.InvoiceLedger;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface InvoiceLedgerRepository extends JpaRepository<InvoiceLedger, Integer> {
+
+    /**
+     * Khóa dòng sổ cái (SELECT ... FOR UPDATE) để cộng dồn không bị mất cập nhật khi ghi đồng thời
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l FROM InvoiceLedger l WHERE l.invoiceId = :invoiceId")
+    Optional<InvoiceLedger> findForUpdate(@Param("invoiceId") Integer invoiceId);
+
+    /**
+     * Tạo dòng rỗng nếu chưa có (updatedAt = null đánh dấu dòng mới), giữ khóa ghi trên dòng trong cả hai trường hợp:
+     * giao dịch đến sau chờ giao dịch đã tạo dòng commit thay vì cùng INSERT rồi lỗi trùng khóa
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO invoice_ledger (invoiceId, confirmedPaid, pendingAmount, balance) VALUES (:invoiceId, 0, 0, 0) " +
+            "ON DUPLICATE KEY UPDATE invoiceId = invoiceId", nativeQuery = true)
+    int insertIfAbsent(@Param("invoiceId") Integer invoiceId);
+}
@@ -4,6 +4,8 @@ import org.example.ptcmssbackend.entity.Invoices;
 import org.example.ptcmssbackend.enums.InvoiceStatus;
 import org.example.ptcmssbackend.enums.InvoiceType;
 import org.example.ptcmssbackend.enums.PaymentStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -12,6 +14,7 @@ import org.springframework.stereotype.Repository;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -64,6 +67,14 @@ public interface InvoiceRepository extends JpaRepository<Invoices, Integer> {
             "WHERE i.booking.id = :bookingId " +
             "AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED")
     BigDecimal calculateConfirmedPaidAmountByBookingId(@Param("bookingId") Integer bookingId);
+
+    // Tổng tiền đã thu (CONFIRMED) của nhiều booking. Cột: bookingId, amount
+    @Query("SELECT i.booking.id, COALESCE(SUM(ph.amount), 0) FROM PaymentHistory ph " +
+            "JOIN ph.invoice i " +
+            "WHERE i.booking.id IN :bookingIds " +
+            "AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED " +
+            "GROUP BY i.booking.id")
+    List<Object[]> sumConfirmedPaidAmountByBookingIds(@Param("bookingIds") Collection<Integer> bookingIds);
     
     /**
      * Tính tổng tiền đã thu (CONFIRMED payments) cho một consultant trong khoảng thời gian,
@@ -86,6 +97,23 @@ public interface InvoiceRepository extends JpaRepository<Invoices, Integer> {
             @Param("startDate") Instant startDate,
             @Param("endDate") Instant endDate
     );
+
+    // Như trên nhưng trả từng payment (1 truy vấn cho nhiều tháng), service nhóm theo tháng. Cột: paymentDate, amount
+    @Query("SELECT ph.paymentDate, ph.amount FROM PaymentHistory ph " +
+            "JOIN ph.invoice i " +
+            "LEFT JOIN i.booking b " +
+            "LEFT JOIN b.consultant c " +
+            "WHERE ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED " +
+            "AND ph.paymentDate >= :startDate " +
+            "AND ph.paymentDate <= :endDate " +
+            "AND (:branchId IS NULL OR i.branch.id = :branchId) " +
+            "AND (:consultantEmployeeId IS NULL OR c.employeeId = :consultantEmployeeId)")
+    List<Object[]> findConfirmedPaymentsForConsultantAndBranch(
+            @Param("branchId") Integer branchId,
+            @Param("consultantEmployeeId") Integer consultantEmployeeId,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate
+    );
     
     /**
      * Tính tổng amount theo branchId, type và khoảng thời gian
@@ -139,6 +167,240 @@ public interface InvoiceRepository extends JpaRepository<Invoices, Integer> {
             @Param("customerId") Integer customerId,
             @Param("paymentStatus") PaymentStatus paymentStatus);
     
+    /**
+     * Dashboard kế toán: 1 lần quét hóa đơn trong kỳ (mọi loại / trạng thái), không nạp entity.
+     * Cột: type, status, paymentStatus, invoiceDate, amount, customerId, customerName, đã thu (CONFIRMED)
+     */
+    @Query("SELECT i.type, i.status, i.paymentStatus, i.invoiceDate, i.amount, c.id, c.fullName, " +
+            "(SELECT COALESCE(SUM(ph.amount), 0) FROM PaymentHistory ph WHERE ph.invoice = i " +
+            " AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED) " +
+            "FROM Invoices i LEFT JOIN i.customer c " +
+            "WHERE (:branchId IS NULL OR i.branch.id = :branchId) " +
+            "AND i.invoiceDate >= :startDate " +
+            "AND i.invoiceDate <= :endDate")
+    List<Object[]> findDashboardRows(
+            @Param("branchId") Integer branchId,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate);
+
+    /**
+     * Công nợ phải thu hiện tại (cùng điều kiện với findUnpaidInvoices).
+     * Cột: paymentStatus, dueDate, amount, đã thu (CONFIRMED)
+     */
+    @Query("SELECT i.paymentStatus, i.dueDate, i.amount, " +
+            "(SELECT COALESCE(SUM(ph.amount), 0) FROM PaymentHistory ph WHERE ph.invoice = i " +
+            " AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED) " +
+            "FROM Invoices i WHERE i.type = 'INCOME' " +
+            "AND i.paymentStatus IN ('UNPAID', 'OVERDUE') " +
+            "AND (:branchId IS NULL OR i.branch.id = :branchId)")
+    List<Object[]> findReceivableRows(@Param("branchId") Integer branchId);
+
+    /**
+     * Hóa đơn ACTIVE chưa thanh toán mới nhất (danh sách chờ duyệt trên dashboard)
+     */
+    @Query("SELECT i FROM Invoices i " +
+            "LEFT JOIN FETCH i.customer " +
+            "LEFT JOIN FETCH i.createdBy cb " +
+            "LEFT JOIN FETCH cb.user " +
+            "WHERE (:branchId IS NULL OR i.branch.id = :branchId) " +
+            "AND i.status = 'ACTIVE' " +
+            "AND i.paymentStatus = 'UNPAID' " +
+            "ORDER BY i.invoiceDate DESC")
+    List<Invoices> findPendingInvoices(@Param("branchId") Integer branchId, Pageable pageable);
+
+    /**
+     * Điều kiện lọc danh sách hóa đơn (dùng chung cho truy vấn trang, đếm và keyset):
+     * - bộ lọc chi nhánh / loại / trạng thái / thời gian / khách hàng / trạng thái thanh toán
+     * - keyword (đã lowercase, dạng %...%, ký tự đặc biệt của LIKE thoát bằng '!'): số HĐ, tên khách hàng hoặc mã đơn ORD-{bookingId}
+     * - ẩn hóa đơn chỉ có payment PENDING mà chưa có payment CONFIRMED nào
+     */
+    String INVOICE_SEARCH_WHERE = "WHERE (:branchId IS NULL OR i.branch.id = :branchId) " +
+            "AND (:type IS NULL OR i.type = :type) " +
+            "AND (:status IS NULL OR i.status = :status) " +
+            "AND (:startDate IS NULL OR i.invoiceDate >= :startDate) " +
+            "AND (:endDate IS NULL OR i.invoiceDate <= :endDate) " +
+            "AND (:customerId IS NULL OR i.customer.id = :customerId) " +
+            "AND (:paymentStatus IS NULL OR i.paymentStatus = :paymentStatus) " +
+            "AND (:keyword IS NULL OR LOWER(i.invoiceNumber) LIKE :keyword ESCAPE '!' " +
+            "     OR LOWER(c.fullName) LIKE :keyword ESCAPE '!' " +
+            "     OR LOWER(CONCAT('ORD-', CAST(b.id AS String))) LIKE :keyword ESCAPE '!') " +
+            "AND (NOT EXISTS (SELECT 1 FROM PaymentHistory pp WHERE pp.invoice = i " +
+            "       AND pp.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.PENDING) " +
+            "  OR EXISTS (SELECT 1 FROM PaymentHistory pc WHERE pc.invoice = i AND pc.amount > 0 " +
+            "       AND pc.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED)) ";
+
+    /**
+     * Danh sách hóa đơn phân trang trong DB (Pageable: page/size/sort)
+     */
+    @Query(value = "SELECT i FROM Invoices i " +
+            "JOIN FETCH i.branch " +
+            "LEFT JOIN FETCH i.customer c " +
+            "LEFT JOIN i.booking b " +
+            INVOICE_SEARCH_WHERE,
+            countQuery = "SELECT COUNT(i) FROM Invoices i " +
+                    "LEFT JOIN i.customer c " +
+                    "LEFT JOIN i.booking b " +
+                    INVOICE_SEARCH_WHERE)
+    Page<Invoices> searchInvoices(
+            @Param("branchId") Integer branchId,
+            @Param("type") InvoiceType type,
+            @Param("status") InvoiceStatus status,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate,
+            @Param("customerId") Integer customerId,
+            @Param("paymentStatus") PaymentStatus paymentStatus,
+            @Param("keyword") String keyword,
+            Pageable pageable);
+
+    /**
+     * Keyset cho trang sâu: hóa đơn có id < afterId (mới nhất trước), không đếm tổng.
+     * Pageable chỉ dùng để giới hạn số dòng (page 0)
+     */
+    @Query("SELECT i FROM Invoices i " +
+            "JOIN FETCH i.branch " +
+            "LEFT JOIN FETCH i.customer c " +
+            "LEFT JOIN i.booking b " +
+            INVOICE_SEARCH_WHERE +
+            "AND (:afterId IS NULL OR i.id < :afterId) " +
+            "ORDER BY i.id DESC")
+    List<Invoices> searchInvoicesAfter(
+            @Param("branchId") Integer branchId,
+            @Param("type") InvoiceType type,
+            @Param("status") InvoiceStatus status,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate,
+            @Param("customerId") Integer customerId,
+            @Param("paymentStatus") PaymentStatus paymentStatus,
+            @Param("keyword") String keyword,
+            @Param("afterId") Integer afterId,
+            Pageable pageable);
+
+    /**
+     * Điều kiện danh sách công nợ: hóa đơn thu UNPAID/OVERDUE (overdueOnly = true: chỉ OVERDUE), lọc chi nhánh trong DB
+     */
+    String DEBT_WHERE = "WHERE i.type = org.example.ptcmssbackend.enums.InvoiceType.INCOME " +
+            "AND (i.paymentStatus = org.example.ptcmssbackend.enums.PaymentStatus.OVERDUE " +
+            "  OR (:overdueOnly = false AND i.paymentStatus = org.example.ptcmssbackend.enums.PaymentStatus.UNPAID)) " +
+            "AND (:branchId IS NULL OR i.branch.id = :branchId) ";
+
+    /**
+     * Đã thu (CONFIRMED) của hóa đơn i: đọc từ sổ cái l (LEFT JOIN InvoiceLedger l ON l.invoiceId = i.id),
+     * chỉ SUM payment_history khi hóa đơn chưa có dòng sổ cái
+     */
+    String DEBT_CONFIRMED_PAID = "COALESCE(l.confirmedPaid, (SELECT COALESCE(SUM(ph.amount), 0) FROM PaymentHistory ph " +
+            "WHERE ph.invoice = i " +
+            "AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED))";
+
+    /**
+     * Danh sách công nợ phân trang trong DB: OVERDUE trước, sau đó theo Sort của Pageable
+     */
+    @Query(value = "SELECT i FROM Invoices i " +
+            "LEFT JOIN FETCH i.customer " +
+            DEBT_WHERE +
+            "ORDER BY CASE WHEN i.paymentStatus = org.example.ptcmssbackend.enums.PaymentStatus.OVERDUE THEN 0 ELSE 1 END",
+            countQuery = "SELECT COUNT(i) FROM Invoices i " + DEBT_WHERE)
+    Page<Invoices> findDebts(
+            @Param("branchId") Integer branchId,
+            @Param("overdueOnly") boolean overdueOnly,
+            Pageable pageable);
+
+    /**
+     * Aging công nợ trong 1 truy vấn gộp: số dư (amount - đã thu) theo hạn thanh toán.
+     * Ranh giới bucket tính sẵn theo ngày: dueDate >= from30 → 0-30 ngày (gồm chưa đến hạn),
+     * >= from60 → 31-60, >= from90 → 61-90, còn lại > 90. Bỏ qua hóa đơn không có dueDate.
+     * Cột: bucket0_30, bucket31_60, bucket61_90, bucketOver90
+     */
+    @Query("SELECT " +
+            "SUM(CASE WHEN i.dueDate >= :from30 THEN i.amount - " + DEBT_CONFIRMED_PAID + " ELSE 0 END), " +
+            "SUM(CASE WHEN i.dueDate < :from30 AND i.dueDate >= :from60 THEN i.amount - " + DEBT_CONFIRMED_PAID + " ELSE 0 END), " +
+            "SUM(CASE WHEN i.dueDate < :from60 AND i.dueDate >= :from90 THEN i.amount - " + DEBT_CONFIRMED_PAID + " ELSE 0 END), " +
+            "SUM(CASE WHEN i.dueDate < :from90 THEN i.amount - " + DEBT_CONFIRMED_PAID + " ELSE 0 END) " +
+            "FROM Invoices i " +
+            "LEFT JOIN InvoiceLedger l ON l.invoiceId = i.id " +
+            "WHERE i.type = org.example.ptcmssbackend.enums.InvoiceType.INCOME " +
+            "AND i.paymentStatus IN (org.example.ptcmssbackend.enums.PaymentStatus.UNPAID, " +
+            "    org.example.ptcmssbackend.enums.PaymentStatus.OVERDUE) " +
+            "AND i.dueDate IS NOT NULL " +
+            "AND (:branchId IS NULL OR i.branch.id = :branchId)")
+    List<Object[]> sumAgingBuckets(
+            @Param("branchId") Integer branchId,
+            @Param("from30") LocalDate from30,
+            @Param("from60") LocalDate from60,
+            @Param("from90") LocalDate from90);
+
+    /**
+     * Dòng xuất CSV sổ công nợ theo keyset (id > afterId, tăng dần), chỉ các cột cần ghi.
+     * Pageable chỉ dùng để giới hạn số dòng (page 0).
+     * Cột: invoiceId, invoiceNumber, tên KH, SĐT KH, amount, đã thu, dueDate, paymentStatus, promiseToPayDate, debtLabel
+     */
+    @Query("SELECT i.id, i.invoiceNumber, c.fullName, c.phone, i.amount, " + DEBT_CONFIRMED_PAID + ", " +
+            "i.dueDate, i.paymentStatus, i.promiseToPayDate, i.debtLabel " +
+            "FROM Invoices i " +
+            "LEFT JOIN i.customer c " +
+            "LEFT JOIN InvoiceLedger l ON l.invoiceId = i.id " +
+            DEBT_WHERE +
+            "AND i.id > :afterId " +
+            "ORDER BY i.id ASC")
+    List<Object[]> findDebtExportRowsAfter(
+            @Param("branchId") Integer branchId,
+            @Param("overdueOnly") boolean overdueOnly,
+            @Param("afterId") Integer afterId,
+            Pageable pageable);
+
+    /**
+     * Cột xuất file hóa đơn (dùng chung cho xuất danh sách và báo cáo):
+     * invoiceId, invoiceNumber, invoiceDate, tên KH, tên chi nhánh, amount, đã thu, dueDate, paymentStatus, note
+     */
+    String INVOICE_EXPORT_SELECT = "SELECT i.id, i.invoiceNumber, i.invoiceDate, c.fullName, br.branchName, i.amount, " +
+            DEBT_CONFIRMED_PAID + ", i.dueDate, i.paymentStatus, i.note " +
+            "FROM Invoices i " +
+            "JOIN i.branch br " +
+            "LEFT JOIN i.customer c " +
+            "LEFT JOIN i.booking b " +
+            "LEFT JOIN InvoiceLedger l ON l.invoiceId = i.id ";
+
+    /**
+     * Dòng xuất danh sách hóa đơn theo keyset (id > afterId, tăng dần), cùng điều kiện lọc với danh sách hóa đơn.
+     * Pageable chỉ dùng để giới hạn số dòng (page 0). Cột theo INVOICE_EXPORT_SELECT
+     */
+    @Query(INVOICE_EXPORT_SELECT +
+            INVOICE_SEARCH_WHERE +
+            "AND i.id > :afterId " +
+            "ORDER BY i.id ASC")
+    List<Object[]> findInvoiceListExportRowsAfter(
+            @Param("branchId") Integer branchId,
+            @Param("type") InvoiceType type,
+            @Param("status") InvoiceStatus status,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate,
+            @Param("customerId") Integer customerId,
+            @Param("paymentStatus") PaymentStatus paymentStatus,
+            @Param("keyword") String keyword,
+            @Param("afterId") Integer afterId,
+            Pageable pageable);
+
+    /**
+     * Dòng xuất báo cáo doanh thu/chi phí theo keyset: hóa đơn ACTIVE theo loại trong khoảng thời gian
+     * (cùng điều kiện với báo cáo). Pageable chỉ dùng để giới hạn số dòng. Cột theo INVOICE_EXPORT_SELECT
+     */
+    @Query(INVOICE_EXPORT_SELECT +
+            "WHERE i.type = :type " +
+            "AND i.status = org.example.ptcmssbackend.enums.InvoiceStatus.ACTIVE " +
+            "AND (:branchId IS NULL OR br.id = :branchId) " +
+            "AND i.invoiceDate >= :startDate " +
+            "AND i.invoiceDate <= :endDate " +
+            "AND (:customerId IS NULL OR c.id = :customerId) " +
+            "AND i.id > :afterId " +
+            "ORDER BY i.id ASC")
+    List<Object[]> findReportExportRowsAfter(
+            @Param("branchId") Integer branchId,
+            @Param("type") InvoiceType type,
+            @Param("startDate") Instant startDate,
+            @Param("endDate") Instant endDate,
+            @Param("customerId") Integer customerId,
+            @Param("afterId") Integer afterId,
+            Pageable pageable);
+
     @Query("SELECT i FROM Invoices i WHERE i.type = 'INCOME' " +
             "AND i.paymentStatus IN ('UNPAID', 'OVERDUE') " +
             "AND (:branchId IS NULL OR i.branch.id = :branchId) " +
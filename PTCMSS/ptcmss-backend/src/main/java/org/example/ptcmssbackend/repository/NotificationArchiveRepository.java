@@ -0,0 +1,22 @@
+package org.example.ptcmssbackend.repository;
+
+import org.example.ptcmssbackend.entity.NotificationArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+
+public interface NotificationArchiveRepository extends JpaRepository<NotificationArchive, Integer> {
+
+    // Chép 1 lô thông báo sang bảng lưu trữ bằng 1 lệnh INSERT ... SELECT (không nạp entity)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO notifications_archive (notificationId, userId, title, message, createdAt, isRead, archivedAt) " +
+            "SELECT notificationId, userId, title, message, createdAt, isRead, :archivedAt " +
+            "FROM notifications WHERE notificationId IN (:ids)", nativeQuery = true)
+    int copyFromNotifications(@Param("ids") Collection<Integer> ids, @Param("archivedAt") Instant archivedAt);
+
+    long countByUserId(Integer userId);
+}
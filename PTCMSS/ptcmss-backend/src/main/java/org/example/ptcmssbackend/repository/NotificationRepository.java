@@ -4,7 +4,12 @@ import org.example.ptcmssbackend.entity.Notifications;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface NotificationRepository extends JpaRepository<Notifications, Integer> {
@@ -17,4 +22,53 @@ public interface NotificationRepository extends JpaRepository<Notifications, Int
     
     // Count unread notifications for user
     long countByUser_IdAndIsReadFalse(Integer userId);
-}
\ No newline at end of file
+
+    // Thông báo chưa đọc của nhiều user theo tiêu đề và đoạn nội dung, mới nhất trước (1 truy vấn thay vì 1 lần/user)
+    @Query("SELECT n FROM Notifications n " +
+           "WHERE n.user.id IN :userIds " +
+           "AND n.title = :title " +
+           "AND n.isRead = false " +
+           "AND n.message LIKE CONCAT('%', :marker, '%') " +
+           "ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notifications> findUnreadByUserIdsAndTitleAndMessageContaining(
+            @Param("userIds") Collection<Integer> userIds,
+            @Param("title") String title,
+            @Param("marker") String marker);
+
+    // Trang đầu của phân trang keyset (createdAt, id). Pageable chỉ dùng để giới hạn số dòng (page 0)
+    List<Notifications> findByUser_IdOrderByCreatedAtDescIdDesc(Integer userId, Pageable pageable);
+
+    // Trang tiếp theo: các thông báo đứng sau (createdAt, id) của dòng cuối trang trước
+    @Query("SELECT n FROM Notifications n " +
+           "WHERE n.user.id = :userId " +
+           "AND (n.createdAt < :createdAt OR (n.createdAt = :createdAt AND n.id < :id)) " +
+           "ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notifications> findPageBefore(
+            @Param("userId") Integer userId,
+            @Param("createdAt") Instant createdAt,
+            @Param("id") Integer id,
+            Pageable pageable);
+
+    // Đánh dấu đã đọc mọi thông báo của user bằng 1 lệnh UPDATE, trả về số dòng đổi trạng thái
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Notifications n SET n.isRead = true WHERE n.user.id = :userId AND n.isRead = false")
+    int markAllReadByUserId(@Param("userId") Integer userId);
+
+    // Đánh dấu đã đọc các thông báo được chọn (chỉ của user đó)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Notifications n SET n.isRead = true " +
+           "WHERE n.user.id = :userId AND n.id IN :ids AND n.isRead = false")
+    int markReadByUserIdAndIds(@Param("userId") Integer userId, @Param("ids") Collection<Integer> ids);
+
+    // Lô id thông báo cũ hơn mốc lưu trữ, cũ nhất trước. Pageable chỉ dùng để giới hạn số dòng (page 0)
+    @Query("SELECT n.id FROM Notifications n WHERE n.createdAt < :cutoff ORDER BY n.createdAt ASC, n.id ASC")
+    List<Integer> findIdsCreatedBefore(@Param("cutoff") Instant cutoff, Pageable pageable);
+
+    // User có thông báo chưa đọc trong lô (để làm mới bộ đếm chưa đọc sau khi lưu trữ)
+    @Query("SELECT DISTINCT n.user.id FROM Notifications n WHERE n.id IN :ids AND n.isRead = false")
+    List<Integer> findUnreadUserIdsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Notifications n WHERE n.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Integer> ids);
+}
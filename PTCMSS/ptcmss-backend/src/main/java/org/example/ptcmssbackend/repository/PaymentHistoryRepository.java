@@ -1,16 +1,26 @@
 package org.example.ptcmssbackend.repository;
 
 import org.example.ptcmssbackend.entity.PaymentHistory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PaymentHistoryRepository extends JpaRepository<PaymentHistory, Integer> {
+
+    /**
+     * 3 cột tổng hợp dùng cho sổ cái: tổng CONFIRMED, tổng PENDING, ngày thanh toán CONFIRMED gần nhất
+     */
+    String LEDGER_TOTALS =
+            "COALESCE(SUM(CASE WHEN ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED THEN ph.amount ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.PENDING THEN ph.amount ELSE 0 END), 0), " +
+            "MAX(CASE WHEN ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED THEN ph.paymentDate END)";
     
     List<PaymentHistory> findByInvoice_IdOrderByPaymentDateDesc(Integer invoiceId);
     
@@ -22,7 +32,54 @@ public interface PaymentHistoryRepository extends JpaRepository<PaymentHistory,
      */
     @Query("SELECT COALESCE(SUM(ph.amount), 0) FROM PaymentHistory ph WHERE ph.invoice.id = :invoiceId AND ph.confirmationStatus = 'CONFIRMED'")
     BigDecimal sumConfirmedByInvoiceId(@Param("invoiceId") Integer invoiceId);
+
+    /**
+     * Tổng thanh toán CONFIRMED của nhiều hóa đơn trong 1 truy vấn. Cột: invoiceId, tổng
+     */
+    @Query("SELECT ph.invoice.id, COALESCE(SUM(ph.amount), 0) FROM PaymentHistory ph " +
+            "WHERE ph.invoice.id IN :invoiceIds AND ph.confirmationStatus = 'CONFIRMED' " +
+            "GROUP BY ph.invoice.id")
+    List<Object[]> sumConfirmedByInvoiceIds(@Param("invoiceIds") Collection<Integer> invoiceIds);
     
+    /**
+     * Tổng hợp payment của 1 hóa đơn (dựng lại sổ cái). Cột: tổng CONFIRMED, tổng PENDING, ngày CONFIRMED gần nhất
+     */
+    @Query("SELECT " + LEDGER_TOTALS + " FROM PaymentHistory ph WHERE ph.invoice.id = :invoiceId")
+    List<Object[]> summarizeByInvoiceId(@Param("invoiceId") Integer invoiceId);
+
+    /**
+     * Tổng hợp payment của tất cả hóa đơn thuộc 1 đơn hàng. Cột như summarizeByInvoiceId
+     */
+    @Query("SELECT " + LEDGER_TOTALS + " FROM PaymentHistory ph WHERE ph.invoice.booking.id = :bookingId")
+    List<Object[]> summarizeByBookingId(@Param("bookingId") Integer bookingId);
+
+    /**
+     * Tổng hợp theo hóa đơn cho job đối soát, duyệt theo invoiceId tăng dần.
+     * Cột: invoiceId, bookingId, amount, tổng CONFIRMED, tổng PENDING, ngày CONFIRMED gần nhất
+     */
+    @Query("SELECT i.id, b.id, i.amount, " + LEDGER_TOTALS + " FROM Invoices i " +
+           "LEFT JOIN i.booking b " +
+           "LEFT JOIN PaymentHistory ph ON ph.invoice = i " +
+           "WHERE i.id > :afterId " +
+           "GROUP BY i.id, b.id, i.amount ORDER BY i.id")
+    List<Object[]> summarizeInvoicesAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Tổng hợp theo đơn hàng cho job đối soát. Cột: bookingId, tổng CONFIRMED, tổng PENDING, ngày CONFIRMED gần nhất
+     */
+    @Query("SELECT i.booking.id, " + LEDGER_TOTALS + " FROM PaymentHistory ph JOIN ph.invoice i " +
+           "WHERE i.booking.id > :afterId " +
+           "GROUP BY i.booking.id ORDER BY i.booking.id")
+    List<Object[]> summarizeBookingsAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Các booking (trong danh sách) đã có thanh toán cọc được xác nhận
+     */
+    @Query("SELECT DISTINCT i.booking.id FROM PaymentHistory ph JOIN ph.invoice i " +
+           "WHERE i.booking.id IN :bookingIds AND i.isDeposit = true " +
+           "AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED")
+    List<Integer> findBookingIdsWithConfirmedDeposit(@Param("bookingIds") Collection<Integer> bookingIds);
+
     @Query("SELECT ph FROM PaymentHistory ph WHERE ph.invoice.id = :invoiceId ORDER BY ph.paymentDate DESC")
     List<PaymentHistory> findAllByInvoiceId(@Param("invoiceId") Integer invoiceId);
     
@@ -51,5 +108,14 @@ public interface PaymentHistoryRepository extends JpaRepository<PaymentHistory,
            "WHERE ph.invoice.id = :invoiceId " +
            "AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.PENDING")
     Integer countPendingPaymentsByInvoiceId(@Param("invoiceId") Integer invoiceId);
+
+    /**
+     * Số payment PENDING của nhiều hóa đơn trong 1 truy vấn. Cột: invoiceId, số lượng
+     */
+    @Query("SELECT ph.invoice.id, COUNT(ph) FROM PaymentHistory ph " +
+           "WHERE ph.invoice.id IN :invoiceIds " +
+           "AND ph.confirmationStatus = org.example.ptcmssbackend.enums.PaymentConfirmationStatus.PENDING " +
+           "GROUP BY ph.invoice.id")
+    List<Object[]> countPendingByInvoiceIds(@Param("invoiceIds") Collection<Integer> invoiceIds);
 }
 
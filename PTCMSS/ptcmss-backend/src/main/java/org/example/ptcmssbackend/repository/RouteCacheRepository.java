@@ -0,0 +1,17 @@
+package org.example.ptcmssbackend.repository;
+
+import org.example.ptcmssbackend.entity.RouteCache;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface RouteCacheRepository extends JpaRepository<RouteCache, Integer> {
+
+    Optional<RouteCache> findByRouteKey(String routeKey);
+
+    List<RouteCache> findByRouteKeyIn(Collection<String> routeKeys);
+}
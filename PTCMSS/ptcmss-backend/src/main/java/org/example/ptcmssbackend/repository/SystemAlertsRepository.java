@@ -4,7 +4,9 @@ import org.example.ptcmssbackend.entity.SystemAlerts;
 import org.example.ptcmssbackend.enums.AlertType;
 import org.example.ptcmssbackend.enums.AlertSeverity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
@@ -35,7 +37,14 @@ public interface SystemAlertsRepository extends JpaRepository<SystemAlerts, Inte
     // Đếm theo chi nhánh
     long countByBranch_IdAndIsAcknowledgedFalse(Integer branchId);
     
+    // Id các entity đã có alert cùng loại chưa acknowledge (chống tạo trùng khi quét hàng loạt)
+    @Query("SELECT a.relatedEntityId FROM SystemAlerts a WHERE a.alertType = :alertType " +
+            "AND a.relatedEntityType = :entityType AND a.isAcknowledged = false")
+    List<Integer> findOpenAlertEntityIds(@Param("alertType") AlertType alertType,
+                                         @Param("entityType") String entityType);
+
     // Xóa alerts đã hết hạn
+    @Modifying
     @Query("DELETE FROM SystemAlerts a WHERE a.expiresAt < :now")
-    void deleteExpiredAlerts(Instant now);
+    void deleteExpiredAlerts(@Param("now") Instant now);
 }
@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -29,6 +30,15 @@ public interface TripDriverRepository extends JpaRepository<TripDrivers, TripDri
     @Query("SELECT td FROM TripDrivers td JOIN FETCH td.driver JOIN FETCH td.trip WHERE td.trip.id = :tripId")
     List<TripDrivers> findByTripId(@Param("tripId") Integer tripId);
 
+    // Tài xế của nhiều chuyến (kèm employee/user để lấy tên)
+    @Query("SELECT td FROM TripDrivers td JOIN FETCH td.driver d LEFT JOIN FETCH d.employee e LEFT JOIN FETCH e.user " +
+           "WHERE td.trip.id IN :tripIds")
+    List<TripDrivers> findByTripIdIn(@Param("tripIds") Collection<Integer> tripIds);
+
+    // Các chuyến (trong danh sách) đã có tài xế
+    @Query("SELECT DISTINCT td.trip.id FROM TripDrivers td WHERE td.trip.id IN :tripIds")
+    List<Integer> findAssignedTripIds(@Param("tripIds") Collection<Integer> tripIds);
+
     // Xóa mapping theo tripId (dọn sạch gán tài xế trước khi xóa Trips)
     void deleteByTrip_Id(Integer tripId);
 
@@ -57,4 +67,78 @@ public interface TripDriverRepository extends JpaRepository<TripDrivers, TripDri
             @Param("driverId") Integer driverId,
             @Param("startDate") Instant startDate,
             @Param("endDate") Instant endDate);
+
+    /**
+     * Lấy phân công của nhiều tài xế cùng lúc: các chuyến bắt đầu từ windowStart trở đi
+     * (dùng tính điểm công bằng) và các chuyến có khoảng thời gian giao với [overlapStart, overlapEnd)
+     * (dùng kiểm tra trùng giờ). Thay cho việc gọi findAllByDriverId cho từng tài xế.
+     */
+    @Query("SELECT td FROM TripDrivers td JOIN FETCH td.trip t " +
+           "WHERE td.driver.id IN :driverIds " +
+           "AND (t.startTime >= :windowStart " +
+           "     OR (t.startTime < :overlapEnd AND t.endTime > :overlapStart))")
+    List<TripDrivers> findByDriverIdsInWindow(
+            @Param("driverIds") Collection<Integer> driverIds,
+            @Param("windowStart") Instant windowStart,
+            @Param("overlapStart") Instant overlapStart,
+            @Param("overlapEnd") Instant overlapEnd);
+
+    /**
+     * Lấy toàn bộ phân công tài xế của các chuyến trong 1 booking
+     */
+    @Query("SELECT td FROM TripDrivers td JOIN FETCH td.trip t WHERE t.booking.id = :bookingId")
+    List<TripDrivers> findByBookingId(@Param("bookingId") Integer bookingId);
+
+    /**
+     * Trong danh sách tài xế, lấy những tài xế đã từng hoàn thành chuyến với khách hàng
+     */
+    @Query("SELECT DISTINCT td.driver.id FROM TripDrivers td JOIN td.trip t " +
+           "WHERE td.driver.id IN :driverIds " +
+           "AND t.status = org.example.ptcmssbackend.enums.TripStatus.COMPLETED " +
+           "AND t.booking.customer.id = :customerId")
+    List<Integer> findDriverIdsWithCompletedTripsForCustomer(
+            @Param("driverIds") Collection<Integer> driverIds,
+            @Param("customerId") Integer customerId);
+
+    /**
+     * Các phân công tài xế còn hiệu lực (chuyến chưa hủy/hoàn thành) của 1 chi nhánh, dùng nạp chỉ mục lịch bận
+     */
+    @Query("SELECT td FROM TripDrivers td " +
+           "JOIN FETCH td.trip t " +
+           "JOIN FETCH t.booking b " +
+           "JOIN FETCH td.driver d " +
+           "WHERE d.branch.id = :branchId " +
+           "AND t.status NOT IN (org.example.ptcmssbackend.enums.TripStatus.CANCELLED, org.example.ptcmssbackend.enums.TripStatus.COMPLETED)")
+    List<TripDrivers> findActiveByDriverBranchId(@Param("branchId") Integer branchId);
+
+    /**
+     * Phân công tài xế của 1 chuyến (kèm booking) để cập nhật chỉ mục lịch bận
+     */
+    @Query("SELECT td FROM TripDrivers td " +
+           "JOIN FETCH td.trip t " +
+           "JOIN FETCH t.booking b " +
+           "JOIN FETCH td.driver d " +
+           "WHERE t.id = :tripId")
+    List<TripDrivers> findTimelineEntriesByTripId(@Param("tripId") Integer tripId);
+
+    /**
+     * Dữ liệu quét giờ lái cho mọi tài xế trong 1 truy vấn: các chuyến chưa hủy bắt đầu trong [weekStart, until)
+     * hoặc còn chạy sau activeFrom, bỏ qua tài xế đã có cảnh báo DRIVING_HOURS_EXCEEDED chưa xác nhận
+     * (không thể sinh thêm cảnh báo cùng loại). Sắp theo tài xế rồi giờ bắt đầu.
+     * Cột: driverId, startTime, endTime, status
+     */
+    @Query("SELECT td.driver.id, t.startTime, t.endTime, t.status FROM TripDrivers td JOIN td.trip t " +
+           "WHERE t.startTime IS NOT NULL " +
+           "AND t.startTime < :until " +
+           "AND (t.startTime >= :weekStart OR t.endTime > :activeFrom) " +
+           "AND t.status <> org.example.ptcmssbackend.enums.TripStatus.CANCELLED " +
+           "AND NOT EXISTS (SELECT 1 FROM SystemAlerts a " +
+           "    WHERE a.relatedEntityType = 'DRIVER' AND a.relatedEntityId = td.driver.id " +
+           "    AND a.alertType = org.example.ptcmssbackend.enums.AlertType.DRIVING_HOURS_EXCEEDED " +
+           "    AND a.isAcknowledged = false) " +
+           "ORDER BY td.driver.id, t.startTime")
+    List<Object[]> findDrivingHoursRows(
+            @Param("weekStart") Instant weekStart,
+            @Param("activeFrom") Instant activeFrom,
+            @Param("until") Instant until);
 }
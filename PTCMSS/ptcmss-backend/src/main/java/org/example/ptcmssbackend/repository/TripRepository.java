@@ -2,12 +2,15 @@ package org.example.ptcmssbackend.repository;
 
 import org.example.ptcmssbackend.entity.Trips;
 import org.example.ptcmssbackend.enums.TripStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -28,6 +31,9 @@ public interface TripRepository extends JpaRepository<Trips, Integer> {
     
     // Methods needed by DispatchServiceImpl
     List<Trips> findByBooking_Id(Integer bookingId);
+
+    // Toàn bộ chuyến của nhiều booking
+    List<Trips> findByBooking_IdIn(Collection<Integer> bookingIds);
     
     List<Trips> findByBooking_Branch_IdAndStatusAndStartTimeBetween(
         Integer branchId, 
@@ -42,11 +48,99 @@ public interface TripRepository extends JpaRepository<Trips, Integer> {
         Instant endTime
     );
     
+    /**
+     * Bảng điều phối: một dòng cho mỗi cặp (tài xế, xe) của chuyến bắt đầu trong [from, to).
+     * Cột: tripId, startTime, endTime, status, startLocation, endLocation, driverId, vehicleId
+     * (driverId/vehicleId null khi chuyến chưa gán)
+     */
+    @Query("SELECT t.id, t.startTime, t.endTime, t.status, t.startLocation, t.endLocation, td.driver.id, tv.vehicle.id " +
+           "FROM Trips t " +
+           "LEFT JOIN TripDrivers td ON td.trip = t " +
+           "LEFT JOIN TripVehicles tv ON tv.trip = t " +
+           "WHERE t.booking.branch.id = :branchId " +
+           "AND t.startTime >= :from AND t.startTime < :to " +
+           "ORDER BY t.startTime, t.id")
+    List<Object[]> findDashboardRows(
+        @Param("branchId") Integer branchId,
+        @Param("from") Instant from,
+        @Param("to") Instant to
+    );
+
+    /**
+     * Chuyến chờ điều phối: chưa gán tài xế và chưa gán xe, kèm booking/khách hàng/chi nhánh
+     */
+    @Query("SELECT t FROM Trips t " +
+           "JOIN FETCH t.booking b " +
+           "JOIN FETCH b.customer " +
+           "JOIN FETCH b.branch br " +
+           "WHERE br.id = :branchId " +
+           "AND t.status IN :statuses " +
+           "AND t.startTime >= :from AND t.startTime <= :to " +
+           "AND NOT EXISTS (SELECT 1 FROM TripDrivers td WHERE td.trip = t) " +
+           "AND NOT EXISTS (SELECT 1 FROM TripVehicles tv WHERE tv.trip = t)")
+    List<Trips> findUnassignedTrips(
+        @Param("branchId") Integer branchId,
+        @Param("statuses") Collection<TripStatus> statuses,
+        @Param("from") Instant from,
+        @Param("to") Instant to
+    );
+
+    // Còn chuyến nào từ thời điểm cho trước trở đi (trang kế tiếp của bảng điều phối)
+    boolean existsByBooking_Branch_IdAndStartTimeGreaterThanEqual(Integer branchId, Instant startTime);
+    
+    /**
+     * Điều kiện tìm kiếm chuyến (tham số null = bỏ qua). keyword là pattern LIKE đã lowercase
+     */
+    String TRIP_SEARCH_WHERE = "WHERE (:status IS NULL OR t.status = :status) " +
+           "AND (:branchId IS NULL OR b.branch.id = :branchId) " +
+           "AND (:startFrom IS NULL OR t.startTime >= :startFrom) " +
+           "AND (:startTo IS NULL OR t.startTime <= :startTo) " +
+           "AND (:driverId IS NULL OR EXISTS (SELECT 1 FROM TripDrivers td WHERE td.trip = t AND td.driver.id = :driverId)) " +
+           "AND (:vehicleId IS NULL OR EXISTS (SELECT 1 FROM TripVehicles tv WHERE tv.trip = t AND tv.vehicle.id = :vehicleId)) " +
+           "AND (:keyword IS NULL OR CAST(b.id AS String) LIKE :keyword " +
+           "     OR LOWER(c.fullName) LIKE :keyword " +
+           "     OR LOWER(c.phone) LIKE :keyword) ";
+
+    /**
+     * Tìm kiếm chuyến phân trang trong DB (Pageable: page/size/sort), kèm booking/khách hàng/chi nhánh/loại thuê
+     */
+    @Query(value = "SELECT t FROM Trips t " +
+           "JOIN FETCH t.booking b " +
+           "JOIN FETCH b.customer c " +
+           "JOIN FETCH b.branch " +
+           "LEFT JOIN FETCH b.hireType " +
+           TRIP_SEARCH_WHERE,
+           countQuery = "SELECT COUNT(t) FROM Trips t " +
+           "JOIN t.booking b " +
+           "JOIN b.customer c " +
+           TRIP_SEARCH_WHERE)
+    Page<Trips> searchTrips(
+        @Param("status") TripStatus status,
+        @Param("branchId") Integer branchId,
+        @Param("startFrom") Instant startFrom,
+        @Param("startTo") Instant startTo,
+        @Param("driverId") Integer driverId,
+        @Param("vehicleId") Integer vehicleId,
+        @Param("keyword") String keyword,
+        Pageable pageable
+    );
+
+    // Thời gian bắt đầu sớm nhất / kết thúc muộn nhất theo booking. Cột: bookingId, minStartTime, maxEndTime
+    @Query("SELECT t.booking.id, MIN(t.startTime), MAX(t.endTime) FROM Trips t " +
+           "WHERE t.booking.id IN :bookingIds GROUP BY t.booking.id")
+    List<Object[]> findTimeRangeByBookingIds(@Param("bookingIds") Collection<Integer> bookingIds);
+    
     List<Trips> findByStatusAndStartTimeBetween(
         TripStatus status,
         Instant startTime,
         Instant endTime
     );
 
-
+    /**
+     * Mẫu (điểm đi, điểm đến, distance) của các trip gần nhất có distance - dùng hiệu chỉnh hệ số đường bộ
+     */
+    @Query("SELECT t.startLocation, t.endLocation, t.distance FROM Trips t " +
+           "WHERE t.distance > 0 AND t.startLocation IS NOT NULL AND t.endLocation IS NOT NULL " +
+           "ORDER BY t.id DESC")
+    List<Object[]> findRecentDistanceSamples(Pageable pageable);
 }
@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -50,6 +51,19 @@ public interface TripVehicleRepository extends JpaRepository<TripVehicles, Integ
     );
 
 
+    // Số xe đang bận trong khoảng thời gian theo từng loại xe (categoryId, busy) - cùng điều kiện với findBusyVehicleIds
+    @Query("SELECT tv.vehicle.category.id AS categoryId, COUNT(DISTINCT tv.vehicle.id) AS busy FROM TripVehicles tv JOIN tv.trip t " +
+           "WHERE (:branchId IS NULL OR tv.vehicle.branch.id = :branchId) " +
+           "AND (t.status IN (org.example.ptcmssbackend.enums.TripStatus.SCHEDULED, org.example.ptcmssbackend.enums.TripStatus.ASSIGNED, org.example.ptcmssbackend.enums.TripStatus.ONGOING)) " +
+           "AND (:start IS NULL OR t.endTime > :start) " +
+           "AND (:end IS NULL OR t.startTime < :end) " +
+           "GROUP BY tv.vehicle.category.id")
+    List<Object[]> countBusyVehiclesByCategory(
+            @Param("branchId") Integer branchId,
+            @Param("start") Instant start,
+            @Param("end") Instant end
+    );
+
     @Query("SELECT tv FROM TripVehicles tv WHERE tv.vehicle.id = :vehicleId")
     List<TripVehicles> findByVehicle(Integer vehicleId);
 
@@ -68,5 +82,43 @@ public interface TripVehicleRepository extends JpaRepository<TripVehicles, Integ
      */
     @Query("SELECT tv FROM TripVehicles tv JOIN FETCH tv.vehicle JOIN FETCH tv.trip WHERE tv.trip.id IN :tripIds")
     List<TripVehicles> findByTrip_IdIn(@Param("tripIds") List<Integer> tripIds);
-}
 
+    // Các chuyến (trong danh sách) đã có xe
+    @Query("SELECT DISTINCT tv.trip.id FROM TripVehicles tv WHERE tv.trip.id IN :tripIds")
+    List<Integer> findAssignedTripIds(@Param("tripIds") Collection<Integer> tripIds);
+
+    /**
+     * Các phân công xe còn hiệu lực (chuyến chưa hủy/hoàn thành) của 1 chi nhánh, dùng nạp chỉ mục lịch bận
+     */
+    @Query("SELECT tv FROM TripVehicles tv " +
+           "JOIN FETCH tv.trip t " +
+           "JOIN FETCH t.booking b " +
+           "LEFT JOIN FETCH b.hireType " +
+           "JOIN FETCH tv.vehicle v " +
+           "WHERE v.branch.id = :branchId " +
+           "AND t.status NOT IN (org.example.ptcmssbackend.enums.TripStatus.CANCELLED, org.example.ptcmssbackend.enums.TripStatus.COMPLETED)")
+    List<TripVehicles> findActiveByVehicleBranchId(@Param("branchId") Integer branchId);
+
+    /**
+     * Các phân công còn hiệu lực của nhiều xe (kèm booking/hình thức thuê để tính busy-until)
+     */
+    @Query("SELECT tv FROM TripVehicles tv " +
+           "JOIN FETCH tv.trip t " +
+           "JOIN FETCH t.booking b " +
+           "LEFT JOIN FETCH b.hireType " +
+           "JOIN FETCH tv.vehicle v " +
+           "WHERE v.id IN :vehicleIds " +
+           "AND t.status NOT IN (org.example.ptcmssbackend.enums.TripStatus.CANCELLED, org.example.ptcmssbackend.enums.TripStatus.COMPLETED)")
+    List<TripVehicles> findActiveByVehicleIds(@Param("vehicleIds") Collection<Integer> vehicleIds);
+
+    /**
+     * Phân công xe của 1 chuyến (kèm booking/hình thức thuê) để cập nhật chỉ mục lịch bận
+     */
+    @Query("SELECT tv FROM TripVehicles tv " +
+           "JOIN FETCH tv.trip t " +
+           "JOIN FETCH t.booking b " +
+           "LEFT JOIN FETCH b.hireType " +
+           "JOIN FETCH tv.vehicle v " +
+           "WHERE t.id = :tripId")
+    List<TripVehicles> findTimelineEntriesByTripId(@Param("tripId") Integer tripId);
+}
@@ -1,17 +1,37 @@
 package org.example.ptcmssbackend.repository;
 
+import jakarta.persistence.LockModeType;
 import org.example.ptcmssbackend.entity.Vehicles;
 import org.example.ptcmssbackend.enums.VehicleStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface VehicleRepository extends JpaRepository<Vehicles, Integer> {
 
+    /**
+     * Khóa dòng xe (SELECT ... FOR UPDATE) khi giữ chỗ xe cho chuyến: các giao dịch gán cùng xe
+     * phải chờ nhau, giao dịch gán xe khác không bị ảnh hưởng
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT v FROM Vehicles v WHERE v.id = :vehicleId")
+    Optional<Vehicles> findForUpdate(@Param("vehicleId") Integer vehicleId);
+
+    /**
+     * Khóa nhiều xe trong 1 câu lệnh, theo id tăng dần (cùng thứ tự khóa với findForUpdate từng dòng)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT v FROM Vehicles v WHERE v.id IN :vehicleIds ORDER BY v.id")
+    List<Vehicles> findAllForUpdate(@Param("vehicleIds") Collection<Integer> vehicleIds);
+
     @Query("SELECT v FROM Vehicles v JOIN FETCH v.branch JOIN FETCH v.category WHERE LOWER(v.licensePlate) LIKE LOWER(CONCAT('%', :licensePlate, '%'))")
     List<Vehicles> findByLicensePlateContainingIgnoreCase(@Param("licensePlate") String licensePlate);
     
@@ -23,6 +43,13 @@ public interface VehicleRepository extends JpaRepository<Vehicles, Integer> {
             "AND (:branchId IS NULL OR v.branch.id = :branchId) " +
             "AND (:status IS NULL OR v.status = :status)")
     List<Vehicles> filterVehicles(@Param("categoryId") Integer categoryId, @Param("branchId") Integer branchId, @Param("status") VehicleStatus status);
+
+    // Số xe theo từng loại xe (categoryId, total) của chi nhánh, dùng kiểm tra khả dụng nhiều loại xe cùng lúc
+    @Query("SELECT v.category.id AS categoryId, COUNT(v) AS total FROM Vehicles v " +
+            "WHERE (:branchId IS NULL OR v.branch.id = :branchId) " +
+            "AND (:status IS NULL OR v.status = :status) " +
+            "GROUP BY v.category.id")
+    List<Object[]> countByCategory(@Param("branchId") Integer branchId, @Param("status") VehicleStatus status);
     
     @Query("SELECT v FROM Vehicles v WHERE (:categoryId IS NULL OR v.category.id = :categoryId) " +
             "AND (:branchId IS NULL OR v.branch.id = :branchId) " +
@@ -52,4 +79,9 @@ public interface VehicleRepository extends JpaRepository<Vehicles, Integer> {
     @Query("SELECT COUNT(v) FROM Vehicles v WHERE v.category.id = :categoryId")
     long countByCategoryId(@Param("categoryId") Integer categoryId);
 
+    // Xe có hạn đăng kiểm / bảo hiểm trước ngày cho trước (quét cảnh báo hết hạn)
+    List<Vehicles> findByInspectionExpiryBefore(LocalDate before);
+
+    List<Vehicles> findByInsuranceExpiryBefore(LocalDate before);
+
 }
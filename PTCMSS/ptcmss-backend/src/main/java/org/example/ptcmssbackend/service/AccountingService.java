@@ -17,6 +17,10 @@ public interface AccountingService {
     // Reports
     RevenueReportResponse getRevenueReport(RevenueReportRequest request);
     ExpenseReportResponse getExpenseReport(ExpenseReportRequest request);
+
+    // Khoảng ngày [start, end] của báo cáo (ngày chỉ định hoặc theo kỳ), dùng chung cho xuất file
+    LocalDate[] getReportDateRange(RevenueReportRequest request);
+    LocalDate[] getReportDateRange(ExpenseReportRequest request);
     
     // Statistics
     BigDecimal getTotalRevenue(Integer branchId, LocalDate startDate, LocalDate endDate);
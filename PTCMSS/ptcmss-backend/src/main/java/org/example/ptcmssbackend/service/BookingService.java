@@ -4,9 +4,11 @@ import org.example.ptcmssbackend.dto.request.Booking.CreateBookingRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CreatePaymentRequest;
 import org.example.ptcmssbackend.dto.request.Booking.UpdateBookingRequest;
 import org.example.ptcmssbackend.dto.request.Booking.AssignRequest;
+import org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityBatchRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityRequest;
 import org.example.ptcmssbackend.dto.response.Booking.BookingListResponse;
 import org.example.ptcmssbackend.dto.response.Booking.BookingResponse;
+import org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityBatchResponse;
 import org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityResponse;
 import org.example.ptcmssbackend.dto.response.Booking.ConsultantDashboardResponse;
 import org.example.ptcmssbackend.dto.response.common.PageResponse;
@@ -67,8 +69,11 @@ public interface BookingService {
     
     /**
      * Lấy dashboard cho consultant
+     *
+     * @param page trang của 3 danh sách đơn (bắt đầu từ 1)
+     * @param size số đơn mỗi danh sách (tối đa 50)
      */
-    ConsultantDashboardResponse getConsultantDashboard(Integer consultantEmployeeId, Integer branchId);
+    ConsultantDashboardResponse getConsultantDashboard(Integer consultantEmployeeId, Integer branchId, int page, int size);
     
     /**
      * Lấy danh sách bookings đơn giản (cho list view)
@@ -89,5 +94,8 @@ public interface BookingService {
 
     /** Kiểm tra khả dụng xe theo branch/category/thời gian */
     CheckAvailabilityResponse checkAvailability(CheckAvailabilityRequest request);
+
+    /** Kiểm tra khả dụng nhiều loại xe (các dòng của 1 báo giá) trong 1 lần gọi */
+    CheckAvailabilityBatchResponse checkAvailabilityBatch(CheckAvailabilityBatchRequest request);
 }
 
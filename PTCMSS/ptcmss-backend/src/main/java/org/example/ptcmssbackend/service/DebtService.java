@@ -8,6 +8,8 @@ import org.example.ptcmssbackend.dto.response.Debt.DebtSummaryResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -21,6 +23,9 @@ public interface DebtService {
     
     // Aging analysis
     AgingBucketResponse getAgingBuckets(Integer branchId, LocalDate asOfDate);
+
+    // Xuất toàn bộ sổ công nợ ra CSV, ghi thẳng vào out theo từng lô (không giữ cả sổ trong bộ nhớ)
+    void exportDebtsCsv(Integer branchId, Boolean overdueOnly, OutputStream out) throws IOException;
     
     // Reminders
     void sendDebtReminder(Integer invoiceId, SendDebtReminderRequest request);
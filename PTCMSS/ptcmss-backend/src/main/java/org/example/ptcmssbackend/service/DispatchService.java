@@ -2,13 +2,17 @@ package org.example.ptcmssbackend.service;
 
 import org.example.ptcmssbackend.dto.request.Trip.TripSearchRequest;
 import org.example.ptcmssbackend.dto.request.dispatch.AssignRequest;
+import org.example.ptcmssbackend.dto.request.dispatch.AutoDispatchRequest;
 import org.example.ptcmssbackend.dto.response.Trip.TripDetailResponse;
 import org.example.ptcmssbackend.dto.response.Trip.TripListItemResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignRespone;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignmentSuggestionResponse;
+import org.example.ptcmssbackend.dto.response.dispatch.AutoDispatchResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.DispatchDashboardResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.PendingTripResponse;
 
+import org.springframework.data.domain.Page;
+
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
@@ -25,16 +29,29 @@ public interface DispatchService {
 
     DispatchDashboardResponse getDashboard(Integer branchId, LocalDate date);
 
+    /**
+     * Bảng điều phối theo trang: date != null lấy đúng ngày đó;
+     * ngược lại lấy dispatch.dashboard.horizon-days ngày bắt đầu từ cursor (mặc định hôm nay).
+     */
+    DispatchDashboardResponse getDashboard(Integer branchId, LocalDate date, LocalDate cursor);
+
     AssignRespone assign(AssignRequest request);
 
     void unassign(Integer tripId, String note);
 
     AssignRespone reassign(AssignRequest request);
 
+    /**
+     * Điều phối tự động cả ngày: xếp tài xế + xe cho mọi chuyến chờ điều phối của chi nhánh trong ngày
+     * bằng 1 kế hoạch chung (cùng điều kiện và điểm công bằng như gợi ý từng chuyến),
+     * rồi ghi toàn bộ phân công trong 1 giao dịch (trừ khi dryRun).
+     */
+    AutoDispatchResponse autoDispatch(AutoDispatchRequest request);
+
     void driverAcceptTrip(Integer tripId);
 
     TripDetailResponse getTripDetail(Integer tripId);
 
-    List<TripListItemResponse> searchTrips(TripSearchRequest request);
+    Page<TripListItemResponse> searchTrips(TripSearchRequest request);
 
 }
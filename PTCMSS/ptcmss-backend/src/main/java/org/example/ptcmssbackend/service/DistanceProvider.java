@@ -0,0 +1,22 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+
+/**
+ * 1 bước trong chuỗi tính khoảng cách (DistanceService): cache -> GraphHopper -> ước lượng cục bộ.
+ * Thứ tự chạy theo @Order của bean.
+ */
+public interface DistanceProvider {
+
+    /**
+     * Khoảng cách giữa 2 địa chỉ, null nếu bước này không trả lời được
+     */
+    DistanceResult resolve(String from, String to);
+
+    /**
+     * true nếu bước này gọi mạng: được chạy trên thread riêng và bị cắt theo ngân sách thời gian
+     */
+    default boolean remote() {
+        return false;
+    }
+}
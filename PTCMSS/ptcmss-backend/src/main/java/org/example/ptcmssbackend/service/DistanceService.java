@@ -0,0 +1,27 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+
+import java.util.List;
+
+/**
+ * Tính khoảng cách qua chuỗi DistanceProvider với giới hạn thời gian chờ mạng,
+ * dùng cho báo giá và tính thời gian chiếm dụng xe (không bao giờ chờ API quá routing.max-wait-ms)
+ */
+public interface DistanceService {
+
+    /**
+     * Khoảng cách giữa 2 địa chỉ từ bước đầu tiên trả lời được (source cho biết nguồn), null nếu không bước nào tính được
+     */
+    DistanceResult resolve(String from, String to);
+
+    /**
+     * Như resolve nhưng chỉ chạy các bước không gọi mạng (cache, ước tính), dùng khi không được phép chờ API
+     */
+    DistanceResult resolveOffline(String from, String to);
+
+    /**
+     * Tính trước ma trận khoảng cách vào cache ở nền, trả về ngay không chờ API
+     */
+    void prefetchMatrix(List<String> origins, List<String> destinations);
+}
@@ -0,0 +1,25 @@
+package org.example.ptcmssbackend.service;
+
+/**
+ * Hàng đợi email gửi đi (bảng email_outbox): nơi gọi chỉ ghi 1 dòng rồi trả về ngay,
+ * worker nền gửi theo lô và thử lại khi SMTP lỗi.
+ */
+public interface EmailOutboxService {
+
+    /**
+     * Đưa email đã render vào hàng đợi, trong giao dịch hiện tại nếu có
+     */
+    void enqueue(String toEmail, String fromName, String subject, String htmlBody);
+
+    /**
+     * Nhận các email đến hạn và giao cho pool gửi
+     *
+     * @return số email đã nhận
+     */
+    int dispatchDue();
+
+    /**
+     * Trả lại email bị giữ quá lâu và xóa email đã gửi/thất bại quá thời gian lưu giữ
+     */
+    void maintainOutbox();
+}
@@ -1,30 +1,68 @@
 package org.example.ptcmssbackend.service;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.spring6.SpringTemplateEngine;
 
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Render email từ template Thymeleaf rồi đưa vào hàng đợi gửi (EmailOutboxService); không gọi SMTP trên luồng request.
+ * Các khai báo throws được giữ để tương thích với nơi gọi (lỗi gửi giờ được xử lý và thử lại ở worker nền).
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class EmailService {
 
-    private final JavaMailSender mailSender;
-    private final SpringTemplateEngine templateEngine;
+    private static final String SYSTEM_SENDER = "TranspoManager - Hệ thống quản lý vận tải";
+    private static final String PTCMSS_SENDER = "PTCMSS - Hệ thống quản lý vận tải";
 
-    @Value("${spring.mail.username}")
-    private String fromEmail;
+    // Template được nạp sẵn khi khởi động (bản parse được TemplateEngine cache lại)
+    private static final List<String> TEMPLATES = List.of(
+            "verify-email", "forgot-password-email", "invoice-email", "debt-reminder-email", "credentials-email");
+
+    private final EmailOutboxService emailOutboxService;
+    private final SpringTemplateEngine templateEngine;
+    private final ResourceLoader resourceLoader;
+
+    @Value("${spring.thymeleaf.prefix:classpath:/templates/}")
+    private String templatePrefix;
+
+    @Value("${spring.thymeleaf.suffix:.html}")
+    private String templateSuffix;
+
+    // Template không tồn tại: dùng HTML dự phòng ngay, không tìm lại và ném exception ở mỗi lần gửi
+    private final Set<String> missingTemplates = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void warmUpTemplates() {
+        for (String template : TEMPLATES) {
+            if (!resourceLoader.getResource(templatePrefix + template + templateSuffix).exists()) {
+                missingTemplates.add(template);
+                log.info("[EmailService] Template {} not found, using fallback HTML", template);
+                continue;
+            }
+            try {
+                templateEngine.process(template, new Context());
+            } catch (Exception e) {
+                // Biến rỗng có thể làm biểu thức lỗi, template vẫn đã được parse và cache
+                log.debug("[EmailService] Warm-up of template {} ended with: {}", template, e.getMessage());
+            }
+        }
+    }
 
     public void sendVerificationEmail(String toEmail, String fullName, String username, String verificationUrl)
             throws MessagingException, UnsupportedEncodingException {
@@ -36,18 +74,8 @@ public class EmailService {
         variables.put("username", username);
         variables.put("verifyUrl", verificationUrl);
 
-        Context context = new Context();
-        context.setVariables(variables);
-        String htmlContent = templateEngine.process("verify-email", context);
-
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
-        helper.setFrom(fromEmail, "TranspoManager - Hệ thống quản lý vận tải");
-        helper.setTo(toEmail);
-        helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-
-        mailSender.send(message);
+        String htmlContent = render("verify-email", variables, null);
+        emailOutboxService.enqueue(toEmail, SYSTEM_SENDER, subject, htmlContent);
     }
 
     public void sendPasswordResetEmail(String toEmail, String fullName, String token, String baseUrl)
@@ -60,18 +88,8 @@ public class EmailService {
         variables.put("fullName", fullName);
         variables.put("resetUrl", resetUrl);
 
-        Context context = new Context();
-        context.setVariables(variables);
-        String htmlContent = templateEngine.process("forgot-password-email", context);
-
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
-        helper.setFrom(fromEmail, "Hệ thống quản lý nhân sự");
-        helper.setTo(toEmail);
-        helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-
-        mailSender.send(message);
+        String htmlContent = render("forgot-password-email", variables, null);
+        emailOutboxService.enqueue(toEmail, "Hệ thống quản lý nhân sự", subject, htmlContent);
     }
 
     /**
@@ -91,26 +109,10 @@ public class EmailService {
         variables.put("invoiceUrl", invoiceUrl);
         variables.put("note", note);
         
-        Context context = new Context();
-        context.setVariables(variables);
-        
         // Try to use invoice-email template, fallback to simple text
-        String htmlContent;
-        try {
-            htmlContent = templateEngine.process("invoice-email", context);
-        } catch (Exception e) {
-            // Fallback to simple HTML if template not found
-            htmlContent = buildInvoiceEmailHtml(customerName, invoiceNumber, amount, dueDate, note);
-        }
-        
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
-        helper.setFrom(fromEmail, "PTCMSS - Hệ thống quản lý vận tải");
-        helper.setTo(toEmail);
-        helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-        
-        mailSender.send(message);
+        String htmlContent = render("invoice-email", variables,
+                () -> buildInvoiceEmailHtml(customerName, invoiceNumber, amount, dueDate, note));
+        emailOutboxService.enqueue(toEmail, PTCMSS_SENDER, subject, htmlContent);
     }
 
     /**
@@ -130,24 +132,9 @@ public class EmailService {
         variables.put("daysOverdue", daysOverdue);
         variables.put("message", message);
         
-        Context context = new Context();
-        context.setVariables(variables);
-        
-        String htmlContent;
-        try {
-            htmlContent = templateEngine.process("debt-reminder-email", context);
-        } catch (Exception e) {
-            htmlContent = buildDebtReminderEmailHtml(customerName, invoiceNumber, amount, dueDate, daysOverdue, message);
-        }
-        
-        MimeMessage mimeMessage = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, "UTF-8");
-        helper.setFrom(fromEmail, "PTCMSS - Hệ thống quản lý vận tải");
-        helper.setTo(toEmail);
-        helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-        
-        mailSender.send(mimeMessage);
+        String htmlContent = render("debt-reminder-email", variables,
+                () -> buildDebtReminderEmailHtml(customerName, invoiceNumber, amount, dueDate, daysOverdue, message));
+        emailOutboxService.enqueue(toEmail, PTCMSS_SENDER, subject, htmlContent);
     }
 
     /**
@@ -172,26 +159,10 @@ public class EmailService {
         variables.put("username", username);
         variables.put("password", password);
         
-        Context context = new Context();
-        context.setVariables(variables);
-        
-        String htmlContent;
-        try {
-            htmlContent = templateEngine.process("credentials-email", context);
-        } catch (Exception e) {
-            // Fallback to simple HTML if template not found
-            htmlContent = buildCredentialsEmailHtml(fullName, username, password);
-        }
-        
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
-        helper.setFrom(fromEmail, "TranspoManager - Hệ thống quản lý vận tải");
-        helper.setTo(toEmail);
-        helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-        
-        mailSender.send(message);
-        log.info("📧 Đã gửi thông tin đăng nhập đến email: {}", toEmail);
+        String htmlContent = render("credentials-email", variables,
+                () -> buildCredentialsEmailHtml(fullName, username, password));
+        emailOutboxService.enqueue(toEmail, SYSTEM_SENDER, subject, htmlContent);
+        log.info("📧 Đã đưa thông tin đăng nhập vào hàng đợi gửi đến email: {}", toEmail);
     }
     
     /**
@@ -199,14 +170,28 @@ public class EmailService {
      */
     public void sendSimpleEmail(String toEmail, String subject, String htmlContent) 
             throws MessagingException, UnsupportedEncodingException {
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
-        helper.setFrom(fromEmail, "TranspoManager - Hệ thống quản lý vận tải");
-        helper.setTo(toEmail);
-        helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-        
-        mailSender.send(message);
+        emailOutboxService.enqueue(toEmail, SYSTEM_SENDER, subject, htmlContent);
+    }
+
+    /**
+     * Render template; template thiếu (hoặc lỗi khi render) thì dùng HTML dự phòng nếu có
+     */
+    private String render(String template, Map<String, Object> variables, Supplier<String> fallback) {
+        if (fallback != null && missingTemplates.contains(template)) {
+            return fallback.get();
+        }
+        Context context = new Context();
+        context.setVariables(variables);
+        if (fallback == null) {
+            return templateEngine.process(template, context);
+        }
+        try {
+            return templateEngine.process(template, context);
+        } catch (Exception e) {
+            // Fallback to simple HTML if template not found
+            log.warn("[EmailService] Cannot render template {}, using fallback HTML: {}", template, e.getMessage());
+            return fallback.get();
+        }
     }
 
     // Helper methods for fallback HTML
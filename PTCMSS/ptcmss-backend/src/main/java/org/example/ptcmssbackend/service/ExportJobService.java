@@ -0,0 +1,27 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.request.Accounting.ExpenseReportRequest;
+import org.example.ptcmssbackend.dto.request.Accounting.RevenueReportRequest;
+import org.example.ptcmssbackend.dto.response.Export.ExportJobResponse;
+import org.example.ptcmssbackend.enums.ExportFormat;
+import org.springframework.core.io.Resource;
+
+/**
+ * Xuất file lớn ở chế độ nền: ghi file vào thư mục lưu trữ, người yêu cầu hỏi trạng thái rồi tải về sau.
+ * Mỗi job chỉ người tạo xem/tải được; file bị xóa sau thời gian lưu giữ.
+ */
+public interface ExportJobService {
+
+    ExportJobResponse submitRevenueReport(RevenueReportRequest request, ExportFormat format, String requestedBy);
+
+    ExportJobResponse submitExpenseReport(ExpenseReportRequest request, ExportFormat format, String requestedBy);
+
+    ExportJobResponse submitInvoiceList(Integer branchId, String type, String status, ExportFormat format, String requestedBy);
+
+    ExportJobResponse getJob(String jobId, String requestedBy);
+
+    /**
+     * File của job đã hoàn thành
+     */
+    Resource getJobFile(String jobId, String requestedBy);
+}
@@ -2,22 +2,31 @@ package org.example.ptcmssbackend.service;
 
 import org.example.ptcmssbackend.dto.request.Accounting.ExpenseReportRequest;
 import org.example.ptcmssbackend.dto.request.Accounting.RevenueReportRequest;
+import org.example.ptcmssbackend.enums.ExportFormat;
 import org.springframework.core.io.Resource;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 public interface ExportService {
-    
-    // Excel export
-    Resource exportRevenueReportToExcel(RevenueReportRequest request);
-    Resource exportExpenseReportToExcel(ExpenseReportRequest request);
-    Resource exportInvoiceListToExcel(Integer branchId, String type, String status);
-    
+
     // PDF export
     Resource exportInvoiceToPDF(Integer invoiceId);
-    Resource exportRevenueReportToPDF(RevenueReportRequest request);
-    Resource exportExpenseReportToPDF(ExpenseReportRequest request);
-    
-    // CSV export
-    Resource exportRevenueReportToCSV(RevenueReportRequest request);
-    Resource exportExpenseReportToCSV(ExpenseReportRequest request);
-}
 
+    // Streaming export: đọc DB theo lô keyset và ghi thẳng ra out, trả về số dòng dữ liệu đã ghi
+
+    /**
+     * Báo cáo doanh thu: từng hóa đơn thu trong kỳ, phần tổng hợp ở cuối file
+     */
+    long writeRevenueReport(RevenueReportRequest request, ExportFormat format, OutputStream out) throws IOException;
+
+    /**
+     * Báo cáo chi phí: hóa đơn chi và yêu cầu chi phí đã duyệt trong kỳ, phần tổng hợp theo loại ở cuối file
+     */
+    long writeExpenseReport(ExpenseReportRequest request, ExportFormat format, OutputStream out) throws IOException;
+
+    /**
+     * Danh sách hóa đơn theo cùng bộ lọc với màn hình danh sách
+     */
+    long writeInvoiceList(Integer branchId, String type, String status, ExportFormat format, OutputStream out) throws IOException;
+}
@@ -1,5 +1,6 @@
 package org.example.ptcmssbackend.service;
 
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceMatrixResult;
 import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
 import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
 import org.example.ptcmssbackend.dto.response.GraphHopper.RouteOption;
@@ -18,6 +19,17 @@ public interface GraphHopperService {
      */
     DistanceResult calculateDistance(String from, String to);
 
+    /**
+     * Ma trận khoảng cách giữa mọi cặp điểm (N x N)
+     */
+    DistanceMatrixResult distanceMatrix(List<String> points);
+
+    /**
+     * Ma trận khoảng cách điểm đi x điểm đến: các cặp đã có trong cache không gọi lại API,
+     * các cặp còn thiếu được tính trong 1 lần gọi Matrix API (chia lô nếu vượt giới hạn điểm)
+     */
+    DistanceMatrixResult distanceMatrix(List<String> origins, List<String> destinations);
+
     /**
      * Lấy nhiều tuyến đường thay thế
      */
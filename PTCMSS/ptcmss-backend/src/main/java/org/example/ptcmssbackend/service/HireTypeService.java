@@ -0,0 +1,14 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.request.HireType.HireTypeRequest;
+import org.example.ptcmssbackend.dto.response.HireType.HireTypeResponse;
+
+import java.util.List;
+
+public interface HireTypeService {
+    List<HireTypeResponse> listAll();
+    List<HireTypeResponse> listActive();
+    HireTypeResponse create(HireTypeRequest req);
+    HireTypeResponse update(Integer id, HireTypeRequest req);
+    void delete(Integer id);
+}
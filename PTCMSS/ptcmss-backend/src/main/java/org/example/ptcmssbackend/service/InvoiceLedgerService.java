@@ -0,0 +1,34 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.entity.Invoices;
+import org.example.ptcmssbackend.entity.PaymentHistory;
+import org.example.ptcmssbackend.enums.PaymentConfirmationStatus;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Sổ cái tóm tắt theo hóa đơn / đơn hàng (đã thu, đang chờ duyệt, số dư, ngày thu gần nhất).
+ * Mọi chỗ ghi payment_history phải gọi applyPayment trong cùng giao dịch.
+ */
+public interface InvoiceLedgerService {
+
+    // Ghi nhận thay đổi của 1 payment: oldStatus = null khi tạo mới, newStatus = null khi xóa
+    void applyPayment(PaymentHistory payment, PaymentConfirmationStatus oldStatus, PaymentConfirmationStatus newStatus);
+
+    // Cập nhật lại số dư sau khi sửa số tiền hoặc hủy hóa đơn
+    void syncInvoice(Invoices invoice);
+
+    BigDecimal getConfirmedPaid(Integer invoiceId);
+
+    // invoiceId -> đã thu, đọc theo lô cho danh sách
+    Map<Integer, BigDecimal> getConfirmedPaid(Collection<Integer> invoiceIds);
+
+    BigDecimal getPendingAmount(Integer invoiceId);
+
+    BigDecimal getBookingConfirmedPaid(Integer bookingId);
+
+    // Đối soát sổ cái với payment_history, sửa các dòng lệch. Trả về số dòng đã sửa
+    int verifyAndRepair();
+}
@@ -6,6 +6,7 @@ import org.example.ptcmssbackend.dto.request.Invoice.SendInvoiceRequest;
 import org.example.ptcmssbackend.dto.request.Invoice.VoidInvoiceRequest;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceResponse;
+import org.example.ptcmssbackend.dto.response.Invoice.InvoiceScrollResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.PaymentHistoryResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -30,6 +31,19 @@ public interface InvoiceService {
             String keyword,
             Pageable pageable
     );
+    // Keyset cho trang sâu: hóa đơn có id < afterId, mới nhất trước
+    InvoiceScrollResponse scrollInvoices(
+            Integer branchId,
+            String type,
+            String status,
+            String paymentStatus,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer customerId,
+            String keyword,
+            Integer afterId,
+            int size
+    );
     InvoiceResponse updateInvoice(Integer invoiceId, CreateInvoiceRequest request);
     void voidInvoice(Integer invoiceId, VoidInvoiceRequest request);
     
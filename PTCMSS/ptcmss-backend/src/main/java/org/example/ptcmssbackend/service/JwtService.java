@@ -1,5 +1,6 @@
 package org.example.ptcmssbackend.service;
 
+import org.example.ptcmssbackend.common.TokenIdentity;
 import org.example.ptcmssbackend.common.TokenType;
 import org.springframework.security.core.GrantedAuthority;
 
@@ -11,6 +12,11 @@ public interface JwtService {
 
     String extractUsername(String token,  TokenType tokenType);
 
+    /**
+     * Trích xuất username và token id (jti) trong 1 lần parse; token cũ không có jti thì dùng thời điểm phát hành
+     */
+    TokenIdentity extractIdentity(String token, TokenType tokenType);
+
 
     String generatePasswordResetToken(String username);
 }
\ No newline at end of file
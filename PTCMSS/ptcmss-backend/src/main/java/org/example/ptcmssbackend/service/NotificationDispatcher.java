@@ -0,0 +1,40 @@
+package org.example.ptcmssbackend.service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Gửi thông báo cho nhiều người nhận: tra người nhận theo (vai trò, chi nhánh) qua cache,
+ * ghi thông báo bằng JDBC batch trong transaction hiện tại và đẩy WebSocket sau khi commit trên pool riêng.
+ */
+public interface NotificationDispatcher {
+
+    /**
+     * userId của nhân viên đang hoạt động có vai trò trong chi nhánh (có cache)
+     */
+    List<Integer> getRecipientUserIds(String roleName, Integer branchId);
+
+    /**
+     * Lưu thông báo cho mọi người có vai trò trong chi nhánh và đẩy WebSocket sau commit
+     *
+     * @param message     nội dung lưu DB
+     * @param pushMessage nội dung đẩy WebSocket (null = dùng message)
+     * @return số người nhận
+     */
+    int notifyRole(String roleName, Integer branchId, String title, String message, String pushMessage, String type);
+
+    /**
+     * Lưu thông báo cho danh sách user và đẩy WebSocket sau commit
+     */
+    int notifyUsers(Collection<Integer> userIds, String title, String message, String pushMessage, String type);
+
+    /**
+     * Chỉ đẩy WebSocket (không lưu DB) cho danh sách user sau commit
+     */
+    void pushAfterCommit(Collection<Integer> userIds, String title, String message, String type);
+
+    /**
+     * Đẩy thông báo cho chi nhánh sau commit (branchId null = mọi client)
+     */
+    void broadcastAfterCommit(Integer branchId, String title, String message, String type);
+}
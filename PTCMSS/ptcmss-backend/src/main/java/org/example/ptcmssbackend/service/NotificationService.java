@@ -14,6 +14,7 @@ public interface NotificationService {
     List<AlertResponse> getAllAlerts(Integer branchId);
     AlertResponse acknowledgeAlert(Integer alertId, Integer userId);
     void generateSystemAlerts(); // Tự động tạo alerts (chạy scheduled)
+    void generateDrivingHoursAlerts(); // Quét giờ lái của tài xế (chạy scheduled mỗi 15 phút)
     
     // Approvals
     List<ApprovalItemResponse> getPendingApprovals(Integer branchId);
@@ -26,7 +27,16 @@ public interface NotificationService {
     
     // User notifications
     Map<String, Object> getUserNotifications(Integer userId, int page, int limit);
-    
+
+    // User notifications theo cursor (createdAt, id): cursor null = trang đầu
+    Map<String, Object> getUserNotificationsByCursor(Integer userId, String cursor, int limit);
+
+    // Số thông báo chưa đọc (bộ đếm trong bộ nhớ, không COUNT mỗi lần)
+    long getUnreadCount(Integer userId);
+
+    // Đánh dấu đã đọc bằng 1 lệnh UPDATE: notificationIds rỗng = tất cả. Trả về số thông báo đã đổi trạng thái
+    int markNotificationsRead(Integer userId, List<Integer> notificationIds);
+
     // Delete notification
     void deleteNotification(Integer notificationId, Integer userId);
     
@@ -0,0 +1,30 @@
+package org.example.ptcmssbackend.service;
+
+import java.util.Collection;
+
+/**
+ * Số thông báo chưa đọc của từng user, giữ trong bộ nhớ để badge không phải COUNT trên bảng notifications
+ * mỗi lần client hỏi. Các thay đổi (thêm/đọc/xóa) chỉ áp dụng sau khi transaction commit.
+ */
+public interface NotificationUnreadCounter {
+
+    /**
+     * Số thông báo chưa đọc (lần đầu hoặc khi hết hạn thì đếm lại từ DB)
+     */
+    long getUnreadCount(Integer userId);
+
+    /**
+     * Cộng/trừ bộ đếm của user sau commit (delta âm khi đọc/xóa thông báo chưa đọc)
+     */
+    void addAfterCommit(Integer userId, long delta);
+
+    /**
+     * Cộng/trừ cùng một delta cho nhiều user sau commit
+     */
+    void addAfterCommit(Collection<Integer> userIds, long delta);
+
+    /**
+     * Bỏ bộ đếm của các user sau commit để lần đọc sau đếm lại từ DB
+     */
+    void evictAfterCommit(Collection<Integer> userIds);
+}
@@ -0,0 +1,48 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.request.Booking.PriceQuoteRequest;
+import org.example.ptcmssbackend.dto.response.Booking.PriceQuoteResponse;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Tính giá báo giá dựa trên bảng giá đã biên dịch sẵn trong bộ nhớ
+ * (giá loại xe, hình thức thuê, phụ phí/hệ số từ SystemSettings).
+ *
+ * Bảng giá là bất biến và được thay mới nguyên khối khi cài đặt hệ thống hoặc loại xe thay đổi.
+ */
+public interface PricingService {
+
+    /**
+     * Tính giá cho danh sách loại xe / số lượng tương ứng
+     *
+     * @param hireTypeId ID loại thuê (null = tự nhận diện theo thời gian và khoảng cách)
+     * @param startTime  thời gian khởi hành (để check chuyến trong ngày / số ngày thuê)
+     * @param endTime    thời gian kết thúc
+     */
+    BigDecimal calculatePrice(
+            List<Integer> vehicleCategoryIds,
+            List<Integer> quantities,
+            Double distance,
+            Boolean useHighway,
+            Integer hireTypeId,
+            Boolean isHoliday,
+            Boolean isWeekend,
+            Instant startTime,
+            Instant endTime
+    );
+
+    /**
+     * Tính giá nhiều báo giá trên cùng 1 bảng giá.
+     * Báo giá lỗi không làm hỏng cả lô: kết quả tương ứng có success = false và message lỗi.
+     */
+    List<PriceQuoteResponse> calculatePrices(List<PriceQuoteRequest> quotes);
+
+    /**
+     * Bỏ bảng giá hiện tại (nạp lại ở lần tính giá kế tiếp).
+     * Nếu đang trong giao dịch, bảng giá được bỏ thêm 1 lần sau khi commit.
+     */
+    void invalidate();
+}
@@ -0,0 +1,25 @@
+package org.example.ptcmssbackend.service;
+
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Cache principal (UserDetails) theo username + token id để filter xác thực không phải
+ * truy vấn user/role ở mỗi request
+ */
+public interface PrincipalCacheService {
+
+    /**
+     * Lấy principal của token; nếu chưa có trong cache thì load từ DB và lưu lại
+     */
+    UserDetails getPrincipal(String username, String tokenId);
+
+    /**
+     * Xóa mọi principal đã cache của user (khi bị khóa, đổi vai trò, đổi mật khẩu...)
+     */
+    void evictUser(String username);
+
+    /**
+     * Xóa toàn bộ principal đã cache (khi vai trò bị sửa/xóa)
+     */
+    void evictAll();
+}
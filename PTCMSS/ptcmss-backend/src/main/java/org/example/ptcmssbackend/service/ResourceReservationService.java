@@ -0,0 +1,46 @@
+package org.example.ptcmssbackend.service;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Giữ chỗ tài xế/xe cho chuyến khi gán, an toàn khi nhiều điều phối viên gán cùng lúc.
+ *
+ * Mỗi lần giữ chỗ khóa dòng của chính tài xế/xe đó đến hết giao dịch rồi kiểm tra trùng giờ
+ * trên dữ liệu đã commit, nên 2 giao dịch gán cùng 1 xe/tài xế luôn chạy tuần tự
+ * còn các giao dịch gán tài nguyên khác nhau (kể cả cùng chi nhánh) vẫn chạy song song.
+ *
+ * Quy ước thứ tự khóa: tài xế trước xe, trong cùng loại theo id tăng dần.
+ * Giao dịch gọi cần chạy ở mức READ_COMMITTED để lần kiểm tra sau khi khóa thấy
+ * phân công vừa commit của giao dịch giữ khóa trước.
+ */
+public interface ResourceReservationService {
+
+    /**
+     * Khóa các tài xế theo id tăng dần (dùng khi 1 giao dịch sẽ giữ chỗ nhiều tài xế)
+     */
+    void lockDrivers(Collection<Integer> driverIds);
+
+    /**
+     * Khóa các xe theo id tăng dần (gọi sau lockDrivers nếu cùng giao dịch khóa cả tài xế)
+     */
+    void lockVehicles(Collection<Integer> vehicleIds);
+
+    /**
+     * Khóa tài xế rồi kiểm tra tài xế không có chuyến khác trùng [start, end).
+     * Khóa vẫn được giữ đến hết giao dịch kể cả khi trả về false.
+     *
+     * @param excludeTripIds các chuyến bỏ qua (chính các chuyến đang gán)
+     * @return true nếu giữ chỗ được, false nếu tài xế đã bận
+     */
+    boolean tryReserveDriver(Integer driverId, Instant start, Instant end, Collection<Integer> excludeTripIds);
+
+    /**
+     * Khóa xe rồi kiểm tra xe không bị chuyến khác chiếm dụng [start, busyUntil) (theo busy-until).
+     * Khóa vẫn được giữ đến hết giao dịch kể cả khi trả về false.
+     *
+     * @param excludeTripIds các chuyến bỏ qua (chính các chuyến đang gán)
+     * @return true nếu giữ chỗ được, false nếu xe đã bận
+     */
+    boolean tryReserveVehicle(Integer vehicleId, Instant start, Instant busyUntil, Collection<Integer> excludeTripIds);
+}
@@ -0,0 +1,91 @@
+package org.example.ptcmssbackend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chỉ mục lịch bận (in-memory) của tài xế và xe theo từng chi nhánh.
+ * Thay cho việc đọc lại toàn bộ lịch sử chuyến của từng tài xế/xe mỗi lần kiểm tra trùng giờ.
+ *
+ * Chỉ mục chứa các chuyến chưa kết thúc (khác CANCELLED/COMPLETED) đã được gán tài xế/xe,
+ * được nạp lười theo chi nhánh và cập nhật tăng dần sau khi giao dịch gán/hủy gán/đổi trạng thái commit.
+ */
+public interface ResourceTimelineService {
+
+    /**
+     * Xe có chuyến khác chiếm dụng khoảng [start, busyUntil) không (tính theo busy-until của chuyến kia).
+     * Chuyến không có thời gian bắt đầu được coi là bận.
+     *
+     * @param excludeTripIds   các chuyến bỏ qua (ví dụ chính chuyến đang gán)
+     * @param excludeBookingId bỏ qua các chuyến của booking này (null = không bỏ qua)
+     */
+    boolean isVehicleBusy(Integer branchId, Integer vehicleId, Instant start, Instant busyUntil,
+                          Collection<Integer> excludeTripIds, Integer excludeBookingId);
+
+    /**
+     * Tài xế có chuyến khác trùng khoảng [start, end) không (theo startTime/endTime của chuyến).
+     * Chuyến thiếu startTime/endTime không được tính.
+     */
+    boolean isDriverBusy(Integer branchId, Integer driverId, Instant start, Instant end,
+                         Collection<Integer> excludeTripIds, Integer excludeBookingId);
+
+    /**
+     * Như isVehicleBusy nhưng chỉ đọc chỉ mục chi nhánh đã nạp sẵn, null nếu chi nhánh chưa nạp.
+     * Không bao giờ nạp chi nhánh nên dùng được khi đang giữ khóa dòng.
+     */
+    Boolean isVehicleBusyIfLoaded(Integer branchId, Integer vehicleId, Instant start, Instant busyUntil,
+                                  Collection<Integer> excludeTripIds);
+
+    /**
+     * Như isDriverBusy nhưng chỉ đọc chỉ mục chi nhánh đã nạp sẵn, null nếu chi nhánh chưa nạp
+     */
+    Boolean isDriverBusyIfLoaded(Integer branchId, Integer driverId, Instant start, Instant end,
+                                 Collection<Integer> excludeTripIds);
+
+    /**
+     * Khung rảnh tiếp theo của xe tính từ requestedStart (theo startTime/endTime của các chuyến).
+     */
+    FreeSlot findNextFreeSlot(Integer branchId, Integer vehicleId, Instant requestedStart);
+
+    /**
+     * Danh sách xe (thuộc chi nhánh, đúng loại nếu categoryId khác null) có chuyến trùng [start, end).
+     * Tương đương TripVehicleRepository.findBusyVehicleIds nhưng không truy vấn DB.
+     */
+    List<Integer> findBusyVehicleIds(Integer branchId, Integer categoryId, Instant start, Instant end);
+
+    /**
+     * Số xe có chuyến trùng [start, end) theo từng loại xe (categoryId -> số xe) của chi nhánh
+     */
+    Map<Integer, Integer> countBusyVehiclesByCategory(Integer branchId, Instant start, Instant end);
+
+    /**
+     * Danh sách xe AVAILABLE (thuộc chi nhánh, đúng loại nếu categoryId khác null) rảnh trong [start, end).
+     */
+    List<Integer> findFreeVehicleIds(Integer branchId, Integer categoryId, Instant start, Instant end);
+
+    /**
+     * Đánh dấu chuyến vừa thay đổi (gán/hủy gán/đổi trạng thái/đổi giờ).
+     * Nếu đang trong giao dịch, chỉ mục được cập nhật sau khi commit; rollback thì không đổi gì.
+     */
+    void onTripChanged(Integer tripId);
+
+    /**
+     * Bỏ chỉ mục của chi nhánh (sẽ nạp lại ở lần truy vấn kế tiếp)
+     */
+    void evictBranch(Integer branchId);
+
+    /**
+     * Khung rảnh của 1 xe: rảnh từ availableFrom đến availableUntil (null = không giới hạn)
+     */
+    @Getter
+    @AllArgsConstructor
+    class FreeSlot {
+        private final Instant availableFrom;
+        private final Instant availableUntil;
+    }
+}
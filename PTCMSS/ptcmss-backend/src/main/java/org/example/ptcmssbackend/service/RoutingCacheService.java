@@ -0,0 +1,52 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Cache 2 tầng cho geocode và tuyến đường: bộ nhớ (giới hạn kích thước) -> bảng DB -> API.
+ * Các lượt tra cứu trùng key đang chạy đồng thời chỉ gọi API 1 lần.
+ */
+public interface RoutingCacheService {
+
+    /**
+     * Tọa độ của địa chỉ; geocoder chỉ được gọi khi cả 2 tầng cache đều không có (trả null nếu không tìm thấy)
+     */
+    PlaceSuggestion getPlace(String address, Function<String, PlaceSuggestion> geocoder);
+
+    /**
+     * Tọa độ đã có trong cache (bộ nhớ hoặc DB) của các địa chỉ, không gọi API; key của map là địa chỉ truyền vào
+     */
+    Map<String, PlaceSuggestion> findPlaces(Collection<String> addresses);
+
+    /**
+     * Khoảng cách / thời gian giữa 2 tọa độ; router chỉ được gọi khi cả 2 tầng cache đều không có
+     */
+    DistanceResult getRoute(PlaceSuggestion from, PlaceSuggestion to,
+                            BiFunction<PlaceSuggestion, PlaceSuggestion, DistanceResult> router);
+
+    /**
+     * Key của tuyến giữa 2 tọa độ (làm tròn 5 chữ số thập phân)
+     */
+    String routeKey(PlaceSuggestion from, PlaceSuggestion to);
+
+    /**
+     * Các tuyến đã có trong cache (bộ nhớ hoặc DB), không gọi API; key của map là routeKey
+     */
+    Map<String, DistanceResult> findRoutes(Collection<String> routeKeys);
+
+    /**
+     * Lưu nhiều tuyến vừa tính (ví dụ từ Matrix API) vào cả 2 tầng cache
+     */
+    void putRoutes(Map<String, DistanceResult> routes);
+
+    /**
+     * Chuẩn hóa địa chỉ làm key: NFC, chữ thường, gộp khoảng trắng / dấu phẩy, bỏ dấu câu cuối
+     */
+    String normalizeAddress(String address);
+}
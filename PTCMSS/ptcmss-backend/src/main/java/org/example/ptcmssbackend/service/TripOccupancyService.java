@@ -1,6 +1,9 @@
 package org.example.ptcmssbackend.service;
 
+import org.example.ptcmssbackend.entity.Trips;
+
 import java.time.Instant;
+import java.util.Collection;
 
 /**
  * Tính khoảng thời gian xe/tài xế bị chiếm dụng dựa trên distance + vận tốc trung bình + buffer.
@@ -33,6 +36,25 @@ public interface TripOccupancyService {
             String startLocation,
             String endLocation
     );
+
+    /**
+     * Như computeBusyUntil nhưng distance còn thiếu chỉ lấy từ cache/ước lượng haversine, không gọi API,
+     * để nạp hàng loạt (có thể đang giữ khóa dòng) không bị chặn bởi mạng.
+     */
+    Instant estimateBusyUntil(
+            String hireTypeCode,
+            Instant startTime,
+            Instant endTime,
+            Double distanceKm,
+            String startLocation,
+            String endLocation
+    );
+
+    /**
+     * Tính trước (1 lần gọi ma trận khoảng cách) distance của các trip chưa có distance,
+     * để các lần computeBusyUntil sau đó lấy từ cache thay vì gọi API từng chặng.
+     */
+    void prefetchDistances(Collection<Trips> trips);
 }
 
 
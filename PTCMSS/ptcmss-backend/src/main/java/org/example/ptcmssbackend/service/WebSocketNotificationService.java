@@ -1,28 +1,109 @@
 package org.example.ptcmssbackend.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Gửi thông báo realtime qua STOMP.
+ *
+ * - Thông báo cá nhân: /user/queue/notifications (chỉ phiên của user đó nhận)
+ * - Sự kiện theo chi nhánh: /topic/branch.{branchId}.notifications|bookings|payments|dispatches
+ * - Topic cũ (/topic/notifications/{userId}, /topic/bookings, ...) chỉ gửi khi bật websocket.legacy-destinations (mặc định tắt)
+ *   để client chưa chuyển sang destination mới không bị mất tin
+ *
+ * Cập nhật booking/payment/dispatch được gộp theo cửa sổ ngắn: trong 1 cửa sổ chỉ gửi trạng thái mới nhất
+ * của mỗi đối tượng trên mỗi destination.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class WebSocketNotificationService {
 
+    public static final String USER_NOTIFICATION_DESTINATION = "/queue/notifications";
+
     private final SimpMessagingTemplate messagingTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${websocket.legacy-destinations:false}")
+    private boolean legacyDestinations;
+
+    @Value("${websocket.coalesce-window-ms:250}")
+    private long coalesceWindowMs;
+
+    @Value("${websocket.coalesce-max-pending:5000}")
+    private int coalesceMaxPending;
+
+    private final Map<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+    private Counter coalescedCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    void init() {
+        coalescedCounter = meterRegistry.counter("websocket.messages.coalesced");
+        droppedCounter = meterRegistry.counter("websocket.messages.dropped", "reason", "send_failed");
+        Gauge.builder("websocket.coalesce.pending", pendingUpdates, Map::size)
+                .description("Số cập nhật đang chờ gửi trong cửa sổ gộp")
+                .register(meterRegistry);
+        if (coalesceWindowMs > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ws-coalesce");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushPendingUpdates, coalesceWindowMs, coalesceWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flushPendingUpdates();
+        }
+    }
 
     /**
      * Send notification to all connected clients
      */
     public void sendGlobalNotification(String title, String message, String type) {
         Map<String, Object> notification = buildNotification(title, message, type, null);
-        messagingTemplate.convertAndSend("/topic/notifications", notification);
-        log.info("Sent global notification: {}", title);
+        send("/topic/notifications", notification);
+        log.debug("Sent global notification: {}", title);
+    }
+
+    /**
+     * Send notification to clients of a branch (null branch = all clients)
+     */
+    public void sendBranchNotification(Integer branchId, String title, String message, String type) {
+        Map<String, Object> notification = buildNotification(title, message, type, null);
+        if (branchId != null) {
+            notification.put("branchId", branchId);
+            send(branchDestination(branchId, "notifications"), notification);
+        }
+        if (branchId == null || legacyDestinations) {
+            send("/topic/notifications", notification);
+        }
+        log.debug("Sent notification to branch {}: {}", branchId, title);
     }
 
     /**
@@ -30,54 +111,111 @@ public class WebSocketNotificationService {
      */
     public void sendUserNotification(Integer userId, String title, String message, String type) {
         Map<String, Object> notification = buildNotification(title, message, type, userId);
-        messagingTemplate.convertAndSend("/topic/notifications/" + userId, notification);
-        log.info("Sent notification to user {}: {}", userId, title);
+        try {
+            messagingTemplate.convertAndSendToUser(String.valueOf(userId), USER_NOTIFICATION_DESTINATION, notification);
+        } catch (MessagingException e) {
+            droppedCounter.increment();
+            log.warn("Failed to send notification to user {}: {}", userId, e.getMessage());
+        }
+        if (legacyDestinations) {
+            send("/topic/notifications/" + userId, notification);
+        }
+        log.debug("Sent notification to user {}: {}", userId, title);
     }
 
     /**
      * Send booking update notification
      */
-    public void sendBookingUpdate(Integer bookingId, String status, String message) {
+    public void sendBookingUpdate(Integer branchId, Integer bookingId, String status, String message) {
         Map<String, Object> update = new HashMap<>();
         update.put("type", "BOOKING_UPDATE");
         update.put("bookingId", bookingId);
+        update.put("branchId", branchId);
         update.put("status", status);
         update.put("message", message);
         update.put("timestamp", Instant.now());
 
-        messagingTemplate.convertAndSend("/topic/bookings", update);
-        log.info("Sent booking update for booking {}: {}", bookingId, status);
+        publishUpdate(branchId, "bookings", "booking:" + bookingId, update);
+        log.debug("Sent booking update for booking {}: {}", bookingId, status);
     }
 
     /**
      * Send payment update notification
      */
-    public void sendPaymentUpdate(Integer invoiceId, Integer bookingId, String status, String message) {
+    public void sendPaymentUpdate(Integer branchId, Integer invoiceId, Integer bookingId, String status, String message) {
         Map<String, Object> update = new HashMap<>();
         update.put("type", "PAYMENT_UPDATE");
         update.put("invoiceId", invoiceId);
         update.put("bookingId", bookingId);
+        update.put("branchId", branchId);
         update.put("status", status);
         update.put("message", message);
         update.put("timestamp", Instant.now());
 
-        messagingTemplate.convertAndSend("/topic/payments", update);
-        log.info("Sent payment update for invoice {}: {}", invoiceId, status);
+        publishUpdate(branchId, "payments", "invoice:" + invoiceId, update);
+        log.debug("Sent payment update for invoice {}: {}", invoiceId, status);
     }
 
     /**
      * Send dispatch update notification
      */
-    public void sendDispatchUpdate(Integer dispatchId, String status, String message) {
+    public void sendDispatchUpdate(Integer branchId, Integer dispatchId, String status, String message) {
         Map<String, Object> update = new HashMap<>();
         update.put("type", "DISPATCH_UPDATE");
         update.put("dispatchId", dispatchId);
+        update.put("branchId", branchId);
         update.put("status", status);
         update.put("message", message);
         update.put("timestamp", Instant.now());
 
-        messagingTemplate.convertAndSend("/topic/dispatches", update);
-        log.info("Sent dispatch update for dispatch {}: {}", dispatchId, status);
+        publishUpdate(branchId, "dispatches", "dispatch:" + dispatchId, update);
+        log.debug("Sent dispatch update for dispatch {}: {}", dispatchId, status);
+    }
+
+    /**
+     * Gửi các cập nhật đang chờ (chạy định kỳ theo cửa sổ gộp)
+     */
+    void flushPendingUpdates() {
+        for (String key : pendingUpdates.keySet()) {
+            PendingUpdate update = pendingUpdates.remove(key);
+            if (update != null) {
+                send(update.getDestination(), update.getPayload());
+            }
+        }
+    }
+
+    private void publishUpdate(Integer branchId, String channel, String entityKey, Map<String, Object> payload) {
+        if (branchId != null) {
+            enqueueUpdate(branchDestination(branchId, channel), entityKey, payload);
+        }
+        if (branchId == null || legacyDestinations) {
+            enqueueUpdate("/topic/" + channel, entityKey, payload);
+        }
+    }
+
+    private void enqueueUpdate(String destination, String entityKey, Map<String, Object> payload) {
+        // Không gộp được (tắt gộp hoặc hàng chờ đầy) thì gửi ngay
+        if (flusher == null || pendingUpdates.size() >= coalesceMaxPending) {
+            send(destination, payload);
+            return;
+        }
+        PendingUpdate previous = pendingUpdates.put(destination + "|" + entityKey, new PendingUpdate(destination, payload));
+        if (previous != null) {
+            coalescedCounter.increment();
+        }
+    }
+
+    private void send(String destination, Object payload) {
+        try {
+            messagingTemplate.convertAndSend(destination, payload);
+        } catch (MessagingException e) {
+            droppedCounter.increment();
+            log.warn("Failed to send WebSocket message to {}: {}", destination, e.getMessage());
+        }
+    }
+
+    private static String branchDestination(Integer branchId, String channel) {
+        return "/topic/branch." + branchId + "." + channel;
     }
 
     private Map<String, Object> buildNotification(String title, String message, String type, Integer userId) {
@@ -93,4 +231,11 @@ public class WebSocketNotificationService {
         }
         return notification;
     }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PendingUpdate {
+        private final String destination;
+        private final Object payload;
+    }
 }
@@ -18,7 +18,9 @@ import org.example.ptcmssbackend.repository.InvoiceRepository;
 import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
 import org.example.ptcmssbackend.repository.ExpenseRequestRepository;
 import org.example.ptcmssbackend.service.AccountingService;
+import org.example.ptcmssbackend.service.InvoiceLedgerService;
 import org.example.ptcmssbackend.service.InvoiceService;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -39,6 +41,7 @@ public class AccountingServiceImpl implements AccountingService {
     private final PaymentHistoryRepository paymentHistoryRepository;
     private final ExpenseRequestRepository expenseRequestRepository;
     private final InvoiceService invoiceService;
+    private final InvoiceLedgerService invoiceLedgerService;
 
     @Override
     public AccountingDashboardResponse getDashboard(Integer branchId, String period) {
@@ -47,30 +50,112 @@ public class AccountingServiceImpl implements AccountingService {
         LocalDate[] dateRange = getDateRange(period);
         LocalDate startDate = dateRange[0];
         LocalDate endDate = dateRange[1];
+        Instant start = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        Instant end = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant();
+
+        // Hóa đơn trong kỳ: 1 lần quét cho KPI, biểu đồ theo ngày, cơ cấu chi phí và top khách hàng
+        // (điều kiện giữ nguyên như các hàm KPI riêng lẻ: doanh thu / chi phí tính mọi trạng thái,
+        // tỷ lệ thu hồi / top khách hàng / cơ cấu chi phí chỉ tính hóa đơn ACTIVE)
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        BigDecimal invoiceExpense = BigDecimal.ZERO;
+        BigDecimal activeInvoiceExpense = BigDecimal.ZERO;
+        BigDecimal collected = BigDecimal.ZERO;
+        Map<LocalDate, BigDecimal> revenueByDay = new HashMap<>();
+        Map<LocalDate, BigDecimal> expenseByDay = new HashMap<>();
+        Map<Integer, AccountingDashboardResponse.TopCustomer> customerMap = new HashMap<>();
+
+        for (Object[] row : invoiceRepository.findDashboardRows(branchId, start, end)) {
+            InvoiceType type = (InvoiceType) row[0];
+            boolean active = row[1] == InvoiceStatus.ACTIVE;
+            BigDecimal amount = (BigDecimal) row[4];
+            LocalDate day = ((Instant) row[3]).atZone(ZoneId.systemDefault()).toLocalDate();
+
+            if (type == InvoiceType.INCOME) {
+                totalRevenue = totalRevenue.add(amount);
+                revenueByDay.merge(day, amount, BigDecimal::add);
+                if (active && row[2] == PaymentStatus.PAID && row[7] != null) {
+                    collected = collected.add((BigDecimal) row[7]);
+                }
+                if (active && row[5] != null) {
+                    AccountingDashboardResponse.TopCustomer customer = customerMap.computeIfAbsent((Integer) row[5], id -> {
+                        AccountingDashboardResponse.TopCustomer c = new AccountingDashboardResponse.TopCustomer();
+                        c.setCustomerId(id);
+                        c.setCustomerName((String) row[6]);
+                        c.setTotalRevenue(BigDecimal.ZERO);
+                        c.setInvoiceCount(0);
+                        return c;
+                    });
+                    customer.setTotalRevenue(customer.getTotalRevenue().add(amount));
+                    customer.setInvoiceCount(customer.getInvoiceCount() + 1);
+                }
+            } else if (type == InvoiceType.EXPENSE) {
+                invoiceExpense = invoiceExpense.add(amount);
+                expenseByDay.merge(day, amount, BigDecimal::add);
+                if (active) {
+                    activeInvoiceExpense = activeInvoiceExpense.add(amount);
+                }
+            }
+        }
+
+        // Chi phí tài xế / điều phối đã duyệt trong kỳ
+        BigDecimal requestExpense = BigDecimal.ZERO;
+        for (Object[] row : expenseRequestRepository.findApprovedAmounts(branchId, start, end)) {
+            if (row[1] == null) continue;
+            BigDecimal amount = (BigDecimal) row[1];
+            requestExpense = requestExpense.add(amount);
+            expenseByDay.merge(((Instant) row[0]).atZone(ZoneId.systemDefault()).toLocalDate(), amount, BigDecimal::add);
+        }
+        BigDecimal totalExpense = invoiceExpense.add(requestExpense);
+
+        // Công nợ hiện tại (không phụ thuộc kỳ)
+        BigDecimal arBalance = BigDecimal.ZERO;
+        int dueIn7Days = 0;
+        int overdue = 0;
+        LocalDate today = LocalDate.now();
+        LocalDate sevenDaysLater = today.plusDays(7);
+        for (Object[] row : invoiceRepository.findReceivableRows(branchId)) {
+            PaymentStatus paymentStatus = (PaymentStatus) row[0];
+            LocalDate dueDate = (LocalDate) row[1];
+            BigDecimal paid = row[3] != null ? (BigDecimal) row[3] : BigDecimal.ZERO;
+            arBalance = arBalance.add(((BigDecimal) row[2]).subtract(paid));
+            if (paymentStatus == PaymentStatus.OVERDUE) {
+                overdue++;
+            } else if (dueDate != null && !dueDate.isBefore(today) && !dueDate.isAfter(sevenDaysLater)) {
+                dueIn7Days++;
+            }
+        }
 
         AccountingDashboardResponse response = new AccountingDashboardResponse();
 
         // Calculate statistics
-        response.setTotalRevenue(getTotalRevenue(branchId, startDate, endDate));
-        response.setTotalExpense(getTotalExpense(branchId, startDate, endDate));
-        response.setNetProfit(response.getTotalRevenue().subtract(response.getTotalExpense()));
-        response.setArBalance(getARBalance(branchId));
+        response.setTotalRevenue(totalRevenue);
+        response.setTotalExpense(totalExpense);
+        response.setNetProfit(totalRevenue.subtract(totalExpense));
+        response.setArBalance(arBalance);
         response.setApBalance(getAPBalance(branchId));
-        response.setInvoicesDueIn7Days(getInvoicesDueIn7Days(branchId));
-        response.setOverdueInvoices(getOverdueInvoices(branchId));
-        response.setCollectionRate(getCollectionRate(branchId, startDate, endDate));
-        response.setExpenseToRevenueRatio(getExpenseToRevenueRatio(branchId, startDate, endDate));
+        response.setInvoicesDueIn7Days(dueIn7Days);
+        response.setOverdueInvoices(overdue);
+        response.setCollectionRate(percentOf(collected, totalRevenue));
+        response.setExpenseToRevenueRatio(percentOf(totalExpense, totalRevenue));
 
         // Chart data
-        response.setRevenueChart(getRevenueChartData(branchId, startDate, endDate));
-        response.setExpenseChart(getExpenseChartData(branchId, startDate, endDate));
-        response.setExpenseByCategory(getExpenseByCategory(branchId, startDate, endDate));
+        response.setRevenueChart(toDailyChart(revenueByDay, startDate, endDate));
+        response.setExpenseChart(toDailyChart(expenseByDay, startDate, endDate));
+        // costType đã được xóa - group tất cả vào "OTHER"
+        Map<String, BigDecimal> expenseByCategory = new HashMap<>();
+        if (activeInvoiceExpense.compareTo(BigDecimal.ZERO) > 0) {
+            expenseByCategory.put("OTHER", activeInvoiceExpense);
+        }
+        response.setExpenseByCategory(expenseByCategory);
 
         // Pending approvals
         response.setPendingApprovals(getPendingApprovals(branchId));
 
         // Top customers
-        response.setTopCustomers(getTopCustomers(branchId, startDate, endDate));
+        response.setTopCustomers(customerMap.values().stream()
+                .sorted((a, b) -> b.getTotalRevenue().compareTo(a.getTotalRevenue()))
+                .limit(5)
+                .collect(Collectors.toList()));
 
         return response;
     }
@@ -101,10 +186,13 @@ public class AccountingServiceImpl implements AccountingService {
                 .map(Invoices::getAmount)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
+        // Số tiền đã thu (CONFIRMED) của toàn bộ hóa đơn, đọc từ sổ cái trong 1 truy vấn
+        Map<Integer, BigDecimal> paidByInvoice = invoiceLedgerService.getConfirmedPaid(
+                invoices.stream().map(Invoices::getId).collect(Collectors.toList()));
+
         BigDecimal totalPaid = invoices.stream()
                 .filter(inv -> inv.getPaymentStatus() == PaymentStatus.PAID)
-                .map(inv -> paymentHistoryRepository.sumConfirmedByInvoiceId(inv.getId()))
-                .filter(Objects::nonNull)
+                .map(inv -> paidByInvoice.getOrDefault(inv.getId(), BigDecimal.ZERO))
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         BigDecimal totalBalance = totalRevenue.subtract(totalPaid);
@@ -123,7 +211,7 @@ public class AccountingServiceImpl implements AccountingService {
 
         // Invoice list - convert to InvoiceListResponse
         List<InvoiceListResponse> invoiceList = invoices.stream()
-                .map(this::mapInvoiceToListResponse)
+                .map(inv -> mapInvoiceToListResponse(inv, paidByInvoice.getOrDefault(inv.getId(), BigDecimal.ZERO)))
                 .collect(Collectors.toList());
         response.setInvoices(invoiceList);
 
@@ -485,6 +573,16 @@ public class AccountingServiceImpl implements AccountingService {
         return new LocalDate[]{startDate, endDate};
     }
 
+    @Override
+    public LocalDate[] getReportDateRange(RevenueReportRequest request) {
+        return getDateRangeFromRequest(request);
+    }
+
+    @Override
+    public LocalDate[] getReportDateRange(ExpenseReportRequest request) {
+        return getDateRangeFromRequest(request);
+    }
+
     private LocalDate[] getDateRangeFromRequest(RevenueReportRequest request) {
         if (request.getStartDate() != null && request.getEndDate() != null) {
             return new LocalDate[]{request.getStartDate(), request.getEndDate()};
@@ -499,61 +597,33 @@ public class AccountingServiceImpl implements AccountingService {
         return getDateRange("THIS_MONTH");
     }
 
-    private List<AccountingDashboardResponse.ChartDataPoint> getRevenueChartData(
-            Integer branchId, LocalDate startDate, LocalDate endDate) {
-        // Simplified - group by day
-        List<AccountingDashboardResponse.ChartDataPoint> points = new ArrayList<>();
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            BigDecimal revenue = getTotalRevenue(branchId, current, current);
-            AccountingDashboardResponse.ChartDataPoint point = new AccountingDashboardResponse.ChartDataPoint();
-            point.setDate(current.toString());
-            point.setValue(revenue);
-            points.add(point);
-            current = current.plusDays(1);
-        }
-        return points;
-    }
-
-    private List<AccountingDashboardResponse.ChartDataPoint> getExpenseChartData(
-            Integer branchId, LocalDate startDate, LocalDate endDate) {
+    private List<AccountingDashboardResponse.ChartDataPoint> toDailyChart(
+            Map<LocalDate, BigDecimal> byDay, LocalDate startDate, LocalDate endDate) {
         List<AccountingDashboardResponse.ChartDataPoint> points = new ArrayList<>();
         LocalDate current = startDate;
         while (!current.isAfter(endDate)) {
-            BigDecimal expense = getTotalExpense(branchId, current, current);
             AccountingDashboardResponse.ChartDataPoint point = new AccountingDashboardResponse.ChartDataPoint();
             point.setDate(current.toString());
-            point.setValue(expense);
+            point.setValue(byDay.getOrDefault(current, BigDecimal.ZERO));
             points.add(point);
             current = current.plusDays(1);
         }
         return points;
     }
 
-    private Map<String, BigDecimal> getExpenseByCategory(Integer branchId, LocalDate startDate, LocalDate endDate) {
-        Instant start = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
-        Instant end = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant();
-        List<Invoices> expenses = invoiceRepository.findInvoicesWithFilters(
-                branchId, InvoiceType.EXPENSE, InvoiceStatus.ACTIVE, start, end, null, null);
-
-        // costType đã được xóa - group tất cả vào "OTHER"
-        BigDecimal total = expenses.stream()
-                .map(Invoices::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        Map<String, BigDecimal> result = new HashMap<>();
-        if (total.compareTo(BigDecimal.ZERO) > 0) {
-            result.put("OTHER", total);
+    private BigDecimal percentOf(BigDecimal part, BigDecimal total) {
+        if (total.compareTo(BigDecimal.ZERO) == 0) {
+            return BigDecimal.ZERO;
         }
-        return result;
+        return part.divide(total, 4, RoundingMode.HALF_UP)
+                .multiply(BigDecimal.valueOf(100));
     }
 
     private List<AccountingDashboardResponse.PendingApprovalItem> getPendingApprovals(Integer branchId) {
         // Get invoices with payment status UNPAID that need approval
-        List<Invoices> pending = invoiceRepository.findInvoicesWithFilters(
-                branchId, null, InvoiceStatus.ACTIVE, null, null, null, PaymentStatus.UNPAID);
+        List<Invoices> pending = invoiceRepository.findPendingInvoices(branchId, PageRequest.of(0, 10));
 
         return pending.stream()
-                .limit(10)
                 .map(inv -> {
                     AccountingDashboardResponse.PendingApprovalItem item =
                             new AccountingDashboardResponse.PendingApprovalItem();
@@ -571,37 +641,6 @@ public class AccountingServiceImpl implements AccountingService {
                 .collect(Collectors.toList());
     }
 
-    private List<AccountingDashboardResponse.TopCustomer> getTopCustomers(
-            Integer branchId, LocalDate startDate, LocalDate endDate) {
-        Instant start = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
-        Instant end = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant();
-        List<Invoices> invoices = invoiceRepository.findInvoicesWithFilters(
-                branchId, InvoiceType.INCOME, InvoiceStatus.ACTIVE, start, end, null, null);
-
-        Map<Integer, AccountingDashboardResponse.TopCustomer> customerMap = new HashMap<>();
-        for (Invoices inv : invoices) {
-            if (inv.getCustomer() == null) continue;
-            Integer customerId = inv.getCustomer().getId();
-            customerMap.computeIfAbsent(customerId, id -> {
-                AccountingDashboardResponse.TopCustomer customer =
-                        new AccountingDashboardResponse.TopCustomer();
-                customer.setCustomerId(id);
-                customer.setCustomerName(inv.getCustomer().getFullName());
-                customer.setTotalRevenue(BigDecimal.ZERO);
-                customer.setInvoiceCount(0);
-                return customer;
-            });
-            AccountingDashboardResponse.TopCustomer customer = customerMap.get(customerId);
-            customer.setTotalRevenue(customer.getTotalRevenue().add(inv.getAmount()));
-            customer.setInvoiceCount(customer.getInvoiceCount() + 1);
-        }
-
-        return customerMap.values().stream()
-                .sorted((a, b) -> b.getTotalRevenue().compareTo(a.getTotalRevenue()))
-                .limit(5)
-                .collect(Collectors.toList());
-    }
-
     private List<RevenueReportResponse.ChartDataPoint> getRevenueByDate(
             List<Invoices> invoices, LocalDate startDate, LocalDate endDate) {
         Map<String, BigDecimal> revenueByDate = invoices.stream()
@@ -752,7 +791,7 @@ public class AccountingServiceImpl implements AccountingService {
                 .collect(Collectors.toList());
     }
 
-    private InvoiceListResponse mapInvoiceToListResponse(Invoices invoice) {
+    private InvoiceListResponse mapInvoiceToListResponse(Invoices invoice, BigDecimal paidAmount) {
         InvoiceListResponse response = new InvoiceListResponse();
         response.setInvoiceId(invoice.getId());
         response.setInvoiceNumber(invoice.getInvoiceNumber());
@@ -774,10 +813,9 @@ public class AccountingServiceImpl implements AccountingService {
         response.setStatus(invoice.getStatus() != null ? invoice.getStatus().toString() : null);
         response.setInvoiceDate(invoice.getInvoiceDate());
 
-        // Calculate paid amount and balance (only CONFIRMED payments)
-        BigDecimal paidAmount = paymentHistoryRepository.sumConfirmedByInvoiceId(invoice.getId());
-        response.setPaidAmount(paidAmount != null ? paidAmount : BigDecimal.ZERO);
-        response.setBalance(invoiceService.calculateBalance(invoice.getId()));
+        // Paid amount and balance (only CONFIRMED payments)
+        response.setPaidAmount(paidAmount);
+        response.setBalance(invoice.getAmount().subtract(paidAmount));
 
         // Calculate days overdue
         if (invoice.getDueDate() != null && invoice.getPaymentStatus() != PaymentStatus.PAID) {
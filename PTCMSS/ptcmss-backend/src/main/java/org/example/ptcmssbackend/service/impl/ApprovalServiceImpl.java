@@ -7,10 +7,13 @@ import org.example.ptcmssbackend.entity.Branches;
 import org.example.ptcmssbackend.entity.Users;
 import org.example.ptcmssbackend.enums.ApprovalStatus;
 import org.example.ptcmssbackend.enums.ApprovalType;
+import org.example.ptcmssbackend.event.ApprovalRequestedEvent;
 import org.example.ptcmssbackend.repository.ApprovalHistoryRepository;
 import org.example.ptcmssbackend.service.ApprovalService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 @Slf4j
 @Service
@@ -42,4 +45,19 @@ public class ApprovalServiceImpl implements ApprovalService {
         
         return approvalHistoryRepository.save(history);
     }
+
+    /**
+     * Ghi lịch sử phê duyệt trong cùng giao dịch với yêu cầu (trước khi commit):
+     * yêu cầu bị rollback thì không có ApprovalHistory mồ côi, ghi lỗi thì yêu cầu cũng rollback.
+     * fallbackExecution: vẫn ghi khi được gọi ngoài giao dịch.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onApprovalRequested(ApprovalRequestedEvent event) {
+        createApprovalRequest(
+                event.getApprovalType(),
+                event.getRelatedEntityId(),
+                event.getRequestedBy(),
+                event.getRequestReason(),
+                event.getBranch());
+    }
 }
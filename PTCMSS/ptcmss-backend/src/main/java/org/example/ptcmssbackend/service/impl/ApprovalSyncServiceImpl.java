@@ -5,21 +5,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.ApprovalStatus;
 import org.example.ptcmssbackend.enums.ApprovalType;
-import org.example.ptcmssbackend.enums.DriverDayOffStatus;
-import org.example.ptcmssbackend.enums.ExpenseRequestStatus;
 import org.example.ptcmssbackend.repository.*;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * ApprovalSyncService - Tự động sync approval history từ các bảng khác
+ * ApprovalSyncService - Đối soát approval history với các bảng khác
  * 
- * Chạy định kỳ để tạo ApprovalHistory cho:
+ * ApprovalHistory được ghi ngay khi tạo yêu cầu (ApprovalRequestedEvent).
+ * Job này chỉ bù các bản ghi còn thiếu (dữ liệu cũ, import trực tiếp DB...):
  * - DriverDayOff với status PENDING
  * - ExpenseRequests với status PENDING
+ * Mỗi loại chỉ một truy vấn anti-join, không kiểm tra từng bản ghi.
  */
 @Slf4j
 @Service
@@ -30,104 +31,69 @@ public class ApprovalSyncServiceImpl {
     private final DriverDayOffRepository driverDayOffRepository;
     private final ExpenseRequestRepository expenseRequestRepository;
     private final ApprovalHistoryRepository approvalHistoryRepository;
-    private final DriverRepository driverRepository;
     
     /**
-     * Sync approval history từ DriverDayOff
-     * Chạy mỗi 5 phút
+     * Bù approval history cho DriverDayOff PENDING còn thiếu
+     * Mặc định chạy mỗi 15 phút
      */
-    @Scheduled(fixedRate = 300000) // 5 phút
+    @Scheduled(fixedDelayString = "${approval.reconcile-interval-ms:900000}")
     public void syncDriverDayOffApprovals() {
-        log.info("[ApprovalSync] Syncing driver day-off approvals...");
-        
         try {
-            List<DriverDayOff> pendingDayOffs = driverDayOffRepository.findByStatus(DriverDayOffStatus.PENDING);
+            List<DriverDayOff> missing = driverDayOffRepository.findPendingWithoutApprovalHistory();
+            if (missing.isEmpty()) {
+                return;
+            }
             
-            for (DriverDayOff dayOff : pendingDayOffs) {
-                // Kiểm tra xem đã có approval history chưa
-                boolean exists = approvalHistoryRepository
-                        .findByApprovalTypeAndRelatedEntityIdAndStatus(
-                                ApprovalType.DRIVER_DAY_OFF,
-                                dayOff.getId(),
-                                ApprovalStatus.PENDING
-                        )
-                        .isPresent();
-                
-                if (!exists) {
-                    // Tạo approval history mới
-                    Drivers driver = dayOff.getDriver();
-                    Users requestedBy = driver.getEmployee() != null && driver.getEmployee().getUser() != null
-                            ? driver.getEmployee().getUser()
-                            : null;
-                    
-                    if (requestedBy != null) {
-                        ApprovalHistory history = ApprovalHistory.builder()
-                                .approvalType(ApprovalType.DRIVER_DAY_OFF)
-                                .relatedEntityId(dayOff.getId())
-                                .status(ApprovalStatus.PENDING)
-                                .requestedBy(requestedBy)
-                                .requestReason(dayOff.getReason())
-                                .branch(driver.getBranch())
-                                .build();
-                        
-                        approvalHistoryRepository.save(history);
-                        log.info("[ApprovalSync] Created approval history for day-off {}", dayOff.getId());
-                    }
-                }
+            List<ApprovalHistory> histories = new ArrayList<>(missing.size());
+            for (DriverDayOff dayOff : missing) {
+                Drivers driver = dayOff.getDriver();
+                histories.add(ApprovalHistory.builder()
+                        .approvalType(ApprovalType.DRIVER_DAY_OFF)
+                        .relatedEntityId(dayOff.getId())
+                        .status(ApprovalStatus.PENDING)
+                        .requestedBy(driver.getEmployee().getUser())
+                        .requestReason(dayOff.getReason())
+                        .branch(driver.getBranch())
+                        .build());
             }
+            approvalHistoryRepository.saveAll(histories);
             
-            log.info("[ApprovalSync] Synced {} driver day-off approvals", pendingDayOffs.size());
+            log.info("[ApprovalSync] Reconciled {} driver day-off approvals", histories.size());
         } catch (Exception e) {
             log.error("[ApprovalSync] Failed to sync driver day-off approvals", e);
         }
     }
     
     /**
-     * Sync approval history từ ExpenseRequests
-     * Chạy mỗi 5 phút
+     * Bù approval history cho ExpenseRequests PENDING còn thiếu
+     * Mặc định chạy mỗi 15 phút
      */
-    @Scheduled(fixedRate = 300000) // 5 phút
+    @Scheduled(fixedDelayString = "${approval.reconcile-interval-ms:900000}")
     public void syncExpenseRequestApprovals() {
-        log.info("[ApprovalSync] Syncing expense request approvals...");
-        
         try {
-            List<ExpenseRequests> pendingExpenses = expenseRequestRepository.findByStatus(ExpenseRequestStatus.PENDING);
+            List<ExpenseRequests> missing = expenseRequestRepository.findPendingWithoutApprovalHistory();
+            if (missing.isEmpty()) {
+                return;
+            }
             
-            for (ExpenseRequests expense : pendingExpenses) {
-                // Kiểm tra xem đã có approval history chưa
-                boolean exists = approvalHistoryRepository
-                        .findByApprovalTypeAndRelatedEntityIdAndStatus(
-                                ApprovalType.EXPENSE_REQUEST,
-                                expense.getId(),
-                                ApprovalStatus.PENDING
-                        )
-                        .isPresent();
+            List<ApprovalHistory> histories = new ArrayList<>(missing.size());
+            for (ExpenseRequests expense : missing) {
+                String reason = String.format("Yêu cầu tạm ứng: %s - %s VNĐ",
+                        expense.getType(),
+                        expense.getAmount());
                 
-                if (!exists) {
-                    // Tạo approval history mới
-                    Users requestedBy = expense.getRequester();
-                    
-                    if (requestedBy != null) {
-                        String reason = String.format("Yêu cầu tạm ứng: %s - %s VNĐ",
-                                expense.getType(),
-                                expense.getAmount());
-                        
-                        ApprovalHistory history = ApprovalHistory.builder()
-                                .approvalType(ApprovalType.EXPENSE_REQUEST)
-                                .relatedEntityId(expense.getId())
-                                .status(ApprovalStatus.PENDING)
-                                .requestedBy(requestedBy)
-                                .requestReason(reason)
-                                .branch(expense.getBranch())
-                                .build();
-                        
-                        approvalHistoryRepository.save(history);
-                        log.info("[ApprovalSync] Created approval history for expense {}", expense.getId());
-                    }
-                }
+                histories.add(ApprovalHistory.builder()
+                        .approvalType(ApprovalType.EXPENSE_REQUEST)
+                        .relatedEntityId(expense.getId())
+                        .status(ApprovalStatus.PENDING)
+                        .requestedBy(expense.getRequester())
+                        .requestReason(reason)
+                        .branch(expense.getBranch())
+                        .build());
             }
+            approvalHistoryRepository.saveAll(histories);
             
-            log.info("[ApprovalSync] Synced {} expense request approvals", pendingExpenses.size());
+            log.info("[ApprovalSync] Reconciled {} expense request approvals", histories.size());
         } catch (Exception e) {
             log.error("[ApprovalSync] Failed to sync expense request approvals", e);
         }
@@ -11,6 +11,7 @@ import org.example.ptcmssbackend.repository.UsersRepository;
 import org.example.ptcmssbackend.service.AuthenticationService;
 import org.example.ptcmssbackend.service.EmailService;
 import org.example.ptcmssbackend.service.JwtService;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import jakarta.mail.MessagingException;
 import java.io.UnsupportedEncodingException;
@@ -33,6 +34,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     private final JwtService jwtService;
     private final EmailService emailService;
     private final org.springframework.security.crypto.password.PasswordEncoder passwordEncoder;
+    private final PrincipalCacheService principalCacheService;
 
     @Override
     public TokenResponse getAccessToken(LoginRequest request) {
@@ -210,6 +212,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
             // Nếu status đã là INACTIVE, giữ nguyên để user không thể login
             user.setVerificationToken(null); // Xóa token sau khi sử dụng
             userRepository.save(user);
+            principalCacheService.evictUser(user.getUsername());
 
             log.info("[SET_PASSWORD] Password set successfully for user {} with status {}", user.getUsername(), user.getStatus());
             // Nếu status là INACTIVE, thông báo user không thể login
@@ -8,6 +8,7 @@ import org.example.ptcmssbackend.dto.request.Booking.TripRequest;
 import org.example.ptcmssbackend.dto.request.Booking.UpdateBookingRequest;
 import org.example.ptcmssbackend.dto.request.Booking.VehicleDetailRequest;
 import org.example.ptcmssbackend.dto.request.Booking.AssignRequest;
+import org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityBatchRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityRequest;
 import org.example.ptcmssbackend.dto.response.Booking.*;
 import org.example.ptcmssbackend.dto.response.common.PageResponse;
@@ -16,6 +17,9 @@ import org.example.ptcmssbackend.enums.*;
 import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.BookingService;
 import org.example.ptcmssbackend.service.CustomerService;
+import org.example.ptcmssbackend.service.PricingService;
+import org.example.ptcmssbackend.service.ResourceReservationService;
+import org.example.ptcmssbackend.service.ResourceTimelineService;
 import org.example.ptcmssbackend.service.SystemSettingService;
 import org.example.ptcmssbackend.service.TripOccupancyService;
 import org.springframework.data.domain.Page;
@@ -23,6 +27,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
@@ -34,8 +39,13 @@ import java.time.YearMonth;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -43,6 +53,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class BookingServiceImpl implements BookingService {
 
+    private static final int MAX_DASHBOARD_PAGE_SIZE = 50;
+
     private final BookingRepository bookingRepository;
     private final CustomerService customerService;
     private final BranchesRepository branchesRepository;
@@ -59,6 +71,9 @@ public class BookingServiceImpl implements BookingService {
     private final DriverRepository driverRepository;
     private final VehicleRepository vehicleRepository;
     private final org.example.ptcmssbackend.service.WebSocketNotificationService webSocketNotificationService;
+    private final ResourceTimelineService resourceTimelineService;
+    private final ResourceReservationService resourceReservationService;
+    private final PricingService pricingService;
     
     @Override
     @Transactional
@@ -174,8 +189,10 @@ public class BookingServiceImpl implements BookingService {
         try {
             String customerName = customer.getFullName() != null ? customer.getFullName() : "Khách hàng";
             String bookingCode = "ORD-" + booking.getId();
+            Integer branchId = booking.getBranch() != null ? booking.getBranch().getId() : null;
 
-            webSocketNotificationService.sendGlobalNotification(
+            webSocketNotificationService.sendBranchNotification(
+                    branchId,
                     "Đơn hàng mới",
                     String.format("Đơn %s - %s (%.0f km)",
                             bookingCode,
@@ -185,6 +202,7 @@ public class BookingServiceImpl implements BookingService {
             );
 
             webSocketNotificationService.sendBookingUpdate(
+                    branchId,
                     booking.getId(),
                     "CREATED",
                     String.format("Đơn hàng %s đã được tạo thành công", bookingCode)
@@ -224,17 +242,8 @@ public class BookingServiceImpl implements BookingService {
                         }
                         
                         // 3. Check trùng giờ với trips khác
-                        List<TripDrivers> driverTrips = tripDriverRepository.findAllByDriverId(driver.getId());
-                        boolean hasOverlap = driverTrips.stream().anyMatch(td -> {
-                            Trips t = td.getTrip();
-                            if (t.getStatus() == TripStatus.CANCELLED || t.getStatus() == TripStatus.COMPLETED) {
-                                return false;
-                            }
-                            Instant s1 = t.getStartTime();
-                            Instant e1 = t.getEndTime();
-                            if (s1 == null || e1 == null) return false;
-                            return s1.isBefore(tripEnd) && tripStart.isBefore(e1);
-                        });
+                        boolean hasOverlap = resourceTimelineService.isDriverBusy(
+                                branch.getId(), driver.getId(), tripStart, tripEnd, null, null);
                         
                         if (hasOverlap) {
                             isAvailable = false;
@@ -473,10 +482,12 @@ public class BookingServiceImpl implements BookingService {
             String customerName = booking.getCustomer() != null ? booking.getCustomer().getFullName() : "Khách hàng";
             String bookingCode = "ORD-" + bookingId;
             BookingStatus newStatus = booking.getStatus();
+            Integer branchId = booking.getBranch() != null ? booking.getBranch().getId() : null;
 
             if (oldStatus != newStatus) {
                 // Status changed
-                webSocketNotificationService.sendGlobalNotification(
+                webSocketNotificationService.sendBranchNotification(
+                        branchId,
                         "Cập nhật trạng thái đơn hàng",
                         String.format("Đơn %s - %s: %s → %s",
                                 bookingCode,
@@ -487,6 +498,7 @@ public class BookingServiceImpl implements BookingService {
                 );
 
                 webSocketNotificationService.sendBookingUpdate(
+                        branchId,
                         bookingId,
                         newStatus.name(),
                         String.format("Trạng thái đơn hàng đã được cập nhật thành %s", newStatus.name())
@@ -494,6 +506,7 @@ public class BookingServiceImpl implements BookingService {
             } else {
                 // General update
                 webSocketNotificationService.sendBookingUpdate(
+                        branchId,
                         bookingId,
                         "UPDATED",
                         String.format("Đơn hàng %s đã được cập nhật", bookingCode)
@@ -525,6 +538,7 @@ public class BookingServiceImpl implements BookingService {
             // sau khi dọn phụ thuộc mới xóa trips
             if (!oldTrips.isEmpty()) {
                 tripRepository.deleteAll(oldTrips);
+                oldTrips.forEach(old -> resourceTimelineService.onTripChanged(old.getId()));
             }
             
             // Tạo trips mới
@@ -611,9 +625,7 @@ public class BookingServiceImpl implements BookingService {
                 statusEnum, branchId, consultantId, startDate, endDate, keyword, pageable
         );
         
-        List<BookingListResponse> items = bookingPage.getContent().stream()
-                .map(this::toListResponse)
-                .collect(Collectors.toList());
+        List<BookingListResponse> items = toListResponses(bookingPage.getContent());
         
         return PageResponse.builder()
                 .pageNo(pageNo + 1)
@@ -673,13 +685,15 @@ public class BookingServiceImpl implements BookingService {
                     ? String.format("Đơn %s - %s đã bị hủy. Mất cọc: %,.0f VNĐ", bookingCode, customerName, depositLossAmount)
                     : String.format("Đơn %s - %s đã bị hủy", bookingCode, customerName);
 
-            webSocketNotificationService.sendGlobalNotification(
+            webSocketNotificationService.sendBranchNotification(
+                    booking.getBranch() != null ? booking.getBranch().getId() : null,
                     "Đơn hàng bị hủy",
                     message,
                     "WARNING"
             );
 
             webSocketNotificationService.sendBookingUpdate(
+                    booking.getBranch() != null ? booking.getBranch().getId() : null,
                     bookingId,
                     "CANCELLED",
                     "Đơn hàng đã bị hủy"
@@ -773,22 +787,7 @@ public class BookingServiceImpl implements BookingService {
     }
 
     /**
-     * Tính giá với logic mới theo yêu cầu:
-     * 
-     * 1. TÍNH THEO CHIỀU:
-     *    a. Một chiều: CT = Số_km × PricePerKm + baseFee
-     *    b. Hai chiều:
-     *       - Cùng ngày: CT = Số_km × PricePerKm × 1.5 + baseFee
-     *       - Khác ngày: CT = 2 × (Số_km × PricePerKm + baseFee) = 2 × Số_km × PricePerKm + 2 × baseFee
-     * 
-     * 2. TÍNH THEO NGÀY (DAILY):
-     *    - Nếu 1 ngày VÀ khoảng cách <= INTER_PROVINCE_DISTANCE_KM (100km):
-     *      CT = SameDayFixedPrice + BaseFee (KHÔNG tính km)
-     *    - Ngược lại:
-     *      CT = (Số_km × PricePerKm × 1.5) + (SameDayFixedPrice × Số_ngày) + BaseFee
-     * 
-     * 3. THUÊ NHIỀU NGÀY (MULTI_DAY):
-     *    CT = (Số_km × PricePerKm × 1.5) + (SameDayFixedPrice × Số_ngày) + BaseFee
+     * Tính giá đầy đủ tham số (loại thuê, ngày lễ/cuối tuần, thời gian) - xem PricingService
      */
     public BigDecimal calculatePrice(
             List<Integer> vehicleCategoryIds,
@@ -801,261 +800,8 @@ public class BookingServiceImpl implements BookingService {
             Instant startTime,
             Instant endTime
     ) {
-        if (vehicleCategoryIds == null || vehicleCategoryIds.isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-        
-        // Lấy cấu hình từ SystemSettings
-        BigDecimal holidaySurchargeRate = getSystemSettingDecimal("HOLIDAY_SURCHARGE_RATE", new BigDecimal("0.25"));
-        BigDecimal weekendSurchargeRate = getSystemSettingDecimal("WEEKEND_SURCHARGE_RATE", new BigDecimal("0.20"));
-        BigDecimal roundTripMultiplier = getSystemSettingDecimal("ROUND_TRIP_MULTIPLIER", new BigDecimal("1.5"));
-        int interProvinceDistanceKm = getSystemSettingInt("INTER_PROVINCE_DISTANCE_KM", 100);
-        
-        // Tính số ngày
-        int numberOfDays = calculateNumberOfDays(startTime, endTime);
-        
-        // Kiểm tra chuyến trong ngày
-        boolean isSameDayTrip = isSameDayTrip(startTime, endTime);
-        
-        // Kiểm tra liên tỉnh (dựa trên khoảng cách > ngưỡng cấu hình, mặc định 100km)
-        boolean isInterProvince = distance != null && distance > interProvinceDistanceKm;
-        
-        // Xác định loại thuê
-        String hireTypeCode = null;
-        if (hireTypeId != null) {
-            HireTypes hireType = hireTypesRepository.findById(hireTypeId).orElse(null);
-            if (hireType != null) {
-                hireTypeCode = hireType.getCode();
-                log.debug("[Price] hireTypeId={}, hireTypeCode={}", hireTypeId, hireTypeCode);
-            } else {
-                log.warn("[Price] hireTypeId={} not found in database", hireTypeId);
-            }
-        }
-        
-        // Auto-detect hình thức thuê nếu không có hireType
-        // Nếu numberOfDays >= 1 và chưa có hireType → mặc định là DAILY
-        if (hireTypeCode == null && numberOfDays >= 1) {
-            // Với khoảng cách rất ngắn (< 10km), mặc định là ONE_WAY để tính đúng theo km
-            if (isSameDayTrip && distance != null && distance > 0 && distance < 10) {
-                hireTypeCode = "ONE_WAY";
-                log.debug("[Price] Auto-detected hireType: ONE_WAY (short distance={} km, sameDayTrip)", distance);
-            } else if (isSameDayTrip && distance != null && distance <= interProvinceDistanceKm) {
-                // Khoảng cách trung bình (10-100km) trong ngày → để logic SAME_DAY xử lý
-                log.debug("[Price] Auto-detect: isSameDayTrip=true, distance={}, will use SAME_DAY logic", distance);
-            } else if (numberOfDays > 1) {
-                hireTypeCode = "MULTI_DAY";
-                log.debug("[Price] Auto-detected hireType: MULTI_DAY (days={})", numberOfDays);
-            } else {
-                hireTypeCode = "DAILY";
-                log.debug("[Price] Auto-detected hireType: DAILY (days={})", numberOfDays);
-            }
-        }
-        
-        log.debug("[Price] Final hireTypeCode={}, distance={}, isSameDayTrip={}, isInterProvince={}, numberOfDays={}", 
-                hireTypeCode, distance, isSameDayTrip, isInterProvince, numberOfDays);
-        
-        // Tính hệ số phụ phí ngày lễ/cuối tuần
-        BigDecimal surchargeRate = BigDecimal.ZERO;
-        if (isHoliday != null && isHoliday) {
-            surchargeRate = surchargeRate.add(holidaySurchargeRate);
-        }
-        if (isWeekend != null && isWeekend) {
-            surchargeRate = surchargeRate.add(weekendSurchargeRate);
-        }
-        
-        BigDecimal totalPrice = BigDecimal.ZERO;
-        
-        log.info("🔵 [BACKEND] Starting price calculation for {} categories", vehicleCategoryIds.size());
-        
-        for (int i = 0; i < vehicleCategoryIds.size(); i++) {
-            Integer categoryId = vehicleCategoryIds.get(i);
-            Integer quantity = i < quantities.size() ? quantities.get(i) : 1;
-            
-            VehicleCategoryPricing category = vehicleCategoryRepository.findById(categoryId)
-                    .orElseThrow(() -> new RuntimeException("Không tìm thấy loại xe: " + categoryId));
-            
-            if (category.getStatus() != VehicleCategoryStatus.ACTIVE) {
-                continue;
-            }
-            
-            BigDecimal pricePerKm = category.getPricePerKm() != null ? category.getPricePerKm() : BigDecimal.ZERO;
-            BigDecimal baseFee = category.getBaseFare() != null ? category.getBaseFare() : BigDecimal.ZERO;
-            BigDecimal highwayFee = category.getHighwayFee() != null ? category.getHighwayFee() : BigDecimal.ZERO;
-            BigDecimal sameDayFixedPrice = category.getSameDayFixedPrice() != null ? category.getSameDayFixedPrice() : BigDecimal.ZERO;
-            
-            // 🔍 LOG BACKEND: Category pricing values
-            log.info("🔵 [BACKEND] Category[{}] pricing: pricePerKm={}, baseFee={}, sameDayFixedPrice={}, highwayFee={}, isPremium={}",
-                    category.getCategoryName(), pricePerKm, baseFee, sameDayFixedPrice, highwayFee, category.getIsPremium());
-            
-            BigDecimal basePrice = BigDecimal.ZERO;
-            
-            // Áp dụng công thức tính giá theo hình thức thuê
-            if ("DAILY".equals(hireTypeCode)) {
-                // THUÊ THEO NGÀY:
-                int days = Math.max(1, numberOfDays);
-                
-                // Đặc biệt: Nếu thuê 1 ngày VÀ trong bán kính 100km (<= INTER_PROVINCE_DISTANCE_KM)
-                // thì chỉ tính: sameDayFixedPrice + baseFee (KHÔNG tính km)
-                if (days == 1 && distance != null && distance <= interProvinceDistanceKm) {
-                    basePrice = sameDayFixedPrice.add(baseFee);
-                    log.debug("[Price] DAILY (1 ngày, <= {}km): sameDayFixedPrice={}, baseFee={}, total={} (KHÔNG tính km)", 
-                            interProvinceDistanceKm, sameDayFixedPrice, baseFee, basePrice);
-                } else {
-                    // Công thức thông thường: km × PricePerKm × 1.5 + sameDayFixedPrice × số_ngày + baseFee
-                    BigDecimal kmCost = BigDecimal.ZERO;
-                    if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
-                        kmCost = pricePerKm
-                                .multiply(BigDecimal.valueOf(distance))
-                                .multiply(roundTripMultiplier);
-                    }
-                    
-                    BigDecimal dailyCost = sameDayFixedPrice.multiply(BigDecimal.valueOf(days));
-                    basePrice = kmCost.add(dailyCost).add(baseFee);
-                    log.debug("[Price] DAILY: days={}, km={}, kmCost={}, dailyRate={}, dailyCost={}, baseFee={}, total={}", 
-                            days, distance, kmCost, sameDayFixedPrice, dailyCost, baseFee, basePrice);
-                }
-                
-            } else if ("MULTI_DAY".equals(hireTypeCode) && numberOfDays > 1) {
-                // THUÊ NHIỀU NGÀY (đi xa): km × PricePerKm × 1.5 + sameDayFixedPrice × số_ngày + baseFee
-                BigDecimal kmCost = BigDecimal.ZERO;
-                if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
-                    kmCost = pricePerKm
-                            .multiply(BigDecimal.valueOf(distance))
-                            .multiply(roundTripMultiplier);
-                }
-                BigDecimal dailyCost = sameDayFixedPrice.multiply(BigDecimal.valueOf(numberOfDays));
-                basePrice = kmCost.add(dailyCost).add(baseFee);
-                log.debug("[Price] MULTI_DAY: km={}, days={}, kmCost={}, dailyCost={}, baseFee={}, total={}", 
-                        distance, numberOfDays, kmCost, dailyCost, baseFee, basePrice);
-                
-            } else if ("ONE_WAY".equals(hireTypeCode)) {
-                // MỘT CHIỀU: km × PricePerKm + baseFee
-                // LUÔN tính theo công thức này khi user chọn "Một chiều", bất kể isSameDayTrip
-                BigDecimal kmCost = BigDecimal.ZERO;
-                if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
-                    kmCost = pricePerKm.multiply(BigDecimal.valueOf(distance));
-                }
-                basePrice = kmCost.add(baseFee);
-                log.info("🟡 [BACKEND] ONE_WAY calculation: km={}, pricePerKm={}, kmCost={}, baseFee={}, basePrice={}", 
-                        distance, pricePerKm, kmCost, baseFee, basePrice);
-                
-            } else if ("ROUND_TRIP".equals(hireTypeCode)) {
-                // KHỨ HỒI (Hai chiều):
-                // - Cùng ngày: km × PricePerKm × 1.5 + baseFee
-                // - Khác ngày: 2 × (km × PricePerKm + baseFee) = 2 × km × PricePerKm + 2 × baseFee
-                if (isSameDayTrip) {
-                    // Cùng ngày: tính như cũ
-                    BigDecimal kmCost = BigDecimal.ZERO;
-                    if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
-                        kmCost = pricePerKm.multiply(BigDecimal.valueOf(distance)).multiply(roundTripMultiplier);
-                    }
-                    basePrice = kmCost.add(baseFee);
-                    log.debug("[Price] ROUND_TRIP (cùng ngày): km={}, kmCost={}, multiplier={}, baseFee={}, total={}", 
-                            distance, kmCost, roundTripMultiplier, baseFee, basePrice);
-                } else {
-                    // Khác ngày: tính 2 lần ONE_WAY
-                    BigDecimal oneWayKmCost = BigDecimal.ZERO;
-                    if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
-                        oneWayKmCost = pricePerKm.multiply(BigDecimal.valueOf(distance));
-                    }
-                    BigDecimal oneWayPrice = oneWayKmCost.add(baseFee);
-                    basePrice = oneWayPrice.multiply(BigDecimal.valueOf(2));
-                    log.debug("[Price] ROUND_TRIP (khác ngày): km={}, oneWayKmCost={}, oneWayPrice={}, basePrice (2x)={}", 
-                            distance, oneWayKmCost, oneWayPrice, basePrice);
-                }
-                
-            } else if (isSameDayTrip && sameDayFixedPrice.compareTo(BigDecimal.ZERO) > 0 && hireTypeCode == null) {
-                // CHUYẾN TRONG NGÀY (chỉ áp dụng khi KHÔNG có hireType cụ thể)
-                // Nếu user đã chọn hireType (ONE_WAY/ROUND_TRIP/DAILY), thì không chạy vào đây
-                // CHUYẾN TRONG NGÀY (không có hireType cụ thể)
-                if (isInterProvince) {
-                    // Liên tỉnh 1 ngày: km × PricePerKm × 1.5 + sameDayFixedPrice + baseFee
-                    BigDecimal kmCost = BigDecimal.ZERO;
-                    if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
-                        kmCost = pricePerKm
-                                .multiply(BigDecimal.valueOf(distance))
-                                .multiply(roundTripMultiplier);
-                    }
-                    basePrice = kmCost.add(sameDayFixedPrice).add(baseFee);
-                    log.debug("[Price] INTER_PROVINCE_SAME_DAY: km={}, kmCost={}, sameDayPrice={}, baseFee={}, total={}", 
-                            distance, kmCost, sameDayFixedPrice, baseFee, basePrice);
-                } else {
-                    // Trong tỉnh / nội thành: sameDayFixedPrice + baseFee
-                    basePrice = sameDayFixedPrice.add(baseFee);
-                    log.info("🟠 [BACKEND] SAME_DAY_LOCAL calculation (⚠️ KHÔNG tính km!): distance={}, sameDayFixedPrice={}, baseFee={}, basePrice={}", 
-                            distance, sameDayFixedPrice, baseFee, basePrice);
-                }
-                
-            } else {
-                // MẶC ĐỊNH: Tính theo km × 1.5 + baseFee
-                BigDecimal kmCost = BigDecimal.ZERO;
-                if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
-                    kmCost = pricePerKm.multiply(BigDecimal.valueOf(distance)).multiply(roundTripMultiplier);
-                }
-                basePrice = kmCost.add(baseFee);
-                log.debug("[Price] DEFAULT: km={}, kmCost={}, baseFee={}, total={}", 
-                        distance, kmCost, baseFee, basePrice);
-            }
-            
-            // Phụ phí cao tốc
-            if (useHighway != null && useHighway && highwayFee.compareTo(BigDecimal.ZERO) > 0) {
-                basePrice = basePrice.add(highwayFee);
-            }
-            
-            // Phụ phí xe hạng sang
-            if (category.getIsPremium() != null && category.getIsPremium()) {
-                BigDecimal premiumSurcharge = category.getPremiumSurcharge() != null 
-                        ? category.getPremiumSurcharge() 
-                        : new BigDecimal("1000000");
-                basePrice = basePrice.add(premiumSurcharge);
-            }
-            
-            // Phụ phí ngày lễ/cuối tuần
-            BigDecimal surchargeAmount = BigDecimal.ZERO;
-            if (surchargeRate.compareTo(BigDecimal.ZERO) > 0) {
-                surchargeAmount = basePrice.multiply(surchargeRate);
-                basePrice = basePrice.add(surchargeAmount);
-                log.info("🟣 [BACKEND] Surcharge applied: rate={}, amount={}, basePrice after surcharge={}", 
-                        surchargeRate, surchargeAmount, basePrice);
-            }
-            
-            // Nhân với số lượng xe
-            BigDecimal priceForThisCategory = basePrice.multiply(BigDecimal.valueOf(quantity));
-            log.info("🟢 [BACKEND] Category[{}] final: basePrice={}, quantity={}, priceForThisCategory={}", 
-                    category.getCategoryName(), basePrice, quantity, priceForThisCategory);
-            
-            totalPrice = totalPrice.add(priceForThisCategory);
-        }
-        
-        BigDecimal finalPrice = totalPrice.setScale(2, RoundingMode.HALF_UP);
-        log.info("✅ [BACKEND] FINAL TOTAL PRICE: {} VNĐ", finalPrice);
-        
-        return finalPrice;
-    }
-    
-    /**
-     * Helper method: Tính số ngày giữa startTime và endTime
-     */
-    private int calculateNumberOfDays(Instant startTime, Instant endTime) {
-        if (startTime == null || endTime == null) {
-            return 1;
-        }
-        
-        try {
-            java.time.ZonedDateTime startZoned = startTime.atZone(java.time.ZoneId.systemDefault());
-            java.time.ZonedDateTime endZoned = endTime.atZone(java.time.ZoneId.systemDefault());
-            
-            long daysBetween = java.time.temporal.ChronoUnit.DAYS.between(
-                    startZoned.toLocalDate(), 
-                    endZoned.toLocalDate()
-            );
-            
-            // Tối thiểu 1 ngày
-            return Math.max(1, (int) daysBetween + 1);
-        } catch (Exception e) {
-            log.warn("Error calculating number of days: {}", e.getMessage());
-            return 1;
-        }
+        return pricingService.calculatePrice(vehicleCategoryIds, quantities, distance, useHighway,
+                hireTypeId, isHoliday, isWeekend, startTime, endTime);
     }
     
     /**
@@ -1523,89 +1269,86 @@ public class BookingServiceImpl implements BookingService {
     }
     
     @Override
-    public ConsultantDashboardResponse getConsultantDashboard(Integer consultantEmployeeId, Integer branchId) {
-        // Lấy danh sách bookings theo status
-        List<Bookings> pendingBookings = bookingRepository.findPendingBookings(branchId, consultantEmployeeId);
-        List<Bookings> sentQuotations = bookingRepository.filterBookings(
-                BookingStatus.QUOTATION_SENT, branchId, consultantEmployeeId, null, null, null, Pageable.unpaged()
-        ).getContent();
-        List<Bookings> confirmedBookings = bookingRepository.findConfirmedBookings(branchId, consultantEmployeeId);
-        
-        // Đếm số lượng
-        Long totalPendingCount = bookingRepository.countByStatus(BookingStatus.PENDING, branchId, consultantEmployeeId);
-        Long totalSentCount = bookingRepository.countByStatus(BookingStatus.QUOTATION_SENT, branchId, consultantEmployeeId);
-        Long totalConfirmedCount = bookingRepository.countByStatus(BookingStatus.CONFIRMED, branchId, consultantEmployeeId);
-        
-        // Tính doanh số trong tháng
-        YearMonth currentMonth = YearMonth.now();
-        LocalDate monthStart = currentMonth.atDay(1);
-        LocalDate monthEnd = currentMonth.atEndOfMonth();
-        Instant startInstant = monthStart.atStartOfDay(ZoneId.systemDefault()).toInstant();
-        Instant endInstant = monthEnd.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant();
-        
-        // Doanh số tháng = tổng tiền đã thu (payments CONFIRMED) trong tháng,
-        // bao gồm cả tiền cọc và thanh toán còn lại.
-        BigDecimal monthlyRevenue = invoiceRepository
-                .sumConfirmedPaymentsForConsultantAndBranchAndDateRange(
-                branchId,
-                consultantEmployeeId,
-                startInstant,
-                        endInstant
-                );
-        if (monthlyRevenue == null) {
-            monthlyRevenue = BigDecimal.ZERO;
-        }
+    @Transactional(readOnly = true)
+    public ConsultantDashboardResponse getConsultantDashboard(Integer consultantEmployeeId, Integer branchId, int page, int size) {
+        int pageNo = page > 0 ? page - 1 : 0;
+        int pageSize = Math.max(1, Math.min(size, MAX_DASHBOARD_PAGE_SIZE));
+        Pageable pageable = PageRequest.of(pageNo, pageSize);
+        
+        // Lấy danh sách bookings theo status (có phân trang, tổng số lấy từ các count bên dưới)
+        List<Bookings> pendingBookings = bookingRepository.findDashboardBookings(
+                BookingStatus.PENDING, branchId, consultantEmployeeId, pageable);
+        List<Bookings> sentQuotations = bookingRepository.findDashboardBookings(
+                BookingStatus.QUOTATION_SENT, branchId, consultantEmployeeId, pageable);
+        List<Bookings> confirmedBookings = bookingRepository.findDashboardBookings(
+                BookingStatus.CONFIRMED, branchId, consultantEmployeeId, pageable);
+        
+        // Đếm số lượng theo status trong 1 truy vấn
+        Map<BookingStatus, Long> statusCounts = new EnumMap<>(BookingStatus.class);
+        for (Object[] row : bookingRepository.countGroupByStatus(branchId, consultantEmployeeId)) {
+            statusCounts.put((BookingStatus) row[0], ((Number) row[1]).longValue());
+        }
+        Long totalPendingCount = statusCounts.getOrDefault(BookingStatus.PENDING, 0L);
+        Long totalSentCount = statusCounts.getOrDefault(BookingStatus.QUOTATION_SENT, 0L);
+        Long totalConfirmedCount = statusCounts.getOrDefault(BookingStatus.CONFIRMED, 0L);
         
         // Tính tỷ lệ chuyển đổi
-        Long totalBookings = bookingRepository.countByStatus(null, branchId, consultantEmployeeId);
+        long totalBookings = statusCounts.values().stream().mapToLong(Long::longValue).sum();
         Double conversionRate = totalBookings > 0
                 ? (double) totalConfirmedCount / totalBookings * 100
                 : 0.0;
         
-        // Thống kê theo tháng (3 tháng gần nhất)
-        List<ConsultantDashboardResponse.MonthlyStatistic> monthlyStatistics = new ArrayList<>();
-        for (int i = 2; i >= 0; i--) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate mStart = month.atDay(1);
-            LocalDate mEnd = month.atEndOfMonth();
-            Instant mStartInstant = mStart.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            Instant mEndInstant = mEnd.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant();
-            
-            Page<Bookings> monthBookings = bookingRepository.filterBookings(
-                    null, branchId, consultantEmployeeId, mStartInstant, mEndInstant, null, Pageable.unpaged()
-            );
-            
-            Long monthTotal = (long) monthBookings.getContent().size();
-            Long monthConfirmed = monthBookings.getContent().stream()
-                    .filter(b -> b.getStatus() == BookingStatus.CONFIRMED || b.getStatus() == BookingStatus.COMPLETED)
-                    .count();
-            
-            BigDecimal monthRevenue = invoiceRepository
-                    .sumConfirmedPaymentsForConsultantAndBranchAndDateRange(
-                            branchId,
-                            consultantEmployeeId,
-                            mStartInstant,
-                            mEndInstant
-                    );
-            if (monthRevenue == null) {
-                monthRevenue = BigDecimal.ZERO;
+        // Thống kê theo tháng (3 tháng gần nhất): 1 truy vấn chuyến và 1 truy vấn payment cho cả khoảng,
+        // chia tháng ở đây theo cùng múi giờ với khoảng thời gian (DB có thể chạy ở múi giờ khác)
+        ZoneId zone = ZoneId.systemDefault();
+        YearMonth currentMonth = YearMonth.now(zone);
+        YearMonth firstMonth = currentMonth.minusMonths(2);
+        Instant rangeStart = firstMonth.atDay(1).atStartOfDay(zone).toInstant();
+        Instant rangeEnd = currentMonth.atEndOfMonth().atTime(23, 59, 59).atZone(zone).toInstant();
+        
+        // Booking có chuyến ở nhiều tháng được đếm ở mỗi tháng đó (1 lần mỗi tháng)
+        Map<YearMonth, Set<Integer>> monthBookings = new HashMap<>();
+        Map<YearMonth, Set<Integer>> monthConfirmedBookings = new HashMap<>();
+        for (Object[] row : bookingRepository.findTripStartsInRange(branchId, consultantEmployeeId, rangeStart, rangeEnd)) {
+            Integer bookingId = (Integer) row[0];
+            BookingStatus status = (BookingStatus) row[1];
+            YearMonth month = YearMonth.from(((Instant) row[2]).atZone(zone));
+            monthBookings.computeIfAbsent(month, m -> new java.util.HashSet<>()).add(bookingId);
+            if (status == BookingStatus.CONFIRMED || status == BookingStatus.COMPLETED) {
+                monthConfirmedBookings.computeIfAbsent(month, m -> new java.util.HashSet<>()).add(bookingId);
             }
-            
+        }
+        
+        // Doanh số = tổng tiền đã thu (payments CONFIRMED), bao gồm cả tiền cọc và thanh toán còn lại
+        Map<YearMonth, BigDecimal> monthRevenues = new HashMap<>();
+        for (Object[] row : invoiceRepository.findConfirmedPaymentsForConsultantAndBranch(
+                branchId, consultantEmployeeId, rangeStart, rangeEnd)) {
+            YearMonth month = YearMonth.from(((Instant) row[0]).atZone(zone));
+            monthRevenues.merge(month, toBigDecimal(row[1]), BigDecimal::add);
+        }
+        BigDecimal monthlyRevenue = monthRevenues.getOrDefault(currentMonth, BigDecimal.ZERO);
+        
+        List<ConsultantDashboardResponse.MonthlyStatistic> monthlyStatistics = new ArrayList<>();
+        for (YearMonth month = firstMonth; !month.isAfter(currentMonth); month = month.plusMonths(1)) {
+            Long monthTotal = (long) monthBookings.getOrDefault(month, Set.of()).size();
+            Long monthConfirmed = (long) monthConfirmedBookings.getOrDefault(month, Set.of()).size();
             Double monthConversionRate = monthTotal > 0 ? (double) monthConfirmed / monthTotal * 100 : 0.0;
             
             monthlyStatistics.add(ConsultantDashboardResponse.MonthlyStatistic.builder()
                     .month(month.toString())
                     .totalBookings(monthTotal)
                     .confirmedBookings(monthConfirmed)
-                    .revenue(monthRevenue)
+                    .revenue(monthRevenues.getOrDefault(month, BigDecimal.ZERO))
                     .conversionRate(monthConversionRate)
                     .build());
         }
         
         return ConsultantDashboardResponse.builder()
-                .pendingBookings(pendingBookings.stream().map(this::toListResponse).collect(Collectors.toList()))
-                .sentQuotations(sentQuotations.stream().map(this::toListResponse).collect(Collectors.toList()))
-                .confirmedBookings(confirmedBookings.stream().map(this::toListResponse).collect(Collectors.toList()))
+                .pendingBookings(toListResponses(pendingBookings))
+                .sentQuotations(toListResponses(sentQuotations))
+                .confirmedBookings(toListResponses(confirmedBookings))
+                .page(pageNo + 1)
+                .pageSize(pageSize)
                 .totalPendingCount(totalPendingCount)
                 .totalSentCount(totalSentCount)
                 .totalConfirmedCount(totalConfirmedCount)
@@ -1625,9 +1368,7 @@ public class BookingServiceImpl implements BookingService {
                 statusEnum, branchId, consultantId, null, null, null, Pageable.unpaged()
         );
         
-        return bookings.getContent().stream()
-                .map(this::toListResponse)
-                .collect(Collectors.toList());
+        return toListResponses(bookings.getContent());
     }
     
     // Helper methods
@@ -1694,8 +1435,12 @@ public class BookingServiceImpl implements BookingService {
         return getById(bookingId);
     }
 
+    /**
+     * READ_COMMITTED: sau khi khóa tài xế/xe, kiểm tra trùng giờ phải thấy phân công
+     * mà giao dịch giữ khóa trước vừa commit (xem ResourceReservationService)
+     */
     @Override
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public BookingResponse assign(Integer bookingId, AssignRequest request) {
         Bookings booking = bookingRepository.findById(bookingId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng: " + bookingId));
@@ -1767,6 +1512,22 @@ public class BookingServiceImpl implements BookingService {
                         targetTripIds.size()
                 ));
             }
+
+            // 3. Giữ chỗ tài xế: khóa dòng tài xế rồi kiểm tra trùng giờ với chuyến của đơn khác
+            for (Integer tid : targetTripIds) {
+                Trips targetTrip = trips.stream().filter(t -> t.getId().equals(tid)).findFirst().orElseThrow();
+                if (!resourceReservationService.tryReserveDriver(driver.getId(),
+                        targetTrip.getStartTime(), targetTrip.getEndTime(), targetTripIds)) {
+                    throw new RuntimeException(String.format(
+                            "Tài xế %s đã được gán cho chuyến khác trùng thời gian với chuyến #%d. " +
+                            "Vui lòng chọn tài xế khác hoặc kiểm tra lại lịch trình.",
+                            driver.getEmployee() != null && driver.getEmployee().getUser() != null
+                                    ? driver.getEmployee().getUser().getFullName()
+                                    : "ID " + driver.getId(),
+                            tid
+                    ));
+                }
+            }
             
             for (Integer tid : targetTripIds) {
                 // QUAN TRỌNG: Chỉ xóa TripDrivers của driver đang được assign, không xóa tất cả
@@ -1911,12 +1672,54 @@ public class BookingServiceImpl implements BookingService {
                         "Xe được chọn không đúng loại với đơn hàng. Cần %s nhưng đang chọn %s.",
                         requiredName, pickedName));
             }
-            
-            // VALIDATION: Kiểm tra xe có bận không tại thời điểm của trip đầu tiên
+
+            // Xe ứng viên cho các chuyến còn lại (từ chuyến thứ 2), theo loại xe cần của từng chuyến
+            Integer branchId = booking.getBranch() != null ? booking.getBranch().getId() : null;
+            Map<Integer, Integer> requiredCategoryByTrip = new HashMap<>();
+            Map<Integer, List<Vehicles>> candidatesByCategory = new HashMap<>();
+            for (int tripIdx = 1; tripIdx < targetTripIds.size(); tripIdx++) {
+                Integer currentTripId = targetTripIds.get(tripIdx);
+
+                // Tìm index của trip này trong sortedTripsForValidation để map đúng categoryId
+                int sortedTripIndex = -1;
+                for (int i = 0; i < sortedTripsForValidation.size(); i++) {
+                    if (sortedTripsForValidation.get(i).getId().equals(currentTripId)) {
+                        sortedTripIndex = i;
+                        break;
+                    }
+                }
+                Integer requiredCategoryId = (sortedTripIndex >= 0 && sortedTripIndex < requiredCategoryIds.size())
+                        ? requiredCategoryIds.get(sortedTripIndex)
+                        : (requiredCategoryIds.isEmpty() ? null : requiredCategoryIds.get(0));
+                requiredCategoryByTrip.put(currentTripId, requiredCategoryId);
+
+                // Các xe cùng loại (nếu có yêu cầu), cùng branch, available, trừ xe chính
+                candidatesByCategory.computeIfAbsent(requiredCategoryId, categoryId -> vehicleRepository.filterVehicles(
+                                categoryId,
+                                branchId,
+                                VehicleStatus.AVAILABLE
+                        ).stream()
+                        .filter(v -> !v.getId().equals(primaryVehicle.getId()))
+                        .sorted(Comparator.comparing(Vehicles::getId))
+                        .collect(Collectors.toList()));
+            }
+
+            // Khóa xe chính và mọi xe ứng viên trong 1 lần theo id tăng dần (tài xế đã khóa ở trên),
+            // các lần giữ chỗ từng xe bên dưới chỉ khóa lại dòng đã giữ nên không khóa chéo với giao dịch khác
+            Set<Integer> lockedVehicleIds = new TreeSet<>();
+            lockedVehicleIds.add(primaryVehicle.getId());
+            candidatesByCategory.values().forEach(vs -> vs.forEach(v -> lockedVehicleIds.add(v.getId())));
+            resourceReservationService.lockVehicles(lockedVehicleIds);
+            
+            // VALIDATION: Kiểm tra xe có bận không tại thời điểm của trip nhận xe chính (trip đầu tiên được gán)
             // Nếu booking đã được tạo thành công → có nghĩa là đã có xe available
             // Nhưng khi gán, phải đảm bảo xe đó vẫn available tại thời điểm đó
-            if (!trips.isEmpty()) {
-                Trips firstTrip = trips.get(0);
+            // → khóa dòng xe rồi kiểm tra trên dữ liệu đã commit, để 2 điều phối viên không cùng giữ 1 xe
+            Trips firstTrip = trips.stream()
+                    .filter(t -> t.getId().equals(targetTripIds.get(0)))
+                    .findFirst()
+                    .orElse(trips.isEmpty() ? null : trips.get(0));
+            if (firstTrip != null) {
                 if (firstTrip.getStartTime() != null) {
                     final String hireTypeCode = booking.getHireType() != null ? booking.getHireType().getCode() : null;
                     Instant tripBusyUntilTmp = tripOccupancyService.computeBusyUntil(
@@ -1932,25 +1735,12 @@ public class BookingServiceImpl implements BookingService {
                             : firstTrip.getStartTime().plusSeconds(3600);
                     
                     // Kiểm tra overlap với các trips khác (ngoài các trips đang được gán) - dùng busy-until theo vận tốc trung bình
-                    List<TripVehicles> vehicleTrips = tripVehicleRepository.findAllByVehicleId(primaryVehicle.getId());
-                    boolean hasConflict = vehicleTrips.stream().anyMatch(tv -> {
-                        Trips overlapTrip = tv.getTrip();
-                        if (overlapTrip == null || overlapTrip.getBooking() == null) return false;
-                        if (overlapTrip.getStatus() == TripStatus.CANCELLED || overlapTrip.getStatus() == TripStatus.COMPLETED) return false;
-                        if (targetTripIds.contains(overlapTrip.getId())) return false;
-                        if (overlapTrip.getStartTime() == null) return true; // unknown -> treat as busy
-                        
-                        Instant overlapBusyUntil = tripOccupancyService.computeBusyUntil(
-                                overlapTrip.getBooking().getHireType() != null ? overlapTrip.getBooking().getHireType().getCode() : null,
-                                overlapTrip.getStartTime(),
-                                overlapTrip.getEndTime(),
-                                overlapTrip.getDistance() != null ? overlapTrip.getDistance().doubleValue() : null,
-                                overlapTrip.getStartLocation(),
-                                overlapTrip.getEndLocation()
-                        );
-                        if (overlapBusyUntil == null) return true;
-                        return overlapTrip.getStartTime().isBefore(tripBusyUntil) && firstTrip.getStartTime().isBefore(overlapBusyUntil);
-                    });
+                    boolean hasConflict = !resourceReservationService.tryReserveVehicle(
+                            primaryVehicle.getId(),
+                            firstTrip.getStartTime(),
+                            tripBusyUntil,
+                            targetTripIds
+                    );
                     
                     if (hasConflict) {
                         throw new RuntimeException(String.format(
@@ -1979,43 +1769,16 @@ public class BookingServiceImpl implements BookingService {
             
             // Tìm thêm xe cho các trips còn lại (nếu có nhiều trips)
             if (targetTripIds.size() > 1) {
-                Integer branchId = booking.getBranch() != null ? booking.getBranch().getId() : null;
-                
-                // Sắp xếp trips theo startTime và ID để map đúng với requiredCategoryIds
-                List<Trips> sortedTrips = new ArrayList<>(trips);
-                sortedTrips.sort(Comparator.comparing((Trips t) -> t.getStartTime() != null ? t.getStartTime() : Instant.EPOCH)
-                        .thenComparing(Trips::getId));
-                
-                // Tìm xe cho từng trip còn lại (từ trip thứ 2 trở đi)
+                // Tìm xe cho từng trip còn lại (từ trip thứ 2 trở đi) trong các xe ứng viên đã khóa
                 for (int tripIdx = 1; tripIdx < targetTripIds.size(); tripIdx++) {
                     Integer currentTripId = targetTripIds.get(tripIdx);
-                    
-                    // Tìm index của trip này trong sortedTrips để map đúng categoryId
-                    int sortedTripIndex = -1;
-                    for (int i = 0; i < sortedTrips.size(); i++) {
-                        if (sortedTrips.get(i).getId().equals(currentTripId)) {
-                            sortedTripIndex = i;
-                            break;
-                        }
-                    }
-                    
-                    // Lấy categoryId cần cho trip này (nếu có)
-                    Integer requiredCategoryId = (sortedTripIndex >= 0 && sortedTripIndex < requiredCategoryIds.size())
-                            ? requiredCategoryIds.get(sortedTripIndex)
-                            : (requiredCategoryIds.isEmpty() ? null : requiredCategoryIds.get(0));
-                    
-                    // Tìm các xe cùng loại (nếu có yêu cầu), cùng branch, available
-                    List<Vehicles> availableVehicles = vehicleRepository.filterVehicles(
-                            requiredCategoryId, 
-                            branchId, 
-                            org.example.ptcmssbackend.enums.VehicleStatus.AVAILABLE
-                    );
+                    Integer requiredCategoryId = requiredCategoryByTrip.get(currentTripId);
                     
                     // Loại bỏ các xe đã được gán
                     Set<Integer> alreadyAssignedIds = assignedVehicles.stream()
                             .map(Vehicles::getId)
                             .collect(java.util.stream.Collectors.toSet());
-                    availableVehicles = availableVehicles.stream()
+                    List<Vehicles> availableVehicles = candidatesByCategory.get(requiredCategoryId).stream()
                             .filter(v -> !alreadyAssignedIds.contains(v.getId()))
                             .collect(java.util.stream.Collectors.toList());
                     
@@ -2041,26 +1804,21 @@ public class BookingServiceImpl implements BookingService {
                                 : currentTrip.getStartTime().plusSeconds(3600);
                         
                         for (Vehicles v : availableVehicles) {
-                            // Kiểm tra overlap (busy-until) với các trips khác
-                            List<TripVehicles> vehicleTrips = tripVehicleRepository.findAllByVehicleId(v.getId());
-                            boolean hasConflict = vehicleTrips.stream().anyMatch(tv -> {
-                                Trips overlapTrip = tv.getTrip();
-                                if (overlapTrip == null || overlapTrip.getBooking() == null) return false;
-                                if (overlapTrip.getStatus() == TripStatus.CANCELLED || overlapTrip.getStatus() == TripStatus.COMPLETED) return false;
-                                if (targetTripIds.contains(overlapTrip.getId())) return false;
-                                if (overlapTrip.getStartTime() == null) return true;
-                                
-                                Instant overlapBusyUntil = tripOccupancyService.computeBusyUntil(
-                                        overlapTrip.getBooking().getHireType() != null ? overlapTrip.getBooking().getHireType().getCode() : null,
-                                        overlapTrip.getStartTime(),
-                                        overlapTrip.getEndTime(),
-                                        overlapTrip.getDistance() != null ? overlapTrip.getDistance().doubleValue() : null,
-                                        overlapTrip.getStartLocation(),
-                                        overlapTrip.getEndLocation()
-                                );
-                                if (overlapBusyUntil == null) return true;
-                                return overlapTrip.getStartTime().isBefore(tripBusyUntil) && currentTrip.getStartTime().isBefore(overlapBusyUntil);
-                            });
+                            // Kiểm tra overlap (busy-until) với các trips khác: lọc nhanh qua chỉ mục,
+                            // chỉ khóa và kiểm tra lại trên DB với xe có vẻ rảnh
+                            boolean hasConflict = resourceTimelineService.isVehicleBusy(
+                                    v.getBranch() != null ? v.getBranch().getId() : null,
+                                    v.getId(),
+                                    currentTrip.getStartTime(),
+                                    tripBusyUntil,
+                                    targetTripIds,
+                                    null
+                            ) || !resourceReservationService.tryReserveVehicle(
+                                    v.getId(),
+                                    currentTrip.getStartTime(),
+                                    tripBusyUntil,
+                                    targetTripIds
+                            );
                             
                             if (!hasConflict) {
                                 selectedVehicle = v;
@@ -2172,6 +1930,7 @@ public class BookingServiceImpl implements BookingService {
                 tripRepository.save(trip);
             }
         }
+        targetTripIds.forEach(resourceTimelineService::onTripChanged);
         
         // Update booking status based on trip assignment status
         List<Trips> allTrips = tripRepository.findByBooking_Id(bookingId);
@@ -2302,7 +2061,7 @@ public class BookingServiceImpl implements BookingService {
         int total = candidates != null ? candidates.size() : 0;
 
         // Busy vehicles in window (đã gán TripVehicles)
-        java.util.List<Integer> busyIds = tripVehicleRepository.findBusyVehicleIds(branchId, categoryId, start, end);
+        java.util.List<Integer> busyIds = resourceTimelineService.findBusyVehicleIds(branchId, categoryId, start, end);
         int busy = busyIds != null ? busyIds.size() : 0;
 
         // Reserved quantity by bookings đã cọc nhưng CHƯA gán xe
@@ -2351,6 +2110,7 @@ public class BookingServiceImpl implements BookingService {
         }
 
         return org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityResponse.builder()
+                .categoryId(categoryId)
                 .ok(ok)
                 .availableCount(available)
                 .needed(needed)
@@ -2362,44 +2122,98 @@ public class BookingServiceImpl implements BookingService {
                 .build();
     }
     
+    @Override
+    public CheckAvailabilityBatchResponse checkAvailabilityBatch(CheckAvailabilityBatchRequest request) {
+        Integer branchId = request.getBranchId();
+        Instant start = request.getStartTime();
+        Instant end = request.getEndTime();
+
+        // Cộng dồn số lượng theo loại xe (1 báo giá có thể có nhiều dòng cùng loại)
+        Map<Integer, Integer> demand = new LinkedHashMap<>();
+        for (VehicleDetailRequest line : request.getVehicles()) {
+            int qty = line.getQuantity() != null ? line.getQuantity() : 1;
+            demand.merge(line.getVehicleCategoryId(), qty, Integer::sum);
+        }
+
+        CategoryAvailability availability = loadCategoryAvailability(branchId, start, end);
+        List<VehicleCategoryPricing> activeCategories = null;
+
+        List<CheckAvailabilityResponse> items = new ArrayList<>();
+        boolean allOk = true;
+        for (Map.Entry<Integer, Integer> entry : demand.entrySet()) {
+            Integer categoryId = entry.getKey();
+            int needed = entry.getValue();
+            int available = availability.available(categoryId);
+            boolean ok = available >= needed;
+
+            List<CheckAvailabilityResponse.AlternativeCategory> alternatives = null;
+            if (!ok) {
+                allOk = false;
+                if (activeCategories == null) {
+                    activeCategories = findActiveCategories();
+                }
+                // Loại xe thay thế phải còn đủ xe sau khi trừ phần báo giá này đã dùng
+                alternatives = buildAlternativeCategories(activeCategories, categoryId, availability, demand, needed);
+            }
+
+            items.add(CheckAvailabilityResponse.builder()
+                    .categoryId(categoryId)
+                    .ok(ok)
+                    .availableCount(available)
+                    .needed(needed)
+                    .totalCandidates(availability.total(categoryId))
+                    .busyCount(availability.busy(categoryId) + availability.reserved(categoryId))
+                    .alternativeCategories(alternatives)
+                    .build());
+        }
+
+        return CheckAvailabilityBatchResponse.builder()
+                .ok(allOk)
+                .items(items)
+                .build();
+    }
+
     /**
      * Tìm các loại xe thay thế có sẵn tại thời điểm yêu cầu
      */
     private List<org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityResponse.AlternativeCategory> findAlternativeCategories(
             Integer branchId, Integer excludeCategoryId, Instant start, Instant end, int needed) {
         
-        List<org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityResponse.AlternativeCategory> alternatives = new ArrayList<>();
-        
         // Lấy tất cả loại xe active
-        List<VehicleCategoryPricing> allCategories = vehicleCategoryRepository.findAll().stream()
+        List<VehicleCategoryPricing> allCategories = findActiveCategories();
+        if (allCategories.isEmpty()) {
+            return null;
+        }
+        
+        // Đếm xe available/busy/reserved của mọi loại xe bằng truy vấn gộp (không lặp 3 truy vấn cho từng loại)
+        CategoryAvailability availability = loadCategoryAvailability(branchId, start, end);
+        return buildAlternativeCategories(allCategories, excludeCategoryId, availability, java.util.Collections.emptyMap(), needed);
+    }
+
+    private List<VehicleCategoryPricing> findActiveCategories() {
+        return vehicleCategoryRepository.findAll().stream()
                 .filter(c -> c.getStatus() == VehicleCategoryStatus.ACTIVE)
-                .filter(c -> !c.getId().equals(excludeCategoryId))
                 .collect(Collectors.toList());
+    }
+
+    /**
+     * @param alreadyRequested số xe mỗi loại đã được dùng trong cùng báo giá (không tính vào phần thay thế)
+     */
+    private List<CheckAvailabilityResponse.AlternativeCategory> buildAlternativeCategories(
+            List<VehicleCategoryPricing> categories, Integer excludeCategoryId, CategoryAvailability availability,
+            Map<Integer, Integer> alreadyRequested, int needed) {
         
-        for (VehicleCategoryPricing category : allCategories) {
-            // Đếm xe available cho loại này
-            List<Vehicles> catVehicles = vehicleRepository.filterVehicles(category.getId(), branchId, VehicleStatus.AVAILABLE);
-            int totalInCategory = catVehicles != null ? catVehicles.size() : 0;
+        List<CheckAvailabilityResponse.AlternativeCategory> alternatives = new ArrayList<>();
+        for (VehicleCategoryPricing category : categories) {
+            if (category.getId().equals(excludeCategoryId)) continue;
             
-            // Đếm xe busy trong khoảng thời gian (đã gán TripVehicles)
-            List<Integer> busyInCategory = tripVehicleRepository.findBusyVehicleIds(branchId, category.getId(), start, end);
-            int busyCount = busyInCategory != null ? busyInCategory.size() : 0;
-            
-            // Đếm xe reserved (đã đặt cọc nhưng chưa gán xe)
-            Integer reservedInCategory = bookingVehicleDetailsRepository.countReservedQuantityByDepositWithoutAssignedVehicles(
-                    branchId,
-                    category.getId(),
-                    start,
-                    end
-            );
-            int reservedCount = reservedInCategory != null ? reservedInCategory : 0;
-            
-            // Tính số xe thực sự available (trừ busy và reserved)
-            int availableInCategory = Math.max(0, totalInCategory - busyCount - reservedCount);
+            // Số xe thực sự available (trừ busy, reserved và phần đã dùng trong báo giá)
+            int availableInCategory = Math.max(0,
+                    availability.available(category.getId()) - alreadyRequested.getOrDefault(category.getId(), 0));
             
             // Chỉ suggest nếu có đủ xe thực sự available VÀ availableCount > 0
             if (availableInCategory >= needed && availableInCategory > 0) {
-                alternatives.add(org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityResponse.AlternativeCategory.builder()
+                alternatives.add(CheckAvailabilityResponse.AlternativeCategory.builder()
                         .categoryId(category.getId())
                         .categoryName(category.getCategoryName())
                         .seats(category.getSeats())
@@ -2419,6 +2233,58 @@ public class BookingServiceImpl implements BookingService {
         
         return alternatives.isEmpty() ? null : alternatives;
     }
+
+    /**
+     * Số xe tổng (AVAILABLE) / bận / giữ chỗ bằng cọc của mọi loại xe trong chi nhánh và khoảng thời gian
+     */
+    private CategoryAvailability loadCategoryAvailability(Integer branchId, Instant start, Instant end) {
+        Map<Integer, Integer> total = toCountMap(vehicleRepository.countByCategory(branchId, VehicleStatus.AVAILABLE));
+        Map<Integer, Integer> busy = resourceTimelineService.countBusyVehiclesByCategory(branchId, start, end);
+        Map<Integer, Integer> reserved = branchId != null
+                ? toCountMap(bookingVehicleDetailsRepository.sumReservedQuantityByDepositGroupByCategory(branchId, start, end))
+                : java.util.Collections.emptyMap();
+        return new CategoryAvailability(total, busy, reserved);
+    }
+
+    private Map<Integer, Integer> toCountMap(List<Object[]> rows) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if (rows != null) {
+            for (Object[] row : rows) {
+                if (row[0] != null && row[1] != null) {
+                    counts.put((Integer) row[0], ((Number) row[1]).intValue());
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static final class CategoryAvailability {
+        private final Map<Integer, Integer> total;
+        private final Map<Integer, Integer> busy;
+        private final Map<Integer, Integer> reserved;
+
+        private CategoryAvailability(Map<Integer, Integer> total, Map<Integer, Integer> busy, Map<Integer, Integer> reserved) {
+            this.total = total;
+            this.busy = busy;
+            this.reserved = reserved;
+        }
+
+        private int total(Integer categoryId) {
+            return total.getOrDefault(categoryId, 0);
+        }
+
+        private int busy(Integer categoryId) {
+            return busy.getOrDefault(categoryId, 0);
+        }
+
+        private int reserved(Integer categoryId) {
+            return reserved.getOrDefault(categoryId, 0);
+        }
+
+        private int available(Integer categoryId) {
+            return Math.max(0, total(categoryId) - busy(categoryId) - reserved(categoryId));
+        }
+    }
     
     /**
      * Tìm thời gian rảnh tiếp theo của loại xe được yêu cầu
@@ -2432,73 +2298,12 @@ public class BookingServiceImpl implements BookingService {
         
         List<org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityResponse.NextAvailableSlot> slots = new ArrayList<>();
         
-        // Tìm thời gian rảnh tiếp theo cho mỗi xe
+        // Tìm thời gian rảnh tiếp theo cho mỗi xe (tra cứu trên chỉ mục lịch bận, không đọc lại lịch sử chuyến)
         for (Vehicles vehicle : candidates) {
-            // Lấy tất cả trips của xe này
-            List<TripVehicles> allTrips = tripVehicleRepository.findAllByVehicleId(vehicle.getId());
-            
-            // Lọc các trip active (SCHEDULED, ASSIGNED, ONGOING) và có thời gian hợp lệ
-            List<Trips> activeTrips = new ArrayList<>();
-            for (TripVehicles tv : allTrips) {
-                Trips trip = tv.getTrip();
-                if (trip == null || trip.getStatus() == null) continue;
-                
-                // Chỉ xét SCHEDULED, ASSIGNED hoặc ONGOING
-                if (trip.getStatus() != TripStatus.SCHEDULED && 
-                    trip.getStatus() != TripStatus.ASSIGNED &&
-                    trip.getStatus() != TripStatus.ONGOING) {
-                    continue;
-                }
-                
-                Instant tripStart = trip.getStartTime();
-                Instant tripEnd = trip.getEndTime();
-                
-                if (tripStart != null && tripEnd != null && tripEnd.isAfter(tripStart)) {
-                    activeTrips.add(trip);
-                }
-            }
-            
-            // Sắp xếp trips theo startTime
-            activeTrips.sort((a, b) -> {
-                if (a.getStartTime() == null) return 1;
-                if (b.getStartTime() == null) return -1;
-                return a.getStartTime().compareTo(b.getStartTime());
-            });
-            
-            // Kiểm tra xem xe có bị block tại thời điểm requestedStart không
-            boolean isBlockedAtRequestedTime = false;
-            Instant earliestAvailable = null;
-            Instant availableUntil = null;
-            
-            for (Trips trip : activeTrips) {
-                Instant tripStart = trip.getStartTime();
-                Instant tripEnd = trip.getEndTime();
-                
-                // Kiểm tra xem trip này có block thời gian yêu cầu không
-                if (tripStart.isBefore(requestedStart) && tripEnd.isAfter(requestedStart)) {
-                    isBlockedAtRequestedTime = true;
-                    // Xe sẽ rảnh sau khi trip này kết thúc
-                    if (earliestAvailable == null || tripEnd.isAfter(earliestAvailable)) {
-                        earliestAvailable = tripEnd;
-                    }
-                }
-            }
-            
-            // Nếu xe không bị block tại thời điểm yêu cầu → xe rảnh ngay từ requestedStart
-            if (!isBlockedAtRequestedTime) {
-                earliestAvailable = requestedStart;
-            }
-            
-            // Tìm trip tiếp theo sau earliestAvailable để biết availableUntil
-            if (earliestAvailable != null) {
-                for (Trips trip : activeTrips) {
-                    Instant tripStart = trip.getStartTime();
-                    if (tripStart != null && tripStart.isAfter(earliestAvailable)) {
-                        availableUntil = tripStart;
-                        break; // Lấy trip đầu tiên sau earliestAvailable
-                    }
-                }
-            }
+            ResourceTimelineService.FreeSlot freeSlot = resourceTimelineService.findNextFreeSlot(
+                    branchId, vehicle.getId(), requestedStart);
+            Instant earliestAvailable = freeSlot.getAvailableFrom();
+            Instant availableUntil = freeSlot.getAvailableUntil();
             
             // Nếu tìm được thời gian rảnh (và không phải ngay tại thời điểm yêu cầu)
             if (earliestAvailable != null && earliestAvailable.isAfter(requestedStart)) {
@@ -2686,10 +2491,57 @@ public class BookingServiceImpl implements BookingService {
                 .build();
     }
     
-    private BookingListResponse toListResponse(Bookings booking) {
-        // Tạo route summary từ trips
-        List<Trips> trips = tripRepository.findByBooking_Id(booking.getId());
+    /**
+     * Map danh sách booking (1 trang) sang BookingListResponse. Trips, trạng thái gán chuyến, tiền đã thu
+     * và số xe được nạp cho cả trang bằng vài truy vấn IN thay vì 4-5 truy vấn cho mỗi booking.
+     */
+    private List<BookingListResponse> toListResponses(List<Bookings> bookings) {
+        if (bookings.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Integer> bookingIds = bookings.stream().map(Bookings::getId).collect(Collectors.toList());
         
+        Map<Integer, List<Trips>> tripsByBooking = tripRepository.findByBooking_IdIn(bookingIds).stream()
+                .collect(Collectors.groupingBy(t -> t.getBooking().getId()));
+        List<Integer> tripIds = tripsByBooking.values().stream()
+                .flatMap(List::stream)
+                .map(Trips::getId)
+                .collect(Collectors.toList());
+        Set<Integer> tripsWithDriver = tripIds.isEmpty()
+                ? Set.of() : new java.util.HashSet<>(tripDriverRepository.findAssignedTripIds(tripIds));
+        Set<Integer> tripsWithVehicle = tripIds.isEmpty()
+                ? Set.of() : new java.util.HashSet<>(tripVehicleRepository.findAssignedTripIds(tripIds));
+        
+        // Tính paidAmount từ payment_history đã CONFIRMED
+        Map<Integer, BigDecimal> paidAmounts = new HashMap<>();
+        for (Object[] row : invoiceRepository.sumConfirmedPaidAmountByBookingIds(bookingIds)) {
+            paidAmounts.put((Integer) row[0], toBigDecimal(row[1]));
+        }
+        
+        // Tổng số xe trong booking từ BookingVehicleDetails (quantity)
+        Map<Integer, Integer> vehicleCounts = new HashMap<>();
+        for (Object[] row : bookingVehicleDetailsRepository.sumQuantityByBookingIds(bookingIds)) {
+            if (row[1] != null && ((Number) row[1]).intValue() > 0) {
+                vehicleCounts.put((Integer) row[0], ((Number) row[1]).intValue());
+            }
+        }
+        
+        List<BookingListResponse> responses = new ArrayList<>(bookings.size());
+        for (Bookings booking : bookings) {
+            List<Trips> trips = tripsByBooking.getOrDefault(booking.getId(), List.of());
+            // Business view cho điều phối: chỉ cần đã gán chuyến nào cho đơn (có đủ driver + vehicle)
+            // là coi là "Đã gắn chuyến".
+            boolean isAssigned = trips.stream()
+                    .anyMatch(t -> tripsWithDriver.contains(t.getId()) && tripsWithVehicle.contains(t.getId()));
+            responses.add(toListResponse(booking, trips, isAssigned,
+                    paidAmounts.getOrDefault(booking.getId(), BigDecimal.ZERO), vehicleCounts.get(booking.getId())));
+        }
+        return responses;
+    }
+    
+    private BookingListResponse toListResponse(Bookings booking, List<Trips> trips, boolean isAssigned,
+                                               BigDecimal paidAmount, Integer vehicleCount) {
+        // Tạo route summary từ trips
         String routeSummary = trips.isEmpty() ? "Chưa có lịch trình" : 
                 trips.stream()
                         .map(t -> (t.getStartLocation() != null ? t.getStartLocation() : "?") + 
@@ -2703,36 +2555,6 @@ public class BookingServiceImpl implements BookingService {
                 .min(Instant::compareTo)
                 .orElse(null);
         
-        // Tính paidAmount từ payment_history đã CONFIRMED
-        BigDecimal paidAmount = invoiceRepository.calculateConfirmedPaidAmountByBookingId(booking.getId());
-        if (paidAmount == null) paidAmount = BigDecimal.ZERO;
-        
-        // Check if booking has *any* trip assigned (at least one trip có đủ driver + vehicle)
-        // Business view cho điều phối: chỉ cần đã gán chuyến nào cho đơn là coi là "Đã gắn chuyến".
-        boolean isAssigned = !trips.isEmpty() && trips.stream().anyMatch(trip -> {
-            List<TripDrivers> drivers = tripDriverRepository.findByTripId(trip.getId());
-            List<TripVehicles> vehicles = tripVehicleRepository.findByTripId(trip.getId());
-            return !drivers.isEmpty() && !vehicles.isEmpty();
-        });
-        
-        // Tính tổng số xe trong booking từ BookingVehicleDetails (quantity)
-        Integer vehicleCount = null;
-        try {
-            List<BookingVehicleDetails> vehicleDetails = bookingVehicleDetailsRepository.findByBookingId(booking.getId());
-            if (vehicleDetails != null && !vehicleDetails.isEmpty()) {
-                int total = vehicleDetails.stream()
-                        .map(BookingVehicleDetails::getQuantity)
-                        .filter(java.util.Objects::nonNull)
-                        .mapToInt(Integer::intValue)
-                        .sum();
-                if (total > 0) {
-                    vehicleCount = total;
-                }
-            }
-        } catch (Exception e) {
-            log.warn("[BookingService] Cannot calculate vehicleCount for booking {}: {}", booking.getId(), e.getMessage());
-        }
-        
         return BookingListResponse.builder()
                 .id(booking.getId())
                 .customerName(booking.getCustomer().getFullName())
@@ -2753,5 +2575,11 @@ public class BookingServiceImpl implements BookingService {
                 .branchName(booking.getBranch() != null ? booking.getBranch().getBranchName() : null)
                 .build();
     }
+    
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
 }
-
@@ -2,6 +2,7 @@ package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.config.CacheConfig;
 import org.example.ptcmssbackend.dto.request.Branch.CreateBranchRequest;
 import org.example.ptcmssbackend.dto.request.Branch.UpdateBranchRequest;
 import org.example.ptcmssbackend.dto.response.Branch.BranchResponse;
@@ -24,6 +25,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -52,6 +55,7 @@ public class BranchServiceImpl implements BranchService {
     private final TripVehicleRepository tripVehicleRepository;
 
     @Override
+    @CacheEvict(value = CacheConfig.BRANCHES, allEntries = true)
     public BranchResponse createBranch(CreateBranchRequest request) {
         String branchName = request.getBranchName().trim();
         
@@ -100,6 +104,7 @@ public class BranchServiceImpl implements BranchService {
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.BRANCHES, allEntries = true)
     public Integer updateBranch(Integer id, UpdateBranchRequest request) {
         Branches branch = branchesRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy chi nhánh"));
@@ -197,6 +202,7 @@ public class BranchServiceImpl implements BranchService {
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.BRANCHES, allEntries = true)
     public Integer deleteBranch(Integer id) {
         Branches branch = branchesRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy chi nhánh"));
@@ -515,6 +521,7 @@ public class BranchServiceImpl implements BranchService {
     }
     
     @Override
+    @Cacheable(value = CacheConfig.BRANCHES, key = "'selection'")
     public List<BranchResponse> getAllBranchesForSelection() {
         log.info("Getting all branches for selection");
         
@@ -0,0 +1,45 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
+import org.example.ptcmssbackend.service.DistanceProvider;
+import org.example.ptcmssbackend.service.RoutingCacheService;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bước 1: tuyến đã có trong cache (bộ nhớ / DB), không gọi API
+ */
+@Component
+@Order(1)
+@RequiredArgsConstructor
+public class CachedDistanceProvider implements DistanceProvider {
+
+    private final RoutingCacheService routingCacheService;
+
+    @Override
+    public DistanceResult resolve(String from, String to) {
+        Map<String, PlaceSuggestion> places = routingCacheService.findPlaces(List.of(from, to));
+        PlaceSuggestion fromPlace = places.get(from);
+        PlaceSuggestion toPlace = places.get(to);
+        if (fromPlace == null || toPlace == null) {
+            return null;
+        }
+        String key = routingCacheService.routeKey(fromPlace, toPlace);
+        DistanceResult route = routingCacheService.findRoutes(List.of(key)).get(key);
+        if (route == null) {
+            return null;
+        }
+        return DistanceResult.builder()
+                .distanceKm(route.getDistanceKm())
+                .durationMinutes(route.getDurationMinutes())
+                .from(fromPlace.getFullAddress())
+                .to(toPlace.getFullAddress())
+                .source("CACHE")
+                .build();
+    }
+}
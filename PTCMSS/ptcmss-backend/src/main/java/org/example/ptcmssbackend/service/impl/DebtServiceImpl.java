@@ -14,20 +14,29 @@ import org.example.ptcmssbackend.enums.InvoiceType;
 import org.example.ptcmssbackend.enums.PaymentStatus;
 import org.example.ptcmssbackend.repository.DebtReminderHistoryRepository;
 import org.example.ptcmssbackend.repository.InvoiceRepository;
-import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
 import org.example.ptcmssbackend.service.DebtService;
-import org.example.ptcmssbackend.service.InvoiceService;
+import org.example.ptcmssbackend.service.InvoiceLedgerService;
 import org.springframework.data.domain.Page;
 import org.example.ptcmssbackend.exception.ResourceNotFoundException;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -35,10 +44,13 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class DebtServiceImpl implements DebtService {
 
+    private static final int EXPORT_BATCH_SIZE = 1_000;
+    private static final Set<String> SORTABLE_FIELDS =
+            Set.of("dueDate", "amount", "invoiceDate", "invoiceNumber", "promiseToPayDate", "id");
+
     private final InvoiceRepository invoiceRepository;
     private final DebtReminderHistoryRepository debtReminderHistoryRepository;
-    private final PaymentHistoryRepository paymentHistoryRepository;
-    private final InvoiceService invoiceService;
+    private final InvoiceLedgerService invoiceLedgerService;
     private final org.example.ptcmssbackend.service.EmailService emailService;
 
     @Override
@@ -46,43 +58,26 @@ public class DebtServiceImpl implements DebtService {
             Integer branchId, Boolean overdueOnly, Pageable pageable) {
         log.info("[DebtService] Getting debts - branch: {}, overdueOnly: {}", branchId, overdueOnly);
 
-        List<Invoices> invoices;
-        if (Boolean.TRUE.equals(overdueOnly)) {
-            invoices = invoiceRepository.findOverdueInvoices(branchId);
-        } else {
-            invoices = invoiceRepository.findUnpaidInvoices(branchId);
-        }
-
-        // Filter by branch if provided
-        if (branchId != null) {
-            invoices = invoices.stream()
-                    .filter(inv -> inv.getBranch().getId().equals(branchId))
-                    .collect(Collectors.toList());
+        // Lọc chi nhánh, sắp xếp (OVERDUE trước) và phân trang đều trong DB
+        Page<Invoices> page = invoiceRepository.findDebts(
+                branchId, Boolean.TRUE.equals(overdueOnly), sanitizeSort(pageable));
+        if (page.isEmpty()) {
+            return page.map(invoice -> mapToDebtSummary(invoice, BigDecimal.ZERO, null));
         }
 
-        // Sort: OVERDUE first, then by due date ascending
-        invoices.sort((a, b) -> {
-            boolean aOverdue = a.getPaymentStatus() == PaymentStatus.OVERDUE;
-            boolean bOverdue = b.getPaymentStatus() == PaymentStatus.OVERDUE;
-            if (aOverdue != bOverdue) {
-                return aOverdue ? -1 : 1;
-            }
-            if (a.getDueDate() != null && b.getDueDate() != null) {
-                return a.getDueDate().compareTo(b.getDueDate());
-            }
-            return 0;
-        });
-
-        // Manual pagination
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), invoices.size());
-        List<Invoices> pagedInvoices = invoices.subList(start, end);
-
-        List<DebtSummaryResponse> responses = pagedInvoices.stream()
-                .map(this::mapToDebtSummary)
+        // Đã thu và lần nhắc nợ gần nhất của cả trang: mỗi loại 1 truy vấn
+        List<Integer> invoiceIds = page.getContent().stream()
+                .map(Invoices::getId)
                 .collect(Collectors.toList());
+        Map<Integer, BigDecimal> paidByInvoice = invoiceLedgerService.getConfirmedPaid(invoiceIds);
+        Map<Integer, Instant> lastReminderByInvoice = new HashMap<>();
+        for (Object[] row : debtReminderHistoryRepository.findLatestReminderDates(invoiceIds)) {
+            lastReminderByInvoice.put((Integer) row[0], (Instant) row[1]);
+        }
 
-        return new PageImpl<>(responses, pageable, invoices.size());
+        return page.map(invoice -> mapToDebtSummary(invoice,
+                paidByInvoice.getOrDefault(invoice.getId(), BigDecimal.ZERO),
+                lastReminderByInvoice.get(invoice.getId())));
     }
 
     @Override
@@ -90,29 +85,15 @@ public class DebtServiceImpl implements DebtService {
         log.info("[DebtService] Getting aging buckets - branch: {}, asOfDate: {}", branchId, asOfDate);
 
         LocalDate date = asOfDate != null ? asOfDate : LocalDate.now();
-        List<Invoices> unpaidInvoices = invoiceRepository.findUnpaidInvoices(branchId);
-
-        BigDecimal bucket0_30 = BigDecimal.ZERO;
-        BigDecimal bucket31_60 = BigDecimal.ZERO;
-        BigDecimal bucket61_90 = BigDecimal.ZERO;
-        BigDecimal bucketOver90 = BigDecimal.ZERO;
-
-        for (Invoices invoice : unpaidInvoices) {
-            if (invoice.getDueDate() == null) continue;
-
-            long daysOverdue = java.time.temporal.ChronoUnit.DAYS.between(invoice.getDueDate(), date);
-            BigDecimal balance = invoiceService.calculateBalance(invoice.getId());
-
-            if (daysOverdue <= 30) {
-                bucket0_30 = bucket0_30.add(balance);
-            } else if (daysOverdue <= 60) {
-                bucket31_60 = bucket31_60.add(balance);
-            } else if (daysOverdue <= 90) {
-                bucket61_90 = bucket61_90.add(balance);
-            } else {
-                bucketOver90 = bucketOver90.add(balance);
-            }
-        }
+        // Số ngày quá hạn <= 30 tương đương dueDate >= date - 30 (tương tự cho 60, 90)
+        List<Object[]> rows = invoiceRepository.sumAgingBuckets(
+                branchId, date.minusDays(30), date.minusDays(60), date.minusDays(90));
+        Object[] row = rows.isEmpty() ? new Object[4] : rows.get(0);
+
+        BigDecimal bucket0_30 = toBigDecimal(row[0]);
+        BigDecimal bucket31_60 = toBigDecimal(row[1]);
+        BigDecimal bucket61_90 = toBigDecimal(row[2]);
+        BigDecimal bucketOver90 = toBigDecimal(row[3]);
 
         AgingBucketResponse response = new AgingBucketResponse();
         response.setBucket0_30(bucket0_30);
@@ -124,6 +105,38 @@ public class DebtServiceImpl implements DebtService {
         return response;
     }
 
+    @Override
+    public void exportDebtsCsv(Integer branchId, Boolean overdueOnly, OutputStream out) throws IOException {
+        log.info("[DebtService] Exporting debts CSV - branch: {}, overdueOnly: {}", branchId, overdueOnly);
+
+        boolean overdue = Boolean.TRUE.equals(overdueOnly);
+        LocalDate today = LocalDate.now();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        // BOM UTF-8 để Excel nhận đúng tiếng Việt
+        writer.write('\uFEFF');
+        writer.write("Số hóa đơn,Khách hàng,Số điện thoại,Tổng tiền,Đã thu,Còn nợ,Hạn thanh toán,"
+                + "Số ngày quá hạn,Trạng thái,Hẹn thanh toán,Nhãn\n");
+
+        // Đọc theo keyset từng lô projection (không giữ entity) và đẩy ra client sau mỗi lô,
+        // nên bộ nhớ chỉ giữ tối đa EXPORT_BATCH_SIZE dòng dù sổ công nợ lớn đến đâu
+        int afterId = 0;
+        int exported = 0;
+        while (true) {
+            List<Object[]> rows = invoiceRepository.findDebtExportRowsAfter(
+                    branchId, overdue, afterId, PageRequest.of(0, EXPORT_BATCH_SIZE));
+            for (Object[] row : rows) {
+                writer.write(toCsvLine(row, today));
+            }
+            writer.flush();
+            exported += rows.size();
+            if (rows.size() < EXPORT_BATCH_SIZE) {
+                break;
+            }
+            afterId = (Integer) rows.get(rows.size() - 1)[0];
+        }
+        log.info("[DebtService] Exported {} debts to CSV", exported);
+    }
+
     @Override
     @Transactional
     public void sendDebtReminder(Integer invoiceId, SendDebtReminderRequest request) {
@@ -168,7 +181,7 @@ public class DebtServiceImpl implements DebtService {
                         emailService.sendDebtReminderEmail(
                                 customerEmail, customerName, invoiceNumber, amount, dueDate, daysOverdue, message
                         );
-                        log.info("[DebtService] Debt reminder email sent to {}", customerEmail);
+                        log.info("[DebtService] Debt reminder email queued for {}", customerEmail);
                     } else {
                         log.warn("[DebtService] Customer email not found for invoice {}", invoiceId);
                     }
@@ -244,7 +257,17 @@ public class DebtServiceImpl implements DebtService {
     }
 
     // Helper methods
-    private DebtSummaryResponse mapToDebtSummary(Invoices invoice) {
+    private Pageable sanitizeSort(Pageable pageable) {
+        List<Sort.Order> orders = pageable.getSort().stream()
+                .filter(order -> SORTABLE_FIELDS.contains(order.getProperty()))
+                .collect(Collectors.toList());
+        Sort sort = orders.isEmpty() ? Sort.by(Sort.Direction.ASC, "dueDate") : Sort.by(orders);
+        // Luôn thêm id để thứ tự ổn định giữa các trang
+        sort = sort.and(Sort.by(Sort.Direction.ASC, "id"));
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort);
+    }
+
+    private DebtSummaryResponse mapToDebtSummary(Invoices invoice, BigDecimal paidAmount, Instant lastReminderDate) {
         DebtSummaryResponse response = new DebtSummaryResponse();
         response.setInvoiceId(invoice.getId());
         response.setInvoiceNumber(invoice.getInvoiceNumber());
@@ -255,9 +278,8 @@ public class DebtServiceImpl implements DebtService {
         response.setBookingId(invoice.getBooking() != null ? invoice.getBooking().getId() : null);
         response.setTotalAmount(invoice.getAmount());
 
-        BigDecimal paidAmount = paymentHistoryRepository.sumConfirmedByInvoiceId(invoice.getId());
-        response.setPaidAmount(paidAmount != null ? paidAmount : BigDecimal.ZERO);
-        response.setBalance(invoiceService.calculateBalance(invoice.getId()));
+        response.setPaidAmount(paidAmount);
+        response.setBalance(invoice.getAmount().subtract(paidAmount));
 
         response.setDueDate(invoice.getDueDate());
         if (invoice.getDueDate() != null && invoice.getPaymentStatus() != PaymentStatus.PAID) {
@@ -272,14 +294,50 @@ public class DebtServiceImpl implements DebtService {
         response.setPromiseToPayDate(invoice.getPromiseToPayDate());
         response.setDebtLabel(invoice.getDebtLabel());
         response.setContactNote(invoice.getContactNote());
-
-        // Get last reminder date
-        debtReminderHistoryRepository.findLatestByInvoiceId(invoice.getId())
-                .ifPresent(reminder -> response.setLastReminderDate(reminder.getReminderDate()));
+        response.setLastReminderDate(lastReminderDate);
 
         return response;
     }
 
+    /**
+     * Cột theo findDebtExportRowsAfter: invoiceId, invoiceNumber, tên KH, SĐT, amount, đã thu,
+     * dueDate, paymentStatus, promiseToPayDate, debtLabel
+     */
+    private String toCsvLine(Object[] row, LocalDate today) {
+        BigDecimal amount = toBigDecimal(row[4]);
+        BigDecimal paid = toBigDecimal(row[5]);
+        LocalDate dueDate = (LocalDate) row[6];
+        long daysOverdue = dueDate != null && dueDate.isBefore(today)
+                ? java.time.temporal.ChronoUnit.DAYS.between(dueDate, today)
+                : 0;
+        return escapeCSV((String) row[1]) + "," +
+                escapeCSV((String) row[2]) + "," +
+                escapeCSV((String) row[3]) + "," +
+                amount.toPlainString() + "," +
+                paid.toPlainString() + "," +
+                amount.subtract(paid).toPlainString() + "," +
+                (dueDate != null ? dueDate : "") + "," +
+                daysOverdue + "," +
+                row[7] + "," +
+                (row[8] != null ? row[8] : "") + "," +
+                escapeCSV((String) row[9]) + "\n";
+    }
+
+    // Bọc trong dấu nháy nếu chứa dấu phẩy, dấu nháy hoặc xuống dòng
+    private String escapeCSV(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private BigDecimal toBigDecimal(Object value) {
+        if (value == null) return BigDecimal.ZERO;
+        if (value instanceof BigDecimal) return (BigDecimal) value;
+        return new BigDecimal(value.toString());
+    }
+
     private DebtReminderHistoryResponse mapToReminderHistoryResponse(DebtReminderHistory reminder) {
         DebtReminderHistoryResponse response = new DebtReminderHistoryResponse();
         response.setReminderId(reminder.getId());
@@ -14,6 +14,7 @@ import org.example.ptcmssbackend.repository.BookingRepository;
 import org.example.ptcmssbackend.repository.InvoiceRepository;
 import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
 import org.example.ptcmssbackend.service.DepositService;
+import org.example.ptcmssbackend.service.InvoiceLedgerService;
 import org.example.ptcmssbackend.service.InvoiceService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -33,6 +34,7 @@ public class DepositServiceImpl implements DepositService {
     private final InvoiceRepository invoiceRepository;
     private final BookingRepository bookingRepository;
     private final PaymentHistoryRepository paymentHistoryRepository;
+    private final InvoiceLedgerService invoiceLedgerService;
     private final org.example.ptcmssbackend.repository.EmployeeRepository employeeRepository;
 
     @Override
@@ -107,6 +109,7 @@ public class DepositServiceImpl implements DepositService {
         }
 
         paymentHistoryRepository.save(paymentHistory);
+        invoiceLedgerService.applyPayment(paymentHistory, null, paymentHistory.getConfirmationStatus());
         log.info("[DepositService] Created payment_history PENDING for invoice: {}, amount: {}, isDeposit: {}", 
                 targetInvoice.getInvoiceNumber(), request.getAmount(), request.getIsDeposit());
 
@@ -130,8 +133,7 @@ public class DepositServiceImpl implements DepositService {
                 .filter(inv -> Boolean.TRUE.equals(inv.getIsDeposit()))
                 .filter(inv -> inv.getType() == InvoiceType.INCOME)
                 .filter(inv -> inv.getPaymentStatus() == PaymentStatus.PAID)
-                .map(inv -> paymentHistoryRepository.sumConfirmedByInvoiceId(inv.getId()))
-                .filter(amount -> amount != null)
+                .map(inv -> invoiceLedgerService.getConfirmedPaid(inv.getId()))
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
     }
 
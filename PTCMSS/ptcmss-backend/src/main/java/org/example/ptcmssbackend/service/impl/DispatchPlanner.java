@@ -0,0 +1,438 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lập kế hoạch điều phối cả ngày: gán tài xế + xe cho nhiều chuyến cùng lúc, tính hoàn toàn trong bộ nhớ.
+ *
+ * Đầu vào là các chuyến kèm danh sách tài xế/xe đã qua kiểm tra riêng từng cặp (nghỉ phép, bằng lái,
+ * loại xe, sức chứa, lịch bận đã có, đã gán cho chuyến khác cùng booking). Planner chỉ xử lý ràng buộc
+ * giữa các chuyến trong chính kế hoạch:
+ * - 1 tài xế không nhận 2 chuyến trùng [start, end), 1 xe không nhận 2 chuyến trùng [start, busyUntil)
+ * - các chuyến của cùng 1 booking dùng tài xế/xe khác nhau
+ *
+ * Chi phí tài xế là điểm công bằng như khi gợi ý từng chuyến (thấp = ưu tiên), mỗi chuyến đã xếp cho tài xế
+ * trong kế hoạch cộng thêm PLANNED_TRIP_WEIGHT; chi phí xe là số ghế dư so với yêu cầu.
+ *
+ * Cách giải: tham lam (chuyến ít lựa chọn tài xế nhất trước) rồi tìm kiếm cục bộ tới khi không còn cải thiện
+ * hoặc hết thời gian:
+ * - sửa: chuyến chưa xếp được lấy chỗ của đúng 1 chuyến chắn đường nếu chuyến đó chuyển được sang tài xế/xe khác
+ * - dời: chuyển 1 chuyến sang tài xế/xe có chi phí thấp hơn
+ * Đổi chéo 2 chuyến giữa 2 tài xế không đổi số chuyến của ai nên không làm giảm chi phí, không cần xét.
+ */
+public final class DispatchPlanner {
+
+    /**
+     * Mỗi chuyến thêm trong ngày làm điểm công bằng tăng: hôm nay 40 + tuần này 30 + 3 ngày gần đây 30
+     */
+    public static final int PLANNED_TRIP_WEIGHT = 100;
+
+    public static final String REASON_NO_DRIVER = "Không còn tài xế phù hợp";
+    public static final String REASON_NO_VEHICLE = "Không còn xe phù hợp";
+
+    // Chuyến thiếu giờ kết thúc: coi như chạy 1 giờ
+    private static final long DEFAULT_DURATION_MILLIS = 3_600_000L;
+
+    private final long deadline;
+    private boolean timedOut;
+    private int passes;
+
+    private DispatchPlanner(Duration budget) {
+        this.deadline = System.nanoTime() + budget.toNanos();
+    }
+
+    /**
+     * Một chuyến cần xếp, kèm tài xế/xe đủ điều kiện
+     */
+    @Getter
+    @Builder
+    public static class TripSlot {
+        private final Integer tripId;
+        private final Integer bookingId;
+        private final Instant start;
+        private final Instant end;         // tài xế bận [start, end)
+        private final Instant busyUntil;   // xe bận [start, busyUntil)
+        private final Integer requiredSeats;
+        private final List<Integer> driverIds;
+        private final List<Integer> vehicleIds;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class DriverSlot {
+        private final Integer driverId;
+        private final int baseScore;   // điểm công bằng hiện tại (DriverWorkload)
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class VehicleSlot {
+        private final Integer vehicleId;
+        private final Integer capacity;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Assignment {
+        private final Integer tripId;
+        private final Integer driverId;
+        private final Integer vehicleId;
+        private final int driverScore;
+        private final int vehicleScore;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Plan {
+        private final List<Assignment> assignments;
+        private final Map<Integer, String> unassigned;   // tripId -> lý do
+        private final long totalCost;
+        private final int passes;                       // số vòng tìm kiếm cục bộ đã chạy
+        private final boolean timedOut;                 // dừng vì hết thời gian, chưa hội tụ
+    }
+
+    /**
+     * Lập kế hoạch. Bước tham lam luôn chạy hết; tìm kiếm cục bộ dừng khi hết budget.
+     */
+    public static Plan plan(List<TripSlot> trips, List<DriverSlot> drivers, List<VehicleSlot> vehicles, Duration budget) {
+        return new DispatchPlanner(budget).solve(trips, drivers, vehicles);
+    }
+
+    private Plan solve(List<TripSlot> trips, List<DriverSlot> drivers, List<VehicleSlot> vehicles) {
+        int n = trips.size();
+        long[] start = new long[n];
+        long[] end = new long[n];
+        long[] busyUntil = new long[n];
+        int[] booking = new int[n];
+        int[] requiredSeats = new int[n];
+
+        Map<Integer, Integer> driverIndex = new HashMap<>();
+        int[] baseScore = new int[drivers.size()];
+        for (int r = 0; r < drivers.size(); r++) {
+            driverIndex.put(drivers.get(r).getDriverId(), r);
+            baseScore[r] = drivers.get(r).getBaseScore();
+        }
+        Map<Integer, Integer> vehicleIndex = new HashMap<>();
+        int[] capacity = new int[vehicles.size()];
+        for (int r = 0; r < vehicles.size(); r++) {
+            vehicleIndex.put(vehicles.get(r).getVehicleId(), r);
+            capacity[r] = vehicles.get(r).getCapacity() != null ? vehicles.get(r).getCapacity() : -1;
+        }
+
+        int[][] driverCandidates = new int[n][];
+        int[][] vehicleCandidates = new int[n][];
+        for (int t = 0; t < n; t++) {
+            TripSlot slot = trips.get(t);
+            start[t] = slot.getStart().toEpochMilli();
+            long endMillis = slot.getEnd() != null ? slot.getEnd().toEpochMilli()
+                    : slot.getBusyUntil() != null ? slot.getBusyUntil().toEpochMilli()
+                    : start[t] + DEFAULT_DURATION_MILLIS;
+            end[t] = endMillis;
+            busyUntil[t] = slot.getBusyUntil() != null ? slot.getBusyUntil().toEpochMilli() : endMillis;
+            // Chuyến không có booking: không ràng buộc cùng booking (mã âm riêng cho từng chuyến)
+            booking[t] = slot.getBookingId() != null ? slot.getBookingId() : -(t + 1);
+            requiredSeats[t] = slot.getRequiredSeats() != null ? slot.getRequiredSeats() : -1;
+            driverCandidates[t] = toIndices(slot.getDriverIds(), driverIndex);
+            vehicleCandidates[t] = toIndices(slot.getVehicleIds(), vehicleIndex);
+        }
+
+        DriverPool driverPool = new DriverPool(driverCandidates, start, end, booking, baseScore);
+        VehiclePool vehiclePool = new VehiclePool(vehicleCandidates, start, busyUntil, booking, capacity, requiredSeats);
+
+        // Chuyến ít lựa chọn tài xế nhất xếp trước, cùng số lựa chọn thì theo giờ khởi hành
+        int[] byConstraint = order(n, Comparator
+                .<Integer>comparingInt(t -> driverCandidates[t].length)
+                .thenComparingLong(t -> start[t])
+                .thenComparingInt(t -> trips.get(t).getTripId()));
+        int[] byStart = order(n, Comparator
+                .<Integer>comparingLong(t -> start[t])
+                .thenComparingInt(t -> trips.get(t).getTripId()));
+
+        // Chuyến không có xe nào phù hợp thì không giữ tài xế cho nó
+        boolean[] driverActive = new boolean[n];
+        for (int t = 0; t < n; t++) {
+            driverActive[t] = driverCandidates[t].length > 0 && vehicleCandidates[t].length > 0;
+        }
+
+        // 1) Tài xế: tham lam rồi tìm kiếm cục bộ
+        for (int t : byConstraint) {
+            if (!driverActive[t]) continue;
+            int r = driverPool.best(t, -1);
+            if (r >= 0) driverPool.assign(t, r);
+        }
+        improve(driverPool, byConstraint, driverActive, true);
+
+        // 2) Xe cho các chuyến đã có tài xế, theo giờ khởi hành
+        boolean[] vehicleActive = new boolean[n];
+        for (int t : byStart) {
+            if (driverPool.assigned[t] < 0) continue;
+            vehicleActive[t] = true;
+            int r = vehiclePool.best(t, -1);
+            if (r >= 0) vehiclePool.assign(t, r);
+        }
+        improve(vehiclePool, byStart, vehicleActive, true);
+
+        // 3) Chuyến có tài xế mà không còn xe: trả tài xế rồi dời lại các chuyến còn lại cho cân bằng
+        boolean released = false;
+        for (int t = 0; t < n; t++) {
+            if (driverPool.assigned[t] >= 0 && vehiclePool.assigned[t] < 0) {
+                driverPool.release(t);
+                driverActive[t] = false;
+                released = true;
+            }
+        }
+        if (released) {
+            improve(driverPool, byConstraint, driverActive, false);
+        }
+
+        List<Assignment> assignments = new ArrayList<>();
+        Map<Integer, String> unassigned = new LinkedHashMap<>();
+        for (int t : byStart) {
+            Integer tripId = trips.get(t).getTripId();
+            int d = driverPool.assigned[t];
+            int v = vehiclePool.assigned[t];
+            if (d >= 0 && v >= 0) {
+                assignments.add(new Assignment(tripId, drivers.get(d).getDriverId(), vehicles.get(v).getVehicleId(),
+                        baseScore[d], (int) vehiclePool.cost(t, v)));
+            } else if (driverCandidates[t].length > 0 && (vehicleCandidates[t].length == 0 || vehicleActive[t])) {
+                // Không có xe phù hợp, hoặc đã có tài xế nhưng hết xe nên phải trả tài xế
+                unassigned.put(tripId, REASON_NO_VEHICLE);
+            } else {
+                unassigned.put(tripId, REASON_NO_DRIVER);
+            }
+        }
+        return new Plan(assignments, unassigned, driverPool.totalCost() + vehiclePool.totalCost(), passes, timedOut);
+    }
+
+    /**
+     * Tìm kiếm cục bộ trên 1 loại tài nguyên tới khi 1 vòng không còn thay đổi hoặc hết thời gian.
+     * Mỗi thay đổi hoặc tăng số chuyến được xếp (sửa) hoặc giảm chi phí (dời) nên vòng lặp luôn dừng.
+     */
+    private void improve(Pool pool, int[] order, boolean[] active, boolean allowRepair) {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            passes++;
+            for (int t : order) {
+                if (System.nanoTime() > deadline) {
+                    timedOut = true;
+                    return;
+                }
+                if (!active[t]) continue;
+                if (pool.assigned[t] >= 0) {
+                    improved |= pool.relocate(t);
+                } else if (allowRepair) {
+                    int r = pool.best(t, -1);
+                    if (r >= 0) {
+                        pool.assign(t, r);
+                        improved = true;
+                    } else {
+                        improved |= pool.repair(t);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[] toIndices(List<Integer> ids, Map<Integer, Integer> index) {
+        if (ids == null || ids.isEmpty()) return new int[0];
+        return ids.stream()
+                .map(index::get)
+                .filter(i -> i != null)
+                .mapToInt(Integer::intValue)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    private static int[] order(int n, Comparator<Integer> comparator) {
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) boxed[i] = i;
+        Arrays.sort(boxed, comparator);
+        return Arrays.stream(boxed).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Tập tài nguyên (tài xế hoặc xe) và các chuyến đang xếp cho từng tài nguyên
+     */
+    private abstract static class Pool {
+        final int[][] candidates;
+        final long[] start;
+        final long[] until;
+        final int[] booking;
+        final int[] assigned;
+        final List<List<Integer>> tripsOf;
+
+        Pool(int[][] candidates, long[] start, long[] until, int[] booking, int resources) {
+            this.candidates = candidates;
+            this.start = start;
+            this.until = until;
+            this.booking = booking;
+            this.assigned = new int[candidates.length];
+            Arrays.fill(assigned, -1);
+            this.tripsOf = new ArrayList<>(resources);
+            for (int r = 0; r < resources; r++) tripsOf.add(new ArrayList<>());
+        }
+
+        /**
+         * Chi phí của chuyến t trên tài nguyên r (tải của r không tính chính t)
+         */
+        abstract long cost(int t, int r);
+
+        abstract long totalCost();
+
+        int load(int r, int t) {
+            return tripsOf.get(r).size() - (assigned[t] == r ? 1 : 0);
+        }
+
+        boolean conflicts(int t, int u) {
+            return booking[t] == booking[u] || (start[u] < until[t] && start[t] < until[u]);
+        }
+
+        boolean fits(int t, int r) {
+            for (int u : tripsOf.get(r)) {
+                if (u != t && conflicts(t, u)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Chuyến duy nhất của r chắn t; -1 nếu có từ 2 chuyến chắn trở lên
+         */
+        int singleConflict(int t, int r) {
+            int found = -1;
+            for (int u : tripsOf.get(r)) {
+                if (u == t || !conflicts(t, u)) continue;
+                if (found >= 0) return -1;
+                found = u;
+            }
+            return found;
+        }
+
+        /**
+         * Tài nguyên nhận được t với chi phí thấp nhất (bỏ qua exclude và tài nguyên t đang giữ), -1 nếu không có
+         */
+        int best(int t, int exclude) {
+            int bestR = -1;
+            long bestCost = Long.MAX_VALUE;
+            for (int r : candidates[t]) {
+                if (r == exclude || r == assigned[t] || !fits(t, r)) continue;
+                long c = cost(t, r);
+                if (c < bestCost) {
+                    bestCost = c;
+                    bestR = r;
+                }
+            }
+            return bestR;
+        }
+
+        void assign(int t, int r) {
+            assigned[t] = r;
+            tripsOf.get(r).add(t);
+        }
+
+        void release(int t) {
+            int r = assigned[t];
+            if (r < 0) return;
+            tripsOf.get(r).remove(Integer.valueOf(t));
+            assigned[t] = -1;
+        }
+
+        boolean relocate(int t) {
+            int from = assigned[t];
+            int to = best(t, -1);
+            if (to < 0 || cost(t, to) >= cost(t, from)) return false;
+            release(t);
+            assign(t, to);
+            return true;
+        }
+
+        boolean repair(int t) {
+            int bestR = -1;
+            int bestBlocker = -1;
+            int bestTarget = -1;
+            long bestCost = Long.MAX_VALUE;
+            for (int r : candidates[t]) {
+                int blocker = singleConflict(t, r);
+                if (blocker < 0) continue;
+                int target = best(blocker, r);
+                if (target < 0) continue;
+                long c = cost(blocker, target) + cost(t, r);
+                if (c < bestCost) {
+                    bestCost = c;
+                    bestR = r;
+                    bestBlocker = blocker;
+                    bestTarget = target;
+                }
+            }
+            if (bestR < 0) return false;
+            release(bestBlocker);
+            assign(bestBlocker, bestTarget);
+            assign(t, bestR);
+            return true;
+        }
+    }
+
+    private static final class DriverPool extends Pool {
+        private final int[] baseScore;
+
+        DriverPool(int[][] candidates, long[] start, long[] end, int[] booking, int[] baseScore) {
+            super(candidates, start, end, booking, baseScore.length);
+            this.baseScore = baseScore;
+        }
+
+        @Override
+        long cost(int t, int r) {
+            return baseScore[r] + (long) PLANNED_TRIP_WEIGHT * load(r, t);
+        }
+
+        @Override
+        long totalCost() {
+            long total = 0;
+            for (int r = 0; r < tripsOf.size(); r++) {
+                long trips = tripsOf.get(r).size();
+                total += trips * baseScore[r] + PLANNED_TRIP_WEIGHT * trips * (trips - 1) / 2;
+            }
+            return total;
+        }
+    }
+
+    private static final class VehiclePool extends Pool {
+        private final int[] capacity;
+        private final int[] requiredSeats;
+
+        VehiclePool(int[][] candidates, long[] start, long[] busyUntil, int[] booking, int[] capacity, int[] requiredSeats) {
+            super(candidates, start, busyUntil, booking, capacity.length);
+            this.capacity = capacity;
+            this.requiredSeats = requiredSeats;
+        }
+
+        @Override
+        long cost(int t, int r) {
+            // Số ghế dư, thiếu thông tin thì 0 (giống điểm xe khi gợi ý từng chuyến)
+            if (capacity[r] < 0 || requiredSeats[t] <= 0 || capacity[r] < requiredSeats[t]) return 0;
+            return capacity[r] - requiredSeats[t];
+        }
+
+        @Override
+        long totalCost() {
+            long total = 0;
+            for (int t = 0; t < assigned.length; t++) {
+                if (assigned[t] >= 0) total += cost(t, assigned[t]);
+            }
+            return total;
+        }
+    }
+}
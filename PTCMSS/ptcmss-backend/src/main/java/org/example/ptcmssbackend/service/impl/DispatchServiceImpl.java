@@ -4,9 +4,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ptcmssbackend.dto.request.Trip.TripSearchRequest;
 import org.example.ptcmssbackend.dto.request.dispatch.AssignRequest;
+import org.example.ptcmssbackend.dto.request.dispatch.AutoDispatchRequest;
 import org.example.ptcmssbackend.dto.response.Trip.TripDetailResponse;
 import org.example.ptcmssbackend.dto.response.Trip.TripListItemResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignRespone;
+import org.example.ptcmssbackend.dto.response.dispatch.AutoDispatchResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.DispatchDashboardResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.PendingTripResponse;
 import org.example.ptcmssbackend.entity.*;
@@ -19,21 +21,38 @@ import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.BookingService;
 import org.example.ptcmssbackend.service.DispatchService;
 import org.example.ptcmssbackend.service.SystemSettingService;
+import org.example.ptcmssbackend.service.ResourceReservationService;
+import org.example.ptcmssbackend.service.ResourceTimelineService;
 import org.example.ptcmssbackend.service.TripOccupancyService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -59,6 +78,13 @@ public class DispatchServiceImpl implements DispatchService {
                     BookingStatus.COMPLETED
             );
 
+    private static final Set<String> TRIP_SORTABLE_FIELDS = Set.of("startTime", "endTime", "status", "id");
+    private static final int MAX_TRIP_SEARCH_PAGE_SIZE = 200;
+
+    // Trip có thể còn thiếu tài xế/xe (ASSIGNED có thể mới gán 1 phần)
+    private static final EnumSet<TripStatus> PENDING_TRIP_STATUSES =
+            EnumSet.of(TripStatus.SCHEDULED, TripStatus.ASSIGNED);
+
     private final TripRepository tripRepository;
     private final BookingRepository bookingRepository;
     private final TripDriverRepository tripDriverRepository;
@@ -70,12 +96,22 @@ public class DispatchServiceImpl implements DispatchService {
     private final org.example.ptcmssbackend.service.WebSocketNotificationService webSocketNotificationService;
     private final SystemSettingService systemSettingService;
     private final TripOccupancyService tripOccupancyService;
+    private final ResourceTimelineService resourceTimelineService;
+    private final ResourceReservationService resourceReservationService;
     private final BookingVehicleDetailsRepository bookingVehicleDetailsRepository;
     private final VehicleCategoryPricingRepository vehicleCategoryRepository;
     private final org.example.ptcmssbackend.repository.InvoiceRepository invoiceRepository;
     private final org.example.ptcmssbackend.repository.PaymentHistoryRepository paymentHistoryRepository;
     private final DriverRatingsRepository driverRatingsRepository;
 
+    // Số ngày của một trang bảng điều phối khi không chọn ngày cụ thể
+    @Value("${dispatch.dashboard.horizon-days:7}")
+    private int dashboardHorizonDays;
+
+    // Thời gian tối đa cho tìm kiếm cục bộ khi điều phối tự động cả ngày (bước tham lam luôn chạy hết)
+    @Value("${dispatch.auto.time-budget-ms:2000}")
+    private long autoDispatchTimeBudgetMs;
+
     // =========================================================
     // 1) PENDING TRIPS (QUEUE)
     // =========================================================
@@ -92,70 +128,43 @@ public class DispatchServiceImpl implements DispatchService {
     public List<PendingTripResponse> getPendingTrips(Integer branchId, Instant from, Instant to) {
         log.info("[Dispatch] Loading pending trips for branch {} from {} to {}", branchId, from, to);
 
-        // Lấy các trip có status SCHEDULED hoặc ASSIGNED (ASSIGNED có thể có 1 phần đã gán)
-        List<Trips> scheduledTrips = tripRepository.findByBooking_Branch_IdAndStatusAndStartTimeBetween(branchId, TripStatus.SCHEDULED, from, to);
-        List<Trips> assignedTrips = tripRepository.findByBooking_Branch_IdAndStatusAndStartTimeBetween(branchId, TripStatus.ASSIGNED, from, to);
-        
-        log.info("[Dispatch] Found {} SCHEDULED trips and {} ASSIGNED trips", scheduledTrips.size(), assignedTrips.size());
-        
-        List<Trips> trips = new ArrayList<>();
-        trips.addAll(scheduledTrips);
-        trips.addAll(assignedTrips);
+        // Các trip SCHEDULED/ASSIGNED chưa gán driver và chưa gán vehicle (lọc bằng NOT EXISTS trong một truy vấn)
+        List<Trips> trips = tripRepository.findUnassignedTrips(branchId, PENDING_TRIP_STATUSES, from, to);
 
-        List<PendingTripResponse> result = new ArrayList<>();
-        int skippedAlreadyAssigned = 0;
+        List<Trips> dispatchable = new ArrayList<>();
         int skippedInvalidStatus = 0;
-        int skippedNoDeposit = 0;
-
         for (Trips t : trips) {
-            // Chỉ lấy các trip CHƯA gán driver và CHƯA gán vehicle
-            List<TripDrivers> tripDrivers = tripDriverRepository.findByTripId(t.getId());
-            List<TripVehicles> tripVehicles = tripVehicleRepository.findByTripId(t.getId());
-            if (!tripDrivers.isEmpty() || !tripVehicles.isEmpty()) {
-                skippedAlreadyAssigned++;
-                continue; // đã gán rồi -> không nằm trong pending queue
-            }
-
             Bookings b = t.getBooking();
             // Skip bookings that are not eligible for dispatch (e.g. cancelled)
             if (!DISPATCHABLE_BOOKING_STATUSES.contains(b.getStatus())) {
                 skippedInvalidStatus++;
-                log.info("[Dispatch] Skipping trip {} - booking {} has invalid status: {} (allowed: {})", 
-                        t.getId(), b.getId(), b.getStatus(), DISPATCHABLE_BOOKING_STATUSES);
+                log.debug("[Dispatch] Skipping trip {} - booking {} has invalid status: {}", t.getId(), b.getId(), b.getStatus());
                 continue;
             }
+            dispatchable.add(t);
+        }
+        if (dispatchable.isEmpty()) {
+            log.info("[Dispatch] Pending trips filter results: unassigned trips={}, skipped (invalid status)={}, final pending=0",
+                    trips.size(), skippedInvalidStatus);
+            return new ArrayList<>();
+        }
 
-            // CHỈ HIỂN THỊ CÁC TRIPS CÓ BOOKING ĐÃ ĐẶT CỌC
-            // Lý do: Tránh hiển thị các đơn chưa cọc, chỉ điều phối các đơn đã cọc
-            boolean depositPaid = hasDepositPaid(b);
+        // CHỈ HIỂN THỊ CÁC TRIPS CÓ BOOKING ĐÃ ĐẶT CỌC
+        // Lý do: Tránh hiển thị các đơn chưa cọc, chỉ điều phối các đơn đã cọc
+        Set<Integer> bookingIds = dispatchable.stream()
+                .map(t -> t.getBooking().getId())
+                .collect(Collectors.toSet());
+        Set<Integer> depositPaidBookingIds = new HashSet<>(
+                paymentHistoryRepository.findBookingIdsWithConfirmedDeposit(bookingIds));
+
+        List<PendingTripResponse> result = new ArrayList<>();
+        int skippedNoDeposit = 0;
+        for (Trips t : dispatchable) {
+            Bookings b = t.getBooking();
+            boolean depositPaid = b.getStatus() == BookingStatus.COMPLETED || depositPaidBookingIds.contains(b.getId());
             if (!depositPaid) {
                 skippedNoDeposit++;
-                log.info("[Dispatch] Skipping trip {} - booking {} has no confirmed deposit (booking status: {}, trip status: {})", 
-                        t.getId(), b.getId(), b.getStatus(), t.getStatus());
-                // Debug: Log chi tiết về invoice và payment để debug
-                try {
-                    var invoices = invoiceRepository.findByBooking_IdOrderByCreatedAtDesc(b.getId());
-                    log.info("[Dispatch]   Booking {} has {} invoices", b.getId(), invoices != null ? invoices.size() : 0);
-                    if (invoices != null && !invoices.isEmpty()) {
-                        for (var inv : invoices) {
-                            boolean isDeposit = Boolean.TRUE.equals(inv.getIsDeposit());
-                            var payments = paymentHistoryRepository.findByInvoice_IdOrderByPaymentDateDesc(inv.getId());
-                            int confirmedCount = 0;
-                            if (payments != null) {
-                                confirmedCount = (int) payments.stream()
-                                        .filter(p -> p.getConfirmationStatus() == 
-                                                org.example.ptcmssbackend.enums.PaymentConfirmationStatus.CONFIRMED)
-                                        .count();
-                            }
-                            log.info("[Dispatch]     Invoice {}: isDeposit={}, totalPayments={}, confirmedPayments={}", 
-                                    inv.getId(), isDeposit, payments != null ? payments.size() : 0, confirmedCount);
-                        }
-                    } else {
-                        log.info("[Dispatch]     Booking {} has NO invoices at all", b.getId());
-                    }
-                } catch (Exception e) {
-                    log.warn("[Dispatch] Error checking invoice details for booking {}", b.getId(), e);
-                }
+                log.debug("[Dispatch] Skipping trip {} - booking {} has no confirmed deposit", t.getId(), b.getId());
                 continue;
             }
 
@@ -175,15 +184,23 @@ public class DispatchServiceImpl implements DispatchService {
             );
         }
 
-        log.info("[Dispatch] Pending trips filter results: total trips={}, skipped (already assigned)={}, skipped (invalid status)={}, skipped (no deposit)={}, final pending={}", 
-                trips.size(), skippedAlreadyAssigned, skippedInvalidStatus, skippedNoDeposit, result.size());
+        log.info("[Dispatch] Pending trips filter results: unassigned trips={}, skipped (invalid status)={}, skipped (no deposit)={}, final pending={}", 
+                trips.size(), skippedInvalidStatus, skippedNoDeposit, result.size());
+        if (result.size() < 2) {
+            return result;
+        }
 
         // Ưu tiên các chuyến có phân khúc cao hơn (nhiều chỗ ngồi hơn) trước, sau đó mới tới thời gian
+        Map<Integer, Integer> maxSeatsByBooking = new HashMap<>();
+        for (Object[] row : bookingVehicleDetailsRepository.findMaxSeatsByBookingIds(
+                result.stream().map(PendingTripResponse::getBookingId).collect(Collectors.toSet()))) {
+            if (row[1] != null) {
+                maxSeatsByBooking.put((Integer) row[0], ((Number) row[1]).intValue());
+            }
+        }
         result.sort((a, b) -> {
-            Integer seatsA = getMaxSeatsFromBooking(bookingRepository.findById(a.getBookingId()).orElse(null));
-            Integer seatsB = getMaxSeatsFromBooking(bookingRepository.findById(b.getBookingId()).orElse(null));
-            int sa = seatsA != null ? seatsA : 0;
-            int sb = seatsB != null ? seatsB : 0;
+            int sa = maxSeatsByBooking.getOrDefault(a.getBookingId(), 0);
+            int sb = maxSeatsByBooking.getOrDefault(b.getBookingId(), 0);
             if (sa != sb) {
                 return Integer.compare(sb, sa); // nhiều chỗ hơn trước
             }
@@ -395,27 +412,19 @@ public class DispatchServiceImpl implements DispatchService {
             ? trip.getBooking().getCustomer().getId() 
             : null;
         
+        // Nạp sẵn dữ liệu của cả chi nhánh trong vài truy vấn, sau đó chấm điểm trong bộ nhớ
+        DriverCandidateContext context = loadDriverCandidateContext(drivers, trip, tripDate);
+        Integer maxSeatsRequired = context.getMaxSeatsRequired();
+        
         for (Drivers d : drivers) {
             // Kiểm tra lịch sử chuyến đi với khách hàng này
-            boolean hasHistoryWithCustomer = false;
-            if (customerId != null) {
-                // Tìm các chuyến đã hoàn thành của tài xế này với khách hàng
-                List<TripDrivers> driverTrips = tripDriverRepository.findAllByDriverId(d.getId());
-                hasHistoryWithCustomer = driverTrips.stream().anyMatch(td -> {
-                    Trips t = td.getTrip();
-                    if (t.getStatus() != TripStatus.COMPLETED) return false;
-                    if (t.getBooking() == null || t.getBooking().getCustomer() == null) return false;
-                    return t.getBooking().getCustomer().getId().equals(customerId);
-                });
-            }
+            boolean hasHistoryWithCustomer = customerId != null && context.hasHistoryWithCustomer(d.getId());
             List<String> reasons = new ArrayList<>();
             boolean eligible = true;
             int score = 0;
             
             // 1) Check day-off (nghỉ phép)
-            boolean dayOff = !driverDayOffRepository
-                    .findApprovedDayOffOnDate(d.getId(), DriverDayOffStatus.APPROVED, tripDate)
-                    .isEmpty();
+            boolean dayOff = context.isOnDayOff(d.getId());
             if (dayOff) {
                 eligible = false;
                 reasons.add("Đang nghỉ phép");
@@ -435,7 +444,6 @@ public class DispatchServiceImpl implements DispatchService {
             // Hạng D: Lái xe từ 10-30 chỗ
             // Hạng E: Lái xe trên 30 chỗ
             // Hạng B1/B2: Lái xe dưới 9 chỗ
-            Integer maxSeatsRequired = getMaxSeatsFromBooking(trip.getBooking());
             String licenseClass = d.getLicenseClass() != null ? d.getLicenseClass().toUpperCase() : "";
             boolean licenseClassValid = isLicenseClassValidForSeats(licenseClass, maxSeatsRequired);
             if (!licenseClassValid) {
@@ -447,18 +455,8 @@ public class DispatchServiceImpl implements DispatchService {
             
             // 4) Check if driver already assigned to another trip in the same booking
             // Rule: Mỗi trip trong cùng booking phải có tài xế khác nhau
-            Bookings booking = trip.getBooking();
-            if (booking != null) {
-                List<Trips> allBookingTrips = tripRepository.findByBooking_Id(booking.getId());
-                boolean alreadyAssignedToOtherTrip = allBookingTrips.stream()
-                        .filter(t -> !t.getId().equals(trip.getId())) // Bỏ qua trip hiện tại
-                        .anyMatch(otherTrip -> {
-                            List<TripDrivers> otherTripDrivers = tripDriverRepository.findByTripId(otherTrip.getId());
-                            return otherTripDrivers.stream()
-                                    .anyMatch(td -> td.getDriver() != null && td.getDriver().getId().equals(d.getId()));
-                        });
-                
-                if (alreadyAssignedToOtherTrip) {
+            if (trip.getBooking() != null) {
+                if (context.isAssignedToOtherTripInBooking(d.getId())) {
                     eligible = false;
                     reasons.add("Đã được gán cho chuyến khác trong cùng đơn hàng");
                 } else {
@@ -467,18 +465,8 @@ public class DispatchServiceImpl implements DispatchService {
             }
             
             // 5) Check time overlap
-            List<TripDrivers> driverTrips = tripDriverRepository.findAllByDriverId(d.getId());
-            boolean overlap = driverTrips.stream().anyMatch(td -> {
-                Trips t = td.getTrip();
-                if (t.getId().equals(trip.getId())) return false;
-                if (t.getStatus() == TripStatus.CANCELLED || t.getStatus() == TripStatus.COMPLETED) return false;
-                Instant s1 = t.getStartTime();
-                Instant e1 = t.getEndTime();
-                Instant s2 = trip.getStartTime();
-                Instant e2 = trip.getEndTime();
-                if (s1 == null || e1 == null || s2 == null || e2 == null) return false;
-                return s1.isBefore(e2) && s2.isBefore(e1);
-            });
+            List<TripDrivers> driverTrips = context.assignmentsOf(d.getId());
+            boolean overlap = hasDriverOverlap(driverTrips, trip, false);
             if (overlap) {
                 eligible = false;
                 reasons.add("Trùng giờ với chuyến khác");
@@ -486,35 +474,15 @@ public class DispatchServiceImpl implements DispatchService {
                 reasons.add("Rảnh tại thời điểm này");
             }
             
-            // 6) Fairness scoring: số chuyến trong ngày
-            long tripsToday = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return dDate.equals(tripDate);
-            }).count();
-            
-            // 7) Fairness: số chuyến trong tuần
-            LocalDate weekStart = tripDate.minusDays(tripDate.getDayOfWeek().getValue() - 1);
-            LocalDate weekEnd = weekStart.plusDays(6);
-            long tripsThisWeek = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return !dDate.isBefore(weekStart) && !dDate.isAfter(weekEnd);
-            }).count();
-            
-            // 8) Fairness: mức độ được gán gần đây (recent assignment)
-            long recentAssignments = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return !dDate.isBefore(tripDate.minusDays(3)); // 3 ngày gần đây
-            }).count();
+            // 6-8) Fairness: số chuyến trong ngày / trong tuần / 3 ngày gần đây
+            DriverWorkload workload = DriverWorkload.of(driverTrips, tripDate);
+            long tripsToday = workload.getTripsToday();
+            long tripsThisWeek = workload.getTripsThisWeek();
+            long recentAssignments = workload.getRecentAssignments();
             
             // Calculate fairness score (lower is better)
             // Trọng số: ngày (40%), tuần (30%), gần đây (30%)
-            score = (int) (tripsToday * 40 + tripsThisWeek * 30 + recentAssignments * 30);
+            score = workload.fairnessScore();
             
             if (eligible) {
                 // Thêm thông tin lịch sử với khách hàng
@@ -665,27 +633,15 @@ public class DispatchServiceImpl implements DispatchService {
                 );
                 final Instant targetBusyUntil = targetBusyUntilTmp != null ? targetBusyUntilTmp : targetStart.plusSeconds(3600);
 
-                List<TripVehicles> vehicleTrips = tripVehicleRepository.findAllByVehicleId(v.getId());
-                boolean busy = vehicleTrips.stream().anyMatch(tv -> {
-                    Trips other = tv.getTrip();
-                    if (other == null || other.getBooking() == null) return false;
-                    if (other.getStatus() == TripStatus.CANCELLED || other.getStatus() == TripStatus.COMPLETED) return false;
-                    if (other.getId().equals(trip.getId())) return false;
-                    // Nếu cùng booking thì đã bị chặn ở bước 2) nên không cần tính overlap ở đây
-                    if (trip.getBooking() != null && other.getBooking().getId().equals(trip.getBooking().getId())) return false;
-                    if (other.getStartTime() == null) return true;
-
-                    Instant otherBusyUntil = tripOccupancyService.computeBusyUntil(
-                            other.getBooking().getHireType() != null ? other.getBooking().getHireType().getCode() : null,
-                            other.getStartTime(),
-                            other.getEndTime(),
-                            other.getDistance() != null ? other.getDistance().doubleValue() : null,
-                            other.getStartLocation(),
-                            other.getEndLocation()
-                    );
-                    if (otherBusyUntil == null) return true;
-                    return other.getStartTime().isBefore(targetBusyUntil) && targetStart.isBefore(otherBusyUntil);
-                });
+                // Nếu cùng booking thì đã bị chặn ở bước 2) nên không cần tính overlap ở đây
+                boolean busy = resourceTimelineService.isVehicleBusy(
+                        v.getBranch() != null ? v.getBranch().getId() : null,
+                        v.getId(),
+                        targetStart,
+                        targetBusyUntil,
+                        Collections.singleton(trip.getId()),
+                        trip.getBooking() != null ? trip.getBooking().getId() : null
+                );
 
                 if (busy) {
                     eligible = false;
@@ -796,62 +752,63 @@ public class DispatchServiceImpl implements DispatchService {
 
     @Override
     public DispatchDashboardResponse getDashboard(Integer branchId, LocalDate date) {
-        log.info("[Dispatch] ===== getDashboard START - branchId: {}, date: {} =====", branchId, date);
+        return getDashboard(branchId, date, null);
+    }
+
+    @Override
+    public DispatchDashboardResponse getDashboard(Integer branchId, LocalDate date, LocalDate cursor) {
+        log.info("[Dispatch] getDashboard - branchId: {}, date: {}, cursor: {}", branchId, date, cursor);
         
         if (branchId == null) {
             log.error("[Dispatch] BranchId is null!");
             throw new IllegalArgumentException("Mã chi nhánh là bắt buộc");
         }
         
-        Instant from;
-        Instant to;
         LocalDate targetDate;
-        
+        LocalDate endDate;
         if (date != null) {
             // Nếu có date cụ thể: lấy trong ngày đó
             targetDate = date;
-            from = targetDate.atStartOfDay(DEFAULT_ZONE).toInstant();
-            to = targetDate.plusDays(1).atStartOfDay(DEFAULT_ZONE).toInstant();
-            log.info("[Dispatch] getDashboard - Using specific date: {} (from {} to {})", targetDate, from, to);
+            endDate = date.plusDays(1);
         } else {
-            // Nếu không có date: lấy từ hiện tại đến tương lai (1 năm)
-            // Bắt đầu từ đầu ngày hôm nay để bao gồm các chuyến trong ngày
-            targetDate = LocalDate.now(DEFAULT_ZONE);
-            from = targetDate.atStartOfDay(DEFAULT_ZONE).toInstant();
-            to = targetDate.plusYears(1).atStartOfDay(DEFAULT_ZONE).toInstant();
-            log.info("[Dispatch] getDashboard - Loading trips from {} (start of today) to {} (1 year future)", from, to);
-        }
-
-        log.info("[Dispatch] getDashboard - Querying trips for branch {} from {} to {}", branchId, from, to);
-        
-        // Debug: Kiểm tra tổng số trips trong khoảng thời gian (không filter status)
-        List<Trips> allTripsInRange = tripRepository.findByBooking_Branch_IdAndStartTimeBetween(branchId, from, to);
-        log.info("[Dispatch] getDashboard - Found {} total trips in time range (any status)", allTripsInRange.size());
-        if (!allTripsInRange.isEmpty()) {
-            log.info("[Dispatch] getDashboard - Trip statuses breakdown:");
-            Map<TripStatus, Long> statusCount = allTripsInRange.stream()
-                    .collect(Collectors.groupingBy(Trips::getStatus, Collectors.counting()));
-            statusCount.forEach((status, count) -> 
-                    log.info("[Dispatch]   - {}: {} trips", status, count));
+            // Nếu không có date: từ cursor (mặc định đầu ngày hôm nay) trong số ngày cấu hình
+            targetDate = cursor != null ? cursor : LocalDate.now(DEFAULT_ZONE);
+            endDate = targetDate.plusDays(Math.max(dashboardHorizonDays, 1));
         }
+        Instant from = targetDate.atStartOfDay(DEFAULT_ZONE).toInstant();
+        Instant to = endDate.atStartOfDay(DEFAULT_ZONE).toInstant();
         
         List<PendingTripResponse> pending = getPendingTrips(branchId, from, to);
-        List<Drivers> drivers = driverRepository.findByBranchId(branchId);
+        List<Drivers> drivers = driverRepository.findByBranchIdWithUser(branchId);
         List<Vehicles> vehicles = vehicleRepository.filterVehicles(null, branchId, null);
         if (vehicles == null) {
             vehicles = new ArrayList<>();
         }
-        List<Trips> tripsInDay = tripRepository.findByBooking_Branch_IdAndStartTimeBetween(branchId, from, to);
 
-        // ===== THỐNG KÊ =====
+        // Một truy vấn cho chuyến + tài xế + xe trong cửa sổ, gom theo chuyến
+        Map<Integer, DashboardTrip> tripsInWindow = new LinkedHashMap<>();
+        for (Object[] row : tripRepository.findDashboardRows(branchId, from, to)) {
+            DashboardTrip trip = tripsInWindow.computeIfAbsent((Integer) row[0], id -> new DashboardTrip(
+                    id, (Instant) row[1], (Instant) row[2], (TripStatus) row[3], (String) row[4], (String) row[5]));
+            if (row[6] != null) {
+                trip.driverIds.add((Integer) row[6]);
+            }
+            if (row[7] != null) {
+                trip.vehicleIds.add((Integer) row[7]);
+            }
+        }
+
+        // ===== THỐNG KÊ + LỊCH (một lượt duyệt) =====
         int pendingCount = 0;
         int assignedCount = 0;
         int cancelledCount = 0;
         int completedCount = 0;
         int inProgressCount = 0;
+        Map<Integer, List<DispatchDashboardResponse.ScheduleBlock>> driverBlocks = new HashMap<>();
+        Map<Integer, List<DispatchDashboardResponse.ScheduleBlock>> vehicleBlocks = new HashMap<>();
 
-        for (Trips trip : tripsInDay) {
-            TripStatus status = trip.getStatus();
+        for (DashboardTrip trip : tripsInWindow.values()) {
+            TripStatus status = trip.status;
             if (status == TripStatus.CANCELLED) {
                 cancelledCount++;
             } else if (status == TripStatus.COMPLETED) {
@@ -860,34 +817,48 @@ public class DispatchServiceImpl implements DispatchService {
                 inProgressCount++;
             } else if (status == TripStatus.SCHEDULED) {
                 // Kiểm tra đã gán driver/vehicle chưa
-                List<TripDrivers> td = tripDriverRepository.findByTripId(trip.getId());
-                List<TripVehicles> tv = tripVehicleRepository.findByTripId(trip.getId());
-                if (td.isEmpty() && tv.isEmpty()) {
+                if (trip.driverIds.isEmpty() && trip.vehicleIds.isEmpty()) {
                     pendingCount++;
                 } else {
                     assignedCount++;
                 }
             }
+
+            if (trip.startTime == null || trip.endTime == null) {
+                continue;
+            }
+            for (Integer driverId : trip.driverIds) {
+                driverBlocks.computeIfAbsent(driverId, id -> new ArrayList<>()).add(trip.toBlock());
+            }
+            for (Integer vehicleId : trip.vehicleIds) {
+                vehicleBlocks.computeIfAbsent(vehicleId, id -> new ArrayList<>()).add(trip.toBlock());
+            }
         }
         // ===== END THỐNG KÊ =====
 
-        Map<Integer, List<TripDrivers>> tripDriverMap = new HashMap<>();
-        Map<Integer, List<TripVehicles>> tripVehicleMap = new HashMap<>();
-
+        DispatchDashboardResponse.ScheduleWindow shift = buildShiftWindow(targetDate);
         List<DispatchDashboardResponse.DriverScheduleItem> driverSchedules = drivers.stream()
-                .map(driver -> buildDriverSchedule(driver, tripsInDay, tripDriverMap, targetDate))
+                .map(driver -> buildDriverSchedule(driver, driverBlocks.getOrDefault(driver.getId(), new ArrayList<>()), shift))
                 .collect(Collectors.toList());
 
         List<DispatchDashboardResponse.VehicleScheduleItem> vehicleSchedules = vehicles.stream()
-                .map(vehicle -> buildVehicleSchedule(vehicle, tripsInDay, tripVehicleMap, targetDate))
+                .map(vehicle -> buildVehicleSchedule(vehicle, vehicleBlocks.getOrDefault(vehicle.getId(), new ArrayList<>()), shift))
                 .collect(Collectors.toList());
 
+        boolean hasMore = date == null
+                && tripRepository.existsByBooking_Branch_IdAndStartTimeGreaterThanEqual(branchId, to);
+
+        log.info("[Dispatch] getDashboard - {} trips, {} pending in window [{}, {})", tripsInWindow.size(), pending.size(), from, to);
         return DispatchDashboardResponse.builder()
                 .pendingCount(pendingCount)
                 .assignedCount(assignedCount)
                 .cancelledCount(cancelledCount)
                 .completedCount(completedCount)
                 .inProgressCount(inProgressCount)
+                .windowStart(from)
+                .windowEnd(to)
+                .nextCursor(hasMore ? endDate : null)
+                .hasMore(hasMore)
                 .pendingTrips(pending)
                 .driverSchedules(driverSchedules)
                 .vehicleSchedules(vehicleSchedules)
@@ -897,7 +868,12 @@ public class DispatchServiceImpl implements DispatchService {
     // =========================================================
     // 2) ASSIGN (Manual + Auto)
     // =========================================================
+    /**
+     * Tài xế/xe được giữ chỗ bằng khóa dòng trong BookingService.assign (xem ResourceReservationService),
+     * nên giao dịch chạy ở READ_COMMITTED để kiểm tra sau khi khóa thấy phân công vừa commit
+     */
     @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public AssignRespone assign(AssignRequest request) {
         log.info("[Dispatch] Assign called: {}", request);
 
@@ -1283,6 +1259,11 @@ public class DispatchServiceImpl implements DispatchService {
         bookingAssignReq.setVehicleId(vehicleId);
         bookingAssignReq.setNote(request.getNote());
 
+        // Chuyến dài có 2 tài xế: khóa cả 2 theo id tăng dần trước khi gán để không khóa chéo với giao dịch khác
+        if (request.getSecondDriverId() != null) {
+            resourceReservationService.lockDrivers(List.of(driverId, request.getSecondDriverId()));
+        }
+
         var bookingResponse = bookingService.assign(booking.getId(), bookingAssignReq);
         
         // Nếu có tài xế thứ 2 (cho chuyến dài), gán thêm
@@ -1298,17 +1279,24 @@ public class DispatchServiceImpl implements DispatchService {
                         .anyMatch(td -> td.getDriver().getId().equals(secondDriver.getId()));
                 
                 if (!alreadyHasSecondDriver) {
+                    Trips trip = trips.stream().filter(t -> t.getId().equals(tid)).findFirst().orElseThrow();
+                    if (!resourceReservationService.tryReserveDriver(secondDriver.getId(),
+                            trip.getStartTime(), trip.getEndTime(), targetTripIds)) {
+                        throw new RuntimeException(String.format(
+                                "Tài xế phụ %d đã được gán cho chuyến khác trùng thời gian với chuyến #%d",
+                                secondDriver.getId(), tid));
+                    }
                     TripDrivers td = new TripDrivers();
                     TripDriverId id = new TripDriverId();
                     id.setTripId(tid);
                     id.setDriverId(secondDriver.getId());
                     td.setId(id);
-                    Trips trip = trips.stream().filter(t -> t.getId().equals(tid)).findFirst().orElseThrow();
                     td.setTrip(trip);
                     td.setDriver(secondDriver);
                     td.setDriverRole("Co-Driver"); // Tài xế thay ca
                     td.setNote("Tài xế thứ 2 cho chuyến dài");
                     tripDriverRepository.save(td);
+                    resourceTimelineService.onTripChanged(tid);
                     log.info("[Dispatch] Assigned second driver {} to trip {}", secondDriver.getId(), tid);
                 }
             }
@@ -1378,8 +1366,11 @@ public class DispatchServiceImpl implements DispatchService {
                 }
             }
 
-            // Global notification
-            webSocketNotificationService.sendGlobalNotification(
+            Integer branchId = booking.getBranch() != null ? booking.getBranch().getId() : null;
+
+            // Branch notification
+            webSocketNotificationService.sendBranchNotification(
+                    branchId,
                     "Đã gán chuyến",
                     String.format("Đơn %s - %s%s%s",
                             bookingCode,
@@ -1391,6 +1382,7 @@ public class DispatchServiceImpl implements DispatchService {
 
             // Dispatch update notification
             webSocketNotificationService.sendDispatchUpdate(
+                    branchId,
                     booking.getId(),
                     "ASSIGNED",
                     String.format("Đã gán %d chuyến%s%s",
@@ -1401,6 +1393,7 @@ public class DispatchServiceImpl implements DispatchService {
 
             // Booking update notification
             webSocketNotificationService.sendBookingUpdate(
+                    branchId,
                     booking.getId(),
                     "ASSIGNED",
                     String.format("Đã gán tài xế và xe cho %d chuyến", tripInfos.size())
@@ -1448,8 +1441,10 @@ public class DispatchServiceImpl implements DispatchService {
             Bookings booking = trip.getBooking();
             String customerName = booking.getCustomer() != null ? booking.getCustomer().getFullName() : "Khách hàng";
             String bookingCode = "ORD-" + booking.getId();
+            Integer branchId = booking.getBranch() != null ? booking.getBranch().getId() : null;
 
-            webSocketNotificationService.sendGlobalNotification(
+            webSocketNotificationService.sendBranchNotification(
+                    branchId,
                     "Đã hủy gán chuyến",
                     String.format("Chuyến #%d (Đơn %s - %s) đã được hủy gán",
                             tripId,
@@ -1459,6 +1454,7 @@ public class DispatchServiceImpl implements DispatchService {
             );
 
             webSocketNotificationService.sendDispatchUpdate(
+                    branchId,
                     booking.getId(),
                     "UNASSIGNED",
                     String.format("Đã hủy gán chuyến #%d", tripId)
@@ -1472,11 +1468,13 @@ public class DispatchServiceImpl implements DispatchService {
         if (!tvs.isEmpty()) {
             tripVehicleRepository.deleteAll(tvs);
         }
+        resourceTimelineService.onTripChanged(tripId);
 
         // Trạng thái trip vẫn là SCHEDULED, nằm lại trong Pending Queue
     }
 
     @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public AssignRespone reassign(AssignRequest request) {
         log.info("[Dispatch] Reassigning - bookingId: {}, tripIds: {}, driverId: {}, vehicleId: {}", 
                 request.getBookingId(), request.getTripIds(), request.getDriverId(), request.getVehicleId());
@@ -1533,6 +1531,416 @@ public class DispatchServiceImpl implements DispatchService {
         return assign(request);
     }
     
+    // =========================================================
+    // ĐIỀU PHỐI TỰ ĐỘNG CẢ NGÀY
+    // =========================================================
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public AutoDispatchResponse autoDispatch(AutoDispatchRequest request) {
+        if (request == null || request.getBranchId() == null) {
+            throw new RuntimeException("Vui lòng chọn chi nhánh để điều phối tự động");
+        }
+        Integer branchId = request.getBranchId();
+        LocalDate date = request.getDate() != null ? request.getDate() : LocalDate.now();
+        boolean dryRun = Boolean.TRUE.equals(request.getDryRun());
+        long startedAt = System.currentTimeMillis();
+        Instant from = date.atStartOfDay(DEFAULT_ZONE).toInstant();
+        Instant to = date.plusDays(1).atStartOfDay(DEFAULT_ZONE).toInstant();
+        log.info("[Dispatch] Auto-dispatch branch {} on {} (dryRun={})", branchId, date, dryRun);
+
+        // 1) Chuyến chờ điều phối trong ngày (cùng điều kiện với hàng đợi: trạng thái booking hợp lệ, đã cọc)
+        List<Integer> pendingTripIds = getPendingTrips(branchId, from, to).stream()
+                .map(PendingTripResponse::getTripId)
+                .collect(Collectors.toList());
+        List<Trips> trips = new ArrayList<>(tripRepository.findAllById(pendingTripIds));
+        trips.sort(Comparator.comparing(Trips::getStartTime).thenComparing(Trips::getId));
+        if (trips.isEmpty()) {
+            return AutoDispatchResponse.builder()
+                    .branchId(branchId)
+                    .date(date)
+                    .dryRun(dryRun)
+                    .assignments(List.of())
+                    .unassigned(List.of())
+                    .planningMillis(System.currentTimeMillis() - startedAt)
+                    .build();
+        }
+        Map<Integer, Trips> tripById = trips.stream().collect(Collectors.toMap(Trips::getId, t -> t));
+
+        // 2) Booking của các chuyến: loại xe yêu cầu, số ghế lớn nhất, tài xế/xe đã gán cho chuyến khác cùng booking
+        Set<Integer> bookingIds = trips.stream()
+                .map(t -> t.getBooking().getId())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<Integer, List<VehicleCategoryPricing>> categoriesByBooking = new HashMap<>();
+        for (BookingVehicleDetails bvd : bookingVehicleDetailsRepository.findByBookingIdIn(bookingIds)) {
+            List<VehicleCategoryPricing> categories = categoriesByBooking
+                    .computeIfAbsent(bvd.getId().getBookingId(), k -> new ArrayList<>());
+            int qty = bvd.getQuantity() != null ? bvd.getQuantity() : 1;
+            for (int q = 0; q < qty; q++) {
+                categories.add(bvd.getVehicleCategory());
+            }
+        }
+        Map<Integer, Integer> maxSeatsByBooking = new HashMap<>();
+        categoriesByBooking.forEach((bookingId, categories) -> maxSeatsByBooking.put(bookingId, categories.stream()
+                .filter(c -> c.getSeats() != null)
+                .mapToInt(VehicleCategoryPricing::getSeats)
+                .max()
+                .orElse(0)));
+
+        Map<Integer, List<Trips>> tripsByBooking = tripRepository.findByBooking_IdIn(bookingIds).stream()
+                .collect(Collectors.groupingBy(t -> t.getBooking().getId()));
+        Map<Integer, Integer> bookingOfTrip = new HashMap<>();
+        Map<Integer, VehicleCategoryPricing> requiredCategoryByTrip = new HashMap<>();
+        tripsByBooking.forEach((bookingId, bookingTrips) -> {
+            // Chuyến thứ i của booking dùng loại xe thứ i (giống getAssignmentSuggestions)
+            bookingTrips.sort(Comparator.comparing((Trips t) -> t.getStartTime() != null ? t.getStartTime() : Instant.EPOCH)
+                    .thenComparing(Trips::getId));
+            List<VehicleCategoryPricing> categories = categoriesByBooking.getOrDefault(bookingId, List.of());
+            for (int i = 0; i < bookingTrips.size(); i++) {
+                bookingOfTrip.put(bookingTrips.get(i).getId(), bookingId);
+                if (!categories.isEmpty()) {
+                    requiredCategoryByTrip.put(bookingTrips.get(i).getId(),
+                            i < categories.size() ? categories.get(i) : categories.get(0));
+                }
+            }
+        });
+        BookingAssignments bookingAssignments = loadBookingAssignments(bookingOfTrip);
+
+        // 3) Tài xế của chi nhánh: điểm công bằng + lịch đã có, nạp 1 lần cho cả ngày
+        List<Drivers> drivers = new ArrayList<>(driverRepository.findByBranchIdWithUser(branchId));
+        drivers.sort(Comparator.comparing(Drivers::getId));
+        Map<Integer, Drivers> driverById = drivers.stream().collect(Collectors.toMap(Drivers::getId, d -> d));
+        List<Integer> driverIds = new ArrayList<>(driverById.keySet());
+        Instant lastEnd = trips.stream()
+                .map(t -> t.getEndTime() != null ? t.getEndTime() : t.getStartTime())
+                .max(Comparator.naturalOrder())
+                .orElse(to);
+        Map<Integer, List<TripDrivers>> assignmentsByDriver = new HashMap<>();
+        Set<Integer> dayOffDriverIds = new HashSet<>();
+        if (!driverIds.isEmpty()) {
+            Instant windowStart = DriverWorkload.windowStart(date).atStartOfDay(DEFAULT_ZONE).toInstant();
+            assignmentsByDriver = tripDriverRepository.findByDriverIdsInWindow(driverIds, windowStart, from, lastEnd)
+                    .stream()
+                    .collect(Collectors.groupingBy(td -> td.getId().getDriverId()));
+            dayOffDriverIds.addAll(driverDayOffRepository
+                    .findDriverIdsWithDayOffOnDate(driverIds, DriverDayOffStatus.APPROVED, date));
+        }
+        List<DispatchPlanner.DriverSlot> driverSlots = new ArrayList<>();
+        for (Drivers d : drivers) {
+            int score = DriverWorkload.of(assignmentsByDriver.getOrDefault(d.getId(), List.of()), date).fairnessScore();
+            driverSlots.add(new DispatchPlanner.DriverSlot(d.getId(), score));
+        }
+
+        // 4) Xe sẵn sàng của chi nhánh (lịch bận kiểm tra trên chỉ mục in-memory)
+        List<Vehicles> vehicles = new ArrayList<>(vehicleRepository.filterVehicles(null, branchId, VehicleStatus.AVAILABLE));
+        vehicles.sort(Comparator.comparing(Vehicles::getId));
+        Map<Integer, Vehicles> vehicleById = vehicles.stream().collect(Collectors.toMap(Vehicles::getId, v -> v));
+        List<DispatchPlanner.VehicleSlot> vehicleSlots = vehicles.stream()
+                .map(v -> new DispatchPlanner.VehicleSlot(v.getId(), v.getCapacity()))
+                .collect(Collectors.toList());
+
+        // 5) Điều kiện riêng từng cặp chuyến - tài xế/xe (như gợi ý từng chuyến), phần còn lại do planner xử lý
+        tripOccupancyService.prefetchDistances(trips);
+        Map<Integer, Instant> busyUntilByTrip = new HashMap<>();
+        List<DispatchPlanner.TripSlot> slots = new ArrayList<>();
+        for (Trips trip : trips) {
+            Integer bookingId = trip.getBooking().getId();
+            Integer maxSeats = maxSeatsByBooking.get(bookingId);
+            VehicleCategoryPricing requiredCategory = requiredCategoryByTrip.get(trip.getId());
+            Integer requiredSeats = requiredCategory != null && requiredCategory.getSeats() != null
+                    ? requiredCategory.getSeats() : maxSeats;
+            Instant tripBusyUntil = busyUntil(trip);
+            busyUntilByTrip.put(trip.getId(), tripBusyUntil);
+
+            Set<Integer> bookedDrivers = bookingAssignments.driversOf(bookingId);
+            List<Integer> eligibleDrivers = new ArrayList<>();
+            for (Drivers d : drivers) {
+                if (dayOffDriverIds.contains(d.getId())
+                        || (d.getLicenseExpiry() != null && d.getLicenseExpiry().isBefore(date))
+                        || !isLicenseClassValidForSeats(d.getLicenseClass(), maxSeats)
+                        || bookedDrivers.contains(d.getId())
+                        || hasDriverOverlap(assignmentsByDriver.getOrDefault(d.getId(), List.of()), trip, false)) {
+                    continue;
+                }
+                eligibleDrivers.add(d.getId());
+            }
+
+            Set<Integer> bookedVehicles = bookingAssignments.vehiclesOf(bookingId);
+            List<Integer> eligibleVehicles = new ArrayList<>();
+            for (Vehicles v : vehicles) {
+                if (bookedVehicles.contains(v.getId())) continue;
+                if (requiredCategory != null
+                        && (v.getCategory() == null || !v.getCategory().getId().equals(requiredCategory.getId()))) {
+                    continue;
+                }
+                if (requiredSeats != null && requiredSeats > 0 && v.getCapacity() != null && v.getCapacity() < requiredSeats) {
+                    continue;
+                }
+                if (resourceTimelineService.isVehicleBusy(branchId, v.getId(), trip.getStartTime(), tripBusyUntil,
+                        Collections.singleton(trip.getId()), bookingId)) {
+                    continue;
+                }
+                eligibleVehicles.add(v.getId());
+            }
+
+            slots.add(DispatchPlanner.TripSlot.builder()
+                    .tripId(trip.getId())
+                    .bookingId(bookingId)
+                    .start(trip.getStartTime())
+                    .end(trip.getEndTime())
+                    .busyUntil(tripBusyUntil)
+                    .requiredSeats(requiredSeats)
+                    .driverIds(eligibleDrivers)
+                    .vehicleIds(eligibleVehicles)
+                    .build());
+        }
+
+        // 6) Lập kế hoạch trong bộ nhớ trong giới hạn thời gian
+        DispatchPlanner.Plan plan = DispatchPlanner.plan(slots, driverSlots, vehicleSlots,
+                Duration.ofMillis(autoDispatchTimeBudgetMs));
+        log.info("[Dispatch] Auto-dispatch plan for branch {} on {}: {} trips, {} drivers, {} vehicles -> {} assigned, cost {}, {} passes{}",
+                branchId, date, trips.size(), drivers.size(), vehicles.size(), plan.getAssignments().size(),
+                plan.getTotalCost(), plan.getPasses(), plan.isTimedOut() ? " (time budget exhausted)" : "");
+
+        // 7) Ghi kế hoạch trong chính giao dịch này
+        Map<Integer, String> unassignedReasons = new LinkedHashMap<>(plan.getUnassigned());
+        List<DispatchPlanner.Assignment> accepted = plan.getAssignments();
+        if (!dryRun && !accepted.isEmpty()) {
+            accepted = commitAutoDispatchPlan(branchId, date, accepted, tripById, driverById, vehicleById,
+                    busyUntilByTrip, bookingOfTrip, tripsByBooking, unassignedReasons);
+        }
+
+        List<AutoDispatchResponse.PlannedTrip> planned = new ArrayList<>();
+        for (DispatchPlanner.Assignment a : accepted) {
+            Trips trip = tripById.get(a.getTripId());
+            planned.add(AutoDispatchResponse.PlannedTrip.builder()
+                    .tripId(trip.getId())
+                    .bookingId(trip.getBooking().getId())
+                    .startTime(trip.getStartTime())
+                    .endTime(trip.getEndTime())
+                    .driverId(a.getDriverId())
+                    .driverName(extractDriverName(driverById.get(a.getDriverId())))
+                    .driverScore(a.getDriverScore())
+                    .vehicleId(a.getVehicleId())
+                    .vehicleLicensePlate(vehicleById.get(a.getVehicleId()).getLicensePlate())
+                    .vehicleScore(a.getVehicleScore())
+                    .build());
+        }
+        List<AutoDispatchResponse.UnassignedTrip> unassigned = new ArrayList<>();
+        unassignedReasons.forEach((tripId, reason) -> {
+            Trips trip = tripById.get(tripId);
+            unassigned.add(AutoDispatchResponse.UnassignedTrip.builder()
+                    .tripId(tripId)
+                    .bookingId(trip.getBooking().getId())
+                    .startTime(trip.getStartTime())
+                    .reason(reason)
+                    .build());
+        });
+
+        return AutoDispatchResponse.builder()
+                .branchId(branchId)
+                .date(date)
+                .dryRun(dryRun)
+                .totalTrips(trips.size())
+                .assignedTrips(planned.size())
+                .totalScore(plan.getTotalCost())
+                .timedOut(plan.isTimedOut())
+                .planningMillis(System.currentTimeMillis() - startedAt)
+                .assignments(planned)
+                .unassigned(unassigned)
+                .build();
+    }
+
+    /**
+     * Khóa tài xế/xe trong kế hoạch, kiểm tra lại trên dữ liệu đã commit rồi ghi các phân công còn hợp lệ.
+     * Phân công bị giao dịch khác chiếm trong lúc lập kế hoạch được bỏ qua và đưa vào danh sách chưa xếp.
+     *
+     * @return các phân công đã ghi
+     */
+    private List<DispatchPlanner.Assignment> commitAutoDispatchPlan(
+            Integer branchId,
+            LocalDate date,
+            List<DispatchPlanner.Assignment> planned,
+            Map<Integer, Trips> tripById,
+            Map<Integer, Drivers> driverById,
+            Map<Integer, Vehicles> vehicleById,
+            Map<Integer, Instant> busyUntilByTrip,
+            Map<Integer, Integer> bookingOfTrip,
+            Map<Integer, List<Trips>> tripsByBooking,
+            Map<Integer, String> unassignedReasons) {
+
+        // Quy ước thứ tự khóa: tài xế trước xe, id tăng dần
+        Set<Integer> driverIds = planned.stream()
+                .map(DispatchPlanner.Assignment::getDriverId)
+                .collect(Collectors.toCollection(TreeSet::new));
+        Set<Integer> vehicleIds = planned.stream()
+                .map(DispatchPlanner.Assignment::getVehicleId)
+                .collect(Collectors.toCollection(TreeSet::new));
+        // Busy-until của các chuyến đang chiếm xe tính trước khi khóa (chỉ ước lượng, không gọi API), mỗi chuyến 1 lần
+        Map<Integer, Instant> otherBusyUntil = new HashMap<>();
+        for (TripVehicles tv : tripVehicleRepository.findActiveByVehicleIds(vehicleIds)) {
+            otherBusyUntil.computeIfAbsent(tv.getTrip().getId(), k -> estimatedBusyUntil(tv.getTrip()));
+        }
+        resourceReservationService.lockDrivers(driverIds);
+        resourceReservationService.lockVehicles(vehicleIds);
+
+        // Đọc lại sau khi khóa (READ_COMMITTED): thấy phân công vừa commit của giao dịch khác
+        BookingAssignments committed = loadBookingAssignments(bookingOfTrip);
+        Instant firstStart = planned.stream()
+                .map(a -> tripById.get(a.getTripId()).getStartTime())
+                .min(Comparator.naturalOrder())
+                .orElseThrow();
+        Instant lastEnd = planned.stream()
+                .map(a -> tripById.get(a.getTripId()))
+                .map(t -> t.getEndTime() != null ? t.getEndTime() : t.getStartTime())
+                .max(Comparator.naturalOrder())
+                .orElseThrow();
+        Map<Integer, List<TripDrivers>> driverTrips = tripDriverRepository
+                .findByDriverIdsInWindow(driverIds, lastEnd, firstStart, lastEnd)
+                .stream()
+                .collect(Collectors.groupingBy(td -> td.getId().getDriverId()));
+        Map<Integer, List<TripVehicles>> vehicleTrips = tripVehicleRepository.findActiveByVehicleIds(vehicleIds)
+                .stream()
+                .collect(Collectors.groupingBy(tv -> tv.getVehicle().getId()));
+
+        List<DispatchPlanner.Assignment> accepted = new ArrayList<>();
+        List<TripDrivers> newTripDrivers = new ArrayList<>();
+        List<TripVehicles> newTripVehicles = new ArrayList<>();
+        Instant now = Instant.now();
+        for (DispatchPlanner.Assignment a : planned) {
+            Trips trip = tripById.get(a.getTripId());
+            Integer bookingId = trip.getBooking().getId();
+            Instant tripBusyUntil = busyUntilByTrip.get(trip.getId());
+            boolean taken = committed.hasDriver(trip.getId()) || committed.hasVehicle(trip.getId())
+                    || committed.driversOf(bookingId).contains(a.getDriverId())
+                    || committed.vehiclesOf(bookingId).contains(a.getVehicleId())
+                    || hasDriverOverlap(driverTrips.getOrDefault(a.getDriverId(), List.of()), trip, false)
+                    || vehicleTrips.getOrDefault(a.getVehicleId(), List.of()).stream()
+                        .map(TripVehicles::getTrip)
+                        .anyMatch(t -> !t.getId().equals(trip.getId())
+                                && t.getStartTime() != null && t.getStartTime().isBefore(tripBusyUntil)
+                                && trip.getStartTime().isBefore(
+                                        otherBusyUntil.computeIfAbsent(t.getId(), k -> estimatedBusyUntil(t))));
+            if (taken) {
+                log.warn("[Dispatch] Auto-dispatch dropped trip {}: driver {} / vehicle {} was taken concurrently",
+                        trip.getId(), a.getDriverId(), a.getVehicleId());
+                unassignedReasons.put(trip.getId(), "Chuyến hoặc tài xế/xe vừa được điều phối viên khác gán");
+                continue;
+            }
+
+            TripDrivers td = new TripDrivers();
+            TripDriverId id = new TripDriverId();
+            id.setTripId(trip.getId());
+            id.setDriverId(a.getDriverId());
+            td.setId(id);
+            td.setTrip(trip);
+            td.setDriver(driverById.get(a.getDriverId()));
+            td.setDriverRole("Main Driver");
+            td.setNote("Điều phối tự động");
+            newTripDrivers.add(td);
+
+            TripVehicles tv = new TripVehicles();
+            tv.setTrip(trip);
+            tv.setVehicle(vehicleById.get(a.getVehicleId()));
+            tv.setAssignedAt(now);
+            tv.setNote("Điều phối tự động");
+            newTripVehicles.add(tv);
+
+            trip.setStatus(TripStatus.ASSIGNED);
+            accepted.add(a);
+        }
+        if (accepted.isEmpty()) {
+            return accepted;
+        }
+        tripDriverRepository.saveAll(newTripDrivers);
+        tripVehicleRepository.saveAll(newTripVehicles);
+        tripRepository.saveAll(accepted.stream().map(a -> tripById.get(a.getTripId())).collect(Collectors.toList()));
+
+        // Booking chuyển ASSIGNED khi mọi chuyến đều đã có tài xế và xe
+        Set<Integer> assignedTripIds = accepted.stream()
+                .map(DispatchPlanner.Assignment::getTripId)
+                .collect(Collectors.toSet());
+        Map<Integer, Bookings> touchedBookings = new LinkedHashMap<>();
+        for (DispatchPlanner.Assignment a : accepted) {
+            Bookings booking = tripById.get(a.getTripId()).getBooking();
+            touchedBookings.putIfAbsent(booking.getId(), booking);
+        }
+        List<Bookings> updatedBookings = new ArrayList<>();
+        for (Bookings booking : touchedBookings.values()) {
+            boolean allAssigned = tripsByBooking.getOrDefault(booking.getId(), List.of()).stream()
+                    .allMatch(t -> assignedTripIds.contains(t.getId())
+                            || (committed.hasDriver(t.getId()) && committed.hasVehicle(t.getId())));
+            if (allAssigned
+                    && booking.getStatus() != BookingStatus.ASSIGNED
+                    && booking.getStatus() != BookingStatus.INPROGRESS
+                    && booking.getStatus() != BookingStatus.COMPLETED
+                    && booking.getStatus() != BookingStatus.CANCELLED) {
+                booking.setStatus(BookingStatus.ASSIGNED);
+                updatedBookings.add(booking);
+            }
+        }
+        bookingRepository.saveAll(updatedBookings);
+
+        // Chỉ mục lịch bận của chi nhánh nạp lại (thay cho cập nhật từng chuyến)
+        evictTimelineAfterCompletion(branchId);
+
+        // Mỗi tài xế nhận 1 thông báo cho cả ngày
+        Map<Integer, Long> tripsPerDriver = accepted.stream()
+                .collect(Collectors.groupingBy(DispatchPlanner.Assignment::getDriverId, LinkedHashMap::new, Collectors.counting()));
+        tripsPerDriver.forEach((driverId, count) -> {
+            try {
+                Drivers driver = driverById.get(driverId);
+                if (driver.getEmployee() != null && driver.getEmployee().getUser() != null) {
+                    webSocketNotificationService.sendUserNotification(
+                            driver.getEmployee().getUser().getId(),
+                            "Chuyến mới được gán",
+                            String.format("Bạn được gán %d chuyến ngày %s", count, date),
+                            "INFO");
+                }
+            } catch (Exception e) {
+                log.warn("[Dispatch] Failed to notify driver {} about auto-dispatch: {}", driverId, e.getMessage());
+            }
+        });
+        log.info("[Dispatch] Auto-dispatch committed {} trips for branch {} on {}", accepted.size(), branchId, date);
+        return accepted;
+    }
+
+    /**
+     * Tài xế/xe đã gán cho các chuyến của những booking liên quan (theo booking và theo chuyến)
+     */
+    private BookingAssignments loadBookingAssignments(Map<Integer, Integer> bookingOfTrip) {
+        BookingAssignments result = new BookingAssignments();
+        if (bookingOfTrip.isEmpty()) return result;
+        List<Integer> tripIds = new ArrayList<>(bookingOfTrip.keySet());
+        for (TripDrivers td : tripDriverRepository.findByTripIdIn(tripIds)) {
+            Integer tripId = td.getId().getTripId();
+            result.tripsWithDriver.add(tripId);
+            result.driversByBooking.computeIfAbsent(bookingOfTrip.get(tripId), k -> new HashSet<>())
+                    .add(td.getId().getDriverId());
+        }
+        for (TripVehicles tv : tripVehicleRepository.findByTrip_IdIn(tripIds)) {
+            Integer tripId = tv.getTrip().getId();
+            result.tripsWithVehicle.add(tripId);
+            result.vehiclesByBooking.computeIfAbsent(bookingOfTrip.get(tripId), k -> new HashSet<>())
+                    .add(tv.getVehicle().getId());
+        }
+        return result;
+    }
+
+    /**
+     * Bỏ chỉ mục lịch bận của chi nhánh ngay và sau khi giao dịch kết thúc
+     * (giao dịch khác có thể nạp lại chỉ mục trước khi phân công của giao dịch này commit)
+     */
+    private void evictTimelineAfterCompletion(Integer branchId) {
+        resourceTimelineService.evictBranch(branchId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                resourceTimelineService.evictBranch(branchId);
+            }
+        });
+    }
+
     /**
      * Validate that new vehicle belongs to same category as booking requirements
      */
@@ -1739,42 +2147,114 @@ public class DispatchServiceImpl implements DispatchService {
     }
 
     @Override
-    public List<TripListItemResponse> searchTrips(TripSearchRequest request) {
-        List<Trips> trips = tripRepository.findAll();
-        return trips.stream()
-                .filter(trip -> request == null || request.match(trip))
-                .map(this::buildTripListItem)
+    public Page<TripListItemResponse> searchTrips(TripSearchRequest request) {
+        TripSearchRequest req = request != null ? request : new TripSearchRequest();
+
+        Page<Trips> page = tripRepository.searchTrips(
+                parseTripStatus(req.getStatus()),
+                req.getBranchId(),
+                req.getStartFrom(),
+                req.getStartTo(),
+                req.getDriverId(),
+                req.getVehicleId(),
+                toKeywordPattern(req.getKeyword()),
+                toTripSearchPageable(req));
+        List<Trips> trips = page.getContent();
+        if (trips.isEmpty()) {
+            return new PageImpl<>(new ArrayList<>(), page.getPageable(), page.getTotalElements());
+        }
+
+        // Dữ liệu bổ sung cho cả trang: mỗi loại một truy vấn
+        List<Integer> tripIds = trips.stream().map(Trips::getId).collect(Collectors.toList());
+        Map<Integer, TripDrivers> driverByTrip = new HashMap<>();
+        for (TripDrivers td : tripDriverRepository.findByTripIdIn(tripIds)) {
+            driverByTrip.putIfAbsent(td.getTrip().getId(), td);
+        }
+        Map<Integer, TripVehicles> vehicleByTrip = new HashMap<>();
+        for (TripVehicles tv : tripVehicleRepository.findByTrip_IdIn(tripIds)) {
+            vehicleByTrip.putIfAbsent(tv.getTrip().getId(), tv);
+        }
+
+        // ROUND_TRIP: hậu tố tính theo thời gian của TẤT CẢ trips trong booking
+        Set<Integer> roundTripBookingIds = trips.stream()
+                .map(Trips::getBooking)
+                .filter(b -> b.getHireType() != null && "ROUND_TRIP".equals(b.getHireType().getCode()))
+                .map(Bookings::getId)
+                .collect(Collectors.toSet());
+        Map<Integer, Instant[]> bookingTimeRanges = new HashMap<>();
+        if (!roundTripBookingIds.isEmpty()) {
+            for (Object[] row : tripRepository.findTimeRangeByBookingIds(roundTripBookingIds)) {
+                bookingTimeRanges.put((Integer) row[0], new Instant[]{(Instant) row[1], (Instant) row[2]});
+            }
+        }
+
+        List<TripListItemResponse> items = trips.stream()
+                .map(trip -> buildTripListItem(trip,
+                        driverByTrip.get(trip.getId()),
+                        vehicleByTrip.get(trip.getId()),
+                        bookingTimeRanges.get(trip.getBooking().getId())))
                 .collect(Collectors.toList());
+        return new PageImpl<>(items, page.getPageable(), page.getTotalElements());
+    }
+
+    private TripStatus parseTripStatus(String status) {
+        if (status == null || status.isBlank()) {
+            return null;
+        }
+        try {
+            return TripStatus.valueOf(status.trim().toUpperCase().replace("-", "_"));
+        } catch (IllegalArgumentException e) {
+            return null; // trạng thái không hợp lệ: bỏ qua bộ lọc
+        }
+    }
+
+    private String toKeywordPattern(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return null;
+        }
+        return "%" + keyword.trim().toLowerCase() + "%";
+    }
+
+    /**
+     * Chỉ cho sắp xếp theo các cột có nghĩa, luôn thêm id để thứ tự ổn định giữa các trang
+     */
+    private Pageable toTripSearchPageable(TripSearchRequest req) {
+        String sortBy = req.getSortBy() != null && TRIP_SORTABLE_FIELDS.contains(req.getSortBy()) ? req.getSortBy() : "startTime";
+        Sort.Direction direction = "ASC".equalsIgnoreCase(req.getSortDir()) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Sort sort = Sort.by(direction, sortBy);
+        if (!"id".equals(sortBy)) {
+            sort = sort.and(Sort.by(direction, "id"));
+        }
+        // Không yêu cầu phân trang (các màn hình cũ lọc trên toàn bộ danh sách): không cắt kết quả
+        if (req.getPage() == null && req.getSize() == null) {
+            return Pageable.unpaged(sort);
+        }
+        int page = req.getPage() != null ? Math.max(req.getPage(), 0) : 0;
+        int size = req.getSize() != null ? Math.max(1, Math.min(req.getSize(), MAX_TRIP_SEARCH_PAGE_SIZE)) : 20;
+        return PageRequest.of(page, size, sort);
     }
 
     // =========================================================
     // 4) HELPER: CHỌN DRIVER / VEHICLE
     // =========================================================
 
-    private TripListItemResponse buildTripListItem(Trips trip) {
+    private TripListItemResponse buildTripListItem(Trips trip, TripDrivers tripDriver, TripVehicles tripVehicle,
+                                                   Instant[] bookingTimeRange) {
         Bookings booking = trip.getBooking();
         
         // Tính toán hireTypeName với suffix cho ROUND_TRIP
         String hireTypeName = null;
         if (booking != null && booking.getHireType() != null) {
-            // Với ROUND_TRIP, cần lấy startTime sớm nhất và endTime muộn nhất từ TẤT CẢ trips trong booking
+            // Với ROUND_TRIP, dùng startTime sớm nhất và endTime muộn nhất từ TẤT CẢ trips trong booking
             Instant startTimeForSuffix = trip.getStartTime();
             Instant endTimeForSuffix = trip.getEndTime();
             
-            if ("ROUND_TRIP".equals(booking.getHireType().getCode())) {
-                List<Trips> allBookingTrips = tripRepository.findByBooking_Id(booking.getId());
-                if (!allBookingTrips.isEmpty()) {
-                    startTimeForSuffix = allBookingTrips.stream()
-                            .map(Trips::getStartTime)
-                            .filter(java.util.Objects::nonNull)
-                            .min(Instant::compareTo)
-                            .orElse(trip.getStartTime());
-                    
-                    endTimeForSuffix = allBookingTrips.stream()
-                            .map(Trips::getEndTime)
-                            .filter(java.util.Objects::nonNull)
-                            .max(Instant::compareTo)
-                            .orElse(trip.getEndTime());
+            if ("ROUND_TRIP".equals(booking.getHireType().getCode()) && bookingTimeRange != null) {
+                if (bookingTimeRange[0] != null) {
+                    startTimeForSuffix = bookingTimeRange[0];
+                }
+                if (bookingTimeRange[1] != null) {
+                    endTimeForSuffix = bookingTimeRange[1];
                 }
             }
             
@@ -1798,16 +2278,14 @@ public class DispatchServiceImpl implements DispatchService {
                 .hireTypeName(hireTypeName)
                 .status(trip.getStatus() != null ? trip.getStatus().name() : null);
 
-        List<TripDrivers> tripDrivers = tripDriverRepository.findByTripId(trip.getId());
-        if (!tripDrivers.isEmpty()) {
-            Drivers driver = tripDrivers.get(0).getDriver();
+        if (tripDriver != null) {
+            Drivers driver = tripDriver.getDriver();
             builder.driverId(driver.getId());
             builder.driverName(extractDriverName(driver));
         }
 
-        List<TripVehicles> tripVehicles = tripVehicleRepository.findByTripId(trip.getId());
-        if (!tripVehicles.isEmpty()) {
-            Vehicles vehicle = tripVehicles.get(0).getVehicle();
+        if (tripVehicle != null) {
+            Vehicles vehicle = tripVehicle.getVehicle();
             builder.vehicleId(vehicle.getId());
             builder.vehicleLicensePlate(vehicle.getLicensePlate());
         }
@@ -1817,33 +2295,9 @@ public class DispatchServiceImpl implements DispatchService {
 
     private DispatchDashboardResponse.DriverScheduleItem buildDriverSchedule(
             Drivers driver,
-            List<Trips> tripsInDay,
-            Map<Integer, List<TripDrivers>> tripDriverMap,
-            LocalDate date
+            List<DispatchDashboardResponse.ScheduleBlock> blocks,
+            DispatchDashboardResponse.ScheduleWindow shift
     ) {
-        DispatchDashboardResponse.ScheduleWindow shift = buildShiftWindow(date);
-        List<DispatchDashboardResponse.ScheduleBlock> blocks = new ArrayList<>();
-        for (Trips trip : tripsInDay) {
-            if (trip.getStartTime() == null || trip.getEndTime() == null) {
-                continue;
-            }
-            List<TripDrivers> assigned = tripDriverMap.computeIfAbsent(
-                    trip.getId(),
-                    tripDriverRepository::findByTripId
-            );
-            boolean belongs = assigned.stream()
-                    .anyMatch(td -> td.getDriver().getId().equals(driver.getId()));
-            if (belongs) {
-                blocks.add(DispatchDashboardResponse.ScheduleBlock.builder()
-                        .start(trip.getStartTime())
-                        .end(trip.getEndTime())
-                        .type("BUSY")
-                        .ref("TRIP-" + trip.getId())
-                        .note(routeLabel(trip))
-                        .build());
-            }
-        }
-
         return DispatchDashboardResponse.DriverScheduleItem.builder()
                 .driverId(driver.getId())
                 .driverName(extractDriverName(driver))
@@ -1857,33 +2311,9 @@ public class DispatchServiceImpl implements DispatchService {
 
     private DispatchDashboardResponse.VehicleScheduleItem buildVehicleSchedule(
             Vehicles vehicle,
-            List<Trips> tripsInDay,
-            Map<Integer, List<TripVehicles>> tripVehicleMap,
-            LocalDate date
+            List<DispatchDashboardResponse.ScheduleBlock> blocks,
+            DispatchDashboardResponse.ScheduleWindow shift
     ) {
-        DispatchDashboardResponse.ScheduleWindow shift = buildShiftWindow(date);
-        List<DispatchDashboardResponse.ScheduleBlock> blocks = new ArrayList<>();
-        for (Trips trip : tripsInDay) {
-            if (trip.getStartTime() == null || trip.getEndTime() == null) {
-                continue;
-            }
-            List<TripVehicles> assigned = tripVehicleMap.computeIfAbsent(
-                    trip.getId(),
-                    tripVehicleRepository::findByTripId
-            );
-            boolean belongs = assigned.stream()
-                    .anyMatch(tv -> tv.getVehicle().getId().equals(vehicle.getId()));
-            if (belongs) {
-                blocks.add(DispatchDashboardResponse.ScheduleBlock.builder()
-                        .start(trip.getStartTime())
-                        .end(trip.getEndTime())
-                        .type("BUSY")
-                        .ref("TRIP-" + trip.getId())
-                        .note(routeLabel(trip))
-                        .build());
-            }
-        }
-
         return DispatchDashboardResponse.VehicleScheduleItem.builder()
                 .vehicleId(vehicle.getId())
                 .licensePlate(vehicle.getLicensePlate())
@@ -1903,8 +2333,10 @@ public class DispatchServiceImpl implements DispatchService {
     }
 
     private String routeLabel(Trips trip) {
-        String start = trip.getStartLocation();
-        String end = trip.getEndLocation();
+        return routeLabel(trip.getStartLocation(), trip.getEndLocation());
+    }
+
+    private static String routeLabel(String start, String end) {
         if (start == null && end == null) {
             return "";
         }
@@ -1936,14 +2368,14 @@ public class DispatchServiceImpl implements DispatchService {
                 .atZone(ZoneId.systemDefault())
                 .toLocalDate();
 
+        DriverCandidateContext context = loadDriverCandidateContext(candidates, trip, tripDate);
+        Integer maxSeats = context.getMaxSeatsRequired();
+
         List<CandidateScore<Drivers>> scored = new ArrayList<>();
 
         for (Drivers d : candidates) {
             // 1) Check nghỉ phép (APPROVED)
-            boolean dayOff = !driverDayOffRepository
-                    .findApprovedDayOffOnDate(d.getId(), DriverDayOffStatus.APPROVED, tripDate)
-                    .isEmpty();
-            if (dayOff) {
+            if (context.isOnDayOff(d.getId())) {
                 log.debug("Driver {} is on day-off, skip", d.getId());
                 continue;
             }
@@ -1955,7 +2387,6 @@ public class DispatchServiceImpl implements DispatchService {
             }
             
             // 3) Check hạng bằng lái phù hợp với loại xe
-            Integer maxSeats = getMaxSeatsFromBooking(booking);
             String licenseClass = d.getLicenseClass() != null ? d.getLicenseClass() : "";
             if (!isLicenseClassValidForSeats(licenseClass, maxSeats)) {
                 log.debug("Driver {} license class {} not valid for {} seats, skip", d.getId(), licenseClass, maxSeats);
@@ -1964,57 +2395,15 @@ public class DispatchServiceImpl implements DispatchService {
 
             // 4) Check trùng giờ (trip SCHEDULED/ONGOING)
             // Lưu ý: Exclude các trips trong cùng booking (vì 1 tài xế có thể lái nhiều xe trong cùng booking)
-            List<TripDrivers> driverTrips = tripDriverRepository.findAllByDriverId(d.getId());
-            boolean overlap = driverTrips.stream().anyMatch(td -> {
-                Trips t = td.getTrip();
-                if (t.getId().equals(trip.getId())) return false;
-                // Exclude trips trong cùng booking (cho phép 1 tài xế lái nhiều xe trong cùng booking)
-                if (t.getBooking() != null && trip.getBooking() != null 
-                        && t.getBooking().getId().equals(trip.getBooking().getId())) {
-                    return false; // Không tính là overlap nếu cùng booking
-                }
-                if (t.getStatus() == TripStatus.CANCELLED || t.getStatus() == TripStatus.COMPLETED) return false;
-                Instant s1 = t.getStartTime();
-                Instant e1 = t.getEndTime();
-                Instant s2 = trip.getStartTime();
-                Instant e2 = trip.getEndTime();
-                if (s1 == null || e1 == null || s2 == null || e2 == null) return false;
-                return s1.isBefore(e2) && s2.isBefore(e1);
-            });
-            if (overlap) {
+            List<TripDrivers> driverTrips = context.assignmentsOf(d.getId());
+            if (hasDriverOverlap(driverTrips, trip, true)) {
                 log.debug("Driver {} has overlap trips (excluding same booking), skip", d.getId());
                 continue;
             }
 
-            // 5) Fairness scoring: số chuyến trong ngày
-            long tripsToday = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return dDate.equals(tripDate);
-            }).count();
-            
-            // 6) Fairness: số chuyến trong tuần
-            LocalDate weekStart = tripDate.minusDays(tripDate.getDayOfWeek().getValue() - 1);
-            LocalDate weekEnd = weekStart.plusDays(6);
-            long tripsThisWeek = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return !dDate.isBefore(weekStart) && !dDate.isAfter(weekEnd);
-            }).count();
-            
-            // 7) Fairness: mức độ được gán gần đây (recent assignment)
-            long recentAssignments = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return !dDate.isBefore(tripDate.minusDays(3)); // 3 ngày gần đây
-            }).count();
-            
-            // Calculate fairness score (lower is better)
+            // 5-7) Fairness scoring (lower is better)
             // Trọng số: ngày (40%), tuần (30%), gần đây (30%)
-            int fairnessScore = (int) (tripsToday * 40 + tripsThisWeek * 30 + recentAssignments * 30);
+            int fairnessScore = DriverWorkload.of(driverTrips, tripDate).fairnessScore();
 
             scored.add(new CandidateScore<>(d, fairnessScore));
         }
@@ -2048,14 +2437,14 @@ public class DispatchServiceImpl implements DispatchService {
                 .atZone(ZoneId.systemDefault())
                 .toLocalDate();
 
+        DriverCandidateContext context = loadDriverCandidateContext(candidates, trip, tripDate);
+        Integer maxSeats = context.getMaxSeatsRequired();
+
         List<CandidateScore<Drivers>> scored = new ArrayList<>();
 
         for (Drivers d : candidates) {
             // Check nghỉ phép
-            boolean dayOff = !driverDayOffRepository
-                    .findApprovedDayOffOnDate(d.getId(), DriverDayOffStatus.APPROVED, tripDate)
-                    .isEmpty();
-            if (dayOff) continue;
+            if (context.isOnDayOff(d.getId())) continue;
 
             // Check hạn bằng lái
             if (d.getLicenseExpiry() != null && d.getLicenseExpiry().isBefore(tripDate)) {
@@ -2063,7 +2452,6 @@ public class DispatchServiceImpl implements DispatchService {
             }
             
             // Check hạng bằng lái phù hợp với loại xe
-            Integer maxSeats = getMaxSeatsFromBooking(booking);
             String licenseClass = d.getLicenseClass() != null ? d.getLicenseClass() : "";
             if (!isLicenseClassValidForSeats(licenseClass, maxSeats)) {
                 log.debug("Driver {} license class {} not valid for {} seats, skip", d.getId(), licenseClass, maxSeats);
@@ -2072,55 +2460,12 @@ public class DispatchServiceImpl implements DispatchService {
 
             // Check trùng giờ
             // Lưu ý: Exclude các trips trong cùng booking (vì 1 tài xế có thể lái nhiều xe trong cùng booking)
-            List<TripDrivers> driverTrips = tripDriverRepository.findAllByDriverId(d.getId());
-            boolean overlap = driverTrips.stream().anyMatch(td -> {
-                Trips t = td.getTrip();
-                if (t.getId().equals(trip.getId())) return false;
-                // Exclude trips trong cùng booking (cho phép 1 tài xế lái nhiều xe trong cùng booking)
-                if (t.getBooking() != null && trip.getBooking() != null 
-                        && t.getBooking().getId().equals(trip.getBooking().getId())) {
-                    return false; // Không tính là overlap nếu cùng booking
-                }
-                if (t.getStatus() == TripStatus.CANCELLED || t.getStatus() == TripStatus.COMPLETED) return false;
-                Instant s1 = t.getStartTime();
-                Instant e1 = t.getEndTime();
-                Instant s2 = trip.getStartTime();
-                Instant e2 = trip.getEndTime();
-                if (s1 == null || e1 == null || s2 == null || e2 == null) return false;
-                return s1.isBefore(e2) && s2.isBefore(e1);
-            });
-            if (overlap) continue;
+            List<TripDrivers> driverTrips = context.assignmentsOf(d.getId());
+            if (hasDriverOverlap(driverTrips, trip, true)) continue;
 
             // Tính score: fairness + priorityLevel (ưu tiên priorityLevel cao)
-            // Fairness: số chuyến trong ngày
-            long tripsToday = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return dDate.equals(tripDate);
-            }).count();
-            
-            // Fairness: số chuyến trong tuần
-            LocalDate weekStart = tripDate.minusDays(tripDate.getDayOfWeek().getValue() - 1);
-            LocalDate weekEnd = weekStart.plusDays(6);
-            long tripsThisWeek = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return !dDate.isBefore(weekStart) && !dDate.isAfter(weekEnd);
-            }).count();
-            
-            // Fairness: số chuyến 3 ngày gần đây
-            long recentAssignments = driverTrips.stream().filter(td -> {
-                Trips t = td.getTrip();
-                if (t.getStartTime() == null) return false;
-                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
-                return !dDate.isBefore(tripDate.minusDays(3)); // 3 ngày gần đây
-            }).count();
-            
-            // Calculate fairness score (lower is better)
             // Trọng số: ngày (40%), tuần (30%), gần đây (30%)
-            int fairnessScore = (int) (tripsToday * 40 + tripsThisWeek * 30 + recentAssignments * 30);
+            int fairnessScore = DriverWorkload.of(driverTrips, tripDate).fairnessScore();
             
             // PriorityLevel cao hơn = tốt hơn, nên trừ đi để score thấp hơn
             int priorityScore = d.getPriorityLevel() != null ? (11 - d.getPriorityLevel()) : 5;
@@ -2220,26 +2565,8 @@ public class DispatchServiceImpl implements DispatchService {
             );
             final Instant targetBusyUntil = targetBusyUntilTmp != null ? targetBusyUntilTmp : targetStart.plusSeconds(3600);
 
-            List<TripVehicles> vehicleTrips = tripVehicleRepository.findAllByVehicleId(v.getId());
-            boolean busy = vehicleTrips.stream().anyMatch(tv -> {
-                Trips other = tv.getTrip();
-                if (other == null || other.getBooking() == null) return false;
-                if (other.getStatus() == TripStatus.CANCELLED || other.getStatus() == TripStatus.COMPLETED) return false;
-                if (other.getId().equals(trip.getId())) return false;
-                if (other.getBooking().getId().equals(booking.getId())) return false;
-                if (other.getStartTime() == null) return true;
-
-                Instant otherBusyUntil = tripOccupancyService.computeBusyUntil(
-                        other.getBooking().getHireType() != null ? other.getBooking().getHireType().getCode() : null,
-                        other.getStartTime(),
-                        other.getEndTime(),
-                        other.getDistance() != null ? other.getDistance().doubleValue() : null,
-                        other.getStartLocation(),
-                        other.getEndLocation()
-                );
-                if (otherBusyUntil == null) return true;
-                return other.getStartTime().isBefore(targetBusyUntil) && targetStart.isBefore(otherBusyUntil);
-            });
+            boolean busy = resourceTimelineService.isVehicleBusy(
+                    branchId, v.getId(), targetStart, targetBusyUntil, Collections.singleton(trip.getId()), booking.getId());
             if (busy) continue;
 
             if (provisionalAssignments != null) {
@@ -2270,6 +2597,206 @@ public class DispatchServiceImpl implements DispatchService {
     }
 
 
+    /**
+     * Nạp dữ liệu cần để chấm điểm toàn bộ tài xế cho 1 chuyến bằng một số truy vấn cố định
+     * (phân công trong cửa sổ tính điểm, nghỉ phép, tài xế cùng booking, lịch sử với khách hàng),
+     * thay cho 4-5 truy vấn / tài xế.
+     */
+    private DriverCandidateContext loadDriverCandidateContext(List<Drivers> drivers, Trips trip, LocalDate tripDate) {
+        Bookings booking = trip.getBooking();
+        Integer maxSeatsRequired = getMaxSeatsFromBooking(booking);
+        List<Integer> driverIds = drivers.stream()
+                .map(Drivers::getId)
+                .collect(Collectors.toList());
+        if (driverIds.isEmpty()) {
+            return new DriverCandidateContext(Map.of(), Set.of(), Set.of(), Set.of(), maxSeatsRequired);
+        }
+
+        // Cửa sổ tính điểm công bằng: từ đầu tuần hoặc 3 ngày trước (lấy mốc sớm hơn) tới tương lai
+        LocalDate windowStartDate = DriverWorkload.windowStart(tripDate);
+        Instant windowStart = windowStartDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        // Cửa sổ kiểm tra trùng giờ: các chuyến bắt đầu trước windowStart nhưng vẫn còn chạy
+        Instant overlapStart = trip.getStartTime() != null ? trip.getStartTime() : windowStart;
+        Instant overlapEnd = trip.getEndTime() != null ? trip.getEndTime() : overlapStart;
+
+        Map<Integer, List<TripDrivers>> assignmentsByDriver = tripDriverRepository
+                .findByDriverIdsInWindow(driverIds, windowStart, overlapStart, overlapEnd)
+                .stream()
+                .collect(Collectors.groupingBy(td -> td.getId().getDriverId()));
+
+        Set<Integer> dayOffDriverIds = new java.util.HashSet<>(driverDayOffRepository
+                .findDriverIdsWithDayOffOnDate(driverIds, DriverDayOffStatus.APPROVED, tripDate));
+
+        Set<Integer> sameBookingDriverIds = new java.util.HashSet<>();
+        Set<Integer> customerHistoryDriverIds = new java.util.HashSet<>();
+        if (booking != null) {
+            for (TripDrivers td : tripDriverRepository.findByBookingId(booking.getId())) {
+                if (!td.getTrip().getId().equals(trip.getId())) {
+                    sameBookingDriverIds.add(td.getId().getDriverId());
+                }
+            }
+            if (booking.getCustomer() != null && booking.getCustomer().getId() != null) {
+                customerHistoryDriverIds.addAll(tripDriverRepository
+                        .findDriverIdsWithCompletedTripsForCustomer(driverIds, booking.getCustomer().getId()));
+            }
+        }
+
+        return new DriverCandidateContext(assignmentsByDriver, dayOffDriverIds, sameBookingDriverIds,
+                customerHistoryDriverIds, maxSeatsRequired);
+    }
+
+    /**
+     * Kiểm tra tài xế có chuyến (chưa hủy/chưa hoàn thành) trùng giờ với trip không
+     * @param ignoreSameBooking true nếu cho phép trùng giờ với các chuyến trong cùng booking
+     */
+    private boolean hasDriverOverlap(List<TripDrivers> driverTrips, Trips trip, boolean ignoreSameBooking) {
+        return driverTrips.stream().anyMatch(td -> {
+            Trips t = td.getTrip();
+            if (t.getId().equals(trip.getId())) return false;
+            if (ignoreSameBooking && t.getBooking() != null && trip.getBooking() != null
+                    && t.getBooking().getId().equals(trip.getBooking().getId())) {
+                return false; // Không tính là overlap nếu cùng booking
+            }
+            if (t.getStatus() == TripStatus.CANCELLED || t.getStatus() == TripStatus.COMPLETED) return false;
+            Instant s1 = t.getStartTime();
+            Instant e1 = t.getEndTime();
+            Instant s2 = trip.getStartTime();
+            Instant e2 = trip.getEndTime();
+            if (s1 == null || e1 == null || s2 == null || e2 == null) return false;
+            return s1.isBefore(e2) && s2.isBefore(e1);
+        });
+    }
+
+    // Một chuyến trên bảng điều phối, gom từ các dòng của findDashboardRows
+    private static class DashboardTrip {
+        private final Integer id;
+        private final Instant startTime;
+        private final Instant endTime;
+        private final TripStatus status;
+        private final String startLocation;
+        private final String endLocation;
+        // Set: các dòng là tích (tài xế x xe) nên cùng một id có thể lặp lại
+        private final Set<Integer> driverIds = new LinkedHashSet<>();
+        private final Set<Integer> vehicleIds = new LinkedHashSet<>();
+
+        private DashboardTrip(Integer id, Instant startTime, Instant endTime, TripStatus status,
+                              String startLocation, String endLocation) {
+            this.id = id;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.status = status;
+            this.startLocation = startLocation;
+            this.endLocation = endLocation;
+        }
+
+        private DispatchDashboardResponse.ScheduleBlock toBlock() {
+            return DispatchDashboardResponse.ScheduleBlock.builder()
+                    .start(startTime)
+                    .end(endTime)
+                    .type("BUSY")
+                    .ref("TRIP-" + id)
+                    .note(routeLabel(startLocation, endLocation))
+                    .build();
+        }
+    }
+
+    /**
+     * Dữ liệu đã nạp sẵn để chấm điểm tài xế theo lô
+     */
+    private static class DriverCandidateContext {
+        private final Map<Integer, List<TripDrivers>> assignmentsByDriver;
+        private final Set<Integer> dayOffDriverIds;
+        private final Set<Integer> sameBookingDriverIds;
+        private final Set<Integer> customerHistoryDriverIds;
+        private final Integer maxSeatsRequired;
+
+        DriverCandidateContext(Map<Integer, List<TripDrivers>> assignmentsByDriver,
+                               Set<Integer> dayOffDriverIds,
+                               Set<Integer> sameBookingDriverIds,
+                               Set<Integer> customerHistoryDriverIds,
+                               Integer maxSeatsRequired) {
+            this.assignmentsByDriver = assignmentsByDriver;
+            this.dayOffDriverIds = dayOffDriverIds;
+            this.sameBookingDriverIds = sameBookingDriverIds;
+            this.customerHistoryDriverIds = customerHistoryDriverIds;
+            this.maxSeatsRequired = maxSeatsRequired;
+        }
+
+        List<TripDrivers> assignmentsOf(Integer driverId) {
+            return assignmentsByDriver.getOrDefault(driverId, List.of());
+        }
+
+        boolean isOnDayOff(Integer driverId) { return dayOffDriverIds.contains(driverId); }
+        boolean isAssignedToOtherTripInBooking(Integer driverId) { return sameBookingDriverIds.contains(driverId); }
+        boolean hasHistoryWithCustomer(Integer driverId) { return customerHistoryDriverIds.contains(driverId); }
+        Integer getMaxSeatsRequired() { return maxSeatsRequired; }
+    }
+
+    /**
+     * Tài xế/xe đã gán cho các chuyến của những booking đang điều phối tự động
+     */
+    private static class BookingAssignments {
+        private final Map<Integer, Set<Integer>> driversByBooking = new HashMap<>();
+        private final Map<Integer, Set<Integer>> vehiclesByBooking = new HashMap<>();
+        private final Set<Integer> tripsWithDriver = new HashSet<>();
+        private final Set<Integer> tripsWithVehicle = new HashSet<>();
+
+        Set<Integer> driversOf(Integer bookingId) { return driversByBooking.getOrDefault(bookingId, Set.of()); }
+        Set<Integer> vehiclesOf(Integer bookingId) { return vehiclesByBooking.getOrDefault(bookingId, Set.of()); }
+        boolean hasDriver(Integer tripId) { return tripsWithDriver.contains(tripId); }
+        boolean hasVehicle(Integer tripId) { return tripsWithVehicle.contains(tripId); }
+    }
+
+    /**
+     * Khối lượng công việc của tài xế quanh ngày chạy, dùng cho điểm công bằng
+     */
+    private static class DriverWorkload {
+        private final long tripsToday;
+        private final long tripsThisWeek;
+        private final long recentAssignments;
+
+        private DriverWorkload(long tripsToday, long tripsThisWeek, long recentAssignments) {
+            this.tripsToday = tripsToday;
+            this.tripsThisWeek = tripsThisWeek;
+            this.recentAssignments = recentAssignments;
+        }
+
+        /**
+         * Mốc sớm nhất ảnh hưởng tới điểm: đầu tuần (thứ 2) hoặc 3 ngày trước ngày chạy
+         */
+        static LocalDate windowStart(LocalDate tripDate) {
+            LocalDate weekStart = tripDate.minusDays(tripDate.getDayOfWeek().getValue() - 1);
+            LocalDate recentStart = tripDate.minusDays(3);
+            return weekStart.isBefore(recentStart) ? weekStart : recentStart;
+        }
+
+        static DriverWorkload of(List<TripDrivers> driverTrips, LocalDate tripDate) {
+            LocalDate weekStart = tripDate.minusDays(tripDate.getDayOfWeek().getValue() - 1);
+            LocalDate weekEnd = weekStart.plusDays(6);
+            LocalDate recentStart = tripDate.minusDays(3); // 3 ngày gần đây
+            long today = 0;
+            long week = 0;
+            long recent = 0;
+            for (TripDrivers td : driverTrips) {
+                Trips t = td.getTrip();
+                if (t.getStartTime() == null) continue;
+                LocalDate dDate = t.getStartTime().atZone(ZoneId.systemDefault()).toLocalDate();
+                if (dDate.equals(tripDate)) today++;
+                if (!dDate.isBefore(weekStart) && !dDate.isAfter(weekEnd)) week++;
+                if (!dDate.isBefore(recentStart)) recent++;
+            }
+            return new DriverWorkload(today, week, recent);
+        }
+
+        long getTripsToday() { return tripsToday; }
+        long getTripsThisWeek() { return tripsThisWeek; }
+        long getRecentAssignments() { return recentAssignments; }
+
+        int fairnessScore() {
+            return (int) (tripsToday * 40 + tripsThisWeek * 30 + recentAssignments * 30);
+        }
+    }
+
     // Helper generic
     private static class CandidateScore<T> {
         private final T candidate;
@@ -2424,6 +2951,23 @@ public class DispatchServiceImpl implements DispatchService {
         return busy != null ? busy : t.getStartTime().plusSeconds(3600);
     }
 
+    /**
+     * Như busyUntil nhưng chỉ dùng distance trong cache/ước lượng (không gọi API), dùng quanh đoạn giữ khóa
+     */
+    private Instant estimatedBusyUntil(Trips t) {
+        if (t == null || t.getStartTime() == null) return null;
+        String hireTypeCode = t.getBooking() != null && t.getBooking().getHireType() != null ? t.getBooking().getHireType().getCode() : null;
+        Instant busy = tripOccupancyService.estimateBusyUntil(
+                hireTypeCode,
+                t.getStartTime(),
+                t.getEndTime(),
+                t.getDistance() != null ? t.getDistance().doubleValue() : null,
+                t.getStartLocation(),
+                t.getEndLocation()
+        );
+        return busy != null ? busy : t.getStartTime().plusSeconds(3600);
+    }
+
     private boolean hasTimeOverlap(Trips t1, Trips t2) {
         if (t1 == null || t2 == null) return true;
         Instant s1 = t1.getStartTime();
@@ -0,0 +1,152 @@
+package org.example.ptcmssbackend.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.service.DistanceProvider;
+import org.example.ptcmssbackend.service.DistanceService;
+import org.example.ptcmssbackend.service.GraphHopperService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chuỗi DistanceProvider theo @Order: cache -> GraphHopper -> ước tính haversine.
+ *
+ * Bước gọi mạng chạy trên pool riêng và chỉ được chờ tối đa routing.remote-budget-ms
+ * (và không vượt quá tổng routing.max-wait-ms của cả chuỗi). Quá hạn thì chuyển sang bước kế tiếp,
+ * lời gọi vẫn chạy nền và ghi kết quả vào cache cho lần sau.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DistanceServiceImpl implements DistanceService {
+
+    private static final int REMOTE_QUEUE_SIZE = 100;
+
+    private final List<DistanceProvider> providers;
+    private final GraphHopperService graphHopperService;
+
+    @Value("${routing.max-wait-ms:1500}")
+    private long maxWaitMs;
+
+    @Value("${routing.remote-budget-ms:1200}")
+    private long remoteBudgetMs;
+
+    @Value("${routing.remote-threads:8}")
+    private int remoteThreads;
+
+    private ThreadPoolExecutor remoteExecutor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        remoteExecutor = new ThreadPoolExecutor(remoteThreads, remoteThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REMOTE_QUEUE_SIZE), r -> {
+                    Thread t = new Thread(r, "distance-remote-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        remoteExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (remoteExecutor != null) {
+            remoteExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public DistanceResult resolve(String from, String to) {
+        if (from == null || from.isBlank() || to == null || to.isBlank()) {
+            return null;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        for (DistanceProvider provider : providers) {
+            DistanceResult result;
+            if (provider.remote()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) continue;
+                result = resolveRemote(provider, from, to, Math.min(remoteBudgetMs, remaining));
+            } else {
+                result = resolveLocal(provider, from, to);
+            }
+            if (result != null && result.getDistanceKm() != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public DistanceResult resolveOffline(String from, String to) {
+        if (from == null || from.isBlank() || to == null || to.isBlank()) {
+            return null;
+        }
+        for (DistanceProvider provider : providers) {
+            if (provider.remote()) continue;
+            DistanceResult result = resolveLocal(provider, from, to);
+            if (result != null && result.getDistanceKm() != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void prefetchMatrix(List<String> origins, List<String> destinations) {
+        if (origins == null || origins.isEmpty()) return;
+        // Không chờ kết quả: người gọi có thể đang giữ khóa dòng, ma trận xong thì các lần resolve sau lấy từ cache
+        try {
+            CompletableFuture.runAsync(() -> graphHopperService.distanceMatrix(origins, destinations), remoteExecutor)
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            log.warn("[Distance] Matrix prefetch failed: {}", error.getMessage());
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            log.debug("[Distance] Remote pool busy, skip matrix prefetch");
+        }
+    }
+
+    private DistanceResult resolveRemote(DistanceProvider provider, String from, String to, long budgetMs) {
+        CompletableFuture<DistanceResult> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> provider.resolve(from, to), remoteExecutor);
+        } catch (RejectedExecutionException e) {
+            log.debug("[Distance] Remote pool busy, skip {}", provider.getClass().getSimpleName());
+            return null;
+        }
+        try {
+            return future.get(budgetMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("[Distance] {} exceeded {} ms, falling back", provider.getClass().getSimpleName(), budgetMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("[Distance] {} failed: {}", provider.getClass().getSimpleName(), e.getCause().getMessage());
+        }
+        return null;
+    }
+
+    private DistanceResult resolveLocal(DistanceProvider provider, String from, String to) {
+        try {
+            return provider.resolve(from, to);
+        } catch (Exception e) {
+            log.warn("[Distance] {} failed: {}", provider.getClass().getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+}
@@ -26,9 +26,12 @@ import org.example.ptcmssbackend.enums.DriverDayOffStatus;
 import org.example.ptcmssbackend.enums.DriverStatus;
 import org.example.ptcmssbackend.enums.TripStatus;
 import org.example.ptcmssbackend.repository.*;
-import org.example.ptcmssbackend.service.ApprovalService;
+import org.example.ptcmssbackend.event.ApprovalRequestedEvent;
 import org.example.ptcmssbackend.service.DriverService;
-import org.example.ptcmssbackend.service.WebSocketNotificationService;
+import org.example.ptcmssbackend.service.InvoiceLedgerService;
+import org.example.ptcmssbackend.service.NotificationDispatcher;
+import org.example.ptcmssbackend.service.ResourceTimelineService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -52,11 +55,12 @@ public class DriverServiceImpl implements DriverService {
     private final BranchesRepository branchRepository;
     private final EmployeeRepository employeeRepository;
     private final BookingRepository bookingRepository;
-    private final ApprovalService approvalService;
+    private final ApplicationEventPublisher eventPublisher;
     private final DriverRatingsRepository driverRatingsRepository;
     private final org.example.ptcmssbackend.service.GraphHopperService graphHopperService;
-    private final org.example.ptcmssbackend.repository.InvoiceRepository invoiceRepository;
-    private final WebSocketNotificationService webSocketNotificationService;
+    private final InvoiceLedgerService invoiceLedgerService;
+    private final NotificationDispatcher notificationDispatcher;
+    private final ResourceTimelineService resourceTimelineService;
 
     @Override
     @Transactional(readOnly = true)
@@ -146,8 +150,8 @@ public class DriverServiceImpl implements DriverService {
                     java.math.BigDecimal remainingAmount = totalCost;
                     
                     if (booking != null) {
-                        // Tính paidAmount từ payment_history đã CONFIRMED (giống BookingService)
-                        paidAmount = invoiceRepository.calculateConfirmedPaidAmountByBookingId(booking.getId());
+                        // paidAmount (payment đã CONFIRMED) đọc từ sổ cái của booking
+                        paidAmount = invoiceLedgerService.getBookingConfirmedPaid(booking.getId());
                         if (paidAmount == null) paidAmount = java.math.BigDecimal.ZERO;
                         remainingAmount = totalCost.subtract(paidAmount);
                         if (remainingAmount.compareTo(java.math.BigDecimal.ZERO) < 0) {
@@ -378,14 +382,15 @@ public class DriverServiceImpl implements DriverService {
             throw new RuntimeException("Không thể tạo yêu cầu phê duyệt vì thiếu thông tin tài xế/chi nhánh");
         }
 
-        approvalService.createApprovalRequest(
+        // ApprovalHistory được ghi bởi listener ngay trước khi giao dịch này commit
+        eventPublisher.publishEvent(new ApprovalRequestedEvent(
                 ApprovalType.DRIVER_DAY_OFF,
                 saved.getId(),
                 user,
                 request.getReason(),
                 branch
-        );
-        log.info("[DriverDayOff] Created approval request for day off {}", saved.getId());
+        ));
+        log.info("[DriverDayOff] Requested approval for day off {}", saved.getId());
         
         return new DriverDayOffResponse(saved);
     }
@@ -458,6 +463,7 @@ public class DriverServiceImpl implements DriverService {
             trip.setStartTime(Instant.now());
         }
         tripRepository.save(trip);
+        resourceTimelineService.onTripChanged(tripId);
         
         // Cập nhật booking status thành INPROGRESS khi tài xế bắt đầu chuyến
         if (trip.getBooking() != null) {
@@ -500,6 +506,7 @@ public class DriverServiceImpl implements DriverService {
                 trip.setEndTime(Instant.now());
             }
             tripRepository.save(trip);
+            resourceTimelineService.onTripChanged(tripId);
             log.info("[Trip] Trip {} completed successfully", tripId);
             return tripId;
         } catch (Exception e) {
@@ -536,39 +543,19 @@ public class DriverServiceImpl implements DriverService {
             String msg = "Tài xế " + driver.getId() + " báo: " + request.getDescription();
 
             if (branchId != null) {
-                var coordinators = employeeRepository.findByRoleNameAndBranchId("Coordinator", branchId);
-                var managers = employeeRepository.findByRoleNameAndBranchId("Manager", branchId);
-
-                java.util.Set<Integer> notifiedUserIds = new java.util.HashSet<>();
-
-                if (coordinators != null) {
-                    coordinators.stream()
-                            .filter(e -> e.getUser() != null)
-                            .forEach(e -> {
-                                Integer uid = e.getUser().getId();
-                                if (notifiedUserIds.add(uid)) {
-                                    webSocketNotificationService.sendUserNotification(uid, title, msg, "WARN");
-                                }
-                            });
-                }
-
-                if (managers != null) {
-                    managers.stream()
-                            .filter(e -> e.getUser() != null)
-                            .forEach(e -> {
-                                Integer uid = e.getUser().getId();
-                                if (notifiedUserIds.add(uid)) {
-                                    webSocketNotificationService.sendUserNotification(uid, title, msg, "WARN");
-                                }
-                            });
-                }
-
-                if (notifiedUserIds.isEmpty()) {
+                // Người nhận lấy từ cache, chỉ đẩy WebSocket sau commit để không giữ transaction
+                java.util.Set<Integer> notifiedUserIds = new java.util.LinkedHashSet<>();
+                notifiedUserIds.addAll(notificationDispatcher.getRecipientUserIds("Coordinator", branchId));
+                notifiedUserIds.addAll(notificationDispatcher.getRecipientUserIds("Manager", branchId));
+
+                if (!notifiedUserIds.isEmpty()) {
+                    notificationDispatcher.pushAfterCommit(notifiedUserIds, title, msg, "WARN");
+                } else {
                     // fallback: gửi global nếu không tìm thấy điều phối/manager
-                    webSocketNotificationService.sendGlobalNotification(title, msg, "WARN");
+                    notificationDispatcher.broadcastAfterCommit(branchId, title, msg, "WARN");
                 }
             } else {
-                webSocketNotificationService.sendGlobalNotification(title, msg, "WARN");
+                notificationDispatcher.broadcastAfterCommit(null, title, msg, "WARN");
             }
         } catch (Exception e) {
             log.warn("[TripIncident] Failed to send websocket notification for trip {}: {}", request.getTripId(), e.getMessage());
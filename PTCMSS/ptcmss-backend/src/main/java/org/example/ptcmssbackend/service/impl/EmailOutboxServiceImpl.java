@@ -0,0 +1,305 @@
+package org.example.ptcmssbackend.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.entity.EmailOutbox;
+import org.example.ptcmssbackend.enums.EmailOutboxStatus;
+import org.example.ptcmssbackend.repository.EmailOutboxRepository;
+import org.example.ptcmssbackend.service.EmailOutboxService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.UnsupportedEncodingException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gửi email từ bảng email_outbox.
+ *
+ * Mỗi lượt poll nhận tối đa (số worker rảnh × batch-size) email đến hạn bằng UPDATE có điều kiện,
+ * chia thành lô và giao cho pool cố định. Mỗi lô gửi qua 1 kết nối SMTP (JavaMailSender.send(MimeMessage...)),
+ * nên không mở lại kết nối cho từng email. Email lỗi được thử lại với backoff lũy thừa, hết số lần thì FAILED.
+ *
+ * Số liệu: email.outbox.sent / retried / failed (counter), email.outbox.batch (timer), email.outbox.pending (gauge)
+ * qua /actuator/metrics.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmailOutboxServiceImpl implements EmailOutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.mail.username}")
+    private String fromEmail;
+
+    @Value("${email.outbox.threads:2}")
+    private int threads;
+
+    @Value("${email.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${email.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.backoff-base-seconds:30}")
+    private long backoffBaseSeconds;
+
+    @Value("${email.outbox.backoff-max-seconds:3600}")
+    private long backoffMaxSeconds;
+
+    @Value("${email.outbox.claim-timeout-minutes:10}")
+    private long claimTimeoutMinutes;
+
+    @Value("${email.outbox.retention-days:7}")
+    private long retentionDays;
+
+    private ThreadPoolExecutor executor;
+    private Counter sentCounter;
+    private Counter retriedCounter;
+    private Counter failedCounter;
+    private Timer batchTimer;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        // Hàng đợi của pool chỉ bằng số worker: phần còn lại nằm trong DB, không giữ trong bộ nhớ
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads), r -> {
+                    Thread t = new Thread(r, "email-outbox-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        sentCounter = Counter.builder("email.outbox.sent").description("Email gửi thành công").register(meterRegistry);
+        retriedCounter = Counter.builder("email.outbox.retried").description("Email lỗi, chờ gửi lại").register(meterRegistry);
+        failedCounter = Counter.builder("email.outbox.failed").description("Email hết số lần thử").register(meterRegistry);
+        batchTimer = Timer.builder("email.outbox.batch").description("Thời gian gửi 1 lô qua SMTP").register(meterRegistry);
+        Gauge.builder("email.outbox.pending", outboxRepository, r -> r.countByStatus(EmailOutboxStatus.PENDING))
+                .description("Email đang chờ gửi")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void enqueue(String toEmail, String fromName, String subject, String htmlBody) {
+        if (toEmail == null || toEmail.isBlank()) {
+            throw new RuntimeException("Email người nhận không được để trống");
+        }
+        Instant now = Instant.now();
+        EmailOutbox email = new EmailOutbox();
+        email.setToEmail(toEmail.trim());
+        email.setFromName(fromName);
+        email.setSubject(subject);
+        email.setHtmlBody(htmlBody);
+        email.setStatus(EmailOutboxStatus.PENDING);
+        email.setAttempts(0);
+        email.setNextAttemptAt(now);
+        email.setCreatedAt(now);
+        outboxRepository.save(email);
+        log.debug("[EmailOutbox] Queued email '{}' to {}", subject, toEmail);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:2000}")
+    public int dispatchDue() {
+        int freeWorkers = threads - executor.getActiveCount() - executor.getQueue().size();
+        if (freeWorkers <= 0) {
+            return 0;
+        }
+        Instant now = Instant.now();
+        List<Integer> dueIds = outboxRepository.findDueIds(now, PageRequest.of(0, freeWorkers * batchSize));
+        if (dueIds.isEmpty()) {
+            return 0;
+        }
+        String token = UUID.randomUUID().toString();
+        if (outboxRepository.claim(dueIds, token, now) == 0) {
+            return 0;
+        }
+        List<EmailOutbox> claimed = outboxRepository.findByClaimTokenOrderByIdAsc(token);
+        for (int from = 0; from < claimed.size(); from += batchSize) {
+            List<EmailOutbox> batch = new ArrayList<>(claimed.subList(from, Math.min(from + batchSize, claimed.size())));
+            try {
+                executor.execute(() -> sendBatch(batch));
+            } catch (RejectedExecutionException e) {
+                // Pool đầy: trả lại để lượt poll sau nhận
+                batch.forEach(this::release);
+                outboxRepository.saveAll(batch);
+            }
+        }
+        return claimed.size();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${email.outbox.maintenance-interval-ms:60000}")
+    public void maintainOutbox() {
+        Instant now = Instant.now();
+        int released = outboxRepository.releaseStaleClaims(now.minus(Duration.ofMinutes(claimTimeoutMinutes)));
+        if (released > 0) {
+            log.warn("[EmailOutbox] Released {} emails claimed for more than {} minutes", released, claimTimeoutMinutes);
+        }
+        int deleted = outboxRepository.deleteFinishedBefore(
+                List.of(EmailOutboxStatus.SENT, EmailOutboxStatus.FAILED), now.minus(Duration.ofDays(retentionDays)));
+        if (deleted > 0) {
+            log.info("[EmailOutbox] Purged {} finished emails older than {} days", deleted, retentionDays);
+        }
+    }
+
+    /**
+     * Gửi 1 lô trên 1 kết nối SMTP rồi ghi kết quả từng email
+     */
+    void sendBatch(List<EmailOutbox> batch) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Map<MimeMessage, EmailOutbox> messages = new IdentityHashMap<>();
+            List<MimeMessage> ordered = new ArrayList<>();
+            for (EmailOutbox email : batch) {
+                try {
+                    MimeMessage message = toMimeMessage(email);
+                    messages.put(message, email);
+                    ordered.add(message);
+                } catch (Exception e) {
+                    markAttemptFailed(email, e);
+                }
+            }
+
+            Map<Object, Exception> failures = Map.of();
+            if (!ordered.isEmpty()) {
+                try {
+                    mailSender.send(ordered.toArray(new MimeMessage[0]));
+                } catch (MailSendException e) {
+                    failures = e.getFailedMessages();
+                    if (failures.isEmpty()) {
+                        failures = allFailed(ordered, e);
+                    }
+                } catch (MailException e) {
+                    // Lỗi xác thực / kết nối: cả lô chưa gửi được
+                    failures = allFailed(ordered, e);
+                }
+            }
+
+            for (MimeMessage message : ordered) {
+                EmailOutbox email = messages.get(message);
+                Exception error = failures.get(message);
+                if (error != null) {
+                    markAttemptFailed(email, error);
+                } else {
+                    markSent(email);
+                }
+            }
+            outboxRepository.saveAll(batch);
+        } catch (Exception e) {
+            // Không ghi được kết quả: email vẫn SENDING và sẽ được trả lại sau claim-timeout
+            log.error("[EmailOutbox] Failed to process email batch of {}", batch.size(), e);
+        } finally {
+            sample.stop(batchTimer);
+        }
+    }
+
+    private MimeMessage toMimeMessage(EmailOutbox email) throws MessagingException, UnsupportedEncodingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+        if (email.getFromName() != null) {
+            helper.setFrom(fromEmail, email.getFromName());
+        } else {
+            helper.setFrom(fromEmail);
+        }
+        helper.setTo(email.getToEmail());
+        helper.setSubject(email.getSubject());
+        helper.setText(email.getHtmlBody() != null ? email.getHtmlBody() : "", true);
+        return message;
+    }
+
+    private void markSent(EmailOutbox email) {
+        email.setStatus(EmailOutboxStatus.SENT);
+        email.setAttempts(email.getAttempts() + 1);
+        email.setSentAt(Instant.now());
+        email.setHtmlBody(null);
+        email.setLastError(null);
+        email.setClaimToken(null);
+        email.setClaimedAt(null);
+        sentCounter.increment();
+    }
+
+    private void markAttemptFailed(EmailOutbox email, Exception error) {
+        int attempts = email.getAttempts() + 1;
+        email.setAttempts(attempts);
+        email.setLastError(truncate(error.getMessage()));
+        email.setClaimToken(null);
+        email.setClaimedAt(null);
+        if (attempts >= maxAttempts) {
+            email.setStatus(EmailOutboxStatus.FAILED);
+            // Không gửi lại nữa: bỏ nội dung như khi SENT (email cấp tài khoản chứa mật khẩu dạng rõ)
+            email.setHtmlBody(null);
+            failedCounter.increment();
+            log.error("[EmailOutbox] Giving up email {} to {} after {} attempts: {}",
+                    email.getId(), email.getToEmail(), attempts, error.getMessage());
+        } else {
+            email.setStatus(EmailOutboxStatus.PENDING);
+            email.setNextAttemptAt(Instant.now().plusSeconds(backoffSeconds(attempts)));
+            retriedCounter.increment();
+            log.warn("[EmailOutbox] Email {} to {} failed (attempt {}), retry in {}s: {}",
+                    email.getId(), email.getToEmail(), attempts, backoffSeconds(attempts), error.getMessage());
+        }
+    }
+
+    private void release(EmailOutbox email) {
+        email.setStatus(EmailOutboxStatus.PENDING);
+        email.setClaimToken(null);
+        email.setClaimedAt(null);
+    }
+
+    // base × 2^(attempts-1), tối đa backoff-max-seconds
+    long backoffSeconds(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+        return Math.min(backoffBaseSeconds << exponent, backoffMaxSeconds);
+    }
+
+    private Map<Object, Exception> allFailed(List<MimeMessage> messages, Exception error) {
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        for (MimeMessage message : messages) {
+            failures.put(message, error);
+        }
+        return failures;
+    }
+
+    private String truncate(String value) {
+        if (value == null) return null;
+        return value.length() > MAX_ERROR_LENGTH ? value.substring(0, MAX_ERROR_LENGTH) : value;
+    }
+}
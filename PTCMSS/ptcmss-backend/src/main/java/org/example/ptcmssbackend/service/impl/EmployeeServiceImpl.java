@@ -1,6 +1,7 @@
 package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.config.CacheConfig;
 import org.example.ptcmssbackend.entity.Employees;
 import org.example.ptcmssbackend.entity.Users;
 import org.example.ptcmssbackend.entity.Branches;
@@ -15,6 +16,7 @@ import org.example.ptcmssbackend.repository.RolesRepository;
 import org.example.ptcmssbackend.repository.DriverRepository;
 import org.example.ptcmssbackend.service.EmployeeService;
 import org.example.ptcmssbackend.service.EmailService;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -49,11 +51,13 @@ public class EmployeeServiceImpl implements EmployeeService {
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.ROLE_RECIPIENTS, allEntries = true)
     public Employees save(Employees employee) {
         return employeeRepository.save(employee);
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.ROLE_RECIPIENTS, allEntries = true)
     public void delete(Employees employee) {
         employeeRepository.delete(employee);
     }
@@ -70,6 +74,7 @@ public class EmployeeServiceImpl implements EmployeeService {
 
     @Override
     @Transactional
+    @CacheEvict(value = CacheConfig.ROLE_RECIPIENTS, allEntries = true)
     public Employees createEmployee(org.example.ptcmssbackend.dto.request.Employee.CreateEmployeeRequest request) {
         System.out.println("=== Creating Employee ===");
         System.out.println("Request: userId=" + request.getUserId() + ", branchId=" + request.getBranchId() + ", roleId=" + request.getRoleId());
@@ -116,6 +121,7 @@ public class EmployeeServiceImpl implements EmployeeService {
 
     @Override
     @Transactional
+    @CacheEvict(value = CacheConfig.ROLE_RECIPIENTS, allEntries = true)
     public Employees updateEmployee(Integer id, org.example.ptcmssbackend.dto.request.Employee.UpdateEmployeeRequest request) {
         System.out.println("=== Updating Employee ===");
         System.out.println("Employee ID: " + id + ", branchId=" + request.getBranchId() + ", roleId=" + request.getRoleId());
@@ -195,6 +201,7 @@ public class EmployeeServiceImpl implements EmployeeService {
 
     @Override
     @Transactional
+    @CacheEvict(value = CacheConfig.ROLE_RECIPIENTS, allEntries = true)
     public Employees createEmployeeWithUser(org.example.ptcmssbackend.dto.request.Employee.CreateEmployeeWithUserRequest request) {
         System.out.println("=== Creating Employee with User ===");
         System.out.println("Request: username=" + request.getUsername() + ", branchId=" + request.getBranchId() + ", roleId=" + request.getRoleId());
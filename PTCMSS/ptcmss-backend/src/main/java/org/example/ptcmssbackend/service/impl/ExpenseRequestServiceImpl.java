@@ -12,10 +12,9 @@ import org.example.ptcmssbackend.entity.ApprovalHistory;
 import org.example.ptcmssbackend.enums.ExpenseRequestStatus;
 import org.example.ptcmssbackend.enums.ApprovalStatus;
 import org.example.ptcmssbackend.enums.ApprovalType;
-import org.example.ptcmssbackend.entity.Employees;
 import org.example.ptcmssbackend.entity.Notifications;
+import org.example.ptcmssbackend.event.ApprovalRequestedEvent;
 import org.example.ptcmssbackend.repository.BranchesRepository;
-import org.example.ptcmssbackend.repository.EmployeeRepository;
 import org.example.ptcmssbackend.repository.ExpenseRequestRepository;
 import org.example.ptcmssbackend.repository.NotificationRepository;
 import org.example.ptcmssbackend.repository.UsersRepository;
@@ -23,7 +22,8 @@ import org.example.ptcmssbackend.repository.VehicleRepository;
 import org.example.ptcmssbackend.repository.ApprovalHistoryRepository;
 import org.example.ptcmssbackend.service.ExpenseRequestService;
 import org.example.ptcmssbackend.service.LocalImageService;
-import org.example.ptcmssbackend.service.WebSocketNotificationService;
+import org.example.ptcmssbackend.service.NotificationDispatcher;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -32,9 +32,11 @@ import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -44,15 +46,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @Slf4j
 public class ExpenseRequestServiceImpl implements ExpenseRequestService {
 
+    private static final String ACCOUNTANT_NOTIFICATION_TITLE = "Yêu cầu thanh toán chi phí mới";
+
     private final ExpenseRequestRepository expenseRequestRepository;
     private final BranchesRepository branchesRepository;
     private final VehicleRepository vehicleRepository;
     private final UsersRepository usersRepository;
-    private final EmployeeRepository employeeRepository;
     private final NotificationRepository notificationRepository;
-    private final WebSocketNotificationService webSocketNotificationService;
+    private final NotificationDispatcher notificationDispatcher;
     private final ApprovalHistoryRepository approvalHistoryRepository;
     private final LocalImageService localImageService;
+    private final ApplicationEventPublisher eventPublisher;
     private final ObjectMapper objectMapper = new ObjectMapper();
     @Override
     @Transactional
@@ -113,6 +117,17 @@ public class ExpenseRequestServiceImpl implements ExpenseRequestService {
         }
 
         ExpenseRequests saved = expenseRequestRepository.save(entity);
+
+        // ApprovalHistory được ghi bởi listener ngay trước khi giao dịch này commit
+        if (requester != null) {
+            eventPublisher.publishEvent(new ApprovalRequestedEvent(
+                    ApprovalType.EXPENSE_REQUEST,
+                    saved.getId(),
+                    requester,
+                    String.format("Yêu cầu tạm ứng: %s - %s VNĐ", saved.getType(), saved.getAmount()),
+                    branch
+            ));
+        }
         
         // Gửi notification cho Accountants trong branch
         sendNotificationToAccountants(saved);
@@ -284,49 +299,26 @@ public class ExpenseRequestServiceImpl implements ExpenseRequestService {
                 return;
             }
 
-            // Tìm tất cả Accountants trong chi nhánh
-            List<Employees> accountants = employeeRepository.findByRoleNameAndBranchId("Accountant", branchId);
-            
             String requesterName = expenseRequest.getRequester() != null 
                     ? expenseRequest.getRequester().getFullName() 
                     : "Người dùng";
             String expenseType = getExpenseTypeLabel(expenseRequest.getType());
             String amountStr = formatVND(expenseRequest.getAmount());
+            String pushMessage = String.format("Có yêu cầu thanh toán %s - %s từ %s cần duyệt.", expenseType, amountStr, requesterName);
+
+            // Thêm expense request ID vào message lưu DB để dễ dàng tìm và cập nhật sau này
+            int notified = notificationDispatcher.notifyRole(
+                    "Accountant",
+                    branchId,
+                    ACCOUNTANT_NOTIFICATION_TITLE,
+                    String.format("[ID:%d] %s", expenseRequest.getId(), pushMessage),
+                    pushMessage,
+                    "EXPENSE_REQUEST"
+            );
             
-            for (Employees accountant : accountants) {
-                if (accountant.getUser() != null) {
-                    Integer accountantUserId = accountant.getUser().getId();
-                    
-                    // Lưu notification vào DB
-                    Notifications notification = new Notifications();
-                    notification.setUser(accountant.getUser());
-                    notification.setTitle("Yêu cầu thanh toán chi phí mới");
-                    // Thêm expense request ID vào message để dễ dàng tìm và cập nhật sau này
-                    notification.setMessage(String.format(
-                            "[ID:%d] Có yêu cầu thanh toán %s - %s từ %s cần duyệt.",
-                            expenseRequest.getId(),
-                            expenseType,
-                            amountStr,
-                            requesterName
-                    ));
-                    notification.setIsRead(false);
-                    notificationRepository.save(notification);
-                    
-                    // Gửi WebSocket notification
-                    webSocketNotificationService.sendUserNotification(
-                            accountantUserId,
-                            "Yêu cầu thanh toán chi phí mới",
-                            String.format("Có yêu cầu thanh toán %s - %s từ %s cần duyệt.", expenseType, amountStr, requesterName),
-                            "EXPENSE_REQUEST"
-                    );
-                    
-                    log.debug("[ExpenseRequest] Sent notification to accountant: {}", accountant.getUser().getUsername());
-                }
-            }
-            
-            if (!accountants.isEmpty()) {
+            if (notified > 0) {
                 log.info("[ExpenseRequest] Notified {} accountants about new expense request #{}", 
-                        accountants.size(), expenseRequest.getId());
+                        notified, expenseRequest.getId());
             }
         } catch (Exception e) {
             // Không throw exception để không ảnh hưởng đến flow chính
@@ -345,74 +337,65 @@ public class ExpenseRequestServiceImpl implements ExpenseRequestService {
                 return;
             }
 
-            // Tìm tất cả Accountants trong chi nhánh
-            List<Employees> accountants = employeeRepository.findByRoleNameAndBranchId("Accountant", branchId);
+            List<Integer> accountantUserIds = notificationDispatcher.getRecipientUserIds("Accountant", branchId);
+            if (accountantUserIds.isEmpty()) {
+                return;
+            }
             
             String requesterName = expenseRequest.getRequester() != null 
                     ? expenseRequest.getRequester().getFullName() 
                     : "Người dùng";
             String expenseType = getExpenseTypeLabel(expenseRequest.getType());
             String amountStr = formatVND(expenseRequest.getAmount());
-            
-            // Tìm và cập nhật notification ban đầu
-            for (Employees accountant : accountants) {
-                if (accountant.getUser() != null && accountant.getUser().getId() != null) {
-                    Integer accountantUserId = accountant.getUser().getId();
-                    
-                    // Tìm notification có title "Yêu cầu thanh toán chi phí mới" và message chứa expense request ID
-                    List<Notifications> notifications = notificationRepository.findByUser_IdOrderByCreatedAtDesc(accountantUserId);
-                    String expenseRequestIdMarker = "[ID:" + expenseRequest.getId() + "]";
-                    for (Notifications notification : notifications) {
-                        // Kiểm tra xem notification có liên quan đến expense request này không (dựa trên ID trong message)
-                        if ("Yêu cầu thanh toán chi phí mới".equals(notification.getTitle()) &&
-                            notification.getMessage() != null &&
-                            notification.getMessage().contains(expenseRequestIdMarker) &&
-                            !notification.getIsRead()) { // Chỉ cập nhật notification chưa đọc
-                            
-                            // Cập nhật title và message
-                            if ("APPROVED".equals(status)) {
-                                notification.setTitle("Yêu cầu thanh toán đã được duyệt");
-                                String newMessage = String.format(
-                                        "[ID:%d] Yêu cầu thanh toán %s - %s từ %s đã được duyệt.",
-                                        expenseRequest.getId(), expenseType, amountStr, requesterName
-                                );
-                                if (note != null && !note.isEmpty()) {
-                                    newMessage += " Ghi chú: " + note;
-                                }
-                                notification.setMessage(newMessage);
-                            } else if ("REJECTED".equals(status)) {
-                                notification.setTitle("Yêu cầu thanh toán đã bị từ chối");
-                                String newMessage = String.format(
-                                        "[ID:%d] Yêu cầu thanh toán %s - %s từ %s đã bị từ chối.",
-                                        expenseRequest.getId(), expenseType, amountStr, requesterName
-                                );
-                                if (note != null && !note.isEmpty()) {
-                                    newMessage += " Lý do: " + note;
-                                }
-                                notification.setMessage(newMessage);
-                            }
-                            
-                            notificationRepository.save(notification);
-                            
-                            // Gửi WebSocket notification để cập nhật real-time
-                            webSocketNotificationService.sendUserNotification(
-                                    accountantUserId,
-                                    notification.getTitle(),
-                                    notification.getMessage(),
-                                    "EXPENSE_REQUEST_" + status
-                            );
-                            
-                            log.debug("[ExpenseRequest] Updated notification for accountant: {}", accountant.getUser().getUsername());
-                            break; // Chỉ cập nhật notification đầu tiên tìm thấy
-                        }
-                    }
+
+            String newTitle;
+            String newMessage;
+            if ("APPROVED".equals(status)) {
+                newTitle = "Yêu cầu thanh toán đã được duyệt";
+                newMessage = String.format(
+                        "[ID:%d] Yêu cầu thanh toán %s - %s từ %s đã được duyệt.",
+                        expenseRequest.getId(), expenseType, amountStr, requesterName
+                );
+                if (note != null && !note.isEmpty()) {
+                    newMessage += " Ghi chú: " + note;
+                }
+            } else if ("REJECTED".equals(status)) {
+                newTitle = "Yêu cầu thanh toán đã bị từ chối";
+                newMessage = String.format(
+                        "[ID:%d] Yêu cầu thanh toán %s - %s từ %s đã bị từ chối.",
+                        expenseRequest.getId(), expenseType, amountStr, requesterName
+                );
+                if (note != null && !note.isEmpty()) {
+                    newMessage += " Lý do: " + note;
                 }
+            } else {
+                return;
             }
             
-            if (!accountants.isEmpty()) {
-                log.info("[ExpenseRequest] Updated notifications for {} accountants about expense request #{} - status: {}", 
-                        accountants.size(), expenseRequest.getId(), status);
+            // Tìm notification chưa đọc có message chứa expense request ID của mọi accountant trong 1 truy vấn,
+            // chỉ cập nhật notification mới nhất của mỗi người
+            String expenseRequestIdMarker = "[ID:" + expenseRequest.getId() + "]";
+            List<Notifications> candidates = notificationRepository.findUnreadByUserIdsAndTitleAndMessageContaining(
+                    accountantUserIds, ACCOUNTANT_NOTIFICATION_TITLE, expenseRequestIdMarker);
+            Set<Integer> updatedUserIds = new LinkedHashSet<>();
+            List<Notifications> updated = new ArrayList<>();
+            for (Notifications notification : candidates) {
+                if (updatedUserIds.add(notification.getUser().getId())) {
+                    notification.setTitle(newTitle);
+                    notification.setMessage(newMessage);
+                    updated.add(notification);
+                }
             }
+            if (updated.isEmpty()) {
+                return;
+            }
+            notificationRepository.saveAll(updated);
+
+            // Gửi WebSocket notification để cập nhật real-time (sau commit)
+            notificationDispatcher.pushAfterCommit(updatedUserIds, newTitle, newMessage, "EXPENSE_REQUEST_" + status);
+            
+            log.info("[ExpenseRequest] Updated notifications for {} accountants about expense request #{} - status: {}", 
+                    updated.size(), expenseRequest.getId(), status);
         } catch (Exception e) {
             // Không throw exception để không ảnh hưởng đến flow chính
             log.error("[ExpenseRequest] Error updating accountant notifications: {}", e.getMessage(), e);
@@ -441,19 +424,12 @@ public class ExpenseRequestServiceImpl implements ExpenseRequestService {
                     statusText
             );
             
-            // Lưu notification vào DB
-            Notifications notification = new Notifications();
-            notification.setUser(expenseRequest.getRequester());
-            notification.setTitle(status.equals("APPROVED") ? "Yêu cầu chi phí đã được duyệt" : "Yêu cầu chi phí đã bị từ chối");
-            notification.setMessage(message);
-            notification.setIsRead(false);
-            notificationRepository.save(notification);
-            
-            // Gửi WebSocket notification
-            webSocketNotificationService.sendUserNotification(
-                    requesterUserId,
+            // Lưu notification vào DB, WebSocket gửi sau commit
+            notificationDispatcher.notifyUsers(
+                    List.of(requesterUserId),
                     status.equals("APPROVED") ? "Yêu cầu chi phí đã được duyệt" : "Yêu cầu chi phí đã bị từ chối",
                     message,
+                    null,
                     "EXPENSE_REQUEST_" + status
             );
             
@@ -0,0 +1,262 @@
+package org.example.ptcmssbackend.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.dto.request.Accounting.ExpenseReportRequest;
+import org.example.ptcmssbackend.dto.request.Accounting.RevenueReportRequest;
+import org.example.ptcmssbackend.dto.response.Export.ExportJobResponse;
+import org.example.ptcmssbackend.enums.ExportFormat;
+import org.example.ptcmssbackend.enums.ExportJobStatus;
+import org.example.ptcmssbackend.service.ExportJobService;
+import org.example.ptcmssbackend.service.ExportService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Job xuất file chạy trên pool riêng (số luồng và hàng đợi giới hạn), ghi file vào thư mục lưu trữ
+ * (mặc định uploads/exports) bằng cùng engine streaming với xuất trực tiếp nên bộ nhớ không phụ thuộc kích thước file.
+ *
+ * Trạng thái job giữ trong bộ nhớ của instance; file đặt tên bằng UUID ngẫu nhiên và chỉ tải qua API
+ * (kiểm tra người tạo). Job và file quá hạn lưu giữ bị dọn định kỳ, kể cả file mồ côi sau khi khởi động lại.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportJobServiceImpl implements ExportJobService {
+
+    private final ExportService exportService;
+
+    @Value("${export.jobs.storage-dir:uploads/exports}")
+    private String storageDir;
+
+    @Value("${export.jobs.threads:2}")
+    private int threads;
+
+    @Value("${export.jobs.queue-size:20}")
+    private int queueSize;
+
+    @Value("${export.jobs.retention-hours:24}")
+    private long retentionHours;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "export-job-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public ExportJobResponse submitRevenueReport(RevenueReportRequest request, ExportFormat format, String requestedBy) {
+        return submit("revenue_report", format, requestedBy,
+                (fileFormat, out) -> exportService.writeRevenueReport(request, fileFormat, out));
+    }
+
+    @Override
+    public ExportJobResponse submitExpenseReport(ExpenseReportRequest request, ExportFormat format, String requestedBy) {
+        return submit("expense_report", format, requestedBy,
+                (fileFormat, out) -> exportService.writeExpenseReport(request, fileFormat, out));
+    }
+
+    @Override
+    public ExportJobResponse submitInvoiceList(Integer branchId, String type, String status, ExportFormat format, String requestedBy) {
+        return submit("invoices", format, requestedBy,
+                (fileFormat, out) -> exportService.writeInvoiceList(branchId, type, status, fileFormat, out));
+    }
+
+    @Override
+    public ExportJobResponse getJob(String jobId, String requestedBy) {
+        return toResponse(findJob(jobId, requestedBy));
+    }
+
+    @Override
+    public Resource getJobFile(String jobId, String requestedBy) {
+        ExportJob job = findJob(jobId, requestedBy);
+        if (job.status != ExportJobStatus.COMPLETED) {
+            throw new RuntimeException("File xuất chưa sẵn sàng, trạng thái hiện tại: " + job.status);
+        }
+        if (!Files.exists(job.file)) {
+            throw new RuntimeException("File xuất đã hết hạn lưu giữ, vui lòng xuất lại");
+        }
+        return new FileSystemResource(job.file);
+    }
+
+    /**
+     * Dọn job và file quá thời gian lưu giữ (cả file không còn job trong bộ nhớ)
+     */
+    @Scheduled(fixedDelayString = "${export.jobs.purge-interval-ms:3600000}")
+    public void purgeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(retentionHours));
+        jobs.values().removeIf(job -> job.status != ExportJobStatus.PENDING
+                && job.status != ExportJobStatus.RUNNING
+                && job.createdAt.isBefore(cutoff));
+
+        Path dir = storagePath();
+        if (!Files.isDirectory(dir)) return;
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String jobId = file.getFileName().toString().replaceFirst("\\..*$", "");
+                if (!jobs.containsKey(jobId) && Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("[ExportJob] Failed to purge expired export files in {}: {}", dir, e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("[ExportJob] Purged {} expired export files", deleted);
+        }
+    }
+
+    private ExportJobResponse submit(String baseName, ExportFormat format, String requestedBy, ExportTask task) {
+        ExportFormat fileFormat = format != null ? format : ExportFormat.XLSX;
+        String extension = fileFormat == ExportFormat.XLSX ? "xlsx" : "csv";
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), baseName + "_" + LocalDate.now() + "." + extension,
+                extension, fileFormat, requestedBy);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new RuntimeException("Đang có quá nhiều yêu cầu xuất file, vui lòng thử lại sau");
+        }
+        log.info("[ExportJob] Queued export job {} ({}) for {}", job.id, job.fileName, requestedBy);
+        return toResponse(job);
+    }
+
+    private void run(ExportJob job, ExportTask task) {
+        job.status = ExportJobStatus.RUNNING;
+        Path dir = storagePath();
+        Path partial = dir.resolve(job.id + ".part");
+        Path target = dir.resolve(job.id + "." + job.extension);
+        long startedAt = System.currentTimeMillis();
+        try {
+            Files.createDirectories(dir);
+            long rows;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial))) {
+                rows = task.write(job.format, out);
+            }
+            // Chỉ đổi tên khi đã ghi xong để không bao giờ trả file dở dang
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            job.file = target;
+            job.rowCount = rows;
+            job.fileSize = Files.size(target);
+            job.completedAt = Instant.now();
+            job.status = ExportJobStatus.COMPLETED;
+            log.info("[ExportJob] Export job {} completed: {} rows, {} bytes in {} ms",
+                    job.id, rows, job.fileSize, System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            log.error("[ExportJob] Export job {} failed", job.id, e);
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // File dở dang sẽ được dọn ở lần purge sau
+            }
+            job.errorMessage = e.getMessage();
+            job.completedAt = Instant.now();
+            job.status = ExportJobStatus.FAILED;
+        }
+    }
+
+    private ExportJob findJob(String jobId, String requestedBy) {
+        ExportJob job = jobId != null ? jobs.get(jobId) : null;
+        // Job của người khác trả cùng lỗi với job không tồn tại
+        if (job == null || (job.requestedBy != null && !job.requestedBy.equals(requestedBy))) {
+            throw new RuntimeException("Không tìm thấy yêu cầu xuất file: " + jobId);
+        }
+        return job;
+    }
+
+    private Path storagePath() {
+        return Paths.get(storageDir).toAbsolutePath();
+    }
+
+    private ExportJobResponse toResponse(ExportJob job) {
+        ExportJobStatus status = job.status;
+        return ExportJobResponse.builder()
+                .jobId(job.id)
+                .status(status)
+                .format(job.format)
+                .fileName(job.fileName)
+                .rowCount(job.rowCount)
+                .fileSize(job.fileSize)
+                .errorMessage(job.errorMessage)
+                .createdAt(job.createdAt)
+                .completedAt(job.completedAt)
+                .downloadUrl(status == ExportJobStatus.COMPLETED ? "/api/export/jobs/" + job.id + "/file" : null)
+                .build();
+    }
+
+    @FunctionalInterface
+    private interface ExportTask {
+        long write(ExportFormat format, OutputStream out) throws IOException;
+    }
+
+    /**
+     * Trạng thái 1 job; status được ghi sau cùng (volatile) nên khi đọc thấy COMPLETED/FAILED thì các field khác đã đủ
+     */
+    private static class ExportJob {
+        private final String id;
+        private final String fileName;
+        private final String extension;
+        private final ExportFormat format;
+        private final String requestedBy;
+        private final Instant createdAt = Instant.now();
+
+        private volatile ExportJobStatus status = ExportJobStatus.PENDING;
+        private volatile Path file;
+        private volatile Long rowCount;
+        private volatile Long fileSize;
+        private volatile String errorMessage;
+        private volatile Instant completedAt;
+
+        ExportJob(String id, String fileName, String extension, ExportFormat format, String requestedBy) {
+            this.id = id;
+            this.fileName = fileName;
+            this.extension = extension;
+            this.format = format;
+            this.requestedBy = requestedBy;
+        }
+    }
+}
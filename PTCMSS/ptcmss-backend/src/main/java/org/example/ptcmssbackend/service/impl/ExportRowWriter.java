@@ -0,0 +1,211 @@
+package org.example.ptcmssbackend.service.impl;
+
+import org.example.ptcmssbackend.enums.ExportFormat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Ghi bảng dữ liệu ra OutputStream theo từng dòng (CSV hoặc XLSX), không giữ dòng nào trong bộ nhớ.
+ *
+ * XLSX được ghi trực tiếp dạng SpreadsheetML (zip + XML, chuỗi inline) nên không cần thư viện ngoài
+ * và bộ nhớ không phụ thuộc số dòng. Sau dòng cuối phải gọi {@link #finish()}; stream gốc không bị đóng.
+ */
+public abstract class ExportRowWriter {
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    protected final Writer writer;
+    private long rowCount;
+
+    protected ExportRowWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public static ExportRowWriter open(ExportFormat format, OutputStream out, String sheetName) throws IOException {
+        return format == ExportFormat.XLSX
+                ? new XlsxRowWriter(out, sheetName)
+                : new CsvRowWriter(out);
+    }
+
+    /**
+     * Ghi 1 dòng. Số (Number) được ghi dạng số, null thành ô trống, Instant theo giờ hệ thống
+     */
+    public void row(Object... cells) throws IOException {
+        writeRow(cells);
+        rowCount++;
+    }
+
+    /**
+     * Đẩy dữ liệu đã ghi ra client (gọi sau mỗi lô)
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    public abstract void finish() throws IOException;
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    protected abstract void writeRow(Object[] cells) throws IOException;
+
+    static String toText(Object value) {
+        if (value == null) return "";
+        if (value instanceof BigDecimal decimal) return decimal.toPlainString();
+        if (value instanceof Instant instant) return DATE_TIME_FORMAT.format(instant);
+        if (value instanceof Enum<?> e) return e.name();
+        return value.toString();
+    }
+
+    private static class CsvRowWriter extends ExportRowWriter {
+
+        CsvRowWriter(OutputStream out) throws IOException {
+            super(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            // BOM UTF-8 để Excel nhận đúng tiếng Việt
+            writer.write('\uFEFF');
+        }
+
+        @Override
+        protected void writeRow(Object[] cells) throws IOException {
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write(cells[i] instanceof Number ? toText(cells[i]) : escape(toText(cells[i])));
+            }
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private String escape(String value) {
+            // Chuỗi bắt đầu bằng = + - @ bị Excel hiểu là công thức: thêm ' phía trước
+            if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0) {
+                value = "'" + value;
+            }
+            if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            return value;
+        }
+    }
+
+    private static class XlsxRowWriter extends ExportRowWriter {
+
+        private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+        private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+        private static final String REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+        private static final String DOC_REL = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+        private final ZipOutputStream zip;
+        private long rowNumber;
+
+        XlsxRowWriter(OutputStream out, String sheetName) throws IOException {
+            this(new ZipOutputStream(out, StandardCharsets.UTF_8), sheetName);
+        }
+
+        private XlsxRowWriter(ZipOutputStream zip, String sheetName) throws IOException {
+            super(new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8)));
+            this.zip = zip;
+
+            writeEntry("[Content_Types].xml", XML_HEADER
+                    + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/workbook.xml\" "
+                    + "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet1.xml\" "
+                    + "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                    + "</Types>");
+            writeEntry("_rels/.rels", XML_HEADER
+                    + "<Relationships xmlns=\"" + REL_NS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + DOC_REL + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            writeEntry("xl/workbook.xml", XML_HEADER
+                    + "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + DOC_REL + "\">"
+                    + "<sheets><sheet name=\"" + escape(sheetName(sheetName)) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+                    + "</workbook>");
+            writeEntry("xl/_rels/workbook.xml.rels", XML_HEADER
+                    + "<Relationships xmlns=\"" + REL_NS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + DOC_REL + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                    + "</Relationships>");
+
+            // Sheet được ghi dần tới khi finish()
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+            writer.write(XML_HEADER + "<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>");
+        }
+
+        @Override
+        protected void writeRow(Object[] cells) throws IOException {
+            writer.write("<row r=\"" + (++rowNumber) + "\">");
+            for (Object cell : cells) {
+                if (cell == null) {
+                    writer.write("<c/>");
+                } else if (cell instanceof Number) {
+                    writer.write("<c><v>" + toText(cell) + "</v></c>");
+                } else {
+                    writer.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                    writer.write(escape(toText(cell)));
+                    writer.write("</t></is></c>");
+                }
+            }
+            writer.write("</row>");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.write("</sheetData></worksheet>");
+            writer.flush();
+            zip.closeEntry();
+            zip.finish();
+            zip.flush();
+        }
+
+        private void writeEntry(String name, String content) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            writer.write(content);
+            writer.flush();
+            zip.closeEntry();
+        }
+
+        // Tên sheet tối đa 31 ký tự, không chứa : \ / ? * [ ]
+        private static String sheetName(String name) {
+            String cleaned = name == null || name.isBlank() ? "Sheet1" : name.replaceAll("[:\\\\/?*\\[\\]]", " ");
+            return cleaned.length() > 31 ? cleaned.substring(0, 31) : cleaned;
+        }
+
+        // Escape XML và bỏ ký tự điều khiển không hợp lệ trong XML 1.0
+        private static String escape(String value) {
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                switch (ch) {
+                    case '&' -> sb.append("&amp;");
+                    case '<' -> sb.append("&lt;");
+                    case '>' -> sb.append("&gt;");
+                    case '"' -> sb.append("&quot;");
+                    default -> {
+                        if (ch >= 0x20 || ch == '\t' || ch == '\n' || ch == '\r') {
+                            sb.append(ch);
+                        }
+                    }
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
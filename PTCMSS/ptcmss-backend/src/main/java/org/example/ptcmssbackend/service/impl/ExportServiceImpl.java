@@ -4,18 +4,20 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ptcmssbackend.dto.request.Accounting.ExpenseReportRequest;
 import org.example.ptcmssbackend.dto.request.Accounting.RevenueReportRequest;
-import org.example.ptcmssbackend.dto.response.Accounting.ExpenseReportResponse;
-import org.example.ptcmssbackend.dto.response.Accounting.RevenueReportResponse;
-import org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceResponse;
+import org.example.ptcmssbackend.enums.ExportFormat;
+import org.example.ptcmssbackend.enums.InvoiceStatus;
+import org.example.ptcmssbackend.enums.InvoiceType;
+import org.example.ptcmssbackend.enums.PaymentStatus;
+import org.example.ptcmssbackend.repository.ExpenseRequestRepository;
+import org.example.ptcmssbackend.repository.InvoiceRepository;
 import org.example.ptcmssbackend.service.AccountingService;
 import org.example.ptcmssbackend.service.ExportService;
 import org.example.ptcmssbackend.service.InvoiceService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import com.itextpdf.kernel.pdf.PdfDocument;
@@ -32,132 +34,148 @@ import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.io.font.constants.StandardFonts;
 
 import java.io.ByteArrayOutputStream;
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.text.NumberFormat;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ExportServiceImpl implements ExportService {
 
+    private static final String[] INVOICE_HEADER = {
+            "Số hóa đơn", "Ngày lập", "Khách hàng", "Chi nhánh", "Tổng tiền", "Đã thu", "Còn lại",
+            "Hạn thanh toán", "Trạng thái thanh toán", "Ghi chú"};
+
     private final AccountingService accountingService;
     private final InvoiceService invoiceService;
+    private final InvoiceRepository invoiceRepository;
+    private final ExpenseRequestRepository expenseRequestRepository;
+
+    // Số dòng đọc mỗi lô khi xuất streaming (bộ nhớ chỉ giữ tối đa 1 lô)
+    @Value("${export.batch-size:1000}")
+    private int exportBatchSize;
 
     @Override
-    public Resource exportRevenueReportToExcel(RevenueReportRequest request) {
-        log.info("[ExportService] Exporting revenue report to Excel");
-        try {
-            RevenueReportResponse report = accountingService.getRevenueReport(request);
-            
-            // Simple CSV format (can be enhanced with Apache POI for real Excel)
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            
-            // Header
-            pw.println("Revenue Report");
-            pw.println("Period: " + (request.getPeriod() != null ? request.getPeriod() : "Custom"));
-            pw.println("Generated: " + LocalDate.now().format(DateTimeFormatter.ISO_DATE));
-            pw.println();
-            
-            // Summary
-            pw.println("Total Revenue," + report.getTotalRevenue());
-            pw.println("Total Paid," + report.getTotalPaid());
-            pw.println("Total Balance," + report.getTotalBalance());
-            pw.println("Total Invoices," + report.getTotalInvoices());
-            pw.println();
-            
-            // Chart data
-            pw.println("Date,Revenue");
-            if (report.getRevenueByDate() != null) {
-                for (RevenueReportResponse.ChartDataPoint point : report.getRevenueByDate()) {
-                    pw.println(point.getDate() + "," + point.getValue());
-                }
-            }
-            
-            pw.close();
-            byte[] bytes = sw.toString().getBytes(StandardCharsets.UTF_8);
-            return new ByteArrayResource(bytes);
-        } catch (Exception e) {
-            log.error("[ExportService] Error exporting revenue report to Excel", e);
-            throw new RuntimeException("Không thể xuất báo cáo doanh thu", e);
-        }
+    public long writeRevenueReport(RevenueReportRequest request, ExportFormat format, OutputStream out) throws IOException {
+        LocalDate[] range = accountingService.getReportDateRange(request);
+        Instant start = startOf(range[0]);
+        Instant end = endOf(range[1]);
+        log.info("[ExportService] Streaming revenue report {} - {} as {}", range[0], range[1], format);
+
+        ExportRowWriter writer = ExportRowWriter.open(format, out, "Doanh thu");
+        writer.row("Báo cáo doanh thu");
+        writer.row("Kỳ báo cáo", range[0] + " - " + range[1]);
+        writer.row("Ngày xuất", LocalDate.now());
+        writer.row();
+        writer.row((Object[]) INVOICE_HEADER);
+
+        // Tổng cộng dồn trong lúc ghi (cùng cách tính với báo cáo: đã thu chỉ tính hóa đơn PAID)
+        BigDecimal[] totals = {BigDecimal.ZERO, BigDecimal.ZERO};
+        long count = streamKeyset(afterId -> invoiceRepository.findReportExportRowsAfter(
+                        request.getBranchId(), InvoiceType.INCOME, start, end, request.getCustomerId(),
+                        afterId, PageRequest.of(0, exportBatchSize)),
+                writer,
+                row -> {
+                    writeInvoiceRow(writer, row);
+                    totals[0] = totals[0].add(toBigDecimal(row[5]));
+                    if (row[8] == PaymentStatus.PAID) {
+                        totals[1] = totals[1].add(toBigDecimal(row[6]));
+                    }
+                });
+
+        writer.row();
+        writer.row("Tổng doanh thu", totals[0]);
+        writer.row("Đã thu", totals[1]);
+        writer.row("Còn lại", totals[0].subtract(totals[1]));
+        writer.row("Số hóa đơn", count);
+        writer.finish();
+        log.info("[ExportService] Streamed {} revenue invoices", count);
+        return count;
     }
 
     @Override
-    public Resource exportExpenseReportToExcel(ExpenseReportRequest request) {
-        log.info("[ExportService] Exporting expense report to Excel");
-        try {
-            ExpenseReportResponse report = accountingService.getExpenseReport(request);
-            
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            
-            // Header
-            pw.println("Expense Report");
-            pw.println("Generated: " + LocalDate.now().format(DateTimeFormatter.ISO_DATE));
-            pw.println();
-            
-            // Summary
-            pw.println("Total Expense," + report.getTotalExpense());
-            pw.println("Total Expense Requests," + report.getTotalExpenseRequests());
-            pw.println();
-            
-            // Expense by category
-            pw.println("Category,Amount");
-            if (report.getExpenseByCategory() != null) {
-                report.getExpenseByCategory().forEach((category, amount) -> {
-                    pw.println(category + "," + amount);
+    public long writeExpenseReport(ExpenseReportRequest request, ExportFormat format, OutputStream out) throws IOException {
+        LocalDate[] range = accountingService.getReportDateRange(request);
+        Instant start = startOf(range[0]);
+        Instant end = endOf(range[1]);
+        log.info("[ExportService] Streaming expense report {} - {} as {}", range[0], range[1], format);
+
+        ExportRowWriter writer = ExportRowWriter.open(format, out, "Chi phi");
+        writer.row("Báo cáo chi phí");
+        writer.row("Kỳ báo cáo", range[0] + " - " + range[1]);
+        writer.row("Ngày xuất", LocalDate.now());
+        writer.row();
+
+        // Tổng theo loại: số loại chi phí nhỏ nên giữ trong bộ nhớ được
+        Map<String, BigDecimal> byCategory = new TreeMap<>();
+
+        writer.row("Hóa đơn chi");
+        writer.row((Object[]) INVOICE_HEADER);
+        long invoiceCount = streamKeyset(afterId -> invoiceRepository.findReportExportRowsAfter(
+                        request.getBranchId(), InvoiceType.EXPENSE, start, end, null,
+                        afterId, PageRequest.of(0, exportBatchSize)),
+                writer,
+                row -> {
+                    writeInvoiceRow(writer, row);
+                    // Hóa đơn chi không còn loại chi phí - gộp vào OTHER như báo cáo
+                    byCategory.merge("OTHER", toBigDecimal(row[5]), BigDecimal::add);
                 });
-            }
-            
-            pw.close();
-            byte[] bytes = sw.toString().getBytes(StandardCharsets.UTF_8);
-            return new ByteArrayResource(bytes);
-        } catch (Exception e) {
-            log.error("[ExportService] Error exporting expense report to Excel", e);
-            throw new RuntimeException("Không thể xuất báo cáo chi phí", e);
+
+        // Bộ lọc xe / loại chi phí chỉ áp dụng cho yêu cầu chi phí (giống báo cáo)
+        writer.row();
+        writer.row("Yêu cầu chi phí đã duyệt");
+        writer.row("Mã yêu cầu", "Ngày tạo", "Chi nhánh", "Biển số xe", "Loại chi phí", "Số tiền", "Ghi chú");
+        long requestCount = streamKeyset(afterId -> expenseRequestRepository.findApprovedExportRowsAfter(
+                        request.getBranchId(), request.getVehicleId(), request.getExpenseType(), start, end,
+                        afterId, PageRequest.of(0, exportBatchSize)),
+                writer,
+                row -> {
+                    writer.row(row[0], row[1], row[2], row[3], row[4], toBigDecimal(row[5]), row[6]);
+                    String category = row[4] != null ? (String) row[4] : "OTHER";
+                    byCategory.merge(category, toBigDecimal(row[5]), BigDecimal::add);
+                });
+
+        writer.row();
+        writer.row("Loại chi phí", "Số tiền");
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<String, BigDecimal> entry : byCategory.entrySet()) {
+            writer.row(entry.getKey(), entry.getValue());
+            total = total.add(entry.getValue());
         }
+        writer.row("Tổng chi phí", total);
+        writer.row("Số khoản chi", invoiceCount + requestCount);
+        writer.finish();
+        log.info("[ExportService] Streamed {} expense invoices and {} expense requests", invoiceCount, requestCount);
+        return invoiceCount + requestCount;
     }
 
     @Override
-    public Resource exportInvoiceListToExcel(Integer branchId, String type, String status) {
-        log.info("[ExportService] Exporting invoice list to Excel");
-        try {
-            Pageable pageable = PageRequest.of(0, 10000); // Get all
-            Page<InvoiceListResponse> invoices = invoiceService.getInvoices(
-                    branchId, type, status, null, null, null, null, null, pageable);
-            
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            
-            // Header
-            pw.println("Invoice Number,Customer,Amount,Paid Amount,Balance,Due Date,Payment Status");
-            
-            // Data
-            for (InvoiceListResponse invoice : invoices.getContent()) {
-                pw.println(
-                    invoice.getInvoiceNumber() + "," +
-                    (invoice.getCustomerName() != null ? invoice.getCustomerName() : "") + "," +
-                    invoice.getAmount() + "," +
-                    invoice.getPaidAmount() + "," +
-                    invoice.getBalance() + "," +
-                    (invoice.getDueDate() != null ? invoice.getDueDate().toString() : "") + "," +
-                    invoice.getPaymentStatus()
-                );
-            }
-            
-            pw.close();
-            byte[] bytes = sw.toString().getBytes(StandardCharsets.UTF_8);
-            return new ByteArrayResource(bytes);
-        } catch (Exception e) {
-            log.error("[ExportService] Error exporting invoice list to Excel", e);
-            throw new RuntimeException("Không thể xuất danh sách hóa đơn", e);
-        }
+    public long writeInvoiceList(Integer branchId, String type, String status, ExportFormat format, OutputStream out) throws IOException {
+        log.info("[ExportService] Streaming invoice list - branch: {}, type: {}, status: {}, format: {}", branchId, type, status, format);
+        InvoiceType invoiceType = parseInvoiceType(type);
+        InvoiceStatus invoiceStatus = status != null ? InvoiceStatus.valueOf(status.toUpperCase()) : null;
+
+        ExportRowWriter writer = ExportRowWriter.open(format, out, "Hoa don");
+        writer.row((Object[]) INVOICE_HEADER);
+        long count = streamKeyset(afterId -> invoiceRepository.findInvoiceListExportRowsAfter(
+                        branchId, invoiceType, invoiceStatus, null, null, null, null, null,
+                        afterId, PageRequest.of(0, exportBatchSize)),
+                writer,
+                row -> writeInvoiceRow(writer, row));
+        writer.finish();
+        log.info("[ExportService] Streamed {} invoices", count);
+        return count;
     }
 
     /**
@@ -393,26 +411,66 @@ public class ExportServiceImpl implements ExportService {
         }
     }
 
-    @Override
-    public Resource exportRevenueReportToPDF(RevenueReportRequest request) {
-        // Similar to Excel but formatted for PDF
-        return exportRevenueReportToExcel(request);
+    @FunctionalInterface
+    private interface RowHandler {
+        void accept(Object[] row) throws IOException;
     }
 
-    @Override
-    public Resource exportExpenseReportToPDF(ExpenseReportRequest request) {
-        // Similar to Excel but formatted for PDF
-        return exportExpenseReportToExcel(request);
+    /**
+     * Đọc theo keyset từng lô (cột 0 là id tăng dần), xử lý từng dòng rồi đẩy ra client sau mỗi lô
+     *
+     * @return số dòng đã đọc
+     */
+    private long streamKeyset(IntFunction<List<Object[]>> batchAfter, ExportRowWriter writer, RowHandler handler) throws IOException {
+        int afterId = 0;
+        long count = 0;
+        while (true) {
+            List<Object[]> rows = batchAfter.apply(afterId);
+            for (Object[] row : rows) {
+                handler.accept(row);
+            }
+            writer.flush();
+            count += rows.size();
+            if (rows.size() < exportBatchSize) {
+                return count;
+            }
+            afterId = (Integer) rows.get(rows.size() - 1)[0];
+        }
     }
 
-    @Override
-    public Resource exportRevenueReportToCSV(RevenueReportRequest request) {
-        return exportRevenueReportToExcel(request);
+    /**
+     * Cột theo InvoiceRepository.INVOICE_EXPORT_SELECT: invoiceId, invoiceNumber, invoiceDate, tên KH,
+     * tên chi nhánh, amount, đã thu, dueDate, paymentStatus, note
+     */
+    private void writeInvoiceRow(ExportRowWriter writer, Object[] row) throws IOException {
+        BigDecimal amount = toBigDecimal(row[5]);
+        BigDecimal paid = toBigDecimal(row[6]);
+        writer.row(row[1], row[2], row[3], row[4], amount, paid, amount.subtract(paid), row[7], row[8], row[9]);
     }
 
-    @Override
-    public Resource exportExpenseReportToCSV(ExpenseReportRequest request) {
-        return exportExpenseReportToExcel(request);
+    private InvoiceType parseInvoiceType(String type) {
+        if (type == null) {
+            return null;
+        }
+        try {
+            return InvoiceType.valueOf(type.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // Loại không hợp lệ thì không lọc (giống danh sách hóa đơn)
+            return null;
+        }
+    }
+
+    private Instant startOf(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant();
     }
-}
 
+    private Instant endOf(LocalDate date) {
+        return date.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    private BigDecimal toBigDecimal(Object value) {
+        if (value == null) return BigDecimal.ZERO;
+        if (value instanceof BigDecimal) return (BigDecimal) value;
+        return new BigDecimal(value.toString());
+    }
+}
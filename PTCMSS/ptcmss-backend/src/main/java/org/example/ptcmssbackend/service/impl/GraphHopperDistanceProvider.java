@@ -0,0 +1,34 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.service.DistanceProvider;
+import org.example.ptcmssbackend.service.GraphHopperService;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bước 2: GraphHopper (geocode + routing, kết quả được ghi vào cache)
+ */
+@Component
+@Order(2)
+@RequiredArgsConstructor
+public class GraphHopperDistanceProvider implements DistanceProvider {
+
+    private final GraphHopperService graphHopperService;
+
+    @Override
+    public DistanceResult resolve(String from, String to) {
+        DistanceResult result = graphHopperService.calculateDistance(from, to);
+        if (result == null) {
+            return null;
+        }
+        result.setSource("GRAPHHOPPER");
+        return result;
+    }
+
+    @Override
+    public boolean remote() {
+        return true;
+    }
+}
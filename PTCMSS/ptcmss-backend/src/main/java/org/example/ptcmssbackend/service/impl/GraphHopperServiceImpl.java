@@ -2,18 +2,25 @@ package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceMatrixResult;
 import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
 import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
 import org.example.ptcmssbackend.dto.response.GraphHopper.RouteOption;
 import org.example.ptcmssbackend.service.GraphHopperService;
+import org.example.ptcmssbackend.service.RoutingCacheService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -24,7 +31,13 @@ public class GraphHopperServiceImpl implements GraphHopperService {
     @Value("${graphhopper.api-key}")
     private String apiKey;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Số điểm đi/đến tối đa trong 1 lần gọi Matrix API (tùy gói GraphHopper)
+    @Value("${graphhopper.matrix-max-points:25}")
+    private int matrixMaxPoints;
+
+    // Bean có connection pool + timeout (GraphHopperConfig)
+    private final RestTemplate restTemplate;
+    private final RoutingCacheService routingCacheService;
 
     private static final String GEOCODE_URL = "https://graphhopper.com/api/1/geocode";
     private static final String MATRIX_URL = "https://graphhopper.com/api/1/matrix";
@@ -99,60 +112,97 @@ public class GraphHopperServiceImpl implements GraphHopperService {
 
     @Override
     public DistanceResult calculateDistance(String from, String to) {
-        // Step 1: Geocode addresses
-        List<PlaceSuggestion> fromResults = autocompletePlaces(from);
-        List<PlaceSuggestion> toResults = autocompletePlaces(to);
-
-        if (fromResults.isEmpty()) {
+        // Step 1: Geocode addresses (cache bộ nhớ -> DB -> API)
+        PlaceSuggestion fromPlace = routingCacheService.getPlace(from, this::geocodeFirst);
+        if (fromPlace == null) {
             throw new RuntimeException("Không tìm thấy địa chỉ điểm đi: " + from);
         }
-        if (toResults.isEmpty()) {
+        PlaceSuggestion toPlace = routingCacheService.getPlace(to, this::geocodeFirst);
+        if (toPlace == null) {
             throw new RuntimeException("Không tìm thấy địa chỉ điểm đến: " + to);
         }
 
-        PlaceSuggestion fromPlace = fromResults.get(0);
-        PlaceSuggestion toPlace = toResults.get(0);
-
-        // Step 2: Calculate distance using Routing API for accurate road distance
-        Map<String, Object> requestBody = Map.of(
-                "points", List.of(
-                        List.of(fromPlace.getLongitude(), fromPlace.getLatitude()), // [lon, lat]
-                        List.of(toPlace.getLongitude(), toPlace.getLatitude())
-                ),
-                "profile", "car",
-                "instructions", false,
-                "calc_points", false
-        );
+        // Step 2: Khoảng cách đường bộ theo cặp tọa độ (cache bộ nhớ -> DB -> Routing API)
+        return routingCacheService.getRoute(fromPlace, toPlace, this::requestRoute);
+    }
 
-        String url = ROUTE_URL + "?key=" + apiKey;
+    @Override
+    public DistanceMatrixResult distanceMatrix(List<String> points) {
+        return distanceMatrix(points, points);
+    }
 
-        try {
-            Map<String, Object> response = restTemplate.postForObject(url, requestBody, Map.class);
-            if (response == null || !response.containsKey("paths")) {
-                throw new RuntimeException("API tính tuyến đường không trả về kết quả");
+    @Override
+    public DistanceMatrixResult distanceMatrix(List<String> origins, List<String> destinations) {
+        // Step 1: Geocode mỗi địa chỉ khác nhau 1 lần (qua cache); không tìm thấy -> null
+        Map<String, PlaceSuggestion> places = new HashMap<>();
+        for (List<String> addresses : List.of(origins, destinations)) {
+            for (String address : addresses) {
+                if (!places.containsKey(address)) {
+                    places.put(address, routingCacheService.getPlace(address, this::geocodeFirst));
+                }
             }
+        }
 
-            List<Map<String, Object>> paths = (List<Map<String, Object>>) response.get("paths");
-            if (paths == null || paths.isEmpty()) {
-                throw new RuntimeException("Không tìm thấy tuyến đường giữa hai địa chỉ");
+        // Step 2: Các cặp đã có trong cache
+        Set<String> keys = new LinkedHashSet<>();
+        for (String origin : origins) {
+            for (String destination : destinations) {
+                PlaceSuggestion from = places.get(origin);
+                PlaceSuggestion to = places.get(destination);
+                if (from != null && to != null) {
+                    keys.add(routingCacheService.routeKey(from, to));
+                }
             }
+        }
+        Map<String, DistanceResult> known = new HashMap<>(routingCacheService.findRoutes(keys));
+
+        // Step 3: Cặp còn thiếu -> 1 lần gọi Matrix API cho (điểm đi thiếu) x (điểm đến thiếu)
+        Set<PlaceSuggestion> missingFrom = new LinkedHashSet<>();
+        Set<PlaceSuggestion> missingTo = new LinkedHashSet<>();
+        for (String origin : origins) {
+            for (String destination : destinations) {
+                PlaceSuggestion from = places.get(origin);
+                PlaceSuggestion to = places.get(destination);
+                if (from == null || to == null) continue;
+                String key = routingCacheService.routeKey(from, to);
+                if (known.containsKey(key)) continue;
+                if (isSamePoint(from, to)) {
+                    known.put(key, DistanceResult.builder().distanceKm(0.0).durationMinutes(0.0).build());
+                } else {
+                    missingFrom.add(from);
+                    missingTo.add(to);
+                }
+            }
+        }
+        if (!missingFrom.isEmpty()) {
+            Map<String, DistanceResult> computed = requestMatrix(new ArrayList<>(missingFrom), new ArrayList<>(missingTo));
+            routingCacheService.putRoutes(computed);
+            known.putAll(computed);
+        }
 
-            // Get the first (best) route
-            Map<String, Object> firstPath = paths.get(0);
-            double distanceMeters = ((Number) firstPath.get("distance")).doubleValue();
-            long timeMillis = ((Number) firstPath.get("time")).longValue();
-
-            return DistanceResult.builder()
-                    .distanceKm(distanceMeters / 1000.0)
-                    .durationMinutes(timeMillis / 60000.0)
-                    .from(fromPlace.getFullAddress())
-                    .to(toPlace.getFullAddress())
-                    .build();
-
-        } catch (Exception e) {
-            log.error("GraphHopper distance calculation error", e);
-            throw new RuntimeException("Lỗi khi tính khoảng cách: " + e.getMessage());
+        // Step 4: Ghép kết quả theo đúng thứ tự request
+        List<List<Double>> distancesKm = new ArrayList<>(origins.size());
+        List<List<Double>> durationsMinutes = new ArrayList<>(origins.size());
+        for (String origin : origins) {
+            List<Double> distanceRow = new ArrayList<>(destinations.size());
+            List<Double> durationRow = new ArrayList<>(destinations.size());
+            for (String destination : destinations) {
+                PlaceSuggestion from = places.get(origin);
+                PlaceSuggestion to = places.get(destination);
+                DistanceResult route = from != null && to != null ? known.get(routingCacheService.routeKey(from, to)) : null;
+                distanceRow.add(route != null ? route.getDistanceKm() : null);
+                durationRow.add(route != null ? route.getDurationMinutes() : null);
+            }
+            distancesKm.add(distanceRow);
+            durationsMinutes.add(durationRow);
         }
+
+        return DistanceMatrixResult.builder()
+                .origins(origins)
+                .destinations(destinations)
+                .distancesKm(distancesKm)
+                .durationsMinutes(durationsMinutes)
+                .build();
     }
 
     @Override
@@ -162,16 +212,13 @@ public class GraphHopperServiceImpl implements GraphHopperService {
         }
 
         // Step 1: Geocode
-        List<PlaceSuggestion> fromResults = autocompletePlaces(from);
-        List<PlaceSuggestion> toResults = autocompletePlaces(to);
+        PlaceSuggestion fromPlace = routingCacheService.getPlace(from, this::geocodeFirst);
+        PlaceSuggestion toPlace = routingCacheService.getPlace(to, this::geocodeFirst);
 
-        if (fromResults.isEmpty() || toResults.isEmpty()) {
+        if (fromPlace == null || toPlace == null) {
             throw new RuntimeException("Không tìm thấy địa chỉ");
         }
 
-        PlaceSuggestion fromPlace = fromResults.get(0);
-        PlaceSuggestion toPlace = toResults.get(0);
-
         // Step 2: Get alternative routes
         Map<String, Object> requestBody = Map.of(
                 "points", List.of(
@@ -224,6 +271,121 @@ public class GraphHopperServiceImpl implements GraphHopperService {
         }
     }
 
+    /**
+     * Kết quả geocode đầu tiên có tọa độ (null nếu không có)
+     */
+    private PlaceSuggestion geocodeFirst(String address) {
+        return autocompletePlaces(address).stream()
+                .filter(place -> place.getLatitude() != null && place.getLongitude() != null)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Gọi Routing API cho 1 cặp tọa độ
+     */
+    private DistanceResult requestRoute(PlaceSuggestion fromPlace, PlaceSuggestion toPlace) {
+        Map<String, Object> requestBody = Map.of(
+                "points", List.of(
+                        List.of(fromPlace.getLongitude(), fromPlace.getLatitude()), // [lon, lat]
+                        List.of(toPlace.getLongitude(), toPlace.getLatitude())
+                ),
+                "profile", "car",
+                "instructions", false,
+                "calc_points", false
+        );
+
+        String url = ROUTE_URL + "?key=" + apiKey;
+
+        try {
+            Map<String, Object> response = restTemplate.postForObject(url, requestBody, Map.class);
+            if (response == null || !response.containsKey("paths")) {
+                throw new RuntimeException("API tính tuyến đường không trả về kết quả");
+            }
+
+            List<Map<String, Object>> paths = (List<Map<String, Object>>) response.get("paths");
+            if (paths == null || paths.isEmpty()) {
+                throw new RuntimeException("Không tìm thấy tuyến đường giữa hai địa chỉ");
+            }
+
+            // Get the first (best) route
+            Map<String, Object> firstPath = paths.get(0);
+            double distanceMeters = ((Number) firstPath.get("distance")).doubleValue();
+            long timeMillis = ((Number) firstPath.get("time")).longValue();
+
+            return DistanceResult.builder()
+                    .distanceKm(distanceMeters / 1000.0)
+                    .durationMinutes(timeMillis / 60000.0)
+                    .from(fromPlace.getFullAddress())
+                    .to(toPlace.getFullAddress())
+                    .build();
+
+        } catch (Exception e) {
+            log.error("GraphHopper distance calculation error", e);
+            throw new RuntimeException("Lỗi khi tính khoảng cách: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gọi Matrix API, chia lô nếu số điểm vượt giới hạn; key của kết quả là routeKey
+     */
+    private Map<String, DistanceResult> requestMatrix(List<PlaceSuggestion> from, List<PlaceSuggestion> to) {
+        int chunk = Math.max(1, matrixMaxPoints);
+        Map<String, DistanceResult> computed = new HashMap<>();
+        for (int i = 0; i < from.size(); i += chunk) {
+            List<PlaceSuggestion> fromChunk = from.subList(i, Math.min(i + chunk, from.size()));
+            for (int j = 0; j < to.size(); j += chunk) {
+                List<PlaceSuggestion> toChunk = to.subList(j, Math.min(j + chunk, to.size()));
+                computed.putAll(requestMatrixChunk(fromChunk, toChunk));
+            }
+        }
+        return computed;
+    }
+
+    private Map<String, DistanceResult> requestMatrixChunk(List<PlaceSuggestion> from, List<PlaceSuggestion> to) {
+        Map<String, Object> requestBody = Map.of(
+                "from_points", from.stream().map(p -> List.of(p.getLongitude(), p.getLatitude())).toList(), // [lon, lat]
+                "to_points", to.stream().map(p -> List.of(p.getLongitude(), p.getLatitude())).toList(),
+                "out_arrays", List.of("distances", "times"),
+                "profile", "car"
+        );
+
+        String url = MATRIX_URL + "?key=" + apiKey;
+
+        try {
+            Map<String, Object> response = restTemplate.postForObject(url, requestBody, Map.class);
+            if (response == null || !response.containsKey("distances")) {
+                throw new RuntimeException("API ma trận khoảng cách không trả về kết quả");
+            }
+
+            // distances: mét, times: giây; null nếu không có đường đi
+            List<List<Number>> distances = (List<List<Number>>) response.get("distances");
+            List<List<Number>> times = (List<List<Number>>) response.get("times");
+
+            Map<String, DistanceResult> computed = new HashMap<>();
+            for (int i = 0; i < from.size(); i++) {
+                for (int j = 0; j < to.size(); j++) {
+                    Number meters = distances.get(i).get(j);
+                    if (meters == null) continue;
+                    Number seconds = times != null ? times.get(i).get(j) : null;
+                    computed.put(routingCacheService.routeKey(from.get(i), to.get(j)), DistanceResult.builder()
+                            .distanceKm(meters.doubleValue() / 1000.0)
+                            .durationMinutes(seconds != null ? seconds.doubleValue() / 60.0 : null)
+                            .build());
+                }
+            }
+            return computed;
+
+        } catch (Exception e) {
+            log.error("GraphHopper matrix error", e);
+            throw new RuntimeException("Lỗi khi tính ma trận khoảng cách: " + e.getMessage());
+        }
+    }
+
+    private boolean isSamePoint(PlaceSuggestion a, PlaceSuggestion b) {
+        return Objects.equals(a.getLatitude(), b.getLatitude()) && Objects.equals(a.getLongitude(), b.getLongitude());
+    }
+
     private String generateRouteDescription(double distanceMeters, long timeMillis) {
         double distanceKm = distanceMeters / 1000.0;
         double durationMin = timeMillis / 60000.0;
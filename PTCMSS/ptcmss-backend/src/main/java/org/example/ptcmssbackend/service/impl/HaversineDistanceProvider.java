@@ -0,0 +1,122 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
+import org.example.ptcmssbackend.repository.TripRepository;
+import org.example.ptcmssbackend.service.DistanceProvider;
+import org.example.ptcmssbackend.service.RoutingCacheService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bước 3 (offline): khoảng cách đường chim bay (haversine) giữa 2 tọa độ đã có trong cache
+ * x hệ số đường bộ. Hệ số được hiệu chỉnh định kỳ từ distance thực tế của các trip gần nhất
+ * (trung vị của distance / haversine), mặc định routing.road-factor-default khi chưa đủ mẫu.
+ */
+@Slf4j
+@Component
+@Order(3)
+@RequiredArgsConstructor
+public class HaversineDistanceProvider implements DistanceProvider {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final int SAMPLE_SIZE = 500;
+    private static final int MIN_SAMPLES = 10;
+    // Bỏ mẫu quá gần (sai số geocode lớn so với quãng đường)
+    private static final double MIN_SAMPLE_KM = 1.0;
+    private static final double MIN_FACTOR = 1.0;
+    private static final double MAX_FACTOR = 2.5;
+
+    private final TripRepository tripRepository;
+    private final RoutingCacheService routingCacheService;
+
+    @Value("${routing.road-factor-default:1.3}")
+    private double defaultRoadFactor;
+
+    @Value("${routing.estimate-speed-kmph:50}")
+    private double estimateSpeedKmph;
+
+    private volatile Double roadFactor;
+
+    @Override
+    public DistanceResult resolve(String from, String to) {
+        Map<String, PlaceSuggestion> places = routingCacheService.findPlaces(List.of(from, to));
+        PlaceSuggestion fromPlace = places.get(from);
+        PlaceSuggestion toPlace = places.get(to);
+        if (fromPlace == null || toPlace == null) {
+            return null;
+        }
+        double km = haversineKm(fromPlace, toPlace) * getRoadFactor();
+        return DistanceResult.builder()
+                .distanceKm(km)
+                .durationMinutes(km / Math.max(1, estimateSpeedKmph) * 60.0)
+                .from(fromPlace.getFullAddress())
+                .to(toPlace.getFullAddress())
+                .source("ESTIMATE")
+                .build();
+    }
+
+    public double getRoadFactor() {
+        Double factor = roadFactor;
+        return factor != null ? factor : defaultRoadFactor;
+    }
+
+    /**
+     * Hiệu chỉnh lại hệ số đường bộ từ lịch sử trip (6 giờ / lần)
+     */
+    @Scheduled(initialDelay = 60_000, fixedRate = 6 * 60 * 60 * 1000)
+    public void recalibrate() {
+        try {
+            List<Object[]> samples = tripRepository.findRecentDistanceSamples(PageRequest.of(0, SAMPLE_SIZE));
+            Set<String> addresses = new HashSet<>();
+            for (Object[] row : samples) {
+                addresses.add((String) row[0]);
+                addresses.add((String) row[1]);
+            }
+            Map<String, PlaceSuggestion> places = routingCacheService.findPlaces(addresses);
+
+            List<Double> ratios = new ArrayList<>();
+            for (Object[] row : samples) {
+                PlaceSuggestion from = places.get((String) row[0]);
+                PlaceSuggestion to = places.get((String) row[1]);
+                if (from == null || to == null) continue;
+                double straight = haversineKm(from, to);
+                if (straight < MIN_SAMPLE_KM) continue;
+                ratios.add(((BigDecimal) row[2]).doubleValue() / straight);
+            }
+            if (ratios.size() < MIN_SAMPLES) {
+                log.debug("[DistanceEstimate] Only {} usable samples, keeping road factor {}", ratios.size(), getRoadFactor());
+                return;
+            }
+            Collections.sort(ratios);
+            double median = ratios.get(ratios.size() / 2);
+            roadFactor = Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, median));
+            log.info("[DistanceEstimate] Road factor calibrated to {} from {} trips", roadFactor, ratios.size());
+        } catch (Exception e) {
+            log.warn("[DistanceEstimate] Cannot calibrate road factor: {}", e.getMessage());
+        }
+    }
+
+    static double haversineKm(PlaceSuggestion a, PlaceSuggestion b) {
+        double lat1 = Math.toRadians(a.getLatitude());
+        double lat2 = Math.toRadians(b.getLatitude());
+        double dLat = lat2 - lat1;
+        double dLng = Math.toRadians(b.getLongitude() - a.getLongitude());
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(h));
+    }
+}
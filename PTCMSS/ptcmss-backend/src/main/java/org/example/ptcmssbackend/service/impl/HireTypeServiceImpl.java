@@ -0,0 +1,87 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.config.CacheConfig;
+import org.example.ptcmssbackend.dto.request.HireType.HireTypeRequest;
+import org.example.ptcmssbackend.dto.response.HireType.HireTypeResponse;
+import org.example.ptcmssbackend.entity.HireTypes;
+import org.example.ptcmssbackend.repository.HireTypesRepository;
+import org.example.ptcmssbackend.service.HireTypeService;
+import org.example.ptcmssbackend.service.PricingService;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Danh mục loại thuê gần như không đổi -> cache DTO theo TTL của vùng hireTypes, bỏ cache khi ghi
+ */
+@Service
+@RequiredArgsConstructor
+public class HireTypeServiceImpl implements HireTypeService {
+
+    private final HireTypesRepository hireTypesRepository;
+    private final PricingService pricingService;
+
+    @Override
+    @Cacheable(value = CacheConfig.HIRE_TYPES, key = "'all'")
+    public List<HireTypeResponse> listAll() {
+        return hireTypesRepository.findAll().stream().map(HireTypeResponse::from).toList();
+    }
+
+    @Override
+    @Cacheable(value = CacheConfig.HIRE_TYPES, key = "'active'")
+    public List<HireTypeResponse> listActive() {
+        return hireTypesRepository.findByIsActiveTrue().stream().map(HireTypeResponse::from).toList();
+    }
+
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.HIRE_TYPES, allEntries = true)
+    public HireTypeResponse create(HireTypeRequest req) {
+        if (hireTypesRepository.findByCode(req.getCode()) != null) {
+            throw new RuntimeException("Mã loại thuê đã tồn tại: " + req.getCode());
+        }
+        HireTypes hireType = new HireTypes();
+        hireType.setIsActive(true); // mặc định đang dùng, request có isActive thì theo request
+        apply(hireType, req);
+        HireTypes saved = hireTypesRepository.save(hireType);
+        pricingService.invalidate();
+        return HireTypeResponse.from(saved);
+    }
+
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.HIRE_TYPES, allEntries = true)
+    public HireTypeResponse update(Integer id, HireTypeRequest req) {
+        HireTypes hireType = hireTypesRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy loại thuê: " + id));
+        HireTypes sameCode = hireTypesRepository.findByCode(req.getCode());
+        if (sameCode != null && !sameCode.getId().equals(id)) {
+            throw new RuntimeException("Mã loại thuê đã tồn tại: " + req.getCode());
+        }
+        apply(hireType, req);
+        HireTypes saved = hireTypesRepository.save(hireType);
+        pricingService.invalidate();
+        return HireTypeResponse.from(saved);
+    }
+
+    @Override
+    @Transactional
+    @CacheEvict(value = CacheConfig.HIRE_TYPES, allEntries = true)
+    public void delete(Integer id) {
+        hireTypesRepository.deleteById(id);
+        pricingService.invalidate();
+    }
+
+    private void apply(HireTypes hireType, HireTypeRequest req) {
+        hireType.setCode(req.getCode());
+        hireType.setName(req.getName());
+        hireType.setDescription(req.getDescription());
+        if (req.getIsActive() != null) {
+            hireType.setIsActive(req.getIsActive());
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package org.example.ptcmssbackend.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.entity.BookingLedger;
+import org.example.ptcmssbackend.entity.InvoiceLedger;
+import org.example.ptcmssbackend.entity.Invoices;
+import org.example.ptcmssbackend.entity.PaymentHistory;
+import org.example.ptcmssbackend.enums.PaymentConfirmationStatus;
+import org.example.ptcmssbackend.repository.BookingLedgerRepository;
+import org.example.ptcmssbackend.repository.InvoiceLedgerRepository;
+import org.example.ptcmssbackend.repository.InvoiceRepository;
+import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
+import org.example.ptcmssbackend.service.InvoiceLedgerService;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Sổ cái được cộng dồn theo delta dưới khóa dòng (invoice trước, booking sau) thay vì SUM lại:
+ * với MySQL REPEATABLE READ, SUM trong giao dịch đang chạy có thể đọc snapshot cũ và bỏ sót payment vừa commit.
+ * Dòng chưa có thì được tạo nguyên tử (INSERT ... ON DUPLICATE KEY) rồi khởi tạo từ payment_history; job đối soát hằng đêm bù các dòng thiếu/lệch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InvoiceLedgerServiceImpl implements InvoiceLedgerService {
+
+    private static final int VERIFY_BATCH_SIZE = 500;
+
+    private final InvoiceLedgerRepository invoiceLedgerRepository;
+    private final BookingLedgerRepository bookingLedgerRepository;
+    private final PaymentHistoryRepository paymentHistoryRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate requiresNew;
+
+    @PostConstruct
+    void init() {
+        // Mỗi dòng lệch được sửa trong giao dịch riêng: khóa dòng trước rồi mới đọc lại tổng
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    @Transactional
+    public void applyPayment(PaymentHistory payment, PaymentConfirmationStatus oldStatus, PaymentConfirmationStatus newStatus) {
+        Invoices invoice = payment.getInvoice();
+        if (invoice == null || invoice.getId() == null || oldStatus == newStatus) {
+            return;
+        }
+        BigDecimal amount = payment.getAmount() != null ? payment.getAmount() : BigDecimal.ZERO;
+        BigDecimal confirmedDelta = share(PaymentConfirmationStatus.CONFIRMED, newStatus, amount)
+                .subtract(share(PaymentConfirmationStatus.CONFIRMED, oldStatus, amount));
+        BigDecimal pendingDelta = share(PaymentConfirmationStatus.PENDING, newStatus, amount)
+                .subtract(share(PaymentConfirmationStatus.PENDING, oldStatus, amount));
+        boolean unconfirmed = oldStatus == PaymentConfirmationStatus.CONFIRMED;
+        Instant confirmedAt = newStatus == PaymentConfirmationStatus.CONFIRMED ? payment.getPaymentDate() : null;
+        Instant now = Instant.now();
+
+        InvoiceLedger invoiceLedger = lockInvoiceLedger(invoice.getId());
+        if (invoiceLedger.getUpdatedAt() != null) {
+            invoiceLedger.setConfirmedPaid(invoiceLedger.getConfirmedPaid().add(confirmedDelta));
+            invoiceLedger.setPendingAmount(invoiceLedger.getPendingAmount().add(pendingDelta));
+            if (unconfirmed) {
+                invoiceLedger.setLastPaymentAt(lastConfirmedAt(paymentHistoryRepository.summarizeByInvoiceId(invoice.getId())));
+            } else {
+                invoiceLedger.setLastPaymentAt(later(invoiceLedger.getLastPaymentAt(), confirmedAt));
+            }
+        } else {
+            // payment của người gọi đã được flush nên tổng từ payment_history đã gồm thay đổi này
+            applyTotals(invoiceLedger, paymentHistoryRepository.summarizeByInvoiceId(invoice.getId()));
+        }
+        invoiceLedger.setBookingId(invoice.getBooking() != null ? invoice.getBooking().getId() : null);
+        invoiceLedger.setBalance(amountOf(invoice).subtract(invoiceLedger.getConfirmedPaid()));
+        invoiceLedger.setUpdatedAt(now);
+        invoiceLedgerRepository.save(invoiceLedger);
+
+        if (invoice.getBooking() == null) {
+            return;
+        }
+        Integer bookingId = invoice.getBooking().getId();
+        BookingLedger bookingLedger = lockBookingLedger(bookingId);
+        if (bookingLedger.getUpdatedAt() != null) {
+            bookingLedger.setConfirmedPaid(bookingLedger.getConfirmedPaid().add(confirmedDelta));
+            bookingLedger.setPendingAmount(bookingLedger.getPendingAmount().add(pendingDelta));
+            if (unconfirmed) {
+                bookingLedger.setLastPaymentAt(lastConfirmedAt(paymentHistoryRepository.summarizeByBookingId(bookingId)));
+            } else {
+                bookingLedger.setLastPaymentAt(later(bookingLedger.getLastPaymentAt(), confirmedAt));
+            }
+        } else {
+            applyTotals(bookingLedger, paymentHistoryRepository.summarizeByBookingId(bookingId));
+        }
+        bookingLedger.setUpdatedAt(now);
+        bookingLedgerRepository.save(bookingLedger);
+    }
+
+    @Override
+    @Transactional
+    public void syncInvoice(Invoices invoice) {
+        if (invoice == null || invoice.getId() == null) {
+            return;
+        }
+        InvoiceLedger ledger = lockInvoiceLedger(invoice.getId());
+        if (ledger.getUpdatedAt() == null) {
+            applyTotals(ledger, paymentHistoryRepository.summarizeByInvoiceId(invoice.getId()));
+        }
+        ledger.setBookingId(invoice.getBooking() != null ? invoice.getBooking().getId() : null);
+        ledger.setBalance(amountOf(invoice).subtract(ledger.getConfirmedPaid()));
+        ledger.setUpdatedAt(Instant.now());
+        invoiceLedgerRepository.save(ledger);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public BigDecimal getConfirmedPaid(Integer invoiceId) {
+        return invoiceLedgerRepository.findById(invoiceId)
+                .map(InvoiceLedger::getConfirmedPaid)
+                .orElseGet(() -> orZero(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Integer, BigDecimal> getConfirmedPaid(Collection<Integer> invoiceIds) {
+        Map<Integer, BigDecimal> result = new HashMap<>();
+        if (invoiceIds == null || invoiceIds.isEmpty()) {
+            return result;
+        }
+        for (InvoiceLedger ledger : invoiceLedgerRepository.findAllById(invoiceIds)) {
+            result.put(ledger.getInvoiceId(), ledger.getConfirmedPaid());
+        }
+        List<Integer> missing = invoiceIds.stream()
+                .filter(id -> !result.containsKey(id))
+                .distinct()
+                .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            for (Object[] row : paymentHistoryRepository.sumConfirmedByInvoiceIds(missing)) {
+                result.put((Integer) row[0], toBigDecimal(row[1]));
+            }
+            missing.forEach(id -> result.putIfAbsent(id, BigDecimal.ZERO));
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public BigDecimal getPendingAmount(Integer invoiceId) {
+        return invoiceLedgerRepository.findById(invoiceId)
+                .map(InvoiceLedger::getPendingAmount)
+                .orElseGet(() -> totalAt(paymentHistoryRepository.summarizeByInvoiceId(invoiceId), 1));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public BigDecimal getBookingConfirmedPaid(Integer bookingId) {
+        return bookingLedgerRepository.findById(bookingId)
+                .map(BookingLedger::getConfirmedPaid)
+                .orElseGet(() -> orZero(invoiceRepository.calculateConfirmedPaidAmountByBookingId(bookingId)));
+    }
+
+    /**
+     * Đối soát hằng đêm: so sổ cái với tổng từ payment_history, tạo dòng còn thiếu và sửa dòng lệch
+     */
+    @Override
+    @Scheduled(cron = "${ledger.verify-cron:0 30 2 * * *}")
+    public int verifyAndRepair() {
+        int repaired = 0;
+        int afterId = 0;
+        List<Object[]> rows;
+        do {
+            rows = paymentHistoryRepository.summarizeInvoicesAfter(afterId, PageRequest.of(0, VERIFY_BATCH_SIZE));
+            Map<Integer, InvoiceLedger> ledgers = invoiceLedgerRepository.findAllById(idsOf(rows)).stream()
+                    .collect(Collectors.toMap(InvoiceLedger::getInvoiceId, Function.identity()));
+            for (Object[] row : rows) {
+                Integer invoiceId = (Integer) row[0];
+                if (!matches(ledgers.get(invoiceId), (Integer) row[1], toBigDecimal(row[2]), row, 3)) {
+                    requiresNew.executeWithoutResult(status -> repairInvoice(invoiceId));
+                    repaired++;
+                }
+                afterId = invoiceId;
+            }
+        } while (rows.size() == VERIFY_BATCH_SIZE);
+
+        afterId = 0;
+        do {
+            rows = paymentHistoryRepository.summarizeBookingsAfter(afterId, PageRequest.of(0, VERIFY_BATCH_SIZE));
+            Map<Integer, BookingLedger> ledgers = bookingLedgerRepository.findAllById(idsOf(rows)).stream()
+                    .collect(Collectors.toMap(BookingLedger::getBookingId, Function.identity()));
+            for (Object[] row : rows) {
+                Integer bookingId = (Integer) row[0];
+                if (!matches(ledgers.get(bookingId), row, 1)) {
+                    requiresNew.executeWithoutResult(status -> repairBooking(bookingId));
+                    repaired++;
+                }
+                afterId = bookingId;
+            }
+        } while (rows.size() == VERIFY_BATCH_SIZE);
+
+        if (repaired > 0) {
+            log.warn("[InvoiceLedger] Repaired {} ledger rows out of sync with payment_history", repaired);
+        } else {
+            log.info("[InvoiceLedger] Ledger verified, no drift");
+        }
+        return repaired;
+    }
+
+    // Khóa dòng trước khi đọc tổng: mọi giao dịch ghi payment của hóa đơn này đã commit xong
+    private void repairInvoice(Integer invoiceId) {
+        Invoices invoice = invoiceRepository.findById(invoiceId).orElse(null);
+        if (invoice == null) {
+            return;
+        }
+        InvoiceLedger ledger = lockInvoiceLedger(invoiceId);
+        applyTotals(ledger, paymentHistoryRepository.summarizeByInvoiceId(invoiceId));
+        ledger.setBookingId(invoice.getBooking() != null ? invoice.getBooking().getId() : null);
+        ledger.setBalance(amountOf(invoice).subtract(ledger.getConfirmedPaid()));
+        ledger.setUpdatedAt(Instant.now());
+        invoiceLedgerRepository.save(ledger);
+    }
+
+    private void repairBooking(Integer bookingId) {
+        BookingLedger ledger = lockBookingLedger(bookingId);
+        applyTotals(ledger, paymentHistoryRepository.summarizeByBookingId(bookingId));
+        ledger.setUpdatedAt(Instant.now());
+        bookingLedgerRepository.save(ledger);
+    }
+
+    // Dòng chưa có thì tạo bằng INSERT nguyên tử rồi mới khóa: hai giao dịch cùng ghi lần đầu không thể cùng tạo dòng
+    private InvoiceLedger lockInvoiceLedger(Integer invoiceId) {
+        invoiceLedgerRepository.insertIfAbsent(invoiceId);
+        return invoiceLedgerRepository.findForUpdate(invoiceId)
+                .orElseThrow(() -> new RuntimeException("Không khóa được sổ cái hóa đơn: " + invoiceId));
+    }
+
+    private BookingLedger lockBookingLedger(Integer bookingId) {
+        bookingLedgerRepository.insertIfAbsent(bookingId);
+        return bookingLedgerRepository.findForUpdate(bookingId)
+                .orElseThrow(() -> new RuntimeException("Không khóa được sổ cái đơn hàng: " + bookingId));
+    }
+
+    private boolean matches(InvoiceLedger ledger, Integer bookingId, BigDecimal amount, Object[] row, int offset) {
+        if (ledger == null) {
+            return false;
+        }
+        BigDecimal confirmed = toBigDecimal(row[offset]);
+        return Objects.equals(ledger.getBookingId(), bookingId)
+                && sameAmount(ledger.getConfirmedPaid(), confirmed)
+                && sameAmount(ledger.getPendingAmount(), toBigDecimal(row[offset + 1]))
+                && sameAmount(ledger.getBalance(), amount.subtract(confirmed))
+                && Objects.equals(ledger.getLastPaymentAt(), row[offset + 2]);
+    }
+
+    private boolean matches(BookingLedger ledger, Object[] row, int offset) {
+        return ledger != null
+                && sameAmount(ledger.getConfirmedPaid(), toBigDecimal(row[offset]))
+                && sameAmount(ledger.getPendingAmount(), toBigDecimal(row[offset + 1]))
+                && Objects.equals(ledger.getLastPaymentAt(), row[offset + 2]);
+    }
+
+    private void applyTotals(InvoiceLedger ledger, List<Object[]> totals) {
+        ledger.setConfirmedPaid(totalAt(totals, 0));
+        ledger.setPendingAmount(totalAt(totals, 1));
+        ledger.setLastPaymentAt(lastConfirmedAt(totals));
+    }
+
+    private void applyTotals(BookingLedger ledger, List<Object[]> totals) {
+        ledger.setConfirmedPaid(totalAt(totals, 0));
+        ledger.setPendingAmount(totalAt(totals, 1));
+        ledger.setLastPaymentAt(lastConfirmedAt(totals));
+    }
+
+    private static BigDecimal share(PaymentConfirmationStatus bucket, PaymentConfirmationStatus status, BigDecimal amount) {
+        return bucket == status ? amount : BigDecimal.ZERO;
+    }
+
+    private static List<Integer> idsOf(List<Object[]> rows) {
+        List<Integer> ids = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add((Integer) row[0]);
+        }
+        return ids;
+    }
+
+    private static BigDecimal totalAt(List<Object[]> totals, int index) {
+        return totals.isEmpty() ? BigDecimal.ZERO : toBigDecimal(totals.get(0)[index]);
+    }
+
+    private static Instant lastConfirmedAt(List<Object[]> totals) {
+        return totals.isEmpty() ? null : (Instant) totals.get(0)[2];
+    }
+
+    private static Instant later(Instant current, Instant candidate) {
+        if (candidate == null) return current;
+        if (current == null) return candidate;
+        return candidate.isAfter(current) ? candidate : current;
+    }
+
+    private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        return a != null && b != null && a.compareTo(b) == 0;
+    }
+
+    private static BigDecimal amountOf(Invoices invoice) {
+        return invoice.getAmount() != null ? invoice.getAmount() : BigDecimal.ZERO;
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) return BigDecimal.ZERO;
+        if (value instanceof BigDecimal decimal) return decimal;
+        return new BigDecimal(value.toString());
+    }
+}
@@ -8,6 +8,7 @@ import org.example.ptcmssbackend.dto.request.Invoice.SendInvoiceRequest;
 import org.example.ptcmssbackend.dto.request.Invoice.VoidInvoiceRequest;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceResponse;
+import org.example.ptcmssbackend.dto.response.Invoice.InvoiceScrollResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.PaymentHistoryResponse;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.BookingStatus;
@@ -19,11 +20,14 @@ import org.example.ptcmssbackend.exception.InvoiceException;
 import org.example.ptcmssbackend.exception.PaymentException;
 import org.example.ptcmssbackend.exception.ResourceNotFoundException;
 import org.example.ptcmssbackend.repository.*;
+import org.example.ptcmssbackend.service.InvoiceLedgerService;
 import org.example.ptcmssbackend.service.InvoiceService;
 import org.example.ptcmssbackend.service.SystemSettingService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -31,7 +35,11 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -41,6 +49,9 @@ public class InvoiceServiceImpl implements InvoiceService {
 
     // Sử dụng timezone cố định để tránh lỗi khi deploy lên VPS (timezone khác với local)
     private static final ZoneId VIETNAM_ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final Set<String> SORTABLE_FIELDS =
+            Set.of("invoiceDate", "dueDate", "amount", "invoiceNumber", "createdAt", "id");
 
     private final InvoiceRepository invoiceRepository;
     private final BranchesRepository branchesRepository;
@@ -48,8 +59,9 @@ public class InvoiceServiceImpl implements InvoiceService {
     private final BookingRepository bookingRepository;
     private final EmployeeRepository employeeRepository;
     private final PaymentHistoryRepository paymentHistoryRepository;
+    private final InvoiceLedgerService invoiceLedgerService;
     private final org.example.ptcmssbackend.service.EmailService emailService;
-    private final org.example.ptcmssbackend.repository.NotificationRepository notificationRepository;
+    private final org.example.ptcmssbackend.service.NotificationDispatcher notificationDispatcher;
     private final org.example.ptcmssbackend.service.WebSocketNotificationService webSocketNotificationService;
     private final TripRepository tripRepository;
     private final TripDriverRepository tripDriverRepository;
@@ -128,8 +140,10 @@ public class InvoiceServiceImpl implements InvoiceService {
                 int extraDays = getSystemSettingInt("DUE_DATE_DEBT_DAYS", 7);
                 dueDate = baseDate.plusDays(extraDays);
             } else {
-                // Fallback cuối: paymentTerms
-                LocalDate invoiceLocalDate = invoice.getInvoiceDate().atZone(ZoneId.systemDefault()).toLocalDate();
+                // Fallback cuối: paymentTerms (invoiceDate chỉ có sau khi lưu nên tính từ hôm nay)
+                LocalDate invoiceLocalDate = invoice.getInvoiceDate() != null
+                        ? invoice.getInvoiceDate().atZone(ZoneId.systemDefault()).toLocalDate()
+                        : LocalDate.now(ZoneId.systemDefault());
                 int days = getDaysFromPaymentTerms(invoice.getPaymentTerms());
                 dueDate = invoiceLocalDate.plusDays(days);
             }
@@ -161,79 +175,89 @@ public class InvoiceServiceImpl implements InvoiceService {
             Integer branchId, String type, String status, String paymentStatus,
             LocalDate startDate, LocalDate endDate, Integer customerId, String keyword, Pageable pageable) {
 
-        InvoiceType invoiceType = null;
-        if (type != null) {
-            try {
-                invoiceType = InvoiceType.valueOf(type.toUpperCase());
-            } catch (IllegalArgumentException e) {
-                // Invalid type, keep as null
-            }
-        }
+        InvoiceType invoiceType = parseInvoiceType(type);
         InvoiceStatus invoiceStatus = status != null ? InvoiceStatus.valueOf(status.toUpperCase()) : null;
         PaymentStatus paymentStatusEnum = paymentStatus != null ? PaymentStatus.valueOf(paymentStatus.toUpperCase()) : null;
 
         Instant startInstant = startDate != null ? startDate.atStartOfDay(ZoneId.systemDefault()).toInstant() : null;
         Instant endInstant = endDate != null ? endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant() : null;
 
-        List<Invoices> invoices = invoiceRepository.findInvoicesWithFilters(
-                branchId, invoiceType, invoiceStatus, startInstant, endInstant, customerId, paymentStatusEnum);
-
-        // Filter: Loại bỏ các invoice chỉ có payment PENDING (chưa có payment CONFIRMED nào)
-        // Logic: Invoice chỉ xuất hiện trong danh sách khi:
-        // - Có ít nhất 1 payment CONFIRMED, HOẶC
-        // - Không có payment nào cả (invoice được tạo trước khi có payment)
-        // Invoice chỉ có payment PENDING (chưa có CONFIRMED) thì không hiển thị
-        invoices = invoices.stream()
-                .filter(inv -> {
-                    // Kiểm tra số lượng payment PENDING
-                    Integer pendingCount = paymentHistoryRepository.countPendingPaymentsByInvoiceId(inv.getId());
-                    boolean hasPending = pendingCount != null && pendingCount > 0;
-                    
-                    // Kiểm tra số tiền đã CONFIRMED
-                    BigDecimal confirmedAmount = paymentHistoryRepository.sumConfirmedByInvoiceId(inv.getId());
-                    boolean hasConfirmed = confirmedAmount != null && confirmedAmount.compareTo(BigDecimal.ZERO) > 0;
-                    
-                    // Nếu có payment PENDING nhưng không có payment CONFIRMED → không hiển thị
-                    if (hasPending && !hasConfirmed) {
-                        return false;
-                    }
-                    
-                    // Các trường hợp khác đều hiển thị:
-                    // - Có payment CONFIRMED (có thể kèm theo PENDING)
-                    // - Không có payment nào cả
-                    return true;
-                })
-                .collect(Collectors.toList());
+        // Lọc (kể cả keyword và điều kiện ẩn hóa đơn chỉ có payment PENDING), sắp xếp và phân trang đều trong DB
+        Pageable sanitized = sanitizeSort(pageable);
+        Page<Invoices> page = invoiceRepository.searchInvoices(
+                branchId, invoiceType, invoiceStatus, startInstant, endInstant, customerId, paymentStatusEnum,
+                toKeywordPattern(keyword), sanitized);
 
-        // Filter by keyword if provided
-        if (keyword != null && !keyword.trim().isEmpty()) {
-            String keywordLower = keyword.trim().toLowerCase();
-            invoices = invoices.stream()
-                    .filter(inv -> {
-                        String invoiceNo = (inv.getInvoiceNumber() != null ? inv.getInvoiceNumber() : "").toLowerCase();
-                        String customerName = (inv.getCustomer() != null && inv.getCustomer().getFullName() != null 
-                                ? inv.getCustomer().getFullName() : "").toLowerCase();
-                        String bookingCode = "";
-                        if (inv.getBooking() != null && inv.getBooking().getId() != null) {
-                            bookingCode = ("ORD-" + inv.getBooking().getId()).toLowerCase();
-                        }
-                        return invoiceNo.contains(keywordLower) 
-                                || customerName.contains(keywordLower) 
-                                || bookingCode.contains(keywordLower);
-                    })
-                    .collect(Collectors.toList());
+        // Trả về đúng size/sort đã áp dụng (size bị chặn bởi MAX_PAGE_SIZE) để totalPages khớp với dữ liệu
+        return new PageImpl<>(mapToListResponses(page.getContent()), sanitized, page.getTotalElements());
+    }
+
+    @Override
+    public InvoiceScrollResponse scrollInvoices(
+            Integer branchId, String type, String status, String paymentStatus,
+            LocalDate startDate, LocalDate endDate, Integer customerId, String keyword,
+            Integer afterId, int size) {
+
+        InvoiceType invoiceType = parseInvoiceType(type);
+        InvoiceStatus invoiceStatus = status != null ? InvoiceStatus.valueOf(status.toUpperCase()) : null;
+        PaymentStatus paymentStatusEnum = paymentStatus != null ? PaymentStatus.valueOf(paymentStatus.toUpperCase()) : null;
+
+        Instant startInstant = startDate != null ? startDate.atStartOfDay(ZoneId.systemDefault()).toInstant() : null;
+        Instant endInstant = endDate != null ? endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant() : null;
+
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // Lấy dư 1 dòng để biết còn trang sau hay không (không cần COUNT)
+        List<Invoices> rows = invoiceRepository.searchInvoicesAfter(
+                branchId, invoiceType, invoiceStatus, startInstant, endInstant, customerId, paymentStatusEnum,
+                toKeywordPattern(keyword), afterId, PageRequest.of(0, limit + 1));
+
+        boolean hasNext = rows.size() > limit;
+        List<Invoices> pageRows = hasNext ? rows.subList(0, limit) : rows;
+
+        InvoiceScrollResponse response = new InvoiceScrollResponse();
+        response.setItems(mapToListResponses(pageRows));
+        response.setHasNext(hasNext);
+        response.setNextAfterId(hasNext ? pageRows.get(pageRows.size() - 1).getId() : null);
+        return response;
+    }
+
+    private InvoiceType parseInvoiceType(String type) {
+        if (type == null) {
+            return null;
         }
+        try {
+            return InvoiceType.valueOf(type.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // Invalid type, keep as null
+            return null;
+        }
+    }
 
-        // Manual pagination
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), invoices.size());
-        List<Invoices> pagedInvoices = invoices.subList(start, end);
+    /**
+     * Keyword -> mẫu LIKE chứa chuỗi; '!', '%' và '_' do người dùng nhập được thoát (ESCAPE '!' trong truy vấn)
+     * để khớp đúng ký tự thay vì thành wildcard
+     */
+    private String toKeywordPattern(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return null;
+        }
+        String escaped = keyword.trim().toLowerCase()
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+        return "%" + escaped + "%";
+    }
 
-        List<InvoiceListResponse> responses = pagedInvoices.stream()
-                .map(this::mapToListResponse)
+    /**
+     * Chỉ cho sắp xếp theo các cột có index / có nghĩa, luôn thêm id để thứ tự ổn định giữa các trang
+     */
+    private Pageable sanitizeSort(Pageable pageable) {
+        List<Sort.Order> orders = pageable.getSort().stream()
+                .filter(order -> SORTABLE_FIELDS.contains(order.getProperty()))
                 .collect(Collectors.toList());
-
-        return new PageImpl<>(responses, pageable, invoices.size());
+        Sort sort = orders.isEmpty() ? Sort.by(Sort.Direction.DESC, "invoiceDate") : Sort.by(orders);
+        sort = sort.and(Sort.by(Sort.Direction.DESC, "id"));
+        return PageRequest.of(pageable.getPageNumber(), Math.min(pageable.getPageSize(), MAX_PAGE_SIZE), sort);
     }
 
     @Override
@@ -255,6 +279,7 @@ public class InvoiceServiceImpl implements InvoiceService {
         if (request.getNote() != null) invoice.setNote(request.getNote());
 
         invoice = invoiceRepository.save(invoice);
+        invoiceLedgerService.syncInvoice(invoice);
         return mapToResponse(invoice);
     }
 
@@ -279,6 +304,7 @@ public class InvoiceServiceImpl implements InvoiceService {
         }
 
         invoiceRepository.save(invoice);
+        invoiceLedgerService.syncInvoice(invoice);
         log.info("[InvoiceService] Voided invoice: {}", invoice.getInvoiceNumber());
     }
 
@@ -347,6 +373,7 @@ public class InvoiceServiceImpl implements InvoiceService {
         
         // Flush để đảm bảo payment được lưu vào DB trước khi query
         paymentHistoryRepository.flush();
+        invoiceLedgerService.applyPayment(payment, null, payment.getConfirmationStatus());
         
         // Gửi thông báo cho Accountant nếu payment có status PENDING (cần xác nhận)
         if (payment.getConfirmationStatus() == PaymentConfirmationStatus.PENDING) {
@@ -399,9 +426,8 @@ public class InvoiceServiceImpl implements InvoiceService {
         Invoices invoice = invoiceRepository.findById(invoiceId)
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice not found: " + invoiceId));
 
-        // Chỉ tính các payment đã được xác nhận (CONFIRMED)
-        BigDecimal totalPaid = paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId);
-        return invoice.getAmount().subtract(totalPaid != null ? totalPaid : BigDecimal.ZERO);
+        // Chỉ tính các payment đã được xác nhận (CONFIRMED), đọc từ sổ cái
+        return invoice.getAmount().subtract(invoiceLedgerService.getConfirmedPaid(invoiceId));
     }
 
     @Override
@@ -449,7 +475,7 @@ public class InvoiceServiceImpl implements InvoiceService {
                     invoiceUrl,
                     note
             );
-            log.info("[InvoiceService] Invoice {} sent to {}", invoice.getInvoiceNumber(), request.getEmail());
+            log.info("[InvoiceService] Invoice {} queued for email to {}", invoice.getInvoiceNumber(), request.getEmail());
         } catch (Exception e) {
             log.error("[InvoiceService] Failed to send invoice email: {}", e.getMessage(), e);
             throw new RuntimeException("Không thể gửi email: " + e.getMessage(), e);
@@ -516,9 +542,9 @@ public class InvoiceServiceImpl implements InvoiceService {
 
         // Calculate balance
         // Chỉ tính các payment đã được xác nhận (CONFIRMED)
-        BigDecimal paidAmount = paymentHistoryRepository.sumConfirmedByInvoiceId(invoice.getId());
-        response.setPaidAmount(paidAmount != null ? paidAmount : BigDecimal.ZERO);
-        response.setBalance(calculateBalance(invoice.getId()));
+        BigDecimal paidAmount = invoiceLedgerService.getConfirmedPaid(invoice.getId());
+        response.setPaidAmount(paidAmount);
+        response.setBalance(invoice.getAmount().subtract(paidAmount));
 
         // Calculate days overdue
         if (invoice.getDueDate() != null && invoice.getPaymentStatus() != PaymentStatus.PAID) {
@@ -535,7 +561,27 @@ public class InvoiceServiceImpl implements InvoiceService {
         return response;
     }
 
-    private InvoiceListResponse mapToListResponse(Invoices invoice) {
+    /**
+     * Map 1 trang hóa đơn: số tiền đã thu và số payment PENDING được lấy theo lô (2 truy vấn / trang)
+     */
+    private List<InvoiceListResponse> mapToListResponses(List<Invoices> invoices) {
+        if (invoices.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Integer> ids = invoices.stream().map(Invoices::getId).collect(Collectors.toList());
+        Map<Integer, BigDecimal> paidByInvoice = invoiceLedgerService.getConfirmedPaid(ids);
+        Map<Integer, Integer> pendingByInvoice = new HashMap<>();
+        for (Object[] row : paymentHistoryRepository.countPendingByInvoiceIds(ids)) {
+            pendingByInvoice.put((Integer) row[0], ((Number) row[1]).intValue());
+        }
+        return invoices.stream()
+                .map(inv -> mapToListResponse(inv,
+                        paidByInvoice.getOrDefault(inv.getId(), BigDecimal.ZERO),
+                        pendingByInvoice.getOrDefault(inv.getId(), 0)))
+                .collect(Collectors.toList());
+    }
+
+    private InvoiceListResponse mapToListResponse(Invoices invoice, BigDecimal paidAmount, int pendingCount) {
         InvoiceListResponse response = new InvoiceListResponse();
         response.setInvoiceId(invoice.getId());
         response.setInvoiceNumber(invoice.getInvoiceNumber());
@@ -554,9 +600,8 @@ public class InvoiceServiceImpl implements InvoiceService {
         response.setInvoiceDate(invoice.getInvoiceDate());
 
         // Chỉ tính các payment đã được xác nhận (CONFIRMED)
-        BigDecimal paidAmount = paymentHistoryRepository.sumConfirmedByInvoiceId(invoice.getId());
-        response.setPaidAmount(paidAmount != null ? paidAmount : BigDecimal.ZERO);
-        response.setBalance(calculateBalance(invoice.getId()));
+        response.setPaidAmount(paidAmount);
+        response.setBalance(invoice.getAmount().subtract(paidAmount));
 
         if (invoice.getDueDate() != null && invoice.getPaymentStatus() != PaymentStatus.PAID) {
             LocalDate today = LocalDate.now(VIETNAM_ZONE);
@@ -565,9 +610,8 @@ public class InvoiceServiceImpl implements InvoiceService {
             }
         }
 
-        // Đếm số payment requests đang chờ xác nhận
-        Integer pendingCount = paymentHistoryRepository.countPendingPaymentsByInvoiceId(invoice.getId());
-        response.setPendingPaymentCount(pendingCount != null ? pendingCount : 0);
+        // Số payment requests đang chờ xác nhận
+        response.setPendingPaymentCount(pendingCount);
 
         return response;
     }
@@ -626,8 +670,10 @@ public class InvoiceServiceImpl implements InvoiceService {
 
         try {
             PaymentConfirmationStatus confirmationStatus = PaymentConfirmationStatus.valueOf(status.toUpperCase());
+            PaymentConfirmationStatus oldStatus = payment.getConfirmationStatus();
             payment.setConfirmationStatus(confirmationStatus);
             payment = paymentHistoryRepository.save(payment);
+            invoiceLedgerService.applyPayment(payment, oldStatus, confirmationStatus);
             log.info("[InvoiceService] Payment {} confirmation status updated to {}", paymentId, confirmationStatus);
 
             // Update invoice payment status nếu cần
@@ -790,6 +836,7 @@ public class InvoiceServiceImpl implements InvoiceService {
                         statusText);
                     
                     webSocketNotificationService.sendPaymentUpdate(
+                        invoice.getBranch() != null ? invoice.getBranch().getId() : null,
                         invoice.getId(),
                         bookingId,
                         confirmationStatus.name(),
@@ -814,6 +861,7 @@ public class InvoiceServiceImpl implements InvoiceService {
     }
 
     @Override
+    @Transactional
     public void deletePayment(Integer paymentId) {
         PaymentHistory payment = paymentHistoryRepository.findById(paymentId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy thanh toán: " + paymentId));
@@ -826,6 +874,7 @@ public class InvoiceServiceImpl implements InvoiceService {
 
         // Xóa payment
         paymentHistoryRepository.delete(payment);
+        invoiceLedgerService.applyPayment(payment, PaymentConfirmationStatus.PENDING, null);
 
         // Update invoice payment status nếu cần
         Invoices invoice = payment.getInvoice();
@@ -901,7 +950,7 @@ public class InvoiceServiceImpl implements InvoiceService {
         int count = 0;
         for (Invoices invoice : overdueInvoices) {
             // Kiểm tra xem invoice có còn nợ không (tính payment đã CONFIRMED)
-            BigDecimal balance = calculateBalance(invoice.getId());
+            BigDecimal balance = invoice.getAmount().subtract(invoiceLedgerService.getConfirmedPaid(invoice.getId()));
             if (balance.compareTo(BigDecimal.ZERO) > 0) {
                 // Còn nợ → đánh dấu OVERDUE (vào bảng công nợ)
                 invoice.setPaymentStatus(PaymentStatus.OVERDUE);
@@ -924,9 +973,6 @@ public class InvoiceServiceImpl implements InvoiceService {
             String customerName = invoice.getCustomer() != null ? invoice.getCustomer().getFullName() : "Khách hàng";
             String amountStr = new java.text.DecimalFormat("#,###").format(payment.getAmount()) + " đ";
             
-            // Tìm tất cả Accountants trong chi nhánh
-            List<Employees> accountants = employeeRepository.findByRoleNameAndBranchId("Accountant", branchId);
-            
             String title = "Yêu cầu thanh toán mới";
             String message = String.format(
                     "Có yêu cầu thanh toán %s từ %s cho hóa đơn %s cần xác nhận.",
@@ -935,35 +981,12 @@ public class InvoiceServiceImpl implements InvoiceService {
                     invoice.getInvoiceNumber()
             );
             
-            for (Employees accountant : accountants) {
-                if (accountant.getUser() != null) {
-                    // 1. Lưu notification vào DB
-                    org.example.ptcmssbackend.entity.Notifications notification = new org.example.ptcmssbackend.entity.Notifications();
-                    notification.setUser(accountant.getUser());
-                    notification.setTitle(title);
-                    notification.setMessage(message);
-                    notification.setIsRead(false);
-                    notificationRepository.save(notification);
-                    
-                    // 2. Gửi WebSocket notification để hiển thị realtime
-                    try {
-                        webSocketNotificationService.sendUserNotification(
-                                accountant.getUser().getId(),
-                                title,
-                                message,
-                                "INFO"
-                        );
-                        log.debug("[InvoiceService] Sent WebSocket notification to accountant: {}", accountant.getUser().getUsername());
-                    } catch (Exception wsErr) {
-                        log.warn("[InvoiceService] Failed to send WebSocket notification to accountant {}: {}", 
-                                accountant.getUser().getUsername(), wsErr.getMessage());
-                    }
-                }
-            }
+            // Lưu notification cho mọi Accountant trong chi nhánh (1 batch), WebSocket gửi sau commit
+            int notified = notificationDispatcher.notifyRole("Accountant", branchId, title, message, null, "INFO");
             
-            if (!accountants.isEmpty()) {
+            if (notified > 0) {
                 log.info("[InvoiceService] Notified {} accountants about pending payment for invoice {}", 
-                        accountants.size(), invoice.getInvoiceNumber());
+                        notified, invoice.getInvoiceNumber());
             }
         } catch (Exception e) {
             // Không throw exception để không ảnh hưởng đến flow chính
@@ -7,6 +7,7 @@ import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
 import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.common.TokenIdentity;
 import org.example.ptcmssbackend.common.TokenType;
 import org.example.ptcmssbackend.service.JwtService;
 import org.springframework.beans.factory.annotation.Value;
@@ -52,6 +53,7 @@ public class JwtServiceImpl implements JwtService {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(username)
+                .setId(UUID.randomUUID().toString())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + expriMinutes * 60 * 1000))
                 .signWith(getSecretKey(ACCESS_TOKEN), SignatureAlgorithm.HS256)
@@ -88,6 +90,19 @@ public class JwtServiceImpl implements JwtService {
         return extractClaim(tokenType, token, Claims::getSubject);
     }
 
+    /**
+     * Trích xuất username + token id (jti) - dùng cho filter xác thực ở mỗi request
+     */
+    @Override
+    public TokenIdentity extractIdentity(String token, TokenType tokenType) {
+        Claims claims = extractAllClaim(token, tokenType);
+        String tokenId = claims.getId();
+        if (tokenId == null && claims.getIssuedAt() != null) {
+            tokenId = String.valueOf(claims.getIssuedAt().getTime());
+        }
+        return new TokenIdentity(claims.getSubject(), tokenId);
+    }
+
     /**
      * Tạo token cho reset mật khẩu
      */
@@ -0,0 +1,200 @@
+package org.example.ptcmssbackend.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.config.CacheConfig;
+import org.example.ptcmssbackend.repository.EmployeeRepository;
+import org.example.ptcmssbackend.service.NotificationDispatcher;
+import org.example.ptcmssbackend.service.NotificationUnreadCounter;
+import org.example.ptcmssbackend.service.WebSocketNotificationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Người nhận theo (vai trò, chi nhánh) được cache ngắn hạn (xóa khi nhân viên/user thay đổi) nên mỗi lần gửi
+ * chỉ tốn 1 lệnh INSERT batch. Việc đẩy WebSocket chạy sau commit trên pool giới hạn, không kéo dài
+ * transaction đang giữ khóa dòng; khi pool đầy thì bỏ qua vì thông báo đã nằm trong DB.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationDispatcherImpl implements NotificationDispatcher {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO notifications (userId, title, message, createdAt, isRead) VALUES (?, ?, ?, ?, ?)";
+    private static final int TITLE_MAX_LENGTH = 100;
+    private static final int MESSAGE_MAX_LENGTH = 500;
+
+    private final EmployeeRepository employeeRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final WebSocketNotificationService webSocketNotificationService;
+    private final CacheManager cacheManager;
+    private final NotificationUnreadCounter unreadCounter;
+
+    @Value("${notification.dispatch.threads:2}")
+    private int threads;
+
+    @Value("${notification.dispatch.queue-size:500}")
+    private int queueSize;
+
+    @Value("${notification.dispatch.batch-size:100}")
+    private int batchSize;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "notification-push-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public List<Integer> getRecipientUserIds(String roleName, Integer branchId) {
+        if (roleName == null || branchId == null) {
+            return List.of();
+        }
+        Cache cache = cacheManager.getCache(CacheConfig.ROLE_RECIPIENTS);
+        if (cache == null) {
+            return loadRecipients(roleName, branchId);
+        }
+        List<Integer> userIds = cache.get(roleName + ":" + branchId, () -> loadRecipients(roleName, branchId));
+        return userIds != null ? userIds : List.of();
+    }
+
+    @Override
+    public int notifyRole(String roleName, Integer branchId, String title, String message, String pushMessage, String type) {
+        List<Integer> userIds = getRecipientUserIds(roleName, branchId);
+        if (userIds.isEmpty()) {
+            log.debug("[Notification] No {} found in branch {}", roleName, branchId);
+            return 0;
+        }
+        return notifyUsers(userIds, title, message, pushMessage, type);
+    }
+
+    @Override
+    public int notifyUsers(Collection<Integer> userIds, String title, String message, String pushMessage, String type) {
+        List<Integer> recipients = distinct(userIds);
+        if (recipients.isEmpty()) {
+            return 0;
+        }
+        String storedTitle = truncate(title, TITLE_MAX_LENGTH);
+        String storedMessage = truncate(message, MESSAGE_MAX_LENGTH);
+        Timestamp createdAt = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, recipients, batchSize, (ps, userId) -> {
+            ps.setInt(1, userId);
+            ps.setString(2, storedTitle);
+            ps.setString(3, storedMessage);
+            ps.setTimestamp(4, createdAt);
+            ps.setBoolean(5, false);
+        });
+        unreadCounter.addAfterCommit(recipients, 1);
+        pushAfterCommit(recipients, title, pushMessage != null ? pushMessage : message, type);
+        log.debug("[Notification] Stored '{}' for {} users", title, recipients.size());
+        return recipients.size();
+    }
+
+    @Override
+    public void pushAfterCommit(Collection<Integer> userIds, String title, String message, String type) {
+        List<Integer> recipients = distinct(userIds);
+        if (recipients.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            for (Integer userId : recipients) {
+                try {
+                    webSocketNotificationService.sendUserNotification(userId, title, message, type);
+                } catch (Exception e) {
+                    log.warn("[Notification] Failed to push notification to user {}: {}", userId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void broadcastAfterCommit(Integer branchId, String title, String message, String type) {
+        afterCommit(() -> {
+            try {
+                webSocketNotificationService.sendBranchNotification(branchId, title, message, type);
+            } catch (Exception e) {
+                log.warn("[Notification] Failed to broadcast notification: {}", e.getMessage());
+            }
+        });
+    }
+
+    private List<Integer> loadRecipients(String roleName, Integer branchId) {
+        return List.copyOf(employeeRepository.findUserIdsByRoleNameAndBranchId(roleName, branchId));
+    }
+
+    /**
+     * Chạy task trên pool sau khi transaction commit (rollback thì bỏ); không có transaction thì gửi ngay
+     */
+    private void afterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(task);
+                }
+            });
+        } else {
+            submit(task);
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("[Notification] Push queue is full, dropping WebSocket push (notification is still stored)");
+        }
+    }
+
+    private static List<Integer> distinct(Collection<Integer> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return List.of();
+        }
+        LinkedHashSet<Integer> unique = new LinkedHashSet<>();
+        for (Integer userId : userIds) {
+            if (userId != null) {
+                unique.add(userId);
+            }
+        }
+        return new ArrayList<>(unique);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.ptcmssbackend.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.repository.NotificationArchiveRepository;
+import org.example.ptcmssbackend.repository.NotificationRepository;
+import org.example.ptcmssbackend.service.NotificationUnreadCounter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Chuyển thông báo cũ hơn notification.retention.days sang bảng notifications_archive để bảng notifications
+ * luôn nhỏ. Mỗi lô (chép + xóa) chạy trong transaction riêng nên không giữ khóa lâu trên bảng đang được ghi.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NotificationRetentionJob {
+
+    private final NotificationRepository notificationRepository;
+    private final NotificationArchiveRepository notificationArchiveRepository;
+    private final NotificationUnreadCounter unreadCounter;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${notification.retention.days:90}")
+    private int retentionDays;
+
+    @Value("${notification.retention.batch-size:500}")
+    private int batchSize;
+
+    @Value("${notification.retention.max-batches:200}")
+    private int maxBatches;
+
+    private TransactionTemplate batchTransaction;
+
+    @PostConstruct
+    void init() {
+        batchTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Lưu trữ thông báo cũ (mặc định mỗi ngày lúc 3:30 sáng); retention.days <= 0 thì tắt
+     */
+    @Scheduled(cron = "${notification.retention.cron:0 30 3 * * *}")
+    public void archiveOldNotifications() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        try {
+            Instant cutoff = Instant.now().minus(retentionDays, ChronoUnit.DAYS);
+            int archived = archiveBefore(cutoff);
+            if (archived > 0) {
+                log.info("[NotificationRetention] Archived {} notifications created before {}", archived, cutoff);
+            }
+        } catch (Exception e) {
+            log.error("[NotificationRetention] Error archiving old notifications", e);
+        }
+    }
+
+    /**
+     * Lưu trữ theo lô mọi thông báo tạo trước cutoff, tối đa max-batches lô mỗi lần chạy
+     *
+     * @return số thông báo đã chuyển sang bảng lưu trữ
+     */
+    public int archiveBefore(Instant cutoff) {
+        int total = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            Integer archived = batchTransaction.execute(status -> archiveBatch(cutoff));
+            if (archived == null || archived == 0) {
+                break;
+            }
+            total += archived;
+            if (archived < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private int archiveBatch(Instant cutoff) {
+        List<Integer> ids = notificationRepository.findIdsCreatedBefore(cutoff, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        // Thông báo chưa đọc bị lưu trữ thì bộ đếm của user phải đếm lại
+        unreadCounter.evictAfterCommit(notificationRepository.findUnreadUserIdsByIdIn(ids));
+        notificationArchiveRepository.copyFromNotifications(ids, Instant.now());
+        return notificationRepository.deleteByIdIn(ids);
+    }
+}
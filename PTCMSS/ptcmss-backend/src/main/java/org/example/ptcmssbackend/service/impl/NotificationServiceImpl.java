@@ -9,18 +9,28 @@ import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.*;
 import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.NotificationService;
+import org.example.ptcmssbackend.service.NotificationUnreadCounter;
+import org.example.ptcmssbackend.service.ResourceTimelineService;
 import org.example.ptcmssbackend.service.SystemSettingService;
 import org.example.ptcmssbackend.service.WebSocketNotificationService;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -40,11 +50,14 @@ public class NotificationServiceImpl implements NotificationService {
     private final SystemSettingService systemSettingService;
     private final WebSocketNotificationService webSocketNotificationService;
     private final NotificationRepository notificationRepository;
+    private final ResourceTimelineService resourceTimelineService;
+    private final NotificationUnreadCounter unreadCounter;
     
     // Default values - sẽ được override bởi SystemSettings nếu có
     private static final int DEFAULT_EXPIRY_WARNING_DAYS = 30; // Cảnh báo trước 30 ngày
     private static final int DEFAULT_CRITICAL_WARNING_DAYS = 7; // Cảnh báo khẩn cấp trước 7 ngày
     private static final int DEFAULT_HEALTH_CHECK_WARNING_DAYS = 30; // Cảnh báo khám sức khỏe trước 30 ngày
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
     
     @Override
     public List<AlertResponse> getAllAlerts(Integer branchId) {
@@ -102,7 +115,6 @@ public class NotificationServiceImpl implements NotificationService {
     }
     
     private void generateVehicleInspectionAlerts() {
-        List<Vehicles> vehicles = vehicleRepository.findAll();
         LocalDate today = LocalDate.now();
         
         // Lấy cấu hình từ SystemSettings
@@ -112,54 +124,50 @@ public class NotificationServiceImpl implements NotificationService {
         LocalDate warningDate = today.plusDays(expiryWarningDays);
         LocalDate criticalDate = today.plusDays(criticalWarningDays);
         
+        // Chỉ lấy xe cần cảnh báo (hết hạn trước warningDate)
+        List<Vehicles> vehicles = vehicleRepository.findByInspectionExpiryBefore(warningDate);
+        AlertBatch batch = new AlertBatch(AlertType.VEHICLE_INSPECTION_EXPIRING, "VEHICLE");
+        
         for (Vehicles vehicle : vehicles) {
-            if (vehicle.getInspectionExpiry() == null) continue;
-            
             LocalDate expiry = vehicle.getInspectionExpiry();
             if (expiry.isBefore(today)) {
                 // Đã hết hạn
-                createOrUpdateAlert(
-                        AlertType.VEHICLE_INSPECTION_EXPIRING,
+                batch.add(
                         AlertSeverity.CRITICAL,
                         "Xe đã hết hạn đăng kiểm",
                         String.format("Xe %s đã hết hạn đăng kiểm từ ngày %s", 
                                 vehicle.getLicensePlate(), expiry),
-                        "VEHICLE",
                         vehicle.getId(),
                         vehicle.getBranch()
                 );
             } else if (expiry.isBefore(criticalDate)) {
                 // Sắp hết hạn (< 7 ngày)
                 long daysLeft = ChronoUnit.DAYS.between(today, expiry);
-                createOrUpdateAlert(
-                        AlertType.VEHICLE_INSPECTION_EXPIRING,
+                batch.add(
                         AlertSeverity.HIGH,
                         "Xe sắp hết hạn đăng kiểm",
                         String.format("Xe %s sẽ hết hạn đăng kiểm trong %d ngày (ngày %s)", 
                                 vehicle.getLicensePlate(), daysLeft, expiry),
-                        "VEHICLE",
                         vehicle.getId(),
                         vehicle.getBranch()
                 );
-            } else if (expiry.isBefore(warningDate)) {
+            } else {
                 // Cảnh báo trước (< 30 ngày)
                 long daysLeft = ChronoUnit.DAYS.between(today, expiry);
-                createOrUpdateAlert(
-                        AlertType.VEHICLE_INSPECTION_EXPIRING,
+                batch.add(
                         AlertSeverity.MEDIUM,
                         "Xe sắp hết hạn đăng kiểm",
                         String.format("Xe %s sẽ hết hạn đăng kiểm trong %d ngày (ngày %s)", 
                                 vehicle.getLicensePlate(), daysLeft, expiry),
-                        "VEHICLE",
                         vehicle.getId(),
                         vehicle.getBranch()
                 );
             }
         }
+        batch.flush();
     }
     
     private void generateVehicleInsuranceAlerts() {
-        List<Vehicles> vehicles = vehicleRepository.findAll();
         LocalDate today = LocalDate.now();
         
         // Lấy cấu hình từ SystemSettings
@@ -169,9 +177,10 @@ public class NotificationServiceImpl implements NotificationService {
         LocalDate warningDate = today.plusDays(expiryWarningDays);
         LocalDate criticalDate = today.plusDays(criticalWarningDays);
         
+        List<Vehicles> vehicles = vehicleRepository.findByInsuranceExpiryBefore(warningDate);
+        AlertBatch batch = new AlertBatch(AlertType.VEHICLE_INSURANCE_EXPIRING, "VEHICLE");
+        
         for (Vehicles vehicle : vehicles) {
-            if (vehicle.getInsuranceExpiry() == null) continue;
-            
             LocalDate expiry = vehicle.getInsuranceExpiry();
             AlertSeverity severity = AlertSeverity.MEDIUM;
             
@@ -179,8 +188,6 @@ public class NotificationServiceImpl implements NotificationService {
                 severity = AlertSeverity.CRITICAL;
             } else if (expiry.isBefore(criticalDate)) {
                 severity = AlertSeverity.HIGH;
-            } else if (!expiry.isBefore(warningDate)) {
-                continue; // Chưa cần cảnh báo
             }
             
             long daysLeft = ChronoUnit.DAYS.between(today, expiry);
@@ -189,20 +196,12 @@ public class NotificationServiceImpl implements NotificationService {
                     : String.format("Bảo hiểm xe %s sẽ hết hạn trong %d ngày (ngày %s)", 
                             vehicle.getLicensePlate(), daysLeft, expiry);
             
-            createOrUpdateAlert(
-                    AlertType.VEHICLE_INSURANCE_EXPIRING,
-                    severity,
-                    "Bảo hiểm xe sắp hết hạn",
-                    message,
-                    "VEHICLE",
-                    vehicle.getId(),
-                    vehicle.getBranch()
-            );
+            batch.add(severity, "Bảo hiểm xe sắp hết hạn", message, vehicle.getId(), vehicle.getBranch());
         }
+        batch.flush();
     }
     
     private void generateDriverLicenseAlerts() {
-        List<Drivers> drivers = driverRepository.findAll();
         LocalDate today = LocalDate.now();
         
         // Lấy cấu hình từ SystemSettings
@@ -212,9 +211,10 @@ public class NotificationServiceImpl implements NotificationService {
         LocalDate warningDate = today.plusDays(expiryWarningDays);
         LocalDate criticalDate = today.plusDays(criticalWarningDays);
         
+        List<Drivers> drivers = driverRepository.findWithLicenseExpiringBefore(warningDate);
+        AlertBatch batch = new AlertBatch(AlertType.DRIVER_LICENSE_EXPIRING, "DRIVER");
+        
         for (Drivers driver : drivers) {
-            if (driver.getLicenseExpiry() == null) continue;
-            
             LocalDate expiry = driver.getLicenseExpiry();
             AlertSeverity severity = AlertSeverity.MEDIUM;
             
@@ -222,8 +222,6 @@ public class NotificationServiceImpl implements NotificationService {
                 severity = AlertSeverity.CRITICAL;
             } else if (expiry.isBefore(criticalDate)) {
                 severity = AlertSeverity.HIGH;
-            } else if (!expiry.isBefore(warningDate)) {
-                continue;
             }
             
             long daysLeft = ChronoUnit.DAYS.between(today, expiry);
@@ -233,20 +231,12 @@ public class NotificationServiceImpl implements NotificationService {
                     : String.format("Bằng lái của tài xế %s sẽ hết hạn trong %d ngày (ngày %s)", 
                             driverName, daysLeft, expiry);
             
-            createOrUpdateAlert(
-                    AlertType.DRIVER_LICENSE_EXPIRING,
-                    severity,
-                    "Bằng lái sắp hết hạn",
-                    message,
-                    "DRIVER",
-                    driver.getId(),
-                    driver.getBranch()
-            );
+            batch.add(severity, "Bằng lái sắp hết hạn", message, driver.getId(), driver.getBranch());
         }
+        batch.flush();
     }
     
     private void generateDriverHealthCheckAlerts() {
-        List<Drivers> drivers = driverRepository.findAll();
         LocalDate today = LocalDate.now();
         
         // Lấy cấu hình từ SystemSettings
@@ -255,9 +245,11 @@ public class NotificationServiceImpl implements NotificationService {
         
         LocalDate warningDate = today.plusDays(healthCheckWarningDays);
         
+        // Lọc thô trong DB (plusMonths cắt ngày cuối tháng nên lấy dư 1 tháng), điều kiện chính xác kiểm tra bên dưới
+        List<Drivers> drivers = driverRepository.findWithHealthCheckBefore(warningDate.minusMonths(5));
+        AlertBatch batch = new AlertBatch(AlertType.DRIVER_HEALTH_CHECK_DUE, "DRIVER");
+        
         for (Drivers driver : drivers) {
-            if (driver.getHealthCheckDate() == null) continue;
-            
             // Khám sức khỏe định kỳ 6 tháng/lần (theo yêu cầu business)
             LocalDate nextCheckDue = driver.getHealthCheckDate().plusMonths(6);
             
@@ -270,37 +262,33 @@ public class NotificationServiceImpl implements NotificationService {
                         ? String.format("Tài xế %s đã quá hạn khám sức khỏe định kỳ", driverName)
                         : String.format("Tài xế %s cần khám sức khỏe định kỳ trong %d ngày", driverName, daysLeft);
                 
-                createOrUpdateAlert(
-                        AlertType.DRIVER_HEALTH_CHECK_DUE,
-                        severity,
-                        "Sắp đến hạn khám sức khỏe",
-                        message,
-                        "DRIVER",
-                        driver.getId(),
-                        driver.getBranch()
-                );
+                batch.add(severity, "Sắp đến hạn khám sức khỏe", message, driver.getId(), driver.getBranch());
             }
         }
+        batch.flush();
     }
     
-    private void createOrUpdateAlert(
-            AlertType type,
-            AlertSeverity severity,
-            String title,
-            String message,
-            String entityType,
-            Integer entityId,
-            Branches branch) {
-        
-        // Kiểm tra xem đã có alert tương tự chưa
-        List<SystemAlerts> existing = alertsRepository
-                .findByRelatedEntityTypeAndRelatedEntityIdAndIsAcknowledgedFalse(entityType, entityId);
-        
-        boolean found = existing.stream()
-                .anyMatch(a -> a.getAlertType() == type);
-        
-        if (!found) {
-            SystemAlerts alert = SystemAlerts.builder()
+    /**
+     * Gom cảnh báo mới của 1 lần quét rồi saveAll một lần.
+     * Bỏ qua entity đã có cảnh báo cùng loại chưa acknowledge (đọc sẵn bằng 1 truy vấn).
+     */
+    private final class AlertBatch {
+        private final AlertType type;
+        private final String entityType;
+        private final Set<Integer> openEntityIds;
+        private final List<SystemAlerts> pending = new ArrayList<>();
+        
+        AlertBatch(AlertType type, String entityType) {
+            this.type = type;
+            this.entityType = entityType;
+            this.openEntityIds = new HashSet<>(alertsRepository.findOpenAlertEntityIds(type, entityType));
+        }
+        
+        void add(AlertSeverity severity, String title, String message, Integer entityId, Branches branch) {
+            if (!openEntityIds.add(entityId)) {
+                return;
+            }
+            pending.add(SystemAlerts.builder()
                     .alertType(type)
                     .severity(severity)
                     .title(title)
@@ -310,10 +298,15 @@ public class NotificationServiceImpl implements NotificationService {
                     .branch(branch)
                     .isAcknowledged(false)
                     .expiresAt(Instant.now().plus(90, ChronoUnit.DAYS)) // Hết hạn sau 90 ngày
-                    .build();
-            
-            alertsRepository.save(alert);
-            log.debug("[Notification] Created alert: {} for {} {}", type, entityType, entityId);
+                    .build());
+        }
+        
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            alertsRepository.saveAll(pending);
+            log.debug("[Notification] Created {} {} alerts", pending.size(), type);
         }
     }
     
@@ -504,6 +497,7 @@ public class NotificationServiceImpl implements NotificationService {
             notification.setIsRead(false);
             log.info("[Notification] Saving notification to DB...");
             Notifications saved = notificationRepository.save(notification);
+            unreadCounter.addAfterCommit(requester.getId(), 1);
             log.info("[Notification] SUCCESS! Saved notification ID={} to DB for user {}: {}", 
                     saved.getId(), requester.getId(), title);
         } catch (Exception e) {
@@ -558,6 +552,7 @@ public class NotificationServiceImpl implements NotificationService {
                         notification.setIsRead(false);
                         notification.setCreatedAt(Instant.now());
                         notificationRepository.save(notification);
+                        unreadCounter.addAfterCommit(driverUser.getId(), 1);
                         
                         log.info("[Notification] Sent day-off {} notification to driver user {}", 
                             approved ? "approval" : "rejection", driverUser.getId());
@@ -708,157 +703,120 @@ public class NotificationServiceImpl implements NotificationService {
      * - 4 giờ liên tục
      * - 10 giờ/ngày
      * - 48 giờ/tuần
+     *
+     * Đọc chuyến của mọi tài xế trong tuần hiện tại bằng 1 truy vấn (bỏ qua tài xế đã có cảnh báo đang mở)
+     * rồi tính cả 3 giới hạn trong 1 lượt duyệt, nên chạy được mỗi 15 phút.
      */
-    private void generateDrivingHoursAlerts() {
-        List<Drivers> drivers = driverRepository.findAll();
+    @Override
+    @Scheduled(cron = "${alerts.driving-hours-cron:0 */15 * * * *}")
+    public void generateDrivingHoursAlerts() {
         Instant now = Instant.now();
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now(zone);
+        LocalDate weekStart = today.minusDays(today.getDayOfWeek().getValue() - 1); // Thứ 2
+        LocalDate weekEnd = weekStart.plusDays(6); // Chủ nhật
         
         // Lấy cấu hình từ SystemSettings
         int maxContinuousHours = getSystemSettingInt("MAX_CONTINUOUS_DRIVING_HOURS", 4);
         int maxHoursPerDay = getSystemSettingInt("MAX_DRIVING_HOURS_PER_DAY", 10);
         int maxHoursPerWeek = getSystemSettingInt("MAX_DRIVING_HOURS_PER_WEEK", 48);
         
-        for (Drivers driver : drivers) {
-            List<TripDrivers> tripDrivers = tripDriverRepository.findAllByDriverId(driver.getId());
-            if (tripDrivers.isEmpty()) continue;
-            
-            String driverName = extractDriverName(driver);
-            
-            // Check 4 giờ liên tục
-            checkContinuousDrivingHours(driver, tripDrivers, now, maxContinuousHours, driverName);
-            
-            // Check 10 giờ/ngày
-            checkDailyDrivingHours(driver, tripDrivers, now, maxHoursPerDay, driverName);
-            
-            // Check 48 giờ/tuần
-            checkWeeklyDrivingHours(driver, tripDrivers, now, maxHoursPerWeek, driverName);
+        Instant weekEndExclusive = weekEnd.plusDays(1).atStartOfDay(zone).toInstant();
+        Instant until = weekEndExclusive.isAfter(now.plusSeconds(3600)) ? weekEndExclusive : now.plusSeconds(3600);
+        List<Object[]> rows = tripDriverRepository.findDrivingHoursRows(
+                weekStart.atStartOfDay(zone).toInstant(), now.minusSeconds(3600), until);
+        
+        // Các dòng đã sắp theo tài xế: gom từng nhóm liên tiếp và kiểm tra
+        Map<Integer, String[]> violations = new LinkedHashMap<>();
+        int from = 0;
+        while (from < rows.size()) {
+            Integer driverId = (Integer) rows.get(from)[0];
+            int to = from;
+            while (to < rows.size() && driverId.equals(rows.get(to)[0])) {
+                to++;
+            }
+            String[] violation = findDrivingHoursViolation(rows.subList(from, to), now, today, weekStart, weekEnd,
+                    maxContinuousHours, maxHoursPerDay, maxHoursPerWeek);
+            if (violation != null) {
+                violations.put(driverId, violation);
+            }
+            from = to;
+        }
+        if (violations.isEmpty()) {
+            return;
+        }
+        
+        AlertBatch batch = new AlertBatch(AlertType.DRIVING_HOURS_EXCEEDED, "DRIVER");
+        for (Drivers driver : driverRepository.findAllWithUserByIdIn(violations.keySet())) {
+            String[] violation = violations.get(driver.getId());
+            batch.add(AlertSeverity.HIGH, violation[0],
+                    String.format(violation[1], extractDriverName(driver)), driver.getId(), driver.getBranch());
         }
+        batch.flush();
+        log.info("[Notification] Driving hours scan: {} trips, {} drivers over limit", rows.size(), violations.size());
     }
     
-    private void checkContinuousDrivingHours(Drivers driver, List<TripDrivers> tripDrivers, Instant now, 
-                                             int maxHours, String driverName) {
-        // Tìm các trip đang diễn ra hoặc sắp diễn ra
-        List<TripDrivers> activeTrips = tripDrivers.stream()
-                .filter(td -> {
-                    Trips trip = td.getTrip();
-                    if (trip.getStartTime() == null || trip.getEndTime() == null) return false;
-                    return (trip.getStatus() == TripStatus.ONGOING || 
-                            trip.getStatus() == TripStatus.SCHEDULED ||
-                            trip.getStatus() == TripStatus.ASSIGNED)
-                            && trip.getStartTime().isBefore(now.plusSeconds(3600)) // Trong vòng 1h tới
-                            && trip.getEndTime().isAfter(now.minusSeconds(3600)); // Hoặc đang diễn ra
-                })
-                .sorted((td1, td2) -> {
-                    Instant s1 = td1.getTrip().getStartTime();
-                    Instant s2 = td2.getTrip().getStartTime();
-                    return s1 != null && s2 != null ? s1.compareTo(s2) : 0;
-                })
-                .collect(Collectors.toList());
-        
-        if (activeTrips.size() < 2) return; // Cần ít nhất 2 trip để check liên tục
-        
-        // Tính tổng thời gian lái liên tục
-        for (int i = 0; i < activeTrips.size() - 1; i++) {
-            TripDrivers current = activeTrips.get(i);
-            TripDrivers next = activeTrips.get(i + 1);
-            
-            Instant currentEnd = current.getTrip().getEndTime();
-            Instant nextStart = next.getTrip().getStartTime();
-            
-            if (currentEnd != null && nextStart != null) {
+    /**
+     * Kiểm tra lần lượt 4h liên tục, 10h/ngày, 48h/tuần cho các chuyến (đã sắp theo giờ bắt đầu) của 1 tài xế.
+     * Trả về {tiêu đề, mẫu nội dung có %s cho tên tài xế} của vi phạm đầu tiên, hoặc null.
+     * Chỉ cần vi phạm đầu tiên vì mỗi tài xế chỉ giữ 1 cảnh báo DRIVING_HOURS_EXCEEDED đang mở.
+     * Cột: driverId, startTime, endTime, status
+     */
+    private String[] findDrivingHoursViolation(List<Object[]> trips, Instant now, LocalDate today,
+                                               LocalDate weekStart, LocalDate weekEnd,
+                                               int maxContinuousHours, int maxHoursPerDay, int maxHoursPerWeek) {
+        ZoneId zone = ZoneId.systemDefault();
+        
+        // 4 giờ liên tục: các chuyến đang/sắp chạy (trong khoảng ±1h quanh hiện tại)
+        Object[] previous = null;
+        for (Object[] trip : trips) {
+            Instant start = (Instant) trip[1];
+            Instant end = (Instant) trip[2];
+            TripStatus status = (TripStatus) trip[3];
+            boolean active = end != null
+                    && (status == TripStatus.ONGOING || status == TripStatus.SCHEDULED || status == TripStatus.ASSIGNED)
+                    && start.isBefore(now.plusSeconds(3600))
+                    && end.isAfter(now.minusSeconds(3600));
+            if (!active) continue;
+            if (previous != null) {
+                Instant previousEnd = (Instant) previous[2];
                 // Nếu 2 trip cách nhau < 1 giờ (nghỉ ngắn), tính là lái liên tục
-                long breakHours = java.time.Duration.between(currentEnd, nextStart).toHours();
-                if (breakHours < 1) {
-                    // Tính tổng thời gian lái từ trip đầu đến trip cuối
-                    Instant firstStart = current.getTrip().getStartTime();
-                    Instant lastEnd = next.getTrip().getEndTime();
-                    if (firstStart != null && lastEnd != null) {
-                        long continuousHours = java.time.Duration.between(firstStart, lastEnd).toHours();
-                        if (continuousHours > maxHours) {
-                            createOrUpdateAlert(
-                                    AlertType.DRIVING_HOURS_EXCEEDED,
-                                    AlertSeverity.HIGH,
-                                    "Vượt giới hạn giờ lái liên tục",
-                                    String.format("Tài xế %s đã lái liên tục %d giờ (vượt quá %d giờ)", 
-                                            driverName, continuousHours, maxHours),
-                                    "DRIVER",
-                                    driver.getId(),
-                                    driver.getBranch()
-                            );
-                        }
+                if (Duration.between(previousEnd, start).toHours() < 1) {
+                    long continuousHours = Duration.between((Instant) previous[1], end).toHours();
+                    if (continuousHours > maxContinuousHours) {
+                        return new String[]{"Vượt giới hạn giờ lái liên tục",
+                                "Tài xế %s đã lái liên tục " + continuousHours + " giờ (vượt quá " + maxContinuousHours + " giờ)"};
                     }
                 }
             }
+            previous = trip;
         }
-    }
-    
-    private void checkDailyDrivingHours(Drivers driver, List<TripDrivers> tripDrivers, Instant now,
-                                       int maxHours, String driverName) {
-        LocalDate today = LocalDate.now();
         
-        // Tính tổng giờ lái trong ngày
-        long totalHours = tripDrivers.stream()
-                .filter(td -> {
-                    Trips trip = td.getTrip();
-                    if (trip.getStartTime() == null) return false;
-                    LocalDate tripDate = trip.getStartTime().atZone(java.time.ZoneId.systemDefault()).toLocalDate();
-                    return tripDate.equals(today) && trip.getStatus() != TripStatus.CANCELLED;
-                })
-                .mapToLong(td -> {
-                    Trips trip = td.getTrip();
-                    if (trip.getStartTime() == null || trip.getEndTime() == null) return 0;
-                    return java.time.Duration.between(trip.getStartTime(), trip.getEndTime()).toHours();
-                })
-                .sum();
-        
-        if (totalHours > maxHours) {
-            createOrUpdateAlert(
-                    AlertType.DRIVING_HOURS_EXCEEDED,
-                    AlertSeverity.HIGH,
-                    "Vượt giới hạn giờ lái trong ngày",
-                    String.format("Tài xế %s đã lái %d giờ trong ngày (vượt quá %d giờ/ngày)", 
-                            driverName, totalHours, maxHours),
-                    "DRIVER",
-                    driver.getId(),
-                    driver.getBranch()
-            );
+        // Tổng giờ lái trong ngày / trong tuần (theo ngày bắt đầu chuyến)
+        long dailyHours = 0;
+        long weeklyHours = 0;
+        for (Object[] trip : trips) {
+            Instant start = (Instant) trip[1];
+            Instant end = (Instant) trip[2];
+            if (end == null) continue;
+            LocalDate tripDate = start.atZone(zone).toLocalDate();
+            long hours = Duration.between(start, end).toHours();
+            if (tripDate.equals(today)) {
+                dailyHours += hours;
+            }
+            if (!tripDate.isBefore(weekStart) && !tripDate.isAfter(weekEnd)) {
+                weeklyHours += hours;
+            }
         }
-    }
-    
-    private void checkWeeklyDrivingHours(Drivers driver, List<TripDrivers> tripDrivers, Instant now,
-                                        int maxHours, String driverName) {
-        LocalDate today = LocalDate.now();
-        LocalDate weekStart = today.minusDays(today.getDayOfWeek().getValue() - 1); // Thứ 2
-        LocalDate weekEnd = weekStart.plusDays(6); // Chủ nhật
-        
-        // Tính tổng giờ lái trong tuần
-        long totalHours = tripDrivers.stream()
-                .filter(td -> {
-                    Trips trip = td.getTrip();
-                    if (trip.getStartTime() == null) return false;
-                    LocalDate tripDate = trip.getStartTime().atZone(java.time.ZoneId.systemDefault()).toLocalDate();
-                    return !tripDate.isBefore(weekStart) && !tripDate.isAfter(weekEnd) 
-                            && trip.getStatus() != TripStatus.CANCELLED;
-                })
-                .mapToLong(td -> {
-                    Trips trip = td.getTrip();
-                    if (trip.getStartTime() == null || trip.getEndTime() == null) return 0;
-                    return java.time.Duration.between(trip.getStartTime(), trip.getEndTime()).toHours();
-                })
-                .sum();
-        
-        if (totalHours > maxHours) {
-            createOrUpdateAlert(
-                    AlertType.DRIVING_HOURS_EXCEEDED,
-                    AlertSeverity.HIGH,
-                    "Vượt giới hạn giờ lái trong tuần",
-                    String.format("Tài xế %s đã lái %d giờ trong tuần (vượt quá %d giờ/tuần)", 
-                            driverName, totalHours, maxHours),
-                    "DRIVER",
-                    driver.getId(),
-                    driver.getBranch()
-            );
+        if (dailyHours > maxHoursPerDay) {
+            return new String[]{"Vượt giới hạn giờ lái trong ngày",
+                    "Tài xế %s đã lái " + dailyHours + " giờ trong ngày (vượt quá " + maxHoursPerDay + " giờ/ngày)"};
         }
+        if (weeklyHours > maxHoursPerWeek) {
+            return new String[]{"Vượt giới hạn giờ lái trong tuần",
+                    "Tài xế %s đã lái " + weeklyHours + " giờ trong tuần (vượt quá " + maxHoursPerWeek + " giờ/tuần)"};
+        }
+        return null;
     }
     
     /**
@@ -877,6 +835,7 @@ public class NotificationServiceImpl implements NotificationService {
     }
     
     @Override
+    @Transactional(readOnly = true)
     public Map<String, Object> getUserNotifications(Integer userId, int page, int limit) {
         log.info("[Notification] Get notifications for user {} (page={}, limit={})", userId, page, limit);
         
@@ -886,15 +845,7 @@ public class NotificationServiceImpl implements NotificationService {
         var notifPage = notificationRepository.findByUser_IdOrderByCreatedAtDesc(userId, pageable);
         
         List<Map<String, Object>> data = notifPage.getContent().stream()
-                .map(n -> {
-                    Map<String, Object> item = new java.util.HashMap<>();
-                    item.put("id", n.getId());
-                    item.put("title", n.getTitle());
-                    item.put("message", n.getMessage());
-                    item.put("isRead", n.getIsRead());
-                    item.put("createdAt", n.getCreatedAt());
-                    return item;
-                })
+                .map(this::toNotificationItem)
                 .collect(Collectors.toList());
         
         return Map.of(
@@ -902,10 +853,96 @@ public class NotificationServiceImpl implements NotificationService {
                 "total", notifPage.getTotalElements(),
                 "page", page,
                 "limit", limit,
-                "totalPages", notifPage.getTotalPages()
+                "totalPages", notifPage.getTotalPages(),
+                "unreadCount", unreadCounter.getUnreadCount(userId)
         );
     }
     
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, Object> getUserNotificationsByCursor(Integer userId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_CURSOR_PAGE_SIZE));
+        // Lấy dư 1 dòng để biết còn trang sau mà không cần COUNT
+        PageRequest firstRows = PageRequest.of(0, pageSize + 1);
+        
+        List<Notifications> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = notificationRepository.findByUser_IdOrderByCreatedAtDescIdDesc(userId, firstRows);
+        } else {
+            CursorPosition position = decodeCursor(cursor);
+            rows = notificationRepository.findPageBefore(userId, position.createdAt, position.id, firstRows);
+        }
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<Notifications> pageRows = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = hasMore ? encodeCursor(pageRows.get(pageRows.size() - 1)) : null;
+        
+        Map<String, Object> result = new java.util.HashMap<>();
+        result.put("data", pageRows.stream().map(this::toNotificationItem).collect(Collectors.toList()));
+        result.put("limit", pageSize);
+        result.put("hasMore", hasMore);
+        result.put("nextCursor", nextCursor);
+        result.put("unreadCount", unreadCounter.getUnreadCount(userId));
+        return result;
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public long getUnreadCount(Integer userId) {
+        return unreadCounter.getUnreadCount(userId);
+    }
+    
+    @Override
+    public int markNotificationsRead(Integer userId, List<Integer> notificationIds) {
+        int updated = notificationIds == null || notificationIds.isEmpty()
+                ? notificationRepository.markAllReadByUserId(userId)
+                : notificationRepository.markReadByUserIdAndIds(userId, notificationIds);
+        unreadCounter.addAfterCommit(userId, -updated);
+        log.info("[Notification] Marked {} notifications as read for user {}", updated, userId);
+        return updated;
+    }
+    
+    private Map<String, Object> toNotificationItem(Notifications n) {
+        Map<String, Object> item = new java.util.HashMap<>();
+        item.put("id", n.getId());
+        item.put("title", n.getTitle());
+        item.put("message", n.getMessage());
+        item.put("isRead", n.getIsRead());
+        item.put("createdAt", n.getCreatedAt());
+        return item;
+    }
+    
+    /**
+     * Cursor = base64url("createdAt|id") của dòng cuối trang trước (createdAt ISO-8601, giữ đủ độ chính xác của DB)
+     */
+    private static String encodeCursor(Notifications last) {
+        Instant createdAt = last.getCreatedAt() != null ? last.getCreatedAt() : Instant.EPOCH;
+        String raw = createdAt + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static CursorPosition decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            Instant createdAt = Instant.parse(raw.substring(0, separator));
+            Integer id = Integer.valueOf(raw.substring(separator + 1));
+            return new CursorPosition(createdAt, id);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Cursor không hợp lệ: " + cursor);
+        }
+    }
+    
+    private static class CursorPosition {
+        private final Instant createdAt;
+        private final Integer id;
+        
+        private CursorPosition(Instant createdAt, Integer id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+    }
+    
     @Override
     public void deleteNotification(Integer notificationId, Integer userId) {
         log.info("[Notification] Delete notification {} for user {}", notificationId, userId);
@@ -919,6 +956,9 @@ public class NotificationServiceImpl implements NotificationService {
         }
         
         notificationRepository.delete(notification);
+        if (Boolean.FALSE.equals(notification.getIsRead())) {
+            unreadCounter.addAfterCommit(userId, -1);
+        }
         log.info("[Notification] Deleted notification {} for user {}", notificationId, userId);
     }
     
@@ -960,11 +1000,13 @@ public class NotificationServiceImpl implements NotificationService {
         
         // Xóa tất cả notifications tìm được
         if (!toDelete.isEmpty()) {
+            long unreadDeleted = toDelete.stream().filter(n -> Boolean.FALSE.equals(n.getIsRead())).count();
             for (Notifications notification : toDelete) {
                 notificationRepository.delete(notification);
                 log.info("[Notification] Deleted notification {} for user {} by approval type {}", 
                         notification.getId(), userId, approvalType);
             }
+            unreadCounter.addAfterCommit(userId, -unreadDeleted);
             log.info("[Notification] Deleted {} notifications for user {} by approval type {}", 
                     toDelete.size(), userId, approvalType);
         } else {
@@ -1097,6 +1139,7 @@ public class NotificationServiceImpl implements NotificationService {
                         
                         // Xóa driver khỏi trip
                         tripDriverRepository.delete(td);
+                        resourceTimelineService.onTripChanged(td.getTrip().getId());
                     }
                 }
             }
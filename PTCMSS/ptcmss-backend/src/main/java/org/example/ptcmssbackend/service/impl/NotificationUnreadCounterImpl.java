@@ -0,0 +1,111 @@
+package org.example.ptcmssbackend.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.repository.NotificationRepository;
+import org.example.ptcmssbackend.service.NotificationUnreadCounter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bộ đếm nạp lười từ DB (1 lệnh COUNT/user) rồi cộng/trừ theo thay đổi sau commit. User chưa có bộ đếm
+ * thì bỏ qua thay đổi: lần đọc sau sẽ đếm lại từ DB, đã gồm thay đổi đó.
+ *
+ * Bộ đếm hết hạn sau notification.unread.ttl-seconds kể từ lúc nạp, nên sai lệch do ghi từ node khác
+ * hoặc ghi thẳng vào DB chỉ tồn tại tối đa 1 TTL.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationUnreadCounterImpl implements NotificationUnreadCounter {
+
+    private final NotificationRepository notificationRepository;
+
+    @Value("${notification.unread.max-users:10000}")
+    private long maxUsers;
+
+    @Value("${notification.unread.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private Cache<Integer, AtomicLong> counters;
+
+    @PostConstruct
+    void init() {
+        counters = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    @Override
+    public long getUnreadCount(Integer userId) {
+        if (userId == null) {
+            return 0;
+        }
+        return counters.get(userId, id -> new AtomicLong(notificationRepository.countByUser_IdAndIsReadFalse(id))).get();
+    }
+
+    @Override
+    public void addAfterCommit(Integer userId, long delta) {
+        if (userId == null || delta == 0) {
+            return;
+        }
+        afterCommit(() -> add(userId, delta));
+    }
+
+    @Override
+    public void addAfterCommit(Collection<Integer> userIds, long delta) {
+        if (userIds == null || userIds.isEmpty() || delta == 0) {
+            return;
+        }
+        List<Integer> targets = List.copyOf(userIds);
+        afterCommit(() -> targets.forEach(userId -> add(userId, delta)));
+    }
+
+    @Override
+    public void evictAfterCommit(Collection<Integer> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        List<Integer> targets = List.copyOf(userIds);
+        afterCommit(() -> counters.invalidateAll(targets));
+    }
+
+    private void add(Integer userId, long delta) {
+        AtomicLong counter = counters.getIfPresent(userId);
+        if (counter == null) {
+            return;
+        }
+        if (counter.addAndGet(delta) < 0) {
+            // Lệch so với DB (vd: thông báo bị xóa ở node khác) → đếm lại ở lần đọc sau
+            log.debug("[Notification] Unread counter of user {} went negative, reloading", userId);
+            counters.invalidate(userId);
+        }
+    }
+
+    /**
+     * Chạy sau khi transaction commit (rollback thì bỏ); không có transaction thì chạy ngay
+     */
+    private void afterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+}
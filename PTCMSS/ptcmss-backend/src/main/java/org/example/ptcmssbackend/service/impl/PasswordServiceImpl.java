@@ -9,6 +9,7 @@ import org.example.ptcmssbackend.repository.UsersRepository;
 import org.example.ptcmssbackend.service.PasswordService;
 import org.example.ptcmssbackend.service.JwtService;
 import org.example.ptcmssbackend.service.EmailService;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,6 +22,7 @@ public class PasswordServiceImpl implements PasswordService {
     private final UsersRepository usersRepository;
     private final JwtService jwtService;
     private final EmailService emailService;
+    private final PrincipalCacheService principalCacheService;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
     @Override
@@ -41,6 +43,7 @@ public class PasswordServiceImpl implements PasswordService {
         user.setVerificationToken(null);
         user.setStatus(UserStatus.ACTIVE);
         Users savedUser = usersRepository.save(user);
+        principalCacheService.evictUser(savedUser.getUsername());
         log.info("✅ Mật khẩu mới (đã mã hóa): {}", savedUser.getPasswordHash());
 
         // Gửi email thông tin đăng nhập
@@ -8,7 +8,6 @@ import org.example.ptcmssbackend.dto.response.Booking.PaymentResponse;
 import org.example.ptcmssbackend.entity.Bookings;
 import org.example.ptcmssbackend.entity.Employees;
 import org.example.ptcmssbackend.entity.Invoices;
-import org.example.ptcmssbackend.entity.Notifications;
 import org.example.ptcmssbackend.enums.InvoiceStatus;
 import org.example.ptcmssbackend.enums.InvoiceType;
 import org.example.ptcmssbackend.enums.PaymentStatus;
@@ -18,10 +17,12 @@ import org.example.ptcmssbackend.repository.BookingRepository;
 import org.example.ptcmssbackend.repository.EmployeeRepository;
 import org.example.ptcmssbackend.repository.InvoiceRepository;
 import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
-import org.example.ptcmssbackend.repository.NotificationRepository;
 import org.example.ptcmssbackend.service.AppSettingService;
+import org.example.ptcmssbackend.service.InvoiceLedgerService;
+import org.example.ptcmssbackend.service.NotificationDispatcher;
 import org.example.ptcmssbackend.service.PaymentService;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.math.BigDecimal;
@@ -40,13 +41,14 @@ public class PaymentServiceImpl implements PaymentService {
     private final BookingRepository bookingRepository;
     private final InvoiceRepository invoiceRepository;
     private final PaymentHistoryRepository paymentHistoryRepository;
+    private final InvoiceLedgerService invoiceLedgerService;
     private final EmployeeRepository employeeRepository;
-    private final NotificationRepository notificationRepository;
     private final QrPaymentProperties qrPaymentProperties;
     private final AppSettingService appSettingService;
-    private final org.example.ptcmssbackend.service.WebSocketNotificationService webSocketNotificationService;
+    private final NotificationDispatcher notificationDispatcher;
 
     @Override
+    @Transactional
     public PaymentResponse generateQRCode(Integer bookingId, BigDecimal amount, String note, Boolean deposit, Integer employeeId) {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Số tiền phải lớn hơn 0");
@@ -96,6 +98,7 @@ public class PaymentServiceImpl implements PaymentService {
             paymentHistory.setCreatedBy(createdBy);
         }
         PaymentHistory savedHistory = paymentHistoryRepository.save(paymentHistory);
+        invoiceLedgerService.applyPayment(savedHistory, null, PaymentConfirmationStatus.PENDING);
 
         notifyAccountantsAboutPaymentRequest(
                 booking,
@@ -111,7 +114,8 @@ public class PaymentServiceImpl implements PaymentService {
         // Send WebSocket notification for QR code generation
         try {
             String customerName = booking.getCustomer() != null ? booking.getCustomer().getFullName() : "Khách hàng";
-            webSocketNotificationService.sendGlobalNotification(
+            notificationDispatcher.broadcastAfterCommit(
+                    booking.getBranch() != null ? booking.getBranch().getId() : null,
                     "QR thanh toán mới",
                     String.format("Đã tạo mã QR thanh toán %s cho đơn #%d - %s",
                             deposit ? "cọc" : "",
@@ -141,6 +145,7 @@ public class PaymentServiceImpl implements PaymentService {
     }
 
     @Override
+    @Transactional
     public PaymentResponse createDeposit(Integer bookingId, CreatePaymentRequest request, Integer employeeId) {
         if (request.getAmount() == null || request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Số tiền phải lớn hơn 0");
@@ -170,6 +175,7 @@ public class PaymentServiceImpl implements PaymentService {
             history.setCreatedBy(employee);
         }
         paymentHistoryRepository.save(history);
+        invoiceLedgerService.applyPayment(history, null, PaymentConfirmationStatus.PENDING);
 
         notifyAccountantsAboutPaymentRequest(
                 booking,
@@ -323,35 +329,17 @@ public class PaymentServiceImpl implements PaymentService {
 
             if (branchId != null) {
                 try {
-                    List<Employees> accountants = employeeRepository.findByRoleNameAndBranchId("Accountant", branchId);
-                    for (Employees accountant : accountants) {
-                        if (accountant.getUser() != null) {
-                            Notifications notification = new Notifications();
-                            notification.setUser(accountant.getUser());
-                            notification.setTitle(title);
-                            notification.setMessage(message);
-                            notification.setIsRead(false);
-                            notificationRepository.save(notification);
-
-                            webSocketNotificationService.sendUserNotification(
-                                    accountant.getUser().getId(),
-                                    title,
-                                    message,
-                                    "INFO"
-                            );
-                            log.debug("[PaymentService] Sent notification to accountant: {}", accountant.getUser().getUsername());
-                        }
-                    }
-                    if (!accountants.isEmpty()) {
+                    int notified = notificationDispatcher.notifyRole("Accountant", branchId, title, message, null, "INFO");
+                    if (notified > 0) {
                         log.info("[PaymentService] Notified {} accountants about payment request for booking {}",
-                                accountants.size(), bookingCode);
+                                notified, bookingCode);
                     }
                 } catch (Exception accErr) {
                     log.warn("[PaymentService] Failed to notify accountants: {}", accErr.getMessage());
                 }
             }
 
-            webSocketNotificationService.sendGlobalNotification(title, message, "INFO");
+            notificationDispatcher.broadcastAfterCommit(branchId, title, message, "INFO");
         } catch (Exception e) {
             log.warn("Failed to send WebSocket notification for payment", e);
         }
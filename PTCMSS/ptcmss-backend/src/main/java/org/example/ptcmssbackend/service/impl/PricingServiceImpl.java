@@ -0,0 +1,501 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.dto.request.Booking.PriceQuoteRequest;
+import org.example.ptcmssbackend.dto.response.Booking.PriceQuoteResponse;
+import org.example.ptcmssbackend.entity.HireTypes;
+import org.example.ptcmssbackend.entity.SystemSetting;
+import org.example.ptcmssbackend.entity.VehicleCategoryPricing;
+import org.example.ptcmssbackend.enums.SettingStatus;
+import org.example.ptcmssbackend.enums.VehicleCategoryStatus;
+import org.example.ptcmssbackend.repository.HireTypesRepository;
+import org.example.ptcmssbackend.repository.SystemSettingRepository;
+import org.example.ptcmssbackend.repository.VehicleCategoryPricingRepository;
+import org.example.ptcmssbackend.service.PricingService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bảng giá biên dịch sẵn (TariffSnapshot): cài đặt hệ thống đã parse, giá từng loại xe và mã loại thuê,
+ * nạp 1 lần bằng 3 truy vấn rồi dùng chung cho mọi lần tính giá.
+ *
+ * Snapshot là bất biến và được thay nguyên khối qua AtomicReference nên đọc không cần khóa.
+ * SystemSettingService/VehicleCategoryService gọi invalidate() khi dữ liệu thay đổi;
+ * ngoài ra snapshot tự hết hạn sau REBUILD_AFTER để tự sửa nếu dữ liệu bị sửa trực tiếp dưới DB.
+ *
+ * Công thức:
+ * 1. TÍNH THEO CHIỀU:
+ *    a. Một chiều: CT = Số_km × PricePerKm + baseFee
+ *    b. Hai chiều:
+ *       - Cùng ngày: CT = Số_km × PricePerKm × 1.5 + baseFee
+ *       - Khác ngày: CT = 2 × (Số_km × PricePerKm + baseFee)
+ * 2. TÍNH THEO NGÀY (DAILY):
+ *    - Nếu 1 ngày VÀ khoảng cách <= INTER_PROVINCE_DISTANCE_KM: CT = SameDayFixedPrice + BaseFee (KHÔNG tính km)
+ *    - Ngược lại: CT = (Số_km × PricePerKm × 1.5) + (SameDayFixedPrice × Số_ngày) + BaseFee
+ * 3. THUÊ NHIỀU NGÀY (MULTI_DAY):
+ *    CT = (Số_km × PricePerKm × 1.5) + (SameDayFixedPrice × Số_ngày) + BaseFee
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PricingServiceImpl implements PricingService {
+
+    private static final Duration REBUILD_AFTER = Duration.ofMinutes(5);
+    private static final BigDecimal DEFAULT_PREMIUM_SURCHARGE = new BigDecimal("1000000");
+
+    private final SystemSettingRepository systemSettingRepository;
+    private final VehicleCategoryPricingRepository vehicleCategoryRepository;
+    private final HireTypesRepository hireTypesRepository;
+
+    private final AtomicReference<TariffSnapshot> current = new AtomicReference<>();
+
+    @Override
+    public BigDecimal calculatePrice(
+            List<Integer> vehicleCategoryIds,
+            List<Integer> quantities,
+            Double distance,
+            Boolean useHighway,
+            Integer hireTypeId,
+            Boolean isHoliday,
+            Boolean isWeekend,
+            Instant startTime,
+            Instant endTime
+    ) {
+        if (vehicleCategoryIds == null || vehicleCategoryIds.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        return price(snapshot(), vehicleCategoryIds, quantities, distance, useHighway,
+                hireTypeId, isHoliday, isWeekend, startTime, endTime);
+    }
+
+    @Override
+    public List<PriceQuoteResponse> calculatePrices(List<PriceQuoteRequest> quotes) {
+        if (quotes == null || quotes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Cả lô dùng chung 1 bảng giá để các báo giá nhất quán với nhau
+        TariffSnapshot tariff = snapshot();
+        List<PriceQuoteResponse> results = new ArrayList<>(quotes.size());
+        for (PriceQuoteRequest q : quotes) {
+            try {
+                BigDecimal price = q.getVehicleCategoryIds() == null || q.getVehicleCategoryIds().isEmpty()
+                        ? BigDecimal.ZERO
+                        : price(tariff, q.getVehicleCategoryIds(), q.getQuantities(), q.getDistance(), q.getUseHighway(),
+                                q.getHireTypeId(), q.getIsHoliday(), q.getIsWeekend(), q.getStartTime(), q.getEndTime());
+                results.add(PriceQuoteResponse.builder()
+                        .ref(q.getRef())
+                        .success(true)
+                        .price(price)
+                        .build());
+            } catch (Exception e) {
+                log.warn("[Pricing] Quote {} failed: {}", q.getRef(), e.getMessage());
+                results.add(PriceQuoteResponse.builder()
+                        .ref(q.getRef())
+                        .success(false)
+                        .message(e.getMessage())
+                        .build());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void invalidate() {
+        current.set(null);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Luồng khác có thể đã nạp lại dữ liệu cũ trước khi giao dịch này commit
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    current.set(null);
+                }
+            });
+        }
+    }
+
+    private BigDecimal price(
+            TariffSnapshot tariff,
+            List<Integer> vehicleCategoryIds,
+            List<Integer> quantities,
+            Double distance,
+            Boolean useHighway,
+            Integer hireTypeId,
+            Boolean isHoliday,
+            Boolean isWeekend,
+            Instant startTime,
+            Instant endTime
+    ) {
+        BigDecimal roundTripMultiplier = tariff.roundTripMultiplier;
+        int interProvinceDistanceKm = tariff.interProvinceDistanceKm;
+
+        // Tính số ngày
+        int numberOfDays = calculateNumberOfDays(startTime, endTime);
+
+        // Kiểm tra chuyến trong ngày
+        boolean isSameDayTrip = isSameDayTrip(tariff, startTime, endTime);
+
+        // Kiểm tra liên tỉnh (dựa trên khoảng cách > ngưỡng cấu hình, mặc định 100km)
+        boolean isInterProvince = distance != null && distance > interProvinceDistanceKm;
+
+        // Xác định loại thuê
+        String hireTypeCode = null;
+        if (hireTypeId != null) {
+            hireTypeCode = hireTypeCode(tariff, hireTypeId);
+        }
+
+        // Auto-detect hình thức thuê nếu không có hireType
+        // Nếu numberOfDays >= 1 và chưa có hireType → mặc định là DAILY
+        if (hireTypeCode == null && numberOfDays >= 1) {
+            // Với khoảng cách rất ngắn (< 10km), mặc định là ONE_WAY để tính đúng theo km
+            if (isSameDayTrip && distance != null && distance > 0 && distance < 10) {
+                hireTypeCode = "ONE_WAY";
+            } else if (isSameDayTrip && distance != null && distance <= interProvinceDistanceKm) {
+                // Khoảng cách trung bình (10-100km) trong ngày → để logic SAME_DAY xử lý
+            } else if (numberOfDays > 1) {
+                hireTypeCode = "MULTI_DAY";
+            } else {
+                hireTypeCode = "DAILY";
+            }
+        }
+
+        log.debug("[Pricing] hireTypeCode={}, distance={}, isSameDayTrip={}, isInterProvince={}, numberOfDays={}",
+                hireTypeCode, distance, isSameDayTrip, isInterProvince, numberOfDays);
+
+        // Tính hệ số phụ phí ngày lễ/cuối tuần
+        BigDecimal surchargeRate = BigDecimal.ZERO;
+        if (isHoliday != null && isHoliday) {
+            surchargeRate = surchargeRate.add(tariff.holidaySurchargeRate);
+        }
+        if (isWeekend != null && isWeekend) {
+            surchargeRate = surchargeRate.add(tariff.weekendSurchargeRate);
+        }
+
+        BigDecimal totalPrice = BigDecimal.ZERO;
+
+        for (int i = 0; i < vehicleCategoryIds.size(); i++) {
+            Integer categoryId = vehicleCategoryIds.get(i);
+            Integer quantity = quantities != null && i < quantities.size() && quantities.get(i) != null
+                    ? quantities.get(i) : 1;
+
+            CategoryTariff category = category(tariff, categoryId);
+            if (category.status != VehicleCategoryStatus.ACTIVE) {
+                continue;
+            }
+
+            BigDecimal pricePerKm = category.pricePerKm;
+            BigDecimal baseFee = category.baseFee;
+            BigDecimal sameDayFixedPrice = category.sameDayFixedPrice;
+
+            BigDecimal basePrice;
+
+            // Áp dụng công thức tính giá theo hình thức thuê
+            if ("DAILY".equals(hireTypeCode)) {
+                int days = Math.max(1, numberOfDays);
+
+                // Thuê 1 ngày VÀ trong bán kính INTER_PROVINCE_DISTANCE_KM: sameDayFixedPrice + baseFee (KHÔNG tính km)
+                if (days == 1 && distance != null && distance <= interProvinceDistanceKm) {
+                    basePrice = sameDayFixedPrice.add(baseFee);
+                } else {
+                    BigDecimal kmCost = kmCost(pricePerKm, distance).multiply(roundTripMultiplier);
+                    BigDecimal dailyCost = sameDayFixedPrice.multiply(BigDecimal.valueOf(days));
+                    basePrice = kmCost.add(dailyCost).add(baseFee);
+                }
+
+            } else if ("MULTI_DAY".equals(hireTypeCode) && numberOfDays > 1) {
+                BigDecimal kmCost = kmCost(pricePerKm, distance).multiply(roundTripMultiplier);
+                BigDecimal dailyCost = sameDayFixedPrice.multiply(BigDecimal.valueOf(numberOfDays));
+                basePrice = kmCost.add(dailyCost).add(baseFee);
+
+            } else if ("ONE_WAY".equals(hireTypeCode)) {
+                // LUÔN tính theo km khi user chọn "Một chiều", bất kể isSameDayTrip
+                basePrice = kmCost(pricePerKm, distance).add(baseFee);
+
+            } else if ("ROUND_TRIP".equals(hireTypeCode)) {
+                if (isSameDayTrip) {
+                    basePrice = kmCost(pricePerKm, distance).multiply(roundTripMultiplier).add(baseFee);
+                } else {
+                    // Khác ngày: tính 2 lần ONE_WAY
+                    basePrice = kmCost(pricePerKm, distance).add(baseFee).multiply(BigDecimal.valueOf(2));
+                }
+
+            } else if (isSameDayTrip && sameDayFixedPrice.compareTo(BigDecimal.ZERO) > 0 && hireTypeCode == null) {
+                // CHUYẾN TRONG NGÀY (chỉ áp dụng khi KHÔNG có hireType cụ thể)
+                if (isInterProvince) {
+                    // Liên tỉnh 1 ngày: km × PricePerKm × 1.5 + sameDayFixedPrice + baseFee
+                    BigDecimal kmCost = kmCost(pricePerKm, distance).multiply(roundTripMultiplier);
+                    basePrice = kmCost.add(sameDayFixedPrice).add(baseFee);
+                } else {
+                    // Trong tỉnh / nội thành: sameDayFixedPrice + baseFee
+                    basePrice = sameDayFixedPrice.add(baseFee);
+                }
+
+            } else {
+                // MẶC ĐỊNH: Tính theo km × 1.5 + baseFee
+                basePrice = kmCost(pricePerKm, distance).multiply(roundTripMultiplier).add(baseFee);
+            }
+
+            // Phụ phí cao tốc
+            if (useHighway != null && useHighway && category.highwayFee.compareTo(BigDecimal.ZERO) > 0) {
+                basePrice = basePrice.add(category.highwayFee);
+            }
+
+            // Phụ phí xe hạng sang
+            if (category.premiumSurcharge != null) {
+                basePrice = basePrice.add(category.premiumSurcharge);
+            }
+
+            // Phụ phí ngày lễ/cuối tuần
+            if (surchargeRate.compareTo(BigDecimal.ZERO) > 0) {
+                basePrice = basePrice.add(basePrice.multiply(surchargeRate));
+            }
+
+            // Nhân với số lượng xe
+            BigDecimal priceForThisCategory = basePrice.multiply(BigDecimal.valueOf(quantity));
+            log.debug("[Pricing] Category[{}]: basePrice={}, quantity={}, price={}",
+                    category.name, basePrice, quantity, priceForThisCategory);
+
+            totalPrice = totalPrice.add(priceForThisCategory);
+        }
+
+        return totalPrice.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal kmCost(BigDecimal pricePerKm, Double distance) {
+        if (distance != null && distance > 0 && pricePerKm.compareTo(BigDecimal.ZERO) > 0) {
+            return pricePerKm.multiply(BigDecimal.valueOf(distance));
+        }
+        return BigDecimal.ZERO;
+    }
+
+    // ==================== Snapshot ====================
+
+    private TariffSnapshot snapshot() {
+        TariffSnapshot snapshot = current.get();
+        if (snapshot != null && !snapshot.isExpired()) {
+            return snapshot;
+        }
+        TariffSnapshot built = buildSnapshot();
+        current.compareAndSet(snapshot, built);
+        discardOnRollback(built);
+        return built;
+    }
+
+    private TariffSnapshot buildSnapshot() {
+        long t0 = System.currentTimeMillis();
+
+        Map<String, String> settings = new HashMap<>();
+        for (SystemSetting s : systemSettingRepository.findAll()) {
+            if (s.getStatus() == SettingStatus.ACTIVE && s.getSettingKey() != null && s.getSettingValue() != null) {
+                settings.putIfAbsent(s.getSettingKey(), s.getSettingValue());
+            }
+        }
+
+        Map<Integer, CategoryTariff> categories = new HashMap<>();
+        for (VehicleCategoryPricing c : vehicleCategoryRepository.findAll()) {
+            categories.put(c.getId(), CategoryTariff.of(c));
+        }
+
+        Map<Integer, String> hireTypes = new HashMap<>();
+        for (HireTypes h : hireTypesRepository.findAll()) {
+            hireTypes.put(h.getId(), h.getCode());
+        }
+
+        TariffSnapshot snapshot = new TariffSnapshot(
+                decimalSetting(settings, "HOLIDAY_SURCHARGE_RATE", new BigDecimal("0.25")),
+                decimalSetting(settings, "WEEKEND_SURCHARGE_RATE", new BigDecimal("0.20")),
+                decimalSetting(settings, "ROUND_TRIP_MULTIPLIER", new BigDecimal("1.5")),
+                intSetting(settings, "INTER_PROVINCE_DISTANCE_KM", 100),
+                intSetting(settings, "SAME_DAY_TRIP_START_HOUR", 6),
+                intSetting(settings, "SAME_DAY_TRIP_END_HOUR", 23),
+                Collections.unmodifiableMap(categories),
+                Collections.unmodifiableMap(hireTypes),
+                Instant.now());
+
+        log.info("[Pricing] Loaded tariff: {} categories, {} hire types in {} ms",
+                categories.size(), hireTypes.size(), System.currentTimeMillis() - t0);
+        return snapshot;
+    }
+
+    /**
+     * Snapshot nạp trong giao dịch bị rollback có thể chứa dữ liệu chưa commit -> bỏ đi
+     */
+    private void discardOnRollback(TariffSnapshot snapshot) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    current.compareAndSet(snapshot, null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Loại xe chưa có trong snapshot (vừa tạo) -> đọc trực tiếp 1 lần và đánh dấu snapshot cần nạp lại
+     */
+    private CategoryTariff category(TariffSnapshot tariff, Integer categoryId) {
+        CategoryTariff category = tariff.categories.get(categoryId);
+        if (category != null) {
+            return category;
+        }
+        VehicleCategoryPricing entity = vehicleCategoryRepository.findById(categoryId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy loại xe: " + categoryId));
+        current.compareAndSet(tariff, null);
+        return CategoryTariff.of(entity);
+    }
+
+    private String hireTypeCode(TariffSnapshot tariff, Integer hireTypeId) {
+        if (tariff.hireTypeCodes.containsKey(hireTypeId)) {
+            return tariff.hireTypeCodes.get(hireTypeId);
+        }
+        HireTypes hireType = hireTypesRepository.findById(hireTypeId).orElse(null);
+        if (hireType == null) {
+            log.warn("[Pricing] hireTypeId={} not found in database", hireTypeId);
+            return null;
+        }
+        current.compareAndSet(tariff, null);
+        return hireType.getCode();
+    }
+
+    private BigDecimal decimalSetting(Map<String, String> settings, String key, BigDecimal defaultValue) {
+        String value = settings.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Cannot parse system setting {}: {}", key, value);
+            return defaultValue;
+        }
+    }
+
+    private int intSetting(Map<String, String> settings, String key, int defaultValue) {
+        String value = settings.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Cannot parse system setting {}: {}", key, value);
+            return defaultValue;
+        }
+    }
+
+    // ==================== Helpers ====================
+
+    /**
+     * Số ngày giữa startTime và endTime (tối thiểu 1)
+     */
+    private int calculateNumberOfDays(Instant startTime, Instant endTime) {
+        if (startTime == null || endTime == null) {
+            return 1;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        long daysBetween = ChronoUnit.DAYS.between(
+                startTime.atZone(zone).toLocalDate(),
+                endTime.atZone(zone).toLocalDate());
+        return Math.max(1, (int) daysBetween + 1);
+    }
+
+    /**
+     * Chuyến trong ngày: cùng ngày, khởi hành từ SAME_DAY_TRIP_START_HOUR, về trước SAME_DAY_TRIP_END_HOUR
+     */
+    private boolean isSameDayTrip(TariffSnapshot tariff, Instant startTime, Instant endTime) {
+        if (startTime == null || endTime == null) {
+            return false;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        ZonedDateTime startZoned = startTime.atZone(zone);
+        ZonedDateTime endZoned = endTime.atZone(zone);
+
+        if (!startZoned.toLocalDate().equals(endZoned.toLocalDate())) {
+            return false;
+        }
+        return startZoned.getHour() >= tariff.sameDayStartHour
+                && endZoned.getHour() <= tariff.sameDayEndHour;
+    }
+
+    /**
+     * Bảng giá bất biến tại 1 thời điểm
+     */
+    private static final class TariffSnapshot {
+        final BigDecimal holidaySurchargeRate;
+        final BigDecimal weekendSurchargeRate;
+        final BigDecimal roundTripMultiplier;
+        final int interProvinceDistanceKm;
+        final int sameDayStartHour;
+        final int sameDayEndHour;
+        final Map<Integer, CategoryTariff> categories;
+        final Map<Integer, String> hireTypeCodes;
+        final Instant loadedAt;
+
+        TariffSnapshot(BigDecimal holidaySurchargeRate, BigDecimal weekendSurchargeRate,
+                       BigDecimal roundTripMultiplier, int interProvinceDistanceKm,
+                       int sameDayStartHour, int sameDayEndHour,
+                       Map<Integer, CategoryTariff> categories, Map<Integer, String> hireTypeCodes,
+                       Instant loadedAt) {
+            this.holidaySurchargeRate = holidaySurchargeRate;
+            this.weekendSurchargeRate = weekendSurchargeRate;
+            this.roundTripMultiplier = roundTripMultiplier;
+            this.interProvinceDistanceKm = interProvinceDistanceKm;
+            this.sameDayStartHour = sameDayStartHour;
+            this.sameDayEndHour = sameDayEndHour;
+            this.categories = categories;
+            this.hireTypeCodes = hireTypeCodes;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired() {
+            return loadedAt.plus(REBUILD_AFTER).isBefore(Instant.now());
+        }
+    }
+
+    /**
+     * Giá của 1 loại xe, các giá trị null đã được quy về 0 / mặc định
+     */
+    private static final class CategoryTariff {
+        final String name;
+        final VehicleCategoryStatus status;
+        final BigDecimal pricePerKm;
+        final BigDecimal baseFee;
+        final BigDecimal highwayFee;
+        final BigDecimal sameDayFixedPrice;
+        // null nếu không phải xe hạng sang
+        final BigDecimal premiumSurcharge;
+
+        private CategoryTariff(VehicleCategoryPricing c) {
+            this.name = c.getCategoryName();
+            this.status = c.getStatus();
+            this.pricePerKm = orZero(c.getPricePerKm());
+            this.baseFee = orZero(c.getBaseFare());
+            this.highwayFee = orZero(c.getHighwayFee());
+            this.sameDayFixedPrice = orZero(c.getSameDayFixedPrice());
+            this.premiumSurcharge = Boolean.TRUE.equals(c.getIsPremium())
+                    ? (c.getPremiumSurcharge() != null ? c.getPremiumSurcharge() : DEFAULT_PREMIUM_SURCHARGE)
+                    : null;
+        }
+
+        static CategoryTariff of(VehicleCategoryPricing c) {
+            return new CategoryTariff(c);
+        }
+
+        private static BigDecimal orZero(BigDecimal value) {
+            return value != null ? value : BigDecimal.ZERO;
+        }
+    }
+}
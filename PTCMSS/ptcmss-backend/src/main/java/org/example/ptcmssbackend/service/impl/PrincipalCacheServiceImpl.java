@@ -0,0 +1,89 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.config.CacheConfig;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
+import org.example.ptcmssbackend.service.UserServiceDetail;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+/**
+ * Principal được cache trong vùng {@link CacheConfig#USER_DETAILS} (TTL ngắn) với key "username:tokenId".
+ *
+ * Khi user thay đổi, mọi key của user bị xóa ngay và xóa lại sau khi giao dịch commit,
+ * để request đọc dữ liệu cũ xen giữa lúc giao dịch chưa commit không giữ principal cũ trong cache.
+ */
+@Slf4j(topic = "PRINCIPAL_CACHE")
+@Service
+@RequiredArgsConstructor
+public class PrincipalCacheServiceImpl implements PrincipalCacheService {
+
+    private static final String KEY_SEPARATOR = ":";
+
+    private final UserServiceDetail userServiceDetail;
+    private final CacheManager cacheManager;
+
+    @Override
+    public UserDetails getPrincipal(String username, String tokenId) {
+        Cache cache = cache();
+        String key = username + KEY_SEPARATOR + tokenId;
+        UserDetails cached = cache.get(key, UserDetails.class);
+        if (cached != null) {
+            return cached;
+        }
+        UserDetails loaded = userServiceDetail.loadUserByUsername(username);
+        cache.put(key, loaded);
+        log.debug("Cached principal for user {}", username);
+        return loaded;
+    }
+
+    @Override
+    public void evictUser(String username) {
+        if (username == null) {
+            return;
+        }
+        String prefix = username + KEY_SEPARATOR;
+        runNowAndAfterCommit(() -> nativeCache().keySet()
+                .removeIf(key -> key instanceof String s && s.startsWith(prefix)));
+    }
+
+    @Override
+    public void evictAll() {
+        runNowAndAfterCommit(() -> nativeCache().clear());
+    }
+
+    private void runNowAndAfterCommit(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private Cache cache() {
+        Cache cache = cacheManager.getCache(CacheConfig.USER_DETAILS);
+        if (cache == null) {
+            throw new IllegalStateException("Chưa cấu hình cache: " + CacheConfig.USER_DETAILS);
+        }
+        return cache;
+    }
+
+    /**
+     * Map của Caffeine bên dưới (bỏ qua decorator giao dịch) để xóa theo tiền tố key
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> nativeCache() {
+        return ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache().getNativeCache()).asMap();
+    }
+}
@@ -9,6 +9,7 @@ import org.example.ptcmssbackend.dto.TripForRatingResponse;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.TripStatus;
 import org.example.ptcmssbackend.repository.*;
+import org.example.ptcmssbackend.service.NotificationUnreadCounter;
 import org.example.ptcmssbackend.service.RatingService;
 import org.example.ptcmssbackend.service.WebSocketNotificationService;
 import org.springframework.stereotype.Service;
@@ -35,6 +36,7 @@ public class RatingServiceImpl implements RatingService {
     private final BookingRepository bookingRepository;
     private final NotificationRepository notificationRepository;
     private final WebSocketNotificationService webSocketNotificationService;
+    private final NotificationUnreadCounter unreadCounter;
 
     @Override
     @Transactional
@@ -383,6 +385,7 @@ public class RatingServiceImpl implements RatingService {
             
             // Lưu vào database
             notificationRepository.save(notification);
+            unreadCounter.addAfterCommit(driverUser.getId(), 1);
             log.info("Notification saved for driver {} (user {})", driver.getId(), driverUser.getId());
             
             // Gửi real-time notification qua WebSocket
@@ -0,0 +1,99 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.entity.Drivers;
+import org.example.ptcmssbackend.entity.Vehicles;
+import org.example.ptcmssbackend.repository.DriverRepository;
+import org.example.ptcmssbackend.repository.VehicleRepository;
+import org.example.ptcmssbackend.service.ResourceReservationService;
+import org.example.ptcmssbackend.service.ResourceTimelineService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Giữ chỗ bằng khóa dòng của tài xế/xe (SELECT ... FOR UPDATE).
+ *
+ * Sau khi có khóa, lịch bận được đọc thẳng từ DB (ResourceTimelineService với branchId = null)
+ * thay vì chỉ mục in-memory: chỉ mục có thể được nạp lại bởi giao dịch khác trước khi giao dịch giữ khóa
+ * trước đó commit nên không đủ làm căn cứ cuối cùng. Khi DB báo bận mà chỉ mục (đã nạp sẵn) không biết,
+ * chỉ mục của chi nhánh bị bỏ để nạp lại; chi nhánh chưa nạp thì không nạp khi đang giữ khóa.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResourceReservationServiceImpl implements ResourceReservationService {
+
+    private final DriverRepository driverRepository;
+    private final VehicleRepository vehicleRepository;
+    private final ResourceTimelineService resourceTimelineService;
+
+    @Override
+    @Transactional
+    public void lockDrivers(Collection<Integer> driverIds) {
+        List<Integer> ids = sortedIds(driverIds);
+        if (ids.isEmpty()) return;
+        // 1 câu lệnh FOR UPDATE ... ORDER BY id: cùng thứ tự khóa ở mọi giao dịch
+        driverRepository.findAllForUpdate(ids);
+    }
+
+    @Override
+    @Transactional
+    public void lockVehicles(Collection<Integer> vehicleIds) {
+        List<Integer> ids = sortedIds(vehicleIds);
+        if (ids.isEmpty()) return;
+        vehicleRepository.findAllForUpdate(ids);
+    }
+
+    @Override
+    @Transactional
+    public boolean tryReserveDriver(Integer driverId, Instant start, Instant end, Collection<Integer> excludeTripIds) {
+        Drivers driver = lockDriver(driverId);
+        if (start == null || end == null) return true;
+
+        boolean busy = resourceTimelineService.isDriverBusy(null, driverId, start, end, excludeTripIds, null);
+        if (busy && driver.getBranch() != null
+                && Boolean.FALSE.equals(resourceTimelineService.isDriverBusyIfLoaded(
+                        driver.getBranch().getId(), driverId, start, end, excludeTripIds))) {
+            log.warn("[Reservation] Timeline of branch {} missed a busy window of driver {}, evicting", driver.getBranch().getId(), driverId);
+            resourceTimelineService.evictBranch(driver.getBranch().getId());
+        }
+        return !busy;
+    }
+
+    @Override
+    @Transactional
+    public boolean tryReserveVehicle(Integer vehicleId, Instant start, Instant busyUntil, Collection<Integer> excludeTripIds) {
+        Vehicles vehicle = vehicleRepository.findForUpdate(vehicleId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy xe: " + vehicleId));
+        if (start == null || busyUntil == null) return true;
+
+        boolean busy = resourceTimelineService.isVehicleBusy(null, vehicleId, start, busyUntil, excludeTripIds, null);
+        if (busy && vehicle.getBranch() != null
+                && Boolean.FALSE.equals(resourceTimelineService.isVehicleBusyIfLoaded(
+                        vehicle.getBranch().getId(), vehicleId, start, busyUntil, excludeTripIds))) {
+            log.warn("[Reservation] Timeline of branch {} missed a busy window of vehicle {}, evicting", vehicle.getBranch().getId(), vehicleId);
+            resourceTimelineService.evictBranch(vehicle.getBranch().getId());
+        }
+        return !busy;
+    }
+
+    private List<Integer> sortedIds(Collection<Integer> ids) {
+        if (ids == null) return List.of();
+        return ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    private Drivers lockDriver(Integer driverId) {
+        return driverRepository.findForUpdate(driverId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy tài xế: " + driverId));
+    }
+}
@@ -0,0 +1,531 @@
+package org.example.ptcmssbackend.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.entity.Bookings;
+import org.example.ptcmssbackend.entity.TripDrivers;
+import org.example.ptcmssbackend.entity.TripVehicles;
+import org.example.ptcmssbackend.entity.Trips;
+import org.example.ptcmssbackend.entity.Vehicles;
+import org.example.ptcmssbackend.enums.TripStatus;
+import org.example.ptcmssbackend.enums.VehicleStatus;
+import org.example.ptcmssbackend.repository.TripDriverRepository;
+import org.example.ptcmssbackend.repository.TripVehicleRepository;
+import org.example.ptcmssbackend.repository.VehicleRepository;
+import org.example.ptcmssbackend.service.ResourceTimelineService;
+import org.example.ptcmssbackend.service.TripOccupancyService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Chỉ mục lịch bận theo chi nhánh.
+ *
+ * Mỗi tài xế/xe giữ 1 mảng khung bận sắp xếp theo startTime cùng độ dài khung lớn nhất (maxSpan),
+ * nên câu hỏi "có trùng [start, end) không" chỉ cần 1 lần tìm nhị phân + duyệt lùi các khung
+ * bắt đầu trong [start - maxSpan, end). Mảng là bất biến (copy-on-write) nên đọc không cần khóa.
+ *
+ * Dữ liệu nạp trong 1 giao dịch bị rollback sẽ bị bỏ để tránh giữ trạng thái chưa commit.
+ * Chỉ mục được nạp lại định kỳ (REBUILD_AFTER) để tự sửa nếu có thay đổi không đi qua onTripChanged.
+ *
+ * Nạp, cập nhật hay đọc trực tiếp đều chỉ dùng distance có sẵn trong cache/ước lượng (không gọi API)
+ * vì có thể đang giữ khóa dòng; ma trận distance của chi nhánh được tính ở nền, không chờ.
+ * Mỗi onTripChanged tăng changeVersion: bản nạp trùng thời gian với 1 thay đổi (hoặc bắt đầu sau thay đổi
+ * nhưng trước khi giao dịch đó commit) không chắc đã thấy thay đổi nên chỉ được dùng 1 lần rồi nạp lại.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResourceTimelineServiceImpl implements ResourceTimelineService {
+
+    private static final Duration REBUILD_AFTER = Duration.ofMinutes(5);
+
+    private final TripVehicleRepository tripVehicleRepository;
+    private final TripDriverRepository tripDriverRepository;
+    private final VehicleRepository vehicleRepository;
+    private final TripOccupancyService tripOccupancyService;
+
+    private final Map<Integer, BranchTimeline> branches = new ConcurrentHashMap<>();
+    private final AtomicLong changeVersion = new AtomicLong();
+
+    @Override
+    public boolean isVehicleBusy(Integer branchId, Integer vehicleId, Instant start, Instant busyUntil,
+                                 Collection<Integer> excludeTripIds, Integer excludeBookingId) {
+        if (vehicleId == null || start == null || busyUntil == null) return false;
+        return hasBusyUntilOverlap(vehicleWindows(branchId, vehicleId), start, busyUntil, excludeTripIds, excludeBookingId);
+    }
+
+    @Override
+    public boolean isDriverBusy(Integer branchId, Integer driverId, Instant start, Instant end,
+                                Collection<Integer> excludeTripIds, Integer excludeBookingId) {
+        if (driverId == null || start == null || end == null) return false;
+        ResourceWindows windows = driverWindows(branchId, driverId);
+        return windows.hasRawOverlap(start, end, excludeTripIds, excludeBookingId);
+    }
+
+    @Override
+    public Boolean isVehicleBusyIfLoaded(Integer branchId, Integer vehicleId, Instant start, Instant busyUntil,
+                                         Collection<Integer> excludeTripIds) {
+        BranchTimeline timeline = branchId != null ? branches.get(branchId) : null;
+        if (timeline == null || vehicleId == null || start == null || busyUntil == null) return null;
+        ResourceWindows windows = timeline.vehicles.getOrDefault(vehicleId, ResourceWindows.EMPTY);
+        return hasBusyUntilOverlap(windows, start, busyUntil, excludeTripIds, null);
+    }
+
+    @Override
+    public Boolean isDriverBusyIfLoaded(Integer branchId, Integer driverId, Instant start, Instant end,
+                                        Collection<Integer> excludeTripIds) {
+        BranchTimeline timeline = branchId != null ? branches.get(branchId) : null;
+        if (timeline == null || driverId == null || start == null || end == null) return null;
+        ResourceWindows windows = timeline.drivers.getOrDefault(driverId, ResourceWindows.EMPTY);
+        return windows.hasRawOverlap(start, end, excludeTripIds, null);
+    }
+
+    private boolean hasBusyUntilOverlap(ResourceWindows windows, Instant start, Instant busyUntil,
+                                        Collection<Integer> excludeTripIds, Integer excludeBookingId) {
+        for (BusyWindow w : windows.undated) {
+            if (!w.isExcluded(excludeTripIds, excludeBookingId)) return true;
+        }
+        for (int i = windows.firstStartAtOrAfter(busyUntil) - 1; i >= 0; i--) {
+            BusyWindow w = windows.dated[i];
+            if (!w.start.plusMillis(windows.maxSpanMillis).isAfter(start)) break;
+            if (w.isExcluded(excludeTripIds, excludeBookingId)) continue;
+            if (w.busyUntil == null || w.busyUntil.isAfter(start)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public FreeSlot findNextFreeSlot(Integer branchId, Integer vehicleId, Instant requestedStart) {
+        if (vehicleId == null || requestedStart == null) return new FreeSlot(requestedStart, null);
+        ResourceWindows windows = vehicleWindows(branchId, vehicleId);
+
+        // Các chuyến đang chạy qua thời điểm yêu cầu -> xe rảnh khi chuyến kết thúc muộn nhất xong
+        Instant earliestAvailable = null;
+        for (int i = windows.firstStartAtOrAfter(requestedStart) - 1; i >= 0; i--) {
+            BusyWindow w = windows.dated[i];
+            if (!w.start.plusMillis(windows.maxSpanMillis).isAfter(requestedStart)) break;
+            if (!w.hasValidRange()) continue;
+            if (w.start.isBefore(requestedStart) && w.end.isAfter(requestedStart)
+                    && (earliestAvailable == null || w.end.isAfter(earliestAvailable))) {
+                earliestAvailable = w.end;
+            }
+        }
+        if (earliestAvailable == null) {
+            earliestAvailable = requestedStart;
+        }
+
+        // Chuyến đầu tiên bắt đầu sau earliestAvailable
+        Instant availableUntil = null;
+        for (int i = windows.firstStartAfter(earliestAvailable); i < windows.dated.length; i++) {
+            if (windows.dated[i].hasValidRange()) {
+                availableUntil = windows.dated[i].start;
+                break;
+            }
+        }
+        return new FreeSlot(earliestAvailable, availableUntil);
+    }
+
+    @Override
+    public List<Integer> findBusyVehicleIds(Integer branchId, Integer categoryId, Instant start, Instant end) {
+        if (branchId == null || start == null || end == null) {
+            return tripVehicleRepository.findBusyVehicleIds(branchId, categoryId, start, end);
+        }
+        BranchTimeline timeline = timeline(branchId);
+        List<Integer> busy = new ArrayList<>();
+        timeline.vehicles.forEach((vehicleId, windows) -> {
+            if (categoryId != null && !categoryId.equals(timeline.vehicleCategories.get(vehicleId))) return;
+            if (windows.hasRawOverlap(start, end, null, null)) busy.add(vehicleId);
+        });
+        return busy;
+    }
+
+    @Override
+    public Map<Integer, Integer> countBusyVehiclesByCategory(Integer branchId, Instant start, Instant end) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if (branchId == null || start == null || end == null) {
+            for (Object[] row : tripVehicleRepository.countBusyVehiclesByCategory(branchId, start, end)) {
+                counts.put((Integer) row[0], ((Number) row[1]).intValue());
+            }
+            return counts;
+        }
+        BranchTimeline timeline = timeline(branchId);
+        timeline.vehicles.forEach((vehicleId, windows) -> {
+            Integer categoryId = timeline.vehicleCategories.get(vehicleId);
+            if (categoryId != null && windows.hasRawOverlap(start, end, null, null)) {
+                counts.merge(categoryId, 1, Integer::sum);
+            }
+        });
+        return counts;
+    }
+
+    @Override
+    public List<Integer> findFreeVehicleIds(Integer branchId, Integer categoryId, Instant start, Instant end) {
+        Set<Integer> busy = new HashSet<>(findBusyVehicleIds(branchId, categoryId, start, end));
+        return vehicleRepository.filterVehicles(categoryId, branchId, VehicleStatus.AVAILABLE).stream()
+                .map(Vehicles::getId)
+                .filter(id -> !busy.contains(id))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void onTripChanged(Integer tripId) {
+        if (tripId == null) return;
+        invalidateLoadsUntilCommit(changeVersion.incrementAndGet());
+        if (branches.isEmpty()) return;
+
+        List<TripVehicles> vehicleEntries = tripVehicleRepository.findTimelineEntriesByTripId(tripId);
+        List<TripDrivers> driverEntries = tripDriverRepository.findTimelineEntriesByTripId(tripId);
+
+        Set<Integer> touched = new HashSet<>();
+        for (BranchTimeline timeline : branches.values()) {
+            if (timeline.removeTrip(tripId)) touched.add(timeline.branchId);
+        }
+        for (TripVehicles tv : vehicleEntries) {
+            if (!isActive(tv.getTrip()) || tv.getVehicle() == null || tv.getVehicle().getBranch() == null) continue;
+            BranchTimeline timeline = branches.get(tv.getVehicle().getBranch().getId());
+            if (timeline == null) continue;
+            timeline.addVehicleWindow(tv.getVehicle().getId(), categoryIdOf(tv.getVehicle()), toVehicleWindow(tv.getTrip()));
+            touched.add(timeline.branchId);
+        }
+        for (TripDrivers td : driverEntries) {
+            if (!isActive(td.getTrip()) || td.getDriver() == null || td.getDriver().getBranch() == null) continue;
+            BranchTimeline timeline = branches.get(td.getDriver().getBranch().getId());
+            if (timeline == null) continue;
+            timeline.addDriverWindow(td.getDriver().getId(), toDriverWindow(td.getTrip()));
+            touched.add(timeline.branchId);
+        }
+        evictOnRollback(touched);
+        log.debug("[ResourceTimeline] Trip {} refreshed in branches {}", tripId, touched);
+    }
+
+    @Override
+    public void evictBranch(Integer branchId) {
+        if (branchId != null) {
+            branches.remove(branchId);
+        }
+    }
+
+    // ==================== Nạp dữ liệu ====================
+
+    private ResourceWindows vehicleWindows(Integer branchId, Integer vehicleId) {
+        if (branchId == null) {
+            // Không rõ chi nhánh: đọc trực tiếp lịch của xe
+            List<BusyWindow> list = tripVehicleRepository.findAllByVehicleId(vehicleId).stream()
+                    .map(TripVehicles::getTrip)
+                    .filter(this::isActive)
+                    .map(this::toVehicleWindow)
+                    .collect(Collectors.toList());
+            return ResourceWindows.of(list);
+        }
+        return timeline(branchId).vehicles.getOrDefault(vehicleId, ResourceWindows.EMPTY);
+    }
+
+    private ResourceWindows driverWindows(Integer branchId, Integer driverId) {
+        if (branchId == null) {
+            List<BusyWindow> list = tripDriverRepository.findAllByDriverId(driverId).stream()
+                    .map(TripDrivers::getTrip)
+                    .filter(this::isActive)
+                    .map(this::toDriverWindow)
+                    .collect(Collectors.toList());
+            return ResourceWindows.of(list);
+        }
+        return timeline(branchId).drivers.getOrDefault(driverId, ResourceWindows.EMPTY);
+    }
+
+    private BranchTimeline timeline(Integer branchId) {
+        BranchTimeline timeline = branches.get(branchId);
+        if (timeline != null && !timeline.isExpired()) {
+            return timeline;
+        }
+        long version = changeVersion.get();
+        timeline = load(branchId, version);
+        if (changeVersion.get() != version) {
+            // Có chuyến thay đổi trong lúc nạp: dùng bản này cho lần gọi hiện tại, lần sau nạp lại
+            timeline.stale = true;
+        }
+        branches.put(branchId, timeline);
+        evictOnRollback(Set.of(branchId));
+        return timeline;
+    }
+
+    private BranchTimeline load(Integer branchId, long version) {
+        long startedAt = System.currentTimeMillis();
+        BranchTimeline timeline = new BranchTimeline(branchId, version);
+
+        Map<Integer, List<BusyWindow>> vehicleLists = new HashMap<>();
+        List<TripVehicles> vehicleTrips = tripVehicleRepository.findActiveByVehicleBranchId(branchId);
+        // Distance còn thiếu của cả chi nhánh được tính ở nền qua ma trận, lần nạp sau lấy từ cache
+        tripOccupancyService.prefetchDistances(vehicleTrips.stream().map(TripVehicles::getTrip).toList());
+        for (TripVehicles tv : vehicleTrips) {
+            Integer vehicleId = tv.getVehicle().getId();
+            vehicleLists.computeIfAbsent(vehicleId, k -> new ArrayList<>()).add(toVehicleWindow(tv.getTrip()));
+            timeline.vehicleCategories.put(vehicleId, categoryIdOf(tv.getVehicle()));
+            timeline.tripVehicles.computeIfAbsent(tv.getTrip().getId(), k -> ConcurrentHashMap.newKeySet()).add(vehicleId);
+        }
+        vehicleLists.forEach((vehicleId, list) -> timeline.vehicles.put(vehicleId, ResourceWindows.of(list)));
+
+        Map<Integer, List<BusyWindow>> driverLists = new HashMap<>();
+        for (TripDrivers td : tripDriverRepository.findActiveByDriverBranchId(branchId)) {
+            Integer driverId = td.getDriver().getId();
+            driverLists.computeIfAbsent(driverId, k -> new ArrayList<>()).add(toDriverWindow(td.getTrip()));
+            timeline.tripDrivers.computeIfAbsent(td.getTrip().getId(), k -> ConcurrentHashMap.newKeySet()).add(driverId);
+        }
+        driverLists.forEach((driverId, list) -> timeline.drivers.put(driverId, ResourceWindows.of(list)));
+
+        log.info("[ResourceTimeline] Loaded branch {}: {} vehicles, {} drivers in {} ms",
+                branchId, timeline.vehicles.size(), timeline.drivers.size(), System.currentTimeMillis() - startedAt);
+        return timeline;
+    }
+
+    /**
+     * Dữ liệu đọc/ghi trong giao dịch chưa commit: nếu giao dịch rollback thì bỏ chỉ mục của các chi nhánh liên quan
+     */
+    private void evictOnRollback(Set<Integer> branchIds) {
+        if (branchIds.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) return;
+        Set<Integer> ids = new HashSet<>(branchIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    ids.forEach(branches::remove);
+                }
+            }
+        });
+    }
+
+    /**
+     * Bản nạp bắt đầu sau thay đổi (version) nhưng trước khi giao dịch của thay đổi commit thì không thấy thay đổi đó:
+     * sau commit bỏ các bản này và đánh dấu bản đang nạp là cũ
+     */
+    private void invalidateLoadsUntilCommit(long version) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                changeVersion.incrementAndGet();
+                branches.values().removeIf(timeline -> timeline.loadVersion >= version);
+            }
+        });
+    }
+
+    private boolean isActive(Trips trip) {
+        return trip != null && trip.getStatus() != TripStatus.CANCELLED && trip.getStatus() != TripStatus.COMPLETED;
+    }
+
+    private Integer categoryIdOf(Vehicles vehicle) {
+        return vehicle.getCategory() != null ? vehicle.getCategory().getId() : null;
+    }
+
+    /**
+     * Khung bận của xe chỉ dùng distance trong cache/ước lượng, không gọi API (có thể đang giữ khóa dòng)
+     */
+    private BusyWindow toVehicleWindow(Trips trip) {
+        Bookings booking = trip.getBooking();
+        Instant busyUntil = tripOccupancyService.estimateBusyUntil(
+                hireTypeCodeOf(booking),
+                trip.getStartTime(),
+                trip.getEndTime(),
+                trip.getDistance() != null ? trip.getDistance().doubleValue() : null,
+                trip.getStartLocation(),
+                trip.getEndLocation()
+        );
+        return new BusyWindow(trip.getId(), booking != null ? booking.getId() : null,
+                trip.getStartTime(), trip.getEndTime(), busyUntil);
+    }
+
+    private String hireTypeCodeOf(Bookings booking) {
+        return booking != null && booking.getHireType() != null ? booking.getHireType().getCode() : null;
+    }
+
+    private BusyWindow toDriverWindow(Trips trip) {
+        Bookings booking = trip.getBooking();
+        return new BusyWindow(trip.getId(), booking != null ? booking.getId() : null,
+                trip.getStartTime(), trip.getEndTime(), null);
+    }
+
+    // ==================== Cấu trúc dữ liệu ====================
+
+    private static final class BranchTimeline {
+        private final Integer branchId;
+        private final long loadVersion;
+        private final Instant loadedAt = Instant.now();
+        private volatile boolean stale;
+        private final Map<Integer, ResourceWindows> vehicles = new ConcurrentHashMap<>();
+        private final Map<Integer, ResourceWindows> drivers = new ConcurrentHashMap<>();
+        private final Map<Integer, Integer> vehicleCategories = new ConcurrentHashMap<>();
+        // tripId -> các xe/tài xế đang giữ khung của chuyến, để gỡ khi chuyến thay đổi
+        private final Map<Integer, Set<Integer>> tripVehicles = new ConcurrentHashMap<>();
+        private final Map<Integer, Set<Integer>> tripDrivers = new ConcurrentHashMap<>();
+
+        private BranchTimeline(Integer branchId, long loadVersion) {
+            this.branchId = branchId;
+            this.loadVersion = loadVersion;
+        }
+
+        private boolean isExpired() {
+            return stale || loadedAt.plus(REBUILD_AFTER).isBefore(Instant.now());
+        }
+
+        private synchronized boolean removeTrip(Integer tripId) {
+            Set<Integer> vehicleIds = tripVehicles.remove(tripId);
+            Set<Integer> driverIds = tripDrivers.remove(tripId);
+            if (vehicleIds != null) {
+                vehicleIds.forEach(id -> vehicles.computeIfPresent(id, (k, w) -> w.without(tripId)));
+            }
+            if (driverIds != null) {
+                driverIds.forEach(id -> drivers.computeIfPresent(id, (k, w) -> w.without(tripId)));
+            }
+            return vehicleIds != null || driverIds != null;
+        }
+
+        private synchronized void addVehicleWindow(Integer vehicleId, Integer categoryId, BusyWindow window) {
+            vehicles.merge(vehicleId, ResourceWindows.of(List.of(window)), (old, w) -> old.with(window));
+            vehicleCategories.put(vehicleId, categoryId);
+            tripVehicles.computeIfAbsent(window.tripId, k -> ConcurrentHashMap.newKeySet()).add(vehicleId);
+        }
+
+        private synchronized void addDriverWindow(Integer driverId, BusyWindow window) {
+            drivers.merge(driverId, ResourceWindows.of(List.of(window)), (old, w) -> old.with(window));
+            tripDrivers.computeIfAbsent(window.tripId, k -> ConcurrentHashMap.newKeySet()).add(driverId);
+        }
+    }
+
+    /**
+     * Khung bận của 1 chuyến. busyUntil chỉ dùng cho xe (ước lượng theo km/vận tốc), tài xế dùng startTime/endTime.
+     */
+    private static final class BusyWindow {
+        private final Integer tripId;
+        private final Integer bookingId;
+        private final Instant start;
+        private final Instant end;
+        private final Instant busyUntil;
+
+        private BusyWindow(Integer tripId, Integer bookingId, Instant start, Instant end, Instant busyUntil) {
+            this.tripId = tripId;
+            this.bookingId = bookingId;
+            this.start = start;
+            this.end = end;
+            this.busyUntil = busyUntil;
+        }
+
+        private boolean isExcluded(Collection<Integer> excludeTripIds, Integer excludeBookingId) {
+            if (excludeTripIds != null && excludeTripIds.contains(tripId)) return true;
+            return excludeBookingId != null && excludeBookingId.equals(bookingId);
+        }
+
+        private boolean hasValidRange() {
+            return start != null && end != null && end.isAfter(start);
+        }
+
+        private long spanMillis() {
+            if (start == null) return 0L;
+            long span = 0L;
+            if (end != null) span = Math.max(span, end.toEpochMilli() - start.toEpochMilli());
+            if (busyUntil != null) span = Math.max(span, busyUntil.toEpochMilli() - start.toEpochMilli());
+            return span;
+        }
+    }
+
+    /**
+     * Danh sách khung bận bất biến của 1 tài xế/xe: dated sắp xếp theo start, undated là các chuyến thiếu start.
+     */
+    private static final class ResourceWindows {
+        private static final ResourceWindows EMPTY = new ResourceWindows(new BusyWindow[0], List.of());
+        private static final Comparator<BusyWindow> BY_START = Comparator.comparing(w -> w.start);
+
+        private final BusyWindow[] dated;
+        private final List<BusyWindow> undated;
+        private final long maxSpanMillis;
+
+        private ResourceWindows(BusyWindow[] dated, List<BusyWindow> undated) {
+            this.dated = dated;
+            this.undated = undated;
+            long max = 0L;
+            for (BusyWindow w : dated) {
+                max = Math.max(max, w.spanMillis());
+            }
+            this.maxSpanMillis = max;
+        }
+
+        private static ResourceWindows of(List<BusyWindow> windows) {
+            List<BusyWindow> undated = new ArrayList<>();
+            List<BusyWindow> dated = new ArrayList<>();
+            for (BusyWindow w : windows) {
+                (w.start == null ? undated : dated).add(w);
+            }
+            BusyWindow[] arr = dated.toArray(new BusyWindow[0]);
+            Arrays.sort(arr, BY_START);
+            return new ResourceWindows(arr, Collections.unmodifiableList(undated));
+        }
+
+        private ResourceWindows with(BusyWindow window) {
+            List<BusyWindow> all = new ArrayList<>(Arrays.asList(dated));
+            all.addAll(undated);
+            all.add(window);
+            return of(all);
+        }
+
+        private ResourceWindows without(Integer tripId) {
+            List<BusyWindow> all = new ArrayList<>(Arrays.asList(dated));
+            all.addAll(undated);
+            all.removeIf(w -> w.tripId.equals(tripId));
+            return of(all);
+        }
+
+        /**
+         * Có khung nào giao [start, end) theo startTime/endTime thực tế không (khung thiếu start/end không tính)
+         */
+        private boolean hasRawOverlap(Instant start, Instant end, Collection<Integer> excludeTripIds, Integer excludeBookingId) {
+            for (int i = firstStartAtOrAfter(end) - 1; i >= 0; i--) {
+                BusyWindow w = dated[i];
+                if (!w.start.plusMillis(maxSpanMillis).isAfter(start)) break;
+                if (w.end == null || w.isExcluded(excludeTripIds, excludeBookingId)) continue;
+                if (w.end.isAfter(start)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Vị trí đầu tiên có start >= t
+         */
+        private int firstStartAtOrAfter(Instant t) {
+            int lo = 0, hi = dated.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (dated[mid].start.isBefore(t)) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * Vị trí đầu tiên có start > t
+         */
+        private int firstStartAfter(Instant t) {
+            int lo = 0, hi = dated.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (dated[mid].start.isAfter(t)) hi = mid;
+                else lo = mid + 1;
+            }
+            return lo;
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.config.CacheConfig;
 import org.example.ptcmssbackend.dto.request.Role.CreateRoleRequest;
 import org.example.ptcmssbackend.dto.request.Role.UpdateRoleRequest;
+import org.example.ptcmssbackend.dto.response.Role.RoleResponse;
 import org.example.ptcmssbackend.entity.Roles;
 import org.example.ptcmssbackend.enums.UserStatus;
 import org.example.ptcmssbackend.repository.RolesRepository;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
 import org.example.ptcmssbackend.service.RoleService;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -16,9 +21,11 @@ import java.util.List;
 public class RoleServiceImpl implements RoleService {
 
     private final RolesRepository rolesRepository;
+    private final PrincipalCacheService principalCacheService;
 
     @Override
-    public Roles createRole(CreateRoleRequest request) {
+    @CacheEvict(value = CacheConfig.ROLES, allEntries = true)
+    public RoleResponse createRole(CreateRoleRequest request) {
         if (rolesRepository.findByRoleName(request.getRoleName()).isPresent()) {
             throw new RuntimeException("Tên vai trò đã tồn tại");
         }
@@ -26,11 +33,12 @@ public class RoleServiceImpl implements RoleService {
         role.setRoleName(request.getRoleName());
         role.setDescription(request.getDescription());
         role.setStatus(UserStatus.ACTIVE);
-        return rolesRepository.save(role);
+        return RoleResponse.from(rolesRepository.save(role));
     }
 
     @Override
-    public Roles updateRole(Integer id, UpdateRoleRequest request) {
+    @CacheEvict(value = CacheConfig.ROLES, allEntries = true)
+    public RoleResponse updateRole(Integer id, UpdateRoleRequest request) {
         Roles role = rolesRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy vai trò"));
         if (request.getRoleName() != null)
@@ -39,27 +47,39 @@ public class RoleServiceImpl implements RoleService {
             role.setDescription(request.getDescription());
         if (request.getStatus() != null)
             role.setStatus(request.getStatus());
-        return rolesRepository.save(role);
+        Roles saved = rolesRepository.save(role);
+        // Tên vai trò quyết định authority của mọi user thuộc vai trò này
+        principalCacheService.evictAll();
+        return RoleResponse.from(saved);
     }
 
+    // Cache giữ RoleResponse bất biến (không giữ entity managed) nên caller không sửa được dữ liệu trong cache
     @Override
-    public List<Roles> getAllRoles(String keyword, UserStatus status) {
+    @Cacheable(value = CacheConfig.ROLES, key = "'list:' + #keyword + ':' + #status")
+    public List<RoleResponse> getAllRoles(String keyword, UserStatus status) {
         return rolesRepository.findAll().stream()
                 .filter(r -> (keyword == null || r.getRoleName().toLowerCase().contains(keyword.toLowerCase()))
                         && (status == null || r.getStatus() == status))
+                .map(RoleResponse::from)
                 .toList();
     }
 
     @Override
-    public Roles getRoleById(Integer id) {
-        return rolesRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy vai trò"));
+    @Cacheable(value = CacheConfig.ROLES, key = "#id")
+    public RoleResponse getRoleById(Integer id) {
+        return RoleResponse.from(findRole(id));
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.ROLES, allEntries = true)
     public void deleteRole(Integer id) {
-        Roles role = getRoleById(id);
+        Roles role = findRole(id);
         role.setStatus(UserStatus.INACTIVE);
         rolesRepository.save(role);
     }
+
+    private Roles findRole(Integer id) {
+        return rolesRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy vai trò"));
+    }
 }
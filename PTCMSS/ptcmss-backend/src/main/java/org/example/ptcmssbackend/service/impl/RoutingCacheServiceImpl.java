@@ -0,0 +1,296 @@
+package org.example.ptcmssbackend.service.impl;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
+import org.example.ptcmssbackend.entity.GeocodeCache;
+import org.example.ptcmssbackend.entity.RouteCache;
+import org.example.ptcmssbackend.repository.GeocodeCacheRepository;
+import org.example.ptcmssbackend.repository.RouteCacheRepository;
+import org.example.ptcmssbackend.service.RoutingCacheService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RoutingCacheServiceImpl implements RoutingCacheService {
+
+    private static final int ADDRESS_KEY_MAX_LENGTH = 255;
+    private static final Duration MEMORY_TTL = Duration.ofHours(24);
+    private static final Pattern COMMA = Pattern.compile("\\s*,[\\s,]*");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s.,;]+$");
+
+    private final GeocodeCacheRepository geocodeCacheRepository;
+    private final RouteCacheRepository routeCacheRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${graphhopper.cache.memory-size:10000}")
+    private long memorySize;
+
+    @Value("${graphhopper.cache.db-ttl-days:30}")
+    private long dbTtlDays;
+
+    private AsyncCache<String, PlaceSuggestion> places;
+    private AsyncCache<String, DistanceResult> routes;
+    private TransactionTemplate requiresNew;
+
+    @PostConstruct
+    void init() {
+        places = Caffeine.newBuilder().maximumSize(memorySize).expireAfterWrite(MEMORY_TTL).buildAsync();
+        routes = Caffeine.newBuilder().maximumSize(memorySize).expireAfterWrite(MEMORY_TTL).buildAsync();
+        // Ghi cache DB trong giao dịch riêng: lỗi trùng key không được làm hỏng giao dịch của người gọi
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public PlaceSuggestion getPlace(String address, Function<String, PlaceSuggestion> geocoder) {
+        String key = normalizeAddress(address);
+        if (key.isEmpty()) {
+            return null;
+        }
+        return coalesce(places, key, () -> loadPlace(key, address, geocoder));
+    }
+
+    @Override
+    public Map<String, PlaceSuggestion> findPlaces(Collection<String> addresses) {
+        Map<String, PlaceSuggestion> found = new HashMap<>();
+        Map<String, List<String>> missing = new HashMap<>();
+        for (String address : addresses) {
+            String key = normalizeAddress(address);
+            if (key.isEmpty()) continue;
+            CompletableFuture<PlaceSuggestion> cached = places.asMap().get(key);
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally() && cached.join() != null) {
+                found.put(address, cached.join());
+            } else if (key.length() <= ADDRESS_KEY_MAX_LENGTH) {
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(address);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        // Tọa độ hầu như không đổi: bản ghi quá hạn vẫn đủ tốt cho việc tra cứu không gọi API
+        for (GeocodeCache row : geocodeCacheRepository.findByAddressKeyIn(missing.keySet())) {
+            PlaceSuggestion place = toPlace(row);
+            missing.getOrDefault(row.getAddressKey(), List.of()).forEach(address -> found.put(address, place));
+        }
+        return found;
+    }
+
+    @Override
+    public DistanceResult getRoute(PlaceSuggestion from, PlaceSuggestion to,
+                                   BiFunction<PlaceSuggestion, PlaceSuggestion, DistanceResult> router) {
+        String key = routeKey(from, to);
+        DistanceResult route = coalesce(routes, key, () -> loadRoute(key, from, to, router));
+        if (route == null) {
+            return null;
+        }
+        // Bản cache dùng chung -> trả bản sao mang địa chỉ của lượt tra cứu hiện tại
+        return DistanceResult.builder()
+                .distanceKm(route.getDistanceKm())
+                .durationMinutes(route.getDurationMinutes())
+                .from(from.getFullAddress())
+                .to(to.getFullAddress())
+                .build();
+    }
+
+    @Override
+    public String routeKey(PlaceSuggestion from, PlaceSuggestion to) {
+        return String.format(Locale.ROOT, "%.5f,%.5f;%.5f,%.5f",
+                from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude());
+    }
+
+    @Override
+    public Map<String, DistanceResult> findRoutes(Collection<String> routeKeys) {
+        Map<String, DistanceResult> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String key : routeKeys) {
+            CompletableFuture<DistanceResult> cached = routes.asMap().get(key);
+            // Lượt tải đang chạy dở thì coi như chưa có, không chờ
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally() && cached.join() != null) {
+                found.put(key, cached.join());
+            } else {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        for (RouteCache row : routeCacheRepository.findByRouteKeyIn(missing)) {
+            if (!isFresh(row.getUpdatedAt())) {
+                continue;
+            }
+            DistanceResult route = DistanceResult.builder()
+                    .distanceKm(row.getDistanceKm())
+                    .durationMinutes(row.getDurationMinutes())
+                    .build();
+            found.put(row.getRouteKey(), route);
+            routes.put(row.getRouteKey(), CompletableFuture.completedFuture(route));
+        }
+        return found;
+    }
+
+    @Override
+    public void putRoutes(Map<String, DistanceResult> computed) {
+        Map<String, DistanceResult> valid = computed.entrySet().stream()
+                .filter(e -> e.getValue() != null && e.getValue().getDistanceKm() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (valid.isEmpty()) {
+            return;
+        }
+        valid.forEach((key, route) -> routes.put(key, CompletableFuture.completedFuture(route)));
+        persist(() -> {
+            Map<String, RouteCache> existing = routeCacheRepository.findByRouteKeyIn(valid.keySet()).stream()
+                    .collect(Collectors.toMap(RouteCache::getRouteKey, Function.identity()));
+            Instant now = Instant.now();
+            List<RouteCache> rows = valid.entrySet().stream().map(e -> {
+                RouteCache row = existing.getOrDefault(e.getKey(), new RouteCache());
+                row.setRouteKey(e.getKey());
+                row.setDistanceKm(e.getValue().getDistanceKm());
+                row.setDurationMinutes(e.getValue().getDurationMinutes());
+                row.setUpdatedAt(now);
+                return row;
+            }).toList();
+            routeCacheRepository.saveAll(rows);
+        }, valid.size() + " routes");
+    }
+
+    @Override
+    public String normalizeAddress(String address) {
+        if (address == null) {
+            return "";
+        }
+        String key = Normalizer.normalize(address, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        key = COMMA.matcher(key).replaceAll(", ");
+        key = WHITESPACE.matcher(key).replaceAll(" ").trim();
+        return TRAILING_PUNCTUATION.matcher(key).replaceAll("");
+    }
+
+    private PlaceSuggestion loadPlace(String key, String address, Function<String, PlaceSuggestion> geocoder) {
+        boolean persistable = key.length() <= ADDRESS_KEY_MAX_LENGTH;
+        Optional<GeocodeCache> row = persistable ? geocodeCacheRepository.findByAddressKey(key) : Optional.empty();
+        if (row.isPresent() && isFresh(row.get().getUpdatedAt())) {
+            return toPlace(row.get());
+        }
+
+        PlaceSuggestion place = geocoder.apply(address);
+        if (place == null || place.getLatitude() == null || place.getLongitude() == null) {
+            return null;
+        }
+        if (persistable) {
+            GeocodeCache entity = row.orElseGet(GeocodeCache::new);
+            entity.setAddressKey(key);
+            entity.setFullAddress(truncate(place.getFullAddress(), 500));
+            entity.setLatitude(place.getLatitude());
+            entity.setLongitude(place.getLongitude());
+            entity.setUpdatedAt(Instant.now());
+            persist(() -> geocodeCacheRepository.save(entity), key);
+        }
+        return place;
+    }
+
+    private DistanceResult loadRoute(String key, PlaceSuggestion from, PlaceSuggestion to,
+                                     BiFunction<PlaceSuggestion, PlaceSuggestion, DistanceResult> router) {
+        Optional<RouteCache> row = routeCacheRepository.findByRouteKey(key);
+        if (row.isPresent() && isFresh(row.get().getUpdatedAt())) {
+            return DistanceResult.builder()
+                    .distanceKm(row.get().getDistanceKm())
+                    .durationMinutes(row.get().getDurationMinutes())
+                    .build();
+        }
+
+        DistanceResult route = router.apply(from, to);
+        if (route == null || route.getDistanceKm() == null) {
+            return null;
+        }
+        RouteCache entity = row.orElseGet(RouteCache::new);
+        entity.setRouteKey(key);
+        entity.setDistanceKm(route.getDistanceKm());
+        entity.setDurationMinutes(route.getDurationMinutes());
+        entity.setUpdatedAt(Instant.now());
+        persist(() -> routeCacheRepository.save(entity), key);
+        return route;
+    }
+
+    /**
+     * Gộp các lượt tra cứu cùng key: lượt đầu tiên tự tải (trên thread của nó, không giữ lock của cache),
+     * các lượt đến sau chờ chung kết quả. Kết quả null hoặc lỗi không được giữ lại trong cache.
+     */
+    private <V> V coalesce(AsyncCache<String, V> cache, String key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = cache.asMap().putIfAbsent(key, mine);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void persist(Runnable save, String key) {
+        try {
+            requiresNew.executeWithoutResult(status -> save.run());
+        } catch (Exception e) {
+            // Node khác vừa ghi cùng key, hoặc DB lỗi: vẫn dùng được kết quả vừa tra
+            log.warn("[RoutingCache] Cannot persist {}: {}", key, e.getMessage());
+        }
+    }
+
+    private PlaceSuggestion toPlace(GeocodeCache row) {
+        return PlaceSuggestion.builder()
+                .description(row.getFullAddress())
+                .fullAddress(row.getFullAddress())
+                .latitude(row.getLatitude())
+                .longitude(row.getLongitude())
+                .build();
+    }
+
+    private boolean isFresh(Instant updatedAt) {
+        return updatedAt != null && updatedAt.isAfter(Instant.now().minus(Duration.ofDays(dbTtlDays)));
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
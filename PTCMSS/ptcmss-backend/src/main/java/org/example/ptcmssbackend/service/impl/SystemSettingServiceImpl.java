@@ -1,6 +1,7 @@
 package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.config.CacheConfig;
 import org.example.ptcmssbackend.dto.request.SystemSetting.SystemSettingRequest;
 import org.example.ptcmssbackend.dto.response.SystemSetting.SystemSettingResponse;
 import org.example.ptcmssbackend.entity.Employees;
@@ -8,7 +9,10 @@ import org.example.ptcmssbackend.entity.SystemSetting;
 import org.example.ptcmssbackend.enums.SettingStatus;
 import org.example.ptcmssbackend.repository.SystemSettingRepository;
 import org.example.ptcmssbackend.repository.EmployeeRepository;
+import org.example.ptcmssbackend.service.PricingService;
 import org.example.ptcmssbackend.service.SystemSettingService;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,6 +26,7 @@ public class SystemSettingServiceImpl implements SystemSettingService {
 
     private final SystemSettingRepository systemSettingRepository;
     private final EmployeeRepository employeeRepository;
+    private final PricingService pricingService;
 
     @Override
     public List<SystemSettingResponse> getAll() {
@@ -39,6 +44,7 @@ public class SystemSettingServiceImpl implements SystemSettingService {
     }
 
     @Override
+    @Cacheable(value = CacheConfig.SYSTEM_SETTINGS, key = "#settingKey")
     public SystemSettingResponse getByKey(String settingKey) {
         SystemSetting setting = systemSettingRepository
                 .findBySettingKeyAndStatus(settingKey, org.example.ptcmssbackend.enums.SettingStatus.ACTIVE)
@@ -50,6 +56,7 @@ public class SystemSettingServiceImpl implements SystemSettingService {
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.SYSTEM_SETTINGS, allEntries = true)
     public SystemSettingResponse create(SystemSettingRequest request) {
         if (systemSettingRepository.existsBySettingKey(request.getSettingKey())) {
             throw new RuntimeException("Khóa cài đặt đã tồn tại");
@@ -75,10 +82,12 @@ public class SystemSettingServiceImpl implements SystemSettingService {
                 .build();
 
         SystemSetting saved = systemSettingRepository.save(setting);
+        pricingService.invalidate();
         return mapToResponse(saved);
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.SYSTEM_SETTINGS, allEntries = true)
     public SystemSettingResponse update(Integer id, SystemSettingRequest request) {
         SystemSetting setting = systemSettingRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy cài đặt hệ thống"));
@@ -105,15 +114,18 @@ public class SystemSettingServiceImpl implements SystemSettingService {
         setting.setUpdatedBy(updater);
 
         SystemSetting updated = systemSettingRepository.save(setting);
+        pricingService.invalidate();
         return mapToResponse(updated);
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.SYSTEM_SETTINGS, allEntries = true)
     public void delete(Integer id) {
         if (!systemSettingRepository.existsById(id)) {
             throw new RuntimeException("Không tìm thấy cài đặt hệ thống");
         }
         systemSettingRepository.deleteById(id);
+        pricingService.invalidate();
     }
 
     private SystemSettingResponse mapToResponse(SystemSetting entity) {
@@ -3,8 +3,9 @@ package org.example.ptcmssbackend.service.impl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.entity.Trips;
 import org.example.ptcmssbackend.enums.HireTypeCode;
-import org.example.ptcmssbackend.service.GraphHopperService;
+import org.example.ptcmssbackend.service.DistanceService;
 import org.example.ptcmssbackend.service.SystemSettingService;
 import org.example.ptcmssbackend.service.TripOccupancyService;
 import org.springframework.stereotype.Service;
@@ -13,6 +14,10 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 @Slf4j
 @Service
@@ -22,9 +27,11 @@ public class TripOccupancyServiceImpl implements TripOccupancyService {
     private static final String AVG_SPEED_KEY = "AVG_VEHICLE_SPEED_KMPH";
     private static final int DEFAULT_AVG_SPEED_KMPH = 60;
     private static final Duration BUFFER_AFTER_ARRIVAL = Duration.ofMinutes(10);
+    // Ma trận lớn hơn thì bỏ qua tính trước, từng chặng vẫn được tính (và cache) khi cần
+    private static final int PREFETCH_MAX_ELEMENTS = 400;
 
     private final SystemSettingService systemSettingService;
-    private final GraphHopperService graphHopperService;
+    private final DistanceService distanceService;
 
     @Override
     public int getAverageSpeedKmph() {
@@ -49,10 +56,27 @@ public class TripOccupancyServiceImpl implements TripOccupancyService {
             String startLocation,
             String endLocation
     ) {
+        return busyUntil(hireTypeCode, startTime, endTime, distanceKm, startLocation, endLocation, false);
+    }
+
+    @Override
+    public Instant estimateBusyUntil(
+            String hireTypeCode,
+            Instant startTime,
+            Instant endTime,
+            Double distanceKm,
+            String startLocation,
+            String endLocation
+    ) {
+        return busyUntil(hireTypeCode, startTime, endTime, distanceKm, startLocation, endLocation, true);
+    }
+
+    private Instant busyUntil(String hireTypeCode, Instant startTime, Instant endTime, Double distanceKm,
+                              String startLocation, String endLocation, boolean offline) {
         if (startTime == null) return null;
 
         final HireTypeCode type = parseHireType(hireTypeCode);
-        final double km = resolveDistanceKm(distanceKm, startLocation, endLocation);
+        final double km = resolveDistanceKm(distanceKm, startLocation, endLocation, offline);
         final Duration travel = km > 0 ? estimateTravelDuration(km) : Duration.ZERO;
 
         // ONE_WAY: busy until max(userEndTime, start + travel) + buffer
@@ -85,6 +109,26 @@ public class TripOccupancyServiceImpl implements TripOccupancyService {
         return chosen.plus(BUFFER_AFTER_ARRIVAL);
     }
 
+    @Override
+    public void prefetchDistances(Collection<Trips> trips) {
+        Set<String> origins = new LinkedHashSet<>();
+        Set<String> destinations = new LinkedHashSet<>();
+        for (Trips trip : trips) {
+            if (trip == null || (trip.getDistance() != null && trip.getDistance().signum() > 0)) continue;
+            String from = trip.getStartLocation();
+            String to = trip.getEndLocation();
+            if (from == null || from.isBlank() || to == null || to.isBlank()) continue;
+            origins.add(from);
+            destinations.add(to);
+        }
+        if (origins.isEmpty()) return;
+        if (origins.size() * destinations.size() > PREFETCH_MAX_ELEMENTS) {
+            log.debug("[TripOccupancy] Skip distance prefetch: {} x {} points", origins.size(), destinations.size());
+            return;
+        }
+        distanceService.prefetchMatrix(new ArrayList<>(origins), new ArrayList<>(destinations));
+    }
+
     private HireTypeCode parseHireType(String hireTypeCode) {
         if (hireTypeCode == null || hireTypeCode.isBlank()) return HireTypeCode.ONE_WAY;
         try {
@@ -94,18 +138,12 @@ public class TripOccupancyServiceImpl implements TripOccupancyService {
         }
     }
 
-    private double resolveDistanceKm(Double distanceKm, String from, String to) {
+    private double resolveDistanceKm(Double distanceKm, String from, String to, boolean offline) {
         if (distanceKm != null && distanceKm > 0) return distanceKm;
         if (from == null || from.isBlank() || to == null || to.isBlank()) return 0;
-        try {
-            DistanceResult result = graphHopperService.calculateDistance(from, to);
-            if (result != null && result.getDistanceKm() != null) {
-                return result.getDistanceKm();
-            }
-        } catch (Exception e) {
-            log.warn("[TripOccupancy] Cannot calculate distance via GraphHopper: {}", e.getMessage());
-        }
-        return 0;
+        // Cache -> GraphHopper (có giới hạn thời gian chờ) -> ước tính; offline thì bỏ bước GraphHopper
+        DistanceResult result = offline ? distanceService.resolveOffline(from, to) : distanceService.resolve(from, to);
+        return result != null && result.getDistanceKm() != null ? result.getDistanceKm() : 0;
     }
 
     private Duration estimateTravelDuration(double distanceKm) {
@@ -2,6 +2,7 @@ package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.ptcmssbackend.config.CacheConfig;
 import org.example.ptcmssbackend.dto.request.User.CreateUserRequest;
 import org.example.ptcmssbackend.dto.request.User.UpdateUserRequest;
 import org.example.ptcmssbackend.dto.request.User.ChangePasswordRequest;
@@ -18,7 +19,9 @@ import org.example.ptcmssbackend.repository.RolesRepository;
 import org.example.ptcmssbackend.repository.UsersRepository;
 import org.example.ptcmssbackend.service.EmailService;
 import org.example.ptcmssbackend.service.LocalImageService;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
 import org.example.ptcmssbackend.service.UserService;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -46,9 +49,11 @@ public class UserServiceImpl implements UserService {
     private final EmailService emailService;
     private final LocalImageService localImageService;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCacheService principalCacheService;
 
     @Override
     @Transactional
+    @CacheEvict(value = CacheConfig.ROLE_RECIPIENTS, allEntries = true)
     public Integer createUser(CreateUserRequest request) {
         // Validate role
         Roles role = rolesRepository.findById(request.getRoleId())
@@ -135,6 +140,7 @@ public class UserServiceImpl implements UserService {
 
     @Override
     @Transactional
+    @CacheEvict(value = CacheConfig.ROLE_RECIPIENTS, allEntries = true)
     public Integer updateUser(Integer id, UpdateUserRequest request) {
         Users user = usersRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy người dùng"));
@@ -215,6 +221,8 @@ public class UserServiceImpl implements UserService {
                 throw new RuntimeException("Dữ liệu không hợp lệ hoặc đã tồn tại trong hệ thống: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
             }
         }
+        // Role/status có thể đã đổi -> principal đã cache của user không còn đúng
+        principalCacheService.evictUser(user.getUsername());
         
         return user.getId();
     }
@@ -252,6 +260,7 @@ public class UserServiceImpl implements UserService {
                 throw new RuntimeException("Dữ liệu không hợp lệ: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
             }
         }
+        principalCacheService.evictUser(user.getUsername());
         
         return user.getId();
     }
@@ -280,6 +289,7 @@ public class UserServiceImpl implements UserService {
         // Cập nhật mật khẩu mới
         user.setPasswordHash(passwordEncoder.encode(request.getNewPassword()));
         usersRepository.save(user);
+        principalCacheService.evictUser(user.getUsername());
         
         log.info("Password changed successfully for user ID: {}", id);
     }
@@ -344,6 +354,7 @@ public class UserServiceImpl implements UserService {
         
         user.setStatus(user.getStatus() == UserStatus.ACTIVE ? UserStatus.INACTIVE : UserStatus.ACTIVE);
         usersRepository.save(user);
+        principalCacheService.evictUser(user.getUsername());
     }
 
     @Override
@@ -354,6 +365,7 @@ public class UserServiceImpl implements UserService {
         String imageUrl = localImageService.saveImage(file);
         user.setAvatar(imageUrl);
         usersRepository.save(user);
+        principalCacheService.evictUser(user.getUsername());
 
         log.info("update avatar thành công");
 
@@ -1,13 +1,17 @@
 package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.config.CacheConfig;
 import org.example.ptcmssbackend.dto.request.Vehicle.VehicleCategoryRequest;
 import org.example.ptcmssbackend.dto.response.Vehicle.VehicleCategoryResponse;
 import org.example.ptcmssbackend.entity.VehicleCategoryPricing;
 import org.example.ptcmssbackend.enums.VehicleCategoryStatus;
 import org.example.ptcmssbackend.repository.VehicleCategoryPricingRepository;
 import org.example.ptcmssbackend.repository.VehicleRepository;
+import org.example.ptcmssbackend.service.PricingService;
 import org.example.ptcmssbackend.service.VehicleCategoryService;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -19,13 +23,16 @@ public class VehicleCategoryServiceImpl implements VehicleCategoryService {
 
     private final VehicleCategoryPricingRepository categoryRepository;
     private final VehicleRepository vehicleRepository;
+    private final PricingService pricingService;
 
     @Override
+    @Cacheable(value = CacheConfig.VEHICLE_CATEGORIES, key = "'all'")
     public List<VehicleCategoryResponse> listAll() {
         return categoryRepository.findAll().stream().map(this::toResponse).collect(Collectors.toList());
     }
 
     @Override
+    @Cacheable(value = CacheConfig.VEHICLE_CATEGORIES, key = "#id")
     public VehicleCategoryResponse getById(Integer id) {
         VehicleCategoryPricing c = categoryRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy loại xe"));
@@ -33,23 +40,31 @@ public class VehicleCategoryServiceImpl implements VehicleCategoryService {
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.VEHICLE_CATEGORIES, allEntries = true)
     public VehicleCategoryResponse create(VehicleCategoryRequest req) {
         VehicleCategoryPricing c = new VehicleCategoryPricing();
         apply(c, req);
-        return toResponse(categoryRepository.save(c));
+        VehicleCategoryPricing saved = categoryRepository.save(c);
+        pricingService.invalidate();
+        return toResponse(saved);
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.VEHICLE_CATEGORIES, allEntries = true)
     public VehicleCategoryResponse update(Integer id, VehicleCategoryRequest req) {
         VehicleCategoryPricing c = categoryRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy loại xe"));
         apply(c, req);
-        return toResponse(categoryRepository.save(c));
+        VehicleCategoryPricing saved = categoryRepository.save(c);
+        pricingService.invalidate();
+        return toResponse(saved);
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.VEHICLE_CATEGORIES, allEntries = true)
     public void delete(Integer id) {
         categoryRepository.deleteById(id);
+        pricingService.invalidate();
     }
 
     private void apply(VehicleCategoryPricing c, VehicleCategoryRequest req) {
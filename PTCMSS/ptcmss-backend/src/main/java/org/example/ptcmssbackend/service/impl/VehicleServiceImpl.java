@@ -1,6 +1,7 @@
 package org.example.ptcmssbackend.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.example.ptcmssbackend.config.CacheConfig;
 import org.example.ptcmssbackend.dto.request.Vehicle.CreateExpenseRequest;
 import org.example.ptcmssbackend.dto.request.Vehicle.CreateMaintenanceRequest;
 import org.example.ptcmssbackend.dto.request.Vehicle.VehicleRequest;
@@ -33,6 +34,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -55,6 +57,7 @@ public class VehicleServiceImpl implements VehicleService {
     private final ExpenseRequestRepository expenseRequestRepository;
 
     @Override
+    @CacheEvict(value = CacheConfig.VEHICLE_CATEGORIES, allEntries = true) // vehiclesCount của loại xe
     public VehicleResponse create(VehicleRequest request) {
 
         // 1. Validate trùng biển số theo chi nhánh
@@ -75,6 +78,7 @@ public class VehicleServiceImpl implements VehicleService {
 
 
     @Override
+    @CacheEvict(value = CacheConfig.VEHICLE_CATEGORIES, allEntries = true)
     public VehicleResponse update(Integer id, VehicleRequest request) {
         System.out.println("[VehicleService] Updating vehicle ID=" + id + ", status=" + request.getStatus());
         
@@ -182,6 +186,7 @@ public class VehicleServiceImpl implements VehicleService {
     }
 
     @Override
+    @CacheEvict(value = CacheConfig.VEHICLE_CATEGORIES, allEntries = true)
     public void delete(Integer id) {
         vehicleRepository.deleteById(id);
     }
@@ -0,0 +1,244 @@
+package org.example.ptcmssbackend.config;
+
+import org.example.ptcmssbackend.common.TokenIdentity;
+import org.example.ptcmssbackend.common.TokenType;
+import org.example.ptcmssbackend.common.WebSocketPrincipal;
+import org.example.ptcmssbackend.entity.Roles;
+import org.example.ptcmssbackend.entity.Users;
+import org.example.ptcmssbackend.repository.EmployeeRepository;
+import org.example.ptcmssbackend.service.JwtService;
+import org.example.ptcmssbackend.service.PrincipalCacheService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebSocketAuthInterceptorTest {
+
+    @Mock
+    private JwtService jwtService;
+
+    @Mock
+    private PrincipalCacheService principalCacheService;
+
+    @Mock
+    private EmployeeRepository employeeRepository;
+
+    @Mock
+    private MessageChannel channel;
+
+    @InjectMocks
+    private WebSocketAuthInterceptor interceptor;
+
+    @Test
+    void connect_withBearerToken_shouldSetPrincipalWithBranch() {
+        // Given
+        when(jwtService.extractIdentity("token", TokenType.ACCESS_TOKEN)).thenReturn(new TokenIdentity("accountant", "jti-1"));
+        when(principalCacheService.getPrincipal("accountant", "jti-1")).thenReturn(user(201, "Accountant"));
+        when(employeeRepository.findBranchIdByUserId(201)).thenReturn(Optional.of(1));
+        Message<byte[]> message = stompMessage(StompCommand.CONNECT, null, null, "Bearer token");
+
+        // When
+        interceptor.preSend(message, channel);
+
+        // Then
+        Principal user = accessor(message).getUser();
+        assertThat(user).isInstanceOf(WebSocketPrincipal.class);
+        WebSocketPrincipal principal = (WebSocketPrincipal) user;
+        assertThat(principal.getName()).isEqualTo("201");
+        assertThat(principal.getBranchId()).isEqualTo(1);
+        assertThat(principal.isAdmin()).isFalse();
+    }
+
+    @Test
+    void connect_withInvalidToken_shouldReject() {
+        // Given
+        when(jwtService.extractIdentity("expired", TokenType.ACCESS_TOKEN)).thenThrow(new RuntimeException("Token expired"));
+        Message<byte[]> message = stompMessage(StompCommand.CONNECT, null, null, "Bearer expired");
+
+        // When & Then
+        assertThatThrownBy(() -> interceptor.preSend(message, channel))
+                .isInstanceOf(MessagingException.class)
+                .hasMessageContaining("Token không hợp lệ");
+    }
+
+    @Test
+    void connect_withoutToken_shouldStayAnonymous() {
+        // Given
+        Message<byte[]> message = stompMessage(StompCommand.CONNECT, null, null, null);
+
+        // When
+        interceptor.preSend(message, channel);
+
+        // Then
+        assertThat(accessor(message).getUser()).isNull();
+        verifyNoInteractions(jwtService, employeeRepository);
+    }
+
+    @Test
+    void subscribe_toOwnBranchTopic_shouldBeAllowed() {
+        // Given
+        Message<byte[]> message = stompMessage(StompCommand.SUBSCRIBE, "/topic/branch.1.bookings",
+                new WebSocketPrincipal(201, 1, false), null);
+
+        // When & Then
+        assertThat(interceptor.preSend(message, channel)).isSameAs(message);
+    }
+
+    @Test
+    void subscribe_toOtherBranchTopic_shouldBeRejected() {
+        // Given
+        Message<byte[]> message = stompMessage(StompCommand.SUBSCRIBE, "/topic/branch.2.bookings",
+                new WebSocketPrincipal(201, 1, false), null);
+
+        // When & Then
+        assertThatThrownBy(() -> interceptor.preSend(message, channel))
+                .isInstanceOf(MessagingException.class)
+                .hasMessageContaining("chi nhánh 2");
+    }
+
+    @Test
+    void subscribe_toBranchTopicAsAdmin_shouldBeAllowed() {
+        // Given
+        Message<byte[]> message = stompMessage(StompCommand.SUBSCRIBE, "/topic/branch.2.dispatches",
+                new WebSocketPrincipal(1, null, true), null);
+
+        // When & Then
+        assertThat(interceptor.preSend(message, channel)).isSameAs(message);
+    }
+
+    @Test
+    void subscribe_toBranchTopicAnonymously_shouldBeRejected() {
+        // Given
+        Message<byte[]> message = stompMessage(StompCommand.SUBSCRIBE, "/topic/branch.1.notifications", null, null);
+
+        // When & Then
+        assertThatThrownBy(() -> interceptor.preSend(message, channel))
+                .isInstanceOf(MessagingException.class);
+    }
+
+    @Test
+    void subscribe_withWildcardDestination_shouldBeRejected() {
+        // Given: pattern của broker sẽ khớp cả topic của chi nhánh khác, kể cả với Admin
+        WebSocketPrincipal principal = new WebSocketPrincipal(201, 1, false);
+
+        // When & Then
+        for (String destination : List.of("/topic/branch.*.bookings", "/topic/branch.1.*", "/topic/branch.**",
+                "/topic/**", "/topic/branch.?.bookings", "/topic/branch.{id}.bookings", "/topic/branch.#")) {
+            Message<byte[]> message = stompMessage(StompCommand.SUBSCRIBE, destination, principal, null);
+            assertThatThrownBy(() -> interceptor.preSend(message, channel))
+                    .as(destination)
+                    .isInstanceOf(MessagingException.class)
+                    .hasMessageContaining("pattern");
+        }
+        Message<byte[]> adminMessage = stompMessage(StompCommand.SUBSCRIBE, "/topic/branch.*.dispatches",
+                new WebSocketPrincipal(1, null, true), null);
+        assertThatThrownBy(() -> interceptor.preSend(adminMessage, channel))
+                .isInstanceOf(MessagingException.class);
+    }
+
+    @Test
+    void subscribe_withMalformedBranchDestination_shouldBeRejected() {
+        // Given: bắt đầu bằng /topic/branch nhưng không đúng dạng /topic/branch.{id}.{kênh}
+        WebSocketPrincipal principal = new WebSocketPrincipal(201, 1, false);
+
+        // When & Then
+        for (String destination : List.of("/topic/branch", "/topic/branch.1", "/topic/branch.1.bookings.extra",
+                "/topic/branch.abc.bookings", "/topic/branches.1.bookings", "/topic/branch.99999999999.bookings")) {
+            Message<byte[]> message = stompMessage(StompCommand.SUBSCRIBE, destination, principal, null);
+            assertThatThrownBy(() -> interceptor.preSend(message, channel))
+                    .as(destination)
+                    .isInstanceOf(MessagingException.class)
+                    .hasMessageContaining("không hợp lệ");
+        }
+    }
+
+    @Test
+    void subscribe_toLegacyTopicAnonymously_shouldBeAllowed() {
+        // Given
+        Message<byte[]> message = stompMessage(StompCommand.SUBSCRIBE, "/topic/notifications", null, null);
+
+        // When & Then
+        assertThat(interceptor.preSend(message, channel)).isSameAs(message);
+    }
+
+    @Test
+    void subscribe_toOwnUserTopic_shouldBeAllowed() {
+        // Given
+        Message<byte[]> own = stompMessage(StompCommand.SUBSCRIBE, "/topic/notifications/201",
+                new WebSocketPrincipal(201, 1, false), null);
+        Message<byte[]> asAdmin = stompMessage(StompCommand.SUBSCRIBE, "/topic/notifications/201",
+                new WebSocketPrincipal(1, null, true), null);
+
+        // When & Then
+        assertThat(interceptor.preSend(own, channel)).isSameAs(own);
+        assertThat(interceptor.preSend(asAdmin, channel)).isSameAs(asAdmin);
+    }
+
+    @Test
+    void subscribe_toOtherUserTopic_shouldBeRejected() {
+        // Given: topic cũ theo userId chỉ dành cho chính user đó
+        Message<byte[]> other = stompMessage(StompCommand.SUBSCRIBE, "/topic/notifications/202",
+                new WebSocketPrincipal(201, 1, false), null);
+        Message<byte[]> anonymous = stompMessage(StompCommand.SUBSCRIBE, "/topic/notifications/201", null, null);
+        Message<byte[]> malformed = stompMessage(StompCommand.SUBSCRIBE, "/topic/notifications/201/extra",
+                new WebSocketPrincipal(201, 1, false), null);
+
+        // When & Then
+        assertThatThrownBy(() -> interceptor.preSend(other, channel))
+                .isInstanceOf(MessagingException.class)
+                .hasMessageContaining("người dùng 202");
+        assertThatThrownBy(() -> interceptor.preSend(anonymous, channel))
+                .isInstanceOf(MessagingException.class);
+        assertThatThrownBy(() -> interceptor.preSend(malformed, channel))
+                .isInstanceOf(MessagingException.class)
+                .hasMessageContaining("không hợp lệ");
+    }
+
+    private Message<byte[]> stompMessage(StompCommand command, String destination, Principal user, String authorization) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("session-1");
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        if (user != null) {
+            accessor.setUser(user);
+        }
+        if (authorization != null) {
+            accessor.addNativeHeader("Authorization", authorization);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private StompHeaderAccessor accessor(Message<?> message) {
+        return MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+    }
+
+    private Users user(int id, String roleName) {
+        Roles role = new Roles();
+        role.setRoleName(roleName);
+        Users user = new Users();
+        user.setId(id);
+        user.setUsername("accountant");
+        user.setRole(role);
+        return user;
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.ptcmssbackend.controller;
+
+import org.example.ptcmssbackend.entity.Roles;
+import org.example.ptcmssbackend.entity.Users;
+import org.example.ptcmssbackend.exception.GlobalExceptionHandler;
+import org.example.ptcmssbackend.service.NotificationService;
+import org.example.ptcmssbackend.service.WebSocketNotificationService;
+import org.example.ptcmssbackend.service.impl.ApprovalSyncServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationControllerTest {
+
+    @Mock
+    private NotificationService notificationService;
+    @Mock
+    private WebSocketNotificationService webSocketNotificationService;
+    @Mock
+    private ApprovalSyncServiceImpl approvalSyncService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        NotificationController controller =
+                new NotificationController(notificationService, webSocketNotificationService, approvalSyncService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getUnreadCount_ofAnotherUser_shouldReturnForbidden() throws Exception {
+        // Given
+        authenticate(5, "Driver");
+
+        // When & Then
+        mockMvc.perform(get("/api/notifications/user/6/unread-count"))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void getFeedAndMarkRead_ofAnotherUser_shouldReturnForbidden() throws Exception {
+        // Given
+        authenticate(5, "Accountant");
+
+        // When & Then
+        mockMvc.perform(get("/api/notifications/user/6/feed"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/notifications/user/6/read")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1,2]"))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void getUnreadCount_ofOwnUser_shouldReturnCount() throws Exception {
+        // Given
+        authenticate(5, "Driver");
+        when(notificationService.getUnreadCount(5)).thenReturn(3L);
+
+        // When & Then
+        mockMvc.perform(get("/api/notifications/user/5/unread-count"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.unreadCount").value(3));
+    }
+
+    @Test
+    void getFeed_byAdminForAnotherUser_shouldBeAllowed() throws Exception {
+        // Given
+        authenticate(1, "Admin");
+        when(notificationService.getUserNotificationsByCursor(eq(6), any(), eq(20))).thenReturn(Map.of());
+
+        // When & Then
+        mockMvc.perform(get("/api/notifications/user/6/feed"))
+                .andExpect(status().isOk());
+        verify(notificationService).getUserNotificationsByCursor(eq(6), any(), eq(20));
+    }
+
+    private void authenticate(Integer userId, String roleName) {
+        Roles role = new Roles();
+        role.setRoleName(roleName);
+        Users user = new Users();
+        user.setId(userId);
+        user.setRole(role);
+        SecurityContextHolder.setContext(new SecurityContextImpl(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+    }
+}
@@ -17,6 +17,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -47,6 +48,15 @@ class AccountingDashboardIntegrationTest extends BaseIntegrationTest {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private PaymentHistoryRepository paymentHistoryRepository;
+
+    @Autowired
+    private ExpenseRequestRepository expenseRequestRepository;
+
     private Branches testBranch;
     private Customers testCustomer;
     private Employees testAccountant;
@@ -238,5 +248,88 @@ class AccountingDashboardIntegrationTest extends BaseIntegrationTest {
         // Then
         assertThat(count).isGreaterThanOrEqualTo(0);
     }
-}
 
+    @Test
+    void getDashboard_shouldMatchIndividualKpiQueries() {
+        // Thêm dữ liệu đủ các nhánh: đã thu một phần, đã thanh toán, quá hạn, đã hủy, chi phí đã duyệt
+        Invoices paid = saveInvoice(InvoiceType.INCOME, InvoiceStatus.ACTIVE, PaymentStatus.PAID, "2000000", LocalDate.now().plusDays(10));
+        savePayment(paid, "2000000", PaymentConfirmationStatus.CONFIRMED);
+        Invoices partial = saveInvoice(InvoiceType.INCOME, InvoiceStatus.ACTIVE, PaymentStatus.UNPAID, "800000", LocalDate.now().plusDays(3));
+        savePayment(partial, "300000", PaymentConfirmationStatus.CONFIRMED);
+        savePayment(partial, "100000", PaymentConfirmationStatus.PENDING);
+        saveInvoice(InvoiceType.INCOME, InvoiceStatus.ACTIVE, PaymentStatus.OVERDUE, "500000", LocalDate.now().minusDays(5));
+        saveInvoice(InvoiceType.INCOME, InvoiceStatus.CANCELLED, PaymentStatus.UNPAID, "700000", LocalDate.now().plusDays(1));
+        saveInvoice(InvoiceType.EXPENSE, InvoiceStatus.CANCELLED, PaymentStatus.PAID, "120000", null);
+
+        ExpenseRequests approved = new ExpenseRequests();
+        approved.setBranch(testBranch);
+        approved.setType("FUEL");
+        approved.setAmount(new BigDecimal("250000"));
+        approved.setStatus(ExpenseRequestStatus.APPROVED);
+        expenseRequestRepository.save(approved);
+        ExpenseRequests pending = new ExpenseRequests();
+        pending.setBranch(testBranch);
+        pending.setType("TOLL");
+        pending.setAmount(new BigDecimal("90000"));
+        expenseRequestRepository.save(pending);
+
+        Integer branchId = testBranch.getId();
+        LocalDate startDate = LocalDate.now().withDayOfMonth(1);
+        LocalDate endDate = LocalDate.now();
+
+        // When
+        AccountingDashboardResponse dashboard = accountingService.getDashboard(branchId, "THIS_MONTH");
+
+        // Then: cùng số liệu với các hàm KPI riêng lẻ
+        assertThat(dashboard.getTotalRevenue()).isEqualByComparingTo(accountingService.getTotalRevenue(branchId, startDate, endDate));
+        assertThat(dashboard.getTotalExpense()).isEqualByComparingTo(accountingService.getTotalExpense(branchId, startDate, endDate));
+        assertThat(dashboard.getArBalance()).isEqualByComparingTo(accountingService.getARBalance(branchId));
+        assertThat(dashboard.getInvoicesDueIn7Days()).isEqualTo(accountingService.getInvoicesDueIn7Days(branchId));
+        assertThat(dashboard.getOverdueInvoices()).isEqualTo(accountingService.getOverdueInvoices(branchId));
+        assertThat(dashboard.getCollectionRate()).isEqualByComparingTo(accountingService.getCollectionRate(branchId, startDate, endDate));
+        assertThat(dashboard.getExpenseToRevenueRatio())
+                .isEqualByComparingTo(accountingService.getExpenseToRevenueRatio(branchId, startDate, endDate));
+
+        // Giá trị cụ thể: doanh thu 1.000.000 (setUp) + 2.000.000 + 800.000 + 500.000 + 700.000 (đã hủy vẫn tính)
+        assertThat(dashboard.getTotalRevenue()).isEqualByComparingTo("5000000");
+        // 500.000 (setUp) + 120.000 + 250.000 (chỉ chi phí đã duyệt)
+        assertThat(dashboard.getTotalExpense()).isEqualByComparingTo("870000");
+        BigDecimal revenueChartTotal = dashboard.getRevenueChart().stream()
+                .map(AccountingDashboardResponse.ChartDataPoint::getValue)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(revenueChartTotal).isEqualByComparingTo(dashboard.getTotalRevenue());
+        BigDecimal expenseChartTotal = dashboard.getExpenseChart().stream()
+                .map(AccountingDashboardResponse.ChartDataPoint::getValue)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(expenseChartTotal).isEqualByComparingTo(dashboard.getTotalExpense());
+        assertThat(dashboard.getExpenseByCategory().get("OTHER")).isEqualByComparingTo("500000");
+        assertThat(dashboard.getTopCustomers()).hasSize(1);
+        assertThat(dashboard.getTopCustomers().get(0).getTotalRevenue()).isEqualByComparingTo("4300000");
+        assertThat(dashboard.getTopCustomers().get(0).getInvoiceCount()).isEqualTo(4);
+    }
+
+    private Invoices saveInvoice(InvoiceType type, InvoiceStatus status, PaymentStatus paymentStatus,
+                                 String amount, LocalDate dueDate) {
+        Invoices invoice = new Invoices();
+        invoice.setBranch(testBranch);
+        invoice.setCustomer(type == InvoiceType.INCOME ? testCustomer : null);
+        invoice.setType(type);
+        invoice.setStatus(status);
+        invoice.setPaymentStatus(paymentStatus);
+        invoice.setAmount(new BigDecimal(amount));
+        invoice.setInvoiceDate(Instant.now());
+        invoice.setDueDate(dueDate);
+        invoice.setCreatedBy(testAccountant);
+        return invoiceRepository.save(invoice);
+    }
+
+    private void savePayment(Invoices invoice, String amount, PaymentConfirmationStatus confirmationStatus) {
+        PaymentHistory payment = new PaymentHistory();
+        payment.setInvoice(invoice);
+        payment.setPaymentDate(Instant.now());
+        payment.setAmount(new BigDecimal(amount));
+        payment.setPaymentMethod("CASH");
+        payment.setConfirmationStatus(confirmationStatus);
+        paymentHistoryRepository.save(payment);
+    }
+}
@@ -0,0 +1,266 @@
+package org.example.ptcmssbackend.integration;
+
+import org.example.ptcmssbackend.dto.request.Booking.AssignRequest;
+import org.example.ptcmssbackend.entity.*;
+import org.example.ptcmssbackend.enums.*;
+import org.example.ptcmssbackend.repository.*;
+import org.example.ptcmssbackend.service.BookingService;
+import org.example.ptcmssbackend.service.ResourceTimelineService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Nhiều điều phối viên gán cùng 1 xe/tài xế cho các chuyến trùng giờ cùng lúc:
+ * chỉ đúng 1 giao dịch được giữ chỗ, không có phân công chồng lấn.
+ *
+ * Các luồng chạy giao dịch thật (commit) nên test không chạy trong giao dịch của test,
+ * dữ liệu được dọn ở @AfterEach.
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AssignmentConcurrencyIntegrationTest extends BaseIntegrationTest {
+
+    private static final int DISPATCHERS = 8;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private ResourceTimelineService resourceTimelineService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BranchesRepository branchesRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private VehicleCategoryPricingRepository vehicleCategoryPricingRepository;
+
+    @Autowired
+    private RolesRepository rolesRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private DriverRepository driverRepository;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private TripDriverRepository tripDriverRepository;
+
+    @Autowired
+    private TripVehicleRepository tripVehicleRepository;
+
+    private TransactionTemplate tx;
+    private Branches branch;
+    private Customers customer;
+    private VehicleCategoryPricing category;
+    private Roles driverRole;
+    private Users driverUser;
+    private Employees driverEmployee;
+    private Drivers driver;
+    private Vehicles vehicle;
+    private final List<Bookings> bookings = new ArrayList<>();
+    private final List<Trips> trips = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            branch = new Branches();
+            branch.setBranchName("Concurrency Branch");
+            branch.setLocation("1 Concurrency Street");
+            branch.setStatus(BranchStatus.ACTIVE);
+            branch = branchesRepository.save(branch);
+
+            customer = new Customers();
+            customer.setFullName("Concurrency Customer");
+            customer.setPhone("0987000999");
+            customer.setStatus(CustomerStatus.ACTIVE);
+            customer = customerRepository.save(customer);
+
+            category = new VehicleCategoryPricing();
+            category.setCategoryName("Concurrency Sedan");
+            category.setBaseFare(new BigDecimal("500000"));
+            category.setPricePerKm(new BigDecimal("10000"));
+            category.setStatus(VehicleCategoryStatus.ACTIVE);
+            category = vehicleCategoryPricingRepository.save(category);
+
+            driverRole = new Roles();
+            driverRole.setRoleName("CONCURRENCY_DRIVER");
+            driverRole.setDescription("Concurrency Driver Role");
+            driverRole = rolesRepository.save(driverRole);
+
+            driverUser = new Users();
+            driverUser.setFullName("Concurrency Driver");
+            driverUser.setUsername("concurrency_driver");
+            driverUser.setEmail("concurrency_driver@example.com");
+            driverUser.setPhone("0222000999");
+            driverUser.setPasswordHash("not-used");
+            driverUser.setStatus(UserStatus.ACTIVE);
+            driverUser.setRole(driverRole);
+            driverUser = usersRepository.save(driverUser);
+
+            driverEmployee = new Employees();
+            driverEmployee.setUser(driverUser);
+            driverEmployee.setBranch(branch);
+            driverEmployee.setRole(driverRole);
+            driverEmployee.setStatus(EmployeeStatus.ACTIVE);
+            driverEmployee = employeeRepository.save(driverEmployee);
+
+            driver = new Drivers();
+            driver.setEmployee(driverEmployee);
+            driver.setBranch(branch);
+            driver.setLicenseNumber("CONC-D001");
+            driver.setLicenseClass("D");
+            driver.setStatus(DriverStatus.AVAILABLE);
+            driver = driverRepository.save(driver);
+
+            vehicle = new Vehicles();
+            vehicle.setCategory(category);
+            vehicle.setBranch(branch);
+            vehicle.setLicensePlate("30C-99999");
+            vehicle.setStatus(VehicleStatus.AVAILABLE);
+            vehicle = vehicleRepository.save(vehicle);
+
+            // Mỗi điều phối viên 1 đơn, các chuyến lệch nhau 10 phút nên đều chồng lấn nhau
+            Instant base = Instant.now().plus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+            for (int i = 0; i < DISPATCHERS; i++) {
+                Bookings booking = new Bookings();
+                booking.setCustomer(customer);
+                booking.setBranch(branch);
+                booking.setStatus(BookingStatus.CONFIRMED);
+                booking.setEstimatedCost(new BigDecimal("1000000"));
+                booking.setTotalCost(new BigDecimal("1000000"));
+                booking = bookingRepository.save(booking);
+                bookings.add(booking);
+
+                Trips trip = new Trips();
+                trip.setBooking(booking);
+                trip.setStartLocation("Location A");
+                trip.setEndLocation("Location B");
+                trip.setStartTime(base.plus(10L * i, ChronoUnit.MINUTES));
+                trip.setEndTime(base.plus(10L * i + 120, ChronoUnit.MINUTES));
+                trip.setDistance(new BigDecimal("50.0"));
+                trip.setStatus(TripStatus.SCHEDULED);
+                trips.add(tripRepository.save(trip));
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        tx.executeWithoutResult(status -> {
+            tripVehicleRepository.deleteAll(tripVehicleRepository.findAllByVehicleId(vehicle.getId()));
+            tripDriverRepository.deleteAll(tripDriverRepository.findAllByDriverId(driver.getId()));
+            tripRepository.deleteAllById(trips.stream().map(Trips::getId).toList());
+            bookingRepository.deleteAllById(bookings.stream().map(Bookings::getId).toList());
+            vehicleRepository.deleteById(vehicle.getId());
+            driverRepository.deleteById(driver.getId());
+            employeeRepository.deleteById(driverEmployee.getEmployeeId());
+            usersRepository.deleteById(driverUser.getId());
+            rolesRepository.deleteById(driverRole.getId());
+            vehicleCategoryPricingRepository.deleteById(category.getId());
+            customerRepository.deleteById(customer.getId());
+            branchesRepository.deleteById(branch.getId());
+        });
+        resourceTimelineService.evictBranch(branch.getId());
+    }
+
+    @Test
+    void assign_sameVehicleConcurrently_shouldReserveOnlyOneOverlappingTrip() throws Exception {
+        // When: tất cả điều phối viên cùng gán 1 xe
+        int succeeded = runConcurrently(i -> {
+            AssignRequest request = new AssignRequest();
+            request.setTripIds(List.of(trips.get(i).getId()));
+            request.setVehicleId(vehicle.getId());
+            return request;
+        });
+
+        // Then
+        assertThat(succeeded).isEqualTo(1);
+        assertThat(tripVehicleRepository.findAllByVehicleId(vehicle.getId())).hasSize(1);
+    }
+
+    @Test
+    void assign_sameDriverConcurrently_shouldReserveOnlyOneOverlappingTrip() throws Exception {
+        // When: tất cả điều phối viên cùng gán 1 tài xế
+        int succeeded = runConcurrently(i -> {
+            AssignRequest request = new AssignRequest();
+            request.setTripIds(List.of(trips.get(i).getId()));
+            request.setDriverId(driver.getId());
+            return request;
+        });
+
+        // Then
+        assertThat(succeeded).isEqualTo(1);
+        assertThat(tripDriverRepository.findAllByDriverId(driver.getId())).hasSize(1);
+    }
+
+    /**
+     * Chạy DISPATCHERS lần gán song song (cùng xuất phát qua latch), trả về số lần gán thành công
+     */
+    private int runConcurrently(java.util.function.IntFunction<AssignRequest> requestFactory) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(DISPATCHERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < DISPATCHERS; i++) {
+                Integer bookingId = bookings.get(i).getId();
+                AssignRequest request = requestFactory.apply(i);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        bookingService.assign(bookingId, request);
+                        return true;
+                    } catch (RuntimeException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(60, TimeUnit.SECONDS)) succeeded++;
+            }
+            return succeeded;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.example.ptcmssbackend.integration;
+
+import org.example.ptcmssbackend.dto.response.Debt.AgingBucketResponse;
+import org.example.ptcmssbackend.dto.response.Debt.DebtSummaryResponse;
+import org.example.ptcmssbackend.entity.*;
+import org.example.ptcmssbackend.enums.*;
+import org.example.ptcmssbackend.repository.*;
+import org.example.ptcmssbackend.service.DebtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DebtServiceIntegrationTest extends BaseIntegrationTest {
+
+    @Autowired
+    private DebtService debtService;
+
+    @Autowired
+    private BranchesRepository branchesRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private InvoiceLedgerRepository invoiceLedgerRepository;
+
+    @Autowired
+    private PaymentHistoryRepository paymentHistoryRepository;
+
+    private Branches testBranch;
+    private Customers testCustomer;
+    private final LocalDate asOfDate = LocalDate.of(2025, 12, 31);
+
+    @BeforeEach
+    void setUp() {
+        testBranch = new Branches();
+        testBranch.setBranchName("Debt Branch");
+        testBranch.setLocation("1 Debt Street");
+        testBranch.setStatus(BranchStatus.ACTIVE);
+        testBranch = branchesRepository.save(testBranch);
+
+        testCustomer = new Customers();
+        testCustomer.setFullName("Công ty Vận tải, Hà Nội");
+        testCustomer.setPhone("0987000111");
+        testCustomer.setStatus(CustomerStatus.ACTIVE);
+        testCustomer = customerRepository.save(testCustomer);
+    }
+
+    @Test
+    void getAgingBuckets_shouldMatchPerInvoiceBalances() {
+        // Given: số dư đọc từ sổ cái (có dòng) hoặc payment_history (chưa có dòng)
+        Invoices notDue = saveInvoice(PaymentStatus.UNPAID, "1000000", asOfDate.plusDays(5));
+        saveLedger(notDue, "400000");
+        Invoices days30 = saveInvoice(PaymentStatus.OVERDUE, "500000", asOfDate.minusDays(30));
+        savePayment(days30, "100000", PaymentConfirmationStatus.CONFIRMED);
+        savePayment(days30, "50000", PaymentConfirmationStatus.PENDING);
+        saveInvoice(PaymentStatus.OVERDUE, "700000", asOfDate.minusDays(31));
+        Invoices days90 = saveInvoice(PaymentStatus.OVERDUE, "900000", asOfDate.minusDays(90));
+        saveLedger(days90, "100000");
+        saveInvoice(PaymentStatus.OVERDUE, "2000000", asOfDate.minusDays(91));
+        // Không tính: đã thanh toán, không có hạn
+        saveInvoice(PaymentStatus.PAID, "3000000", asOfDate.minusDays(200));
+        saveInvoice(PaymentStatus.UNPAID, "3000000", null);
+
+        // When
+        AgingBucketResponse aging = debtService.getAgingBuckets(testBranch.getId(), asOfDate);
+
+        // Then
+        assertThat(aging.getBucket0_30()).isEqualByComparingTo("1000000"); // 600.000 + 400.000
+        assertThat(aging.getBucket31_60()).isEqualByComparingTo("700000");
+        assertThat(aging.getBucket61_90()).isEqualByComparingTo("800000");
+        assertThat(aging.getBucketOver90()).isEqualByComparingTo("2000000");
+        assertThat(aging.getTotal()).isEqualByComparingTo("4500000");
+    }
+
+    @Test
+    void getDebts_shouldPageInDatabaseWithOverdueFirst() {
+        // Given
+        Invoices unpaidEarly = saveInvoice(PaymentStatus.UNPAID, "100000", asOfDate.minusDays(50));
+        Invoices overdueLate = saveInvoice(PaymentStatus.OVERDUE, "200000", asOfDate.minusDays(5));
+        Invoices overdueEarly = saveInvoice(PaymentStatus.OVERDUE, "300000", asOfDate.minusDays(20));
+        saveLedger(overdueEarly, "100000");
+        saveInvoice(PaymentStatus.PAID, "400000", asOfDate.minusDays(60));
+
+        // When
+        Page<DebtSummaryResponse> first = debtService.getDebts(
+                testBranch.getId(), false, PageRequest.of(0, 2, Sort.by("dueDate").ascending()));
+        Page<DebtSummaryResponse> second = debtService.getDebts(
+                testBranch.getId(), false, PageRequest.of(1, 2, Sort.by("dueDate").ascending()));
+        Page<DebtSummaryResponse> overdueOnly = debtService.getDebts(
+                testBranch.getId(), true, PageRequest.of(0, 10, Sort.by("dueDate").ascending()));
+
+        // Then
+        assertThat(first.getTotalElements()).isEqualTo(3);
+        assertThat(first.getContent()).extracting(DebtSummaryResponse::getInvoiceId)
+                .containsExactly(overdueEarly.getId(), overdueLate.getId());
+        assertThat(first.getContent().get(0).getBalance()).isEqualByComparingTo("200000");
+        assertThat(first.getContent().get(0).getCustomerName()).isEqualTo(testCustomer.getFullName());
+        assertThat(second.getContent()).extracting(DebtSummaryResponse::getInvoiceId)
+                .containsExactly(unpaidEarly.getId());
+        assertThat(overdueOnly.getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    void exportDebtsCsv_shouldWriteWholeDebtBook() throws Exception {
+        // Given
+        Invoices overdue = saveInvoice(PaymentStatus.OVERDUE, "500000", asOfDate.minusDays(10));
+        savePayment(overdue, "200000", PaymentConfirmationStatus.CONFIRMED);
+        saveInvoice(PaymentStatus.UNPAID, "300000", asOfDate.plusDays(10));
+        saveInvoice(PaymentStatus.PAID, "100000", asOfDate);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        debtService.exportDebtsCsv(testBranch.getId(), false, out);
+
+        // Then: header + 2 dòng công nợ, tên khách có dấu phẩy được bọc nháy
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines[1]).startsWith(overdue.getInvoiceNumber() + ",\"Công ty Vận tải, Hà Nội\",0987000111,");
+        String[] amounts = lines[1].substring(lines[1].indexOf("0987000111,") + "0987000111,".length()).split(",");
+        assertThat(new BigDecimal(amounts[0])).isEqualByComparingTo("500000");
+        assertThat(new BigDecimal(amounts[1])).isEqualByComparingTo("200000");
+        assertThat(new BigDecimal(amounts[2])).isEqualByComparingTo("300000");
+    }
+
+    private Invoices saveInvoice(PaymentStatus paymentStatus, String amount, LocalDate dueDate) {
+        Invoices invoice = new Invoices();
+        invoice.setBranch(testBranch);
+        invoice.setCustomer(testCustomer);
+        invoice.setType(InvoiceType.INCOME);
+        invoice.setStatus(InvoiceStatus.ACTIVE);
+        invoice.setPaymentStatus(paymentStatus);
+        invoice.setAmount(new BigDecimal(amount));
+        invoice.setInvoiceDate(Instant.now());
+        invoice.setDueDate(dueDate);
+        invoice = invoiceRepository.save(invoice);
+        invoice.setInvoiceNumber("INV-DEBT-" + invoice.getId());
+        return invoiceRepository.save(invoice);
+    }
+
+    private void saveLedger(Invoices invoice, String confirmedPaid) {
+        InvoiceLedger ledger = new InvoiceLedger();
+        ledger.setInvoiceId(invoice.getId());
+        ledger.setConfirmedPaid(new BigDecimal(confirmedPaid));
+        ledger.setPendingAmount(BigDecimal.ZERO);
+        ledger.setBalance(invoice.getAmount().subtract(new BigDecimal(confirmedPaid)));
+        invoiceLedgerRepository.save(ledger);
+    }
+
+    private void savePayment(Invoices invoice, String amount, PaymentConfirmationStatus confirmationStatus) {
+        PaymentHistory payment = new PaymentHistory();
+        payment.setInvoice(invoice);
+        payment.setPaymentDate(Instant.now());
+        payment.setAmount(new BigDecimal(amount));
+        payment.setPaymentMethod("CASH");
+        payment.setConfirmationStatus(confirmationStatus);
+        paymentHistoryRepository.save(payment);
+    }
+}
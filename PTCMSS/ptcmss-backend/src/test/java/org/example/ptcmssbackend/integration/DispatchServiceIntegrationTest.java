@@ -4,10 +4,14 @@ import org.example.ptcmssbackend.dto.request.Booking.CreateBookingRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CustomerRequest;
 import org.example.ptcmssbackend.dto.request.Booking.TripRequest;
 import org.example.ptcmssbackend.dto.request.Booking.VehicleDetailRequest;
+import org.example.ptcmssbackend.dto.request.Trip.TripSearchRequest;
 import org.example.ptcmssbackend.dto.request.dispatch.AssignRequest;
+import org.example.ptcmssbackend.dto.request.dispatch.AutoDispatchRequest;
+import org.example.ptcmssbackend.dto.response.Trip.TripListItemResponse;
 import org.example.ptcmssbackend.dto.response.Booking.BookingResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignRespone;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignmentSuggestionResponse;
+import org.example.ptcmssbackend.dto.response.dispatch.AutoDispatchResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.DispatchDashboardResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.PendingTripResponse;
 import org.example.ptcmssbackend.entity.*;
@@ -18,6 +22,7 @@ import org.example.ptcmssbackend.service.DispatchService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -27,6 +32,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -70,6 +76,18 @@ class DispatchServiceIntegrationTest extends BaseIntegrationTest {
     @Autowired
     private BookingRepository bookingRepository;
 
+    @Autowired
+    private TripDriverRepository tripDriverRepository;
+
+    @Autowired
+    private TripVehicleRepository tripVehicleRepository;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private PaymentHistoryRepository paymentHistoryRepository;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -320,6 +338,75 @@ class DispatchServiceIntegrationTest extends BaseIntegrationTest {
         assertThat(dashboard.getPendingTrips()).isNotNull();
     }
 
+    @Test
+    void getDashboard_withoutDate_shouldPlaceAssignedTripOnSchedules() {
+        // Given
+        Integer tripId = assignTestTrip();
+
+        // When: cửa sổ mặc định bắt đầu từ hôm nay, chuyến ở ngày mai
+        DispatchDashboardResponse dashboard = dispatchService.getDashboard(testBranch.getId(), null, null);
+
+        // Then
+        DispatchDashboardResponse.DriverScheduleItem driverSchedule = dashboard.getDriverSchedules().stream()
+                .filter(d -> d.getDriverId().equals(testDriver.getId()))
+                .findFirst()
+                .orElseThrow();
+        assertThat(driverSchedule.getDriverName()).isEqualTo("Test Driver");
+        assertThat(driverSchedule.getItems()).extracting(DispatchDashboardResponse.ScheduleBlock::getRef)
+                .containsExactly("TRIP-" + tripId);
+        DispatchDashboardResponse.VehicleScheduleItem vehicleSchedule = dashboard.getVehicleSchedules().stream()
+                .filter(v -> v.getVehicleId().equals(testVehicle.getId()))
+                .findFirst()
+                .orElseThrow();
+        assertThat(vehicleSchedule.getItems()).hasSize(1);
+        assertThat(dashboard.getWindowEnd()).isAfter(dashboard.getWindowStart());
+    }
+
+    @Test
+    void searchTrips_shouldFilterAndPageInDatabase() {
+        // Given
+        Integer tripId = assignTestTrip();
+
+        TripSearchRequest byDriver = new TripSearchRequest();
+        byDriver.setBranchId(testBranch.getId());
+        byDriver.setDriverId(testDriver.getId());
+        byDriver.setVehicleId(testVehicle.getId());
+        byDriver.setKeyword("0987654");
+
+        TripSearchRequest otherDriver = new TripSearchRequest();
+        otherDriver.setDriverId(99999);
+
+        TripSearchRequest noMatch = new TripSearchRequest();
+        noMatch.setBranchId(testBranch.getId());
+        noMatch.setKeyword("không-tồn-tại");
+
+        // When
+        Page<TripListItemResponse> found = dispatchService.searchTrips(byDriver);
+
+        // Then
+        assertThat(found.getTotalElements()).isEqualTo(1);
+        TripListItemResponse item = found.getContent().get(0);
+        assertThat(item.getTripId()).isEqualTo(tripId);
+        assertThat(item.getCustomerName()).isEqualTo("Test Customer");
+        assertThat(item.getDriverName()).isEqualTo("Test Driver");
+        assertThat(item.getVehicleLicensePlate()).isEqualTo("30A-12345");
+        assertThat(dispatchService.searchTrips(otherDriver).getTotalElements()).isZero();
+        assertThat(dispatchService.searchTrips(noMatch).getTotalElements()).isZero();
+    }
+
+    private Integer assignTestTrip() {
+        // Chỉ gắn chuyến được khi booking đã cọc
+        confirmDeposit(testBookingEntity);
+        Integer tripId = tripRepository.findByBooking_Id(testBookingEntity.getId()).get(0).getId();
+        AssignRequest assignRequest = new AssignRequest();
+        assignRequest.setBookingId(testBookingEntity.getId());
+        assignRequest.setTripIds(List.of(tripId));
+        assignRequest.setDriverId(testDriver.getId());
+        assignRequest.setVehicleId(testVehicle.getId());
+        dispatchService.assign(assignRequest);
+        return tripId;
+    }
+
     @Test
     void unassign_shouldUnassignTripSuccessfully() {
         // Given - First assign
@@ -368,5 +455,72 @@ class DispatchServiceIntegrationTest extends BaseIntegrationTest {
         org.example.ptcmssbackend.entity.Trips trip = tripRepository.findById(tripId).orElse(null);
         assertThat(trip).isNotNull();
     }
-}
 
+    @Test
+    void autoDispatch_shouldAssignDriverAndVehicleToPendingTrip() {
+        // Given - Booking đã cọc để chuyến vào hàng đợi điều phối
+        confirmDeposit(testBookingEntity);
+        Trips trip = tripRepository.findByBooking_Id(testBookingEntity.getId()).get(0);
+
+        AutoDispatchRequest request = new AutoDispatchRequest();
+        request.setBranchId(testBranch.getId());
+        request.setDate(LocalDate.ofInstant(trip.getStartTime(), ZoneId.systemDefault()));
+
+        // When
+        AutoDispatchResponse response = dispatchService.autoDispatch(request);
+
+        // Then
+        assertThat(response.getAssignedTrips()).isEqualTo(1);
+        assertThat(response.getAssignments()).singleElement().satisfies(planned -> {
+            assertThat(planned.getTripId()).isEqualTo(trip.getId());
+            assertThat(planned.getDriverId()).isEqualTo(testDriver.getId());
+            assertThat(planned.getVehicleId()).isEqualTo(testVehicle.getId());
+        });
+        assertThat(tripDriverRepository.findByTripId(trip.getId())).hasSize(1);
+        assertThat(tripVehicleRepository.findByTripId(trip.getId())).hasSize(1);
+        assertThat(tripRepository.findById(trip.getId()).orElseThrow().getStatus()).isEqualTo(TripStatus.ASSIGNED);
+        assertThat(bookingRepository.findById(testBookingEntity.getId()).orElseThrow().getStatus())
+                .isEqualTo(BookingStatus.ASSIGNED);
+    }
+
+    @Test
+    void autoDispatch_dryRun_shouldNotPersistAssignments() {
+        // Given
+        confirmDeposit(testBookingEntity);
+        Trips trip = tripRepository.findByBooking_Id(testBookingEntity.getId()).get(0);
+
+        AutoDispatchRequest request = new AutoDispatchRequest();
+        request.setBranchId(testBranch.getId());
+        request.setDate(LocalDate.ofInstant(trip.getStartTime(), ZoneId.systemDefault()));
+        request.setDryRun(true);
+
+        // When
+        AutoDispatchResponse response = dispatchService.autoDispatch(request);
+
+        // Then
+        assertThat(response.getAssignedTrips()).isEqualTo(1);
+        assertThat(tripDriverRepository.findByTripId(trip.getId())).isEmpty();
+        assertThat(tripVehicleRepository.findByTripId(trip.getId())).isEmpty();
+        assertThat(tripRepository.findById(trip.getId()).orElseThrow().getStatus()).isEqualTo(TripStatus.SCHEDULED);
+    }
+
+    private void confirmDeposit(Bookings booking) {
+        Invoices invoice = new Invoices();
+        invoice.setBooking(booking);
+        invoice.setCustomer(testCustomer);
+        invoice.setBranch(testBranch);
+        invoice.setType(InvoiceType.INCOME);
+        invoice.setIsDeposit(true);
+        invoice.setAmount(new BigDecimal("500000"));
+        invoice.setPaymentStatus(PaymentStatus.PAID);
+        invoice = invoiceRepository.save(invoice);
+
+        PaymentHistory paymentHistory = new PaymentHistory();
+        paymentHistory.setInvoice(invoice);
+        paymentHistory.setAmount(new BigDecimal("500000"));
+        paymentHistory.setPaymentDate(Instant.now());
+        paymentHistory.setPaymentMethod("CASH");
+        paymentHistory.setConfirmationStatus(PaymentConfirmationStatus.CONFIRMED);
+        paymentHistoryRepository.save(paymentHistory);
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.ptcmssbackend.integration;
+
+import org.example.ptcmssbackend.entity.EmailOutbox;
+import org.example.ptcmssbackend.enums.EmailOutboxStatus;
+import org.example.ptcmssbackend.repository.EmailOutboxRepository;
+import org.example.ptcmssbackend.service.EmailService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailOutboxIntegrationTest extends BaseIntegrationTest {
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Test
+    void sendInvoiceEmail_shouldQueueRenderedEmailInsteadOfSending() throws Exception {
+        // When
+        emailService.sendInvoiceEmail("customer@example.com", "Nguyễn Văn A", "INV-001",
+                "1500000", "2025-02-15", "", "Cảm ơn quý khách");
+
+        // Then
+        List<EmailOutbox> queued = emailOutboxRepository.findAll();
+        assertThat(queued).hasSize(1);
+        EmailOutbox email = queued.get(0);
+        assertThat(email.getToEmail()).isEqualTo("customer@example.com");
+        assertThat(email.getSubject()).isEqualTo("Hóa đơn #INV-001");
+        assertThat(email.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(email.getHtmlBody()).contains("INV-001");
+    }
+
+    @Test
+    void sendDebtReminderEmail_withoutTemplate_shouldQueueFallbackHtml() throws Exception {
+        // When
+        emailService.sendDebtReminderEmail("customer@example.com", "Nguyễn Văn A", "INV-002",
+                "2000000", "2025-01-01", 10, null);
+
+        // Then
+        List<EmailOutbox> queued = emailOutboxRepository.findAll();
+        assertThat(queued).hasSize(1);
+        assertThat(queued.get(0).getHtmlBody()).contains("đã quá hạn 10 ngày");
+    }
+
+    @Test
+    void claim_shouldGiveEachDueEmailToOnlyOneWorker() throws Exception {
+        // Given
+        emailService.sendSimpleEmail("a@example.com", "Test 1", "<p>1</p>");
+        emailService.sendSimpleEmail("b@example.com", "Test 2", "<p>2</p>");
+        Instant now = Instant.now().plusSeconds(1);
+        List<Integer> dueIds = emailOutboxRepository.findDueIds(now, PageRequest.of(0, 10));
+        assertThat(dueIds).hasSize(2);
+
+        // When
+        int first = emailOutboxRepository.claim(dueIds, "worker-1", now);
+        int second = emailOutboxRepository.claim(dueIds, "worker-2", now);
+
+        // Then
+        assertThat(first).isEqualTo(2);
+        assertThat(second).isZero();
+        assertThat(emailOutboxRepository.findByClaimTokenOrderByIdAsc("worker-1"))
+                .extracting(EmailOutbox::getStatus)
+                .containsOnly(EmailOutboxStatus.SENDING);
+        assertThat(emailOutboxRepository.findDueIds(now, PageRequest.of(0, 10))).isEmpty();
+
+        // Worker chết: claim quá hạn được trả lại hàng đợi
+        assertThat(emailOutboxRepository.releaseStaleClaims(now.plusSeconds(60))).isEqualTo(2);
+        assertThat(emailOutboxRepository.findDueIds(now, PageRequest.of(0, 10))).hasSize(2);
+    }
+}
@@ -7,6 +7,7 @@ import org.example.ptcmssbackend.dto.response.Invoice.PaymentHistoryResponse;
 import org.example.ptcmssbackend.entity.Branches;
 import org.example.ptcmssbackend.entity.Customers;
 import org.example.ptcmssbackend.entity.Employees;
+import org.example.ptcmssbackend.entity.InvoiceLedger;
 import org.example.ptcmssbackend.entity.Roles;
 import org.example.ptcmssbackend.entity.Users;
 import org.example.ptcmssbackend.enums.BranchStatus;
@@ -19,6 +20,8 @@ import org.example.ptcmssbackend.enums.UserStatus;
 import org.example.ptcmssbackend.repository.BranchesRepository;
 import org.example.ptcmssbackend.repository.CustomerRepository;
 import org.example.ptcmssbackend.repository.EmployeeRepository;
+import org.example.ptcmssbackend.repository.InvoiceLedgerRepository;
+import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
 import org.example.ptcmssbackend.repository.RolesRepository;
 import org.example.ptcmssbackend.repository.UsersRepository;
 import org.example.ptcmssbackend.service.InvoiceService;
@@ -32,6 +35,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -62,6 +66,12 @@ class InvoiceServiceIntegrationTest {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private InvoiceLedgerRepository invoiceLedgerRepository;
+
+    @Autowired
+    private PaymentHistoryRepository paymentHistoryRepository;
+
     private Branches testBranch;
     private Customers testCustomer;
     private Employees testEmployee;
@@ -249,6 +259,30 @@ class InvoiceServiceIntegrationTest {
         assertThat(result.getTotalElements()).isGreaterThanOrEqualTo(5);
     }
 
+    @Test
+    void getInvoices_withLikeWildcardInKeyword_shouldMatchLiterally() {
+        // Given: "%" trong keyword phải khớp đúng ký tự, không thành wildcard
+        Customers percentCustomer = createCustomer("Khách giảm 50% phí", "0900000001");
+        Customers otherCustomer = createCustomer("Khách giảm 500 phí", "0900000002");
+        for (Customers customer : List.of(percentCustomer, otherCustomer)) {
+            CreateInvoiceRequest request = new CreateInvoiceRequest();
+            request.setBranchId(testBranch.getId());
+            request.setType("INCOME");
+            request.setAmount(new BigDecimal("1000000"));
+            request.setCustomerId(customer.getId());
+            invoiceService.createInvoice(request);
+        }
+
+        // When
+        Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
+                invoiceService.getInvoices(testBranch.getId(), null, null, null, null, null, null, "50%",
+                        org.springframework.data.domain.PageRequest.of(0, 10));
+
+        // Then
+        assertThat(result.getContent()).hasSize(1);
+        assertThat(result.getContent().get(0).getCustomerName()).isEqualTo("Khách giảm 50% phí");
+    }
+
     @Test
     void calculateBalance_shouldCalculateCorrectBalance() {
         // Given
@@ -317,4 +351,55 @@ class InvoiceServiceIntegrationTest {
         assertThat(response).isNotNull();
         assertThat(response.getAmount()).isEqualByComparingTo(new BigDecimal("1500000"));
     }
+
+    @Test
+    void ledger_shouldFollowPaymentLifecycleAndMatchPaymentHistory() {
+        // Given
+        CreateInvoiceRequest createRequest = new CreateInvoiceRequest();
+        createRequest.setBranchId(testBranch.getId());
+        createRequest.setType("INCOME");
+        createRequest.setAmount(new BigDecimal("1000000"));
+        Integer invoiceId = invoiceService.createInvoice(createRequest).getInvoiceId();
+
+        RecordPaymentRequest first = new RecordPaymentRequest();
+        first.setAmount(new BigDecimal("300000"));
+        first.setPaymentMethod("CASH");
+        RecordPaymentRequest second = new RecordPaymentRequest();
+        second.setAmount(new BigDecimal("200000"));
+        second.setPaymentMethod("CASH");
+
+        // When: 2 payment PENDING, xác nhận payment đầu, xóa payment sau, rồi tăng số tiền hóa đơn
+        PaymentHistoryResponse firstPayment = invoiceService.recordPayment(invoiceId, first);
+        PaymentHistoryResponse secondPayment = invoiceService.recordPayment(invoiceId, second);
+        InvoiceLedger afterRecord = invoiceLedgerRepository.findById(invoiceId).orElseThrow();
+        assertThat(afterRecord.getPendingAmount()).isEqualByComparingTo("500000");
+        assertThat(afterRecord.getConfirmedPaid()).isEqualByComparingTo("0");
+
+        invoiceService.confirmPayment(firstPayment.getPaymentId(), "CONFIRMED");
+        invoiceService.deletePayment(secondPayment.getPaymentId());
+
+        CreateInvoiceRequest updateRequest = new CreateInvoiceRequest();
+        updateRequest.setAmount(new BigDecimal("1500000"));
+        invoiceService.updateInvoice(invoiceId, updateRequest);
+
+        // Then
+        InvoiceLedger ledger = invoiceLedgerRepository.findById(invoiceId).orElseThrow();
+        assertThat(ledger.getConfirmedPaid()).isEqualByComparingTo("300000");
+        assertThat(ledger.getPendingAmount()).isEqualByComparingTo("0");
+        assertThat(ledger.getBalance()).isEqualByComparingTo("1200000");
+        assertThat(ledger.getLastPaymentAt()).isNotNull();
+        assertThat(invoiceService.calculateBalance(invoiceId)).isEqualByComparingTo("1200000");
+
+        Object[] totals = paymentHistoryRepository.summarizeByInvoiceId(invoiceId).get(0);
+        assertThat((BigDecimal) totals[0]).isEqualByComparingTo(ledger.getConfirmedPaid());
+        assertThat((BigDecimal) totals[1]).isEqualByComparingTo(ledger.getPendingAmount());
+    }
+
+    private Customers createCustomer(String fullName, String phone) {
+        Customers customer = new Customers();
+        customer.setFullName(fullName);
+        customer.setPhone(phone);
+        customer.setStatus(CustomerStatus.ACTIVE);
+        return customerRepository.save(customer);
+    }
 }
@@ -0,0 +1,160 @@
+package org.example.ptcmssbackend.integration;
+
+import jakarta.persistence.EntityManager;
+import org.example.ptcmssbackend.entity.Notifications;
+import org.example.ptcmssbackend.entity.Roles;
+import org.example.ptcmssbackend.entity.Users;
+import org.example.ptcmssbackend.enums.UserStatus;
+import org.example.ptcmssbackend.repository.NotificationArchiveRepository;
+import org.example.ptcmssbackend.repository.NotificationRepository;
+import org.example.ptcmssbackend.repository.RolesRepository;
+import org.example.ptcmssbackend.repository.UsersRepository;
+import org.example.ptcmssbackend.service.NotificationService;
+import org.example.ptcmssbackend.service.impl.NotificationRetentionJob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationFeedIntegrationTest extends BaseIntegrationTest {
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationRetentionJob notificationRetentionJob;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private NotificationArchiveRepository notificationArchiveRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private RolesRepository rolesRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Users testUser;
+    private Users otherUser;
+
+    @BeforeEach
+    void setUp() {
+        Roles role = new Roles();
+        role.setRoleName("DRIVER");
+        role.setDescription("Driver Role");
+        role = rolesRepository.save(role);
+
+        testUser = createUser(role, "driver1", "driver1@example.com", "0900000001");
+        otherUser = createUser(role, "driver2", "driver2@example.com", "0900000002");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getUserNotificationsByCursor_shouldWalkAllPagesWithoutDuplicates() {
+        // Given: 5 thông báo, 2 cặp trùng createdAt để kiểm tra thứ tự theo id
+        Instant base = Instant.parse("2025-12-01T08:00:00Z");
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(createNotification(testUser, "Thông báo " + i, base.plusSeconds(i / 2)).getId());
+        }
+        createNotification(otherUser, "Của user khác", base);
+
+        // When
+        List<Object> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Map<String, Object> page = notificationService.getUserNotificationsByCursor(testUser.getId(), cursor, 2);
+            ((List<Map<String, Object>>) page.get("data")).forEach(item -> seen.add(item.get("id")));
+            cursor = (String) page.get("nextCursor");
+            pages++;
+        } while (cursor != null);
+
+        // Then: mới nhất trước, cùng createdAt thì id lớn trước
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).containsExactly(ids.get(4), ids.get(3), ids.get(2), ids.get(1), ids.get(0));
+    }
+
+    @Test
+    void markNotificationsRead_shouldOnlyUpdateOwnUnreadNotifications() {
+        // Given
+        Notifications first = createNotification(testUser, "A", Instant.now());
+        createNotification(testUser, "B", Instant.now());
+        Notifications foreign = createNotification(otherUser, "C", Instant.now());
+
+        // When
+        int selected = notificationService.markNotificationsRead(testUser.getId(), List.of(first.getId(), foreign.getId()));
+        int rest = notificationService.markNotificationsRead(testUser.getId(), null);
+        int again = notificationService.markNotificationsRead(testUser.getId(), null);
+
+        // Then
+        assertThat(selected).isEqualTo(1);
+        assertThat(rest).isEqualTo(1);
+        assertThat(again).isZero();
+        assertThat(notificationRepository.countByUser_IdAndIsReadFalse(testUser.getId())).isZero();
+        assertThat(notificationRepository.countByUser_IdAndIsReadFalse(otherUser.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void archiveBefore_shouldMoveOldNotificationsToArchiveInBatches() {
+        // Given
+        Instant now = Instant.now();
+        for (int i = 0; i < 3; i++) {
+            createNotification(testUser, "Cũ " + i, now.minus(100 + i, ChronoUnit.DAYS));
+        }
+        Notifications recent = createNotification(testUser, "Mới", now.minus(1, ChronoUnit.DAYS));
+
+        // When
+        int archived = notificationRetentionJob.archiveBefore(now.minus(90, ChronoUnit.DAYS));
+
+        // Then
+        assertThat(archived).isEqualTo(3);
+        assertThat(notificationArchiveRepository.countByUserId(testUser.getId())).isEqualTo(3);
+        assertThat(notificationRepository.findByUser_IdOrderByCreatedAtDesc(testUser.getId()))
+                .extracting(Notifications::getId)
+                .containsExactly(recent.getId());
+    }
+
+    private Users createUser(Roles role, String username, String email, String phone) {
+        Users user = new Users();
+        user.setFullName(username);
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setPhone(phone);
+        user.setPasswordHash("hash");
+        user.setStatus(UserStatus.ACTIVE);
+        user.setRole(role);
+        return usersRepository.save(user);
+    }
+
+    private Notifications createNotification(Users user, String title, Instant createdAt) {
+        Notifications notification = new Notifications();
+        notification.setUser(user);
+        notification.setTitle(title);
+        notification.setMessage(title);
+        notification.setIsRead(false);
+        notification = notificationRepository.saveAndFlush(notification);
+        // @CreationTimestamp luôn ghi thời điểm hiện tại → đặt lại createdAt bằng SQL
+        jdbcTemplate.update("UPDATE notifications SET createdAt = ? WHERE notificationId = ?",
+                Timestamp.from(createdAt), notification.getId());
+        entityManager.clear();
+        return notification;
+    }
+}
@@ -5,6 +5,7 @@ import org.example.ptcmssbackend.dto.request.Accounting.RevenueReportRequest;
 import org.example.ptcmssbackend.dto.response.Accounting.AccountingDashboardResponse;
 import org.example.ptcmssbackend.dto.response.Accounting.ExpenseReportResponse;
 import org.example.ptcmssbackend.dto.response.Accounting.RevenueReportResponse;
+import org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.InvoiceStatus;
 import org.example.ptcmssbackend.enums.InvoiceType;
@@ -25,6 +26,7 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
@@ -41,6 +43,8 @@ class AccountingServiceImplTest {
     private ExpenseRequestRepository expenseRequestRepository;
     @Mock
     private InvoiceService invoiceService;
+    @Mock
+    private InvoiceLedgerService invoiceLedgerService;
 
     @InjectMocks
     private AccountingServiceImpl accountingService;
@@ -337,13 +341,10 @@ class AccountingServiceImplTest {
         Integer branchId = 10;
         String period = "THIS_MONTH";
 
-        when(invoiceRepository.sumAmountByBranchAndTypeAndDateRange(anyInt(), any(), any(), any()))
-                .thenReturn(BigDecimal.ZERO);
-        when(invoiceRepository.findUnpaidInvoices(anyInt())).thenReturn(Collections.emptyList());
-        when(invoiceRepository.findOverdueInvoices(anyInt())).thenReturn(Collections.emptyList());
-        when(invoiceRepository.findInvoicesDueInRange(any(), any(), anyInt())).thenReturn(Collections.emptyList());
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(Collections.emptyList());
+        when(invoiceRepository.findDashboardRows(eq(branchId), any(), any())).thenReturn(Collections.emptyList());
+        when(expenseRequestRepository.findApprovedAmounts(eq(branchId), any(), any())).thenReturn(Collections.emptyList());
+        when(invoiceRepository.findReceivableRows(branchId)).thenReturn(Collections.emptyList());
+        when(invoiceRepository.findPendingInvoices(eq(branchId), any())).thenReturn(Collections.emptyList());
 
         // When
         AccountingDashboardResponse result = accountingService.getDashboard(branchId, period);
@@ -357,6 +358,64 @@ class AccountingServiceImplTest {
         assertThat(result.getApBalance()).isNotNull();
     }
 
+    @Test
+    void getDashboard_shouldAggregateAllKpisFromProjectionScans() {
+        // Given
+        Integer branchId = 10;
+        Instant today = LocalDate.now().atTime(10, 0).atZone(ZoneId.systemDefault()).toInstant();
+        List<Object[]> invoiceRows = List.of(
+                // type, status, paymentStatus, invoiceDate, amount, customerId, customerName, confirmed paid
+                new Object[]{InvoiceType.INCOME, InvoiceStatus.ACTIVE, PaymentStatus.PAID, today, new BigDecimal("1000000"), 1, "Nguyễn Văn A", new BigDecimal("1000000")},
+                new Object[]{InvoiceType.INCOME, InvoiceStatus.ACTIVE, PaymentStatus.UNPAID, today, new BigDecimal("600000"), 2, "Trần Thị B", new BigDecimal("100000")},
+                new Object[]{InvoiceType.INCOME, InvoiceStatus.CANCELLED, PaymentStatus.UNPAID, today, new BigDecimal("400000"), 1, "Nguyễn Văn A", BigDecimal.ZERO},
+                new Object[]{InvoiceType.EXPENSE, InvoiceStatus.ACTIVE, PaymentStatus.PAID, today, new BigDecimal("300000"), null, null, BigDecimal.ZERO},
+                new Object[]{InvoiceType.EXPENSE, InvoiceStatus.CANCELLED, PaymentStatus.PAID, today, new BigDecimal("50000"), null, null, BigDecimal.ZERO});
+        List<Object[]> requestRows = List.<Object[]>of(new Object[]{today, new BigDecimal("150000")});
+        List<Object[]> receivableRows = List.of(
+                new Object[]{PaymentStatus.UNPAID, LocalDate.now().plusDays(3), new BigDecimal("600000"), new BigDecimal("100000")},
+                new Object[]{PaymentStatus.UNPAID, LocalDate.now().plusDays(30), new BigDecimal("200000"), BigDecimal.ZERO},
+                new Object[]{PaymentStatus.OVERDUE, LocalDate.now().minusDays(2), new BigDecimal("400000"), BigDecimal.ZERO});
+
+        when(invoiceRepository.findDashboardRows(eq(branchId), any(), any())).thenReturn(invoiceRows);
+        when(expenseRequestRepository.findApprovedAmounts(eq(branchId), any(), any())).thenReturn(requestRows);
+        when(invoiceRepository.findReceivableRows(branchId)).thenReturn(receivableRows);
+        when(invoiceRepository.findPendingInvoices(eq(branchId), any()))
+                .thenReturn(List.of(createTestInvoice(200, PaymentStatus.UNPAID)));
+
+        // When
+        AccountingDashboardResponse result = accountingService.getDashboard(branchId, "THIS_MONTH");
+
+        // Then
+        assertThat(result.getTotalRevenue()).isEqualByComparingTo("2000000");
+        // Chi phí = hóa đơn chi (mọi trạng thái) + chi phí đã duyệt
+        assertThat(result.getTotalExpense()).isEqualByComparingTo("500000");
+        assertThat(result.getNetProfit()).isEqualByComparingTo("1500000");
+        // Chỉ hóa đơn ACTIVE đã PAID: 1.000.000 / 2.000.000
+        assertThat(result.getCollectionRate()).isEqualByComparingTo("50.00");
+        assertThat(result.getExpenseToRevenueRatio()).isEqualByComparingTo("25.00");
+        assertThat(result.getArBalance()).isEqualByComparingTo("1100000");
+        assertThat(result.getInvoicesDueIn7Days()).isEqualTo(1);
+        assertThat(result.getOverdueInvoices()).isEqualTo(1);
+        assertThat(result.getExpenseByCategory()).containsOnlyKeys("OTHER");
+        assertThat(result.getExpenseByCategory().get("OTHER")).isEqualByComparingTo("300000");
+        assertThat(result.getRevenueChart())
+                .filteredOn(p -> p.getDate().equals(LocalDate.now().toString()))
+                .singleElement()
+                .satisfies(p -> assertThat(p.getValue()).isEqualByComparingTo("2000000"));
+        assertThat(result.getExpenseChart().stream().map(AccountingDashboardResponse.ChartDataPoint::getValue)
+                .reduce(BigDecimal.ZERO, BigDecimal::add)).isEqualByComparingTo("500000");
+        assertThat(result.getTopCustomers()).extracting(AccountingDashboardResponse.TopCustomer::getCustomerId)
+                .containsExactly(1, 2);
+        assertThat(result.getTopCustomers().get(0).getTotalRevenue()).isEqualByComparingTo("1000000");
+        assertThat(result.getTopCustomers().get(0).getInvoiceCount()).isEqualTo(1);
+        assertThat(result.getPendingApprovals()).hasSize(1);
+
+        // Không còn truy vấn theo từng ngày / từng hóa đơn
+        verify(invoiceRepository, never()).sumAmountByBranchAndTypeAndDateRange(any(), any(), any(), any());
+        verify(invoiceRepository, never()).findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any());
+        verifyNoInteractions(paymentHistoryRepository, invoiceService);
+    }
+
     // ==================== getRevenueReport() Tests ====================
 
     @Test
@@ -374,11 +433,8 @@ class AccountingServiceImplTest {
 
         when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
                 .thenReturn(invoices);
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100))
-                .thenReturn(new BigDecimal("500000"));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(101))
-                .thenReturn(BigDecimal.ZERO);
-        when(invoiceService.calculateBalance(anyInt())).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100, 101)))
+                .thenReturn(Map.of(100, new BigDecimal("500000")));
         // Mock for comparison data (previous period)
         when(invoiceRepository.sumAmountByBranchAndTypeAndDateRange(any(), any(), any(), any()))
                 .thenReturn(BigDecimal.ZERO);
@@ -390,6 +446,11 @@ class AccountingServiceImplTest {
         assertThat(result).isNotNull();
         assertThat(result.getTotalRevenue()).isEqualTo(new BigDecimal("800000"));
         assertThat(result.getTotalInvoices()).isEqualTo(2);
+        assertThat(result.getTotalPaid()).isEqualByComparingTo("500000");
+        assertThat(result.getInvoices()).extracting(InvoiceListResponse::getBalance)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(BigDecimal.ZERO, new BigDecimal("300000"));
+        verify(paymentHistoryRepository, never()).sumConfirmedByInvoiceId(anyInt());
     }
 
     // ==================== getExpenseReport() Tests ====================
@@ -5,6 +5,7 @@ import org.example.ptcmssbackend.entity.Branches;
 import org.example.ptcmssbackend.entity.Users;
 import org.example.ptcmssbackend.enums.ApprovalStatus;
 import org.example.ptcmssbackend.enums.ApprovalType;
+import org.example.ptcmssbackend.event.ApprovalRequestedEvent;
 import org.example.ptcmssbackend.repository.ApprovalHistoryRepository;
 import org.example.ptcmssbackend.service.impl.ApprovalServiceImpl;
 import org.junit.jupiter.api.Test;
@@ -188,5 +189,32 @@ class ApprovalServiceImplTest {
         verify(approvalHistoryRepository).save(captor.capture());
         assertThat(captor.getValue().getStatus()).isEqualTo(ApprovalStatus.PENDING);
     }
-}
 
+    // ==================== onApprovalRequested() Tests ====================
+
+    @Test
+    void onApprovalRequested_shouldCreatePendingHistoryFromEvent() {
+        // Given
+        Users requestedBy = new Users();
+        requestedBy.setId(1);
+        Branches branch = new Branches();
+        branch.setId(2);
+        when(approvalHistoryRepository.save(any(ApprovalHistory.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        approvalService.onApprovalRequested(new ApprovalRequestedEvent(
+                ApprovalType.DRIVER_DAY_OFF, 50, requestedBy, "Nghỉ ốm", branch));
+
+        // Then
+        ArgumentCaptor<ApprovalHistory> captor = ArgumentCaptor.forClass(ApprovalHistory.class);
+        verify(approvalHistoryRepository).save(captor.capture());
+        ApprovalHistory history = captor.getValue();
+        assertThat(history.getApprovalType()).isEqualTo(ApprovalType.DRIVER_DAY_OFF);
+        assertThat(history.getRelatedEntityId()).isEqualTo(50);
+        assertThat(history.getStatus()).isEqualTo(ApprovalStatus.PENDING);
+        assertThat(history.getRequestedBy()).isSameAs(requestedBy);
+        assertThat(history.getRequestReason()).isEqualTo("Nghỉ ốm");
+        assertThat(history.getBranch()).isSameAs(branch);
+    }
+}
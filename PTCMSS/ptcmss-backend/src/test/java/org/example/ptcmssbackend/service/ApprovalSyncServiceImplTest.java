@@ -3,21 +3,21 @@ package org.example.ptcmssbackend.service;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.ApprovalStatus;
 import org.example.ptcmssbackend.enums.ApprovalType;
-import org.example.ptcmssbackend.enums.DriverDayOffStatus;
-import org.example.ptcmssbackend.enums.ExpenseRequestStatus;
 import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.impl.ApprovalSyncServiceImpl;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,217 +32,114 @@ class ApprovalSyncServiceImplTest {
     @Mock
     private ApprovalHistoryRepository approvalHistoryRepository;
 
-    @Mock
-    private DriverRepository driverRepository;
-
     @InjectMocks
     private ApprovalSyncServiceImpl approvalSyncService;
 
     // ==================== syncDriverDayOffApprovals() Tests ====================
 
     @Test
-    void syncDriverDayOffApprovals_whenPendingDayOffsExist_shouldCreateApprovalHistory() {
-        // Given
-        DriverDayOff dayOff = new DriverDayOff();
-        dayOff.setId(1);
-        dayOff.setReason("Nghỉ phép");
-
-        Drivers driver = new Drivers();
-        driver.setId(1);
-
-        Employees employee = new Employees();
-        employee.setEmployeeId(1);
-
-        Users user = new Users();
-        user.setId(100);
-        user.setFullName("Nguyễn Văn A");
-        employee.setUser(user);
-        driver.setEmployee(employee);
-
-        Branches branch = new Branches();
-        branch.setId(1);
-        branch.setBranchName("Chi nhánh Hà Nội");
-        driver.setBranch(branch);
-        dayOff.setDriver(driver);
-
-        when(driverDayOffRepository.findByStatus(DriverDayOffStatus.PENDING))
-                .thenReturn(List.of(dayOff));
-        when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.DRIVER_DAY_OFF, 1, ApprovalStatus.PENDING))
-                .thenReturn(Optional.empty());
-        when(approvalHistoryRepository.save(any(ApprovalHistory.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
-
-        // When
-        approvalSyncService.syncDriverDayOffApprovals();
-
-        // Then
-        verify(driverDayOffRepository).findByStatus(DriverDayOffStatus.PENDING);
-        verify(approvalHistoryRepository).findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.DRIVER_DAY_OFF, 1, ApprovalStatus.PENDING);
-        verify(approvalHistoryRepository).save(any(ApprovalHistory.class));
-    }
-
-    @Test
-    void syncDriverDayOffApprovals_whenApprovalHistoryExists_shouldNotCreateDuplicate() {
+    @SuppressWarnings("unchecked")
+    void syncDriverDayOffApprovals_whenDayOffMissingHistory_shouldCreateApprovalHistory() {
         // Given
-        DriverDayOff dayOff = new DriverDayOff();
-        dayOff.setId(1);
-        dayOff.setReason("Nghỉ phép");
-
-        Drivers driver = new Drivers();
-        driver.setId(1);
-        dayOff.setDriver(driver);
+        Branches branch = createBranch();
+        DriverDayOff dayOff = createDayOff(1, createUser(100), branch);
 
-        ApprovalHistory existingHistory = new ApprovalHistory();
-        existingHistory.setId(1);
-
-        when(driverDayOffRepository.findByStatus(DriverDayOffStatus.PENDING))
-                .thenReturn(List.of(dayOff));
-        when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.DRIVER_DAY_OFF, 1, ApprovalStatus.PENDING))
-                .thenReturn(Optional.of(existingHistory));
+        when(driverDayOffRepository.findPendingWithoutApprovalHistory()).thenReturn(List.of(dayOff));
 
         // When
         approvalSyncService.syncDriverDayOffApprovals();
 
         // Then
-        verify(approvalHistoryRepository, never()).save(any(ApprovalHistory.class));
+        ArgumentCaptor<List<ApprovalHistory>> captor = ArgumentCaptor.forClass((Class) List.class);
+        verify(approvalHistoryRepository).saveAll(captor.capture());
+        assertThat(captor.getValue()).hasSize(1);
+        ApprovalHistory history = captor.getValue().get(0);
+        assertThat(history.getApprovalType()).isEqualTo(ApprovalType.DRIVER_DAY_OFF);
+        assertThat(history.getRelatedEntityId()).isEqualTo(1);
+        assertThat(history.getStatus()).isEqualTo(ApprovalStatus.PENDING);
+        assertThat(history.getRequestedBy().getId()).isEqualTo(100);
+        assertThat(history.getRequestReason()).isEqualTo("Nghỉ phép");
+        assertThat(history.getBranch()).isSameAs(branch);
     }
 
     @Test
-    void syncDriverDayOffApprovals_whenNoUser_shouldNotCreateApprovalHistory() {
-        // Given
-        DriverDayOff dayOff = new DriverDayOff();
-        dayOff.setId(1);
-        dayOff.setReason("Nghỉ phép");
-
-        Drivers driver = new Drivers();
-        driver.setId(1);
-        driver.setEmployee(null); // No employee
-        dayOff.setDriver(driver);
-
-        when(driverDayOffRepository.findByStatus(DriverDayOffStatus.PENDING))
-                .thenReturn(List.of(dayOff));
-        when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.DRIVER_DAY_OFF, 1, ApprovalStatus.PENDING))
-                .thenReturn(Optional.empty());
+    void syncDriverDayOffApprovals_whenNothingMissing_shouldNotWriteOrCheckPerItem() {
+        // Given: anti-join đã loại các đơn có ApprovalHistory PENDING
+        when(driverDayOffRepository.findPendingWithoutApprovalHistory()).thenReturn(List.of());
 
         // When
         approvalSyncService.syncDriverDayOffApprovals();
 
         // Then
-        verify(approvalHistoryRepository, never()).save(any(ApprovalHistory.class));
+        verify(approvalHistoryRepository, never()).saveAll(any());
+        verify(approvalHistoryRepository, never()).findByApprovalTypeAndRelatedEntityIdAndStatus(any(), anyInt(), any());
+        verify(driverDayOffRepository, never()).findByStatus(any());
     }
 
     @Test
     void syncDriverDayOffApprovals_whenException_shouldNotThrow() {
         // Given
-        when(driverDayOffRepository.findByStatus(DriverDayOffStatus.PENDING))
+        when(driverDayOffRepository.findPendingWithoutApprovalHistory())
                 .thenThrow(new RuntimeException("Database error"));
 
         // When & Then - Should not throw exception
         approvalSyncService.syncDriverDayOffApprovals();
 
         // Verify it handled the exception gracefully
-        verify(driverDayOffRepository).findByStatus(DriverDayOffStatus.PENDING);
+        verify(driverDayOffRepository).findPendingWithoutApprovalHistory();
+        verify(approvalHistoryRepository, never()).saveAll(any());
     }
 
     // ==================== syncExpenseRequestApprovals() Tests ====================
 
     @Test
-    void syncExpenseRequestApprovals_whenPendingExpensesExist_shouldCreateApprovalHistory() {
-        // Given
-        ExpenseRequests expense = new ExpenseRequests();
-        expense.setId(1);
-        expense.setType("FUEL");
-        expense.setAmount(new BigDecimal("500000"));
-
-        Users requester = new Users();
-        requester.setId(100);
-        requester.setFullName("Nguyễn Văn A");
-        expense.setRequester(requester);
-
-        Branches branch = new Branches();
-        branch.setId(1);
-        branch.setBranchName("Chi nhánh Hà Nội");
-        expense.setBranch(branch);
-
-        when(expenseRequestRepository.findByStatus(ExpenseRequestStatus.PENDING))
-                .thenReturn(List.of(expense));
-        when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.EXPENSE_REQUEST, 1, ApprovalStatus.PENDING))
-                .thenReturn(Optional.empty());
-        when(approvalHistoryRepository.save(any(ApprovalHistory.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
-
-        // When
-        approvalSyncService.syncExpenseRequestApprovals();
-
-        // Then
-        verify(expenseRequestRepository).findByStatus(ExpenseRequestStatus.PENDING);
-        verify(approvalHistoryRepository).findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.EXPENSE_REQUEST, 1, ApprovalStatus.PENDING);
-        verify(approvalHistoryRepository).save(any(ApprovalHistory.class));
-    }
-
-    @Test
-    void syncExpenseRequestApprovals_whenApprovalHistoryExists_shouldNotCreateDuplicate() {
+    @SuppressWarnings("unchecked")
+    void syncExpenseRequestApprovals_whenExpenseMissingHistory_shouldCreateApprovalHistory() {
         // Given
-        ExpenseRequests expense = new ExpenseRequests();
-        expense.setId(1);
-        expense.setType("FUEL");
-        expense.setAmount(new BigDecimal("500000"));
-
-        ApprovalHistory existingHistory = new ApprovalHistory();
-        existingHistory.setId(1);
+        Branches branch = createBranch();
+        ExpenseRequests expense = createExpense(1, createUser(100), branch);
 
-        when(expenseRequestRepository.findByStatus(ExpenseRequestStatus.PENDING))
-                .thenReturn(List.of(expense));
-        when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.EXPENSE_REQUEST, 1, ApprovalStatus.PENDING))
-                .thenReturn(Optional.of(existingHistory));
+        when(expenseRequestRepository.findPendingWithoutApprovalHistory()).thenReturn(List.of(expense));
 
         // When
         approvalSyncService.syncExpenseRequestApprovals();
 
         // Then
-        verify(approvalHistoryRepository, never()).save(any(ApprovalHistory.class));
+        ArgumentCaptor<List<ApprovalHistory>> captor = ArgumentCaptor.forClass((Class) List.class);
+        verify(approvalHistoryRepository).saveAll(captor.capture());
+        assertThat(captor.getValue()).hasSize(1);
+        ApprovalHistory history = captor.getValue().get(0);
+        assertThat(history.getApprovalType()).isEqualTo(ApprovalType.EXPENSE_REQUEST);
+        assertThat(history.getRelatedEntityId()).isEqualTo(1);
+        assertThat(history.getRequestedBy().getId()).isEqualTo(100);
+        assertThat(history.getRequestReason()).isEqualTo("Yêu cầu tạm ứng: FUEL - 500000 VNĐ");
+        assertThat(history.getBranch()).isSameAs(branch);
     }
 
     @Test
-    void syncExpenseRequestApprovals_whenNoRequester_shouldNotCreateApprovalHistory() {
+    void syncExpenseRequestApprovals_whenNothingMissing_shouldNotWrite() {
         // Given
-        ExpenseRequests expense = new ExpenseRequests();
-        expense.setId(1);
-        expense.setType("FUEL");
-        expense.setAmount(new BigDecimal("500000"));
-        expense.setRequester(null); // No requester
-
-        when(expenseRequestRepository.findByStatus(ExpenseRequestStatus.PENDING))
-                .thenReturn(List.of(expense));
-        when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
-                ApprovalType.EXPENSE_REQUEST, 1, ApprovalStatus.PENDING))
-                .thenReturn(Optional.empty());
+        when(expenseRequestRepository.findPendingWithoutApprovalHistory()).thenReturn(List.of());
 
         // When
         approvalSyncService.syncExpenseRequestApprovals();
 
         // Then
-        verify(approvalHistoryRepository, never()).save(any(ApprovalHistory.class));
+        verify(approvalHistoryRepository, never()).saveAll(any());
+        verify(expenseRequestRepository, never()).findByStatus(any());
     }
 
     @Test
     void syncExpenseRequestApprovals_whenException_shouldNotThrow() {
         // Given
-        when(expenseRequestRepository.findByStatus(ExpenseRequestStatus.PENDING))
+        when(expenseRequestRepository.findPendingWithoutApprovalHistory())
                 .thenThrow(new RuntimeException("Database error"));
 
         // When & Then - Should not throw exception
         approvalSyncService.syncExpenseRequestApprovals();
 
         // Verify it handled the exception gracefully
-        verify(expenseRequestRepository).findByStatus(ExpenseRequestStatus.PENDING);
+        verify(expenseRequestRepository).findPendingWithoutApprovalHistory();
     }
 
     // ==================== syncAll() Tests ====================
@@ -250,63 +147,74 @@ class ApprovalSyncServiceImplTest {
     @Test
     void syncAll_shouldCallBothSyncMethods() {
         // Given
-        when(driverDayOffRepository.findByStatus(DriverDayOffStatus.PENDING))
-                .thenReturn(List.of());
-        when(expenseRequestRepository.findByStatus(ExpenseRequestStatus.PENDING))
-                .thenReturn(List.of());
+        when(driverDayOffRepository.findPendingWithoutApprovalHistory()).thenReturn(List.of());
+        when(expenseRequestRepository.findPendingWithoutApprovalHistory()).thenReturn(List.of());
 
         // When
         approvalSyncService.syncAll();
 
         // Then
-        verify(driverDayOffRepository).findByStatus(DriverDayOffStatus.PENDING);
-        verify(expenseRequestRepository).findByStatus(ExpenseRequestStatus.PENDING);
+        verify(driverDayOffRepository).findPendingWithoutApprovalHistory();
+        verify(expenseRequestRepository).findPendingWithoutApprovalHistory();
     }
 
     @Test
-    void syncAll_whenMultiplePendingItems_shouldCreateAllApprovalHistories() {
+    void syncAll_whenMultipleMissingItems_shouldWriteEachTypeInOneBatch() {
         // Given
-        // Driver Day Off
-        DriverDayOff dayOff = new DriverDayOff();
-        dayOff.setId(1);
-        dayOff.setReason("Nghỉ phép");
+        Users user = createUser(100);
+        Branches branch = createBranch();
 
-        Drivers driver = new Drivers();
-        driver.setId(1);
+        when(driverDayOffRepository.findPendingWithoutApprovalHistory())
+                .thenReturn(List.of(createDayOff(1, user, branch), createDayOff(2, user, branch)));
+        when(expenseRequestRepository.findPendingWithoutApprovalHistory())
+                .thenReturn(List.of(createExpense(1, user, branch)));
 
-        Employees employee = new Employees();
+        // When
+        approvalSyncService.syncAll();
+
+        // Then
+        verify(approvalHistoryRepository, times(2)).saveAll(any());
+        verify(approvalHistoryRepository, never()).save(any(ApprovalHistory.class));
+    }
+
+    private Users createUser(Integer id) {
         Users user = new Users();
-        user.setId(100);
-        employee.setUser(user);
-        driver.setEmployee(employee);
+        user.setId(id);
+        user.setFullName("Nguyễn Văn A");
+        return user;
+    }
 
+    private Branches createBranch() {
         Branches branch = new Branches();
         branch.setId(1);
+        branch.setBranchName("Chi nhánh Hà Nội");
+        return branch;
+    }
+
+    private DriverDayOff createDayOff(Integer id, Users user, Branches branch) {
+        Employees employee = new Employees();
+        employee.setEmployeeId(1);
+        employee.setUser(user);
+
+        Drivers driver = new Drivers();
+        driver.setId(1);
+        driver.setEmployee(employee);
         driver.setBranch(branch);
+
+        DriverDayOff dayOff = new DriverDayOff();
+        dayOff.setId(id);
+        dayOff.setReason("Nghỉ phép");
         dayOff.setDriver(driver);
+        return dayOff;
+    }
 
-        // Expense Request
+    private ExpenseRequests createExpense(Integer id, Users requester, Branches branch) {
         ExpenseRequests expense = new ExpenseRequests();
-        expense.setId(1);
+        expense.setId(id);
         expense.setType("FUEL");
         expense.setAmount(new BigDecimal("500000"));
-        expense.setRequester(user);
+        expense.setRequester(requester);
         expense.setBranch(branch);
-
-        when(driverDayOffRepository.findByStatus(DriverDayOffStatus.PENDING))
-                .thenReturn(List.of(dayOff));
-        when(expenseRequestRepository.findByStatus(ExpenseRequestStatus.PENDING))
-                .thenReturn(List.of(expense));
-        when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(any(), anyInt(), any()))
-                .thenReturn(Optional.empty());
-        when(approvalHistoryRepository.save(any(ApprovalHistory.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));
-
-        // When
-        approvalSyncService.syncAll();
-
-        // Then
-        verify(approvalHistoryRepository, times(2)).save(any(ApprovalHistory.class));
+        return expense;
     }
 }
-
@@ -51,6 +51,9 @@ class AuthenticationServiceImplTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private PrincipalCacheService principalCacheService;
+
     @InjectMocks
     private AuthenticationServiceImpl authenticationService;
 
@@ -378,6 +381,7 @@ class AuthenticationServiceImplTest {
         verify(userRepository).findByVerificationToken("validToken");
         verify(passwordEncoder).encode("NewPassword123");
         verify(userRepository).save(user);
+        verify(principalCacheService).evictUser("testuser");
     }
 
     @Test
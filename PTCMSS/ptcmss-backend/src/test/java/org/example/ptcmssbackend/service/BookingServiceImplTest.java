@@ -1,5 +1,6 @@
 package org.example.ptcmssbackend.service;
 
+import org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityBatchRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CheckAvailabilityRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CreateBookingRequest;
 import org.example.ptcmssbackend.dto.request.Booking.CreatePaymentRequest;
@@ -7,17 +8,20 @@ import org.example.ptcmssbackend.dto.request.Booking.TripRequest;
 import org.example.ptcmssbackend.dto.request.Booking.UpdateBookingRequest;
 import org.example.ptcmssbackend.dto.request.Booking.VehicleDetailRequest;
 import org.example.ptcmssbackend.dto.response.Booking.BookingListResponse;
+import org.example.ptcmssbackend.dto.response.Booking.CheckAvailabilityResponse;
 import org.example.ptcmssbackend.dto.response.Booking.ConsultantDashboardResponse;
 import org.example.ptcmssbackend.dto.response.common.PageResponse;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.TripStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.example.ptcmssbackend.entity.Branches;
 import org.example.ptcmssbackend.entity.VehicleCategoryPricing;
 import org.example.ptcmssbackend.entity.Vehicles;
 import org.example.ptcmssbackend.enums.BookingStatus;
+import org.example.ptcmssbackend.enums.VehicleCategoryStatus;
 import org.example.ptcmssbackend.enums.VehicleStatus;
 import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.impl.BookingServiceImpl;
@@ -29,8 +33,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.Collections;
 import java.util.List;
 
@@ -72,6 +76,12 @@ class BookingServiceImplTest {
     private VehicleRepository vehicleRepository;
     @Mock
     private WebSocketNotificationService webSocketNotificationService;
+    @Mock
+    private ResourceTimelineService resourceTimelineService;
+    @Mock
+    private ResourceReservationService resourceReservationService;
+    @Mock
+    private PricingService pricingService;
 
     @InjectMocks
     private BookingServiceImpl bookingService;
@@ -90,7 +100,7 @@ class BookingServiceImplTest {
 
         when(vehicleRepository.filterVehicles(eq(10), eq(1), eq(VehicleStatus.AVAILABLE)))
                 .thenReturn(List.of(createVehicle(101), createVehicle(102)));
-        when(tripVehicleRepository.findBusyVehicleIds(1, 10, start, end))
+        when(resourceTimelineService.findBusyVehicleIds(1, 10, start, end))
                 .thenReturn(List.of(201));
         when(bookingVehicleDetailsRepository.countReservedQuantityWithoutAssignedVehicles(
                 eq(1), eq(10), eq(start), eq(end), anyList()))
@@ -121,10 +131,10 @@ class BookingServiceImplTest {
         List<Vehicles> candidates = List.of(createVehicle(301));
         when(vehicleRepository.filterVehicles(eq(20), eq(2), eq(VehicleStatus.AVAILABLE)))
                 .thenReturn(candidates);
-        when(tripVehicleRepository.findBusyVehicleIds(2, 20, start, end))
+        when(resourceTimelineService.findBusyVehicleIds(2, 20, start, end))
                 .thenReturn(List.of(401, 402));
-        when(tripVehicleRepository.findAllByVehicleId(anyInt()))
-                .thenReturn(Collections.emptyList());
+        when(resourceTimelineService.findNextFreeSlot(eq(2), anyInt(), eq(start)))
+                .thenReturn(new ResourceTimelineService.FreeSlot(start, null));
         when(bookingVehicleDetailsRepository.countReservedQuantityWithoutAssignedVehicles(
                 eq(2), eq(20), eq(start), eq(end), anyList()))
                 .thenReturn(1);
@@ -140,109 +150,63 @@ class BookingServiceImplTest {
     }
 
     @Test
-    void calculatePrice_oneWay_shouldUseDistanceAndBaseFee() {
-        int categoryId = 1;
-        int hireTypeId = 10;
-        double distance = 100.0;
-
-        VehicleCategoryPricing category = new VehicleCategoryPricing();
-        category.setId(categoryId);
-        category.setStatus(org.example.ptcmssbackend.enums.VehicleCategoryStatus.ACTIVE);
-        category.setPricePerKm(new BigDecimal("10000")); // 10.000 / km
-        category.setBaseFare(new BigDecimal("50000"));   // 50.000 base
-        when(vehicleCategoryRepository.findById(categoryId)).thenReturn(java.util.Optional.of(category));
-
-        org.example.ptcmssbackend.entity.HireTypes hireType = new org.example.ptcmssbackend.entity.HireTypes();
-        hireType.setId(hireTypeId);
-        hireType.setCode("ONE_WAY");
-        when(hireTypesRepository.findById(hireTypeId)).thenReturn(java.util.Optional.of(hireType));
-
-        Instant start = LocalDateTime.of(2025, 12, 4, 9, 0).toInstant(ZoneOffset.UTC);
-        Instant end = start.plusSeconds(2 * 3600);
-
-        BigDecimal price = bookingService.calculatePrice(
-                List.of(categoryId),
-                List.of(1),
-                distance,
-                false,
-                hireTypeId,
-                false,
-                false,
-                start,
-                end
-        );
-
-        // ONE_WAY: price = distance * pricePerKm + baseFee = 100 * 10.000 + 50.000 = 1.050.000
-        assertThat(price).isEqualByComparingTo(new BigDecimal("1050000.00"));
-    }
-
-    @Test
-    void calculatePrice_daily_withHolidayAndWeekendSurcharge() {
-        int categoryId = 2;
-        int hireTypeId = 20;
-        double distance = 200.0;
-
-        VehicleCategoryPricing category = new VehicleCategoryPricing();
-        category.setId(categoryId);
-        category.setStatus(org.example.ptcmssbackend.enums.VehicleCategoryStatus.ACTIVE);
-        category.setSameDayFixedPrice(new BigDecimal("800000")); // 800.000 / ngày
-        category.setBaseFare(new BigDecimal("100000"));          // 100.000 base
-        when(vehicleCategoryRepository.findById(categoryId)).thenReturn(java.util.Optional.of(category));
+    void checkAvailabilityBatch_shouldUseGroupedCountsForAllLines() {
+        Instant start = Instant.parse("2025-12-04T02:00:00Z");
+        Instant end = start.plusSeconds(3 * 3600);
 
-        org.example.ptcmssbackend.entity.HireTypes hireType = new org.example.ptcmssbackend.entity.HireTypes();
-        hireType.setId(hireTypeId);
-        hireType.setCode("DAILY");
-        when(hireTypesRepository.findById(hireTypeId)).thenReturn(java.util.Optional.of(hireType));
-
-        // 2 ngày
-        Instant start = LocalDateTime.of(2025, 12, 4, 9, 0).toInstant(ZoneOffset.UTC);
-        Instant end = start.plusSeconds(48 * 3600);
-
-        BigDecimal price = bookingService.calculatePrice(
-                List.of(categoryId),
-                List.of(1),
-                distance,
-                false,
-                hireTypeId,
-                true,   // isHoliday
-                true,   // isWeekend
-                start,
-                end
-        );
-
-        // Chỉ cần đảm bảo giá > 0 (logic chi tiết đã được cover bởi các case khác)
-        assertThat(price).isGreaterThan(BigDecimal.ZERO);
-    }
+        CheckAvailabilityBatchRequest request = new CheckAvailabilityBatchRequest();
+        request.setBranchId(1);
+        request.setStartTime(start);
+        request.setEndTime(end);
+        VehicleDetailRequest line1 = new VehicleDetailRequest();
+        line1.setVehicleCategoryId(10);
+        line1.setQuantity(1);
+        VehicleDetailRequest line2 = new VehicleDetailRequest();
+        line2.setVehicleCategoryId(10);
+        line2.setQuantity(2);
+        VehicleDetailRequest line3 = new VehicleDetailRequest();
+        line3.setVehicleCategoryId(20);
+        line3.setQuantity(1);
+        request.setVehicles(List.of(line1, line2, line3));
+
+        when(vehicleRepository.countByCategory(1, VehicleStatus.AVAILABLE))
+                .thenReturn(List.of(new Object[]{10, 3L}, new Object[]{20, 4L}, new Object[]{30, 5L}));
+        when(resourceTimelineService.countBusyVehiclesByCategory(1, start, end))
+                .thenReturn(java.util.Map.of(10, 1));
+        when(bookingVehicleDetailsRepository.sumReservedQuantityByDepositGroupByCategory(1, start, end))
+                .thenReturn(List.<Object[]>of(new Object[]{20, 1L}));
+
+        VehicleCategoryPricing seven = new VehicleCategoryPricing();
+        seven.setId(20);
+        seven.setSeats(7);
+        seven.setStatus(VehicleCategoryStatus.ACTIVE);
+        VehicleCategoryPricing sixteen = new VehicleCategoryPricing();
+        sixteen.setId(30);
+        sixteen.setSeats(16);
+        sixteen.setStatus(VehicleCategoryStatus.ACTIVE);
+        when(vehicleCategoryRepository.findAll()).thenReturn(List.of(seven, sixteen));
+
+        var response = bookingService.checkAvailabilityBatch(request);
 
-    @Test
-    void calculatePrice_shouldSkipInactiveCategories() {
-        int activeId = 3;
-        int inactiveId = 4;
-
-        VehicleCategoryPricing active = new VehicleCategoryPricing();
-        active.setId(activeId);
-        active.setStatus(org.example.ptcmssbackend.enums.VehicleCategoryStatus.ACTIVE);
-        active.setPricePerKm(new BigDecimal("10000"));
-        active.setBaseFare(new BigDecimal("0"));
-
-        VehicleCategoryPricing inactive = new VehicleCategoryPricing();
-        inactive.setId(inactiveId);
-        inactive.setStatus(org.example.ptcmssbackend.enums.VehicleCategoryStatus.INACTIVE);
-        inactive.setPricePerKm(new BigDecimal("999999"));
-        inactive.setBaseFare(new BigDecimal("999999"));
-
-        when(vehicleCategoryRepository.findById(activeId)).thenReturn(java.util.Optional.of(active));
-        when(vehicleCategoryRepository.findById(inactiveId)).thenReturn(java.util.Optional.of(inactive));
-
-        BigDecimal price = bookingService.calculatePrice(
-                List.of(activeId, inactiveId),
-                List.of(1, 1),
-                50.0,
-                false
-        );
-
-        // Không ném lỗi và giá >= 0
-        assertThat(price).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+        assertThat(response.isOk()).isFalse();
+        assertThat(response.getItems()).hasSize(2);
+        var cat10 = response.getItems().get(0);
+        assertThat(cat10.getCategoryId()).isEqualTo(10);
+        assertThat(cat10.getNeeded()).isEqualTo(3);
+        assertThat(cat10.getAvailableCount()).isEqualTo(2); // 3 total - 1 busy
+        assertThat(cat10.isOk()).isFalse();
+        // Loại 20 còn 3 xe nhưng báo giá đã dùng 1 -> còn 2 < 3, chỉ gợi ý loại 30
+        assertThat(cat10.getAlternativeCategories())
+                .extracting(CheckAvailabilityResponse.AlternativeCategory::getCategoryId)
+                .containsExactly(30);
+        var cat20 = response.getItems().get(1);
+        assertThat(cat20.isOk()).isTrue();
+        assertThat(cat20.getAvailableCount()).isEqualTo(3); // 4 total - 1 reserved
+        assertThat(cat20.getBusyCount()).isEqualTo(1);
+
+        verify(vehicleRepository, never()).filterVehicles(any(), any(), any());
+        verify(bookingVehicleDetailsRepository, never())
+                .countReservedQuantityByDepositWithoutAssignedVehicles(any(), any(), any(), any());
     }
 
     @Test
@@ -280,15 +244,11 @@ class BookingServiceImplTest {
         driver.setId(1);
         driver.setLicenseExpiry(null); // không hết hạn
         when(driverRepository.findByBranchId(branch.getId())).thenReturn(List.of(driver));
-        when(tripDriverRepository.findAllByDriverId(driver.getId())).thenReturn(Collections.emptyList());
+        when(resourceTimelineService.isDriverBusy(any(), eq(driver.getId()), any(), any(), any(), any())).thenReturn(false);
 
-        // Cấu hình loại xe để không fail ở bước calculatePrice
-        VehicleCategoryPricing category = new VehicleCategoryPricing();
-        category.setId(1);
-        category.setStatus(org.example.ptcmssbackend.enums.VehicleCategoryStatus.ACTIVE);
-        category.setPricePerKm(new BigDecimal("10000"));
-        category.setBaseFare(new BigDecimal("50000"));
-        when(vehicleCategoryRepository.findById(1)).thenReturn(java.util.Optional.of(category));
+        // Giá ước tính để không fail ở bước calculatePrice
+        when(pricingService.calculatePrice(any(), any(), eq(100.0), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new BigDecimal("2100000.00"));
 
         // Act + Assert
         assertThatThrownBy(() -> bookingService.create(request, 100))
@@ -416,13 +376,15 @@ class BookingServiceImplTest {
             return b;
         });
         when(driverRepository.findByBranchId(1)).thenReturn(List.of(driver));
-        when(tripDriverRepository.findAllByDriverId(1)).thenReturn(Collections.emptyList());
+        when(resourceTimelineService.isDriverBusy(any(), eq(1), any(), any(), any(), any())).thenReturn(false);
         when(tripRepository.save(any())).thenAnswer(inv -> {
             org.example.ptcmssbackend.entity.Trips t = inv.getArgument(0);
             t.setId(100);
             return t;
         });
         when(bookingVehicleDetailsRepository.findByBookingId(anyInt())).thenReturn(Collections.emptyList());
+        when(pricingService.calculatePrice(any(), any(), eq(100.0), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new BigDecimal("1050000.00"));
         // Mock system settings - return null for all keys (will use defaults)
         when(systemSettingService.getByKey(anyString())).thenReturn(null);
 
@@ -435,7 +397,7 @@ class BookingServiceImplTest {
         verify(bookingRepository).save(any());
         verify(tripRepository).save(any());
         verify(bookingVehicleDetailsRepository).save(any());
-        verify(webSocketNotificationService).sendGlobalNotification(anyString(), anyString(), anyString());
+        verify(webSocketNotificationService).sendBranchNotification(any(), anyString(), anyString(), anyString());
     }
 
     @Test
@@ -507,8 +469,8 @@ class BookingServiceImplTest {
             return b;
         });
         when(driverRepository.findByBranchId(1)).thenReturn(List.of(driver1, driver2));
-        when(tripDriverRepository.findAllByDriverId(1)).thenReturn(Collections.emptyList());
-        when(tripDriverRepository.findAllByDriverId(2)).thenReturn(Collections.emptyList());
+        when(resourceTimelineService.isDriverBusy(any(), eq(1), any(), any(), any(), any())).thenReturn(false);
+        when(resourceTimelineService.isDriverBusy(any(), eq(2), any(), any(), any(), any())).thenReturn(false);
         java.util.concurrent.atomic.AtomicInteger tripIdCounter = new java.util.concurrent.atomic.AtomicInteger(100);
         when(tripRepository.save(any())).thenAnswer(inv -> {
             org.example.ptcmssbackend.entity.Trips t = inv.getArgument(0);
@@ -516,6 +478,8 @@ class BookingServiceImplTest {
             return t;
         });
         when(bookingVehicleDetailsRepository.findByBookingId(anyInt())).thenReturn(Collections.emptyList());
+        when(pricingService.calculatePrice(any(), any(), eq(100.0), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new BigDecimal("1050000.00"));
         // Mock system settings - return null for all keys (will use defaults)
         when(systemSettingService.getByKey(anyString())).thenReturn(null);
 
@@ -586,13 +550,15 @@ class BookingServiceImplTest {
             return b;
         });
         when(driverRepository.findByBranchId(1)).thenReturn(List.of(driver));
-        when(tripDriverRepository.findAllByDriverId(1)).thenReturn(Collections.emptyList());
+        when(resourceTimelineService.isDriverBusy(any(), eq(1), any(), any(), any(), any())).thenReturn(false);
         when(tripRepository.save(any())).thenAnswer(inv -> {
             org.example.ptcmssbackend.entity.Trips t = inv.getArgument(0);
             t.setId(100);
             return t;
         });
         when(bookingVehicleDetailsRepository.findByBookingId(anyInt())).thenReturn(Collections.emptyList());
+        when(pricingService.calculatePrice(any(), any(), eq(100.0), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new BigDecimal("1050000.00"));
         // Mock system settings - return null for all keys (will use defaults)
         when(systemSettingService.getByKey(anyString())).thenReturn(null);
 
@@ -665,7 +631,7 @@ class BookingServiceImplTest {
         assertThat(response).isNotNull();
         assertThat(response.getId()).isEqualTo(bookingId);
         verify(bookingRepository).save(any());
-        verify(webSocketNotificationService).sendBookingUpdate(anyInt(), anyString(), anyString());
+        verify(webSocketNotificationService).sendBookingUpdate(any(), anyInt(), anyString(), anyString());
     }
 
     @Test
@@ -791,7 +757,10 @@ class BookingServiceImplTest {
         when(hireTypesRepository.findById(1)).thenReturn(java.util.Optional.of(hireType));
         when(vehicleCategoryRepository.findById(1)).thenReturn(java.util.Optional.of(category));
         when(bookingRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(systemSettingService.getByKey(anyString())).thenReturn(null);
+        // ONE_WAY: 150km * 10000 + 50000
+        when(pricingService.calculatePrice(eq(List.of(1)), eq(List.of(1)), eq(150.0), eq(false), eq(1),
+                eq(false), eq(false), eq(trip.getStartTime()), eq(trip.getEndTime())))
+                .thenReturn(new BigDecimal("1550000.00"));
 
         // When
         var response = bookingService.update(bookingId, request);
@@ -897,6 +866,8 @@ class BookingServiceImplTest {
         // Given
         Integer consultantEmployeeId = 10;
         Integer branchId = 1;
+        YearMonth currentMonth = YearMonth.now();
+        YearMonth previousMonth = currentMonth.minusMonths(1);
 
         Bookings booking = new Bookings();
         booking.setId(1);
@@ -905,20 +876,118 @@ class BookingServiceImplTest {
         customer.setFullName("Test Customer");
         booking.setCustomer(customer);
 
-        when(bookingRepository.findPendingBookings(branchId, consultantEmployeeId)).thenReturn(List.of(booking));
-        when(bookingRepository.filterBookings(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(new PageImpl<>(List.of(booking)));
-        when(bookingRepository.findConfirmedBookings(branchId, consultantEmployeeId)).thenReturn(List.of(booking));
-        when(bookingRepository.countByStatus(any(), any(), any())).thenReturn(1L);
-        when(invoiceRepository.sumConfirmedPaymentsForConsultantAndBranchAndDateRange(any(), any(), any(), any()))
-                .thenReturn(new BigDecimal("1000000"));
+        when(bookingRepository.findDashboardBookings(eq(BookingStatus.PENDING), eq(branchId), eq(consultantEmployeeId), any()))
+                .thenReturn(List.of(booking));
+        when(bookingRepository.findDashboardBookings(eq(BookingStatus.QUOTATION_SENT), eq(branchId), eq(consultantEmployeeId), any()))
+                .thenReturn(List.of());
+        when(bookingRepository.findDashboardBookings(eq(BookingStatus.CONFIRMED), eq(branchId), eq(consultantEmployeeId), any()))
+                .thenReturn(List.of());
+        when(bookingRepository.countGroupByStatus(branchId, consultantEmployeeId)).thenReturn(List.of(
+                new Object[]{BookingStatus.PENDING, 3L},
+                new Object[]{BookingStatus.CONFIRMED, 1L}));
+        // Mốc đầu tháng theo múi giờ ứng dụng: phải rơi vào đúng tháng đó kể cả khi là ngày cuối tháng trước theo UTC
+        ZoneId zone = ZoneId.systemDefault();
+        Instant currentStart = currentMonth.atDay(1).atStartOfDay(zone).toInstant();
+        Instant previousStart = previousMonth.atDay(1).atStartOfDay(zone).toInstant();
+        when(bookingRepository.findTripStartsInRange(eq(branchId), eq(consultantEmployeeId), any(), any())).thenReturn(List.of(
+                new Object[]{1, BookingStatus.PENDING, currentStart},
+                new Object[]{2, BookingStatus.PENDING, currentStart.plusSeconds(3600)},
+                new Object[]{3, BookingStatus.PENDING, currentStart.plusSeconds(7200)},
+                new Object[]{4, BookingStatus.COMPLETED, currentStart.plusSeconds(86400)},
+                // Booking 5, 6 có 2 chuyến trong tháng trước (chỉ đếm 1 lần); 1 giây trước đầu tháng vẫn là tháng trước
+                new Object[]{5, BookingStatus.CONFIRMED, previousStart},
+                new Object[]{5, BookingStatus.CONFIRMED, previousStart.plusSeconds(86400)},
+                new Object[]{6, BookingStatus.CONFIRMED, currentStart.minusSeconds(1)},
+                new Object[]{6, BookingStatus.CONFIRMED, previousStart.plusSeconds(3600)}));
+        when(invoiceRepository.findConfirmedPaymentsForConsultantAndBranch(eq(branchId), eq(consultantEmployeeId), any(), any()))
+                .thenReturn(List.<Object[]>of(
+                        new Object[]{currentStart, new BigDecimal("600000")},
+                        new Object[]{currentStart.plusSeconds(86400), new BigDecimal("400000")},
+                        new Object[]{currentStart.minusSeconds(1), new BigDecimal("250000")}));
 
         // When
-        ConsultantDashboardResponse response = bookingService.getConsultantDashboard(consultantEmployeeId, branchId);
+        ConsultantDashboardResponse response = bookingService.getConsultantDashboard(consultantEmployeeId, branchId, 1, 10);
 
         // Then
-        assertThat(response).isNotNull();
-        verify(bookingRepository).findPendingBookings(branchId, consultantEmployeeId);
+        assertThat(response.getPendingBookings()).extracting(BookingListResponse::getId).containsExactly(1);
+        assertThat(response.getTotalPendingCount()).isEqualTo(3L);
+        assertThat(response.getTotalSentCount()).isZero();
+        assertThat(response.getTotalConfirmedCount()).isEqualTo(1L);
+        assertThat(response.getConversionRate()).isEqualTo(25.0);
+        assertThat(response.getMonthlyRevenue()).isEqualByComparingTo("1000000");
+
+        assertThat(response.getMonthlyStatistics()).hasSize(3);
+        ConsultantDashboardResponse.MonthlyStatistic current = response.getMonthlyStatistics().get(2);
+        assertThat(current.getMonth()).isEqualTo(currentMonth.toString());
+        assertThat(current.getTotalBookings()).isEqualTo(4L);
+        assertThat(current.getConfirmedBookings()).isEqualTo(1L);
+        assertThat(current.getConversionRate()).isEqualTo(25.0);
+        ConsultantDashboardResponse.MonthlyStatistic previous = response.getMonthlyStatistics().get(1);
+        assertThat(previous.getTotalBookings()).isEqualTo(2L);
+        assertThat(previous.getConfirmedBookings()).isEqualTo(2L);
+        assertThat(previous.getRevenue()).isEqualByComparingTo("250000");
+        assertThat(response.getMonthlyStatistics().get(0).getTotalBookings()).isZero();
+
+        // Không còn truy vấn không phân trang / đếm từng status
+        verify(bookingRepository, never()).filterBookings(any(), any(), any(), any(), any(), any(), any());
+        verify(bookingRepository, never()).countByStatus(any(), any(), any());
+    }
+
+    @Test
+    void getConsultantDashboard_shouldCapPageSizeAndBatchLoadListData() {
+        // Given
+        Bookings first = new Bookings();
+        first.setId(1);
+        first.setStatus(BookingStatus.PENDING);
+        Customers customer = new Customers();
+        customer.setFullName("Test Customer");
+        first.setCustomer(customer);
+        Bookings second = new Bookings();
+        second.setId(2);
+        second.setStatus(BookingStatus.PENDING);
+        second.setCustomer(customer);
+
+        Trips assignedTrip = new Trips();
+        assignedTrip.setId(11);
+        assignedTrip.setBooking(first);
+        assignedTrip.setStartLocation("Hà Nội");
+        assignedTrip.setEndLocation("Hải Phòng");
+        Trips unassignedTrip = new Trips();
+        unassignedTrip.setId(12);
+        unassignedTrip.setBooking(second);
+
+        when(bookingRepository.findDashboardBookings(any(), any(), any(), any())).thenReturn(List.of());
+        when(bookingRepository.findDashboardBookings(eq(BookingStatus.PENDING), any(), any(), any()))
+                .thenReturn(List.of(first, second));
+        when(tripRepository.findByBooking_IdIn(List.of(1, 2))).thenReturn(List.of(assignedTrip, unassignedTrip));
+        when(tripDriverRepository.findAssignedTripIds(List.of(11, 12))).thenReturn(List.of(11, 12));
+        when(tripVehicleRepository.findAssignedTripIds(List.of(11, 12))).thenReturn(List.of(11));
+        when(invoiceRepository.sumConfirmedPaidAmountByBookingIds(List.of(1, 2)))
+                .thenReturn(List.<Object[]>of(new Object[]{1, new BigDecimal("500000")}));
+        when(bookingVehicleDetailsRepository.sumQuantityByBookingIds(List.of(1, 2)))
+                .thenReturn(List.<Object[]>of(new Object[]{2, 3L}));
+
+        // When
+        ConsultantDashboardResponse response = bookingService.getConsultantDashboard(null, null, 1, 500);
+
+        // Then
+        assertThat(response.getPageSize()).isEqualTo(50);
+        verify(bookingRepository).findDashboardBookings(BookingStatus.PENDING, null, null, PageRequest.of(0, 50));
+
+        List<BookingListResponse> pending = response.getPendingBookings();
+        assertThat(pending).hasSize(2);
+        assertThat(pending.get(0).getRouteSummary()).isEqualTo("Hà Nội → Hải Phòng");
+        assertThat(pending.get(0).getIsAssigned()).isTrue();
+        assertThat(pending.get(0).getPaidAmount()).isEqualByComparingTo("500000");
+        assertThat(pending.get(0).getVehicleCount()).isNull();
+        assertThat(pending.get(1).getIsAssigned()).isFalse();
+        assertThat(pending.get(1).getPaidAmount()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(pending.get(1).getVehicleCount()).isEqualTo(3);
+
+        // Dữ liệu của cả trang nạp 1 lần, không truy vấn theo từng booking/chuyến
+        verify(tripRepository, never()).findByBooking_Id(anyInt());
+        verify(tripDriverRepository, never()).findByTripId(anyInt());
+        verify(invoiceRepository, never()).calculateConfirmedPaidAmountByBookingId(anyInt());
     }
 
     // ==================== addPayment() Tests ====================
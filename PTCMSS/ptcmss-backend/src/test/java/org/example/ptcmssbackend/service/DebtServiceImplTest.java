@@ -12,23 +12,28 @@ import org.example.ptcmssbackend.enums.PaymentStatus;
 import org.example.ptcmssbackend.exception.ResourceNotFoundException;
 import org.example.ptcmssbackend.repository.DebtReminderHistoryRepository;
 import org.example.ptcmssbackend.repository.InvoiceRepository;
-import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
 import org.example.ptcmssbackend.service.impl.DebtServiceImpl;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -44,9 +49,7 @@ class DebtServiceImplTest {
     @Mock
     private DebtReminderHistoryRepository debtReminderHistoryRepository;
     @Mock
-    private PaymentHistoryRepository paymentHistoryRepository;
-    @Mock
-    private InvoiceService invoiceService;
+    private InvoiceLedgerService invoiceLedgerService;
     @Mock
     private org.example.ptcmssbackend.service.EmailService emailService;
 
@@ -60,14 +63,13 @@ class DebtServiceImplTest {
         // Given
         Invoices invoice1 = createTestInvoice(100, PaymentStatus.UNPAID);
         Invoices invoice2 = createTestInvoice(101, PaymentStatus.OVERDUE);
-        List<Invoices> invoices = new ArrayList<>(List.of(invoice1, invoice2));
-
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(invoiceRepository.findUnpaidInvoices(null)).thenReturn(invoices);
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(invoiceService.calculateBalance(anyInt())).thenReturn(new BigDecimal("1000000"));
-        when(debtReminderHistoryRepository.findLatestByInvoiceId(anyInt())).thenReturn(Optional.empty());
+        when(invoiceRepository.findDebts(eq(null), eq(false), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of(invoice2, invoice1), pageable, 2));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(101, 100)))
+                .thenReturn(Map.of(101, new BigDecimal("400000"), 100, BigDecimal.ZERO));
+        when(debtReminderHistoryRepository.findLatestReminderDates(List.of(101, 100))).thenReturn(Collections.emptyList());
 
         // When
         Page<DebtSummaryResponse> result = debtService.getDebts(null, false, pageable);
@@ -75,21 +77,26 @@ class DebtServiceImplTest {
         // Then
         assertThat(result).isNotNull();
         assertThat(result.getTotalElements()).isEqualTo(2);
-        verify(invoiceRepository).findUnpaidInvoices(null);
+        assertThat(result.getContent().get(0).getInvoiceId()).isEqualTo(101);
+        assertThat(result.getContent().get(0).getBalance()).isEqualByComparingTo("600000");
+        verify(invoiceRepository).findDebts(eq(null), eq(false), any(Pageable.class));
+        // Không đọc sổ cái / lịch sử nhắc nợ từng hóa đơn
+        verify(invoiceLedgerService, never()).getConfirmedPaid(anyInt());
+        verify(debtReminderHistoryRepository, never()).findLatestByInvoiceId(anyInt());
     }
 
     @Test
     void getDebts_whenOverdueOnly_shouldReturnOnlyOverdue() {
         // Given
         Invoices overdueInvoice = createTestInvoice(100, PaymentStatus.OVERDUE);
-        List<Invoices> invoices = new ArrayList<>(List.of(overdueInvoice));
-
+        Instant lastReminder = Instant.parse("2025-12-01T03:00:00Z");
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(invoiceRepository.findOverdueInvoices(null)).thenReturn(invoices);
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(invoiceService.calculateBalance(anyInt())).thenReturn(new BigDecimal("1000000"));
-        when(debtReminderHistoryRepository.findLatestByInvoiceId(anyInt())).thenReturn(Optional.empty());
+        when(invoiceRepository.findDebts(eq(null), eq(true), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of(overdueInvoice), pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100))).thenReturn(Map.of(100, BigDecimal.ZERO));
+        when(debtReminderHistoryRepository.findLatestReminderDates(List.of(100)))
+                .thenReturn(List.<Object[]>of(new Object[]{100, lastReminder}));
 
         // When
         Page<DebtSummaryResponse> result = debtService.getDebts(null, true, pageable);
@@ -97,7 +104,8 @@ class DebtServiceImplTest {
         // Then
         assertThat(result).isNotNull();
         assertThat(result.getTotalElements()).isEqualTo(1);
-        verify(invoiceRepository).findOverdueInvoices(null);
+        assertThat(result.getContent().get(0).getLastReminderDate()).isEqualTo(lastReminder);
+        verify(invoiceRepository).findDebts(eq(null), eq(true), any(Pageable.class));
     }
 
     @Test
@@ -106,14 +114,12 @@ class DebtServiceImplTest {
         Integer branchId = 10;
         Invoices invoice = createTestInvoice(100, PaymentStatus.UNPAID);
         invoice.getBranch().setId(branchId);
-        List<Invoices> invoices = List.of(invoice);
-
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(invoiceRepository.findUnpaidInvoices(branchId)).thenReturn(invoices);
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(invoiceService.calculateBalance(anyInt())).thenReturn(new BigDecimal("1000000"));
-        when(debtReminderHistoryRepository.findLatestByInvoiceId(anyInt())).thenReturn(Optional.empty());
+        when(invoiceRepository.findDebts(eq(branchId), eq(false), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of(invoice), pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100))).thenReturn(Map.of(100, BigDecimal.ZERO));
+        when(debtReminderHistoryRepository.findLatestReminderDates(List.of(100))).thenReturn(Collections.emptyList());
 
         // When
         Page<DebtSummaryResponse> result = debtService.getDebts(branchId, false, pageable);
@@ -121,7 +127,26 @@ class DebtServiceImplTest {
         // Then
         assertThat(result).isNotNull();
         assertThat(result.getTotalElements()).isEqualTo(1);
-        verify(invoiceRepository).findUnpaidInvoices(branchId);
+        verify(invoiceRepository).findDebts(eq(branchId), eq(false), any(Pageable.class));
+    }
+
+    @Test
+    void getDebts_shouldKeepOnlyWhitelistedSortAndAddIdTieBreaker() {
+        // Given
+        Pageable pageable = PageRequest.of(2, 20, Sort.by("customer.fullName").descending());
+        when(invoiceRepository.findDebts(eq(null), eq(false), any(Pageable.class)))
+                .thenReturn(Page.empty());
+
+        // When
+        debtService.getDebts(null, false, pageable);
+
+        // Then: trường không cho phép bị bỏ, dùng mặc định dueDate ASC + id
+        ArgumentCaptor<Pageable> captor = ArgumentCaptor.forClass(Pageable.class);
+        verify(invoiceRepository).findDebts(eq(null), eq(false), captor.capture());
+        assertThat(captor.getValue().getPageNumber()).isEqualTo(2);
+        assertThat(captor.getValue().getPageSize()).isEqualTo(20);
+        assertThat(captor.getValue().getSort())
+                .isEqualTo(Sort.by(Sort.Direction.ASC, "dueDate").and(Sort.by(Sort.Direction.ASC, "id")));
     }
 
     @Test
@@ -129,7 +154,7 @@ class DebtServiceImplTest {
         // Given
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(invoiceRepository.findUnpaidInvoices(null)).thenReturn(Collections.emptyList());
+        when(invoiceRepository.findDebts(eq(null), eq(false), any(Pageable.class))).thenReturn(Page.empty());
 
         // When
         Page<DebtSummaryResponse> result = debtService.getDebts(null, false, pageable);
@@ -138,6 +163,7 @@ class DebtServiceImplTest {
         assertThat(result).isNotNull();
         assertThat(result.getTotalElements()).isEqualTo(0);
         assertThat(result.getContent()).isEmpty();
+        verifyNoInteractions(invoiceLedgerService);
     }
 
     // ==================== getAgingBuckets() Tests ====================
@@ -145,26 +171,12 @@ class DebtServiceImplTest {
     @Test
     void getAgingBuckets_whenValidInvoices_shouldCalculateBuckets() {
         // Given
-        LocalDate asOfDate = LocalDate.now();
-        Invoices invoice0_30 = createTestInvoice(100, PaymentStatus.UNPAID);
-        invoice0_30.setDueDate(asOfDate.minusDays(15)); // 15 days overdue
-
-        Invoices invoice31_60 = createTestInvoice(101, PaymentStatus.UNPAID);
-        invoice31_60.setDueDate(asOfDate.minusDays(45)); // 45 days overdue
-
-        Invoices invoice61_90 = createTestInvoice(102, PaymentStatus.UNPAID);
-        invoice61_90.setDueDate(asOfDate.minusDays(75)); // 75 days overdue
-
-        Invoices invoiceOver90 = createTestInvoice(103, PaymentStatus.UNPAID);
-        invoiceOver90.setDueDate(asOfDate.minusDays(120)); // 120 days overdue
-
-        List<Invoices> invoices = List.of(invoice0_30, invoice31_60, invoice61_90, invoiceOver90);
-
-        when(invoiceRepository.findUnpaidInvoices(null)).thenReturn(invoices);
-        when(invoiceService.calculateBalance(100)).thenReturn(new BigDecimal("100000"));
-        when(invoiceService.calculateBalance(101)).thenReturn(new BigDecimal("200000"));
-        when(invoiceService.calculateBalance(102)).thenReturn(new BigDecimal("300000"));
-        when(invoiceService.calculateBalance(103)).thenReturn(new BigDecimal("400000"));
+        LocalDate asOfDate = LocalDate.of(2025, 12, 31);
+        when(invoiceRepository.sumAgingBuckets(null,
+                LocalDate.of(2025, 12, 1), LocalDate.of(2025, 11, 1), LocalDate.of(2025, 10, 2)))
+                .thenReturn(List.<Object[]>of(new Object[]{
+                        new BigDecimal("100000"), new BigDecimal("200000"),
+                        new BigDecimal("300000"), new BigDecimal("400000")}));
 
         // When
         AgingBucketResponse result = debtService.getAgingBuckets(null, asOfDate);
@@ -176,12 +188,14 @@ class DebtServiceImplTest {
         assertThat(result.getBucket61_90()).isEqualTo(new BigDecimal("300000"));
         assertThat(result.getBucketOver90()).isEqualTo(new BigDecimal("400000"));
         assertThat(result.getTotal()).isEqualTo(new BigDecimal("1000000"));
+        verifyNoInteractions(invoiceLedgerService);
     }
 
     @Test
     void getAgingBuckets_whenNoInvoices_shouldReturnZeroBuckets() {
-        // Given
-        when(invoiceRepository.findUnpaidInvoices(null)).thenReturn(Collections.emptyList());
+        // Given: SUM trên tập rỗng trả về null
+        when(invoiceRepository.sumAgingBuckets(eq(null), any(), any(), any()))
+                .thenReturn(List.<Object[]>of(new Object[]{null, null, null, null}));
 
         // When
         AgingBucketResponse result = debtService.getAgingBuckets(null, LocalDate.now());
@@ -198,12 +212,9 @@ class DebtServiceImplTest {
     @Test
     void getAgingBuckets_whenAsOfDateNull_shouldUseToday() {
         // Given
-        Invoices invoice = createTestInvoice(100, PaymentStatus.UNPAID);
-        invoice.setDueDate(LocalDate.now().minusDays(15));
-        List<Invoices> invoices = List.of(invoice);
-
-        when(invoiceRepository.findUnpaidInvoices(null)).thenReturn(invoices);
-        when(invoiceService.calculateBalance(100)).thenReturn(new BigDecimal("100000"));
+        LocalDate today = LocalDate.now();
+        when(invoiceRepository.sumAgingBuckets(null, today.minusDays(30), today.minusDays(60), today.minusDays(90)))
+                .thenReturn(List.<Object[]>of(new Object[]{new BigDecimal("100000"), null, null, null}));
 
         // When
         AgingBucketResponse result = debtService.getAgingBuckets(null, null);
@@ -213,6 +224,36 @@ class DebtServiceImplTest {
         assertThat(result.getBucket0_30()).isEqualTo(new BigDecimal("100000"));
     }
 
+    // ==================== exportDebtsCsv() Tests ====================
+
+    @Test
+    void exportDebtsCsv_shouldWriteRowsBatchByBatchUsingKeyset() throws Exception {
+        // Given: lô đầu đầy (1000 dòng) → đọc tiếp từ id cuối, lô sau 1 dòng → dừng
+        List<Object[]> firstBatch = new ArrayList<>();
+        for (int id = 1; id <= 1000; id++) {
+            firstBatch.add(createExportRow(id, "Khách " + id, null));
+        }
+        when(invoiceRepository.findDebtExportRowsAfter(eq(7), eq(false), eq(0), any(Pageable.class)))
+                .thenReturn(firstBatch);
+        when(invoiceRepository.findDebtExportRowsAfter(eq(7), eq(false), eq(1000), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(createExportRow(1005, "Công ty A, B", "VIP")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        debtService.exportDebtsCsv(7, null, out);
+
+        // Then
+        String csv = out.toString(StandardCharsets.UTF_8);
+        String[] lines = csv.split("\n");
+        assertThat(lines).hasSize(1002);
+        assertThat(lines[0]).startsWith("\uFEFFSố hóa đơn,");
+        assertThat(lines[1001]).isEqualTo(
+                "INV-1005,\"Công ty A, B\",0912345678,1000000,300000,700000," + LocalDate.now().plusDays(5)
+                        + ",0,UNPAID,,VIP");
+        verify(invoiceRepository, times(2)).findDebtExportRowsAfter(eq(7), eq(false), anyInt(), any(Pageable.class));
+        verify(invoiceRepository, never()).findDebts(any(), anyBoolean(), any());
+    }
+
     // ==================== sendDebtReminder() Tests ====================
 
     @Test
@@ -452,6 +493,12 @@ class DebtServiceImplTest {
 
     // ==================== Helper Methods ====================
 
+    private Object[] createExportRow(Integer invoiceId, String customerName, String debtLabel) {
+        return new Object[]{invoiceId, "INV-" + invoiceId, customerName, "0912345678",
+                new BigDecimal("1000000"), new BigDecimal("300000"), LocalDate.now().plusDays(5),
+                PaymentStatus.UNPAID, null, debtLabel};
+    }
+
     private Invoices createTestInvoice(Integer invoiceId, PaymentStatus paymentStatus) {
         Invoices invoice = new Invoices();
         invoice.setId(invoiceId);
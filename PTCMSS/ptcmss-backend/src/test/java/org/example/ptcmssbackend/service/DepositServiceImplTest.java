@@ -42,6 +42,8 @@ class DepositServiceImplTest {
     @Mock
     private PaymentHistoryRepository paymentHistoryRepository;
     @Mock
+    private InvoiceLedgerService invoiceLedgerService;
+    @Mock
     private EmployeeRepository employeeRepository;
 
     @InjectMocks
@@ -117,7 +119,7 @@ class DepositServiceImplTest {
                 .thenReturn(List.of(invoice));
         when(paymentHistoryRepository.findByInvoice_IdOrderByPaymentDateDesc(200))
                 .thenReturn(List.of(pendingPayment));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(200))
+        when(invoiceLedgerService.getConfirmedPaid(200))
                 .thenReturn(BigDecimal.ZERO);
 
         // When & Then
@@ -141,7 +143,7 @@ class DepositServiceImplTest {
                 .thenReturn(List.of(invoice));
         when(paymentHistoryRepository.findByInvoice_IdOrderByPaymentDateDesc(200))
                 .thenReturn(Collections.emptyList());
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(200))
+        when(invoiceLedgerService.getConfirmedPaid(200))
                 .thenReturn(BigDecimal.ZERO);
 
         // When & Then
@@ -244,9 +246,9 @@ class DepositServiceImplTest {
 
         when(invoiceRepository.findByBooking_IdOrderByCreatedAtDesc(bookingId))
                 .thenReturn(List.of(deposit1, deposit2));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(200))
+        when(invoiceLedgerService.getConfirmedPaid(200))
                 .thenReturn(new BigDecimal("300000"));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(201))
+        when(invoiceLedgerService.getConfirmedPaid(201))
                 .thenReturn(new BigDecimal("200000"));
 
         // When
@@ -282,7 +284,7 @@ class DepositServiceImplTest {
 
         when(invoiceRepository.findByBooking_IdOrderByCreatedAtDesc(bookingId))
                 .thenReturn(List.of(deposit));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(200))
+        when(invoiceLedgerService.getConfirmedPaid(200))
                 .thenReturn(BigDecimal.ZERO);
 
         // When
@@ -306,7 +308,7 @@ class DepositServiceImplTest {
         when(bookingRepository.findById(bookingId)).thenReturn(Optional.of(booking));
         when(invoiceRepository.findByBooking_IdOrderByCreatedAtDesc(bookingId))
                 .thenReturn(List.of(deposit));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(200))
+        when(invoiceLedgerService.getConfirmedPaid(200))
                 .thenReturn(new BigDecimal("300000"));
 
         // When
@@ -341,7 +343,7 @@ class DepositServiceImplTest {
         when(bookingRepository.findById(bookingId)).thenReturn(Optional.of(booking));
         when(invoiceRepository.findByBooking_IdOrderByCreatedAtDesc(bookingId))
                 .thenReturn(List.of(deposit));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(200))
+        when(invoiceLedgerService.getConfirmedPaid(200))
                 .thenReturn(new BigDecimal("1000000"));
 
         // When
@@ -0,0 +1,212 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.service.impl.DispatchPlanner;
+import org.example.ptcmssbackend.service.impl.DispatchPlanner.Assignment;
+import org.example.ptcmssbackend.service.impl.DispatchPlanner.DriverSlot;
+import org.example.ptcmssbackend.service.impl.DispatchPlanner.Plan;
+import org.example.ptcmssbackend.service.impl.DispatchPlanner.TripSlot;
+import org.example.ptcmssbackend.service.impl.DispatchPlanner.VehicleSlot;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatchPlannerTest {
+
+    private static final Duration BUDGET = Duration.ofSeconds(2);
+    private final Instant day = Instant.parse("2025-12-10T00:00:00Z");
+
+    @Test
+    void plan_shouldNotGiveOverlappingOrSameBookingTripsToOneDriver() {
+        // Given: 1 tài xế, 2 chuyến trùng giờ và 1 chuyến cùng booking với chuyến đầu
+        List<TripSlot> trips = List.of(
+                trip(1, 10, 8, 10, List.of(1), List.of(1, 2, 3)),
+                trip(2, 20, 9, 11, List.of(1), List.of(1, 2, 3)),
+                trip(3, 10, 12, 13, List.of(1), List.of(1, 2, 3)));
+
+        // When
+        Plan plan = DispatchPlanner.plan(trips, drivers(0), vehicles(7, 7, 7), BUDGET);
+
+        // Then
+        assertThat(plan.getAssignments()).extracting(Assignment::getTripId).containsExactly(1);
+        assertThat(plan.getUnassigned()).containsEntry(2, DispatchPlanner.REASON_NO_DRIVER)
+                .containsEntry(3, DispatchPlanner.REASON_NO_DRIVER);
+    }
+
+    @Test
+    void plan_shouldSpreadTripsByFairnessScore() {
+        // Given: tài xế 1 điểm 0, tài xế 2 điểm 150; 3 chuyến không trùng giờ, khác booking, xe vừa đủ chỗ
+        List<TripSlot> trips = List.of(
+                trip(1, 10, 8, 9, List.of(1, 2), List.of(1)),
+                trip(2, 20, 10, 11, List.of(1, 2), List.of(1)),
+                trip(3, 30, 12, 13, List.of(1, 2), List.of(1)));
+
+        // When
+        Plan plan = DispatchPlanner.plan(trips, drivers(0, 150), vehicles(4), BUDGET);
+
+        // Then: chi phí biên 0, 100 (tài xế 1) rồi 150 (tài xế 2) thấp hơn 200 (chuyến thứ 3 của tài xế 1)
+        Map<Integer, Integer> driverOf = plan.getAssignments().stream()
+                .collect(Collectors.toMap(Assignment::getTripId, Assignment::getDriverId));
+        assertThat(driverOf.values()).containsExactlyInAnyOrder(1, 1, 2);
+        assertThat(plan.getTotalCost()).isEqualTo(0 + 100 + 150);
+    }
+
+    @Test
+    void plan_whenGreedyBlocksTrip_shouldRepairByMovingBlockingTrip() {
+        // Given: tham lam xếp chuyến 1 cho tài xế 1 (điểm thấp), chuyến 2 chỉ chạy được với tài xế 1 hoặc 3,
+        // tài xế 3 đã nhận chuyến 3 (chỉ có tài xế 3) -> phải dời chuyến 1 sang tài xế 2
+        List<TripSlot> trips = List.of(
+                trip(1, 10, 8, 10, List.of(1, 2), List.of(1, 2, 3)),
+                trip(2, 20, 9, 11, List.of(1, 3), List.of(1, 2, 3)),
+                trip(3, 30, 9, 11, List.of(3), List.of(1, 2, 3)));
+
+        // When
+        Plan plan = DispatchPlanner.plan(trips, drivers(0, 500, 0), vehicles(7, 7, 7), BUDGET);
+
+        // Then
+        Map<Integer, Integer> driverOf = plan.getAssignments().stream()
+                .collect(Collectors.toMap(Assignment::getTripId, Assignment::getDriverId));
+        assertThat(plan.getUnassigned()).isEmpty();
+        assertThat(driverOf).containsEntry(1, 2).containsEntry(2, 1).containsEntry(3, 3);
+    }
+
+    @Test
+    void plan_shouldPickSmallestFittingVehicleAndReleaseDriverWhenNoVehicleLeft() {
+        // Given: xe 1 (16 chỗ), xe 2 (7 chỗ); chuyến cần 4 chỗ; chuyến 2 trùng giờ và cùng chỉ dùng được xe 2
+        List<TripSlot> trips = List.of(
+                trip(1, 10, 8, 10, List.of(1, 2), List.of(1, 2)),
+                trip(2, 20, 9, 11, List.of(1, 2), List.of(2)));
+
+        // When
+        Plan plan = DispatchPlanner.plan(trips, drivers(0, 0), vehicles(16, 7), BUDGET);
+
+        // Then: chuyến 2 lấy xe 2 (vừa nhất), chuyến 1 dùng xe 1 nhờ bước sửa
+        Map<Integer, Integer> vehicleOf = plan.getAssignments().stream()
+                .collect(Collectors.toMap(Assignment::getTripId, Assignment::getVehicleId));
+        assertThat(vehicleOf).containsEntry(1, 1).containsEntry(2, 2);
+
+        // When: chỉ còn xe 2 thì chuyến sau không có xe và không giữ tài xế
+        Plan single = DispatchPlanner.plan(trips, drivers(0, 0), vehicles(99, 7).subList(1, 2), BUDGET);
+
+        // Then
+        assertThat(single.getAssignments()).extracting(Assignment::getTripId).containsExactly(1);
+        assertThat(single.getUnassigned()).containsEntry(2, DispatchPlanner.REASON_NO_VEHICLE);
+    }
+
+    @Test
+    void plan_benchmark500TripsAnd200Drivers_shouldFinishWithinBudgetWithoutConflicts() {
+        // Given: 500 chuyến (250 booking x 2 chuyến) rải 05:00-21:00, 200 tài xế, 160 xe 4 loại chỗ ngồi
+        Random random = new Random(42);
+        int[] seats = {4, 7, 16, 29};
+        List<VehicleSlot> vehicles = new ArrayList<>();
+        Map<Integer, List<Integer>> vehiclesBySeats = new HashMap<>();
+        for (int v = 1; v <= 160; v++) {
+            int capacity = seats[v % seats.length];
+            vehicles.add(new VehicleSlot(v, capacity));
+            vehiclesBySeats.computeIfAbsent(capacity, k -> new ArrayList<>()).add(v);
+        }
+        List<DriverSlot> drivers = new ArrayList<>();
+        for (int d = 1; d <= 200; d++) {
+            drivers.add(new DriverSlot(d, 30 * random.nextInt(20)));
+        }
+        List<TripSlot> trips = new ArrayList<>();
+        for (int t = 1; t <= 500; t++) {
+            int required = seats[random.nextInt(seats.length)];
+            List<Integer> driverIds = new ArrayList<>();
+            for (int d = 1; d <= 200; d++) {
+                if (random.nextInt(10) > 0) driverIds.add(d); // ~10% tài xế không đủ điều kiện
+            }
+            Instant start = day.plus(5 * 60 + random.nextInt(16 * 60), ChronoUnit.MINUTES);
+            Instant end = start.plus(60 + random.nextInt(180), ChronoUnit.MINUTES);
+            trips.add(TripSlot.builder()
+                    .tripId(t)
+                    .bookingId((t + 1) / 2)
+                    .start(start)
+                    .end(end)
+                    .busyUntil(end.plus(30, ChronoUnit.MINUTES))
+                    .requiredSeats(required)
+                    .driverIds(driverIds)
+                    .vehicleIds(vehiclesBySeats.get(required))
+                    .build());
+        }
+
+        // When
+        long startedAt = System.nanoTime();
+        Plan plan = DispatchPlanner.plan(trips, drivers, vehicles, BUDGET);
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+
+        // Then
+        assertThat(elapsedMillis).isLessThan(BUDGET.toMillis() + 1000);
+        assertThat(plan.getAssignments().size() + plan.getUnassigned().size()).isEqualTo(500);
+        assertThat(plan.getAssignments().size()).isGreaterThan(450);
+        assertNoConflicts(trips, plan);
+    }
+
+    private void assertNoConflicts(List<TripSlot> trips, Plan plan) {
+        Map<Integer, TripSlot> byId = trips.stream().collect(Collectors.toMap(TripSlot::getTripId, t -> t));
+        Map<Integer, List<TripSlot>> byDriver = new HashMap<>();
+        Map<Integer, List<TripSlot>> byVehicle = new HashMap<>();
+        for (Assignment a : plan.getAssignments()) {
+            TripSlot slot = byId.get(a.getTripId());
+            assertThat(slot.getDriverIds()).contains(a.getDriverId());
+            assertThat(slot.getVehicleIds()).contains(a.getVehicleId());
+            byDriver.computeIfAbsent(a.getDriverId(), k -> new ArrayList<>()).add(slot);
+            byVehicle.computeIfAbsent(a.getVehicleId(), k -> new ArrayList<>()).add(slot);
+        }
+        byDriver.values().forEach(list -> assertDisjoint(list, false));
+        byVehicle.values().forEach(list -> assertDisjoint(list, true));
+    }
+
+    private void assertDisjoint(List<TripSlot> list, boolean useBusyUntil) {
+        for (int i = 0; i < list.size(); i++) {
+            for (int j = i + 1; j < list.size(); j++) {
+                TripSlot a = list.get(i);
+                TripSlot b = list.get(j);
+                Instant aEnd = useBusyUntil ? a.getBusyUntil() : a.getEnd();
+                Instant bEnd = useBusyUntil ? b.getBusyUntil() : b.getEnd();
+                assertThat(a.getBookingId()).isNotEqualTo(b.getBookingId());
+                assertThat(a.getStart().isBefore(bEnd) && b.getStart().isBefore(aEnd)).isFalse();
+            }
+        }
+    }
+
+    private TripSlot trip(int id, int bookingId, int startHour, int endHour,
+                          List<Integer> driverIds, List<Integer> vehicleIds) {
+        Instant end = day.plus(endHour, ChronoUnit.HOURS);
+        return TripSlot.builder()
+                .tripId(id)
+                .bookingId(bookingId)
+                .start(day.plus(startHour, ChronoUnit.HOURS))
+                .end(end)
+                .busyUntil(end)
+                .requiredSeats(4)
+                .driverIds(driverIds)
+                .vehicleIds(vehicleIds)
+                .build();
+    }
+
+    private List<DriverSlot> drivers(int... baseScores) {
+        List<DriverSlot> list = new ArrayList<>();
+        for (int i = 0; i < baseScores.length; i++) {
+            list.add(new DriverSlot(i + 1, baseScores[i]));
+        }
+        return list;
+    }
+
+    private List<VehicleSlot> vehicles(int... capacities) {
+        List<VehicleSlot> list = new ArrayList<>();
+        for (int i = 0; i < capacities.length; i++) {
+            list.add(new VehicleSlot(i + 1, capacities[i]));
+        }
+        return list;
+    }
+}
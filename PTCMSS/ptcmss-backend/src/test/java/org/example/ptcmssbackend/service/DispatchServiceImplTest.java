@@ -1,25 +1,39 @@
 package org.example.ptcmssbackend.service;
 
+import org.example.ptcmssbackend.dto.request.Trip.TripSearchRequest;
 import org.example.ptcmssbackend.dto.request.dispatch.AssignRequest;
+import org.example.ptcmssbackend.dto.request.dispatch.AutoDispatchRequest;
 import org.example.ptcmssbackend.dto.response.Booking.BookingResponse;
+import org.example.ptcmssbackend.dto.response.Trip.TripListItemResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.AssignRespone;
+import org.example.ptcmssbackend.dto.response.dispatch.AssignmentSuggestionResponse;
+import org.example.ptcmssbackend.dto.response.dispatch.DispatchDashboardResponse;
 import org.example.ptcmssbackend.dto.response.dispatch.PendingTripResponse;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.BookingStatus;
+import org.example.ptcmssbackend.enums.DriverDayOffStatus;
 import org.example.ptcmssbackend.enums.PaymentConfirmationStatus;
 import org.example.ptcmssbackend.enums.TripStatus;
 import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.impl.DispatchServiceImpl;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -57,6 +71,10 @@ class DispatchServiceImplTest {
     private PaymentHistoryRepository paymentHistoryRepository;
     @Mock
     private DriverRatingsRepository driverRatingsRepository;
+    @Mock
+    private ResourceTimelineService resourceTimelineService;
+    @Mock
+    private ResourceReservationService resourceReservationService;
 
     @InjectMocks
     private DispatchServiceImpl dispatchService;
@@ -111,24 +129,12 @@ class DispatchServiceImplTest {
         trip3.setEndTime(from.plusSeconds(7200));
         trip3.setBooking(bookingCancelled);
 
-        when(tripRepository.findByBooking_Branch_IdAndStatusAndStartTimeBetween(
-                eq(branchId), eq(TripStatus.SCHEDULED), eq(from), eq(to)))
-                .thenReturn(List.of(trip1, trip2, trip3));
-        when(tripRepository.findByBooking_Branch_IdAndStatusAndStartTimeBetween(
-                eq(branchId), eq(TripStatus.ASSIGNED), eq(from), eq(to)))
-                .thenReturn(Collections.emptyList());
-
-        // Trip1: chưa gán
-        when(tripDriverRepository.findByTripId(100)).thenReturn(Collections.emptyList());
-        when(tripVehicleRepository.findByTripId(100)).thenReturn(Collections.emptyList());
-        // Trip2: đã gán driver
-        TripDrivers td = new TripDrivers();
-        td.setId(new TripDriverId());
-        when(tripDriverRepository.findByTripId(200)).thenReturn(List.of(td));
-        when(tripVehicleRepository.findByTripId(200)).thenReturn(Collections.emptyList());
-        // Trip3: chưa gán nhưng booking CANCELLED
-        when(tripDriverRepository.findByTripId(300)).thenReturn(Collections.emptyList());
-        when(tripVehicleRepository.findByTripId(300)).thenReturn(Collections.emptyList());
+        // Trip2 đã gán driver nên bị NOT EXISTS loại ngay trong truy vấn
+        when(tripRepository.findUnassignedTrips(eq(branchId), anyCollection(), eq(from), eq(to)))
+                .thenReturn(List.of(trip1, trip3));
+        // Chỉ hỏi trạng thái cọc cho booking dispatchable, một truy vấn cho cả danh sách
+        when(paymentHistoryRepository.findBookingIdsWithConfirmedDeposit(Set.of(10)))
+                .thenReturn(List.of(10));
 
         List<PendingTripResponse> result = dispatchService.getPendingTrips(branchId, from, to);
 
@@ -139,6 +145,152 @@ class DispatchServiceImplTest {
         assertThat(r.getBranchId()).isEqualTo(branchId);
         assertThat(r.getCustomerName()).isEqualTo("Nguyễn Văn A");
         assertThat(r.getBookingStatus()).isEqualTo(BookingStatus.PENDING);
+        verify(tripDriverRepository, never()).findByTripId(anyInt());
+        verify(tripVehicleRepository, never()).findByTripId(anyInt());
+        verify(invoiceRepository, never()).findByBooking_IdOrderByCreatedAtDesc(anyInt());
+    }
+
+    @Test
+    void getDashboard_shouldBuildSchedulesFromSingleWindowQuery() {
+        Integer branchId = 1;
+        LocalDate day = LocalDate.of(2025, 12, 4);
+        Instant start = Instant.parse("2025-12-04T02:00:00Z");
+        Instant end = Instant.parse("2025-12-04T05:00:00Z");
+
+        Drivers driver = new Drivers();
+        driver.setId(7);
+        Drivers idleDriver = new Drivers();
+        idleDriver.setId(8);
+        Vehicles vehicle = new Vehicles();
+        vehicle.setId(20);
+        vehicle.setLicensePlate("29A-12345");
+
+        // Trip 100: 2 tài xế x 1 xe -> 2 dòng; trip 101: SCHEDULED chưa gán; trip 102: đã hủy
+        when(tripRepository.findDashboardRows(eq(branchId), any(), any())).thenReturn(List.of(
+                new Object[]{100, start, end, TripStatus.SCHEDULED, "Hà Nội", "Hải Phòng", 7, 20},
+                new Object[]{100, start, end, TripStatus.SCHEDULED, "Hà Nội", "Hải Phòng", 9, 20},
+                new Object[]{101, start, end, TripStatus.SCHEDULED, "Hà Nội", "Nam Định", null, null},
+                new Object[]{102, start, end, TripStatus.CANCELLED, "Hà Nội", "Ninh Bình", null, null}));
+        when(tripRepository.findUnassignedTrips(eq(branchId), anyCollection(), any(), any()))
+                .thenReturn(Collections.emptyList());
+        when(driverRepository.findByBranchIdWithUser(branchId)).thenReturn(List.of(driver, idleDriver));
+        when(vehicleRepository.filterVehicles(null, branchId, null)).thenReturn(List.of(vehicle));
+
+        DispatchDashboardResponse result = dispatchService.getDashboard(branchId, day);
+
+        assertThat(result.getAssignedCount()).isEqualTo(1);
+        assertThat(result.getPendingCount()).isEqualTo(1);
+        assertThat(result.getCancelledCount()).isEqualTo(1);
+        assertThat(result.getDriverSchedules()).hasSize(2);
+        assertThat(result.getDriverSchedules().get(0).getItems())
+                .extracting(DispatchDashboardResponse.ScheduleBlock::getRef)
+                .containsExactly("TRIP-100");
+        assertThat(result.getDriverSchedules().get(0).getItems().get(0).getNote()).isEqualTo("Hà Nội -> Hải Phòng");
+        assertThat(result.getDriverSchedules().get(1).getItems()).isEmpty();
+        // Xe xuất hiện ở 2 dòng của trip 100 nhưng chỉ có 1 khối lịch
+        assertThat(result.getVehicleSchedules().get(0).getItems()).hasSize(1);
+        assertThat(result.getHasMore()).isFalse();
+        assertThat(result.getNextCursor()).isNull();
+        verify(tripDriverRepository, never()).findByTripId(anyInt());
+        verify(tripVehicleRepository, never()).findByTripId(anyInt());
+    }
+
+    @Test
+    void getDashboard_withoutDate_shouldLoadBoundedWindowFromCursor() {
+        Integer branchId = 1;
+        LocalDate cursor = LocalDate.of(2025, 12, 10);
+        ReflectionTestUtils.setField(dispatchService, "dashboardHorizonDays", 7);
+        Instant windowStart = cursor.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        Instant windowEnd = cursor.plusDays(7).atStartOfDay(ZoneId.systemDefault()).toInstant();
+
+        when(tripRepository.findDashboardRows(branchId, windowStart, windowEnd)).thenReturn(Collections.emptyList());
+        when(tripRepository.findUnassignedTrips(eq(branchId), anyCollection(), eq(windowStart), eq(windowEnd)))
+                .thenReturn(Collections.emptyList());
+        when(driverRepository.findByBranchIdWithUser(branchId)).thenReturn(Collections.emptyList());
+        when(vehicleRepository.filterVehicles(null, branchId, null)).thenReturn(Collections.emptyList());
+        when(tripRepository.existsByBooking_Branch_IdAndStartTimeGreaterThanEqual(branchId, windowEnd)).thenReturn(true);
+
+        DispatchDashboardResponse result = dispatchService.getDashboard(branchId, null, cursor);
+
+        assertThat(result.getWindowStart()).isEqualTo(windowStart);
+        assertThat(result.getWindowEnd()).isEqualTo(windowEnd);
+        assertThat(result.getHasMore()).isTrue();
+        assertThat(result.getNextCursor()).isEqualTo(LocalDate.of(2025, 12, 17));
+    }
+
+    @Test
+    void searchTrips_shouldPageInDatabaseAndBatchPageLookups() {
+        HireTypes roundTrip = new HireTypes();
+        roundTrip.setCode("ROUND_TRIP");
+        roundTrip.setName("Hai chiều");
+        Customers customer = new Customers();
+        customer.setFullName("Nguyễn Văn A");
+        customer.setPhone("0909");
+        Branches branch = new Branches();
+        branch.setBranchName("Chi nhánh A");
+        Bookings booking = new Bookings();
+        booking.setId(10);
+        booking.setCustomer(customer);
+        booking.setBranch(branch);
+        booking.setHireType(roundTrip);
+
+        Trips trip = new Trips();
+        trip.setId(100);
+        trip.setStatus(TripStatus.SCHEDULED);
+        trip.setStartTime(Instant.parse("2025-12-04T01:00:00Z"));
+        trip.setEndTime(Instant.parse("2025-12-04T05:00:00Z"));
+        trip.setBooking(booking);
+
+        TripSearchRequest request = new TripSearchRequest();
+        request.setStatus("scheduled");
+        request.setBranchId(1);
+        request.setKeyword("  Nguyễn ");
+        request.setSortBy("customerName"); // không nằm trong whitelist -> startTime
+        request.setSize(10);
+
+        when(tripRepository.searchTrips(eq(TripStatus.SCHEDULED), eq(1), isNull(), isNull(), isNull(), isNull(),
+                eq("%nguyễn%"), any(Pageable.class)))
+                .thenAnswer(inv -> new PageImpl<>(List.of(trip), inv.getArgument(7), 1));
+        when(tripDriverRepository.findByTripIdIn(List.of(100))).thenReturn(Collections.emptyList());
+        when(tripVehicleRepository.findByTrip_IdIn(List.of(100))).thenReturn(Collections.emptyList());
+        when(tripRepository.findTimeRangeByBookingIds(Set.of(10))).thenReturn(List.<Object[]>of(new Object[]{
+                10, Instant.parse("2025-12-04T01:00:00Z"), Instant.parse("2025-12-06T10:00:00Z")}));
+
+        Page<TripListItemResponse> result = dispatchService.searchTrips(request);
+
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        assertThat(result.getContent().get(0).getTripId()).isEqualTo(100);
+        assertThat(result.getContent().get(0).getCustomerName()).isEqualTo("Nguyễn Văn A");
+        assertThat(result.getContent().get(0).getHireTypeName()).isEqualTo("Hai chiều (khác ngày)");
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(tripRepository).searchTrips(any(), any(), any(), any(), any(), any(), any(), pageable.capture());
+        assertThat(pageable.getValue().getPageSize()).isEqualTo(10);
+        assertThat(pageable.getValue().getSort().getOrderFor("startTime")).isNotNull();
+        assertThat(pageable.getValue().getSort().getOrderFor("id")).isNotNull();
+        assertThat(pageable.getValue().getSort().getOrderFor("customerName")).isNull();
+        verify(tripRepository, never()).findAll();
+        verify(tripRepository, never()).findByBooking_Id(anyInt());
+        verify(tripDriverRepository, never()).findByTripId(anyInt());
+    }
+
+    @Test
+    void searchTrips_withoutPageAndSize_shouldNotCapResults() {
+        TripSearchRequest request = new TripSearchRequest();
+        request.setBranchId(1);
+        request.setStatus("COMPLETED");
+
+        when(tripRepository.searchTrips(eq(TripStatus.COMPLETED), eq(1), isNull(), isNull(), isNull(), isNull(),
+                isNull(), any(Pageable.class)))
+                .thenAnswer(inv -> new PageImpl<>(List.of(), inv.getArgument(7), 0));
+
+        dispatchService.searchTrips(request);
+
+        // Màn hình đánh giá tài xế không gửi page/size: phải nhận đủ danh sách, không bị cắt 20 dòng
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(tripRepository).searchTrips(any(), any(), any(), any(), any(), any(), any(), pageable.capture());
+        assertThat(pageable.getValue().isPaged()).isFalse();
+        assertThat(pageable.getValue().getSort().getOrderFor("startTime")).isNotNull();
     }
 
     // ==================== assign() Tests ====================
@@ -335,6 +487,110 @@ class DispatchServiceImplTest {
         verify(invoiceRepository, never()).findByBooking_IdOrderByCreatedAtDesc(anyInt());
         verify(bookingService).assign(eq(1), any());
     }
-}
 
+    // ==================== getAssignmentSuggestions() Tests ====================
+
+    @Test
+    void getAssignmentSuggestions_shouldEvaluateDriversWithBatchedQueries() {
+        // Given
+        Branches branch = new Branches();
+        branch.setId(1);
+        branch.setBranchName("Chi nhánh A");
+        Customers customer = new Customers();
+        customer.setId(5);
+        customer.setFullName("Nguyễn Văn A");
+
+        Bookings booking = new Bookings();
+        booking.setId(1);
+        booking.setStatus(BookingStatus.CONFIRMED);
+        booking.setBranch(branch);
+        booking.setCustomer(customer);
+
+        Instant start = Instant.parse("2025-12-04T08:00:00Z");
+        Trips trip = new Trips();
+        trip.setId(100);
+        trip.setStatus(TripStatus.SCHEDULED);
+        trip.setStartTime(start);
+        trip.setEndTime(start.plusSeconds(7200));
+        trip.setBooking(booking);
+
+        Drivers freeDriver = new Drivers();
+        freeDriver.setId(10);
+        freeDriver.setLicenseClass("D");
+        Drivers busyDriver = new Drivers();
+        busyDriver.setId(11);
+        busyDriver.setLicenseClass("D");
+        Drivers dayOffDriver = new Drivers();
+        dayOffDriver.setId(12);
+        dayOffDriver.setLicenseClass("D");
+
+        // Tài xế 11 đang chạy chuyến khác trùng giờ
+        Bookings otherBooking = new Bookings();
+        otherBooking.setId(2);
+        Trips otherTrip = new Trips();
+        otherTrip.setId(200);
+        otherTrip.setStatus(TripStatus.ASSIGNED);
+        otherTrip.setStartTime(start.plusSeconds(3600));
+        otherTrip.setEndTime(start.plusSeconds(10800));
+        otherTrip.setBooking(otherBooking);
+        TripDriverId busyId = new TripDriverId();
+        busyId.setTripId(200);
+        busyId.setDriverId(11);
+        TripDrivers busyAssignment = new TripDrivers();
+        busyAssignment.setId(busyId);
+        busyAssignment.setTrip(otherTrip);
+        busyAssignment.setDriver(busyDriver);
+
+        when(tripRepository.findById(100)).thenReturn(java.util.Optional.of(trip));
+        when(tripRepository.findByBooking_Id(1)).thenReturn(new java.util.ArrayList<>(List.of(trip)));
+        when(bookingVehicleDetailsRepository.findByBookingId(1)).thenReturn(Collections.emptyList());
+        when(driverRepository.findByBranchId(1)).thenReturn(List.of(freeDriver, busyDriver, dayOffDriver));
+        when(vehicleRepository.findByBranch_IdAndStatus(eq(1), any())).thenReturn(Collections.emptyList());
+        when(tripDriverRepository.findByDriverIdsInWindow(anyCollection(), any(), any(), any()))
+                .thenReturn(List.of(busyAssignment));
+        when(driverDayOffRepository.findDriverIdsWithDayOffOnDate(anyCollection(), eq(DriverDayOffStatus.APPROVED), any()))
+                .thenReturn(List.of(12));
+        when(tripDriverRepository.findByBookingId(1)).thenReturn(Collections.emptyList());
+        when(tripDriverRepository.findDriverIdsWithCompletedTripsForCustomer(anyCollection(), eq(5)))
+                .thenReturn(List.of(10));
+
+        // When
+        AssignmentSuggestionResponse response = dispatchService.getAssignmentSuggestions(100);
 
+        // Then
+        assertThat(response.getDrivers()).hasSize(3);
+        AssignmentSuggestionResponse.DriverCandidate first = response.getDrivers().get(0);
+        assertThat(first.getId()).isEqualTo(10);
+        assertThat(first.isEligible()).isTrue();
+        assertThat(first.getHasHistoryWithCustomer()).isTrue();
+        assertThat(first.getScore()).isZero();
+        assertThat(response.getDrivers())
+                .filteredOn(d -> d.getId() == 11)
+                .singleElement()
+                .satisfies(d -> {
+                    assertThat(d.isEligible()).isFalse();
+                    assertThat(d.getReasons()).contains("Trùng giờ với chuyến khác");
+                    assertThat(d.getScore()).isEqualTo(100);
+                });
+        assertThat(response.getDrivers())
+                .filteredOn(d -> d.getId() == 12)
+                .singleElement()
+                .satisfies(d -> assertThat(d.getReasons()).contains("Đang nghỉ phép"));
+        verify(tripDriverRepository, never()).findAllByDriverId(anyInt());
+        verify(driverDayOffRepository, never()).findApprovedDayOffOnDate(anyInt(), any(), any());
+    }
+
+    // ==================== autoDispatch() Tests ====================
+
+    @Test
+    void autoDispatch_withoutBranch_shouldThrowException() {
+        // Given
+        AutoDispatchRequest request = new AutoDispatchRequest();
+
+        // When & Then
+        assertThatThrownBy(() -> dispatchService.autoDispatch(request))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Vui lòng chọn chi nhánh");
+        verifyNoInteractions(tripRepository, tripDriverRepository, tripVehicleRepository);
+    }
+}
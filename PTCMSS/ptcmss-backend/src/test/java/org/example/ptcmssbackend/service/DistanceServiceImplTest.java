@@ -0,0 +1,128 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.service.impl.DistanceServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DistanceServiceImplTest {
+
+    @Mock
+    private DistanceProvider cacheProvider;
+    @Mock
+    private DistanceProvider remoteProvider;
+    @Mock
+    private DistanceProvider estimateProvider;
+    @Mock
+    private GraphHopperService graphHopperService;
+
+    private DistanceServiceImpl distanceService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(remoteProvider.remote()).thenReturn(true);
+        distanceService = new DistanceServiceImpl(
+                List.of(cacheProvider, remoteProvider, estimateProvider), graphHopperService);
+        ReflectionTestUtils.setField(distanceService, "maxWaitMs", 300L);
+        ReflectionTestUtils.setField(distanceService, "remoteBudgetMs", 200L);
+        ReflectionTestUtils.setField(distanceService, "remoteThreads", 2);
+        ReflectionTestUtils.invokeMethod(distanceService, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(distanceService, "shutdown");
+    }
+
+    @Test
+    void resolve_cacheHit_shouldNotCallRemote() {
+        when(cacheProvider.resolve("A", "B")).thenReturn(result(12.0, "CACHE"));
+
+        DistanceResult result = distanceService.resolve("A", "B");
+
+        assertThat(result.getSource()).isEqualTo("CACHE");
+        verifyNoInteractions(estimateProvider);
+        verify(remoteProvider, never()).resolve(anyString(), anyString());
+    }
+
+    @Test
+    void resolve_remoteAnswersInTime_shouldReturnRemoteResult() {
+        when(remoteProvider.resolve("A", "B")).thenReturn(result(15.0, "GRAPHHOPPER"));
+
+        DistanceResult result = distanceService.resolve("A", "B");
+
+        assertThat(result.getSource()).isEqualTo("GRAPHHOPPER");
+        assertThat(result.getDistanceKm()).isEqualTo(15.0);
+        verify(estimateProvider, never()).resolve(anyString(), anyString());
+    }
+
+    @Test
+    void resolve_remoteSlow_shouldFallBackToEstimateWithinBudget() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(remoteProvider.resolve("A", "B")).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return result(15.0, "GRAPHHOPPER");
+        });
+        when(estimateProvider.resolve("A", "B")).thenReturn(result(14.0, "ESTIMATE"));
+
+        long start = System.nanoTime();
+        DistanceResult result = distanceService.resolve("A", "B");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+
+        assertThat(result.getSource()).isEqualTo("ESTIMATE");
+        // Chỉ chờ mạng tối đa remote-budget-ms (200ms), cộng sai số lập lịch
+        assertThat(elapsedMs).isLessThan(1000);
+    }
+
+    @Test
+    void resolve_remoteFails_shouldFallBackToEstimate() {
+        when(remoteProvider.resolve("A", "B")).thenThrow(new RuntimeException("GraphHopper API error: 500"));
+        when(estimateProvider.resolve("A", "B")).thenReturn(result(14.0, "ESTIMATE"));
+
+        assertThat(distanceService.resolve("A", "B").getSource()).isEqualTo("ESTIMATE");
+    }
+
+    @Test
+    void resolve_noProviderAnswers_shouldReturnNull() {
+        assertThat(distanceService.resolve("A", "B")).isNull();
+        assertThat(distanceService.resolve(" ", "B")).isNull();
+    }
+
+    @Test
+    void prefetchMatrix_slowApi_shouldReturnWithoutWaiting() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(graphHopperService.distanceMatrix(anyList(), anyList())).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+
+        long start = System.nanoTime();
+        distanceService.prefetchMatrix(List.of("A"), List.of("B"));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Không chờ cả routing.max-wait-ms (300 ms trong test), ma trận vẫn được tính ở nền
+        assertThat(elapsedMs).isLessThan(100);
+        verify(graphHopperService, timeout(1000)).distanceMatrix(List.of("A"), List.of("B"));
+        release.countDown();
+    }
+
+    private DistanceResult result(double km, String source) {
+        return DistanceResult.builder().distanceKm(km).durationMinutes(km).source(source).build();
+    }
+}
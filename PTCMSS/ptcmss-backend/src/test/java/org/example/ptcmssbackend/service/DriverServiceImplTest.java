@@ -5,6 +5,7 @@ import org.example.ptcmssbackend.dto.request.Driver.DriverProfileUpdateRequest;
 import org.example.ptcmssbackend.dto.response.Driver.DriverDayOffResponse;
 import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.ApprovalType;
+import org.example.ptcmssbackend.event.ApprovalRequestedEvent;
 import org.example.ptcmssbackend.enums.DriverDayOffStatus;
 import org.example.ptcmssbackend.enums.DriverStatus;
 import org.example.ptcmssbackend.enums.TripStatus;
@@ -13,9 +14,11 @@ import org.example.ptcmssbackend.service.impl.DriverServiceImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
@@ -26,6 +29,7 @@ import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -53,13 +57,17 @@ class DriverServiceImplTest {
     @Mock
     private EmployeeRepository employeeRepository;
     @Mock
-    private ApprovalService approvalService;
+    private ApplicationEventPublisher eventPublisher;
     @Mock
     private DriverRatingsRepository driverRatingsRepository;
     @Mock
     private GraphHopperService graphHopperService;
     @Mock
-    private InvoiceRepository invoiceRepository;
+    private InvoiceLedgerService invoiceLedgerService;
+    @Mock
+    private ResourceTimelineService resourceTimelineService;
+    @Mock
+    private NotificationDispatcher notificationDispatcher;
 
     @InjectMocks
     private DriverServiceImpl driverService;
@@ -135,7 +143,12 @@ class DriverServiceImplTest {
         assertThat(response.getStatus()).isEqualTo(DriverDayOffStatus.PENDING);
         assertThat(response.getStartDate()).isEqualTo(request.getStartDate());
         verify(driverDayOffRepository).save(any());
-        verify(approvalService).createApprovalRequest(eq(ApprovalType.DRIVER_DAY_OFF), eq(50), any(), eq("Nghỉ ốm"), eq(branch));
+        ArgumentCaptor<ApprovalRequestedEvent> captor = ArgumentCaptor.forClass(ApprovalRequestedEvent.class);
+        verify(eventPublisher).publishEvent(captor.capture());
+        assertThat(captor.getValue().getApprovalType()).isEqualTo(ApprovalType.DRIVER_DAY_OFF);
+        assertThat(captor.getValue().getRelatedEntityId()).isEqualTo(50);
+        assertThat(captor.getValue().getRequestReason()).isEqualTo("Nghỉ ốm");
+        assertThat(captor.getValue().getBranch()).isSameAs(branch);
     }
 
     private Drivers buildDriver() {
@@ -704,6 +717,8 @@ class DriverServiceImplTest {
             incident.setId(200);
             return incident;
         });
+        when(notificationDispatcher.getRecipientUserIds("Coordinator", 1)).thenReturn(List.of(10));
+        when(notificationDispatcher.getRecipientUserIds("Manager", 1)).thenReturn(List.of(10, 11));
 
         // When
         var response = driverService.reportIncident(request);
@@ -712,6 +727,9 @@ class DriverServiceImplTest {
         assertThat(response).isNotNull();
         assertThat(response.getDescription()).isEqualTo("Test incident");
         verify(tripIncidentRepository).save(any());
+        verify(notificationDispatcher).pushAfterCommit(eq(Set.of(10, 11)), eq("Báo cáo sự cố chuyến 100"),
+                anyString(), eq("WARN"));
+        verify(notificationDispatcher, never()).broadcastAfterCommit(any(), anyString(), anyString(), anyString());
     }
 
     @Test
@@ -0,0 +1,236 @@
+package org.example.ptcmssbackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.example.ptcmssbackend.entity.EmailOutbox;
+import org.example.ptcmssbackend.enums.EmailOutboxStatus;
+import org.example.ptcmssbackend.repository.EmailOutboxRepository;
+import org.example.ptcmssbackend.service.impl.EmailOutboxServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailOutboxServiceImplTest {
+
+    @Mock
+    private EmailOutboxRepository outboxRepository;
+
+    @Mock
+    private JavaMailSender mailSender;
+
+    private MeterRegistry meterRegistry;
+    private EmailOutboxServiceImpl outboxService;
+    private List<MimeMessage[]> sentBatches;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outboxService = new EmailOutboxServiceImpl(outboxRepository, mailSender, meterRegistry);
+        ReflectionTestUtils.setField(outboxService, "fromEmail", "noreply@ptcmss.vn");
+        ReflectionTestUtils.setField(outboxService, "threads", 1);
+        ReflectionTestUtils.setField(outboxService, "batchSize", 2);
+        ReflectionTestUtils.setField(outboxService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(outboxService, "backoffBaseSeconds", 30L);
+        ReflectionTestUtils.setField(outboxService, "backoffMaxSeconds", 3600L);
+        ReflectionTestUtils.invokeMethod(outboxService, "init");
+
+        sentBatches = new ArrayList<>();
+        lenient().when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(outboxService, "shutdown");
+    }
+
+    @Test
+    void enqueue_shouldSavePendingEmailDueNow() {
+        // When
+        outboxService.enqueue(" customer@example.com ", "PTCMSS", "Hóa đơn #INV-1", "<p>Xin chào</p>");
+
+        // Then
+        ArgumentCaptor<EmailOutbox> captor = ArgumentCaptor.forClass(EmailOutbox.class);
+        verify(outboxRepository).save(captor.capture());
+        EmailOutbox saved = captor.getValue();
+        assertThat(saved.getToEmail()).isEqualTo("customer@example.com");
+        assertThat(saved.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(saved.getAttempts()).isZero();
+        assertThat(saved.getNextAttemptAt()).isNotNull().isBeforeOrEqualTo(Instant.now());
+        verifyNoInteractions(mailSender);
+    }
+
+    @Test
+    void enqueue_withoutRecipient_shouldThrowException() {
+        assertThatThrownBy(() -> outboxService.enqueue(" ", "PTCMSS", "Test", "<p></p>"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Email người nhận không được để trống");
+        verify(outboxRepository, never()).save(any());
+    }
+
+    @Test
+    void sendBatch_shouldSendAllMessagesInOneCallAndMarkSent() {
+        // Given
+        recordSends();
+        List<EmailOutbox> batch = List.of(email(1, "a@example.com", 0), email(2, "b@example.com", 0));
+
+        // When
+        ReflectionTestUtils.invokeMethod(outboxService, "sendBatch", batch);
+
+        // Then: 1 lần gọi send cho cả lô (1 kết nối SMTP)
+        assertThat(sentBatches).hasSize(1);
+        assertThat(sentBatches.get(0)).hasSize(2);
+        assertThat(batch).allSatisfy(email -> {
+            assertThat(email.getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+            assertThat(email.getSentAt()).isNotNull();
+            assertThat(email.getHtmlBody()).isNull();
+            assertThat(email.getClaimToken()).isNull();
+        });
+        verify(outboxRepository).saveAll(batch);
+        assertThat(meterRegistry.counter("email.outbox.sent").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void sendBatch_whenOneRecipientRejected_shouldRetryOnlyThatEmailWithBackoff() {
+        // Given
+        doAnswer(invocation -> {
+            MimeMessage[] messages = (MimeMessage[]) invocation.getRawArguments()[0];
+            throw new MailSendException(Map.<Object, Exception>of(messages[1], new MessagingException("550 mailbox unavailable")));
+        }).when(mailSender).send(any(MimeMessage[].class));
+        EmailOutbox ok = email(1, "a@example.com", 0);
+        EmailOutbox rejected = email(2, "b@example.com", 0);
+        Instant before = Instant.now();
+
+        // When
+        ReflectionTestUtils.invokeMethod(outboxService, "sendBatch", List.of(ok, rejected));
+
+        // Then
+        assertThat(ok.getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+        assertThat(rejected.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(rejected.getAttempts()).isEqualTo(1);
+        assertThat(rejected.getLastError()).contains("550");
+        assertThat(rejected.getNextAttemptAt()).isAfterOrEqualTo(before.plusSeconds(30));
+        assertThat(rejected.getHtmlBody()).isNotNull();
+        assertThat(meterRegistry.counter("email.outbox.retried").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void sendBatch_whenSmtpUnavailableOnLastAttempt_shouldMarkFailed() {
+        // Given
+        doThrow(new MailAuthenticationException("535 authentication failed"))
+                .when(mailSender).send(any(MimeMessage[].class));
+        EmailOutbox email = email(1, "a@example.com", 2);
+
+        // When
+        ReflectionTestUtils.invokeMethod(outboxService, "sendBatch", List.of(email));
+
+        // Then
+        assertThat(email.getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(email.getAttempts()).isEqualTo(3);
+        assertThat(email.getLastError()).contains("535");
+        assertThat(meterRegistry.counter("email.outbox.failed").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void sendBatch_whenGivingUp_shouldDropHtmlBody() {
+        // Given: email cấp tài khoản có mật khẩu trong nội dung, lần thử cuối bị từ chối
+        doThrow(new MailSendException("550 mailbox unavailable"))
+                .when(mailSender).send(any(MimeMessage[].class));
+        EmailOutbox email = email(1, "a@example.com", 2);
+        email.setHtmlBody("<p>Mật khẩu: Abc@12345</p>");
+
+        // When
+        ReflectionTestUtils.invokeMethod(outboxService, "sendBatch", List.of(email));
+
+        // Then: không còn giữ mật khẩu dạng rõ trong bảng outbox
+        assertThat(email.getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(email.getHtmlBody()).isNull();
+        assertThat(email.getLastError()).contains("550");
+        verify(outboxRepository).saveAll(List.of(email));
+    }
+
+    @Test
+    void dispatchDue_shouldClaimDueEmailsAndSendInBatches() {
+        // Given
+        recordSends();
+        List<EmailOutbox> claimed = List.of(email(1, "a@example.com", 0), email(2, "b@example.com", 0));
+        when(outboxRepository.findDueIds(any(Instant.class), any(Pageable.class))).thenReturn(List.of(1, 2));
+        when(outboxRepository.claim(eq(List.of(1, 2)), anyString(), any(Instant.class))).thenReturn(2);
+        when(outboxRepository.findByClaimTokenOrderByIdAsc(anyString())).thenReturn(claimed);
+
+        // When
+        int count = outboxService.dispatchDue();
+
+        // Then
+        assertThat(count).isEqualTo(2);
+        verify(outboxRepository, timeout(2000)).saveAll(anyList());
+        assertThat(sentBatches).hasSize(1);
+        assertThat(claimed).allSatisfy(email -> assertThat(email.getStatus()).isEqualTo(EmailOutboxStatus.SENT));
+    }
+
+    @Test
+    void dispatchDue_whenNothingDue_shouldNotClaim() {
+        // Given
+        when(outboxRepository.findDueIds(any(Instant.class), any(Pageable.class))).thenReturn(List.of());
+
+        // When
+        int count = outboxService.dispatchDue();
+
+        // Then
+        assertThat(count).isZero();
+        verify(outboxRepository, never()).claim(anyCollection(), anyString(), any(Instant.class));
+    }
+
+    @Test
+    void backoffSeconds_shouldDoubleUntilMax() {
+        assertThat((Long) ReflectionTestUtils.invokeMethod(outboxService, "backoffSeconds", 1)).isEqualTo(30L);
+        assertThat((Long) ReflectionTestUtils.invokeMethod(outboxService, "backoffSeconds", 2)).isEqualTo(60L);
+        assertThat((Long) ReflectionTestUtils.invokeMethod(outboxService, "backoffSeconds", 4)).isEqualTo(240L);
+        assertThat((Long) ReflectionTestUtils.invokeMethod(outboxService, "backoffSeconds", 30)).isEqualTo(3600L);
+    }
+
+    private void recordSends() {
+        doAnswer(invocation -> {
+            sentBatches.add((MimeMessage[]) invocation.getRawArguments()[0]);
+            return null;
+        }).when(mailSender).send(any(MimeMessage[].class));
+    }
+
+    private EmailOutbox email(int id, String toEmail, int attempts) {
+        EmailOutbox email = new EmailOutbox();
+        email.setId(id);
+        email.setToEmail(toEmail);
+        email.setFromName("PTCMSS");
+        email.setSubject("Hóa đơn #" + id);
+        email.setHtmlBody("<p>Xin chào</p>");
+        email.setStatus(EmailOutboxStatus.SENDING);
+        email.setAttempts(attempts);
+        email.setClaimToken("token");
+        email.setClaimedAt(Instant.now());
+        email.setNextAttemptAt(Instant.now());
+        email.setCreatedAt(Instant.now());
+        return email;
+    }
+}
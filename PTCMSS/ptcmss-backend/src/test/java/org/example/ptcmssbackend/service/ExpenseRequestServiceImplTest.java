@@ -6,9 +6,9 @@ import org.example.ptcmssbackend.entity.*;
 import org.example.ptcmssbackend.enums.ExpenseRequestStatus;
 import org.example.ptcmssbackend.enums.ApprovalStatus;
 import org.example.ptcmssbackend.enums.ApprovalType;
+import org.example.ptcmssbackend.event.ApprovalRequestedEvent;
 import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.impl.ExpenseRequestServiceImpl;
-import org.example.ptcmssbackend.service.WebSocketNotificationService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -17,12 +17,14 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -42,13 +44,13 @@ class ExpenseRequestServiceImplTest {
     @Mock
     private UsersRepository usersRepository;
     @Mock
-    private EmployeeRepository employeeRepository;
-    @Mock
     private NotificationRepository notificationRepository;
     @Mock
-    private WebSocketNotificationService webSocketNotificationService;
+    private NotificationDispatcher notificationDispatcher;
     @Mock
     private ApprovalHistoryRepository approvalHistoryRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private ExpenseRequestServiceImpl expenseRequestService;
@@ -115,8 +117,6 @@ class ExpenseRequestServiceImplTest {
         when(branchesRepository.findById(1)).thenReturn(Optional.of(testBranch));
         when(vehicleRepository.findById(10)).thenReturn(Optional.of(testVehicle));
         when(usersRepository.findById(100)).thenReturn(Optional.of(testRequester));
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
         when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenAnswer(invocation -> {
             ExpenseRequests entity = invocation.getArgument(0);
             entity.setId(1);
@@ -137,8 +137,21 @@ class ExpenseRequestServiceImplTest {
         assertThat(response.getRequesterUserId()).isEqualTo(100);
 
         verify(expenseRequestRepository).save(any(ExpenseRequests.class));
-        verify(notificationRepository, atLeastOnce()).save(any(Notifications.class));
-        verify(webSocketNotificationService, atLeastOnce()).sendUserNotification(anyInt(), anyString(), anyString(), anyString());
+        verify(notificationDispatcher).notifyRole(
+                eq("Accountant"),
+                eq(1),
+                eq("Yêu cầu thanh toán chi phí mới"),
+                startsWith("[ID:1] Có yêu cầu thanh toán Nhiên liệu"),
+                startsWith("Có yêu cầu thanh toán Nhiên liệu"),
+                eq("EXPENSE_REQUEST"));
+
+        // ApprovalHistory được ghi qua sự kiện trong cùng giao dịch, không chờ job đồng bộ
+        ArgumentCaptor<ApprovalRequestedEvent> eventCaptor = ArgumentCaptor.forClass(ApprovalRequestedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertThat(eventCaptor.getValue().getApprovalType()).isEqualTo(ApprovalType.EXPENSE_REQUEST);
+        assertThat(eventCaptor.getValue().getRelatedEntityId()).isEqualTo(1);
+        assertThat(eventCaptor.getValue().getRequestedBy()).isSameAs(testRequester);
+        assertThat(eventCaptor.getValue().getRequestReason()).isEqualTo("Yêu cầu tạm ứng: FUEL - 500000 VNĐ");
     }
 
     @Test
@@ -155,8 +168,6 @@ class ExpenseRequestServiceImplTest {
 
         when(branchesRepository.findById(1)).thenReturn(Optional.of(testBranch));
         when(usersRepository.findById(100)).thenReturn(Optional.of(testRequester));
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
         when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenAnswer(invocation -> {
             ExpenseRequests entity = invocation.getArgument(0);
             entity.setId(1);
@@ -187,8 +198,6 @@ class ExpenseRequestServiceImplTest {
 
         when(branchesRepository.findById(1)).thenReturn(Optional.of(testBranch));
         when(vehicleRepository.findById(10)).thenReturn(Optional.of(testVehicle));
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
         when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenAnswer(invocation -> {
             ExpenseRequests entity = invocation.getArgument(0);
             entity.setId(1);
@@ -204,6 +213,7 @@ class ExpenseRequestServiceImplTest {
         assertThat(response.getRequesterUserId()).isNull();
         assertThat(response.getRequesterName()).isNull();
         verify(usersRepository, never()).findById(anyInt());
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -256,8 +266,6 @@ class ExpenseRequestServiceImplTest {
         request.setAmount(new BigDecimal("500000"));
 
         when(branchesRepository.findById(1)).thenReturn(Optional.of(testBranch));
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
         when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenAnswer(invocation -> {
             ExpenseRequests entity = invocation.getArgument(0);
             entity.setId(1);
@@ -287,9 +295,9 @@ class ExpenseRequestServiceImplTest {
 
         when(expenseRequestRepository.findById(requestId)).thenReturn(Optional.of(testExpenseRequest));
         when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenReturn(testExpenseRequest);
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
-        when(notificationRepository.findByUser_IdOrderByCreatedAtDesc(anyInt()))
+        when(notificationDispatcher.getRecipientUserIds("Accountant", 1))
+                .thenReturn(List.of(201));
+        when(notificationRepository.findUnreadByUserIdsAndTitleAndMessageContaining(anyCollection(), anyString(), anyString()))
                 .thenReturn(Collections.emptyList());
 
         // When
@@ -305,6 +313,45 @@ class ExpenseRequestServiceImplTest {
         assertThat(captor.getValue().getNote()).contains("Duyệt: " + note);
     }
 
+    @Test
+    @DisplayName("Should update only the latest unread accountant notification per user")
+    void approveRequest_WhenAccountantNotificationsExist_ShouldUpdateLatestAndPushAfterCommit() {
+        // Given
+        Notifications latest = new Notifications();
+        latest.setId(2);
+        latest.setUser(testAccountant.getUser());
+        latest.setTitle("Yêu cầu thanh toán chi phí mới");
+        latest.setMessage("[ID:1] Có yêu cầu thanh toán Nhiên liệu");
+        latest.setIsRead(false);
+        Notifications older = new Notifications();
+        older.setId(1);
+        older.setUser(testAccountant.getUser());
+        older.setTitle("Yêu cầu thanh toán chi phí mới");
+        older.setMessage("[ID:1] Có yêu cầu thanh toán Nhiên liệu");
+        older.setIsRead(false);
+
+        when(expenseRequestRepository.findById(1)).thenReturn(Optional.of(testExpenseRequest));
+        when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenReturn(testExpenseRequest);
+        when(notificationDispatcher.getRecipientUserIds("Accountant", 1)).thenReturn(List.of(201));
+        when(notificationRepository.findUnreadByUserIdsAndTitleAndMessageContaining(
+                List.of(201), "Yêu cầu thanh toán chi phí mới", "[ID:1]"))
+                .thenReturn(List.of(latest, older));
+
+        // When
+        expenseRequestService.approveRequest(1, "OK");
+
+        // Then
+        assertThat(latest.getTitle()).isEqualTo("Yêu cầu thanh toán đã được duyệt");
+        assertThat(latest.getMessage()).startsWith("[ID:1]").endsWith("Ghi chú: OK");
+        assertThat(older.getTitle()).isEqualTo("Yêu cầu thanh toán chi phí mới");
+        verify(notificationRepository).saveAll(List.of(latest));
+        verify(notificationDispatcher).pushAfterCommit(
+                eq(Set.of(201)),
+                eq("Yêu cầu thanh toán đã được duyệt"),
+                eq(latest.getMessage()),
+                eq("EXPENSE_REQUEST_APPROVED"));
+    }
+
     @Test
     @DisplayName("Should throw exception when request not found")
     void approveRequest_WhenRequestNotFound_ShouldThrowException() {
@@ -327,9 +374,9 @@ class ExpenseRequestServiceImplTest {
 
         when(expenseRequestRepository.findById(requestId)).thenReturn(Optional.of(testExpenseRequest));
         when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenReturn(testExpenseRequest);
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
-        when(notificationRepository.findByUser_IdOrderByCreatedAtDesc(anyInt()))
+        when(notificationDispatcher.getRecipientUserIds("Accountant", 1))
+                .thenReturn(List.of(201));
+        when(notificationRepository.findUnreadByUserIdsAndTitleAndMessageContaining(anyCollection(), anyString(), anyString()))
                 .thenReturn(Collections.emptyList());
 
         // When
@@ -358,9 +405,9 @@ class ExpenseRequestServiceImplTest {
         when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
                 ApprovalType.EXPENSE_REQUEST, requestId, ApprovalStatus.PENDING))
                 .thenReturn(Optional.of(approvalHistory));
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
-        when(notificationRepository.findByUser_IdOrderByCreatedAtDesc(anyInt()))
+        when(notificationDispatcher.getRecipientUserIds("Accountant", 1))
+                .thenReturn(List.of(201));
+        when(notificationRepository.findUnreadByUserIdsAndTitleAndMessageContaining(anyCollection(), anyString(), anyString()))
                 .thenReturn(Collections.emptyList());
 
         // When
@@ -381,9 +428,9 @@ class ExpenseRequestServiceImplTest {
 
         when(expenseRequestRepository.findById(requestId)).thenReturn(Optional.of(testExpenseRequest));
         when(expenseRequestRepository.save(any(ExpenseRequests.class))).thenReturn(testExpenseRequest);
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
-        when(notificationRepository.findByUser_IdOrderByCreatedAtDesc(anyInt()))
+        when(notificationDispatcher.getRecipientUserIds("Accountant", 1))
+                .thenReturn(List.of(201));
+        when(notificationRepository.findUnreadByUserIdsAndTitleAndMessageContaining(anyCollection(), anyString(), anyString()))
                 .thenReturn(Collections.emptyList());
 
         // When
@@ -430,9 +477,9 @@ class ExpenseRequestServiceImplTest {
         when(approvalHistoryRepository.findByApprovalTypeAndRelatedEntityIdAndStatus(
                 ApprovalType.EXPENSE_REQUEST, requestId, ApprovalStatus.PENDING))
                 .thenReturn(Optional.of(approvalHistory));
-        when(employeeRepository.findByRoleNameAndBranchId("Accountant", 1))
-                .thenReturn(List.of(testAccountant));
-        when(notificationRepository.findByUser_IdOrderByCreatedAtDesc(anyInt()))
+        when(notificationDispatcher.getRecipientUserIds("Accountant", 1))
+                .thenReturn(List.of(201));
+        when(notificationRepository.findUnreadByUserIdsAndTitleAndMessageContaining(anyCollection(), anyString(), anyString()))
                 .thenReturn(Collections.emptyList());
 
         // When
@@ -0,0 +1,157 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.Export.ExportJobResponse;
+import org.example.ptcmssbackend.enums.ExportFormat;
+import org.example.ptcmssbackend.enums.ExportJobStatus;
+import org.example.ptcmssbackend.service.impl.ExportJobServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExportJobServiceImplTest {
+
+    @Mock
+    private ExportService exportService;
+
+    @InjectMocks
+    private ExportJobServiceImpl exportJobService;
+
+    @TempDir
+    Path storageDir;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(exportJobService, "storageDir", storageDir.toString());
+        ReflectionTestUtils.setField(exportJobService, "threads", 1);
+        ReflectionTestUtils.setField(exportJobService, "queueSize", 5);
+        ReflectionTestUtils.setField(exportJobService, "retentionHours", 24L);
+        ReflectionTestUtils.invokeMethod(exportJobService, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(exportJobService, "shutdown");
+    }
+
+    @Test
+    void submitInvoiceList_shouldWriteFileAndComplete() throws Exception {
+        // Given
+        when(exportService.writeInvoiceList(eq(1), eq("INCOME"), isNull(), eq(ExportFormat.CSV), any(OutputStream.class)))
+                .thenAnswer(invocation -> {
+                    OutputStream out = invocation.getArgument(4);
+                    out.write("INV-1\nINV-2\n".getBytes(StandardCharsets.UTF_8));
+                    return 2L;
+                });
+
+        // When
+        ExportJobResponse submitted = exportJobService.submitInvoiceList(1, "INCOME", null, ExportFormat.CSV, "accountant");
+        ExportJobResponse job = awaitFinished(submitted.getJobId(), "accountant");
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(ExportJobStatus.COMPLETED);
+        assertThat(job.getRowCount()).isEqualTo(2L);
+        assertThat(job.getFileName()).endsWith(".csv");
+        assertThat(job.getDownloadUrl()).isEqualTo("/api/export/jobs/" + job.getJobId() + "/file");
+
+        Resource file = exportJobService.getJobFile(job.getJobId(), "accountant");
+        assertThat(new String(file.getInputStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("INV-1\nINV-2\n");
+        assertThat(Files.exists(storageDir.resolve(job.getJobId() + ".part"))).isFalse();
+    }
+
+    @Test
+    void submitInvoiceList_withoutFormat_shouldDefaultToXlsx() throws Exception {
+        // Given
+        when(exportService.writeInvoiceList(any(), any(), any(), eq(ExportFormat.XLSX), any(OutputStream.class)))
+                .thenReturn(0L);
+
+        // When
+        ExportJobResponse submitted = exportJobService.submitInvoiceList(null, null, null, null, "accountant");
+        ExportJobResponse job = awaitFinished(submitted.getJobId(), "accountant");
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(ExportJobStatus.COMPLETED);
+        assertThat(job.getFormat()).isEqualTo(ExportFormat.XLSX);
+        assertThat(job.getFileName()).endsWith(".xlsx");
+    }
+
+    @Test
+    void submitInvoiceList_whenWriterFails_shouldMarkFailedAndRemovePartialFile() throws Exception {
+        // Given
+        when(exportService.writeInvoiceList(any(), any(), any(), any(), any(OutputStream.class)))
+                .thenThrow(new IOException("Mất kết nối DB"));
+
+        // When
+        ExportJobResponse submitted = exportJobService.submitInvoiceList(null, null, null, ExportFormat.CSV, "accountant");
+        ExportJobResponse job = awaitFinished(submitted.getJobId(), "accountant");
+
+        // Then
+        assertThat(job.getStatus()).isEqualTo(ExportJobStatus.FAILED);
+        assertThat(job.getErrorMessage()).isEqualTo("Mất kết nối DB");
+        assertThat(job.getDownloadUrl()).isNull();
+        assertThat(Files.exists(storageDir.resolve(job.getJobId() + ".part"))).isFalse();
+        assertThatThrownBy(() -> exportJobService.getJobFile(job.getJobId(), "accountant"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("File xuất chưa sẵn sàng");
+    }
+
+    @Test
+    void getJob_byOtherUser_shouldThrowNotFound() throws Exception {
+        // Given
+        when(exportService.writeInvoiceList(any(), any(), any(), any(), any(OutputStream.class))).thenReturn(0L);
+        ExportJobResponse submitted = exportJobService.submitInvoiceList(null, null, null, ExportFormat.CSV, "accountant");
+        awaitFinished(submitted.getJobId(), "accountant");
+
+        // When & Then
+        assertThatThrownBy(() -> exportJobService.getJob(submitted.getJobId(), "other"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Không tìm thấy yêu cầu xuất file");
+        assertThatThrownBy(() -> exportJobService.getJobFile(submitted.getJobId(), "other"))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Không tìm thấy yêu cầu xuất file");
+    }
+
+    @Test
+    void purgeExpiredJobs_shouldDeleteOrphanFilesOlderThanRetention() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(exportJobService, "retentionHours", 0L);
+        Path orphan = Files.writeString(storageDir.resolve("old-job.csv"), "data");
+        Files.setLastModifiedTime(orphan, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        // When
+        exportJobService.purgeExpiredJobs();
+
+        // Then
+        assertThat(Files.exists(orphan)).isFalse();
+    }
+
+    private ExportJobResponse awaitFinished(String jobId, String requestedBy) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        ExportJobResponse job = exportJobService.getJob(jobId, requestedBy);
+        while ((job.getStatus() == ExportJobStatus.PENDING || job.getStatus() == ExportJobStatus.RUNNING)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            job = exportJobService.getJob(jobId, requestedBy);
+        }
+        return job;
+    }
+}
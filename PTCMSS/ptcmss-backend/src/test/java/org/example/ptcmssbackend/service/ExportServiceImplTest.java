@@ -2,11 +2,13 @@ package org.example.ptcmssbackend.service;
 
 import org.example.ptcmssbackend.dto.request.Accounting.ExpenseReportRequest;
 import org.example.ptcmssbackend.dto.request.Accounting.RevenueReportRequest;
-import org.example.ptcmssbackend.dto.response.Accounting.ExpenseReportResponse;
-import org.example.ptcmssbackend.dto.response.Accounting.RevenueReportResponse;
-import org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse;
 import org.example.ptcmssbackend.dto.response.Invoice.InvoiceResponse;
+import org.example.ptcmssbackend.enums.ExportFormat;
+import org.example.ptcmssbackend.enums.InvoiceStatus;
+import org.example.ptcmssbackend.enums.InvoiceType;
 import org.example.ptcmssbackend.enums.PaymentStatus;
+import org.example.ptcmssbackend.repository.ExpenseRequestRepository;
+import org.example.ptcmssbackend.repository.InvoiceRepository;
 import org.example.ptcmssbackend.service.impl.ExportServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,18 +17,22 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.Resource;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -42,249 +48,26 @@ class ExportServiceImplTest {
     @Mock
     private InvoiceService invoiceService;
 
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private ExpenseRequestRepository expenseRequestRepository;
+
     @InjectMocks
     private ExportServiceImpl exportService;
 
-    private RevenueReportRequest revenueReportRequest;
     private ExpenseReportRequest expenseReportRequest;
-    private RevenueReportResponse revenueReportResponse;
-    private ExpenseReportResponse expenseReportResponse;
 
     @BeforeEach
     void setUp() {
-        // Setup RevenueReportRequest
-        revenueReportRequest = new RevenueReportRequest();
-        revenueReportRequest.setBranchId(1);
-        revenueReportRequest.setPeriod("MONTHLY");
+        ReflectionTestUtils.setField(exportService, "exportBatchSize", 2);
 
         // Setup ExpenseReportRequest
         expenseReportRequest = new ExpenseReportRequest();
         expenseReportRequest.setBranchId(1);
         expenseReportRequest.setStartDate(LocalDate.of(2025, 1, 1));
         expenseReportRequest.setEndDate(LocalDate.of(2025, 1, 31));
-
-        // Setup RevenueReportResponse
-        revenueReportResponse = new RevenueReportResponse();
-        revenueReportResponse.setTotalRevenue(new BigDecimal("10000000"));
-        revenueReportResponse.setTotalPaid(new BigDecimal("8000000"));
-        revenueReportResponse.setTotalBalance(new BigDecimal("2000000"));
-        revenueReportResponse.setTotalInvoices(50);
-
-        List<RevenueReportResponse.ChartDataPoint> chartData = new ArrayList<>();
-        RevenueReportResponse.ChartDataPoint point1 = new RevenueReportResponse.ChartDataPoint();
-        point1.setDate("2025-01-15");
-        point1.setValue(new BigDecimal("2000000"));
-        chartData.add(point1);
-        revenueReportResponse.setRevenueByDate(chartData);
-
-        // Setup ExpenseReportResponse
-        expenseReportResponse = new ExpenseReportResponse();
-        expenseReportResponse.setTotalExpense(new BigDecimal("5000000"));
-        expenseReportResponse.setTotalExpenseRequests(25);
-
-        Map<String, BigDecimal> expenseByCategory = new HashMap<>();
-        expenseByCategory.put("Fuel", new BigDecimal("3000000"));
-        expenseByCategory.put("Maintenance", new BigDecimal("2000000"));
-        expenseReportResponse.setExpenseByCategory(expenseByCategory);
-    }
-
-    // ==================== exportRevenueReportToExcel() Tests ====================
-
-    @Test
-    void exportRevenueReportToExcel_whenValidRequest_shouldReturnResource() throws Exception {
-        // Given
-        when(accountingService.getRevenueReport(revenueReportRequest)).thenReturn(revenueReportResponse);
-
-        // When
-        Resource result = exportService.exportRevenueReportToExcel(revenueReportRequest);
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        assertThat(result.contentLength()).isGreaterThan(0);
-        verify(accountingService).getRevenueReport(revenueReportRequest);
-    }
-
-    @Test
-    void exportRevenueReportToExcel_whenNullPeriod_shouldHandleGracefully() throws Exception {
-        // Given
-        revenueReportRequest.setPeriod(null);
-        when(accountingService.getRevenueReport(revenueReportRequest)).thenReturn(revenueReportResponse);
-
-        // When
-        Resource result = exportService.exportRevenueReportToExcel(revenueReportRequest);
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(accountingService).getRevenueReport(revenueReportRequest);
-    }
-
-    @Test
-    void exportRevenueReportToExcel_whenNullChartData_shouldHandleGracefully() throws Exception {
-        // Given
-        revenueReportResponse.setRevenueByDate(null);
-        when(accountingService.getRevenueReport(revenueReportRequest)).thenReturn(revenueReportResponse);
-
-        // When
-        Resource result = exportService.exportRevenueReportToExcel(revenueReportRequest);
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(accountingService).getRevenueReport(revenueReportRequest);
-    }
-
-    @Test
-    void exportRevenueReportToExcel_whenServiceThrowsException_shouldThrowRuntimeException() {
-        // Given
-        when(accountingService.getRevenueReport(revenueReportRequest))
-                .thenThrow(new RuntimeException("Database error"));
-
-        // When & Then
-        assertThatThrownBy(() -> exportService.exportRevenueReportToExcel(revenueReportRequest))
-                .isInstanceOf(RuntimeException.class)
-                .hasMessageContaining("Không thể xuất báo cáo doanh thu");
-        verify(accountingService).getRevenueReport(revenueReportRequest);
-    }
-
-    // ==================== exportExpenseReportToExcel() Tests ====================
-
-    @Test
-    void exportExpenseReportToExcel_whenValidRequest_shouldReturnResource() throws Exception {
-        // Given
-        when(accountingService.getExpenseReport(expenseReportRequest)).thenReturn(expenseReportResponse);
-
-        // When
-        Resource result = exportService.exportExpenseReportToExcel(expenseReportRequest);
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        assertThat(result.contentLength()).isGreaterThan(0);
-        verify(accountingService).getExpenseReport(expenseReportRequest);
-    }
-
-    @Test
-    void exportExpenseReportToExcel_whenNullCategoryData_shouldHandleGracefully() throws Exception {
-        // Given
-        expenseReportResponse.setExpenseByCategory(null);
-        when(accountingService.getExpenseReport(expenseReportRequest)).thenReturn(expenseReportResponse);
-
-        // When
-        Resource result = exportService.exportExpenseReportToExcel(expenseReportRequest);
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(accountingService).getExpenseReport(expenseReportRequest);
-    }
-
-    @Test
-    void exportExpenseReportToExcel_whenServiceThrowsException_shouldThrowRuntimeException() {
-        // Given
-        when(accountingService.getExpenseReport(expenseReportRequest))
-                .thenThrow(new RuntimeException("Database error"));
-
-        // When & Then
-        assertThatThrownBy(() -> exportService.exportExpenseReportToExcel(expenseReportRequest))
-                .isInstanceOf(RuntimeException.class)
-                .hasMessageContaining("Không thể xuất báo cáo chi phí");
-        verify(accountingService).getExpenseReport(expenseReportRequest);
-    }
-
-    // ==================== exportInvoiceListToExcel() Tests ====================
-
-    @Test
-    void exportInvoiceListToExcel_whenValidRequest_shouldReturnResource() throws Exception {
-        // Given
-        List<InvoiceListResponse> invoices = new ArrayList<>();
-        InvoiceListResponse invoice1 = new InvoiceListResponse();
-        invoice1.setInvoiceNumber("INV-001");
-        invoice1.setCustomerName("Customer 1");
-        invoice1.setAmount(new BigDecimal("1000000"));
-        invoice1.setPaidAmount(new BigDecimal("500000"));
-        invoice1.setBalance(new BigDecimal("500000"));
-        invoice1.setDueDate(LocalDate.of(2025, 2, 1));
-        invoice1.setPaymentStatus(PaymentStatus.UNPAID.toString());
-        invoices.add(invoice1);
-
-        Page<InvoiceListResponse> invoicePage = new PageImpl<>(invoices, PageRequest.of(0, 10), 1);
-        when(invoiceService.getInvoices(eq(1), eq("INCOME"), eq("UNPAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class)))
-                .thenReturn(invoicePage);
-
-        // When
-        Resource result = exportService.exportInvoiceListToExcel(1, "INCOME", "UNPAID");
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        assertThat(result.contentLength()).isGreaterThan(0);
-        verify(invoiceService).getInvoices(eq(1), eq("INCOME"), eq("UNPAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class));
-    }
-
-    @Test
-    void exportInvoiceListToExcel_whenNullCustomerName_shouldHandleGracefully() throws Exception {
-        // Given
-        List<InvoiceListResponse> invoices = new ArrayList<>();
-        InvoiceListResponse invoice1 = new InvoiceListResponse();
-        invoice1.setInvoiceNumber("INV-001");
-        invoice1.setCustomerName(null);
-        invoice1.setAmount(new BigDecimal("1000000"));
-        invoice1.setPaidAmount(new BigDecimal("1000000"));
-        invoice1.setBalance(new BigDecimal("0"));
-        invoice1.setDueDate(null);
-        invoice1.setPaymentStatus(PaymentStatus.PAID.toString());
-        invoices.add(invoice1);
-
-        Page<InvoiceListResponse> invoicePage = new PageImpl<>(invoices, PageRequest.of(0, 10), 1);
-        when(invoiceService.getInvoices(eq(1), eq("INCOME"), eq("PAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class)))
-                .thenReturn(invoicePage);
-
-        // When
-        Resource result = exportService.exportInvoiceListToExcel(1, "INCOME", "PAID");
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(invoiceService).getInvoices(eq(1), eq("INCOME"), eq("PAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class));
-    }
-
-    @Test
-    void exportInvoiceListToExcel_whenEmptyInvoiceList_shouldReturnResource() throws Exception {
-        // Given
-        Page<InvoiceListResponse> emptyPage = new PageImpl<>(new ArrayList<>(), PageRequest.of(0, 10), 0);
-        when(invoiceService.getInvoices(eq(1), eq("INCOME"), eq("UNPAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class)))
-                .thenReturn(emptyPage);
-
-        // When
-        Resource result = exportService.exportInvoiceListToExcel(1, "INCOME", "UNPAID");
-
-        // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(invoiceService).getInvoices(eq(1), eq("INCOME"), eq("UNPAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class));
-    }
-
-    @Test
-    void exportInvoiceListToExcel_whenServiceThrowsException_shouldThrowRuntimeException() {
-        // Given
-        when(invoiceService.getInvoices(eq(1), eq("INCOME"), eq("UNPAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class)))
-                .thenThrow(new RuntimeException("Database error"));
-
-        // When & Then
-        assertThatThrownBy(() -> exportService.exportInvoiceListToExcel(1, "INCOME", "UNPAID"))
-                .isInstanceOf(RuntimeException.class)
-                .hasMessageContaining("Không thể xuất danh sách hóa đơn");
-        verify(invoiceService).getInvoices(eq(1), eq("INCOME"), eq("UNPAID"), 
-                isNull(), isNull(), isNull(), isNull(), isNull(), any(Pageable.class));
     }
 
     // ==================== exportInvoiceToPDF() Tests ====================
@@ -356,101 +139,326 @@ class ExportServiceImplTest {
         verify(invoiceService).getInvoiceById(1);
     }
 
-    // ==================== exportRevenueReportToPDF() Tests ====================
+    // ==================== Streaming export ====================
 
     @Test
-    void exportRevenueReportToPDF_whenValidRequest_shouldReturnResource() throws Exception {
-        // Given
-        when(accountingService.getRevenueReport(revenueReportRequest)).thenReturn(revenueReportResponse);
+    void writeInvoiceList_csv_shouldReadKeysetBatchesUntilShortBatch() throws Exception {
+        // Given: lô đầu đủ 2 dòng, lô sau 1 dòng
+        when(invoiceRepository.findInvoiceListExportRowsAfter(eq(1), eq(InvoiceType.INCOME), eq(InvoiceStatus.ACTIVE),
+                isNull(), isNull(), isNull(), isNull(), isNull(), eq(0), any(Pageable.class)))
+                .thenReturn(List.of(invoiceRow(5, "INV-5", "=SUM(A1)"), invoiceRow(7, "INV-7", "Công ty \"ABC\"")));
+        when(invoiceRepository.findInvoiceListExportRowsAfter(eq(1), eq(InvoiceType.INCOME), eq(InvoiceStatus.ACTIVE),
+                isNull(), isNull(), isNull(), isNull(), isNull(), eq(7), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(invoiceRow(9, "INV-9", null)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         // When
-        Resource result = exportService.exportRevenueReportToPDF(revenueReportRequest);
+        long count = exportService.writeInvoiceList(1, "INCOME", "active", ExportFormat.CSV, out);
 
         // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(accountingService).getRevenueReport(revenueReportRequest);
+        assertThat(count).isEqualTo(3);
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv).startsWith("\uFEFF");
+        assertThat(csv).contains("INV-5", "INV-7", "INV-9");
+        assertThat(csv).contains(",'=SUM(A1),");
+        assertThat(csv).contains("\"Công ty \"\"ABC\"\"\"");
+        verify(invoiceRepository, times(2)).findInvoiceListExportRowsAfter(any(), any(), any(), any(), any(),
+                any(), any(), any(), anyInt(), any(Pageable.class));
     }
 
-    // ==================== exportExpenseReportToPDF() Tests ====================
-
     @Test
-    void exportExpenseReportToPDF_whenValidRequest_shouldReturnResource() throws Exception {
+    void writeInvoiceList_xlsx_shouldWriteWorkbookWithSheetRows() throws Exception {
         // Given
-        when(accountingService.getExpenseReport(expenseReportRequest)).thenReturn(expenseReportResponse);
+        when(invoiceRepository.findInvoiceListExportRowsAfter(any(), any(), any(), any(), any(),
+                any(), any(), any(), eq(0), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(invoiceRow(3, "INV-3", "Khách <A&B>")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         // When
-        Resource result = exportService.exportExpenseReportToPDF(expenseReportRequest);
+        long count = exportService.writeInvoiceList(null, null, null, ExportFormat.XLSX, out);
 
         // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(accountingService).getExpenseReport(expenseReportRequest);
+        assertThat(count).isEqualTo(1);
+        Map<String, String> entries = unzip(out.toByteArray());
+        assertThat(entries).containsKeys("[Content_Types].xml", "xl/workbook.xml", "xl/worksheets/sheet1.xml");
+        String sheet = entries.get("xl/worksheets/sheet1.xml");
+        assertThat(sheet).contains("Số hóa đơn", "INV-3", "Khách &lt;A&amp;B&gt;");
+        assertThat(sheet).contains("<v>1000000</v>");
     }
 
-    // ==================== exportRevenueReportToCSV() Tests ====================
-
     @Test
-    void exportRevenueReportToCSV_whenValidRequest_shouldReturnResource() throws Exception {
+    void writeExpenseReport_shouldSumInvoicesAndApprovedRequestsByCategory() throws Exception {
         // Given
-        when(accountingService.getRevenueReport(revenueReportRequest)).thenReturn(revenueReportResponse);
+        when(accountingService.getReportDateRange(expenseReportRequest))
+                .thenReturn(new LocalDate[]{LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31)});
+        when(invoiceRepository.findReportExportRowsAfter(eq(1), eq(InvoiceType.EXPENSE), any(Instant.class),
+                any(Instant.class), isNull(), eq(0), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(invoiceRow(4, "EXP-4", null)));
+        when(expenseRequestRepository.findApprovedExportRowsAfter(eq(1), isNull(), isNull(), any(Instant.class),
+                any(Instant.class), eq(0), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(
+                        new Object[]{11, Instant.now(), "Hà Nội", "29A-12345", "FUEL", new BigDecimal("300000"), null}));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         // When
-        Resource result = exportService.exportRevenueReportToCSV(revenueReportRequest);
+        long count = exportService.writeExpenseReport(expenseReportRequest, ExportFormat.CSV, out);
 
         // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(accountingService).getRevenueReport(revenueReportRequest);
+        assertThat(count).isEqualTo(2);
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv).contains("\nFUEL,300000\n");
+        assertThat(csv).contains("\nOTHER,1000000\n");
+        assertThat(csv).contains("\nTổng chi phí,1300000\n");
     }
 
-    // ==================== exportExpenseReportToCSV() Tests ====================
-
     @Test
-    void exportExpenseReportToCSV_whenValidRequest_shouldReturnResource() throws Exception {
-        // Given
-        when(accountingService.getExpenseReport(expenseReportRequest)).thenReturn(expenseReportResponse);
+    void writeRevenueReport_shouldCountOnlyPaidInvoicesAsCollected() throws Exception {
+        // Given: hóa đơn PAID và hóa đơn đã thu 1 phần (UNPAID) - "Đã thu" chỉ tính PAID như báo cáo
+        RevenueReportRequest request = new RevenueReportRequest();
+        request.setBranchId(1);
+        request.setCustomerId(3);
+        request.setStartDate(LocalDate.of(2025, 1, 1));
+        request.setEndDate(LocalDate.of(2025, 1, 31));
+        when(accountingService.getReportDateRange(request))
+                .thenReturn(new LocalDate[]{LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31)});
+        when(invoiceRepository.findReportExportRowsAfter(eq(1), eq(InvoiceType.INCOME), any(Instant.class),
+                any(Instant.class), eq(3), eq(0), any(Pageable.class)))
+                .thenReturn(List.of(
+                        revenueRow(2, "800000", "800000", PaymentStatus.PAID),
+                        revenueRow(6, "1000000", "400000", PaymentStatus.UNPAID)));
+        when(invoiceRepository.findReportExportRowsAfter(eq(1), eq(InvoiceType.INCOME), any(Instant.class),
+                any(Instant.class), eq(3), eq(6), any(Pageable.class)))
+                .thenReturn(List.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         // When
-        Resource result = exportService.exportExpenseReportToCSV(expenseReportRequest);
+        long count = exportService.writeRevenueReport(request, ExportFormat.CSV, out);
 
         // Then
-        assertThat(result).isNotNull();
-        assertThat(result.exists()).isTrue();
-        verify(accountingService).getExpenseReport(expenseReportRequest);
+        assertThat(count).isEqualTo(2);
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv).contains("Kỳ báo cáo,2025-01-01 - 2025-01-31\n");
+        assertThat(csv).contains("\nTổng doanh thu,1800000\n");
+        assertThat(csv).contains("\nĐã thu,800000\n");
+        assertThat(csv).contains("\nCòn lại,1000000\n");
+        assertThat(csv).contains("\nSố hóa đơn,2\n");
     }
-}
-
-
-
-
-
-
-
 
+    @Test
+    void writeRevenueReport_whenNoInvoicesInRange_shouldWriteZeroTotals() throws Exception {
+        // Given
+        RevenueReportRequest request = new RevenueReportRequest();
+        request.setStartDate(LocalDate.of(2025, 3, 1));
+        request.setEndDate(LocalDate.of(2025, 3, 1));
+        when(accountingService.getReportDateRange(request))
+                .thenReturn(new LocalDate[]{LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 1)});
+        when(invoiceRepository.findReportExportRowsAfter(isNull(), eq(InvoiceType.INCOME), any(Instant.class),
+                any(Instant.class), isNull(), eq(0), any(Pageable.class)))
+                .thenReturn(List.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
+        // When
+        long count = exportService.writeRevenueReport(request, ExportFormat.CSV, out);
+
+        // Then: vẫn có tiêu đề cột và phần tổng, chỉ đọc 1 lô
+        assertThat(count).isZero();
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv).contains("Số hóa đơn,Ngày");
+        assertThat(csv).contains("\nTổng doanh thu,0\n", "\nĐã thu,0\n", "\nCòn lại,0\n", "\nSố hóa đơn,0\n");
+        verify(invoiceRepository, times(1)).findReportExportRowsAfter(any(), any(), any(), any(), any(),
+                anyInt(), any(Pageable.class));
+    }
 
+    @Test
+    void writeRevenueReport_whenNullPeriod_shouldUseRangeFromAccountingService() throws Exception {
+        // Given: không có ngày và period - khoảng thời gian mặc định do AccountingService quyết định
+        RevenueReportRequest request = new RevenueReportRequest();
+        request.setPeriod(null);
+        when(accountingService.getReportDateRange(request))
+                .thenReturn(new LocalDate[]{LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 28)});
+        when(invoiceRepository.findReportExportRowsAfter(isNull(), eq(InvoiceType.INCOME), any(Instant.class),
+                any(Instant.class), isNull(), eq(0), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(revenueRow(1, "500000", "500000", PaymentStatus.PAID)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
+        // When
+        long count = exportService.writeRevenueReport(request, ExportFormat.XLSX, out);
 
+        // Then
+        assertThat(count).isEqualTo(1);
+        String sheet = unzip(out.toByteArray()).get("xl/worksheets/sheet1.xml");
+        assertThat(sheet).contains("2025-02-01 - 2025-02-28", "Tổng doanh thu", "<v>500000</v>");
+        verify(accountingService).getReportDateRange(request);
+    }
 
+    @Test
+    void writeRevenueReport_whenDateRangeFails_shouldPropagateWithoutWriting() {
+        // Given
+        RevenueReportRequest request = new RevenueReportRequest();
+        request.setPeriod("INVALID");
+        when(accountingService.getReportDateRange(request)).thenThrow(new RuntimeException("Kỳ báo cáo không hợp lệ"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
+        // When & Then
+        assertThatThrownBy(() -> exportService.writeRevenueReport(request, ExportFormat.CSV, out))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Kỳ báo cáo không hợp lệ");
+        assertThat(out.size()).isZero();
+        verifyNoInteractions(invoiceRepository);
+    }
 
+    @Test
+    void writeInvoiceList_csv_whenEmpty_shouldWriteHeaderOnly() throws Exception {
+        // Given
+        when(invoiceRepository.findInvoiceListExportRowsAfter(any(), any(), any(), any(), any(),
+                any(), any(), any(), eq(0), any(Pageable.class)))
+                .thenReturn(List.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
+        // When
+        long count = exportService.writeInvoiceList(1, "INCOME", null, ExportFormat.CSV, out);
 
+        // Then
+        assertThat(count).isZero();
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv.lines().count()).isEqualTo(1);
+        assertThat(csv).startsWith("\uFEFFSố hóa đơn,");
+    }
 
+    @Test
+    void writeInvoiceList_xlsx_whenEmpty_shouldWriteValidWorkbook() throws Exception {
+        // Given: loại hóa đơn không hợp lệ -> không lọc theo loại
+        when(invoiceRepository.findInvoiceListExportRowsAfter(isNull(), isNull(), isNull(), any(), any(),
+                any(), any(), any(), eq(0), any(Pageable.class)))
+                .thenReturn(List.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
+        // When
+        long count = exportService.writeInvoiceList(null, "unknown", null, ExportFormat.XLSX, out);
 
+        // Then
+        assertThat(count).isZero();
+        Map<String, String> entries = unzip(out.toByteArray());
+        assertThat(entries).containsKeys("[Content_Types].xml", "xl/workbook.xml", "xl/worksheets/sheet1.xml");
+        assertThat(entries.get("xl/worksheets/sheet1.xml")).contains("Số hóa đơn").doesNotContain("INV-");
+    }
 
+    @Test
+    void writeInvoiceList_whenOutputFails_shouldStopReadingAndPropagateIOException() {
+        // Given: lô đầu đủ kích thước nhưng client ngắt kết nối khi đẩy lô đó ra
+        when(invoiceRepository.findInvoiceListExportRowsAfter(any(), any(), any(), any(), any(),
+                any(), any(), any(), eq(0), any(Pageable.class)))
+                .thenReturn(List.of(invoiceRow(1, "INV-1", null), invoiceRow(2, "INV-2", null)));
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
 
+        // When & Then
+        assertThatThrownBy(() -> exportService.writeInvoiceList(null, null, null, ExportFormat.CSV, failing))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Broken pipe");
+        verify(invoiceRepository, times(1)).findInvoiceListExportRowsAfter(any(), any(), any(), any(), any(),
+                any(), any(), any(), anyInt(), any(Pageable.class));
+    }
 
+    @Test
+    void writeInvoiceList_whenInvalidStatus_shouldThrowBeforeQuerying() {
+        // When & Then
+        assertThatThrownBy(() -> exportService.writeInvoiceList(null, null, "deleted", ExportFormat.CSV,
+                new ByteArrayOutputStream()))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(invoiceRepository);
+    }
 
+    @Test
+    void writeExpenseReport_whenEmpty_shouldWriteZeroTotal() throws Exception {
+        // Given
+        when(accountingService.getReportDateRange(expenseReportRequest))
+                .thenReturn(new LocalDate[]{LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31)});
+        when(invoiceRepository.findReportExportRowsAfter(eq(1), eq(InvoiceType.EXPENSE), any(Instant.class),
+                any(Instant.class), isNull(), eq(0), any(Pageable.class)))
+                .thenReturn(List.of());
+        when(expenseRequestRepository.findApprovedExportRowsAfter(eq(1), isNull(), isNull(), any(Instant.class),
+                any(Instant.class), eq(0), any(Pageable.class)))
+                .thenReturn(List.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
+        // When
+        long count = exportService.writeExpenseReport(expenseReportRequest, ExportFormat.CSV, out);
 
+        // Then
+        assertThat(count).isZero();
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv).contains("\nLoại chi phí,Số tiền\nTổng chi phí,0\n");
+        assertThat(csv).contains("\nSố khoản chi,0\n");
+    }
 
+    @Test
+    void writeExpenseReport_whenRequestWithoutType_shouldGroupAsOther() throws Exception {
+        // Given: yêu cầu chi phí không có loại -> gộp vào OTHER cùng hóa đơn chi
+        expenseReportRequest.setVehicleId(9);
+        when(accountingService.getReportDateRange(expenseReportRequest))
+                .thenReturn(new LocalDate[]{LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31)});
+        when(invoiceRepository.findReportExportRowsAfter(eq(1), eq(InvoiceType.EXPENSE), any(Instant.class),
+                any(Instant.class), isNull(), eq(0), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(invoiceRow(4, "EXP-4", null)));
+        when(expenseRequestRepository.findApprovedExportRowsAfter(eq(1), eq(9), isNull(), any(Instant.class),
+                any(Instant.class), eq(0), any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(
+                        new Object[]{12, Instant.now(), "Hà Nội", "29A-12345", null, new BigDecimal("250000"), "Rửa xe"}));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
+        // When
+        long count = exportService.writeExpenseReport(expenseReportRequest, ExportFormat.XLSX, out);
 
+        // Then
+        assertThat(count).isEqualTo(2);
+        String sheet = unzip(out.toByteArray()).get("xl/worksheets/sheet1.xml");
+        assertThat(sheet).contains("OTHER", "<v>1250000</v>", "Rửa xe");
+    }
 
+    @Test
+    void writeExpenseReport_whenOutputFails_shouldPropagateIOException() {
+        // Given
+        when(accountingService.getReportDateRange(expenseReportRequest))
+                .thenReturn(new LocalDate[]{LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31)});
+        when(invoiceRepository.findReportExportRowsAfter(any(), any(), any(), any(), any(), eq(0), any(Pageable.class)))
+                .thenReturn(List.of());
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
 
+        // When & Then
+        assertThatThrownBy(() -> exportService.writeExpenseReport(expenseReportRequest, ExportFormat.CSV, failing))
+                .isInstanceOf(IOException.class);
+        verifyNoInteractions(expenseRequestRepository);
+    }
 
+    private Object[] revenueRow(int id, String amount, String paid, PaymentStatus status) {
+        return new Object[]{id, "INV-" + id, Instant.parse("2025-01-15T03:00:00Z"), "Khách " + id, "Hà Nội",
+                new BigDecimal(amount), new BigDecimal(paid), LocalDate.of(2025, 2, 15), status, null};
+    }
 
+    private Object[] invoiceRow(int id, String invoiceNumber, String customerName) {
+        return new Object[]{id, invoiceNumber, Instant.parse("2025-01-15T03:00:00Z"), customerName, "Hà Nội",
+                new BigDecimal("1000000"), new BigDecimal("400000"), LocalDate.of(2025, 2, 15),
+                PaymentStatus.UNPAID, null};
+    }
 
+    private Map<String, String> unzip(byte[] bytes) throws Exception {
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
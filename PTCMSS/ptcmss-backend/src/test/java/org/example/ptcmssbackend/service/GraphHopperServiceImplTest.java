@@ -0,0 +1,95 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceMatrixResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
+import org.example.ptcmssbackend.service.impl.GraphHopperServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GraphHopperServiceImplTest {
+
+    private static final PlaceSuggestion AIRPORT = place("A", 21.2187, 105.8042);
+    private static final PlaceSuggestion STATION = place("B", 21.0245, 105.8412);
+    private static final PlaceSuggestion CENTRE = place("C", 21.0285, 105.8542);
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private RoutingCacheService routingCacheService;
+
+    @InjectMocks
+    private GraphHopperServiceImpl graphHopperService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(graphHopperService, "apiKey", "test-key");
+        ReflectionTestUtils.setField(graphHopperService, "matrixMaxPoints", 25);
+        lenient().when(routingCacheService.routeKey(any(), any())).thenAnswer(inv ->
+                ((PlaceSuggestion) inv.getArgument(0)).getDescription() + ">" + ((PlaceSuggestion) inv.getArgument(1)).getDescription());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void distanceMatrix_shouldRequestOnlyMissingPairsInOneCall() {
+        when(routingCacheService.getPlace(eq("Sân bay"), any())).thenReturn(AIRPORT);
+        when(routingCacheService.getPlace(eq("Ga Hà Nội"), any())).thenReturn(STATION);
+        when(routingCacheService.getPlace(eq("Hoàn Kiếm"), any())).thenReturn(CENTRE);
+        when(routingCacheService.findRoutes(any())).thenReturn(Map.of(
+                "A>C", DistanceResult.builder().distanceKm(27.5).durationMinutes(40.0).build()));
+        when(restTemplate.postForObject(startsWith("https://graphhopper.com/api/1/matrix"), any(), eq(Map.class)))
+                .thenReturn(Map.of(
+                        "distances", List.of(List.of(2300)),
+                        "times", List.of(List.of(480000 / 1000))));
+
+        DistanceMatrixResult result = graphHopperService.distanceMatrix(
+                List.of("Sân bay", "Ga Hà Nội"), List.of("Hoàn Kiếm"));
+
+        assertThat(result.getDistancesKm()).containsExactly(List.of(27.5), List.of(2.3));
+        assertThat(result.getDurationsMinutes()).containsExactly(List.of(40.0), List.of(8.0));
+        verify(restTemplate, times(1)).postForObject(anyString(), any(), eq(Map.class));
+
+        // Chỉ điểm đi còn thiếu (ga) được gửi lên API, kết quả được lưu vào cache
+        ArgumentCaptor<Map<String, Object>> body = ArgumentCaptor.forClass(Map.class);
+        verify(restTemplate).postForObject(anyString(), body.capture(), eq(Map.class));
+        assertThat((List<?>) body.getValue().get("from_points")).hasSize(1);
+        ArgumentCaptor<Map<String, DistanceResult>> stored = ArgumentCaptor.forClass(Map.class);
+        verify(routingCacheService).putRoutes(stored.capture());
+        assertThat(stored.getValue()).containsOnlyKeys("B>C");
+    }
+
+    @Test
+    void distanceMatrix_whenAllPairsKnownOrUnresolved_shouldNotCallApi() {
+        when(routingCacheService.getPlace(eq("Sân bay"), any())).thenReturn(AIRPORT);
+        when(routingCacheService.getPlace(eq("Không rõ"), any())).thenReturn(null);
+        when(routingCacheService.findRoutes(any())).thenReturn(Map.of());
+
+        DistanceMatrixResult result = graphHopperService.distanceMatrix(List.of("Sân bay", "Không rõ"));
+
+        // Sân bay -> sân bay = 0, mọi cặp có địa chỉ không geocode được = null
+        assertThat(result.getDistancesKm()).containsExactly(Arrays.asList(0.0, null), Arrays.asList(null, null));
+        verifyNoInteractions(restTemplate);
+        verify(routingCacheService, never()).putRoutes(any());
+    }
+
+    private static PlaceSuggestion place(String name, double lat, double lng) {
+        return PlaceSuggestion.builder().description(name).fullAddress(name).latitude(lat).longitude(lng).build();
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
+import org.example.ptcmssbackend.repository.TripRepository;
+import org.example.ptcmssbackend.service.impl.HaversineDistanceProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HaversineDistanceProviderTest {
+
+    @Mock
+    private TripRepository tripRepository;
+    @Mock
+    private RoutingCacheService routingCacheService;
+
+    @InjectMocks
+    private HaversineDistanceProvider provider;
+
+    // Hồ Gươm -> Sân bay Nội Bài: ~21.6 km đường chim bay
+    private final PlaceSuggestion hoanKiem = place("Hoàn Kiếm", 21.0285, 105.8542);
+    private final PlaceSuggestion noiBai = place("Nội Bài", 21.2187, 105.8042);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(provider, "defaultRoadFactor", 1.3);
+        ReflectionTestUtils.setField(provider, "estimateSpeedKmph", 50.0);
+    }
+
+    @Test
+    void resolve_shouldUseDefaultFactorBeforeCalibration() {
+        when(routingCacheService.findPlaces(anyCollection())).thenReturn(Map.of("A", hoanKiem, "B", noiBai));
+
+        DistanceResult result = provider.resolve("A", "B");
+
+        assertThat(result.getSource()).isEqualTo("ESTIMATE");
+        assertThat(result.getDistanceKm()).isCloseTo(21.6 * 1.3, within(0.5));
+        assertThat(result.getDurationMinutes()).isCloseTo(result.getDistanceKm() / 50 * 60, within(0.01));
+    }
+
+    @Test
+    void resolve_withoutCachedCoordinates_shouldReturnNull() {
+        when(routingCacheService.findPlaces(anyCollection())).thenReturn(Map.of("A", hoanKiem));
+
+        assertThat(provider.resolve("A", "B")).isNull();
+    }
+
+    @Test
+    void recalibrate_shouldUseMedianRatioOfHistoricalTrips() {
+        double straight = ReflectionTestUtils.invokeMethod(HaversineDistanceProvider.class, "haversineKm", hoanKiem, noiBai);
+        List<Object[]> samples = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            // Tỉ lệ 1.2 .. 1.7
+            double ratio = 1.2 + i * 0.05;
+            samples.add(new Object[]{"A", "B", BigDecimal.valueOf(straight * ratio)});
+        }
+        // Mẫu ngoại lai chỉ dịch trung vị 1 bậc (1.5), không kéo hệ số lên 10
+        samples.add(new Object[]{"A", "B", BigDecimal.valueOf(straight * 10)});
+        when(tripRepository.findRecentDistanceSamples(any(Pageable.class))).thenReturn(samples);
+        Map<String, PlaceSuggestion> places = new HashMap<>();
+        places.put("A", hoanKiem);
+        places.put("B", noiBai);
+        when(routingCacheService.findPlaces(anyCollection())).thenReturn(places);
+
+        provider.recalibrate();
+
+        assertThat(provider.getRoadFactor()).isCloseTo(1.5, within(0.001));
+    }
+
+    @Test
+    void recalibrate_withTooFewSamples_shouldKeepDefault() {
+        List<Object[]> samples = new ArrayList<>();
+        samples.add(new Object[]{"A", "B", BigDecimal.valueOf(30)});
+        when(tripRepository.findRecentDistanceSamples(any(Pageable.class))).thenReturn(samples);
+        when(routingCacheService.findPlaces(anyCollection())).thenReturn(Map.of("A", hoanKiem, "B", noiBai));
+
+        provider.recalibrate();
+
+        assertThat(provider.getRoadFactor()).isEqualTo(1.3);
+    }
+
+    private PlaceSuggestion place(String name, double lat, double lng) {
+        return PlaceSuggestion.builder().fullAddress(name).latitude(lat).longitude(lng).build();
+    }
+}
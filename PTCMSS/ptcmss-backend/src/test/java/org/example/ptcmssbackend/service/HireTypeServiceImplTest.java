@@ -0,0 +1,137 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.request.HireType.HireTypeRequest;
+import org.example.ptcmssbackend.dto.response.HireType.HireTypeResponse;
+import org.example.ptcmssbackend.entity.HireTypes;
+import org.example.ptcmssbackend.repository.HireTypesRepository;
+import org.example.ptcmssbackend.service.impl.HireTypeServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HireTypeServiceImplTest {
+
+    @Mock
+    private HireTypesRepository hireTypesRepository;
+    @Mock
+    private PricingService pricingService;
+
+    @InjectMocks
+    private HireTypeServiceImpl hireTypeService;
+
+    @Test
+    void listActive_shouldMapEntitiesToResponses() {
+        // Given
+        when(hireTypesRepository.findByIsActiveTrue()).thenReturn(List.of(createHireType(1, "ONE_WAY", true)));
+
+        // When
+        List<HireTypeResponse> result = hireTypeService.listActive();
+
+        // Then: trả DTO bất biến, không trả entity đang được quản lý
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getId()).isEqualTo(1);
+        assertThat(result.get(0).getCode()).isEqualTo("ONE_WAY");
+        assertThat(result.get(0).getIsActive()).isTrue();
+    }
+
+    @Test
+    void create_whenCodeIsNew_shouldSaveActiveAndInvalidateTariff() {
+        // Given
+        HireTypeRequest request = createRequest("DAILY", "Thuê theo ngày");
+        when(hireTypesRepository.findByCode("DAILY")).thenReturn(null);
+        when(hireTypesRepository.save(any(HireTypes.class))).thenAnswer(inv -> {
+            HireTypes saved = inv.getArgument(0);
+            saved.setId(3);
+            return saved;
+        });
+
+        // When
+        HireTypeResponse result = hireTypeService.create(request);
+
+        // Then
+        assertThat(result.getId()).isEqualTo(3);
+        assertThat(result.getName()).isEqualTo("Thuê theo ngày");
+        assertThat(result.getIsActive()).isTrue();
+        verify(pricingService).invalidate();
+    }
+
+    @Test
+    void create_whenCodeExists_shouldThrowException() {
+        // Given
+        when(hireTypesRepository.findByCode("DAILY")).thenReturn(createHireType(3, "DAILY", true));
+
+        // When & Then
+        assertThatThrownBy(() -> hireTypeService.create(createRequest("DAILY", "Thuê theo ngày")))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Mã loại thuê đã tồn tại");
+        verify(hireTypesRepository, never()).save(any());
+        verifyNoInteractions(pricingService);
+    }
+
+    @Test
+    void update_whenFound_shouldApplyChanges() {
+        // Given
+        HireTypes existing = createHireType(3, "DAILY", true);
+        HireTypeRequest request = createRequest("DAILY", "Thuê trọn ngày");
+        request.setIsActive(false);
+        when(hireTypesRepository.findById(3)).thenReturn(Optional.of(existing));
+        when(hireTypesRepository.findByCode("DAILY")).thenReturn(existing);
+        when(hireTypesRepository.save(existing)).thenReturn(existing);
+
+        // When
+        HireTypeResponse result = hireTypeService.update(3, request);
+
+        // Then
+        assertThat(result.getName()).isEqualTo("Thuê trọn ngày");
+        assertThat(result.getIsActive()).isFalse();
+        verify(pricingService).invalidate();
+    }
+
+    @Test
+    void update_whenNotFound_shouldThrowException() {
+        // Given
+        when(hireTypesRepository.findById(99)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> hireTypeService.update(99, createRequest("DAILY", "Thuê theo ngày")))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Không tìm thấy loại thuê");
+    }
+
+    @Test
+    void delete_shouldDeleteAndInvalidateTariff() {
+        // When
+        hireTypeService.delete(3);
+
+        // Then
+        verify(hireTypesRepository).deleteById(3);
+        verify(pricingService).invalidate();
+    }
+
+    private HireTypes createHireType(Integer id, String code, boolean active) {
+        HireTypes hireType = new HireTypes();
+        hireType.setId(id);
+        hireType.setCode(code);
+        hireType.setName(code);
+        hireType.setIsActive(active);
+        return hireType;
+    }
+
+    private HireTypeRequest createRequest(String code, String name) {
+        HireTypeRequest request = new HireTypeRequest();
+        request.setCode(code);
+        request.setName(name);
+        return request;
+    }
+}
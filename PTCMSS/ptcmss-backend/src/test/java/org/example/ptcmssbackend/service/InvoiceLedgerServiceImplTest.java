@@ -0,0 +1,208 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.entity.BookingLedger;
+import org.example.ptcmssbackend.entity.Bookings;
+import org.example.ptcmssbackend.entity.InvoiceLedger;
+import org.example.ptcmssbackend.entity.Invoices;
+import org.example.ptcmssbackend.entity.PaymentHistory;
+import org.example.ptcmssbackend.enums.PaymentConfirmationStatus;
+import org.example.ptcmssbackend.repository.BookingLedgerRepository;
+import org.example.ptcmssbackend.repository.InvoiceLedgerRepository;
+import org.example.ptcmssbackend.repository.InvoiceRepository;
+import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
+import org.example.ptcmssbackend.service.impl.InvoiceLedgerServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InvoiceLedgerServiceImplTest {
+
+    @Mock
+    private InvoiceLedgerRepository invoiceLedgerRepository;
+    @Mock
+    private BookingLedgerRepository bookingLedgerRepository;
+    @Mock
+    private PaymentHistoryRepository paymentHistoryRepository;
+    @Mock
+    private InvoiceRepository invoiceRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private InvoiceLedgerServiceImpl invoiceLedgerService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.invokeMethod(invoiceLedgerService, "init");
+    }
+
+    @Test
+    void applyPayment_whenConfirmingPendingPayment_shouldMoveAmountUnderRowLocks() {
+        // Given: hóa đơn 1.000.000 đã thu 100.000, đang chờ 300.000
+        Invoices invoice = createInvoice(1, 50, "1000000");
+        PaymentHistory payment = createPayment(invoice, "300000");
+        InvoiceLedger invoiceLedger = createInvoiceLedger(1, "100000", "300000");
+        BookingLedger bookingLedger = new BookingLedger();
+        bookingLedger.setBookingId(50);
+        bookingLedger.setConfirmedPaid(new BigDecimal("100000"));
+        bookingLedger.setPendingAmount(new BigDecimal("300000"));
+        bookingLedger.setUpdatedAt(Instant.parse("2025-12-01T00:00:00Z"));
+
+        when(invoiceLedgerRepository.findForUpdate(1)).thenReturn(Optional.of(invoiceLedger));
+        when(bookingLedgerRepository.findForUpdate(50)).thenReturn(Optional.of(bookingLedger));
+
+        // When
+        invoiceLedgerService.applyPayment(payment, PaymentConfirmationStatus.PENDING, PaymentConfirmationStatus.CONFIRMED);
+
+        // Then
+        assertThat(invoiceLedger.getConfirmedPaid()).isEqualByComparingTo("400000");
+        assertThat(invoiceLedger.getPendingAmount()).isEqualByComparingTo("0");
+        assertThat(invoiceLedger.getBalance()).isEqualByComparingTo("600000");
+        assertThat(invoiceLedger.getBookingId()).isEqualTo(50);
+        assertThat(invoiceLedger.getLastPaymentAt()).isEqualTo(payment.getPaymentDate());
+        assertThat(bookingLedger.getConfirmedPaid()).isEqualByComparingTo("400000");
+        assertThat(bookingLedger.getPendingAmount()).isEqualByComparingTo("0");
+        verify(invoiceLedgerRepository).save(invoiceLedger);
+        verify(bookingLedgerRepository).save(bookingLedger);
+        // Cộng dồn theo delta, không SUM lại payment_history
+        verify(paymentHistoryRepository, never()).summarizeByInvoiceId(anyInt());
+        verify(paymentHistoryRepository, never()).summarizeByBookingId(anyInt());
+    }
+
+    @Test
+    void applyPayment_whenLedgerRowMissing_shouldInitialiseFromPaymentHistory() {
+        // Given: hóa đơn không thuộc booking, chưa có dòng sổ cái (dòng vừa được INSERT có updatedAt = null)
+        Invoices invoice = createInvoice(2, null, "1000000");
+        invoice.setBooking(null);
+        PaymentHistory payment = createPayment(invoice, "200000");
+        Instant lastConfirmed = Instant.parse("2025-12-01T03:00:00Z");
+        InvoiceLedger created = new InvoiceLedger();
+        created.setInvoiceId(2);
+
+        when(invoiceLedgerRepository.findForUpdate(2)).thenReturn(Optional.of(created));
+        when(paymentHistoryRepository.summarizeByInvoiceId(2)).thenReturn(List.<Object[]>of(
+                new Object[]{new BigDecimal("500000"), new BigDecimal("200000"), lastConfirmed}));
+
+        // When
+        invoiceLedgerService.applyPayment(payment, null, PaymentConfirmationStatus.PENDING);
+
+        // Then: tạo dòng trước rồi mới khóa; tổng từ payment_history đã gồm payment mới nên không cộng delta thêm lần nữa
+        InOrder inOrder = inOrder(invoiceLedgerRepository);
+        inOrder.verify(invoiceLedgerRepository).insertIfAbsent(2);
+        inOrder.verify(invoiceLedgerRepository).findForUpdate(2);
+        ArgumentCaptor<InvoiceLedger> captor = ArgumentCaptor.forClass(InvoiceLedger.class);
+        verify(invoiceLedgerRepository).save(captor.capture());
+        InvoiceLedger saved = captor.getValue();
+        assertThat(saved.getInvoiceId()).isEqualTo(2);
+        assertThat(saved.getConfirmedPaid()).isEqualByComparingTo("500000");
+        assertThat(saved.getPendingAmount()).isEqualByComparingTo("200000");
+        assertThat(saved.getBalance()).isEqualByComparingTo("500000");
+        assertThat(saved.getLastPaymentAt()).isEqualTo(lastConfirmed);
+        assertThat(saved.getUpdatedAt()).isNotNull();
+        verifyNoInteractions(bookingLedgerRepository);
+    }
+
+    @Test
+    void getConfirmedPaid_batch_shouldFallBackToSumOnlyForMissingRows() {
+        // Given
+        when(invoiceLedgerRepository.findAllById(List.of(1, 2, 3)))
+                .thenReturn(List.of(createInvoiceLedger(1, "100000", "0")));
+        when(paymentHistoryRepository.sumConfirmedByInvoiceIds(List.of(2, 3)))
+                .thenReturn(List.<Object[]>of(new Object[]{2, new BigDecimal("50000")}));
+
+        // When
+        Map<Integer, BigDecimal> result = invoiceLedgerService.getConfirmedPaid(List.of(1, 2, 3));
+
+        // Then
+        assertThat(result).hasSize(3);
+        assertThat(result.get(1)).isEqualByComparingTo("100000");
+        assertThat(result.get(2)).isEqualByComparingTo("50000");
+        assertThat(result.get(3)).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void verifyAndRepair_shouldRewriteOnlyDriftedRows() {
+        // Given: hóa đơn 1 khớp, hóa đơn 2 lệch tiền đã thu
+        Instant paidAt = Instant.parse("2025-12-01T03:00:00Z");
+        InvoiceLedger inSync = createInvoiceLedger(1, "100000", "0");
+        inSync.setBalance(new BigDecimal("900000"));
+        inSync.setLastPaymentAt(paidAt);
+        InvoiceLedger drifted = createInvoiceLedger(2, "100000", "0");
+        drifted.setBalance(new BigDecimal("900000"));
+        drifted.setLastPaymentAt(paidAt);
+
+        when(paymentHistoryRepository.summarizeInvoicesAfter(eq(0), any())).thenReturn(List.of(
+                new Object[]{1, null, new BigDecimal("1000000"), new BigDecimal("100000"), BigDecimal.ZERO, paidAt},
+                new Object[]{2, null, new BigDecimal("1000000"), new BigDecimal("250000"), BigDecimal.ZERO, paidAt}));
+        when(invoiceLedgerRepository.findAllById(List.of(1, 2))).thenReturn(List.of(inSync, drifted));
+        when(paymentHistoryRepository.summarizeBookingsAfter(eq(0), any())).thenReturn(Collections.emptyList());
+
+        // Sửa dòng lệch: khóa dòng rồi đọc lại tổng
+        when(invoiceRepository.findById(2)).thenReturn(Optional.of(createInvoice(2, null, "1000000")));
+        when(invoiceLedgerRepository.findForUpdate(2)).thenReturn(Optional.of(drifted));
+        when(paymentHistoryRepository.summarizeByInvoiceId(2)).thenReturn(List.<Object[]>of(
+                new Object[]{new BigDecimal("250000"), BigDecimal.ZERO, paidAt}));
+
+        // When
+        int repaired = invoiceLedgerService.verifyAndRepair();
+
+        // Then
+        assertThat(repaired).isEqualTo(1);
+        assertThat(drifted.getConfirmedPaid()).isEqualByComparingTo("250000");
+        assertThat(drifted.getBalance()).isEqualByComparingTo("750000");
+        verify(invoiceLedgerRepository).save(drifted);
+        verify(invoiceLedgerRepository, never()).save(inSync);
+        verify(invoiceLedgerRepository, never()).findForUpdate(1);
+    }
+
+    private Invoices createInvoice(Integer id, Integer bookingId, String amount) {
+        Invoices invoice = new Invoices();
+        invoice.setId(id);
+        invoice.setAmount(new BigDecimal(amount));
+        if (bookingId != null) {
+            Bookings booking = new Bookings();
+            booking.setId(bookingId);
+            invoice.setBooking(booking);
+        }
+        return invoice;
+    }
+
+    private PaymentHistory createPayment(Invoices invoice, String amount) {
+        PaymentHistory payment = new PaymentHistory();
+        payment.setId(900);
+        payment.setInvoice(invoice);
+        payment.setAmount(new BigDecimal(amount));
+        payment.setPaymentDate(Instant.parse("2025-12-05T08:00:00Z"));
+        return payment;
+    }
+
+    private InvoiceLedger createInvoiceLedger(Integer invoiceId, String confirmed, String pending) {
+        InvoiceLedger ledger = new InvoiceLedger();
+        ledger.setInvoiceId(invoiceId);
+        ledger.setConfirmedPaid(new BigDecimal(confirmed));
+        ledger.setPendingAmount(new BigDecimal(pending));
+        ledger.setUpdatedAt(Instant.parse("2025-12-01T00:00:00Z"));
+        return ledger;
+    }
+}
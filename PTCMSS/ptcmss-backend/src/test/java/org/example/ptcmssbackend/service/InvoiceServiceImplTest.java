@@ -22,8 +22,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -47,9 +49,11 @@ class InvoiceServiceImplTest {
     @Mock
     private PaymentHistoryRepository paymentHistoryRepository;
     @Mock
+    private InvoiceLedgerService invoiceLedgerService;
+    @Mock
     private org.example.ptcmssbackend.service.EmailService emailService;
     @Mock
-    private org.example.ptcmssbackend.repository.NotificationRepository notificationRepository;
+    private org.example.ptcmssbackend.service.NotificationDispatcher notificationDispatcher;
     @Mock
     private org.example.ptcmssbackend.service.WebSocketNotificationService webSocketNotificationService;
     @Mock
@@ -87,18 +91,7 @@ class InvoiceServiceImplTest {
             invEntity.setPaymentStatus(PaymentStatus.UNPAID);
             return invEntity;
         });
-        when(invoiceRepository.findById(100)).thenAnswer(inv -> {
-            Invoices invEntity = new Invoices();
-            invEntity.setId(100);
-            invEntity.setInvoiceNumber("INV-2025-001");
-            invEntity.setBranch(branch);
-            invEntity.setType(InvoiceType.INCOME);
-            invEntity.setAmount(new BigDecimal("1000000"));
-            invEntity.setStatus(InvoiceStatus.ACTIVE);
-            invEntity.setPaymentStatus(PaymentStatus.UNPAID);
-            return Optional.of(invEntity);
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         InvoiceResponse response = invoiceService.createInvoice(request);
@@ -171,18 +164,7 @@ class InvoiceServiceImplTest {
             invEntity.setPaymentStatus(PaymentStatus.UNPAID);
             return invEntity;
         });
-        when(invoiceRepository.findById(100)).thenAnswer(inv -> {
-            Invoices invEntity = new Invoices();
-            invEntity.setId(100);
-            invEntity.setInvoiceNumber("INV-2025-001");
-            invEntity.setBranch(branch);
-            invEntity.setType(InvoiceType.INCOME);
-            invEntity.setAmount(new BigDecimal("1000000"));
-            invEntity.setStatus(InvoiceStatus.ACTIVE);
-            invEntity.setPaymentStatus(PaymentStatus.UNPAID);
-            return Optional.of(invEntity);
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         InvoiceResponse response = invoiceService.createInvoice(request);
@@ -219,8 +201,7 @@ class InvoiceServiceImplTest {
         payment.setConfirmationStatus(PaymentConfirmationStatus.PENDING);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
-        when(employeeRepository.findByRoleNameAndBranchId(anyString(), anyInt())).thenReturn(Collections.emptyList());
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> {
             PaymentHistory ph = inv.getArgument(0);
             ph.setId(200);
@@ -235,6 +216,8 @@ class InvoiceServiceImplTest {
         assertThat(response).isNotNull();
         assertThat(response.getAmount()).isEqualTo(new BigDecimal("500000"));
         verify(paymentHistoryRepository).save(any());
+        verify(notificationDispatcher).notifyRole(eq("Accountant"), eq(1), eq("Yêu cầu thanh toán mới"),
+                anyString(), isNull(), eq("INFO"));
     }
 
     @Test
@@ -276,7 +259,7 @@ class InvoiceServiceImplTest {
         when(invoiceRepository.findById(100)).thenReturn(Optional.of(invoice));
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(new BigDecimal("500000"));
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(new BigDecimal("500000"));
 
         // When
         PaymentHistoryResponse response = invoiceService.confirmPayment(paymentId, status);
@@ -322,7 +305,7 @@ class InvoiceServiceImplTest {
         when(invoiceRepository.findById(100)).thenReturn(Optional.of(invoice));
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         PaymentHistoryResponse response = invoiceService.confirmPayment(paymentId, status);
@@ -372,7 +355,7 @@ class InvoiceServiceImplTest {
         when(invoiceRepository.findById(100)).thenReturn(Optional.of(invoice));
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(new BigDecimal("1000000"));
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(new BigDecimal("1000000"));
 
         // When
         invoiceService.confirmPayment(paymentId, status);
@@ -401,7 +384,7 @@ class InvoiceServiceImplTest {
         invoice.setType(InvoiceType.INCOME);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(invoiceId)).thenReturn(0);
 
         // When
@@ -435,16 +418,11 @@ class InvoiceServiceImplTest {
         Invoices invoice2 = createTestInvoice(101, "INV-002", PaymentStatus.PAID);
         List<Invoices> invoices = List.of(invoice1, invoice2);
 
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(invoices, pageable, 2));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100, 101))).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(100, 101))).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -461,17 +439,12 @@ class InvoiceServiceImplTest {
         Invoices invoice = createTestInvoice(100, "INV-001", PaymentStatus.UNPAID);
         List<Invoices> invoices = List.of(invoice);
 
-        when(invoiceRepository.findInvoicesWithFilters(eq(1), eq(InvoiceType.INCOME), 
-                eq(InvoiceStatus.ACTIVE), any(), any(), any(), eq(PaymentStatus.UNPAID)))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        when(invoiceRepository.searchInvoices(eq(1), eq(InvoiceType.INCOME),
+                eq(InvoiceStatus.ACTIVE), any(), any(), any(), eq(PaymentStatus.UNPAID), isNull(), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(invoices, pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(anyCollection())).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(anyCollection())).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -491,16 +464,12 @@ class InvoiceServiceImplTest {
         invoice.setCustomer(customer);
         List<Invoices> invoices = List.of(invoice);
 
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        // Keyword được đẩy xuống truy vấn dưới dạng pattern LIKE (lowercase)
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), eq("%nguyễn%"), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(invoices, pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(anyCollection())).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(anyCollection())).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -511,6 +480,107 @@ class InvoiceServiceImplTest {
         assertThat(result.getTotalElements()).isEqualTo(1);
     }
 
+    @Test
+    void getInvoices_shouldEscapeLikeWildcardsAndReturnClampedPageable() {
+        // Given: keyword có ký tự đặc biệt của LIKE, size vượt MAX_PAGE_SIZE
+        org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 50_000);
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), eq("%50!%!_a!!%"), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(List.of(), pageable, 0));
+
+        // When
+        org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
+                invoiceService.getInvoices(null, null, null, null, null, null, null, "50%_A!", pageable);
+
+        // Then: trang trả về mang size/sort đã áp dụng chứ không phải pageable gốc
+        assertThat(result.getPageable().getPageSize()).isEqualTo(10_000);
+        assertThat(result.getSort().stream().map(org.springframework.data.domain.Sort.Order::getProperty))
+                .containsExactly("invoiceDate", "id");
+    }
+
+    @Test
+    void getInvoices_shouldPageInDatabaseAndBatchPaymentSums() {
+        // Given: trang 3 của 1 tập lớn, DB chỉ trả về đúng 2 dòng của trang
+        Invoices invoice1 = createTestInvoice(100, "INV-001", PaymentStatus.UNPAID);
+        Invoices invoice2 = createTestInvoice(101, "INV-002", PaymentStatus.UNPAID);
+        org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(
+                2, 2, org.springframework.data.domain.Sort.by("amount").ascending().and(
+                        org.springframework.data.domain.Sort.by("unknownField")));
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(List.of(invoice1, invoice2), pageable, 50_000));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100, 101)))
+                .thenReturn(Map.of(100, new BigDecimal("400000")));
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(100, 101)))
+                .thenReturn(List.<Object[]>of(new Object[]{101, 2L}));
+
+        // When
+        org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
+                invoiceService.getInvoices(null, null, null, null, null, null, null, null, pageable);
+
+        // Then
+        assertThat(result.getTotalElements()).isEqualTo(50_000);
+        assertThat(result.getContent()).hasSize(2);
+        assertThat(result.getContent().get(0).getPaidAmount()).isEqualByComparingTo("400000");
+        assertThat(result.getContent().get(0).getBalance()).isEqualByComparingTo("600000");
+        assertThat(result.getContent().get(0).getPendingPaymentCount()).isEqualTo(0);
+        assertThat(result.getContent().get(1).getPaidAmount()).isEqualByComparingTo("0");
+        assertThat(result.getContent().get(1).getPendingPaymentCount()).isEqualTo(2);
+
+        // Sắp xếp: bỏ trường không hợp lệ, thêm id để thứ tự ổn định
+        org.mockito.ArgumentCaptor<org.springframework.data.domain.Pageable> captor =
+                org.mockito.ArgumentCaptor.forClass(org.springframework.data.domain.Pageable.class);
+        verify(invoiceRepository).searchInvoices(any(), any(), any(), any(), any(), any(), any(), any(), captor.capture());
+        assertThat(captor.getValue().getPageNumber()).isEqualTo(2);
+        assertThat(captor.getValue().getSort().stream().map(org.springframework.data.domain.Sort.Order::getProperty))
+                .containsExactly("amount", "id");
+
+        // Không còn truy vấn theo từng hóa đơn
+        verify(invoiceRepository, never()).findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any());
+        verify(invoiceRepository, never()).findById(anyInt());
+        verify(invoiceLedgerService, never()).getConfirmedPaid(anyInt());
+        verify(paymentHistoryRepository, never()).countPendingPaymentsByInvoiceId(anyInt());
+    }
+
+    @Test
+    void scrollInvoices_shouldReturnNextCursorWhenMoreRowsExist() {
+        // Given: size = 2, DB trả về 3 dòng (dư 1) -> còn trang sau
+        List<Invoices> rows = List.of(
+                createTestInvoice(90, "INV-090", PaymentStatus.UNPAID),
+                createTestInvoice(89, "INV-089", PaymentStatus.UNPAID),
+                createTestInvoice(88, "INV-088", PaymentStatus.UNPAID));
+        when(invoiceRepository.searchInvoicesAfter(eq(1), any(), any(), any(), any(), any(), any(), isNull(), eq(91), any()))
+                .thenReturn(rows);
+        when(invoiceLedgerService.getConfirmedPaid(List.of(90, 89))).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(90, 89))).thenReturn(Collections.emptyList());
+
+        // When
+        org.example.ptcmssbackend.dto.response.Invoice.InvoiceScrollResponse result =
+                invoiceService.scrollInvoices(1, null, null, null, null, null, null, null, 91, 2);
+
+        // Then
+        assertThat(result.getItems()).hasSize(2);
+        assertThat(result.isHasNext()).isTrue();
+        assertThat(result.getNextAfterId()).isEqualTo(89);
+        verify(invoiceRepository).searchInvoicesAfter(eq(1), any(), any(), any(), any(), any(), any(), isNull(), eq(91),
+                eq(org.springframework.data.domain.PageRequest.of(0, 3)));
+    }
+
+    @Test
+    void scrollInvoices_onLastPage_shouldReturnNoCursor() {
+        // Given
+        when(invoiceRepository.searchInvoicesAfter(any(), any(), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(Collections.emptyList());
+
+        // When
+        org.example.ptcmssbackend.dto.response.Invoice.InvoiceScrollResponse result =
+                invoiceService.scrollInvoices(null, null, null, null, null, null, null, null, 5, 20);
+
+        // Then
+        assertThat(result.getItems()).isEmpty();
+        assertThat(result.isHasNext()).isFalse();
+        assertThat(result.getNextAfterId()).isNull();
+        verifyNoInteractions(paymentHistoryRepository);
+    }
+
     // ==================== updateInvoice() Tests ====================
 
     @Test
@@ -533,7 +603,7 @@ class InvoiceServiceImplTest {
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(invoiceId)).thenReturn(0);
 
         // When
@@ -661,7 +731,7 @@ class InvoiceServiceImplTest {
         invoice.setBranch(branch);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
 
         // When & Then
         assertThatThrownBy(() -> invoiceService.recordPayment(invoiceId, request))
@@ -713,7 +783,7 @@ class InvoiceServiceImplTest {
         payment.setConfirmationStatus(PaymentConfirmationStatus.CONFIRMED);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId))
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId))
                 .thenReturn(BigDecimal.ZERO)
                 .thenReturn(new BigDecimal("1000000"));
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> {
@@ -792,7 +862,7 @@ class InvoiceServiceImplTest {
         invoice.setAmount(new BigDecimal("1000000"));
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
 
         // When
         BigDecimal balance = invoiceService.calculateBalance(invoiceId);
@@ -810,7 +880,7 @@ class InvoiceServiceImplTest {
         invoice.setAmount(new BigDecimal("1000000"));
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(new BigDecimal("300000"));
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(new BigDecimal("300000"));
 
         // When
         BigDecimal balance = invoiceService.calculateBalance(invoiceId);
@@ -1010,7 +1080,7 @@ class InvoiceServiceImplTest {
 
         when(paymentHistoryRepository.findById(paymentId)).thenReturn(Optional.of(payment));
         when(invoiceRepository.findById(100)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
         doNothing().when(paymentHistoryRepository).delete(payment);
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
 
@@ -1289,8 +1359,7 @@ class InvoiceServiceImplTest {
         
         when(invoiceRepository.findUnpaidInvoicesWithCompletedTripsOlderThan(any(Instant.class), any()))
                 .thenReturn(unpaidInvoices);
-        when(invoiceRepository.findById(100)).thenReturn(Optional.of(unpaidInvoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100))
+        when(invoiceLedgerService.getConfirmedPaid(100))
                 .thenReturn(BigDecimal.ZERO);
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
 
@@ -1316,8 +1385,7 @@ class InvoiceServiceImplTest {
         
         when(invoiceRepository.findUnpaidInvoicesWithCompletedTripsOlderThan(any(Instant.class), any()))
                 .thenReturn(invoices);
-        when(invoiceRepository.findById(100)).thenReturn(Optional.of(paidInvoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100))
+        when(invoiceLedgerService.getConfirmedPaid(100))
                 .thenReturn(new BigDecimal("1000000"));
 
         // When
@@ -1369,19 +1437,7 @@ class InvoiceServiceImplTest {
             invEntity.setCustomer(customer);
             return invEntity;
         });
-        when(invoiceRepository.findById(100)).thenAnswer(inv -> {
-            Invoices invEntity = new Invoices();
-            invEntity.setId(100);
-            invEntity.setInvoiceNumber("INV-2025-001");
-            invEntity.setBranch(branch);
-            invEntity.setCustomer(customer);
-            invEntity.setType(InvoiceType.INCOME);
-            invEntity.setAmount(new BigDecimal("1000000"));
-            invEntity.setStatus(InvoiceStatus.ACTIVE);
-            invEntity.setPaymentStatus(PaymentStatus.UNPAID);
-            return Optional.of(invEntity);
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         InvoiceResponse response = invoiceService.createInvoice(request);
@@ -1417,19 +1473,7 @@ class InvoiceServiceImplTest {
             invEntity.setCreatedBy(employee);
             return invEntity;
         });
-        when(invoiceRepository.findById(100)).thenAnswer(inv -> {
-            Invoices invEntity = new Invoices();
-            invEntity.setId(100);
-            invEntity.setInvoiceNumber("INV-2025-001");
-            invEntity.setBranch(branch);
-            invEntity.setCreatedBy(employee);
-            invEntity.setType(InvoiceType.INCOME);
-            invEntity.setAmount(new BigDecimal("1000000"));
-            invEntity.setStatus(InvoiceStatus.ACTIVE);
-            invEntity.setPaymentStatus(PaymentStatus.UNPAID);
-            return Optional.of(invEntity);
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         InvoiceResponse response = invoiceService.createInvoice(request);
@@ -1459,19 +1503,7 @@ class InvoiceServiceImplTest {
             invEntity.setBranch(branch);
             return invEntity;
         });
-        when(invoiceRepository.findById(100)).thenAnswer(inv -> {
-            Invoices invEntity = new Invoices();
-            invEntity.setId(100);
-            invEntity.setInvoiceNumber("INV-2025-001");
-            invEntity.setBranch(branch);
-            invEntity.setType(InvoiceType.INCOME);
-            invEntity.setAmount(new BigDecimal("1000000"));
-            invEntity.setStatus(InvoiceStatus.ACTIVE);
-            invEntity.setPaymentStatus(PaymentStatus.UNPAID);
-            invEntity.setDueDate(request.getDueDate());
-            return Optional.of(invEntity);
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         InvoiceResponse response = invoiceService.createInvoice(request);
@@ -1505,9 +1537,8 @@ class InvoiceServiceImplTest {
         employee.setEmployeeId(5);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(employeeRepository.findById(5)).thenReturn(Optional.of(employee));
-        when(employeeRepository.findByRoleNameAndBranchId(anyString(), anyInt())).thenReturn(Collections.emptyList());
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> {
             PaymentHistory ph = inv.getArgument(0);
             ph.setId(200);
@@ -1543,7 +1574,7 @@ class InvoiceServiceImplTest {
         invoice.setBranch(branch);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId))
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId))
                 .thenReturn(BigDecimal.ZERO)
                 .thenReturn(new BigDecimal("500000"));
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> {
@@ -1582,8 +1613,7 @@ class InvoiceServiceImplTest {
         invoice.setBranch(branch);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
-        when(employeeRepository.findByRoleNameAndBranchId(anyString(), anyInt())).thenReturn(Collections.emptyList());
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> {
             PaymentHistory ph = inv.getArgument(0);
             ph.setId(200);
@@ -1623,7 +1653,7 @@ class InvoiceServiceImplTest {
         when(invoiceRepository.findById(100)).thenReturn(Optional.of(invoice));
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100))
+        when(invoiceLedgerService.getConfirmedPaid(100))
                 .thenReturn(new BigDecimal("500000")); // Sau khi reject, chỉ còn 500k confirmed
 
         // When
@@ -1642,20 +1672,17 @@ class InvoiceServiceImplTest {
         // Given
         LocalDate startDate = LocalDate.of(2025, 12, 1);
         LocalDate endDate = LocalDate.of(2025, 12, 31);
-        
+
         Invoices invoice = createTestInvoice(100, "INV-001", PaymentStatus.UNPAID);
         List<Invoices> invoices = List.of(invoice);
 
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        Instant expectedStart = startDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        Instant expectedEnd = endDate.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant();
+        when(invoiceRepository.searchInvoices(any(), any(), any(), eq(expectedStart), eq(expectedEnd), any(), any(), any(), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(invoices, pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100))).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(100))).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -1663,7 +1690,7 @@ class InvoiceServiceImplTest {
 
         // Then
         assertThat(result).isNotNull();
-        verify(invoiceRepository).findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any());
+        assertThat(result.getTotalElements()).isEqualTo(1);
     }
 
     @Test
@@ -1673,16 +1700,11 @@ class InvoiceServiceImplTest {
         Invoices invoice = createTestInvoice(100, "INV-001", PaymentStatus.UNPAID);
         List<Invoices> invoices = List.of(invoice);
 
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), eq(customerId), any()))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), eq(customerId), any(), any(), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(invoices, pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100))).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(100))).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -1690,27 +1712,20 @@ class InvoiceServiceImplTest {
 
         // Then
         assertThat(result).isNotNull();
-        verify(invoiceRepository).findInvoicesWithFilters(any(), any(), any(), any(), any(), eq(customerId), any());
+        verify(invoiceRepository).searchInvoices(any(), any(), any(), any(), any(), eq(customerId), any(), any(), any());
     }
 
     @Test
     void getInvoices_whenWithPagination_shouldReturnPagedResults() {
-        // Given
+        // Given: tổng 3 hóa đơn, DB chỉ trả về 2 dòng của trang đầu
         Invoices invoice1 = createTestInvoice(100, "INV-001", PaymentStatus.UNPAID);
         Invoices invoice2 = createTestInvoice(101, "INV-002", PaymentStatus.PAID);
-        Invoices invoice3 = createTestInvoice(102, "INV-003", PaymentStatus.UNPAID);
-        List<Invoices> invoices = List.of(invoice1, invoice2, invoice3);
-
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
 
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 2);
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(List.of(invoice1, invoice2), pageable, 3));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100, 101))).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(100, 101))).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -1748,8 +1763,7 @@ class InvoiceServiceImplTest {
         invoice.setBranch(branch);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
-        when(employeeRepository.findByRoleNameAndBranchId(anyString(), anyInt())).thenReturn(Collections.emptyList());
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> {
             PaymentHistory ph = inv.getArgument(0);
             ph.setId(200);
@@ -1791,7 +1805,7 @@ class InvoiceServiceImplTest {
         invoice.setBranch(branch);
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId))
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId))
                 .thenReturn(BigDecimal.ZERO)
                 .thenReturn(new BigDecimal("1000000"));
         when(paymentHistoryRepository.save(any())).thenAnswer(inv -> {
@@ -1875,10 +1889,9 @@ class InvoiceServiceImplTest {
     @Test
     void getInvoices_whenEmptyResults_shouldReturnEmptyPage() {
         // Given
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(Collections.emptyList());
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(org.springframework.data.domain.Page.empty(pageable));
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -1888,6 +1901,7 @@ class InvoiceServiceImplTest {
         assertThat(result).isNotNull();
         assertThat(result.getTotalElements()).isEqualTo(0);
         assertThat(result.getContent()).isEmpty();
+        verify(paymentHistoryRepository, never()).countPendingByInvoiceIds(anyCollection());
     }
 
     @Test
@@ -1896,16 +1910,11 @@ class InvoiceServiceImplTest {
         Invoices invoice = createTestInvoice(100, "INV-2025-001", PaymentStatus.UNPAID);
         List<Invoices> invoices = List.of(invoice);
 
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), eq("%2025-001%"), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(invoices, pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100))).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(100))).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -1925,16 +1934,12 @@ class InvoiceServiceImplTest {
         invoice.setBooking(booking);
         List<Invoices> invoices = List.of(invoice);
 
-        when(invoiceRepository.findInvoicesWithFilters(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(invoices);
-        when(invoiceRepository.findById(anyInt())).thenAnswer(inv -> {
-            Integer id = inv.getArgument(0);
-            return invoices.stream().filter(invItem -> invItem.getId().equals(id)).findFirst();
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(anyInt())).thenReturn(BigDecimal.ZERO);
-        when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(anyInt())).thenReturn(0);
-
         org.springframework.data.domain.Pageable pageable = org.springframework.data.domain.PageRequest.of(0, 10);
+        // Mã đơn dạng ORD-{bookingId} được so khớp trong truy vấn
+        when(invoiceRepository.searchInvoices(any(), any(), any(), any(), any(), any(), any(), eq("%ord-50%"), any()))
+                .thenReturn(new org.springframework.data.domain.PageImpl<>(invoices, pageable, 1));
+        when(invoiceLedgerService.getConfirmedPaid(List.of(100))).thenReturn(Collections.emptyMap());
+        when(paymentHistoryRepository.countPendingByInvoiceIds(List.of(100))).thenReturn(Collections.emptyList());
 
         // When
         org.springframework.data.domain.Page<org.example.ptcmssbackend.dto.response.Invoice.InvoiceListResponse> result =
@@ -1965,18 +1970,7 @@ class InvoiceServiceImplTest {
             invEntity.setInvoiceNumber("INV-2025-001");
             return invEntity;
         });
-        when(invoiceRepository.findById(100)).thenAnswer(inv -> {
-            Invoices invEntity = new Invoices();
-            invEntity.setId(100);
-            invEntity.setInvoiceNumber("INV-2025-001");
-            invEntity.setBranch(branch);
-            invEntity.setType(InvoiceType.INCOME);
-            invEntity.setAmount(new BigDecimal("1100000"));
-            invEntity.setStatus(InvoiceStatus.ACTIVE);
-            invEntity.setPaymentStatus(PaymentStatus.UNPAID);
-            return Optional.of(invEntity);
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         InvoiceResponse response = invoiceService.createInvoice(request);
@@ -2006,21 +2000,7 @@ class InvoiceServiceImplTest {
             invEntity.setInvoiceDate(Instant.now());
             return invEntity;
         });
-        when(invoiceRepository.findById(100)).thenAnswer(inv -> {
-            Invoices invEntity = new Invoices();
-            invEntity.setId(100);
-            invEntity.setInvoiceNumber("INV-2025-001");
-            invEntity.setBranch(branch);
-            invEntity.setType(InvoiceType.INCOME);
-            invEntity.setAmount(new BigDecimal("1000000"));
-            invEntity.setPaymentTerms("NET_30");
-            invEntity.setStatus(InvoiceStatus.ACTIVE);
-            invEntity.setPaymentStatus(PaymentStatus.UNPAID);
-            invEntity.setInvoiceDate(Instant.now());
-            invEntity.setDueDate(LocalDate.now().plusDays(30));
-            return Optional.of(invEntity);
-        });
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(100)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(100)).thenReturn(BigDecimal.ZERO);
 
         // When
         InvoiceResponse response = invoiceService.createInvoice(request);
@@ -2050,7 +2030,7 @@ class InvoiceServiceImplTest {
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(invoiceId)).thenReturn(0);
 
         // When
@@ -2080,7 +2060,7 @@ class InvoiceServiceImplTest {
 
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
         when(invoiceRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(paymentHistoryRepository.sumConfirmedByInvoiceId(invoiceId)).thenReturn(BigDecimal.ZERO);
+        when(invoiceLedgerService.getConfirmedPaid(invoiceId)).thenReturn(BigDecimal.ZERO);
         when(paymentHistoryRepository.countPendingPaymentsByInvoiceId(invoiceId)).thenReturn(0);
 
         // When
@@ -2,6 +2,7 @@ package org.example.ptcmssbackend.service;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
+import org.example.ptcmssbackend.common.TokenIdentity;
 import org.example.ptcmssbackend.common.TokenType;
 import org.example.ptcmssbackend.service.impl.JwtServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
@@ -193,6 +194,40 @@ class JwtServiceImplTest {
                 .isInstanceOf(Exception.class);
     }
 
+    // ==================== extractIdentity() Tests ====================
+
+    @Test
+    void extractIdentity_whenAccessToken_shouldReturnUsernameAndUniqueTokenId() {
+        // Given
+        Collection<? extends GrantedAuthority> authorities = Collections.singletonList(
+                new SimpleGrantedAuthority("ROLE_EMPLOYEE")
+        );
+        String first = jwtService.generateAccessToken(100, "testuser", authorities);
+        String second = jwtService.generateAccessToken(100, "testuser", authorities);
+
+        // When
+        TokenIdentity firstIdentity = jwtService.extractIdentity(first, ACCESS_TOKEN);
+        TokenIdentity secondIdentity = jwtService.extractIdentity(second, ACCESS_TOKEN);
+
+        // Then
+        assertThat(firstIdentity.getUsername()).isEqualTo("testuser");
+        assertThat(firstIdentity.getTokenId()).isNotBlank();
+        assertThat(firstIdentity.getTokenId()).isNotEqualTo(secondIdentity.getTokenId());
+    }
+
+    @Test
+    void extractIdentity_whenTokenHasNoJti_shouldFallbackToIssuedAt() {
+        // Given - token reset mật khẩu không có jti
+        String token = jwtService.generatePasswordResetToken("testuser");
+
+        // When
+        TokenIdentity identity = jwtService.extractIdentity(token, ACCESS_TOKEN);
+
+        // Then
+        assertThat(identity.getUsername()).isEqualTo("testuser");
+        assertThat(identity.getTokenId()).matches("\\d+");
+    }
+
     @Test
     void extractUsername_whenInvalidToken_shouldThrowException() {
         // Given
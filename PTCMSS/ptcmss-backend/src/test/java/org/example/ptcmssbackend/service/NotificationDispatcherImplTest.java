@@ -0,0 +1,142 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.config.CacheConfig;
+import org.example.ptcmssbackend.repository.EmployeeRepository;
+import org.example.ptcmssbackend.service.impl.NotificationDispatcherImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationDispatcherImplTest {
+
+    @Mock
+    private EmployeeRepository employeeRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private WebSocketNotificationService webSocketNotificationService;
+
+    @Mock
+    private NotificationUnreadCounter unreadCounter;
+
+    private NotificationDispatcherImpl dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new NotificationDispatcherImpl(employeeRepository, jdbcTemplate, webSocketNotificationService,
+                new ConcurrentMapCacheManager(CacheConfig.ROLE_RECIPIENTS), unreadCounter);
+        ReflectionTestUtils.setField(dispatcher, "threads", 1);
+        ReflectionTestUtils.setField(dispatcher, "queueSize", 10);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 100);
+        ReflectionTestUtils.invokeMethod(dispatcher, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(dispatcher, "shutdown");
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void getRecipientUserIds_shouldQueryOncePerRoleAndBranch() {
+        // Given
+        when(employeeRepository.findUserIdsByRoleNameAndBranchId("Accountant", 1)).thenReturn(List.of(10, 11));
+
+        // When
+        List<Integer> first = dispatcher.getRecipientUserIds("Accountant", 1);
+        List<Integer> second = dispatcher.getRecipientUserIds("Accountant", 1);
+
+        // Then
+        assertThat(first).containsExactly(10, 11);
+        assertThat(second).containsExactly(10, 11);
+        verify(employeeRepository, times(1)).findUserIdsByRoleNameAndBranchId("Accountant", 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void notifyRole_shouldInsertAllRecipientsInOneBatch() {
+        // Given
+        when(employeeRepository.findUserIdsByRoleNameAndBranchId("Accountant", 1)).thenReturn(List.of(10, 11));
+
+        // When
+        int notified = dispatcher.notifyRole("Accountant", 1, "Yêu cầu thanh toán mới", "[ID:5] Nội dung", "Nội dung", "INFO");
+
+        // Then
+        assertThat(notified).isEqualTo(2);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO notifications"), eq(List.of(10, 11)), eq(100),
+                any(ParameterizedPreparedStatementSetter.class));
+        verify(unreadCounter).addAfterCommit(List.of(10, 11), 1);
+        // Không có transaction: đẩy WebSocket ngay trên pool
+        verify(webSocketNotificationService, timeout(2000)).sendUserNotification(10, "Yêu cầu thanh toán mới", "Nội dung", "INFO");
+        verify(webSocketNotificationService, timeout(2000)).sendUserNotification(11, "Yêu cầu thanh toán mới", "Nội dung", "INFO");
+    }
+
+    @Test
+    void notifyRole_withoutRecipients_shouldNotInsert() {
+        // Given
+        when(employeeRepository.findUserIdsByRoleNameAndBranchId("Accountant", 1)).thenReturn(List.of());
+
+        // When
+        int notified = dispatcher.notifyRole("Accountant", 1, "Tiêu đề", "Nội dung", null, "INFO");
+
+        // Then
+        assertThat(notified).isZero();
+        verifyNoInteractions(jdbcTemplate, webSocketNotificationService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void notifyUsers_insideTransaction_shouldPushOnlyAfterCommit() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        dispatcher.notifyUsers(Arrays.asList(10, null, 10), "Tiêu đề", "Nội dung", null, "INFO");
+
+        // Then: chưa commit thì chưa đẩy
+        verify(jdbcTemplate).batchUpdate(anyString(), eq(List.of(10)), eq(100), any(ParameterizedPreparedStatementSetter.class));
+        verifyNoInteractions(webSocketNotificationService);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        verify(webSocketNotificationService, timeout(2000)).sendUserNotification(10, "Tiêu đề", "Nội dung", "INFO");
+    }
+
+    @Test
+    void broadcastAfterCommit_whenRolledBack_shouldNotPush() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        dispatcher.broadcastAfterCommit(1, "Tiêu đề", "Nội dung", "WARN");
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        // Then
+        verify(webSocketNotificationService, after(200).never()).sendBranchNotification(any(), anyString(), anyString(), anyString());
+    }
+}
@@ -9,15 +9,20 @@ import org.example.ptcmssbackend.repository.*;
 import org.example.ptcmssbackend.service.impl.NotificationServiceImpl;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -49,6 +54,10 @@ class NotificationServiceImplTest {
     private WebSocketNotificationService webSocketNotificationService;
     @Mock
     private NotificationRepository notificationRepository;
+    @Mock
+    private ResourceTimelineService resourceTimelineService;
+    @Mock
+    private NotificationUnreadCounter unreadCounter;
 
     @InjectMocks
     private NotificationServiceImpl notificationService;
@@ -343,6 +352,7 @@ class NotificationServiceImplTest {
 
         when(notificationRepository.findByUser_IdOrderByCreatedAtDesc(eq(userId), any()))
                 .thenReturn(notificationPage);
+        when(unreadCounter.getUnreadCount(userId)).thenReturn(2L);
 
         // When
         Map<String, Object> result = notificationService.getUserNotifications(userId, page, limit);
@@ -352,6 +362,83 @@ class NotificationServiceImplTest {
         assertThat(result.get("total")).isEqualTo(2L);
         assertThat(result.get("page")).isEqualTo(1);
         assertThat(result.get("limit")).isEqualTo(10);
+        assertThat(result.get("unreadCount")).isEqualTo(2L);
+        verify(notificationRepository, never()).countByUser_IdAndIsReadFalse(any());
+    }
+
+    // ==================== getUserNotificationsByCursor() Tests ====================
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getUserNotificationsByCursor_whenMoreRows_shouldReturnNextCursorOfLastRow() {
+        // Given
+        Integer userId = 200;
+        Instant createdAt = Instant.parse("2025-12-01T08:00:00.123456Z");
+        Notifications newest = createTestNotification(103, userId);
+        Notifications middle = createTestNotification(102, userId);
+        middle.setCreatedAt(createdAt);
+        Notifications extra = createTestNotification(101, userId);
+        when(notificationRepository.findByUser_IdOrderByCreatedAtDescIdDesc(eq(userId), any()))
+                .thenReturn(List.of(newest, middle, extra));
+
+        // When
+        Map<String, Object> firstPage = notificationService.getUserNotificationsByCursor(userId, null, 2);
+
+        // Then: trang đầu lấy dư 1 dòng, không trả dòng dư
+        assertThat((List<Map<String, Object>>) firstPage.get("data"))
+                .extracting(item -> item.get("id"))
+                .containsExactly(103, 102);
+        assertThat(firstPage.get("hasMore")).isEqualTo(true);
+        assertThat(firstPage.get("nextCursor")).isNotNull();
+
+        // When: trang sau dùng đúng (createdAt, id) của dòng cuối
+        when(notificationRepository.findPageBefore(eq(userId), eq(createdAt), eq(102), any()))
+                .thenReturn(List.of(extra));
+        Map<String, Object> secondPage = notificationService.getUserNotificationsByCursor(
+                userId, (String) firstPage.get("nextCursor"), 2);
+
+        // Then
+        assertThat((List<Map<String, Object>>) secondPage.get("data")).hasSize(1);
+        assertThat(secondPage.get("hasMore")).isEqualTo(false);
+        assertThat(secondPage.get("nextCursor")).isNull();
+    }
+
+    @Test
+    void getUserNotificationsByCursor_whenCursorInvalid_shouldThrowException() {
+        assertThatThrownBy(() -> notificationService.getUserNotificationsByCursor(200, "không-hợp-lệ", 20))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Cursor không hợp lệ");
+        verify(notificationRepository, never()).findPageBefore(any(), any(), any(), any());
+    }
+
+    // ==================== markNotificationsRead() Tests ====================
+
+    @Test
+    void markNotificationsRead_withoutIds_shouldMarkAllAndDecrementCounter() {
+        // Given
+        when(notificationRepository.markAllReadByUserId(200)).thenReturn(3);
+
+        // When
+        int updated = notificationService.markNotificationsRead(200, null);
+
+        // Then
+        assertThat(updated).isEqualTo(3);
+        verify(unreadCounter).addAfterCommit(200, -3);
+        verify(notificationRepository, never()).markReadByUserIdAndIds(any(), any());
+    }
+
+    @Test
+    void markNotificationsRead_withIds_shouldOnlyMarkSelected() {
+        // Given
+        when(notificationRepository.markReadByUserIdAndIds(200, List.of(1, 2))).thenReturn(1);
+
+        // When
+        int updated = notificationService.markNotificationsRead(200, List.of(1, 2));
+
+        // Then
+        assertThat(updated).isEqualTo(1);
+        verify(unreadCounter).addAfterCommit(200, -1);
+        verify(notificationRepository, never()).markAllReadByUserId(any());
     }
 
     // ==================== deleteNotification() Tests ====================
@@ -371,6 +458,7 @@ class NotificationServiceImplTest {
 
         // Then
         verify(notificationRepository).delete(notification);
+        verify(unreadCounter).addAfterCommit(userId, -1);
     }
 
     @Test
@@ -438,8 +526,97 @@ class NotificationServiceImplTest {
                 .hasMessageContaining("Không thể xóa approval đã được xử lý");
     }
 
+    // ==================== generateDrivingHoursAlerts() Tests ====================
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void generateDrivingHoursAlerts_whenDailyLimitExceeded_shouldSaveAlertsInOneBatch() {
+        // Given: tài xế 5 lái 6h + 5h hôm nay (đã xong), tài xế 7 chỉ lái 2h
+        Instant dayStart = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant();
+        when(tripDriverRepository.findDrivingHoursRows(any(), any(), any())).thenReturn(List.of(
+                tripRow(5, dayStart.plus(1, ChronoUnit.HOURS), dayStart.plus(7, ChronoUnit.HOURS), TripStatus.COMPLETED),
+                tripRow(5, dayStart.plus(8, ChronoUnit.HOURS), dayStart.plus(13, ChronoUnit.HOURS), TripStatus.COMPLETED),
+                tripRow(7, dayStart.plus(1, ChronoUnit.HOURS), dayStart.plus(3, ChronoUnit.HOURS), TripStatus.COMPLETED)));
+        when(driverRepository.findAllWithUserByIdIn(Set.of(5))).thenReturn(List.of(createTestDriver(5, "Trần Văn B")));
+        when(alertsRepository.findOpenAlertEntityIds(AlertType.DRIVING_HOURS_EXCEEDED, "DRIVER"))
+                .thenReturn(Collections.emptyList());
+
+        // When
+        notificationService.generateDrivingHoursAlerts();
+
+        // Then
+        ArgumentCaptor<List<SystemAlerts>> captor = ArgumentCaptor.forClass((Class) List.class);
+        verify(alertsRepository).saveAll(captor.capture());
+        assertThat(captor.getValue()).hasSize(1);
+        SystemAlerts alert = captor.getValue().get(0);
+        assertThat(alert.getRelatedEntityId()).isEqualTo(5);
+        assertThat(alert.getAlertType()).isEqualTo(AlertType.DRIVING_HOURS_EXCEEDED);
+        assertThat(alert.getTitle()).isEqualTo("Vượt giới hạn giờ lái trong ngày");
+        assertThat(alert.getMessage()).isEqualTo("Tài xế Trần Văn B đã lái 11 giờ trong ngày (vượt quá 10 giờ/ngày)");
+        // Không quét lịch sử chuyến từng tài xế
+        verify(tripDriverRepository, never()).findAllByDriverId(anyInt());
+        verify(driverRepository, never()).findAll();
+        verify(alertsRepository, never()).save(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void generateDrivingHoursAlerts_whenContinuousDrivingExceeded_shouldAlertOnce() {
+        // Given: 2 chuyến đang/sắp chạy cách nhau 10 phút, tổng 5h20m
+        Instant now = Instant.now();
+        when(tripDriverRepository.findDrivingHoursRows(any(), any(), any())).thenReturn(List.of(
+                tripRow(5, now.minus(3, ChronoUnit.HOURS), now.plus(10, ChronoUnit.MINUTES), TripStatus.ONGOING),
+                tripRow(5, now.plus(20, ChronoUnit.MINUTES), now.plus(140, ChronoUnit.MINUTES), TripStatus.ASSIGNED)));
+        when(driverRepository.findAllWithUserByIdIn(Set.of(5))).thenReturn(List.of(createTestDriver(5, "Trần Văn B")));
+        when(alertsRepository.findOpenAlertEntityIds(AlertType.DRIVING_HOURS_EXCEEDED, "DRIVER"))
+                .thenReturn(Collections.emptyList());
+
+        // When
+        notificationService.generateDrivingHoursAlerts();
+
+        // Then
+        ArgumentCaptor<List<SystemAlerts>> captor = ArgumentCaptor.forClass((Class) List.class);
+        verify(alertsRepository).saveAll(captor.capture());
+        assertThat(captor.getValue()).hasSize(1);
+        assertThat(captor.getValue().get(0).getTitle()).isEqualTo("Vượt giới hạn giờ lái liên tục");
+        assertThat(captor.getValue().get(0).getMessage())
+                .isEqualTo("Tài xế Trần Văn B đã lái liên tục 5 giờ (vượt quá 4 giờ)");
+    }
+
+    @Test
+    void generateDrivingHoursAlerts_whenNoDriverOverLimit_shouldNotTouchAlerts() {
+        // Given
+        Instant dayStart = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant();
+        when(tripDriverRepository.findDrivingHoursRows(any(), any(), any())).thenReturn(List.<Object[]>of(
+                tripRow(5, dayStart.plus(1, ChronoUnit.HOURS), dayStart.plus(3, ChronoUnit.HOURS), TripStatus.COMPLETED)));
+
+        // When
+        notificationService.generateDrivingHoursAlerts();
+
+        // Then
+        verifyNoInteractions(alertsRepository, driverRepository);
+    }
+
     // ==================== Helper Methods ====================
 
+    private Object[] tripRow(Integer driverId, Instant start, Instant end, TripStatus status) {
+        return new Object[]{driverId, start, end, status};
+    }
+
+    private Drivers createTestDriver(Integer driverId, String fullName) {
+        Users user = new Users();
+        user.setFullName(fullName);
+        Employees employee = new Employees();
+        employee.setUser(user);
+        Branches branch = new Branches();
+        branch.setId(10);
+        Drivers driver = new Drivers();
+        driver.setId(driverId);
+        driver.setEmployee(employee);
+        driver.setBranch(branch);
+        return driver;
+    }
+
     private SystemAlerts createTestAlert(Integer alertId, Integer branchId) {
         SystemAlerts alert = new SystemAlerts();
         alert.setId(alertId);
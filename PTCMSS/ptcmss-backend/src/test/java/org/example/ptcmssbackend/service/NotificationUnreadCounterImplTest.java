@@ -0,0 +1,120 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.repository.NotificationRepository;
+import org.example.ptcmssbackend.service.impl.NotificationUnreadCounterImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationUnreadCounterImplTest {
+
+    @Mock
+    private NotificationRepository notificationRepository;
+
+    @InjectMocks
+    private NotificationUnreadCounterImpl unreadCounter;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(unreadCounter, "maxUsers", 100L);
+        ReflectionTestUtils.setField(unreadCounter, "ttlSeconds", 600L);
+        ReflectionTestUtils.invokeMethod(unreadCounter, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void getUnreadCount_shouldCountFromDbOnlyOnce() {
+        // Given
+        when(notificationRepository.countByUser_IdAndIsReadFalse(10)).thenReturn(4L);
+
+        // When
+        long first = unreadCounter.getUnreadCount(10);
+        long second = unreadCounter.getUnreadCount(10);
+
+        // Then
+        assertThat(first).isEqualTo(4L);
+        assertThat(second).isEqualTo(4L);
+        verify(notificationRepository, times(1)).countByUser_IdAndIsReadFalse(10);
+    }
+
+    @Test
+    void addAfterCommit_withoutTransaction_shouldApplyImmediately() {
+        // Given
+        when(notificationRepository.countByUser_IdAndIsReadFalse(10)).thenReturn(4L);
+        unreadCounter.getUnreadCount(10);
+
+        // When
+        unreadCounter.addAfterCommit(List.of(10, 11), 1);
+        unreadCounter.addAfterCommit(10, -2);
+
+        // Then: user 11 chưa nạp nên bỏ qua, không đếm lại từ DB
+        assertThat(unreadCounter.getUnreadCount(10)).isEqualTo(3L);
+        verify(notificationRepository, never()).countByUser_IdAndIsReadFalse(11);
+    }
+
+    @Test
+    void addAfterCommit_insideTransaction_shouldApplyOnlyAfterCommit() {
+        // Given
+        when(notificationRepository.countByUser_IdAndIsReadFalse(10)).thenReturn(4L);
+        unreadCounter.getUnreadCount(10);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        unreadCounter.addAfterCommit(10, -4);
+
+        // Then: chưa commit thì chưa trừ
+        assertThat(unreadCounter.getUnreadCount(10)).isEqualTo(4L);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        assertThat(unreadCounter.getUnreadCount(10)).isZero();
+    }
+
+    @Test
+    void addAfterCommit_whenCounterGoesNegative_shouldReloadFromDb() {
+        // Given
+        when(notificationRepository.countByUser_IdAndIsReadFalse(10)).thenReturn(1L, 0L);
+        unreadCounter.getUnreadCount(10);
+
+        // When
+        unreadCounter.addAfterCommit(10, -2);
+
+        // Then
+        assertThat(unreadCounter.getUnreadCount(10)).isZero();
+        verify(notificationRepository, times(2)).countByUser_IdAndIsReadFalse(10);
+    }
+
+    @Test
+    void evictAfterCommit_shouldRecountOnNextRead() {
+        // Given
+        when(notificationRepository.countByUser_IdAndIsReadFalse(10)).thenReturn(5L, 2L);
+        unreadCounter.getUnreadCount(10);
+
+        // When
+        unreadCounter.evictAfterCommit(List.of(10));
+
+        // Then
+        assertThat(unreadCounter.getUnreadCount(10)).isEqualTo(2L);
+    }
+}
@@ -28,6 +28,9 @@ class PasswordServiceImplTest {
     @Mock
     private JwtService jwtService;
 
+    @Mock
+    private PrincipalCacheService principalCacheService;
+
     @Mock
     private EmailService emailService;
 
@@ -131,6 +134,7 @@ class PasswordServiceImplTest {
         assertThat(user.getVerificationToken()).isNull();
         assertThat(user.getStatus()).isEqualTo(UserStatus.ACTIVE);
         verify(usersRepository).save(user);
+        verify(principalCacheService).evictUser(username);
         try {
             verify(emailService).sendCredentialsEmail(anyString(), anyString(), anyString(), anyString());
         } catch (Exception e) {
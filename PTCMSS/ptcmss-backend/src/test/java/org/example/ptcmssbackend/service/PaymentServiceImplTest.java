@@ -11,7 +11,6 @@ import org.example.ptcmssbackend.enums.PaymentStatus;
 import org.example.ptcmssbackend.repository.BookingRepository;
 import org.example.ptcmssbackend.repository.EmployeeRepository;
 import org.example.ptcmssbackend.repository.InvoiceRepository;
-import org.example.ptcmssbackend.repository.NotificationRepository;
 import org.example.ptcmssbackend.repository.PaymentHistoryRepository;
 import org.example.ptcmssbackend.service.impl.PaymentServiceImpl;
 import org.junit.jupiter.api.Test;
@@ -41,15 +40,15 @@ class PaymentServiceImplTest {
     @Mock
     private PaymentHistoryRepository paymentHistoryRepository;
     @Mock
-    private EmployeeRepository employeeRepository;
+    private InvoiceLedgerService invoiceLedgerService;
     @Mock
-    private NotificationRepository notificationRepository;
+    private EmployeeRepository employeeRepository;
     @Mock
     private QrPaymentProperties qrPaymentProperties;
     @Mock
     private AppSettingService appSettingService;
     @Mock
-    private WebSocketNotificationService webSocketNotificationService;
+    private NotificationDispatcher notificationDispatcher;
 
     @InjectMocks
     private PaymentServiceImpl paymentService;
@@ -87,9 +86,6 @@ class PaymentServiceImplTest {
         when(qrPaymentProperties.getExpiresInMinutes()).thenReturn(15L);
         when(qrPaymentProperties.getProviderUrl()).thenReturn("https://img.vietqr.io/image");
         when(qrPaymentProperties.getTemplate()).thenReturn("compact");
-        when(employeeRepository.findByRoleNameAndBranchId(anyString(), anyInt()))
-                .thenReturn(Collections.emptyList());
-        doNothing().when(webSocketNotificationService).sendGlobalNotification(anyString(), anyString(), anyString());
 
         // When
         PaymentResponse result = paymentService.generateQRCode(bookingId, amount, note, deposit, employeeId);
@@ -104,6 +100,7 @@ class PaymentServiceImplTest {
         assertThat(result.getExpiresAt()).isNotNull();
         verify(invoiceRepository).save(any());
         verify(paymentHistoryRepository).save(any());
+        verify(notificationDispatcher).notifyRole(eq("Accountant"), anyInt(), anyString(), anyString(), isNull(), eq("INFO"));
     }
 
     @Test
@@ -182,9 +179,6 @@ class PaymentServiceImplTest {
             ph.setId(300);
             return ph;
         });
-        when(employeeRepository.findByRoleNameAndBranchId(anyString(), anyInt()))
-                .thenReturn(Collections.emptyList());
-        doNothing().when(webSocketNotificationService).sendGlobalNotification(anyString(), anyString(), anyString());
 
         // When
         PaymentResponse result = paymentService.createDeposit(bookingId, request, 1);
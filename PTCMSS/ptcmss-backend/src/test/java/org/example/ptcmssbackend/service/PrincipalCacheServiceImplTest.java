@@ -0,0 +1,131 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.common.TokenIdentity;
+import org.example.ptcmssbackend.common.TokenType;
+import org.example.ptcmssbackend.config.CacheConfig;
+import org.example.ptcmssbackend.config.CustomizeRequestFilter;
+import org.example.ptcmssbackend.entity.Roles;
+import org.example.ptcmssbackend.entity.Users;
+import org.example.ptcmssbackend.service.impl.PrincipalCacheServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PrincipalCacheServiceImplTest {
+
+    @Mock
+    private UserServiceDetail userServiceDetail;
+
+    @Mock
+    private JwtService jwtService;
+
+    private PrincipalCacheServiceImpl principalCacheService;
+
+    @BeforeEach
+    void setUp() {
+        // Dùng đúng cấu hình vùng cache của ứng dụng (Caffeine + decorator giao dịch)
+        SimpleCacheManager cacheManager = (SimpleCacheManager) new CacheConfig().cacheManager();
+        cacheManager.afterPropertiesSet();
+        principalCacheService = new PrincipalCacheServiceImpl(userServiceDetail, cacheManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getPrincipal_whenSameToken_shouldLoadUserOnce() {
+        Users user = createUser("driver01", "DRIVER");
+        when(userServiceDetail.loadUserByUsername("driver01")).thenReturn(user);
+
+        UserDetails first = principalCacheService.getPrincipal("driver01", "jti-1");
+        UserDetails second = principalCacheService.getPrincipal("driver01", "jti-1");
+
+        assertThat(second).isSameAs(first);
+        verify(userServiceDetail, times(1)).loadUserByUsername("driver01");
+    }
+
+    @Test
+    void getPrincipal_whenNewToken_shouldReload() {
+        when(userServiceDetail.loadUserByUsername("driver01")).thenReturn(createUser("driver01", "DRIVER"));
+
+        principalCacheService.getPrincipal("driver01", "jti-1");
+        principalCacheService.getPrincipal("driver01", "jti-2");
+
+        verify(userServiceDetail, times(2)).loadUserByUsername("driver01");
+    }
+
+    @Test
+    void evictUser_shouldRemoveOnlyThatUsersPrincipals() {
+        when(userServiceDetail.loadUserByUsername("driver01")).thenReturn(createUser("driver01", "DRIVER"));
+        when(userServiceDetail.loadUserByUsername("driver011")).thenReturn(createUser("driver011", "DRIVER"));
+        principalCacheService.getPrincipal("driver01", "jti-1");
+        principalCacheService.getPrincipal("driver01", "jti-2");
+        principalCacheService.getPrincipal("driver011", "jti-3");
+
+        principalCacheService.evictUser("driver01");
+        principalCacheService.getPrincipal("driver01", "jti-1");
+        principalCacheService.getPrincipal("driver011", "jti-3");
+
+        verify(userServiceDetail, times(3)).loadUserByUsername("driver01");
+        verify(userServiceDetail, times(1)).loadUserByUsername("driver011");
+    }
+
+    @Test
+    void evictAll_shouldForceReloadForEveryone() {
+        when(userServiceDetail.loadUserByUsername("driver01")).thenReturn(createUser("driver01", "DRIVER"));
+        principalCacheService.getPrincipal("driver01", "jti-1");
+
+        principalCacheService.evictAll();
+        principalCacheService.getPrincipal("driver01", "jti-1");
+
+        verify(userServiceDetail, times(2)).loadUserByUsername("driver01");
+    }
+
+    /**
+     * N request cùng token qua filter xác thực chỉ được phép truy vấn user 1 lần
+     */
+    @Test
+    void filter_repeatedRequestsWithSameToken_shouldHitDatabaseOnce() throws Exception {
+        int requests = 2_000;
+        Users user = createUser("consultant01", "CONSULTANT");
+        when(jwtService.extractIdentity("token-1", TokenType.ACCESS_TOKEN))
+                .thenReturn(new TokenIdentity("consultant01", "jti-1"));
+        when(userServiceDetail.loadUserByUsername("consultant01")).thenReturn(user);
+        CustomizeRequestFilter filter = new CustomizeRequestFilter(jwtService, principalCacheService);
+
+        for (int i = 0; i < requests; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/bookings");
+            request.addHeader("Authorization", "Bearer token-1");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, new MockFilterChain());
+            assertThat(response.getStatus()).isEqualTo(200);
+        }
+
+        verify(userServiceDetail, times(1)).loadUserByUsername("consultant01");
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getPrincipal()).isSameAs(user);
+    }
+
+    private Users createUser(String username, String roleName) {
+        Roles role = new Roles();
+        role.setRoleName(roleName);
+        Users user = new Users();
+        user.setUsername(username);
+        user.setRole(role);
+        return user;
+    }
+}
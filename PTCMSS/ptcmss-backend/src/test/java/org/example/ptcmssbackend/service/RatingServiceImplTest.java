@@ -45,6 +45,8 @@ class RatingServiceImplTest {
     private NotificationRepository notificationRepository;
     @Mock
     private WebSocketNotificationService webSocketNotificationService;
+    @Mock
+    private NotificationUnreadCounter unreadCounter;
 
     @InjectMocks
     private RatingServiceImpl ratingService;
@@ -0,0 +1,160 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.entity.Branches;
+import org.example.ptcmssbackend.entity.Drivers;
+import org.example.ptcmssbackend.entity.Vehicles;
+import org.example.ptcmssbackend.repository.DriverRepository;
+import org.example.ptcmssbackend.repository.VehicleRepository;
+import org.example.ptcmssbackend.service.impl.ResourceReservationServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResourceReservationServiceImplTest {
+
+    @Mock
+    private DriverRepository driverRepository;
+    @Mock
+    private VehicleRepository vehicleRepository;
+    @Mock
+    private ResourceTimelineService resourceTimelineService;
+
+    @InjectMocks
+    private ResourceReservationServiceImpl resourceReservationService;
+
+    private final Instant start = Instant.parse("2025-12-10T01:00:00Z");
+    private final Instant end = Instant.parse("2025-12-10T05:00:00Z");
+
+    @Test
+    void tryReserveVehicle_whenFree_shouldLockRowThenCheckCommittedSchedule() {
+        // Given
+        Vehicles vehicle = createVehicle(5, 1);
+        when(vehicleRepository.findForUpdate(5)).thenReturn(Optional.of(vehicle));
+        when(resourceTimelineService.isVehicleBusy(null, 5, start, end, List.of(100), null)).thenReturn(false);
+
+        // When
+        boolean reserved = resourceReservationService.tryReserveVehicle(5, start, end, List.of(100));
+
+        // Then: khóa trước, kiểm tra trên DB (branchId = null) sau
+        assertThat(reserved).isTrue();
+        InOrder inOrder = inOrder(vehicleRepository, resourceTimelineService);
+        inOrder.verify(vehicleRepository).findForUpdate(5);
+        inOrder.verify(resourceTimelineService).isVehicleBusy(null, 5, start, end, List.of(100), null);
+        verify(resourceTimelineService, never()).evictBranch(any());
+    }
+
+    @Test
+    void tryReserveVehicle_whenTimelineMissedCommittedTrip_shouldRejectAndEvictBranch() {
+        // Given: DB thấy chuyến vừa commit, chỉ mục của chi nhánh thì chưa
+        Vehicles vehicle = createVehicle(5, 1);
+        when(vehicleRepository.findForUpdate(5)).thenReturn(Optional.of(vehicle));
+        when(resourceTimelineService.isVehicleBusy(null, 5, start, end, List.of(100), null)).thenReturn(true);
+        when(resourceTimelineService.isVehicleBusyIfLoaded(1, 5, start, end, List.of(100))).thenReturn(false);
+
+        // When
+        boolean reserved = resourceReservationService.tryReserveVehicle(5, start, end, List.of(100));
+
+        // Then
+        assertThat(reserved).isFalse();
+        verify(resourceTimelineService).evictBranch(1);
+    }
+
+    @Test
+    void tryReserveDriver_whenBusy_shouldReject() {
+        // Given
+        Drivers driver = createDriver(7, 1);
+        when(driverRepository.findForUpdate(7)).thenReturn(Optional.of(driver));
+        when(resourceTimelineService.isDriverBusy(null, 7, start, end, List.of(100), null)).thenReturn(true);
+        when(resourceTimelineService.isDriverBusyIfLoaded(1, 7, start, end, List.of(100))).thenReturn(true);
+
+        // When
+        boolean reserved = resourceReservationService.tryReserveDriver(7, start, end, List.of(100));
+
+        // Then
+        assertThat(reserved).isFalse();
+        verify(resourceTimelineService, never()).evictBranch(any());
+    }
+
+    @Test
+    void tryReserveDriver_whenBranchIndexNotLoaded_shouldNotLoadItUnderLock() {
+        // Given: chỉ mục chi nhánh chưa nạp (null) -> không so sánh, không nạp khi đang giữ khóa
+        Drivers driver = createDriver(7, 1);
+        when(driverRepository.findForUpdate(7)).thenReturn(Optional.of(driver));
+        when(resourceTimelineService.isDriverBusy(null, 7, start, end, List.of(100), null)).thenReturn(true);
+        when(resourceTimelineService.isDriverBusyIfLoaded(1, 7, start, end, List.of(100))).thenReturn(null);
+
+        // When
+        boolean reserved = resourceReservationService.tryReserveDriver(7, start, end, List.of(100));
+
+        // Then
+        assertThat(reserved).isFalse();
+        verify(resourceTimelineService, never()).isDriverBusy(eq(1), any(), any(), any(), any(), any());
+        verify(resourceTimelineService, never()).evictBranch(any());
+    }
+
+    @Test
+    void tryReserveDriver_whenDriverNotFound_shouldThrowException() {
+        // Given
+        when(driverRepository.findForUpdate(99)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThatThrownBy(() -> resourceReservationService.tryReserveDriver(99, start, end, List.of()))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Không tìm thấy tài xế");
+        verifyNoInteractions(resourceTimelineService);
+    }
+
+    @Test
+    void lockDrivers_shouldLockInAscendingIdOrderOnce() {
+        // When
+        resourceReservationService.lockDrivers(Arrays.asList(9, null, 3, 9));
+
+        // Then: cùng thứ tự khóa ở mọi giao dịch để không khóa chéo
+        verify(driverRepository).findAllForUpdate(List.of(3, 9));
+        verifyNoMoreInteractions(driverRepository);
+    }
+
+    @Test
+    void lockVehicles_whenNoIds_shouldNotQuery() {
+        // When
+        resourceReservationService.lockVehicles(Arrays.asList(null, null));
+
+        // Then
+        verifyNoInteractions(vehicleRepository);
+    }
+
+    private Vehicles createVehicle(Integer id, Integer branchId) {
+        Vehicles vehicle = new Vehicles();
+        vehicle.setId(id);
+        vehicle.setBranch(createBranch(branchId));
+        return vehicle;
+    }
+
+    private Drivers createDriver(Integer id, Integer branchId) {
+        Drivers driver = new Drivers();
+        driver.setId(id);
+        driver.setBranch(createBranch(branchId));
+        return driver;
+    }
+
+    private Branches createBranch(Integer id) {
+        Branches branch = new Branches();
+        branch.setId(id);
+        return branch;
+    }
+}
@@ -0,0 +1,224 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.entity.*;
+import org.example.ptcmssbackend.enums.TripStatus;
+import org.example.ptcmssbackend.enums.VehicleStatus;
+import org.example.ptcmssbackend.repository.TripDriverRepository;
+import org.example.ptcmssbackend.repository.TripVehicleRepository;
+import org.example.ptcmssbackend.repository.VehicleRepository;
+import org.example.ptcmssbackend.service.impl.ResourceTimelineServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResourceTimelineServiceImplTest {
+
+    private static final Instant T0 = Instant.parse("2025-12-04T00:00:00Z");
+
+    @Mock
+    private TripVehicleRepository tripVehicleRepository;
+    @Mock
+    private TripDriverRepository tripDriverRepository;
+    @Mock
+    private VehicleRepository vehicleRepository;
+    @Mock
+    private TripOccupancyService tripOccupancyService;
+
+    @InjectMocks
+    private ResourceTimelineServiceImpl resourceTimelineService;
+
+    @Test
+    void isVehicleBusy_shouldUseBusyUntilAndExclusions() {
+        Vehicles vehicle = createVehicle(1, 10);
+        Trips trip = createTrip(100, 1000, hours(2), hours(4), TripStatus.ASSIGNED);
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(List.of(createTripVehicle(trip, vehicle)));
+        when(tripDriverRepository.findActiveByDriverBranchId(1)).thenReturn(Collections.emptyList());
+        // Xe bận tới 5h (sau khi về + buffer), khi nạp chỉ ước lượng không gọi API
+        when(tripOccupancyService.estimateBusyUntil(any(), eq(hours(2)), eq(hours(4)), any(), any(), any()))
+                .thenReturn(hours(5));
+
+        assertThat(resourceTimelineService.isVehicleBusy(1, 1, hours(4), hours(6), null, null)).isTrue();
+        assertThat(resourceTimelineService.isVehicleBusy(1, 1, hours(5), hours(6), null, null)).isFalse();
+        assertThat(resourceTimelineService.isVehicleBusy(1, 1, hours(0), hours(2), null, null)).isFalse();
+        assertThat(resourceTimelineService.isVehicleBusy(1, 1, hours(3), hours(6), Set.of(100), null)).isFalse();
+        assertThat(resourceTimelineService.isVehicleBusy(1, 1, hours(3), hours(6), null, 1000)).isFalse();
+        assertThat(resourceTimelineService.isVehicleBusy(1, 2, hours(3), hours(6), null, null)).isFalse();
+
+        // Chỉ nạp chi nhánh 1 lần
+        verify(tripVehicleRepository, times(1)).findActiveByVehicleBranchId(1);
+        verify(tripVehicleRepository, never()).findAllByVehicleId(anyInt());
+        verify(tripOccupancyService, never()).computeBusyUntil(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void isDriverBusy_shouldCheckRawTripWindow() {
+        Drivers driver = new Drivers();
+        driver.setId(7);
+        Trips trip = createTrip(200, 2000, hours(8), hours(10), TripStatus.SCHEDULED);
+        TripDrivers td = new TripDrivers();
+        td.setTrip(trip);
+        td.setDriver(driver);
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(Collections.emptyList());
+        when(tripDriverRepository.findActiveByDriverBranchId(1)).thenReturn(List.of(td));
+
+        assertThat(resourceTimelineService.isDriverBusy(1, 7, hours(9), hours(11), null, null)).isTrue();
+        assertThat(resourceTimelineService.isDriverBusy(1, 7, hours(10), hours(11), null, null)).isFalse();
+        assertThat(resourceTimelineService.isDriverBusy(1, 7, hours(9), hours(11), null, 2000)).isFalse();
+    }
+
+    @Test
+    void findNextFreeSlot_shouldReturnEndOfBlockingTripAndNextStart() {
+        Vehicles vehicle = createVehicle(1, 10);
+        Trips blocking = createTrip(101, 1001, hours(1), hours(5), TripStatus.ONGOING);
+        Trips next = createTrip(102, 1002, hours(8), hours(9), TripStatus.ASSIGNED);
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(List.of(
+                createTripVehicle(next, vehicle), createTripVehicle(blocking, vehicle)));
+        when(tripDriverRepository.findActiveByDriverBranchId(1)).thenReturn(Collections.emptyList());
+
+        ResourceTimelineService.FreeSlot slot = resourceTimelineService.findNextFreeSlot(1, 1, hours(3));
+        assertThat(slot.getAvailableFrom()).isEqualTo(hours(5));
+        assertThat(slot.getAvailableUntil()).isEqualTo(hours(8));
+
+        ResourceTimelineService.FreeSlot free = resourceTimelineService.findNextFreeSlot(1, 1, hours(6));
+        assertThat(free.getAvailableFrom()).isEqualTo(hours(6));
+        assertThat(free.getAvailableUntil()).isEqualTo(hours(8));
+    }
+
+    @Test
+    void findFreeVehicleIds_shouldFilterByCategoryAndExcludeBusy() {
+        Vehicles busyVehicle = createVehicle(1, 10);
+        Vehicles otherCategory = createVehicle(2, 20);
+        Vehicles freeVehicle = createVehicle(3, 10);
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(List.of(
+                createTripVehicle(createTrip(101, 1001, hours(1), hours(5), TripStatus.ASSIGNED), busyVehicle),
+                createTripVehicle(createTrip(102, 1002, hours(1), hours(5), TripStatus.ASSIGNED), otherCategory)));
+        when(tripDriverRepository.findActiveByDriverBranchId(1)).thenReturn(Collections.emptyList());
+        when(vehicleRepository.filterVehicles(10, 1, VehicleStatus.AVAILABLE)).thenReturn(List.of(busyVehicle, freeVehicle));
+
+        assertThat(resourceTimelineService.findBusyVehicleIds(1, 10, hours(2), hours(3))).containsExactly(1);
+        assertThat(resourceTimelineService.findFreeVehicleIds(1, 10, hours(2), hours(3))).containsExactly(3);
+    }
+
+    @Test
+    void onTripChanged_shouldUpdateLoadedBranchIncrementally() {
+        Vehicles vehicle = createVehicle(1, 10);
+        Trips trip = createTrip(100, 1000, hours(2), hours(4), TripStatus.ASSIGNED);
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(List.of(createTripVehicle(trip, vehicle)));
+        when(tripDriverRepository.findActiveByDriverBranchId(1)).thenReturn(Collections.emptyList());
+        assertThat(resourceTimelineService.findBusyVehicleIds(1, null, hours(3), hours(5))).containsExactly(1);
+
+        // Chuyến bị hủy -> gỡ khỏi chỉ mục mà không nạp lại chi nhánh
+        Trips cancelled = createTrip(100, 1000, hours(2), hours(4), TripStatus.CANCELLED);
+        when(tripVehicleRepository.findTimelineEntriesByTripId(100)).thenReturn(List.of(createTripVehicle(cancelled, vehicle)));
+        when(tripDriverRepository.findTimelineEntriesByTripId(100)).thenReturn(Collections.emptyList());
+        resourceTimelineService.onTripChanged(100);
+
+        assertThat(resourceTimelineService.findBusyVehicleIds(1, null, hours(3), hours(5))).isEmpty();
+
+        // Gán chuyến mới cho xe
+        Trips assigned = createTrip(300, 3000, hours(6), hours(7), TripStatus.ASSIGNED);
+        when(tripVehicleRepository.findTimelineEntriesByTripId(300)).thenReturn(List.of(createTripVehicle(assigned, vehicle)));
+        when(tripDriverRepository.findTimelineEntriesByTripId(300)).thenReturn(Collections.emptyList());
+        resourceTimelineService.onTripChanged(300);
+
+        assertThat(resourceTimelineService.findBusyVehicleIds(1, 10, hours(6), hours(8))).containsExactly(1);
+        verify(tripVehicleRepository, times(1)).findActiveByVehicleBranchId(1);
+        // Cập nhật chỉ mục cũng không gọi API khoảng cách
+        verify(tripOccupancyService, never()).computeBusyUntil(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void onTripChanged_duringLoad_shouldReloadOnNextQuery() {
+        Vehicles vehicle = createVehicle(1, 10);
+        Trips trip = createTrip(100, 1000, hours(2), hours(4), TripStatus.ASSIGNED);
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(List.of(createTripVehicle(trip, vehicle)));
+        // Chuyến 100 bị hủy đúng lúc đang nạp chi nhánh
+        when(tripDriverRepository.findActiveByDriverBranchId(1)).thenAnswer(invocation -> {
+            resourceTimelineService.onTripChanged(100);
+            return Collections.emptyList();
+        }).thenReturn(Collections.emptyList());
+
+        assertThat(resourceTimelineService.findBusyVehicleIds(1, null, hours(3), hours(5))).containsExactly(1);
+
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(Collections.emptyList());
+        assertThat(resourceTimelineService.findBusyVehicleIds(1, null, hours(3), hours(5))).isEmpty();
+        assertThat(resourceTimelineService.findBusyVehicleIds(1, null, hours(3), hours(5))).isEmpty();
+        verify(tripVehicleRepository, times(2)).findActiveByVehicleBranchId(1);
+    }
+
+    @Test
+    void isBusyIfLoaded_shouldNeverLoadBranch() {
+        assertThat(resourceTimelineService.isVehicleBusyIfLoaded(1, 1, hours(3), hours(6), null)).isNull();
+        assertThat(resourceTimelineService.isDriverBusyIfLoaded(1, 7, hours(3), hours(6), null)).isNull();
+        verifyNoInteractions(tripVehicleRepository, tripDriverRepository, tripOccupancyService);
+
+        Vehicles vehicle = createVehicle(1, 10);
+        Trips trip = createTrip(100, 1000, hours(2), hours(4), TripStatus.ASSIGNED);
+        when(tripVehicleRepository.findActiveByVehicleBranchId(1)).thenReturn(List.of(createTripVehicle(trip, vehicle)));
+        when(tripDriverRepository.findActiveByDriverBranchId(1)).thenReturn(Collections.emptyList());
+        when(tripOccupancyService.estimateBusyUntil(any(), eq(hours(2)), eq(hours(4)), any(), any(), any()))
+                .thenReturn(hours(5));
+        resourceTimelineService.findBusyVehicleIds(1, null, hours(3), hours(5));
+
+        // Đã nạp: trả lời từ chỉ mục
+        assertThat(resourceTimelineService.isVehicleBusyIfLoaded(1, 1, hours(4), hours(6), null)).isTrue();
+        assertThat(resourceTimelineService.isVehicleBusyIfLoaded(1, 1, hours(4), hours(6), Set.of(100))).isFalse();
+        assertThat(resourceTimelineService.isDriverBusyIfLoaded(1, 7, hours(3), hours(6), null)).isFalse();
+    }
+
+    @Test
+    void findBusyVehicleIds_withoutBranch_shouldFallbackToRepository() {
+        when(tripVehicleRepository.findBusyVehicleIds(null, 10, hours(1), hours(2))).thenReturn(List.of(5));
+
+        assertThat(resourceTimelineService.findBusyVehicleIds(null, 10, hours(1), hours(2))).containsExactly(5);
+        verify(tripVehicleRepository, never()).findActiveByVehicleBranchId(any());
+    }
+
+    private static Instant hours(int h) {
+        return T0.plusSeconds(h * 3600L);
+    }
+
+    private Vehicles createVehicle(Integer id, Integer categoryId) {
+        Branches branch = new Branches();
+        branch.setId(1);
+        VehicleCategoryPricing category = new VehicleCategoryPricing();
+        category.setId(categoryId);
+        Vehicles vehicle = new Vehicles();
+        vehicle.setId(id);
+        vehicle.setBranch(branch);
+        vehicle.setCategory(category);
+        vehicle.setStatus(VehicleStatus.AVAILABLE);
+        return vehicle;
+    }
+
+    private Trips createTrip(Integer id, Integer bookingId, Instant start, Instant end, TripStatus status) {
+        Bookings booking = new Bookings();
+        booking.setId(bookingId);
+        Trips trip = new Trips();
+        trip.setId(id);
+        trip.setBooking(booking);
+        trip.setStartTime(start);
+        trip.setEndTime(end);
+        trip.setStatus(status);
+        return trip;
+    }
+
+    private TripVehicles createTripVehicle(Trips trip, Vehicles vehicle) {
+        TripVehicles tv = new TripVehicles();
+        tv.setTrip(trip);
+        tv.setVehicle(vehicle);
+        return tv;
+    }
+}
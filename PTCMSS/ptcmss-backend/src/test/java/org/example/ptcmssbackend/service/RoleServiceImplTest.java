@@ -2,6 +2,7 @@ package org.example.ptcmssbackend.service;
 
 import org.example.ptcmssbackend.dto.request.Role.CreateRoleRequest;
 import org.example.ptcmssbackend.dto.request.Role.UpdateRoleRequest;
+import org.example.ptcmssbackend.dto.response.Role.RoleResponse;
 import org.example.ptcmssbackend.entity.Roles;
 import org.example.ptcmssbackend.enums.UserStatus;
 import org.example.ptcmssbackend.repository.RolesRepository;
@@ -26,6 +27,9 @@ class RoleServiceImplTest {
     @Mock
     private RolesRepository rolesRepository;
 
+    @Mock
+    private PrincipalCacheService principalCacheService;
+
     @InjectMocks
     private RoleServiceImpl roleService;
 
@@ -48,7 +52,7 @@ class RoleServiceImplTest {
         when(rolesRepository.save(any(Roles.class))).thenReturn(savedRole);
 
         // When
-        Roles result = roleService.createRole(request);
+        RoleResponse result = roleService.createRole(request);
 
         // Then
         assertThat(result).isNotNull();
@@ -96,7 +100,7 @@ class RoleServiceImplTest {
         when(rolesRepository.save(any(Roles.class))).thenReturn(savedRole);
 
         // When
-        Roles result = roleService.createRole(request);
+        RoleResponse result = roleService.createRole(request);
 
         // Then
         assertThat(result).isNotNull();
@@ -125,7 +129,7 @@ class RoleServiceImplTest {
         when(rolesRepository.save(any(Roles.class))).thenReturn(existingRole);
 
         // When
-        Roles result = roleService.updateRole(roleId, request);
+        RoleResponse result = roleService.updateRole(roleId, request);
 
         // Then
         assertThat(result).isNotNull();
@@ -134,6 +138,7 @@ class RoleServiceImplTest {
         assertThat(result.getStatus()).isEqualTo(UserStatus.ACTIVE);
         verify(rolesRepository).findById(roleId);
         verify(rolesRepository).save(existingRole);
+        verify(principalCacheService).evictAll();
     }
 
     @Test
@@ -154,7 +159,7 @@ class RoleServiceImplTest {
         when(rolesRepository.save(any(Roles.class))).thenReturn(existingRole);
 
         // When
-        Roles result = roleService.updateRole(roleId, request);
+        RoleResponse result = roleService.updateRole(roleId, request);
 
         // Then
         assertThat(result).isNotNull();
@@ -202,7 +207,7 @@ class RoleServiceImplTest {
         when(rolesRepository.findAll()).thenReturn(List.of(role1, role2, role3));
 
         // When
-        List<Roles> result = roleService.getAllRoles(null, null);
+        List<RoleResponse> result = roleService.getAllRoles(null, null);
 
         // Then
         assertThat(result).hasSize(3);
@@ -230,7 +235,7 @@ class RoleServiceImplTest {
         when(rolesRepository.findAll()).thenReturn(List.of(role1, role2, role3));
 
         // When
-        List<Roles> result = roleService.getAllRoles("MAN", null);
+        List<RoleResponse> result = roleService.getAllRoles("MAN", null);
 
         // Then
         assertThat(result).hasSize(1);
@@ -258,7 +263,7 @@ class RoleServiceImplTest {
         when(rolesRepository.findAll()).thenReturn(List.of(role1, role2, role3));
 
         // When
-        List<Roles> result = roleService.getAllRoles(null, UserStatus.ACTIVE);
+        List<RoleResponse> result = roleService.getAllRoles(null, UserStatus.ACTIVE);
 
         // Then
         assertThat(result).hasSize(2);
@@ -286,7 +291,7 @@ class RoleServiceImplTest {
         when(rolesRepository.findAll()).thenReturn(List.of(role1, role2, role3));
 
         // When
-        List<Roles> result = roleService.getAllRoles("AD", UserStatus.ACTIVE);
+        List<RoleResponse> result = roleService.getAllRoles("AD", UserStatus.ACTIVE);
 
         // Then
         assertThat(result).hasSize(1);
@@ -304,7 +309,7 @@ class RoleServiceImplTest {
         when(rolesRepository.findAll()).thenReturn(List.of(role1));
 
         // When
-        List<Roles> result = roleService.getAllRoles("NONEXISTENT", null);
+        List<RoleResponse> result = roleService.getAllRoles("NONEXISTENT", null);
 
         // Then
         assertThat(result).isEmpty();
@@ -326,7 +331,7 @@ class RoleServiceImplTest {
         when(rolesRepository.findById(roleId)).thenReturn(Optional.of(role));
 
         // When
-        Roles result = roleService.getRoleById(roleId);
+        RoleResponse result = roleService.getRoleById(roleId);
 
         // Then
         assertThat(result).isNotNull();
@@ -427,7 +432,7 @@ class RoleServiceImplTest {
         when(rolesRepository.findAll()).thenReturn(List.of(role1, role2));
 
         // When
-        List<Roles> result = roleService.getAllRoles("admin", null);
+        List<RoleResponse> result = roleService.getAllRoles("admin", null);
 
         // Then
         assertThat(result).hasSize(2); // Case insensitive matching
@@ -449,7 +454,7 @@ class RoleServiceImplTest {
         when(rolesRepository.save(any(Roles.class))).thenReturn(savedRole);
 
         // When
-        Roles result = roleService.createRole(request);
+        RoleResponse result = roleService.createRole(request);
 
         // Then
         assertThat(result.getStatus()).isEqualTo(UserStatus.ACTIVE);
@@ -0,0 +1,242 @@
+package org.example.ptcmssbackend.service;
+
+import org.example.ptcmssbackend.dto.response.GraphHopper.DistanceResult;
+import org.example.ptcmssbackend.dto.response.GraphHopper.PlaceSuggestion;
+import org.example.ptcmssbackend.entity.GeocodeCache;
+import org.example.ptcmssbackend.entity.RouteCache;
+import org.example.ptcmssbackend.repository.GeocodeCacheRepository;
+import org.example.ptcmssbackend.repository.RouteCacheRepository;
+import org.example.ptcmssbackend.service.impl.RoutingCacheServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoutingCacheServiceImplTest {
+
+    @Mock
+    private GeocodeCacheRepository geocodeCacheRepository;
+    @Mock
+    private RouteCacheRepository routeCacheRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private RoutingCacheServiceImpl routingCacheService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(routingCacheService, "memorySize", 100L);
+        ReflectionTestUtils.setField(routingCacheService, "dbTtlDays", 30L);
+        ReflectionTestUtils.invokeMethod(routingCacheService, "init");
+    }
+
+    @Test
+    void normalizeAddress_shouldIgnoreCaseSpacingAndTrailingPunctuation() {
+        assertThat(routingCacheService.normalizeAddress("  Sân bay Nội Bài ,Sóc Sơn,,  Hà Nội. "))
+                .isEqualTo("sân bay nội bài, sóc sơn, hà nội");
+    }
+
+    @Test
+    void getPlace_whenSameNormalizedAddress_shouldGeocodeOnceAndPersist() {
+        when(geocodeCacheRepository.findByAddressKey("sân bay nội bài, hà nội")).thenReturn(Optional.empty());
+        AtomicInteger calls = new AtomicInteger();
+
+        PlaceSuggestion first = routingCacheService.getPlace("Sân bay Nội Bài, Hà Nội", address -> {
+            calls.incrementAndGet();
+            return place("Sân bay Nội Bài", 21.2187, 105.8042);
+        });
+        PlaceSuggestion second = routingCacheService.getPlace("  sân bay nội bài ,hà nội ", address -> {
+            calls.incrementAndGet();
+            return null;
+        });
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(second).isSameAs(first);
+        verify(geocodeCacheRepository, times(1)).findByAddressKey(anyString());
+        verify(geocodeCacheRepository).save(any(GeocodeCache.class));
+    }
+
+    @Test
+    void getPlace_whenFreshRowInDatabase_shouldNotCallApi() {
+        GeocodeCache row = geocodeRow(Instant.now().minus(Duration.ofDays(1)));
+        when(geocodeCacheRepository.findByAddressKey("hoàn kiếm, hà nội")).thenReturn(Optional.of(row));
+
+        PlaceSuggestion place = routingCacheService.getPlace("Hoàn Kiếm, Hà Nội", address -> {
+            throw new AssertionError("Không được gọi API");
+        });
+
+        assertThat(place.getLatitude()).isEqualTo(21.0285);
+        assertThat(place.getFullAddress()).isEqualTo("Hoàn Kiếm, Hà Nội, Việt Nam");
+        verify(geocodeCacheRepository, never()).save(any());
+    }
+
+    @Test
+    void getPlace_whenDatabaseRowStale_shouldRefreshSameRow() {
+        GeocodeCache row = geocodeRow(Instant.now().minus(Duration.ofDays(60)));
+        when(geocodeCacheRepository.findByAddressKey("hoàn kiếm, hà nội")).thenReturn(Optional.of(row));
+
+        PlaceSuggestion place = routingCacheService.getPlace("Hoàn Kiếm, Hà Nội",
+                address -> place("Hoàn Kiếm", 21.0290, 105.8530));
+
+        assertThat(place.getLatitude()).isEqualTo(21.0290);
+        verify(geocodeCacheRepository).save(row);
+        assertThat(row.getId()).isEqualTo(7);
+        assertThat(row.getLatitude()).isEqualTo(21.0290);
+    }
+
+    @Test
+    void getPlace_whenNotFound_shouldNotCacheMiss() {
+        when(geocodeCacheRepository.findByAddressKey("không tồn tại")).thenReturn(Optional.empty());
+        AtomicInteger calls = new AtomicInteger();
+
+        routingCacheService.getPlace("Không tồn tại", address -> { calls.incrementAndGet(); return null; });
+        PlaceSuggestion second = routingCacheService.getPlace("Không tồn tại", address -> { calls.incrementAndGet(); return null; });
+
+        assertThat(second).isNull();
+        assertThat(calls.get()).isEqualTo(2);
+        verify(geocodeCacheRepository, never()).save(any());
+    }
+
+    @Test
+    void getRoute_whenConcurrentIdenticalLookups_shouldCallRouterOnce() throws Exception {
+        when(routeCacheRepository.findByRouteKey(anyString())).thenReturn(Optional.empty());
+        PlaceSuggestion airport = place("Nội Bài", 21.2187, 105.8042);
+        PlaceSuggestion centre = place("Hoàn Kiếm", 21.0285, 105.8542);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch routerEntered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BiFunction<PlaceSuggestion, PlaceSuggestion, DistanceResult> router = (from, to) -> {
+            calls.incrementAndGet();
+            routerEntered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return DistanceResult.builder().distanceKm(27.5).durationMinutes(40.0).build();
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<DistanceResult>> results = new ArrayList<>();
+            results.add(executor.submit(() -> routingCacheService.getRoute(airport, centre, router)));
+            assertThat(routerEntered.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> routingCacheService.getRoute(airport, centre, router)));
+            }
+            release.countDown();
+
+            for (Future<DistanceResult> result : results) {
+                DistanceResult route = result.get(5, TimeUnit.SECONDS);
+                assertThat(route.getDistanceKm()).isEqualTo(27.5);
+                assertThat(route.getFrom()).isEqualTo("Nội Bài");
+                assertThat(route.getTo()).isEqualTo("Hoàn Kiếm");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(calls.get()).isEqualTo(1);
+        verify(routeCacheRepository, times(1)).save(any(RouteCache.class));
+    }
+
+    @Test
+    void getRoute_whenPersistFails_shouldStillReturnRoute() {
+        when(routeCacheRepository.findByRouteKey("21.21870,105.80420;21.02850,105.85420")).thenReturn(Optional.empty());
+        when(routeCacheRepository.save(any(RouteCache.class))).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        DistanceResult route = routingCacheService.getRoute(
+                place("Nội Bài", 21.2187, 105.8042), place("Hoàn Kiếm", 21.0285, 105.8542),
+                (from, to) -> DistanceResult.builder().distanceKm(27.5).durationMinutes(40.0).build());
+
+        assertThat(route.getDistanceKm()).isEqualTo(27.5);
+    }
+
+    @Test
+    void findRoutes_shouldServeMemoryThenDatabaseAndSkipStaleRows() {
+        RouteCache fresh = routeRow("B>C", 2.3, Instant.now());
+        RouteCache stale = routeRow("B>D", 9.9, Instant.now().minus(Duration.ofDays(90)));
+        when(routeCacheRepository.findByRouteKeyIn(anyCollection())).thenReturn(List.of(fresh, stale));
+        routingCacheService.putRoutes(Map.of("A>C", DistanceResult.builder().distanceKm(27.5).build()));
+
+        Map<String, DistanceResult> found = routingCacheService.findRoutes(List.of("A>C", "B>C", "B>D"));
+
+        assertThat(found).containsOnlyKeys("A>C", "B>C");
+        assertThat(found.get("B>C").getDistanceKm()).isEqualTo(2.3);
+        // B>C đã lên bộ nhớ: không hỏi lại DB (1 lần của putRoutes + 1 lần của findRoutes đầu tiên)
+        routingCacheService.findRoutes(List.of("B>C"));
+        verify(routeCacheRepository, times(2)).findByRouteKeyIn(anyCollection());
+    }
+
+    @Test
+    void putRoutes_shouldUpdateExistingRowsAndInsertNewOnes() {
+        RouteCache existing = routeRow("A>C", 30.0, Instant.now().minus(Duration.ofDays(40)));
+        when(routeCacheRepository.findByRouteKeyIn(anyCollection())).thenReturn(List.of(existing));
+
+        routingCacheService.putRoutes(Map.of(
+                "A>C", DistanceResult.builder().distanceKm(27.5).durationMinutes(40.0).build(),
+                "B>C", DistanceResult.builder().distanceKm(2.3).durationMinutes(8.0).build()));
+
+        verify(routeCacheRepository).saveAll(argThat(rows -> {
+            List<RouteCache> list = new ArrayList<>();
+            rows.forEach(list::add);
+            return list.size() == 2 && list.contains(existing) && existing.getDistanceKm() == 27.5;
+        }));
+    }
+
+    private RouteCache routeRow(String key, double km, Instant updatedAt) {
+        RouteCache row = new RouteCache();
+        row.setRouteKey(key);
+        row.setDistanceKm(km);
+        row.setUpdatedAt(updatedAt);
+        return row;
+    }
+
+    private PlaceSuggestion place(String name, double lat, double lng) {
+        return PlaceSuggestion.builder()
+                .description(name)
+                .fullAddress(name)
+                .latitude(lat)
+                .longitude(lng)
+                .build();
+    }
+
+    private GeocodeCache geocodeRow(Instant updatedAt) {
+        GeocodeCache row = new GeocodeCache();
+        row.setId(7);
+        row.setAddressKey("hoàn kiếm, hà nội");
+        row.setFullAddress("Hoàn Kiếm, Hà Nội, Việt Nam");
+        row.setLatitude(21.0285);
+        row.setLongitude(105.8542);
+        row.setUpdatedAt(updatedAt);
+        return row;
+    }
+}
@@ -32,6 +32,9 @@ class SystemSettingServiceImplTest {
     @Mock
     private EmployeeRepository employeeRepository;
 
+    @Mock
+    private PricingService pricingService;
+
     @InjectMocks
     private SystemSettingServiceImpl systemSettingService;
 
@@ -234,6 +237,7 @@ class SystemSettingServiceImplTest {
         assertThat(existingSetting.getStatus()).isEqualTo(SettingStatus.INACTIVE);
         verify(systemSettingRepository).findById(id);
         verify(systemSettingRepository).save(existingSetting);
+        verify(pricingService).invalidate();
     }
 
     @Test
@@ -53,6 +53,9 @@ class UserServiceImplTest {
     @Mock
     private LocalImageService localImageService;
 
+    @Mock
+    private PrincipalCacheService principalCacheService;
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -374,6 +377,7 @@ class UserServiceImplTest {
 
         Users user = new Users();
         user.setId(userId);
+        user.setUsername("locked.user");
         user.setStatus(UserStatus.ACTIVE);
 
         Roles role = new Roles();
@@ -389,6 +393,7 @@ class UserServiceImplTest {
         // Then
         verify(usersRepository).save(user);
         assertThat(user.getStatus()).isEqualTo(UserStatus.INACTIVE);
+        verify(principalCacheService).evictUser("locked.user");
     }
 
     @Test
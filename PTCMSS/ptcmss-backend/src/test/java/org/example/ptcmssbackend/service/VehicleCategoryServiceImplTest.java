@@ -31,6 +31,8 @@ class VehicleCategoryServiceImplTest {
     private VehicleCategoryPricingRepository categoryRepository;
     @Mock
     private VehicleRepository vehicleRepository;
+    @Mock
+    private PricingService pricingService;
 
     @InjectMocks
     private VehicleCategoryServiceImpl vehicleCategoryService;
@@ -160,6 +162,7 @@ class VehicleCategoryServiceImplTest {
         assertThat(result.getCategoryName()).isEqualTo("Xe 4 chỗ Premium");
         assertThat(result.getSeats()).isEqualTo(4);
         verify(categoryRepository).save(any());
+        verify(pricingService).invalidate();
     }
 
     @Test
@@ -0,0 +1,134 @@
+package org.example.ptcmssbackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebSocketNotificationServiceTest {
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    private MeterRegistry meterRegistry;
+    private WebSocketNotificationService notificationService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        notificationService = new WebSocketNotificationService(messagingTemplate, meterRegistry);
+        ReflectionTestUtils.setField(notificationService, "legacyDestinations", false);
+        // Cửa sổ dài để test tự gọi flush
+        ReflectionTestUtils.setField(notificationService, "coalesceWindowMs", 60_000L);
+        ReflectionTestUtils.setField(notificationService, "coalesceMaxPending", 100);
+        ReflectionTestUtils.invokeMethod(notificationService, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(notificationService, "shutdown");
+    }
+
+    @Test
+    void sendUserNotification_shouldUseUserQueueOnly() {
+        // When
+        notificationService.sendUserNotification(201, "Tiêu đề", "Nội dung", "INFO");
+
+        // Then
+        verify(messagingTemplate).convertAndSendToUser(eq("201"), eq("/queue/notifications"), any(Object.class));
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    void sendUserNotification_withLegacyDestinations_shouldAlsoSendLegacyTopic() {
+        // Given
+        ReflectionTestUtils.setField(notificationService, "legacyDestinations", true);
+
+        // When
+        notificationService.sendUserNotification(201, "Tiêu đề", "Nội dung", "INFO");
+
+        // Then
+        verify(messagingTemplate).convertAndSendToUser(eq("201"), eq("/queue/notifications"), any(Object.class));
+        verify(messagingTemplate).convertAndSend(eq("/topic/notifications/201"), any(Object.class));
+    }
+
+    @Test
+    void sendBranchNotification_shouldOnlyReachBranchTopic() {
+        // When
+        notificationService.sendBranchNotification(1, "Đơn hàng mới", "Đơn ORD-1", "INFO");
+
+        // Then
+        verify(messagingTemplate).convertAndSend(eq("/topic/branch.1.notifications"), any(Object.class));
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/notifications"), any(Object.class));
+    }
+
+    @Test
+    void sendBranchNotification_withoutBranch_shouldFallBackToGlobalTopic() {
+        // When
+        notificationService.sendBranchNotification(null, "Thông báo", "Nội dung", "INFO");
+
+        // Then
+        verify(messagingTemplate).convertAndSend(eq("/topic/notifications"), any(Object.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendBookingUpdate_burstForSameBooking_shouldSendLatestStateOnce() {
+        // When
+        notificationService.sendBookingUpdate(1, 10, "CREATED", "Đã tạo");
+        notificationService.sendBookingUpdate(1, 10, "ASSIGNED", "Đã gán");
+        notificationService.sendBookingUpdate(1, 11, "CREATED", "Đã tạo");
+        verifyNoInteractions(messagingTemplate);
+        ReflectionTestUtils.invokeMethod(notificationService, "flushPendingUpdates");
+
+        // Then
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate, times(2)).convertAndSend(eq("/topic/branch.1.bookings"), captor.capture());
+        assertThat(captor.getAllValues())
+                .extracting(payload -> ((Map<String, Object>) payload).get("status"))
+                .containsExactlyInAnyOrder("ASSIGNED", "CREATED");
+        assertThat(meterRegistry.counter("websocket.messages.coalesced").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void sendDispatchUpdate_whenCoalescingDisabled_shouldSendImmediately() {
+        // Given
+        ReflectionTestUtils.invokeMethod(notificationService, "shutdown");
+        ReflectionTestUtils.setField(notificationService, "coalesceWindowMs", 0L);
+        ReflectionTestUtils.setField(notificationService, "flusher", null);
+
+        // When
+        notificationService.sendDispatchUpdate(null, 5, "UNASSIGNED", "Đã hủy gán");
+
+        // Then
+        verify(messagingTemplate).convertAndSend(eq("/topic/dispatches"), any(Object.class));
+    }
+
+    @Test
+    void sendGlobalNotification_whenBrokerRejects_shouldCountDroppedMessage() {
+        // Given
+        doThrow(new MessageDeliveryException("Hàng đợi đầy"))
+                .when(messagingTemplate).convertAndSend(eq("/topic/notifications"), any(Object.class));
+
+        // When
+        notificationService.sendGlobalNotification("Tiêu đề", "Nội dung", "INFO");
+
+        // Then
+        assertThat(meterRegistry.counter("websocket.messages.dropped", "reason", "send_failed").count()).isEqualTo(1.0);
+    }
+}
@@ -13,7 +13,7 @@ function getCookie(name) {
   return "";
 }
 
-function getAccessToken() {
+export function getAccessToken() {
   try {
     const v = localStorage.getItem("access_token") || "";
     if (v) return v;
@@ -48,7 +48,7 @@ export default function NotificationToast() {
                  msg.includes('leave');
         }
         // Nếu không có type và message không rõ, chỉ hiển thị nếu từ user-specific channel
-        return true; // Hiển thị tất cả từ /topic/notifications/{userId}
+        return true; // Hiển thị tất cả từ /user/queue/notifications
       });
     }
     
@@ -741,7 +741,7 @@ export default function NotificationsWidget() {
                        msg.includes('leave');
             }
             // Nếu không có type và message không rõ, đếm nếu từ user-specific channel
-            return true; // Đếm tất cả từ /topic/notifications/{userId}
+            return true; // Đếm tất cả từ /user/queue/notifications
         }).length
         : role === ROLES.CONSULTANT
             ? pendingDepositBookings.length + wsNotifications.filter(n => {
@@ -1099,7 +1099,7 @@ export default function NotificationsWidget() {
                                                    msg.includes('leave');
                                         }
                                         // Nếu không có type và message không rõ, chỉ hiển thị nếu từ user-specific channel
-                                        return true; // Hiển thị tất cả từ /topic/notifications/{userId}
+                                        return true; // Hiển thị tất cả từ /user/queue/notifications
                                     }).length}
                                 />
                                 
@@ -1148,7 +1148,7 @@ export default function NotificationsWidget() {
                                                    msg.includes('leave');
                                         }
                                         // Nếu không có type và message không rõ, chỉ hiển thị nếu từ user-specific channel
-                                        return true; // Hiển thị tất cả từ /topic/notifications/{userId}
+                                        return true; // Hiển thị tất cả từ /user/queue/notifications
                                     });
 
                                     if (driverNotifications.length === 0) {
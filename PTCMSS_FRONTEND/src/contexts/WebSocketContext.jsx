@@ -1,7 +1,9 @@
 import React, { createContext, useContext, useEffect, useRef, useState } from 'react';
 import SockJS from 'sockjs-client';
 import { Client } from '@stomp/stompjs';
-import { getCurrentRole, ROLES } from '../utils/session';
+import { getCurrentRole, getStoredUserId, ROLES } from '../utils/session';
+import { listBranches, getBranchByUserId } from '../api/branches';
+import { getAccessToken } from '../api/http';
 
 const WebSocketContext = createContext(null);
 
@@ -110,9 +112,33 @@ export const WebSocketProvider = ({ children }) => {
       }
     };
     
+    // Branch ids whose /topic/branch.{id}.* channels this user may receive
+    const resolveBranchIds = async (role) => {
+      try {
+        if (role === ROLES.ADMIN) {
+          const branches = await listBranches({ size: 100 });
+          const list = Array.isArray(branches) ? branches : (branches?.content || branches?.items || []);
+          return list.map((b) => b.branchId ?? b.id).filter(Boolean);
+        }
+        const userId = getStoredUserId();
+        if (!userId) return [];
+        const branch = await getBranchByUserId(Number(userId));
+        const branchId = branch?.branchId ?? branch?.id;
+        return branchId ? [branchId] : [];
+      } catch (err) {
+        console.warn('[WebSocket] Could not resolve branch for realtime channels:', err);
+        return [];
+      }
+    };
+
     // Create STOMP client with SockJS
     const client = new Client({
       webSocketFactory: () => new SockJS(getWebSocketUrl()),
+      // Server authenticates the STOMP session from this header (needed for /user/queue and branch topics)
+      beforeConnect: () => {
+        const token = getAccessToken();
+        client.connectHeaders = token ? { Authorization: `Bearer ${token}` } : {};
+      },
       debug: (str) => {
         console.log('[WebSocket Debug]', str);
       },
@@ -128,152 +154,102 @@ export const WebSocketProvider = ({ children }) => {
         const isDriver = currentRole === ROLES.DRIVER;
         console.log('[WebSocket] Current role:', currentRole, 'isDriver:', isDriver);
 
-        // Subscribe to global notifications ONLY for admin/manager/coordinator roles
-        // Driver should NOT receive global notifications (they are for admin dashboard)
-        let sub1 = null;
-        if (!isDriver) {
-          sub1 = client.subscribe('/topic/notifications', (message) => {
-            const notification = JSON.parse(message.body);
-            console.log('[WebSocket] Received GLOBAL notification:', notification);
-            
-            // Check if notification already exists to prevent duplicates
-            setNotifications((prev) => {
-              const exists = prev.some(n => 
-                n.id === notification.id || 
-                (n.timestamp === notification.timestamp && n.message === notification.message)
-              );
-              if (exists) {
-                console.log('[WebSocket] Duplicate notification ignored');
-                return prev;
-              }
-              // Add showToast: true for realtime notifications (show popup toast)
-              return [{ ...notification, showToast: true }, ...prev];
-            });
+        const addNotification = (notification, label) => {
+          // Check if notification already exists to prevent duplicates
+          setNotifications((prev) => {
+            const exists = prev.some(n =>
+              n.id === notification.id ||
+              (n.timestamp === notification.timestamp && n.message === notification.message)
+            );
+            if (exists) {
+              console.log(`[WebSocket] Duplicate ${label} notification ignored`);
+              return prev;
+            }
+            // Add showToast: true for realtime notifications (show popup toast)
+            return [{ ...notification, showToast: true }, ...prev];
           });
-        } else {
-          console.log('[WebSocket] Driver role - skipping global notifications channel');
-        }
+        };
 
-        // Auto-subscribe to user-specific notifications (for ALL roles including driver)
-        let userId = localStorage.getItem('userId');
-        if (!userId) {
-          const cookieMatch = document.cookie.match(/userId=(\d+)/);
-          userId = cookieMatch ? cookieMatch[1] : null;
-        }
-        
-        let userSub = null;
-        if (userId) {
-          console.log('[WebSocket] Subscribing to user notifications for userId:', userId, 'role:', currentRole);
-          userSub = client.subscribe(`/topic/notifications/${userId}`, (message) => {
-            const notification = JSON.parse(message.body);
-            console.log('[WebSocket] Received USER notification for userId', userId, ':', notification);
-            setNotifications((prev) => {
-              const exists = prev.some(n => 
-                n.id === notification.id || 
-                (n.timestamp === notification.timestamp && n.message === notification.message)
-              );
-              if (exists) {
-                console.log('[WebSocket] Duplicate user notification ignored');
-                return prev;
-              }
-              // Add showToast: true for realtime notifications (show popup toast)
-              return [{ ...notification, showToast: true }, ...prev];
-            });
-          });
-        } else {
-          console.log('[WebSocket] WARNING: No userId found, cannot subscribe to user-specific notifications');
-        }
-
-        // Subscribe to booking updates (separate channel for real-time updates)
-        // Driver should NOT receive booking updates (they are for admin/coordinator)
-        let sub2 = null;
-        if (!isDriver) {
-          sub2 = client.subscribe('/topic/bookings', (message) => {
-            const update = JSON.parse(message.body);
-            console.log('[WebSocket] Received booking update:', update);
-            
-            // Only add if not already in notifications
-            setNotifications((prev) => {
-              const exists = prev.some(n => 
-                n.data?.bookingId === update.bookingId && 
-                n.timestamp === update.timestamp
-              );
-              if (exists) {
-                console.log('[WebSocket] Duplicate booking notification ignored');
-                return prev;
-              }
-              return [
-                {
-                  id: Date.now(),
-                  title: 'Cập nhật đơn hàng',
-                  message: update.message,
-                  type: 'BOOKING_UPDATE',
-                  timestamp: update.timestamp,
-                  read: false,
-                  data: update,
-                  showToast: true, // Realtime notification - show popup toast
-                },
-                ...prev
-              ];
-            });
-          });
-        } else {
-          console.log('[WebSocket] Driver role - skipping booking updates channel');
-        }
-
-        // Subscribe to payment updates
-        // Driver should NOT receive general payment updates (they get specific notifications via /topic/notifications/{userId})
-        let sub3 = null;
-        if (!isDriver) {
-          sub3 = client.subscribe('/topic/payments', (message) => {
-            const update = JSON.parse(message.body);
-            console.log('[WebSocket] Received payment update:', update);
-            setNotifications((prev) => [
+        const addUpdate = (update, title, type) => {
+          setNotifications((prev) => {
+            const exists = type === 'BOOKING_UPDATE' && prev.some(n =>
+              n.data?.bookingId === update.bookingId &&
+              n.timestamp === update.timestamp
+            );
+            if (exists) {
+              console.log('[WebSocket] Duplicate booking notification ignored');
+              return prev;
+            }
+            return [
               {
                 id: Date.now(),
-                title: 'Cập nhật thanh toán',
+                title,
                 message: update.message,
-                type: 'PAYMENT_UPDATE',
+                type,
                 timestamp: update.timestamp,
                 read: false,
                 data: update,
                 showToast: true, // Realtime notification - show popup toast
               },
               ...prev
-            ]);
+            ];
           });
-        } else {
-          console.log('[WebSocket] Driver role - skipping payment updates channel');
-        }
+        };
 
-        // Subscribe to dispatch updates
-        // Driver should NOT receive general dispatch updates (they get trip assignments via /topic/notifications/{userId})
-        let sub4 = null;
+        const subs = [];
+
+        // User-specific notifications (for ALL roles including driver).
+        // Server routes /user/queue/notifications to the sessions of the authenticated user only
+        subs.push(client.subscribe('/user/queue/notifications', (message) => {
+          const notification = JSON.parse(message.body);
+          console.log('[WebSocket] Received USER notification:', notification);
+          addNotification(notification, 'user');
+        }));
+
+        // Driver should NOT receive branch/system channels (they are for admin dashboard);
+        // trip assignments reach drivers via /user/queue/notifications
         if (!isDriver) {
-          sub4 = client.subscribe('/topic/dispatches', (message) => {
-            const update = JSON.parse(message.body);
-            console.log('[WebSocket] Received dispatch update:', update);
-            setNotifications((prev) => [
-              {
-                id: Date.now(),
-                title: 'Cập nhật điều phối',
-                message: update.message,
-                type: 'DISPATCH_UPDATE',
-                timestamp: update.timestamp,
-                read: false,
-                data: update,
-                showToast: true, // Realtime notification - show popup toast
-              },
-              ...prev
-            ]);
+          // System-wide announcements (not tied to a branch)
+          subs.push(client.subscribe('/topic/notifications', (message) => {
+            const notification = JSON.parse(message.body);
+            console.log('[WebSocket] Received GLOBAL notification:', notification);
+            addNotification(notification, 'global');
+          }));
+
+          // Branch channels: /topic/branch.{branchId}.notifications|bookings|payments|dispatches
+          // Admin listens to every branch, other roles only to their own branch
+          resolveBranchIds(currentRole).then((branchIds) => {
+            if (!client.connected) return;
+            console.log('[WebSocket] Subscribing to branch channels:', branchIds);
+            branchIds.forEach((branchId) => {
+              const prefix = `/topic/branch.${branchId}`;
+              subs.push(client.subscribe(`${prefix}.notifications`, (message) => {
+                const notification = JSON.parse(message.body);
+                console.log('[WebSocket] Received BRANCH notification:', notification);
+                addNotification(notification, 'branch');
+              }));
+              subs.push(client.subscribe(`${prefix}.bookings`, (message) => {
+                const update = JSON.parse(message.body);
+                console.log('[WebSocket] Received booking update:', update);
+                addUpdate(update, 'Cập nhật đơn hàng', 'BOOKING_UPDATE');
+              }));
+              subs.push(client.subscribe(`${prefix}.payments`, (message) => {
+                const update = JSON.parse(message.body);
+                console.log('[WebSocket] Received payment update:', update);
+                addUpdate(update, 'Cập nhật thanh toán', 'PAYMENT_UPDATE');
+              }));
+              subs.push(client.subscribe(`${prefix}.dispatches`, (message) => {
+                const update = JSON.parse(message.body);
+                console.log('[WebSocket] Received dispatch update:', update);
+                addUpdate(update, 'Cập nhật điều phối', 'DISPATCH_UPDATE');
+              }));
+            });
           });
         } else {
-          console.log('[WebSocket] Driver role - skipping dispatch updates channel');
+          console.log('[WebSocket] Driver role - skipping branch and global channels');
         }
 
-        // Store subscriptions (filter out null values for driver role)
-        subscriptionsRef.current = [sub1, sub2, sub3, sub4].filter(Boolean);
-        if (userSub) subscriptionsRef.current.push(userSub);
+        subscriptionsRef.current = subs;
       },
       onDisconnect: () => {
         console.log('[WebSocket] Disconnected');
@@ -331,8 +307,9 @@ export const WebSocketProvider = ({ children }) => {
       return null;
     }
 
+    // Personal queue of the authenticated session (server rejects other users' ids)
     const subscription = clientRef.current.subscribe(
-      `/topic/notifications/${userId}`,
+      '/user/queue/notifications',
       (message) => {
         const notification = JSON.parse(message.body);
         console.log('[WebSocket] Received user notification:', notification);